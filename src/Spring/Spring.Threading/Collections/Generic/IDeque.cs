@@ -0,0 +1,263 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+
+using System;
+using System.Collections.Generic;
+
+namespace Spring.Collections.Generic
+{
+    /// <summary>
+    /// A linear collection that supports element insertion and removal at
+    /// both ends. The name <i>deque</i> is short for "double ended queue"
+    /// and is usually pronounced "deck".
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// This interface defines methods to access the elements at both ends
+    /// of the deque. Methods are provided to insert, remove, and examine
+    /// the element. Each of these methods exists in two forms: one throws
+    /// an exception if the operation fails, the other returns a special
+    /// value (<c>false</c>, with the element in an out parameter where
+    /// there is one). The latter form of the insert operation is designed
+    /// specifically for use with capacity-restricted
+    /// <see cref="IDeque{T}"/> implementations; in most implementations,
+    /// insert operations cannot fail.
+    /// </para>
+    /// <para>
+    /// When a deque is used as a queue, FIFO (first-in-first-out) behavior
+    /// results. Elements are added at the end of the deque and removed
+    /// from the beginning. The <see cref="IQueue{T}"/> methods are
+    /// equivalent to <see cref="IDeque{T}"/> methods as follows:
+    /// <see cref="IQueue{T}.Offer"/> to <see cref="OfferLast"/>,
+    /// <see cref="IQueue{T}.Poll"/> to <see cref="PollFirst"/>,
+    /// <see cref="IQueue{T}.Remove()"/> to <see cref="RemoveFirst"/>,
+    /// <see cref="IQueue{T}.Peek"/> to <see cref="PeekFirst"/> and
+    /// <see cref="IQueue{T}.Element"/> to <see cref="GetFirst"/>.
+    /// </para>
+    /// <para>
+    /// Deques can also be used as LIFO (last-in-first-out) stacks. When a
+    /// deque is used as a stack, elements are pushed and popped from the
+    /// beginning of the deque: <see cref="Push"/> is equivalent to
+    /// <see cref="AddFirst"/> and <see cref="Pop"/> to
+    /// <see cref="RemoveFirst"/>.
+    /// </para>
+    /// <para>
+    /// Based on the back port of JCP JSR-166.
+    /// </para>
+    /// </remarks>
+    /// <typeparam name="T">The type of the elements in the deque.</typeparam>
+    /// <author>Doug Lea</author>
+    /// <author>Josh Bloch</author>
+    public interface IDeque<T> : IQueue<T> // JDK_1_6
+    {
+        /// <summary>
+        /// Inserts the specified element at the front of this deque if it is
+        /// possible to do so immediately without violating capacity
+        /// restrictions.
+        /// </summary>
+        /// <param name="element">The element to add.</param>
+        /// <exception cref="InvalidOperationException">
+        /// If the element cannot be added at this time due to capacity
+        /// restrictions.
+        /// </exception>
+        void AddFirst(T element);
+
+        /// <summary>
+        /// Inserts the specified element at the end of this deque if it is
+        /// possible to do so immediately without violating capacity
+        /// restrictions.
+        /// </summary>
+        /// <param name="element">The element to add.</param>
+        /// <exception cref="InvalidOperationException">
+        /// If the element cannot be added at this time due to capacity
+        /// restrictions.
+        /// </exception>
+        void AddLast(T element);
+
+        /// <summary>
+        /// Inserts the specified element at the front of this deque unless
+        /// it would violate capacity restrictions.
+        /// </summary>
+        /// <param name="element">The element to add.</param>
+        /// <returns>
+        /// <c>true</c> if the element was added to this deque, else
+        /// <c>false</c>.
+        /// </returns>
+        bool OfferFirst(T element);
+
+        /// <summary>
+        /// Inserts the specified element at the end of this deque unless it
+        /// would violate capacity restrictions.
+        /// </summary>
+        /// <param name="element">The element to add.</param>
+        /// <returns>
+        /// <c>true</c> if the element was added to this deque, else
+        /// <c>false</c>.
+        /// </returns>
+        bool OfferLast(T element);
+
+        /// <summary>
+        /// Retrieves and removes the first element of this deque. This
+        /// method differs from <see cref="PollFirst"/> only in that it throws
+        /// an exception if this deque is empty.
+        /// </summary>
+        /// <returns>The head of this deque.</returns>
+        /// <exception cref="InvalidOperationException">
+        /// If this deque is empty.
+        /// </exception>
+        T RemoveFirst();
+
+        /// <summary>
+        /// Retrieves and removes the last element of this deque. This method
+        /// differs from <see cref="PollLast"/> only in that it throws an
+        /// exception if this deque is empty.
+        /// </summary>
+        /// <returns>The tail of this deque.</returns>
+        /// <exception cref="InvalidOperationException">
+        /// If this deque is empty.
+        /// </exception>
+        T RemoveLast();
+
+        /// <summary>
+        /// Retrieves and removes the first element of this deque into out
+        /// parameter <paramref name="element"/>.
+        /// </summary>
+        /// <param name="element">
+        /// Set to the head of this deque. <c>default(T)</c> if deque is empty.
+        /// </param>
+        /// <returns>
+        /// <c>false</c> if the deque is empty. Otherwise <c>true</c>.
+        /// </returns>
+        bool PollFirst(out T element);
+
+        /// <summary>
+        /// Retrieves and removes the last element of this deque into out
+        /// parameter <paramref name="element"/>.
+        /// </summary>
+        /// <param name="element">
+        /// Set to the tail of this deque. <c>default(T)</c> if deque is empty.
+        /// </param>
+        /// <returns>
+        /// <c>false</c> if the deque is empty. Otherwise <c>true</c>.
+        /// </returns>
+        bool PollLast(out T element);
+
+        /// <summary>
+        /// Retrieves, but does not remove, the first element of this deque.
+        /// This method differs from <see cref="PeekFirst"/> only in that it
+        /// throws an exception if this deque is empty.
+        /// </summary>
+        /// <returns>The head of this deque.</returns>
+        /// <exception cref="InvalidOperationException">
+        /// If this deque is empty.
+        /// </exception>
+        T GetFirst();
+
+        /// <summary>
+        /// Retrieves, but does not remove, the last element of this deque.
+        /// This method differs from <see cref="PeekLast"/> only in that it
+        /// throws an exception if this deque is empty.
+        /// </summary>
+        /// <returns>The tail of this deque.</returns>
+        /// <exception cref="InvalidOperationException">
+        /// If this deque is empty.
+        /// </exception>
+        T GetLast();
+
+        /// <summary>
+        /// Retrieves, but does not remove, the first element of this deque
+        /// into out parameter <paramref name="element"/>.
+        /// </summary>
+        /// <param name="element">
+        /// The head of this deque. <c>default(T)</c> if deque is empty.
+        /// </param>
+        /// <returns>
+        /// <c>false</c> if the deque is empty. Otherwise <c>true</c>.
+        /// </returns>
+        bool PeekFirst(out T element);
+
+        /// <summary>
+        /// Retrieves, but does not remove, the last element of this deque
+        /// into out parameter <paramref name="element"/>.
+        /// </summary>
+        /// <param name="element">
+        /// The tail of this deque. <c>default(T)</c> if deque is empty.
+        /// </param>
+        /// <returns>
+        /// <c>false</c> if the deque is empty. Otherwise <c>true</c>.
+        /// </returns>
+        bool PeekLast(out T element);
+
+        /// <summary>
+        /// Removes the first occurrence of the specified element from this
+        /// deque. If the deque does not contain the element, it is
+        /// unchanged.
+        /// </summary>
+        /// <param name="element">Element to be removed from this deque, if present.</param>
+        /// <returns><c>true</c> if an element was removed as a result of this call.</returns>
+        bool RemoveFirstOccurrence(T element);
+
+        /// <summary>
+        /// Removes the last occurrence of the specified element from this
+        /// deque. If the deque does not contain the element, it is
+        /// unchanged.
+        /// </summary>
+        /// <param name="element">Element to be removed from this deque, if present.</param>
+        /// <returns><c>true</c> if an element was removed as a result of this call.</returns>
+        bool RemoveLastOccurrence(T element);
+
+        /// <summary>
+        /// Pushes an element onto the stack represented by this deque (in
+        /// other words, at the head of this deque). Equivalent to
+        /// <see cref="AddFirst"/>.
+        /// </summary>
+        /// <param name="element">The element to push.</param>
+        /// <exception cref="InvalidOperationException">
+        /// If the element cannot be added at this time due to capacity
+        /// restrictions.
+        /// </exception>
+        void Push(T element);
+
+        /// <summary>
+        /// Pops an element from the stack represented by this deque. In other
+        /// words, removes and returns the first element of this deque.
+        /// Equivalent to <see cref="RemoveFirst"/>.
+        /// </summary>
+        /// <returns>
+        /// The element at the front of this deque (which is the top of the
+        /// stack represented by this deque).
+        /// </returns>
+        /// <exception cref="InvalidOperationException">
+        /// If this deque is empty.
+        /// </exception>
+        T Pop();
+
+        /// <summary>
+        /// Returns an enumerator over the elements in this deque in reverse
+        /// sequential order. The elements will be returned in order from
+        /// last (tail) to first (head).
+        /// </summary>
+        /// <returns>
+        /// An enumerator over the elements in this deque in reverse sequence.
+        /// </returns>
+        IEnumerator<T> GetDescendingEnumerator();
+    }
+}
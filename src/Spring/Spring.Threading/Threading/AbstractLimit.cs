@@ -0,0 +1,146 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+using System;
+
+namespace Spring.Threading
+{
+    /// <summary>
+    /// Skeleton of an <see cref="ILimitAlgorithm"/> that keeps the limit
+    /// within fixed bounds.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// The limit is kept as a <see cref="double"/>, so that algorithms can
+    /// move it by fractions, and is rounded down when reported.
+    /// Subclasses only implement <see cref="NewLimit"/>.
+    /// </para>
+    /// <para>
+    /// NOTE: this class is NOT present in java.util.concurrent.
+    /// </para>
+    /// </remarks>
+    public abstract class AbstractLimit : ILimitAlgorithm //NET_ONLY
+    {
+        private readonly int _minLimit;
+        private readonly int _maxLimit;
+        private double _limit;
+
+        /// <summary>
+        /// Initializes the bounds and the initial limit.
+        /// </summary>
+        /// <param name="initialLimit">The limit before the first sample.</param>
+        /// <param name="minLimit">The lower bound of the limit, at least one.</param>
+        /// <param name="maxLimit">The upper bound of the limit.</param>
+        /// <exception cref="ArgumentOutOfRangeException">
+        /// If <paramref name="minLimit"/> is less than one, or
+        /// <paramref name="initialLimit"/> is not between
+        /// <paramref name="minLimit"/> and <paramref name="maxLimit"/>.
+        /// </exception>
+        protected AbstractLimit(int initialLimit, int minLimit, int maxLimit)
+        {
+            if (minLimit < 1)
+                throw new ArgumentOutOfRangeException("minLimit", minLimit, "Must be at least one.");
+            if (maxLimit < minLimit)
+                throw new ArgumentOutOfRangeException("maxLimit", maxLimit, "Must not be less than minLimit.");
+            if (initialLimit < minLimit || initialLimit > maxLimit)
+                throw new ArgumentOutOfRangeException(
+                    "initialLimit", initialLimit, "Must be between minLimit and maxLimit.");
+            _minLimit = minLimit;
+            _maxLimit = maxLimit;
+            _limit = initialLimit;
+        }
+
+        /// <summary>
+        /// The lower bound of the limit.
+        /// </summary>
+        public int MinLimit
+        {
+            get { return _minLimit; }
+        }
+
+        /// <summary>
+        /// The upper bound of the limit.
+        /// </summary>
+        public int MaxLimit
+        {
+            get { return _maxLimit; }
+        }
+
+        /// <summary>
+        /// The current limit, the initial limit before the first sample.
+        /// </summary>
+        public int Limit
+        {
+            get { return (int) _limit; }
+        }
+
+        /// <summary>
+        /// Accounts for one completed call and returns the new limit.
+        /// </summary>
+        /// <param name="latency">The time the call took.</param>
+        /// <param name="inFlight">
+        /// The number of calls in flight when this one completed, this one
+        /// included.
+        /// </param>
+        /// <param name="dropped">
+        /// <c>true</c> if the call was rejected or timed out downstream.
+        /// </param>
+        /// <returns>The new limit, within the bounds.</returns>
+        public int Update(TimeSpan latency, int inFlight, bool dropped)
+        {
+            double limit = NewLimit(_limit, latency, inFlight, dropped);
+            _limit = Math.Max(_minLimit, Math.Min(_maxLimit, limit));
+            return (int) _limit;
+        }
+
+        /// <summary>
+        /// Computes the new limit from the current one and a sample. The
+        /// result is clamped to the bounds by the caller.
+        /// </summary>
+        /// <param name="limit">The current limit.</param>
+        /// <param name="latency">The time the call took.</param>
+        /// <param name="inFlight">
+        /// The number of calls in flight when this one completed, this one
+        /// included.
+        /// </param>
+        /// <param name="dropped">
+        /// <c>true</c> if the call was rejected or timed out downstream.
+        /// </param>
+        /// <returns>The new limit.</returns>
+        protected abstract double NewLimit(double limit, TimeSpan latency, int inFlight, bool dropped);
+
+        /// <summary>
+        /// Whether the calls in flight used so little of the limit that a
+        /// sample says nothing about raising it.
+        /// </summary>
+        protected static bool IsAppLimited(double limit, int inFlight)
+        {
+            return inFlight * 2 < limit;
+        }
+
+        /// <summary>
+        /// Returns a string identifying this algorithm and its current limit.
+        /// </summary>
+        public override string ToString()
+        {
+            return GetType().Name + "[Limit = " + Limit + "]";
+        }
+    }
+}
@@ -0,0 +1,278 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+using System;
+using System.Threading;
+
+namespace Spring.Threading
+{
+    /// <summary>
+    /// Limits the number of concurrent calls to a downstream service, and
+    /// adapts the limit to the latency and drops of the completed calls.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// A call takes a permit with one of the acquire methods, and hands it
+    /// back when it completes with <see cref="Release(TimeSpan)"/>, passing
+    /// the time it took, or with <see cref="ReleaseDropped"/> when it was
+    /// rejected or timed out downstream. Each completion is a sample for
+    /// the <see cref="ILimitAlgorithm"/>, which computes the new
+    /// <see cref="Limit"/>:
+    /// <list type="bullet">
+    /// <item><see cref="AimdLimit"/> reacts to drops and timeouts only.</item>
+    /// <item><see cref="VegasLimit"/> keeps the estimated downstream queue short.</item>
+    /// <item><see cref="GradientLimit"/> keeps the latency near its long term average.</item>
+    /// </list>
+    /// </para>
+    /// <para>
+    /// The permits are those of a <see cref="Semaphore"/>, so callers wait
+    /// in its queue. A completing call that raises the limit releases its
+    /// own permit plus the additional ones, which wakes no more waiters
+    /// than can proceed. A call that lowers the limit keeps its permit and
+    /// reduces the permits by the rest of the difference, possibly below
+    /// zero, so that the calls in flight pay it back as they complete.
+    /// Until then no waiter is woken.
+    /// </para>
+    /// <para>
+    /// <b>Sample usage:</b>
+    /// <code>
+    /// AdaptiveLimiter limiter = new AdaptiveLimiter(new GradientLimit());
+    ///
+    /// Response Call(Request request) {
+    ///     if (!limiter.TryAcquire()) return Response.Busy; // shed load
+    ///     Stopwatch watch = Stopwatch.StartNew();
+    ///     try {
+    ///         Response response = service.Call(request);
+    ///         limiter.Release(watch.Elapsed);
+    ///         return response;
+    ///     } catch (TimeoutException) {
+    ///         limiter.ReleaseDropped(watch.Elapsed);
+    ///         throw;
+    ///     } catch {
+    ///         limiter.ReleaseIgnored();
+    ///         throw;
+    ///     }
+    /// }
+    /// </code>
+    /// </para>
+    /// <para>
+    /// NOTE: this class is NOT present in java.util.concurrent.
+    /// </para>
+    /// </remarks>
+    public class AdaptiveLimiter //NET_ONLY
+    {
+        private readonly LimitSemaphore _permits;
+        private readonly ILimitAlgorithm _algorithm;
+
+        /// <summary>
+        /// Serializes the samples, so that the algorithm sees them one at
+        /// a time and every change of the limit is accounted for once.
+        /// </summary>
+        private readonly object _updateLock = new object();
+
+        private int _limit;
+        private int _inFlight;
+
+        /// <summary>
+        /// Gives access to <see cref="Semaphore.ReducePermits"/>.
+        /// </summary>
+        [Serializable]
+        private sealed class LimitSemaphore : Semaphore
+        {
+            internal LimitSemaphore(int permits, bool fair) : base(permits, fair)
+            {
+            }
+
+            internal void Reduce(int reduction)
+            {
+                ReducePermits(reduction);
+            }
+        }
+
+        /// <summary>
+        /// Creates an <see cref="AdaptiveLimiter"/> with the given algorithm
+        /// and a nonfair wait queue.
+        /// </summary>
+        /// <param name="algorithm">Computes the limit.</param>
+        /// <exception cref="ArgumentNullException">
+        /// If <paramref name="algorithm"/> is <c>null</c>.
+        /// </exception>
+        public AdaptiveLimiter(ILimitAlgorithm algorithm) : this(algorithm, false)
+        {
+        }
+
+        /// <summary>
+        /// Creates an <see cref="AdaptiveLimiter"/> with the given algorithm
+        /// and fairness setting.
+        /// </summary>
+        /// <param name="algorithm">Computes the limit.</param>
+        /// <param name="fair">
+        /// <c>true</c> if waiting callers acquire permits in first-in
+        /// first-out order, see <see cref="Semaphore.IsFair"/>.
+        /// </param>
+        /// <exception cref="ArgumentNullException">
+        /// If <paramref name="algorithm"/> is <c>null</c>.
+        /// </exception>
+        public AdaptiveLimiter(ILimitAlgorithm algorithm, bool fair)
+        {
+            if (algorithm == null) throw new ArgumentNullException("algorithm");
+            _algorithm = algorithm;
+            _limit = Math.Max(1, algorithm.Limit);
+            _permits = new LimitSemaphore(_limit, fair);
+        }
+
+        /// <summary>
+        /// The algorithm that computes the limit.
+        /// </summary>
+        public ILimitAlgorithm Algorithm
+        {
+            get { return _algorithm; }
+        }
+
+        /// <summary>
+        /// The current limit of concurrent calls.
+        /// </summary>
+        public int Limit
+        {
+            get { return Thread.VolatileRead(ref _limit); }
+        }
+
+        /// <summary>
+        /// The number of calls that hold a permit. May briefly exceed
+        /// <see cref="Limit"/> after the limit was reduced.
+        /// </summary>
+        public int InFlight
+        {
+            get { return Thread.VolatileRead(ref _inFlight); }
+        }
+
+        /// <summary>
+        /// Returns an estimate of the number of threads waiting for a permit.
+        /// </summary>
+        public int QueueLength
+        {
+            get { return _permits.QueueLength; }
+        }
+
+        /// <summary>
+        /// Acquires a permit, blocking until one is available, or the
+        /// thread is interrupted.
+        /// </summary>
+        /// <exception cref="ThreadInterruptedException">
+        /// If the current thread is interrupted.
+        /// </exception>
+        public void Acquire()
+        {
+            _permits.Acquire();
+            Interlocked.Increment(ref _inFlight);
+        }
+
+        /// <summary>
+        /// Acquires a permit only if one is available at the time of
+        /// invocation. This is the usual way to shed load: a call that finds
+        /// the limit reached is rejected right away.
+        /// </summary>
+        /// <returns>
+        /// <c>true</c> if a permit was acquired and <c>false</c> otherwise.
+        /// </returns>
+        public bool TryAcquire()
+        {
+            if (!_permits.TryAcquire()) return false;
+            Interlocked.Increment(ref _inFlight);
+            return true;
+        }
+
+        /// <summary>
+        /// Acquires a permit if one becomes available within the given
+        /// waiting time and the current thread has not been interrupted.
+        /// </summary>
+        /// <param name="durationToWait">The maximum time to wait for a permit.</param>
+        /// <returns>
+        /// <c>true</c> if a permit was acquired and <c>false</c> if the
+        /// waiting time elapsed before a permit was acquired.
+        /// </returns>
+        /// <exception cref="ThreadInterruptedException">
+        /// If the current thread is interrupted.
+        /// </exception>
+        public bool TryAcquire(TimeSpan durationToWait)
+        {
+            if (!_permits.TryAcquire(durationToWait)) return false;
+            Interlocked.Increment(ref _inFlight);
+            return true;
+        }
+
+        /// <summary>
+        /// Releases the permit of a call that completed normally, and
+        /// adapts the limit to its <paramref name="latency"/>.
+        /// </summary>
+        /// <param name="latency">The time the call took.</param>
+        public void Release(TimeSpan latency)
+        {
+            Complete(latency, false);
+        }
+
+        /// <summary>
+        /// Releases the permit of a call that was rejected or timed out
+        /// downstream, and lowers the limit in response.
+        /// </summary>
+        /// <param name="latency">The time the call took.</param>
+        public void ReleaseDropped(TimeSpan latency)
+        {
+            Complete(latency, true);
+        }
+
+        /// <summary>
+        /// Releases the permit of a call without adapting the limit, for
+        /// calls whose outcome says nothing about the load, for example
+        /// when they failed on invalid input.
+        /// </summary>
+        public void ReleaseIgnored()
+        {
+            Interlocked.Decrement(ref _inFlight);
+            _permits.Release();
+        }
+
+        /// <summary>
+        /// Returns a string identifying this limiter, as well as its state.
+        /// The state, in brackets, includes the limit and the number of
+        /// calls in flight.
+        /// </summary>
+        public override string ToString()
+        {
+            return base.ToString() + "[Limit = " + Limit + ", InFlight = " + InFlight + "]";
+        }
+
+        private void Complete(TimeSpan latency, bool dropped)
+        {
+            int inFlight = Interlocked.Decrement(ref _inFlight) + 1;
+            int permits;
+            lock (_updateLock)
+            {
+                int limit = Math.Max(1, _algorithm.Update(latency, inFlight, dropped));
+                // the permit of this call plus the change of the limit
+                permits = limit - _limit + 1;
+                Thread.VolatileWrite(ref _limit, limit);
+            }
+            // releases and reductions commute, no need to hold the lock
+            if (permits > 0) _permits.Release(permits);
+            else if (permits < 0) _permits.Reduce(-permits);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+using System;
+
+namespace Spring.Threading
+{
+    /// <summary>
+    /// Additive increase, multiplicative decrease: the limit grows by one
+    /// per successful call while it is in use, and is cut by a constant
+    /// ratio on every call that was dropped or took longer than a timeout.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// This is the loss based scheme of TCP congestion control. It reacts
+    /// only once the downstream service already fails, but it needs no
+    /// notion of a normal latency, so it suits services whose latency
+    /// varies a lot with the request.
+    /// </para>
+    /// <para>
+    /// NOTE: this class is NOT present in java.util.concurrent.
+    /// </para>
+    /// </remarks>
+    public class AimdLimit : AbstractLimit //NET_ONLY
+    {
+        private readonly double _backoffRatio;
+        private readonly TimeSpan _timeout;
+
+        /// <summary>
+        /// Creates an <see cref="AimdLimit"/> that starts at 20, stays
+        /// within 1 and 1000, backs off by 10% and treats calls taking
+        /// longer than five seconds as dropped.
+        /// </summary>
+        public AimdLimit() : this(20, 1, 1000, 0.9, TimeSpan.FromSeconds(5))
+        {
+        }
+
+        /// <summary>
+        /// Creates an <see cref="AimdLimit"/> with the given parameters.
+        /// </summary>
+        /// <param name="initialLimit">The limit before the first sample.</param>
+        /// <param name="minLimit">The lower bound of the limit, at least one.</param>
+        /// <param name="maxLimit">The upper bound of the limit.</param>
+        /// <param name="backoffRatio">
+        /// The factor the limit is multiplied with when a call was dropped,
+        /// greater than zero and less than one.
+        /// </param>
+        /// <param name="timeout">
+        /// The latency above which a call counts as dropped.
+        /// </param>
+        /// <exception cref="ArgumentOutOfRangeException">
+        /// If the limits are out of order, <paramref name="backoffRatio"/>
+        /// is not between zero and one, or <paramref name="timeout"/> is
+        /// not positive.
+        /// </exception>
+        public AimdLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio, TimeSpan timeout)
+            : base(initialLimit, minLimit, maxLimit)
+        {
+            if (backoffRatio <= 0 || backoffRatio >= 1)
+                throw new ArgumentOutOfRangeException("backoffRatio", backoffRatio, "Must be between 0 and 1.");
+            if (timeout.Ticks <= 0)
+                throw new ArgumentOutOfRangeException("timeout", timeout, "Must be positive.");
+            _backoffRatio = backoffRatio;
+            _timeout = timeout;
+        }
+
+        /// <summary>
+        /// The factor the limit is multiplied with when a call was dropped.
+        /// </summary>
+        public double BackoffRatio
+        {
+            get { return _backoffRatio; }
+        }
+
+        /// <summary>
+        /// The latency above which a call counts as dropped.
+        /// </summary>
+        public TimeSpan Timeout
+        {
+            get { return _timeout; }
+        }
+
+        /// <summary>
+        /// Cuts the limit on a drop or timeout, otherwise adds one unless
+        /// the limit was not in use.
+        /// </summary>
+        protected override double NewLimit(double limit, TimeSpan latency, int inFlight, bool dropped)
+        {
+            if (dropped || latency > _timeout)
+                return Math.Floor(limit * _backoffRatio);
+            if (IsAppLimited(limit, inFlight))
+                return limit;
+            return limit + 1;
+        }
+    }
+}
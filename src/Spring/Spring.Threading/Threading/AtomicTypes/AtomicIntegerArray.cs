@@ -241,6 +241,48 @@ namespace Spring.Threading.AtomicTypes
             return Interlocked.Add(ref _intArray[index], deltaValue);
         }
 
+        /// <summary> 
+        /// Copies the current value of every element into <paramref name="destination"/>
+        /// in a single pass. Each element is read atomically but the copy as a whole is
+        /// not an atomic snapshot; concurrent updates may or may not be reflected.
+        /// </summary>
+        /// <param name="destination">
+        /// The array to copy into, at least as long as this array
+        /// </param>
+        /// <exception cref="ArgumentNullException">if <paramref name="destination"/> is null</exception>
+        /// <exception cref="ArgumentException">
+        /// if <paramref name="destination"/> is shorter than this array
+        /// </exception>
+        public void Snapshot(int[] destination) {
+            if (destination == null) throw new ArgumentNullException("destination");
+            if (destination.Length < _intArray.Length)
+                throw new ArgumentException("Destination array is shorter than the atomic array.", "destination");
+            Thread.MemoryBarrier();
+            for (int i = 0; i < _intArray.Length; i++) destination[i] = _intArray[i];
+        }
+
+        /// <summary> 
+        /// Atomically adds each <paramref name="deltas"/>[i] to the element at index i,
+        /// in a single pass. Each element is updated atomically, but the vector as a
+        /// whole is not. Zero deltas are skipped without touching the element.
+        /// </summary>
+        /// <param name="deltas">
+        /// The values to add, no longer than this array
+        /// </param>
+        /// <exception cref="ArgumentNullException">if <paramref name="deltas"/> is null</exception>
+        /// <exception cref="ArgumentException">
+        /// if <paramref name="deltas"/> is longer than this array
+        /// </exception>
+        public void AddAll(int[] deltas) {
+            if (deltas == null) throw new ArgumentNullException("deltas");
+            if (deltas.Length > _intArray.Length)
+                throw new ArgumentException("Deltas array is longer than the atomic array.", "deltas");
+            for (int i = 0; i < deltas.Length; i++) {
+                int delta = deltas[i];
+                if (delta != 0) Interlocked.Add(ref _intArray[i], delta);
+            }
+        }
+
         /// <summary> 
         /// Returns the String representation of the current values of array.
         /// </summary>
@@ -1 +1,288 @@
-// TODO implement public abstract class AtomicIntegerFieldUpdater<T>
\ No newline at end of file
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+using System;
+using System.Reflection;
+
+namespace Spring.Threading.AtomicTypes
+{
+    /// <summary>
+    /// A reflection-based utility that enables atomic updates to
+    /// designated <c>volatile int</c> fields of designated classes.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// This class is designed for use in atomic data structures in which
+    /// several fields of the same node are independently subject to atomic
+    /// updates. It saves the extra object, and its header and reference,
+    /// that embedding an <see cref="AtomicInteger"/> in every node would
+    /// cost.
+    /// </para>
+    /// <para>
+    /// Note that the guarantees of the <see cref="CompareAndSet"/> method
+    /// in this class are weaker than in other atomic classes. Because this
+    /// class cannot ensure that all uses of the field are appropriate for
+    /// purposes of atomic access, it can guarantee atomicity only with
+    /// respect to other invocations of <see cref="CompareAndSet"/> and
+    /// <see cref="Set"/> on the same updater.
+    /// </para>
+    /// <para>
+    /// Based on the on the back port of JCP JSR-166.
+    /// </para>
+    /// </remarks>
+    /// <typeparam name="T">The type of the object holding the updatable field.</typeparam>
+    /// <author>Doug Lea</author>
+    public abstract class AtomicIntegerFieldUpdater<T> where T : class //JDK_1_6
+    {
+        /// <summary>
+        /// Creates and returns an updater for objects with the given field.
+        /// </summary>
+        /// <param name="fieldName">
+        /// The name of the <c>volatile int</c> field to be updated.
+        /// </param>
+        /// <returns>The updater.</returns>
+        /// <exception cref="ArgumentNullException">
+        /// If <paramref name="fieldName"/> is <c>null</c>.
+        /// </exception>
+        /// <exception cref="ArgumentException">
+        /// If the field doesn't exist, is not an <see cref="int"/> or is not
+        /// volatile.
+        /// </exception>
+        public static AtomicIntegerFieldUpdater<T> NewUpdater(string fieldName)
+        {
+            return new Updater(FieldUpdaterGenerator.GetField(typeof (T), fieldName, typeof (int), true));
+        }
+
+        /// <summary>
+        /// Protected do-nothing constructor for use by subclasses.
+        /// </summary>
+        protected AtomicIntegerFieldUpdater()
+        {
+        }
+
+        /// <summary>
+        /// Atomically sets the field of the given object managed by this
+        /// updater to the <paramref name="newValue"/> if the current value
+        /// == <paramref name="expectedValue"/>. This method is guaranteed to
+        /// be atomic with respect to other calls to <see cref="CompareAndSet"/>
+        /// and <see cref="Set"/>, but not necessarily with respect to other
+        /// changes in the field.
+        /// </summary>
+        /// <param name="obj">An object whose field to conditionally set.</param>
+        /// <param name="expectedValue">The expected value.</param>
+        /// <param name="newValue">The new value.</param>
+        /// <returns><c>true</c> if successful.</returns>
+        public abstract bool CompareAndSet(T obj, int expectedValue, int newValue);
+
+        /// <summary>
+        /// Atomically sets the field of the given object managed by this
+        /// updater to the <paramref name="newValue"/> if the current value
+        /// == <paramref name="expectedValue"/>. May fail spuriously.
+        /// </summary>
+        /// <param name="obj">An object whose field to conditionally set.</param>
+        /// <param name="expectedValue">The expected value.</param>
+        /// <param name="newValue">The new value.</param>
+        /// <returns><c>true</c> if successful.</returns>
+        public abstract bool WeakCompareAndSet(T obj, int expectedValue, int newValue);
+
+        /// <summary>
+        /// Sets the field of the given object managed by this updater to the
+        /// given updated value. This operation is guaranteed to act as a
+        /// volatile store with respect to subsequent invocations of
+        /// <see cref="CompareAndSet"/>.
+        /// </summary>
+        /// <param name="obj">An object whose field to set.</param>
+        /// <param name="newValue">The new value.</param>
+        public abstract void Set(T obj, int newValue);
+
+        /// <summary>
+        /// Eventually sets the field of the given object managed by this
+        /// updater to the given updated value.
+        /// </summary>
+        /// <param name="obj">An object whose field to set.</param>
+        /// <param name="newValue">The new value.</param>
+        public abstract void LazySet(T obj, int newValue);
+
+        /// <summary>
+        /// Gets the current value held in the field of the given object
+        /// managed by this updater.
+        /// </summary>
+        /// <param name="obj">An object whose field to get.</param>
+        /// <returns>The current value.</returns>
+        public abstract int Get(T obj);
+
+        /// <summary>
+        /// Atomically sets the field of the given object managed by this
+        /// updater to the given value and returns the old value.
+        /// </summary>
+        /// <param name="obj">An object whose field to get and set.</param>
+        /// <param name="newValue">The new value.</param>
+        /// <returns>The previous value.</returns>
+        public virtual int Exchange(T obj, int newValue)
+        {
+            for (;;)
+            {
+                int current = Get(obj);
+                if (CompareAndSet(obj, current, newValue))
+                    return current;
+            }
+        }
+
+        /// <summary>
+        /// Atomically increments by one the current value of the field of
+        /// the given object managed by this updater.
+        /// </summary>
+        /// <param name="obj">An object whose field to get and set.</param>
+        /// <returns>The previous value.</returns>
+        public virtual int ReturnValueAndIncrement(T obj)
+        {
+            return AddDeltaAndReturnPreviousValue(obj, 1);
+        }
+
+        /// <summary>
+        /// Atomically decrements by one the current value of the field of
+        /// the given object managed by this updater.
+        /// </summary>
+        /// <param name="obj">An object whose field to get and set.</param>
+        /// <returns>The previous value.</returns>
+        public virtual int ReturnValueAndDecrement(T obj)
+        {
+            return AddDeltaAndReturnPreviousValue(obj, -1);
+        }
+
+        /// <summary>
+        /// Atomically adds the given value to the current value of the field
+        /// of the given object managed by this updater.
+        /// </summary>
+        /// <param name="obj">An object whose field to get and set.</param>
+        /// <param name="deltaValue">The value to add.</param>
+        /// <returns>The previous value.</returns>
+        public virtual int AddDeltaAndReturnPreviousValue(T obj, int deltaValue)
+        {
+            for (;;)
+            {
+                int current = Get(obj);
+                if (CompareAndSet(obj, current, current + deltaValue))
+                    return current;
+            }
+        }
+
+        /// <summary>
+        /// Atomically increments by one the current value of the field of
+        /// the given object managed by this updater.
+        /// </summary>
+        /// <param name="obj">An object whose field to get and set.</param>
+        /// <returns>The updated value.</returns>
+        public virtual int IncrementValueAndReturn(T obj)
+        {
+            return AddDeltaAndReturnNewValue(obj, 1);
+        }
+
+        /// <summary>
+        /// Atomically decrements by one the current value of the field of
+        /// the given object managed by this updater.
+        /// </summary>
+        /// <param name="obj">An object whose field to get and set.</param>
+        /// <returns>The updated value.</returns>
+        public virtual int DecrementValueAndReturn(T obj)
+        {
+            return AddDeltaAndReturnNewValue(obj, -1);
+        }
+
+        /// <summary>
+        /// Atomically adds the given value to the current value of the field
+        /// of the given object managed by this updater.
+        /// </summary>
+        /// <param name="obj">An object whose field to get and set.</param>
+        /// <param name="deltaValue">The value to add.</param>
+        /// <returns>The updated value.</returns>
+        public virtual int AddDeltaAndReturnNewValue(T obj, int deltaValue)
+        {
+            for (;;)
+            {
+                int current = Get(obj);
+                int next = current + deltaValue;
+                if (CompareAndSet(obj, current, next))
+                    return next;
+            }
+        }
+
+        /// <summary>
+        /// Standard updater that applies the generated accessors.
+        /// </summary>
+        private sealed class Updater : AtomicIntegerFieldUpdater<T>
+        {
+            private readonly Func<T, int> _get;
+            private readonly Action<T, int> _set;
+            private readonly Func<T, int, int, int> _compareExchange;
+            private readonly Func<T, int, int> _exchange;
+            private readonly Func<T, int, int> _add;
+
+            internal Updater(FieldInfo field)
+            {
+                _get = FieldUpdaterGenerator.Getter<T, int>(field);
+                _set = FieldUpdaterGenerator.Setter<T, int>(field);
+                _compareExchange = FieldUpdaterGenerator.CompareExchange<T, int>(field);
+                _exchange = FieldUpdaterGenerator.Exchange<T, int>(field);
+                _add = FieldUpdaterGenerator.AddInt32<T>(field);
+            }
+
+            public override bool CompareAndSet(T obj, int expectedValue, int newValue)
+            {
+                return _compareExchange(obj, newValue, expectedValue) == expectedValue;
+            }
+
+            public override bool WeakCompareAndSet(T obj, int expectedValue, int newValue)
+            {
+                return _compareExchange(obj, newValue, expectedValue) == expectedValue;
+            }
+
+            public override void Set(T obj, int newValue)
+            {
+                _set(obj, newValue);
+            }
+
+            public override void LazySet(T obj, int newValue)
+            {
+                _set(obj, newValue);
+            }
+
+            public override int Get(T obj)
+            {
+                return _get(obj);
+            }
+
+            public override int Exchange(T obj, int newValue)
+            {
+                return _exchange(obj, newValue);
+            }
+
+            public override int AddDeltaAndReturnPreviousValue(T obj, int deltaValue)
+            {
+                return _add(obj, deltaValue) - deltaValue;
+            }
+
+            public override int AddDeltaAndReturnNewValue(T obj, int deltaValue)
+            {
+                return _add(obj, deltaValue);
+            }
+        }
+    }
+}
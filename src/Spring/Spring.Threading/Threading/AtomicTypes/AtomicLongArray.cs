@@ -37,6 +37,11 @@ namespace Spring.Threading.AtomicTypes
     [Serializable]
     public class AtomicLongArray : AbstractAtomicArray<long>, IAtomicArray<long> //JDK_1_6
     {
+        /// <summary>
+        /// Selected once when the type is loaded, see <see cref="AtomicLong"/>.
+        /// </summary>
+        private static readonly bool _isNativeLongAccess = IntPtr.Size == 8;
+
         private readonly long[] _longArray;
 
         /// <summary> 
@@ -83,7 +88,11 @@ namespace Spring.Threading.AtomicTypes
         /// The current value
         /// </returns>
         public override long this[int index] {
-            get { return Interlocked.Read(ref _longArray[index]); }
+            get
+            {
+                return _isNativeLongAccess ?
+                    Thread.VolatileRead(ref _longArray[index]) : Interlocked.Read(ref _longArray[index]);
+            }
             set { Interlocked.Exchange(ref _longArray[index], value); }
         }
 
@@ -97,7 +106,8 @@ namespace Spring.Threading.AtomicTypes
         /// The new value
         /// </param>
         public void LazySet(int index, long newValue) {
-            Interlocked.Exchange(ref _longArray[index], newValue);
+            if (_isNativeLongAccess) Thread.VolatileWrite(ref _longArray[index], newValue);
+            else Interlocked.Exchange(ref _longArray[index], newValue);
         }
 
         /// <summary> 
@@ -243,6 +253,52 @@ namespace Spring.Threading.AtomicTypes
             return Interlocked.Add(ref _longArray[index], deltaValue);
         }
 
+        /// <summary> 
+        /// Copies the current value of every element into <paramref name="destination"/>
+        /// in a single pass. Each element is read atomically but the copy as a whole is
+        /// not an atomic snapshot; concurrent updates may or may not be reflected.
+        /// </summary>
+        /// <param name="destination">
+        /// The array to copy into, at least as long as this array
+        /// </param>
+        /// <exception cref="ArgumentNullException">if <paramref name="destination"/> is null</exception>
+        /// <exception cref="ArgumentException">
+        /// if <paramref name="destination"/> is shorter than this array
+        /// </exception>
+        public void Snapshot(long[] destination) {
+            if (destination == null) throw new ArgumentNullException("destination");
+            if (destination.Length < _longArray.Length)
+                throw new ArgumentException("Destination array is shorter than the atomic array.", "destination");
+            if (_isNativeLongAccess) {
+                Thread.MemoryBarrier();
+                for (int i = 0; i < _longArray.Length; i++) destination[i] = _longArray[i];
+            } else {
+                for (int i = 0; i < _longArray.Length; i++) destination[i] = Interlocked.Read(ref _longArray[i]);
+            }
+        }
+
+        /// <summary> 
+        /// Atomically adds each <paramref name="deltas"/>[i] to the element at index i,
+        /// in a single pass. Each element is updated atomically, but the vector as a
+        /// whole is not. Zero deltas are skipped without touching the element.
+        /// </summary>
+        /// <param name="deltas">
+        /// The values to add, no longer than this array
+        /// </param>
+        /// <exception cref="ArgumentNullException">if <paramref name="deltas"/> is null</exception>
+        /// <exception cref="ArgumentException">
+        /// if <paramref name="deltas"/> is longer than this array
+        /// </exception>
+        public void AddAll(long[] deltas) {
+            if (deltas == null) throw new ArgumentNullException("deltas");
+            if (deltas.Length > _longArray.Length)
+                throw new ArgumentException("Deltas array is longer than the atomic array.", "deltas");
+            for (int i = 0; i < deltas.Length; i++) {
+                long delta = deltas[i];
+                if (delta != 0) Interlocked.Add(ref _longArray[i], delta);
+            }
+        }
+
         /// <summary> 
         /// Returns the String representation of the current values of array.
         /// </summary>
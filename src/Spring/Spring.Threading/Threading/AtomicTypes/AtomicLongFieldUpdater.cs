@@ -1 +1,302 @@
-// TODO implement public abstract class AtomicLongFieldUpdater<T>
\ No newline at end of file
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+using System;
+using System.Reflection;
+
+namespace Spring.Threading.AtomicTypes
+{
+    /// <summary>
+    /// A reflection-based utility that enables atomic updates to
+    /// designated <c>long</c> fields of designated classes.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// This class is designed for use in atomic data structures in which
+    /// several fields of the same node are independently subject to atomic
+    /// updates. It saves the extra object, and its header and reference,
+    /// that embedding an <see cref="AtomicLong"/> in every node would
+    /// cost.
+    /// </para>
+    /// <para>
+    /// Note that the guarantees of the <see cref="CompareAndSet"/> method
+    /// in this class are weaker than in other atomic classes. Because this
+    /// class cannot ensure that all uses of the field are appropriate for
+    /// purposes of atomic access, it can guarantee atomicity only with
+    /// respect to other invocations of <see cref="CompareAndSet"/> and
+    /// <see cref="Set"/> on the same updater.
+    /// </para>
+    /// <para>
+    /// C# doesn't allow <c>volatile long</c> fields, so unlike the other
+    /// field updaters the field is not required to be volatile. All access
+    /// through the updater has volatile semantics, and is atomic on 32-bit
+    /// platforms too.
+    /// </para>
+    /// <para>
+    /// Based on the on the back port of JCP JSR-166.
+    /// </para>
+    /// </remarks>
+    /// <typeparam name="T">The type of the object holding the updatable field.</typeparam>
+    /// <author>Doug Lea</author>
+    public abstract class AtomicLongFieldUpdater<T> where T : class //JDK_1_6
+    {
+        /// <summary>
+        /// Creates and returns an updater for objects with the given field.
+        /// </summary>
+        /// <param name="fieldName">
+        /// The name of the <c>long</c> field to be updated.
+        /// </param>
+        /// <returns>The updater.</returns>
+        /// <exception cref="ArgumentNullException">
+        /// If <paramref name="fieldName"/> is <c>null</c>.
+        /// </exception>
+        /// <exception cref="ArgumentException">
+        /// If the field doesn't exist or is not a <see cref="long"/>.
+        /// </exception>
+        public static AtomicLongFieldUpdater<T> NewUpdater(string fieldName)
+        {
+            return new Updater(FieldUpdaterGenerator.GetField(typeof (T), fieldName, typeof (long), false));
+        }
+
+        /// <summary>
+        /// Protected do-nothing constructor for use by subclasses.
+        /// </summary>
+        protected AtomicLongFieldUpdater()
+        {
+        }
+
+        /// <summary>
+        /// Atomically sets the field of the given object managed by this
+        /// updater to the <paramref name="newValue"/> if the current value
+        /// == <paramref name="expectedValue"/>. This method is guaranteed to
+        /// be atomic with respect to other calls to <see cref="CompareAndSet"/>
+        /// and <see cref="Set"/>, but not necessarily with respect to other
+        /// changes in the field.
+        /// </summary>
+        /// <param name="obj">An object whose field to conditionally set.</param>
+        /// <param name="expectedValue">The expected value.</param>
+        /// <param name="newValue">The new value.</param>
+        /// <returns><c>true</c> if successful.</returns>
+        public abstract bool CompareAndSet(T obj, long expectedValue, long newValue);
+
+        /// <summary>
+        /// Atomically sets the field of the given object managed by this
+        /// updater to the <paramref name="newValue"/> if the current value
+        /// == <paramref name="expectedValue"/>. May fail spuriously.
+        /// </summary>
+        /// <param name="obj">An object whose field to conditionally set.</param>
+        /// <param name="expectedValue">The expected value.</param>
+        /// <param name="newValue">The new value.</param>
+        /// <returns><c>true</c> if successful.</returns>
+        public abstract bool WeakCompareAndSet(T obj, long expectedValue, long newValue);
+
+        /// <summary>
+        /// Sets the field of the given object managed by this updater to the
+        /// given updated value. This operation is guaranteed to act as a
+        /// volatile store with respect to subsequent invocations of
+        /// <see cref="CompareAndSet"/>.
+        /// </summary>
+        /// <param name="obj">An object whose field to set.</param>
+        /// <param name="newValue">The new value.</param>
+        public abstract void Set(T obj, long newValue);
+
+        /// <summary>
+        /// Eventually sets the field of the given object managed by this
+        /// updater to the given updated value.
+        /// </summary>
+        /// <param name="obj">An object whose field to set.</param>
+        /// <param name="newValue">The new value.</param>
+        public abstract void LazySet(T obj, long newValue);
+
+        /// <summary>
+        /// Gets the current value held in the field of the given object
+        /// managed by this updater.
+        /// </summary>
+        /// <param name="obj">An object whose field to get.</param>
+        /// <returns>The current value.</returns>
+        public abstract long Get(T obj);
+
+        /// <summary>
+        /// Atomically sets the field of the given object managed by this
+        /// updater to the given value and returns the old value.
+        /// </summary>
+        /// <param name="obj">An object whose field to get and set.</param>
+        /// <param name="newValue">The new value.</param>
+        /// <returns>The previous value.</returns>
+        public virtual long Exchange(T obj, long newValue)
+        {
+            for (;;)
+            {
+                long current = Get(obj);
+                if (CompareAndSet(obj, current, newValue))
+                    return current;
+            }
+        }
+
+        /// <summary>
+        /// Atomically increments by one the current value of the field of
+        /// the given object managed by this updater.
+        /// </summary>
+        /// <param name="obj">An object whose field to get and set.</param>
+        /// <returns>The previous value.</returns>
+        public virtual long ReturnValueAndIncrement(T obj)
+        {
+            return AddDeltaAndReturnPreviousValue(obj, 1);
+        }
+
+        /// <summary>
+        /// Atomically decrements by one the current value of the field of
+        /// the given object managed by this updater.
+        /// </summary>
+        /// <param name="obj">An object whose field to get and set.</param>
+        /// <returns>The previous value.</returns>
+        public virtual long ReturnValueAndDecrement(T obj)
+        {
+            return AddDeltaAndReturnPreviousValue(obj, -1);
+        }
+
+        /// <summary>
+        /// Atomically adds the given value to the current value of the field
+        /// of the given object managed by this updater.
+        /// </summary>
+        /// <param name="obj">An object whose field to get and set.</param>
+        /// <param name="deltaValue">The value to add.</param>
+        /// <returns>The previous value.</returns>
+        public virtual long AddDeltaAndReturnPreviousValue(T obj, long deltaValue)
+        {
+            for (;;)
+            {
+                long current = Get(obj);
+                if (CompareAndSet(obj, current, current + deltaValue))
+                    return current;
+            }
+        }
+
+        /// <summary>
+        /// Atomically increments by one the current value of the field of
+        /// the given object managed by this updater.
+        /// </summary>
+        /// <param name="obj">An object whose field to get and set.</param>
+        /// <returns>The updated value.</returns>
+        public virtual long IncrementValueAndReturn(T obj)
+        {
+            return AddDeltaAndReturnNewValue(obj, 1);
+        }
+
+        /// <summary>
+        /// Atomically decrements by one the current value of the field of
+        /// the given object managed by this updater.
+        /// </summary>
+        /// <param name="obj">An object whose field to get and set.</param>
+        /// <returns>The updated value.</returns>
+        public virtual long DecrementValueAndReturn(T obj)
+        {
+            return AddDeltaAndReturnNewValue(obj, -1);
+        }
+
+        /// <summary>
+        /// Atomically adds the given value to the current value of the field
+        /// of the given object managed by this updater.
+        /// </summary>
+        /// <param name="obj">An object whose field to get and set.</param>
+        /// <param name="deltaValue">The value to add.</param>
+        /// <returns>The updated value.</returns>
+        public virtual long AddDeltaAndReturnNewValue(T obj, long deltaValue)
+        {
+            for (;;)
+            {
+                long current = Get(obj);
+                long next = current + deltaValue;
+                if (CompareAndSet(obj, current, next))
+                    return next;
+            }
+        }
+
+        /// <summary>
+        /// Standard updater that applies the generated accessors.
+        /// </summary>
+        private sealed class Updater : AtomicLongFieldUpdater<T>
+        {
+            private readonly Func<T, long> _get;
+            private readonly Action<T, long> _set;
+            private readonly Func<T, long, long, long> _compareExchange;
+            private readonly Func<T, long, long> _exchange;
+            private readonly Func<T, long, long> _add;
+
+            internal Updater(FieldInfo field)
+            {
+                _compareExchange = FieldUpdaterGenerator.CompareExchange<T, long>(field);
+                _exchange = FieldUpdaterGenerator.Exchange<T, long>(field);
+                if (IntPtr.Size == 8)
+                {
+                    _get = FieldUpdaterGenerator.Getter<T, long>(field);
+                    _set = FieldUpdaterGenerator.Setter<T, long>(field);
+                }
+                else
+                {
+                    Func<T, long, long> exchange = _exchange;
+                    _get = FieldUpdaterGenerator.ReadInt64<T>(field);
+                    _set = delegate(T obj, long value) { exchange(obj, value); };
+                }
+                _add = FieldUpdaterGenerator.AddInt64<T>(field);
+            }
+
+            public override bool CompareAndSet(T obj, long expectedValue, long newValue)
+            {
+                return _compareExchange(obj, newValue, expectedValue) == expectedValue;
+            }
+
+            public override bool WeakCompareAndSet(T obj, long expectedValue, long newValue)
+            {
+                return _compareExchange(obj, newValue, expectedValue) == expectedValue;
+            }
+
+            public override void Set(T obj, long newValue)
+            {
+                _set(obj, newValue);
+            }
+
+            public override void LazySet(T obj, long newValue)
+            {
+                _set(obj, newValue);
+            }
+
+            public override long Get(T obj)
+            {
+                return _get(obj);
+            }
+
+            public override long Exchange(T obj, long newValue)
+            {
+                return _exchange(obj, newValue);
+            }
+
+            public override long AddDeltaAndReturnPreviousValue(T obj, long deltaValue)
+            {
+                return _add(obj, deltaValue) - deltaValue;
+            }
+
+            public override long AddDeltaAndReturnNewValue(T obj, long deltaValue)
+            {
+                return _add(obj, deltaValue);
+            }
+        }
+    }
+}
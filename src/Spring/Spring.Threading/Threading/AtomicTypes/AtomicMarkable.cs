@@ -50,10 +50,30 @@ namespace Spring.Threading.AtomicTypes
             internal readonly T _value;
             internal readonly bool _markBit;
 
+            [NonSerialized]
+            private ValueBooleanPair _flipped;
+
             internal ValueBooleanPair(T value, bool markBit) {
                 _value = value;
                 _markBit = markBit;
             }
+
+            /// <summary>
+            /// The pair with the same value and the opposite mark. It is
+            /// created on first use and then shared by both pairs, so that
+            /// toggling the mark back and forth doesn't allocate.
+            /// </summary>
+            internal ValueBooleanPair Flipped {
+                get {
+                    ValueBooleanPair flipped = _flipped;
+                    if (flipped == null) {
+                        flipped = new ValueBooleanPair(_value, !_markBit);
+                        flipped._flipped = this;
+                        _flipped = flipped;
+                    }
+                    return flipped;
+                }
+            }
         }
 
         /// <summary> 
@@ -143,7 +163,7 @@ namespace Spring.Threading.AtomicTypes
             ValueBooleanPair current = Pair;
 
             return AreEqual(expectedValue, current._value) && expectedMark == current._markBit &&
-                ((AreEqual(newValue, current._value) && newMark == current._markBit) || _atomicReference.CompareAndSet(current, new ValueBooleanPair(newValue, newMark)));
+                ((AreEqual(newValue, current._value) && newMark == current._markBit) || _atomicReference.CompareAndSet(current, NewPair(current, newValue, newMark)));
         }
 
         /// <summary> 
@@ -170,7 +190,7 @@ namespace Spring.Threading.AtomicTypes
             ValueBooleanPair current = Pair;
 
             return AreEqual(expectedValue, current._value) && expectedMark == current._markBit &&
-                ((AreEqual(newValue, current._value) && newMark == current._markBit) || _atomicReference.CompareAndSet(current, new ValueBooleanPair(newValue, newMark)));
+                ((AreEqual(newValue, current._value) && newMark == current._markBit) || _atomicReference.CompareAndSet(current, NewPair(current, newValue, newMark)));
         }
 
         /// <summary> 
@@ -185,7 +205,7 @@ namespace Spring.Threading.AtomicTypes
         public void SetNewAtomicValue(T newValue, bool newMark) {
             ValueBooleanPair current = Pair;
             if (!AreEqual(newValue, current._value) || newMark != current._markBit)
-                _atomicReference.Exchange(new ValueBooleanPair(newValue, newMark));
+                _atomicReference.Exchange(NewPair(current, newValue, newMark));
         }
 
         /// <summary> 
@@ -210,7 +230,15 @@ namespace Spring.Threading.AtomicTypes
             ValueBooleanPair current = Pair;
 
             return AreEqual(expectedValue, current._value) 
-                && (newMark == current._markBit || _atomicReference.CompareAndSet(current, new ValueBooleanPair(expectedValue, newMark)));
+                && (newMark == current._markBit || _atomicReference.CompareAndSet(current, current.Flipped));
+        }
+
+        /// <summary>
+        /// Returns the pair to replace <paramref name="current"/> with, reusing
+        /// its flipped twin when only the mark changes.
+        /// </summary>
+        private ValueBooleanPair NewPair(ValueBooleanPair current, T newValue, bool newMark) {
+            return AreEqual(newValue, current._value) ? current.Flipped : new ValueBooleanPair(newValue, newMark);
         }
 
         /// <summary>
@@ -0,0 +1,213 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+using System;
+using System.Reflection;
+
+namespace Spring.Threading.AtomicTypes
+{
+    /// <summary>
+    /// A reflection-based utility that enables atomic updates to
+    /// designated <c>volatile</c> reference fields of designated
+    /// classes.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// This class is designed for use in atomic data structures in which
+    /// several reference fields of the same node are independently subject
+    /// to atomic updates. For example, a tree node might be declared as
+    /// <code>
+    /// class Node {
+    ///     private volatile Node left, right;
+    ///
+    ///     private static readonly AtomicReferenceFieldUpdater&lt;Node, Node&gt; leftUpdater =
+    ///         AtomicReferenceFieldUpdater&lt;Node, Node&gt;.NewUpdater("left");
+    ///
+    ///     bool CompareAndSetLeft(Node expect, Node update) {
+    ///         return leftUpdater.CompareAndSet(this, expect, update);
+    ///     }
+    ///     // ... and so on
+    /// }
+    /// </code>
+    /// </para>
+    /// <para>
+    /// Note that the guarantees of the <see cref="CompareAndSet"/> method
+    /// in this class are weaker than in other atomic classes. Because this
+    /// class cannot ensure that all uses of the field are appropriate for
+    /// purposes of atomic access, it can guarantee atomicity only with
+    /// respect to other invocations of <see cref="CompareAndSet"/> and
+    /// <see cref="Set"/> on the same updater.
+    /// </para>
+    /// <para>
+    /// Based on the on the back port of JCP JSR-166.
+    /// </para>
+    /// </remarks>
+    /// <typeparam name="T">The type of the object holding the updatable field.</typeparam>
+    /// <typeparam name="V">The type of the field.</typeparam>
+    /// <author>Doug Lea</author>
+    public abstract class AtomicReferenceFieldUpdater<T, V> //JDK_1_6
+        where T : class
+        where V : class
+    {
+        /// <summary>
+        /// Creates and returns an updater for objects with the given field.
+        /// </summary>
+        /// <param name="fieldName">
+        /// The name of the <c>volatile</c> field to be updated.
+        /// </param>
+        /// <returns>The updater.</returns>
+        /// <exception cref="ArgumentNullException">
+        /// If <paramref name="fieldName"/> is <c>null</c>.
+        /// </exception>
+        /// <exception cref="ArgumentException">
+        /// If the field doesn't exist, is not of type <typeparamref name="V"/>
+        /// or is not volatile.
+        /// </exception>
+        public static AtomicReferenceFieldUpdater<T, V> NewUpdater(string fieldName)
+        {
+            return new Updater(FieldUpdaterGenerator.GetField(typeof (T), fieldName, typeof (V), true));
+        }
+
+        /// <summary>
+        /// Protected do-nothing constructor for use by subclasses.
+        /// </summary>
+        protected AtomicReferenceFieldUpdater()
+        {
+        }
+
+        /// <summary>
+        /// Atomically sets the field of the given object managed by this
+        /// updater to the <paramref name="newValue"/> if the current value
+        /// is the same instance as <paramref name="expectedValue"/>. This
+        /// method is guaranteed to be atomic with respect to other calls to
+        /// <see cref="CompareAndSet"/> and <see cref="Set"/>, but not
+        /// necessarily with respect to other changes in the field.
+        /// </summary>
+        /// <param name="obj">An object whose field to conditionally set.</param>
+        /// <param name="expectedValue">The expected value.</param>
+        /// <param name="newValue">The new value.</param>
+        /// <returns><c>true</c> if successful.</returns>
+        public abstract bool CompareAndSet(T obj, V expectedValue, V newValue);
+
+        /// <summary>
+        /// Atomically sets the field of the given object managed by this
+        /// updater to the <paramref name="newValue"/> if the current value
+        /// is the same instance as <paramref name="expectedValue"/>. May
+        /// fail spuriously.
+        /// </summary>
+        /// <param name="obj">An object whose field to conditionally set.</param>
+        /// <param name="expectedValue">The expected value.</param>
+        /// <param name="newValue">The new value.</param>
+        /// <returns><c>true</c> if successful.</returns>
+        public abstract bool WeakCompareAndSet(T obj, V expectedValue, V newValue);
+
+        /// <summary>
+        /// Sets the field of the given object managed by this updater to the
+        /// given updated value. This operation is guaranteed to act as a
+        /// volatile store with respect to subsequent invocations of
+        /// <see cref="CompareAndSet"/>.
+        /// </summary>
+        /// <param name="obj">An object whose field to set.</param>
+        /// <param name="newValue">The new value.</param>
+        public abstract void Set(T obj, V newValue);
+
+        /// <summary>
+        /// Eventually sets the field of the given object managed by this
+        /// updater to the given updated value.
+        /// </summary>
+        /// <param name="obj">An object whose field to set.</param>
+        /// <param name="newValue">The new value.</param>
+        public abstract void LazySet(T obj, V newValue);
+
+        /// <summary>
+        /// Gets the current value held in the field of the given object
+        /// managed by this updater.
+        /// </summary>
+        /// <param name="obj">An object whose field to get.</param>
+        /// <returns>The current value.</returns>
+        public abstract V Get(T obj);
+
+        /// <summary>
+        /// Atomically sets the field of the given object managed by this
+        /// updater to the given value and returns the old value.
+        /// </summary>
+        /// <param name="obj">An object whose field to get and set.</param>
+        /// <param name="newValue">The new value.</param>
+        /// <returns>The previous value.</returns>
+        public virtual V Exchange(T obj, V newValue)
+        {
+            for (;;)
+            {
+                V current = Get(obj);
+                if (CompareAndSet(obj, current, newValue))
+                    return current;
+            }
+        }
+
+        /// <summary>
+        /// Standard updater that applies the generated accessors.
+        /// </summary>
+        private sealed class Updater : AtomicReferenceFieldUpdater<T, V>
+        {
+            private readonly Func<T, V> _get;
+            private readonly Action<T, V> _set;
+            private readonly Func<T, V, V, V> _compareExchange;
+            private readonly Func<T, V, V> _exchange;
+
+            internal Updater(FieldInfo field)
+            {
+                _get = FieldUpdaterGenerator.Getter<T, V>(field);
+                _set = FieldUpdaterGenerator.Setter<T, V>(field);
+                _compareExchange = FieldUpdaterGenerator.CompareExchange<T, V>(field);
+                _exchange = FieldUpdaterGenerator.Exchange<T, V>(field);
+            }
+
+            public override bool CompareAndSet(T obj, V expectedValue, V newValue)
+            {
+                return ReferenceEquals(expectedValue, _compareExchange(obj, newValue, expectedValue));
+            }
+
+            public override bool WeakCompareAndSet(T obj, V expectedValue, V newValue)
+            {
+                return ReferenceEquals(expectedValue, _compareExchange(obj, newValue, expectedValue));
+            }
+
+            public override void Set(T obj, V newValue)
+            {
+                _set(obj, newValue);
+            }
+
+            public override void LazySet(T obj, V newValue)
+            {
+                _set(obj, newValue);
+            }
+
+            public override V Get(T obj)
+            {
+                return _get(obj);
+            }
+
+            public override V Exchange(T obj, V newValue)
+            {
+                return _exchange(obj, newValue);
+            }
+        }
+    }
+}
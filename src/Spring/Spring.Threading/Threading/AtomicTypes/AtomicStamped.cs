@@ -182,7 +182,7 @@ namespace Spring.Threading.AtomicTypes
         {
             ValueIntegerPair current = Pair;
             return AreEqual(expectedValue, current.Value) && expectedStamp == current.Integer
-                && ((newValue.Equals(current.Value) && newStamp == current.Integer) || _atomicReference.WeakCompareAndSet(current, new ValueIntegerPair(newValue, newStamp)));
+                && ((AreEqual(newValue, current.Value) && newStamp == current.Integer) || _atomicReference.WeakCompareAndSet(current, new ValueIntegerPair(newValue, newStamp)));
         }
 
         /// <summary> 
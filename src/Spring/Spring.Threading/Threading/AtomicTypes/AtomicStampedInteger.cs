@@ -0,0 +1,223 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+using System;
+using System.Threading;
+
+namespace Spring.Threading.AtomicTypes
+{
+    /// <summary>
+    /// An <see cref="AtomicStampedInteger"/> maintains an <see cref="int"/>
+    /// value along with an integer "stamp", that can be updated atomically.
+    /// <p/>
+    /// Unlike <see cref="AtomicStamped{T}"/>, both halves are packed into a
+    /// single <see cref="long"/> that is updated with one
+    /// <see cref="Interlocked.CompareExchange(ref long,long,long)"/>, so no
+    /// operation ever allocates. This suits ABA-safe structures that link
+    /// their nodes by array index rather than by reference, such as free
+    /// lists over a preallocated pool.
+    /// <p/>
+    /// NOTE: this class is NOT present in java.util.concurrent.
+    /// </summary>
+    [Serializable]
+    public class AtomicStampedInteger //NET_ONLY
+    {
+        private static readonly bool _isNativeLongAccess = IntPtr.Size == 8;
+
+        private long _packed;
+
+        /// <summary>
+        /// Creates a new <see cref="AtomicStampedInteger"/> with the given
+        /// initial values.
+        /// </summary>
+        /// <param name="initialValue">
+        /// The initial value
+        /// </param>
+        /// <param name="initialStamp">
+        /// The initial stamp
+        /// </param>
+        public AtomicStampedInteger(int initialValue, int initialStamp)
+        {
+            _packed = Pack(initialValue, initialStamp);
+        }
+
+        /// <summary>
+        ///	Returns the current value.
+        /// </summary>
+        /// <returns>
+        /// The current value
+        /// </returns>
+        public int Value
+        {
+            get { return ValueOf(Packed); }
+        }
+
+        /// <summary>
+        /// Returns the current value of the stamp.
+        /// </summary>
+        /// <returns>
+        /// The current value of the stamp
+        /// </returns>
+        public int Stamp
+        {
+            get { return StampOf(Packed); }
+        }
+
+        private long Packed
+        {
+            get
+            {
+                return _isNativeLongAccess ?
+                    Thread.VolatileRead(ref _packed) : Interlocked.Read(ref _packed);
+            }
+        }
+
+        /// <summary>
+        /// Returns both the current value and the stamp.
+        /// </summary>
+        /// <param name="stamp">
+        /// On return, holds the value of the stamp.
+        /// </param>
+        /// <returns>
+        /// The current value
+        /// </returns>
+        public int GetValue(out int stamp)
+        {
+            long p = Packed;
+            stamp = StampOf(p);
+            return ValueOf(p);
+        }
+
+        /// <summary>
+        /// Atomically sets both the value and stamp to the given update values
+        /// if the current value is equal to the expected value and the
+        /// current stamp is equal to the expected stamp. May fail spuriously.
+        /// </summary>
+        /// <param name="expectedValue">
+        /// The expected value
+        /// </param>
+        /// <param name="newValue">
+        /// The new value
+        /// </param>
+        /// <param name="expectedStamp">
+        /// The expected value of the stamp
+        /// </param>
+        /// <param name="newStamp">
+        /// The new value for the stamp
+        /// </param>
+        /// <returns>
+        /// True if successful
+        /// </returns>
+        public virtual bool WeakCompareAndSet(int expectedValue, int newValue, int expectedStamp, int newStamp)
+        {
+            return CompareAndSet(expectedValue, newValue, expectedStamp, newStamp);
+        }
+
+        /// <summary>
+        /// Atomically sets both the value and stamp to the given update values
+        /// if the current value is equal to the expected value and the
+        /// current stamp is equal to the expected stamp.
+        /// </summary>
+        /// <param name="expectedValue">
+        /// The expected value
+        /// </param>
+        /// <param name="newValue">
+        /// The new value
+        /// </param>
+        /// <param name="expectedStamp">
+        /// The expected value of the stamp
+        /// </param>
+        /// <param name="newStamp">
+        /// The new value for the stamp
+        /// </param>
+        /// <returns>
+        /// True if successful, false otherwise.
+        /// </returns>
+        public virtual bool CompareAndSet(int expectedValue, int newValue, int expectedStamp, int newStamp)
+        {
+            long expected = Pack(expectedValue, expectedStamp);
+            return Interlocked.CompareExchange(ref _packed, Pack(newValue, newStamp), expected) == expected;
+        }
+
+        /// <summary>
+        /// Unconditionally sets both the value and stamp.
+        /// </summary>
+        /// <param name="newValue">
+        /// The new value
+        /// </param>
+        /// <param name="newStamp">
+        /// The new value for the stamp
+        /// </param>
+        public void SetNewAtomicValue(int newValue, int newStamp)
+        {
+            Interlocked.Exchange(ref _packed, Pack(newValue, newStamp));
+        }
+
+        /// <summary>
+        /// Atomically sets the value of the stamp to the given update value
+        /// if the current value is equal to the expected value. May fail
+        /// spuriously when the stamp is changed concurrently.
+        /// </summary>
+        /// <param name="expectedValue">
+        /// The expected value
+        /// </param>
+        /// <param name="newStamp">
+        /// The new value for the stamp
+        /// </param>
+        /// <returns>
+        /// True if successful
+        /// </returns>
+        public virtual bool AttemptStamp(int expectedValue, int newStamp)
+        {
+            long current = Packed;
+            return ValueOf(current) == expectedValue &&
+                   (StampOf(current) == newStamp ||
+                    Interlocked.CompareExchange(ref _packed, Pack(expectedValue, newStamp), current) == current);
+        }
+
+        /// <summary>
+        /// Returns the String representation of the current value and stamp.
+        /// </summary>
+        /// <returns>
+        /// The String representation of the current value and stamp.
+        /// </returns>
+        public override string ToString()
+        {
+            int stamp;
+            int value = GetValue(out stamp);
+            return "[" + value + ", " + stamp + "]";
+        }
+
+        private static long Pack(int value, int stamp)
+        {
+            return ((long) stamp << 32) | (uint) value;
+        }
+
+        private static int ValueOf(long packed)
+        {
+            return (int) packed;
+        }
+
+        private static int StampOf(long packed)
+        {
+            return (int) (packed >> 32);
+        }
+    }
+}
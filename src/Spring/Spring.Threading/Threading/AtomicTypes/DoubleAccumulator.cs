@@ -0,0 +1,185 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+using System;
+
+namespace Spring.Threading.AtomicTypes
+{
+    /// <summary>
+    /// One or more variables that together maintain a running
+    /// <see cref="double"/> value updated using a supplied function. When
+    /// updates (method <see cref="Accumulate"/>) are contended across
+    /// threads, the set of variables may grow dynamically to reduce
+    /// contention. Property <see cref="Value"/> returns the current value
+    /// across the variables maintaining updates.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// This class is usually preferable to a single shared variable when
+    /// multiple threads update a common value that is used for purposes
+    /// such as collecting statistics. For example, to maintain a running maximum:
+    /// <code>
+    /// DoubleAccumulator max = new DoubleAccumulator(Math.Max, double.NegativeInfinity);
+    /// </code>
+    /// </para>
+    /// <para>
+    /// The order of accumulation within or across threads is not guaranteed
+    /// and cannot be depended upon, so this class is only applicable to
+    /// functions for which the order of accumulation does not matter. The
+    /// supplied accumulator function should be side-effect-free, since it
+    /// may be re-applied when attempted updates fail due to contention
+    /// among threads.
+    /// </para>
+    /// <para>
+    /// Based on the on the back port of JCP JSR-166.
+    /// </para>
+    /// </remarks>
+    /// <author>Doug Lea</author>
+    public class DoubleAccumulator : Striped64 //JDK_1_8
+    {
+        private readonly Func<double, double, double> _function;
+        private readonly long _identity; // bits of the identity value
+
+        /// <summary>
+        /// Creates a new instance using the given accumulator function and
+        /// identity element.
+        /// </summary>
+        /// <param name="accumulatorFunction">
+        /// A side-effect-free function of two arguments.
+        /// </param>
+        /// <param name="identity">
+        /// Identity (initial value) for the accumulator function.
+        /// </param>
+        /// <exception cref="ArgumentNullException">
+        /// If <paramref name="accumulatorFunction"/> is <c>null</c>.
+        /// </exception>
+        public DoubleAccumulator(Func<double, double, double> accumulatorFunction, double identity)
+        {
+            if (accumulatorFunction == null) throw new ArgumentNullException("accumulatorFunction");
+            _function = accumulatorFunction;
+            _identity = BitConverter.DoubleToInt64Bits(identity);
+            Base = _identity;
+        }
+
+        /// <summary>
+        /// Updates with the given value.
+        /// </summary>
+        /// <param name="x">The value.</param>
+        public void Accumulate(double x)
+        {
+            Cell[] cs;
+            long b, v, r;
+            int m;
+            Cell c;
+            if ((cs = Cells) != null ||
+                ((r = Apply(b = Base, x)) != b && !CasBase(b, r)))
+            {
+                bool uncontended = true;
+                if (cs == null || (m = cs.Length - 1) < 0 ||
+                    (c = cs[Probe & m]) == null ||
+                    !(uncontended = (r = Apply(v = c.Value, x)) == v || c.Cas(v, r)))
+                    DoubleAccumulate(x, _function, uncontended);
+            }
+        }
+
+        private long Apply(long bits, double x)
+        {
+            return BitConverter.DoubleToInt64Bits(_function(BitConverter.Int64BitsToDouble(bits), x));
+        }
+
+        /// <summary>
+        /// Returns the current value. The returned value is <b>NOT</b> an
+        /// atomic snapshot; invocation in the absence of concurrent updates
+        /// returns an accurate result, but concurrent updates that occur
+        /// while the value is being calculated might not be incorporated.
+        /// </summary>
+        public double Value
+        {
+            get
+            {
+                Cell[] cs = Cells;
+                double result = BitConverter.Int64BitsToDouble(Base);
+                if (cs != null)
+                {
+                    foreach (Cell c in cs)
+                        if (c != null) result = _function(result, BitConverter.Int64BitsToDouble(c.Value));
+                }
+                return result;
+            }
+        }
+
+        /// <summary>
+        /// Resets variables maintaining updates to the identity value. This
+        /// method may be a useful alternative to creating a new updater, but
+        /// is only effective if there are no concurrent updates.
+        /// </summary>
+        public void Reset()
+        {
+            Cell[] cs = Cells;
+            Base = _identity;
+            if (cs != null)
+            {
+                foreach (Cell c in cs)
+                    if (c != null) c.Value = _identity;
+            }
+        }
+
+        /// <summary>
+        /// Equivalent in effect to reading <see cref="Value"/> followed by
+        /// <see cref="Reset"/>. If there are updates concurrent with this
+        /// method, the returned value is <b>not</b> guaranteed to be the
+        /// final value occurring before the reset.
+        /// </summary>
+        /// <returns>The value before reset.</returns>
+        public double ReturnValueAndReset()
+        {
+            Cell[] cs = Cells;
+            double result = BitConverter.Int64BitsToDouble(ExchangeBase(_identity));
+            if (cs != null)
+            {
+                foreach (Cell c in cs)
+                {
+                    if (c != null)
+                        result = _function(result, BitConverter.Int64BitsToDouble(c.Exchange(_identity)));
+                }
+            }
+            return result;
+        }
+
+        /// <summary>
+        /// Returns the String representation of the current value.
+        /// </summary>
+        /// <returns>The String representation of the current value.</returns>
+        public override string ToString()
+        {
+            return Value.ToString();
+        }
+
+        /// <summary>
+        /// Implicit converts <see cref="DoubleAccumulator"/> to double.
+        /// </summary>
+        /// <param name="accumulator">Instance of <see cref="DoubleAccumulator"/>.</param>
+        /// <returns>The current value of <paramref name="accumulator"/>.</returns>
+        public static implicit operator double(DoubleAccumulator accumulator)
+        {
+            return accumulator.Value;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+using System;
+
+namespace Spring.Threading.AtomicTypes
+{
+    /// <summary>
+    /// One or more variables that together maintain an initially zero
+    /// <see cref="double"/> sum. When updates (method <see cref="Add"/>)
+    /// are contended across threads, the set of variables may grow
+    /// dynamically to reduce contention. Method <see cref="Sum"/> returns
+    /// the current total combined across the variables maintaining the sum.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// The order of accumulation within or across threads is not
+    /// guaranteed. Thus, this class may not be applicable if numerical
+    /// stability is required, especially when combining values of
+    /// substantially different orders of magnitude.
+    /// </para>
+    /// <para>
+    /// Based on the on the back port of JCP JSR-166.
+    /// </para>
+    /// </remarks>
+    /// <author>Doug Lea</author>
+    public class DoubleAdder : Striped64 //JDK_1_8
+    {
+        /*
+         * Note that we must use "long" for underlying representations,
+         * because there is no compareAndSet for double, due to the fact
+         * that the bitwise equals used in any CAS implementation is not
+         * the same as double-precision equals.
+         */
+
+        /// <summary>
+        /// Creates a new adder with initial sum of zero.
+        /// </summary>
+        public DoubleAdder()
+        {
+        }
+
+        /// <summary>
+        /// Adds the given value.
+        /// </summary>
+        /// <param name="x">The value to add.</param>
+        public void Add(double x)
+        {
+            Cell[] cs;
+            long b, v;
+            int m;
+            Cell c;
+            if ((cs = Cells) != null ||
+                !CasBase(b = Base, BitConverter.DoubleToInt64Bits(BitConverter.Int64BitsToDouble(b) + x)))
+            {
+                bool uncontended = true;
+                if (cs == null || (m = cs.Length - 1) < 0 ||
+                    (c = cs[Probe & m]) == null ||
+                    !(uncontended = c.Cas(v = c.Value,
+                        BitConverter.DoubleToInt64Bits(BitConverter.Int64BitsToDouble(v) + x))))
+                    DoubleAccumulate(x, null, uncontended);
+            }
+        }
+
+        /// <summary>
+        /// Returns the current sum. The returned value is <b>NOT</b> an
+        /// atomic snapshot; invocation in the absence of concurrent updates
+        /// returns an accurate result, but concurrent updates that occur
+        /// while the sum is being calculated might not be incorporated.
+        /// Also, because floating-point arithmetic is not strictly
+        /// associative, the returned result need not be identical to the
+        /// value that would be obtained in a sequential series of updates
+        /// to a single variable.
+        /// </summary>
+        /// <returns>The sum.</returns>
+        public double Sum()
+        {
+            Cell[] cs = Cells;
+            double sum = BitConverter.Int64BitsToDouble(Base);
+            if (cs != null)
+            {
+                foreach (Cell c in cs)
+                    if (c != null) sum += BitConverter.Int64BitsToDouble(c.Value);
+            }
+            return sum;
+        }
+
+        /// <summary>
+        /// Resets variables maintaining the sum to zero. This method may be
+        /// a useful alternative to creating a new adder, but is only
+        /// effective if there are no concurrent updates.
+        /// </summary>
+        public void Reset()
+        {
+            Cell[] cs = Cells;
+            Base = 0L; // relies on fact that double 0 must have same rep as long
+            if (cs != null)
+            {
+                foreach (Cell c in cs)
+                    if (c != null) c.Value = 0L;
+            }
+        }
+
+        /// <summary>
+        /// Equivalent in effect to <see cref="Sum"/> followed by
+        /// <see cref="Reset"/>. If there are updates concurrent with this
+        /// method, the returned value is <b>not</b> guaranteed to be the
+        /// final value occurring before the reset.
+        /// </summary>
+        /// <returns>The sum.</returns>
+        public double SumThenReset()
+        {
+            Cell[] cs = Cells;
+            double sum = BitConverter.Int64BitsToDouble(ExchangeBase(0L));
+            if (cs != null)
+            {
+                foreach (Cell c in cs)
+                    if (c != null) sum += BitConverter.Int64BitsToDouble(c.Exchange(0L));
+            }
+            return sum;
+        }
+
+        /// <summary>
+        /// Returns the String representation of the <see cref="Sum"/>.
+        /// </summary>
+        /// <returns>The String representation of the <see cref="Sum"/>.</returns>
+        public override string ToString()
+        {
+            return Sum().ToString();
+        }
+
+        /// <summary>
+        /// Implicit converts <see cref="DoubleAdder"/> to double.
+        /// </summary>
+        /// <param name="adder">Instance of <see cref="DoubleAdder"/>.</param>
+        /// <returns>The <see cref="Sum"/> of <paramref name="adder"/>.</returns>
+        public static implicit operator double(DoubleAdder adder)
+        {
+            return adder.Sum();
+        }
+    }
+}
@@ -0,0 +1,272 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+using System;
+using System.Reflection;
+using System.Reflection.Emit;
+using System.Runtime.CompilerServices;
+using System.Security;
+
+namespace Spring.Threading.AtomicTypes
+{
+    /// <summary>
+    /// Generates the field accessors used by the field updaters.
+    /// </summary>
+    /// <remarks>
+    /// When the code generation permission is granted, the accessors are
+    /// <see cref="DynamicMethod"/>s that apply <see cref="System.Threading.Interlocked"/>
+    /// directly to the field, so an update costs the same as updating an
+    /// <see cref="AtomicInteger"/>. Otherwise the accessors fall back to
+    /// reflection, with every read-modify-write done while holding the
+    /// monitor of the target instance.
+    /// <p/>
+    /// NOTE: this class is NOT present in java.util.concurrent.
+    /// </remarks>
+    internal static class FieldUpdaterGenerator //NET_ONLY
+    {
+        /// <summary>
+        /// Finds the instance field named <paramref name="fieldName"/> of type
+        /// <paramref name="fieldType"/> declared by <paramref name="type"/>.
+        /// The field must be volatile when <paramref name="requireVolatile"/>
+        /// is <c>true</c>.
+        /// </summary>
+        /// <exception cref="ArgumentNullException">
+        /// If <paramref name="fieldName"/> is <c>null</c>.
+        /// </exception>
+        /// <exception cref="ArgumentException">
+        /// If the field doesn't exist, is not of the given type or is
+        /// required to be volatile but is not.
+        /// </exception>
+        internal static FieldInfo GetField(Type type, string fieldName, Type fieldType, bool requireVolatile)
+        {
+            if (fieldName == null) throw new ArgumentNullException("fieldName");
+            FieldInfo field = type.GetField(fieldName,
+                BindingFlags.Instance | BindingFlags.Public | BindingFlags.NonPublic | BindingFlags.DeclaredOnly);
+            if (field == null)
+                throw new ArgumentException(type + " has no instance field named " + fieldName, "fieldName");
+            if (field.FieldType != fieldType)
+                throw new ArgumentException(
+                    "Field " + fieldName + " must be of type " + fieldType + " but is " + field.FieldType, "fieldName");
+            if (requireVolatile && Array.IndexOf(field.GetRequiredCustomModifiers(), typeof (IsVolatile)) < 0)
+                throw new ArgumentException("Field " + fieldName + " must be volatile.", "fieldName");
+            return field;
+        }
+
+        internal static Func<T, V> Getter<T, V>(FieldInfo field) where T : class
+        {
+            try
+            {
+                DynamicMethod dm = NewMethod(field, typeof (V), typeof (T));
+                ILGenerator il = dm.GetILGenerator();
+                il.Emit(OpCodes.Ldarg_0);
+                il.Emit(OpCodes.Volatile);
+                il.Emit(OpCodes.Ldfld, field);
+                il.Emit(OpCodes.Ret);
+                return (Func<T, V>) dm.CreateDelegate(typeof (Func<T, V>));
+            }
+            catch (SecurityException)
+            {
+                return delegate(T obj) { lock (obj) return (V) field.GetValue(obj); };
+            }
+        }
+
+        internal static Action<T, V> Setter<T, V>(FieldInfo field) where T : class
+        {
+            try
+            {
+                DynamicMethod dm = NewMethod(field, null, typeof (T), typeof (V));
+                ILGenerator il = dm.GetILGenerator();
+                il.Emit(OpCodes.Ldarg_0);
+                il.Emit(OpCodes.Ldarg_1);
+                il.Emit(OpCodes.Volatile);
+                il.Emit(OpCodes.Stfld, field);
+                il.Emit(OpCodes.Ret);
+                return (Action<T, V>) dm.CreateDelegate(typeof (Action<T, V>));
+            }
+            catch (SecurityException)
+            {
+                return delegate(T obj, V value) { lock (obj) field.SetValue(obj, value); };
+            }
+        }
+
+        /// <summary>
+        /// Returns a delegate that performs <c>Interlocked.CompareExchange(ref
+        /// obj.field, value, comparand)</c> and returns the original value.
+        /// </summary>
+        internal static Func<T, V, V, V> CompareExchange<T, V>(FieldInfo field) where T : class
+        {
+            try
+            {
+                return (Func<T, V, V, V>) EmitInterlocked(
+                    field, "CompareExchange", typeof (Func<T, V, V, V>), typeof (T), typeof (V), typeof (V));
+            }
+            catch (SecurityException)
+            {
+                bool isValueType = typeof (V).IsValueType;
+                return delegate(T obj, V value, V comparand)
+                           {
+                               lock (obj)
+                               {
+                                   object current = field.GetValue(obj);
+                                   if (isValueType ? Equals(current, comparand) : ReferenceEquals(current, comparand))
+                                       field.SetValue(obj, value);
+                                   return (V) current;
+                               }
+                           };
+            }
+        }
+
+        /// <summary>
+        /// Returns a delegate that performs <c>Interlocked.Exchange(ref
+        /// obj.field, value)</c> and returns the original value.
+        /// </summary>
+        internal static Func<T, V, V> Exchange<T, V>(FieldInfo field) where T : class
+        {
+            try
+            {
+                return (Func<T, V, V>) EmitInterlocked(
+                    field, "Exchange", typeof (Func<T, V, V>), typeof (T), typeof (V));
+            }
+            catch (SecurityException)
+            {
+                return delegate(T obj, V value)
+                           {
+                               lock (obj)
+                               {
+                                   object current = field.GetValue(obj);
+                                   field.SetValue(obj, value);
+                                   return (V) current;
+                               }
+                           };
+            }
+        }
+
+        /// <summary>
+        /// Returns a delegate that performs <c>Interlocked.Add(ref
+        /// obj.field, value)</c> and returns the new value.
+        /// </summary>
+        internal static Func<T, int, int> AddInt32<T>(FieldInfo field) where T : class
+        {
+            try
+            {
+                return (Func<T, int, int>) EmitInterlocked(
+                    field, "Add", typeof (Func<T, int, int>), typeof (T), typeof (int));
+            }
+            catch (SecurityException)
+            {
+                return delegate(T obj, int delta)
+                           {
+                               lock (obj)
+                               {
+                                   int next = (int) field.GetValue(obj) + delta;
+                                   field.SetValue(obj, next);
+                                   return next;
+                               }
+                           };
+            }
+        }
+
+        /// <summary>
+        /// Returns a delegate that performs <c>Interlocked.Add(ref
+        /// obj.field, value)</c> and returns the new value.
+        /// </summary>
+        internal static Func<T, long, long> AddInt64<T>(FieldInfo field) where T : class
+        {
+            try
+            {
+                return (Func<T, long, long>) EmitInterlocked(
+                    field, "Add", typeof (Func<T, long, long>), typeof (T), typeof (long));
+            }
+            catch (SecurityException)
+            {
+                return delegate(T obj, long delta)
+                           {
+                               lock (obj)
+                               {
+                                   long next = (long) field.GetValue(obj) + delta;
+                                   field.SetValue(obj, next);
+                                   return next;
+                               }
+                           };
+            }
+        }
+
+        /// <summary>
+        /// Returns a delegate that performs <c>Interlocked.Read(ref
+        /// obj.field)</c>, needed where 64-bit reads are not atomic.
+        /// </summary>
+        internal static Func<T, long> ReadInt64<T>(FieldInfo field) where T : class
+        {
+            try
+            {
+                return (Func<T, long>) EmitInterlocked(field, "Read", typeof (Func<T, long>), typeof (T));
+            }
+            catch (SecurityException)
+            {
+                return delegate(T obj) { lock (obj) return (long) field.GetValue(obj); };
+            }
+        }
+
+        private static Delegate EmitInterlocked(FieldInfo field, string methodName, Type delegateType,
+                                                Type ownerType, params Type[] argTypes)
+        {
+            Type[] parameterTypes = new Type[argTypes.Length + 1];
+            parameterTypes[0] = field.FieldType.MakeByRefType();
+            Array.Copy(argTypes, 0, parameterTypes, 1, argTypes.Length);
+            MethodInfo method = FindInterlockedMethod(methodName, parameterTypes);
+
+            Type[] dmParameterTypes = new Type[argTypes.Length + 1];
+            dmParameterTypes[0] = ownerType;
+            Array.Copy(argTypes, 0, dmParameterTypes, 1, argTypes.Length);
+            DynamicMethod dm = NewMethod(field, method.ReturnType, dmParameterTypes);
+            ILGenerator il = dm.GetILGenerator();
+            il.Emit(OpCodes.Ldarg_0);
+            il.Emit(OpCodes.Ldflda, field);
+            for (short i = 1; i <= argTypes.Length; i++) il.Emit(OpCodes.Ldarg, i);
+            il.Emit(OpCodes.Call, method);
+            il.Emit(OpCodes.Ret);
+            return dm.CreateDelegate(delegateType);
+        }
+
+        private static MethodInfo FindInterlockedMethod(string methodName, Type[] parameterTypes)
+        {
+            MethodInfo method = typeof (System.Threading.Interlocked).GetMethod(
+                methodName, BindingFlags.Public | BindingFlags.Static, null, parameterTypes, null);
+            if (method != null) return method;
+
+            // Reference fields use the generic overload, e.g. CompareExchange<T>(ref T, T, T).
+            foreach (MethodInfo m in typeof (System.Threading.Interlocked).GetMethods(BindingFlags.Public | BindingFlags.Static))
+            {
+                if (m.Name == methodName && m.IsGenericMethodDefinition &&
+                    m.GetParameters().Length == parameterTypes.Length)
+                {
+                    return m.MakeGenericMethod(parameterTypes[1]);
+                }
+            }
+            throw new NotSupportedException("Interlocked." + methodName + " doesn't support " + parameterTypes[1]);
+        }
+
+        private static DynamicMethod NewMethod(FieldInfo field, Type returnType, params Type[] parameterTypes)
+        {
+            return new DynamicMethod(field.DeclaringType.Name + "_" + field.Name, returnType,
+                                     parameterTypes, field.DeclaringType.Module, true);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+using System;
+
+namespace Spring.Threading.AtomicTypes
+{
+    /// <summary>
+    /// One or more variables that together maintain a running
+    /// <see cref="long"/> value updated using a supplied function. When
+    /// updates (method <see cref="Accumulate"/>) are contended across
+    /// threads, the set of variables may grow dynamically to reduce
+    /// contention. Property <see cref="Value"/> returns the current value
+    /// across the variables maintaining updates.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// This class is usually preferable to <see cref="AtomicLong"/> when
+    /// multiple threads update a common value that is used for purposes
+    /// such as collecting statistics, not for fine-grained synchronization
+    /// control. For example, to maintain a running maximum:
+    /// <code>
+    /// LongAccumulator max = new LongAccumulator(Math.Max, long.MinValue);
+    /// </code>
+    /// </para>
+    /// <para>
+    /// The order of accumulation within or across threads is not guaranteed
+    /// and cannot be depended upon, so this class is only applicable to
+    /// functions for which the order of accumulation does not matter. The
+    /// supplied accumulator function should be side-effect-free, since it
+    /// may be re-applied when attempted updates fail due to contention
+    /// among threads.
+    /// </para>
+    /// <para>
+    /// Based on the on the back port of JCP JSR-166.
+    /// </para>
+    /// </remarks>
+    /// <author>Doug Lea</author>
+    public class LongAccumulator : Striped64 //JDK_1_8
+    {
+        private readonly Func<long, long, long> _function;
+        private readonly long _identity;
+
+        /// <summary>
+        /// Creates a new instance using the given accumulator function and
+        /// identity element.
+        /// </summary>
+        /// <param name="accumulatorFunction">
+        /// A side-effect-free function of two arguments.
+        /// </param>
+        /// <param name="identity">
+        /// Identity (initial value) for the accumulator function.
+        /// </param>
+        /// <exception cref="ArgumentNullException">
+        /// If <paramref name="accumulatorFunction"/> is <c>null</c>.
+        /// </exception>
+        public LongAccumulator(Func<long, long, long> accumulatorFunction, long identity)
+        {
+            if (accumulatorFunction == null) throw new ArgumentNullException("accumulatorFunction");
+            _function = accumulatorFunction;
+            _identity = identity;
+            Base = identity;
+        }
+
+        /// <summary>
+        /// Updates with the given value.
+        /// </summary>
+        /// <param name="x">The value.</param>
+        public void Accumulate(long x)
+        {
+            Cell[] cs;
+            long b, v, r;
+            int m;
+            Cell c;
+            if ((cs = Cells) != null ||
+                ((r = _function(b = Base, x)) != b && !CasBase(b, r)))
+            {
+                bool uncontended = true;
+                if (cs == null || (m = cs.Length - 1) < 0 ||
+                    (c = cs[Probe & m]) == null ||
+                    !(uncontended = (r = _function(v = c.Value, x)) == v || c.Cas(v, r)))
+                    LongAccumulate(x, _function, uncontended);
+            }
+        }
+
+        /// <summary>
+        /// Returns the current value. The returned value is <b>NOT</b> an
+        /// atomic snapshot; invocation in the absence of concurrent updates
+        /// returns an accurate result, but concurrent updates that occur
+        /// while the value is being calculated might not be incorporated.
+        /// </summary>
+        public long Value
+        {
+            get
+            {
+                Cell[] cs = Cells;
+                long result = Base;
+                if (cs != null)
+                {
+                    foreach (Cell c in cs)
+                        if (c != null) result = _function(result, c.Value);
+                }
+                return result;
+            }
+        }
+
+        /// <summary>
+        /// Resets variables maintaining updates to the identity value. This
+        /// method may be a useful alternative to creating a new updater, but
+        /// is only effective if there are no concurrent updates.
+        /// </summary>
+        public void Reset()
+        {
+            Cell[] cs = Cells;
+            Base = _identity;
+            if (cs != null)
+            {
+                foreach (Cell c in cs)
+                    if (c != null) c.Value = _identity;
+            }
+        }
+
+        /// <summary>
+        /// Equivalent in effect to reading <see cref="Value"/> followed by
+        /// <see cref="Reset"/>. If there are updates concurrent with this
+        /// method, the returned value is <b>not</b> guaranteed to be the
+        /// final value occurring before the reset.
+        /// </summary>
+        /// <returns>The value before reset.</returns>
+        public long ReturnValueAndReset()
+        {
+            Cell[] cs = Cells;
+            long result = ExchangeBase(_identity);
+            if (cs != null)
+            {
+                foreach (Cell c in cs)
+                {
+                    if (c != null)
+                        result = _function(result, c.Exchange(_identity));
+                }
+            }
+            return result;
+        }
+
+        /// <summary>
+        /// Returns the String representation of the current value.
+        /// </summary>
+        /// <returns>The String representation of the current value.</returns>
+        public override string ToString()
+        {
+            return Value.ToString();
+        }
+
+        /// <summary>
+        /// Implicit converts <see cref="LongAccumulator"/> to long.
+        /// </summary>
+        /// <param name="accumulator">Instance of <see cref="LongAccumulator"/>.</param>
+        /// <returns>The current value of <paramref name="accumulator"/>.</returns>
+        public static implicit operator long(LongAccumulator accumulator)
+        {
+            return accumulator.Value;
+        }
+    }
+}
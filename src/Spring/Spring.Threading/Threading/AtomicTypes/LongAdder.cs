@@ -0,0 +1,168 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+namespace Spring.Threading.AtomicTypes
+{
+    /// <summary>
+    /// One or more variables that together maintain an initially zero
+    /// <see cref="long"/> sum. When updates (method <see cref="Add"/>) are
+    /// contended across threads, the set of variables may grow dynamically
+    /// to reduce contention. Method <see cref="Sum"/> (or, equivalently,
+    /// the implicit conversion to <see cref="long"/>) returns the current
+    /// total combined across the variables maintaining the sum.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// This class is usually preferable to <see cref="AtomicLong"/> when
+    /// multiple threads update a common sum that is used for purposes such
+    /// as collecting statistics, not for fine-grained synchronization
+    /// control. Under low update contention, the two classes have similar
+    /// characteristics. But under high contention, expected throughput of
+    /// this class is significantly higher, at the expense of higher space
+    /// consumption.
+    /// </para>
+    /// <para>
+    /// Based on the on the back port of JCP JSR-166.
+    /// </para>
+    /// </remarks>
+    /// <author>Doug Lea</author>
+    public class LongAdder : Striped64 //JDK_1_8
+    {
+        /// <summary>
+        /// Creates a new adder with initial sum of zero.
+        /// </summary>
+        public LongAdder()
+        {
+        }
+
+        /// <summary>
+        /// Adds the given value.
+        /// </summary>
+        /// <param name="x">The value to add.</param>
+        public void Add(long x)
+        {
+            Cell[] cs;
+            long b, v;
+            int m;
+            Cell c;
+            if ((cs = Cells) != null || !CasBase(b = Base, b + x))
+            {
+                bool uncontended = true;
+                if (cs == null || (m = cs.Length - 1) < 0 ||
+                    (c = cs[Probe & m]) == null ||
+                    !(uncontended = c.Cas(v = c.Value, v + x)))
+                    LongAccumulate(x, null, uncontended);
+            }
+        }
+
+        /// <summary>
+        /// Equivalent to <c>Add(1)</c>.
+        /// </summary>
+        public void Increment()
+        {
+            Add(1L);
+        }
+
+        /// <summary>
+        /// Equivalent to <c>Add(-1)</c>.
+        /// </summary>
+        public void Decrement()
+        {
+            Add(-1L);
+        }
+
+        /// <summary>
+        /// Returns the current sum. The returned value is <b>NOT</b> an
+        /// atomic snapshot; invocation in the absence of concurrent updates
+        /// returns an accurate result, but concurrent updates that occur
+        /// while the sum is being calculated might not be incorporated.
+        /// </summary>
+        /// <returns>The sum.</returns>
+        public long Sum()
+        {
+            Cell[] cs = Cells;
+            long sum = Base;
+            if (cs != null)
+            {
+                foreach (Cell c in cs)
+                    if (c != null) sum += c.Value;
+            }
+            return sum;
+        }
+
+        /// <summary>
+        /// Resets variables maintaining the sum to zero. This method may be
+        /// a useful alternative to creating a new adder, but is only
+        /// effective if there are no concurrent updates. Because this method
+        /// is intrinsically racy, it should only be used when it is known
+        /// that no threads are concurrently updating.
+        /// </summary>
+        public void Reset()
+        {
+            Cell[] cs = Cells;
+            Base = 0L;
+            if (cs != null)
+            {
+                foreach (Cell c in cs)
+                    if (c != null) c.Value = 0L;
+            }
+        }
+
+        /// <summary>
+        /// Equivalent in effect to <see cref="Sum"/> followed by
+        /// <see cref="Reset"/>. This method may apply for example during
+        /// quiescent points between multithreaded computations. If there
+        /// are updates concurrent with this method, the returned value is
+        /// <b>not</b> guaranteed to be the final value occurring before the
+        /// reset.
+        /// </summary>
+        /// <returns>The sum.</returns>
+        public long SumThenReset()
+        {
+            Cell[] cs = Cells;
+            long sum = ExchangeBase(0L);
+            if (cs != null)
+            {
+                foreach (Cell c in cs)
+                    if (c != null) sum += c.Exchange(0L);
+            }
+            return sum;
+        }
+
+        /// <summary>
+        /// Returns the String representation of the <see cref="Sum"/>.
+        /// </summary>
+        /// <returns>The String representation of the <see cref="Sum"/>.</returns>
+        public override string ToString()
+        {
+            return Sum().ToString();
+        }
+
+        /// <summary>
+        /// Implicit converts <see cref="LongAdder"/> to long.
+        /// </summary>
+        /// <param name="adder">Instance of <see cref="LongAdder"/>.</param>
+        /// <returns>The <see cref="Sum"/> of <paramref name="adder"/>.</returns>
+        public static implicit operator long(LongAdder adder)
+        {
+            return adder.Sum();
+        }
+    }
+}
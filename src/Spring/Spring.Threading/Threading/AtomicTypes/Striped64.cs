@@ -0,0 +1,366 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+using System;
+using System.Runtime.InteropServices;
+using System.Threading;
+
+namespace Spring.Threading.AtomicTypes
+{
+    /// <summary>
+    /// The common representation and mechanics for classes supporting
+    /// dynamic striping on 64bit values. It cannot be subclassed outside
+    /// this assembly.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// This class maintains a lazily-initialized table of atomically
+    /// updated variables, plus an extra <see cref="Base"/> field. The table
+    /// size is a power of two. Indexing uses masked per-thread hash codes.
+    /// </para>
+    /// <para>
+    /// Table entries are of class <see cref="Cell"/>, a variant of
+    /// <see cref="AtomicLong"/> padded to reduce cache contention. Padding
+    /// is overkill for most atomics because they are usually irregularly
+    /// scattered in memory and thus don't interfere much with each other.
+    /// But atomic objects residing in arrays will tend to be placed
+    /// adjacent to each other, and so will most often share cache lines
+    /// without this precaution.
+    /// </para>
+    /// <para>
+    /// In part because cells are relatively large, we avoid creating them
+    /// until they are needed. When there is no contention, all updates are
+    /// made to the <see cref="Base"/> field. Upon first contention (a failed
+    /// CAS on base update), the table is initialized to size 2. The table
+    /// size is doubled upon further contention until reaching the nearest
+    /// power of two greater than or equal to the number of processors.
+    /// Table slots remain empty until they are needed.
+    /// </para>
+    /// <para>
+    /// A single spinlock (<see cref="_cellsBusy"/>) is used for initializing
+    /// and resizing the table, as well as populating slots with new cells.
+    /// There is no need for a blocking lock; when the lock is not available,
+    /// threads try other slots (or the base). During these retries, there
+    /// is increased contention and reduced locality, which is still better
+    /// than alternatives.
+    /// </para>
+    /// <para>
+    /// The per-thread probe value is a thread static field that is
+    /// initialized lazily and rehashed with a xorshift upon every collision,
+    /// so that contending threads soon spread over distinct cells.
+    /// </para>
+    /// <para>
+    /// Based on the on the back port of JCP JSR-166.
+    /// </para>
+    /// </remarks>
+    /// <author>Doug Lea</author>
+    public abstract class Striped64 //JDK_1_8
+    {
+        /// <summary>
+        /// Number of CPUS, to place bound on table size.
+        /// </summary>
+        internal static readonly int NCPU = Environment.ProcessorCount;
+
+        private static readonly bool _isNativeLongAccess = IntPtr.Size == 8;
+
+        private static readonly Func<double, double, double> _doubleSum = (a, b) => a + b;
+
+        /// <summary>
+        /// Generates the initial probe value of each thread.
+        /// </summary>
+        private static int _probeGenerator;
+
+        [ThreadStatic]
+        private static int _threadProbe;
+
+        /// <summary>
+        /// Table of cells. When non-null, size is a power of 2.
+        /// </summary>
+        private volatile Cell[] _cells;
+
+        /// <summary>
+        /// Base value, used mainly when there is no contention, but also as
+        /// a fallback during table initialization races. Updated via CAS.
+        /// </summary>
+        private long _base;
+
+        /// <summary>
+        /// Spinlock (locked via CAS) used when resizing and/or creating cells.
+        /// </summary>
+        private int _cellsBusy;
+
+        /// <summary>
+        /// Prevents subclassing outside this assembly.
+        /// </summary>
+        internal Striped64()
+        {
+        }
+
+        /// <summary>
+        /// The table of cells, <c>null</c> until the first contention.
+        /// </summary>
+        internal Cell[] Cells
+        {
+            get { return _cells; }
+        }
+
+        /// <summary>
+        /// Gets / Sets the base value.
+        /// </summary>
+        internal long Base
+        {
+            get { return ReadLong(ref _base); }
+            set { Interlocked.Exchange(ref _base, value); }
+        }
+
+        /// <summary>
+        /// CASes the base field.
+        /// </summary>
+        internal bool CasBase(long expectedValue, long newValue)
+        {
+            return Interlocked.CompareExchange(ref _base, newValue, expectedValue) == expectedValue;
+        }
+
+        /// <summary>
+        /// Atomically sets the base field to the given value and returns
+        /// the old value.
+        /// </summary>
+        internal long ExchangeBase(long newValue)
+        {
+            return Interlocked.Exchange(ref _base, newValue);
+        }
+
+        /// <summary>
+        /// The probe value of the current thread, zero if not yet initialized.
+        /// </summary>
+        internal static int Probe
+        {
+            get { return _threadProbe; }
+        }
+
+        /// <summary>
+        /// Pseudo-randomly advances and records the given probe value for
+        /// the given thread.
+        /// </summary>
+        private static int AdvanceProbe(int probe)
+        {
+            probe ^= probe << 13; // xorshift
+            probe ^= (int) ((uint) probe >> 17);
+            probe ^= probe << 5;
+            _threadProbe = probe;
+            return probe;
+        }
+
+        private static int InitProbe()
+        {
+            int probe = Interlocked.Add(ref _probeGenerator, unchecked((int) 0x9e3779b9));
+            if (probe == 0) probe = 1; // skip 0
+            _threadProbe = probe;
+            return probe;
+        }
+
+        /// <summary>
+        /// CASes the <see cref="_cellsBusy"/> field from 0 to 1 to acquire lock.
+        /// </summary>
+        private bool CasCellsBusy()
+        {
+            return Interlocked.CompareExchange(ref _cellsBusy, 1, 0) == 0;
+        }
+
+        private bool IsCellsBusy
+        {
+            get { return Thread.VolatileRead(ref _cellsBusy) != 0; }
+        }
+
+        private void ReleaseCellsBusy()
+        {
+            Thread.VolatileWrite(ref _cellsBusy, 0);
+        }
+
+        /// <summary>
+        /// Handles cases of updates involving initialization, resizing,
+        /// creating new cells, and/or contention. This method suffers the
+        /// usual non-modularity problems of optimistic retry code, relying
+        /// on rechecked sets of reads.
+        /// </summary>
+        /// <param name="x">The value.</param>
+        /// <param name="fn">
+        /// The update function, or <c>null</c> for add (this convention
+        /// avoids the need for an extra field or function in
+        /// <see cref="LongAdder"/>).
+        /// </param>
+        /// <param name="wasUncontended">
+        /// <c>false</c> if CAS failed before call.
+        /// </param>
+        internal void LongAccumulate(long x, Func<long, long, long> fn, bool wasUncontended)
+        {
+            int h = Probe;
+            if (h == 0)
+            {
+                h = InitProbe();
+                wasUncontended = true;
+            }
+            bool collide = false; // True if last slot nonempty
+            for (;;)
+            {
+                Cell[] cs = _cells;
+                Cell c;
+                int n;
+                long v;
+                if (cs != null && (n = cs.Length) > 0)
+                {
+                    if ((c = cs[(n - 1) & h]) == null)
+                    {
+                        if (!IsCellsBusy) // Try to attach new Cell
+                        {
+                            Cell r = new Cell(x); // Optimistically create
+                            if (!IsCellsBusy && CasCellsBusy())
+                            {
+                                bool created = false;
+                                try // Recheck under lock
+                                {
+                                    Cell[] rs = _cells;
+                                    int m, j;
+                                    if (rs != null && (m = rs.Length) > 0 && rs[j = (m - 1) & h] == null)
+                                    {
+                                        rs[j] = r;
+                                        created = true;
+                                    }
+                                }
+                                finally
+                                {
+                                    ReleaseCellsBusy();
+                                }
+                                if (created) return;
+                                continue; // Slot is now non-empty
+                            }
+                        }
+                        collide = false;
+                    }
+                    else if (!wasUncontended) // CAS already known to fail
+                        wasUncontended = true; // Continue after rehash
+                    else if (c.Cas(v = c.Value, fn == null ? v + x : fn(v, x)))
+                        return;
+                    else if (n >= NCPU || _cells != cs)
+                        collide = false; // At max size or stale
+                    else if (!collide)
+                        collide = true;
+                    else if (!IsCellsBusy && CasCellsBusy())
+                    {
+                        try
+                        {
+                            if (_cells == cs) // Expand table unless stale
+                            {
+                                Cell[] rs = new Cell[n << 1];
+                                Array.Copy(cs, rs, n);
+                                _cells = rs;
+                            }
+                        }
+                        finally
+                        {
+                            ReleaseCellsBusy();
+                        }
+                        collide = false;
+                        continue; // Retry with expanded table
+                    }
+                    h = AdvanceProbe(h);
+                }
+                else if (!IsCellsBusy && _cells == cs && CasCellsBusy())
+                {
+                    bool init = false;
+                    try // Initialize table
+                    {
+                        if (_cells == cs)
+                        {
+                            Cell[] rs = new Cell[2];
+                            rs[h & 1] = new Cell(x);
+                            _cells = rs;
+                            init = true;
+                        }
+                    }
+                    finally
+                    {
+                        ReleaseCellsBusy();
+                    }
+                    if (init) return;
+                }
+                // Fall back on using base
+                else if (CasBase(v = Base, fn == null ? v + x : fn(v, x)))
+                    return;
+            }
+        }
+
+        /// <summary>
+        /// Same as <see cref="LongAccumulate"/>, but operating on the bits of
+        /// <see cref="double"/> values. A <c>null</c> <paramref name="fn"/>
+        /// means add.
+        /// </summary>
+        internal void DoubleAccumulate(double x, Func<double, double, double> fn, bool wasUncontended)
+        {
+            if (fn == null) fn = _doubleSum;
+            long bits = BitConverter.DoubleToInt64Bits(x);
+            LongAccumulate(bits, (v, y) => BitConverter.DoubleToInt64Bits(
+                fn(BitConverter.Int64BitsToDouble(v), BitConverter.Int64BitsToDouble(y))), wasUncontended);
+        }
+
+        /// <summary>
+        /// Reads a <see cref="long"/> atomically, with the same platform
+        /// choice as <see cref="AtomicLong"/>.
+        /// </summary>
+        internal static long ReadLong(ref long location)
+        {
+            return _isNativeLongAccess ? Thread.VolatileRead(ref location) : Interlocked.Read(ref location);
+        }
+
+        /// <summary>
+        /// Padded variant of <see cref="AtomicLong"/> supporting only raw
+        /// accesses plus CAS. The value sits in the middle of a 128 byte
+        /// object so that two cells never share a cache line, even with
+        /// adjacent sector prefetch.
+        /// </summary>
+        [StructLayout(LayoutKind.Explicit, Size = 128)]
+        internal sealed class Cell
+        {
+            [FieldOffset(64)]
+            private long _value;
+
+            internal Cell(long x)
+            {
+                _value = x;
+            }
+
+            internal long Value
+            {
+                get { return ReadLong(ref _value); }
+                set { Interlocked.Exchange(ref _value, value); }
+            }
+
+            internal bool Cas(long expectedValue, long newValue)
+            {
+                return Interlocked.CompareExchange(ref _value, newValue, expectedValue) == expectedValue;
+            }
+
+            internal long Exchange(long newValue)
+            {
+                return Interlocked.Exchange(ref _value, newValue);
+            }
+        }
+    }
+}
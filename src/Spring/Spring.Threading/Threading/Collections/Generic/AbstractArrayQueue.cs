@@ -0,0 +1,507 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+
+using System;
+using System.Collections.Generic;
+using System.Threading;
+using Spring.Collections.Generic;
+using Spring.Utility;
+
+namespace Spring.Threading.Collections.Generic
+{
+    /// <summary>
+    /// Base class of the bounded lock-free array queues. Neither inserting
+    /// nor removing an element takes a lock or allocates; the blocking
+    /// operations wait through a configurable <see cref="IWaitStrategy"/>.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// The queue is the bounded MPMC queue of Dmitry Vyukov. Each slot of
+    /// the array carries a sequence number next to its element, and a slot
+    /// at position <c>pos</c> is free for a producer when its sequence is
+    /// <c>pos</c> and holds an element for a consumer when its sequence is
+    /// <c>pos + 1</c>. Producers and consumers therefore only meet on the
+    /// slot they are handing over, while each side claims positions from
+    /// its own counter on its own cache line. A side that is known to have
+    /// a single thread claims its positions with a plain write instead of
+    /// a CAS, which is what the subclasses choose.
+    /// </para>
+    /// <para>
+    /// Interior removal cannot be done without locking, so
+    /// <see cref="AbstractCollection{T}.Remove(T)"/> and the drain methods
+    /// taking a criteria are not supported. Enumerators and the methods
+    /// built on them are weakly consistent: they reflect a snapshot taken
+    /// while the queue changes.
+    /// </para>
+    /// <para>
+    /// A capacity that is a power of two lets the queue locate slots with
+    /// a mask instead of a division.
+    /// </para>
+    /// <para>
+    /// NOTE: this class is NOT present in java.util.concurrent.
+    /// </para>
+    /// </remarks>
+    /// <typeparam name="T">The type of elements held in this queue.</typeparam>
+    public abstract class AbstractArrayQueue<T> : AbstractBlockingQueue<T> //NET_ONLY
+    {
+        private struct Slot
+        {
+            internal long Sequence;
+            internal T Item;
+        }
+
+        private readonly Slot[] _slots;
+        private readonly int _capacity;
+        /// <summary>
+        /// <see cref="_capacity"/> - 1 when it is a power of two, otherwise -1.
+        /// </summary>
+        private readonly long _mask;
+        private readonly bool _isMultiProducer;
+        private readonly bool _isMultiConsumer;
+        private readonly Sequence _head = new Sequence(0);
+        private readonly Sequence _tail = new Sequence(0);
+        private readonly IWaitStrategy _waitStrategy;
+        private readonly Func<bool> _hasSpace;
+        private readonly Func<bool> _hasElement;
+
+        /// <summary>
+        /// Creates a queue with the given (fixed) <paramref name="capacity"/>.
+        /// </summary>
+        /// <param name="capacity">The capacity of this queue.</param>
+        /// <param name="waitStrategy">
+        /// How the blocking operations wait for space or elements.
+        /// </param>
+        /// <param name="isMultiProducer">
+        /// <c>false</c> if only one thread at a time will ever insert.
+        /// </param>
+        /// <param name="isMultiConsumer">
+        /// <c>false</c> if only one thread at a time will ever remove.
+        /// </param>
+        /// <exception cref="ArgumentOutOfRangeException">
+        /// If <paramref name="capacity"/> is less than 1.
+        /// </exception>
+        /// <exception cref="ArgumentNullException">
+        /// If <paramref name="waitStrategy"/> is <c>null</c>.
+        /// </exception>
+        protected AbstractArrayQueue(int capacity, IWaitStrategy waitStrategy,
+            bool isMultiProducer, bool isMultiConsumer)
+        {
+            if (capacity < 1) throw new ArgumentOutOfRangeException(
+                "capacity", capacity, "Must be positive");
+            if (waitStrategy == null) throw new ArgumentNullException("waitStrategy");
+            _capacity = capacity;
+            _mask = (capacity & (capacity - 1)) == 0 ? capacity - 1 : -1;
+            _slots = new Slot[capacity];
+            for (int i = 0; i < capacity; i++) _slots[i].Sequence = i;
+            _waitStrategy = waitStrategy;
+            _isMultiProducer = isMultiProducer;
+            _isMultiConsumer = isMultiConsumer;
+            _hasSpace = HasSpace;
+            _hasElement = HasElement;
+        }
+
+        /// <summary>
+        /// The strategy the blocking operations wait with.
+        /// </summary>
+        public IWaitStrategy WaitStrategy
+        {
+            get { return _waitStrategy; }
+        }
+
+        #region IQueue<T> Members
+
+        /// <summary>
+        /// Inserts the specified element at the tail of this queue if there
+        /// is space available.
+        /// </summary>
+        /// <param name="element">The element to add.</param>
+        /// <returns>
+        /// <c>true</c> if the element was added, <c>false</c> if this queue
+        /// is full.
+        /// </returns>
+        public override bool Offer(T element)
+        {
+            long pos = _tail.Value;
+            int index;
+            for (;;)
+            {
+                index = IndexOf(pos);
+                long diff = Sequence.Read(ref _slots[index].Sequence) - pos;
+                if (diff == 0)
+                {
+                    if (!_isMultiProducer)
+                    {
+                        _tail.Value = pos + 1;
+                        break;
+                    }
+                    if (_tail.CompareAndSet(pos, pos + 1)) break;
+                    pos = _tail.Value;
+                }
+                else if (diff < 0)
+                {
+                    return false; // the slot still holds the element of the previous lap
+                }
+                else
+                {
+                    pos = _tail.Value; // another producer claimed pos
+                }
+            }
+            _slots[index].Item = element;
+            Sequence.Write(ref _slots[index].Sequence, pos + 1);
+            _waitStrategy.SignalAll();
+            return true;
+        }
+
+        /// <summary>
+        /// Retrieves and removes the head of this queue into out parameter
+        /// <paramref name="element"/>.
+        /// </summary>
+        /// <param name="element">
+        /// Set to the head of this queue. <c>default(T)</c> if queue is empty.
+        /// </param>
+        /// <returns>
+        /// <c>false</c> if the queue is empty. Otherwise <c>true</c>.
+        /// </returns>
+        public override bool Poll(out T element)
+        {
+            long pos = _head.Value;
+            int index;
+            for (;;)
+            {
+                index = IndexOf(pos);
+                long diff = Sequence.Read(ref _slots[index].Sequence) - (pos + 1);
+                if (diff == 0)
+                {
+                    if (!_isMultiConsumer)
+                    {
+                        _head.Value = pos + 1;
+                        break;
+                    }
+                    if (_head.CompareAndSet(pos, pos + 1)) break;
+                    pos = _head.Value;
+                }
+                else if (diff < 0)
+                {
+                    element = default(T); // nothing published at pos yet
+                    return false;
+                }
+                else
+                {
+                    pos = _head.Value; // another consumer claimed pos
+                }
+            }
+            element = _slots[index].Item;
+            _slots[index].Item = default(T);
+            Sequence.Write(ref _slots[index].Sequence, pos + _capacity);
+            _waitStrategy.SignalAll();
+            return true;
+        }
+
+        /// <summary>
+        /// Retrieves, but does not remove, the head of this queue into out
+        /// parameter <paramref name="element"/>.
+        /// </summary>
+        /// <param name="element">
+        /// The head of this queue. <c>default(T)</c> if queue is empty.
+        /// </param>
+        /// <returns>
+        /// <c>false</c> if the queue is empty. Otherwise <c>true</c>.
+        /// </returns>
+        public override bool Peek(out T element)
+        {
+            for (;;)
+            {
+                long pos = _head.Value;
+                if (TryRead(pos, out element)) return true;
+                if (Sequence.Read(ref _slots[IndexOf(pos)].Sequence) < pos + 1) return false;
+                // the head was taken while we read it, retry at the new head
+            }
+        }
+
+        /// <summary>
+        /// Returns <c>true</c> if this queue contains no elements.
+        /// </summary>
+        public override bool IsEmpty
+        {
+            get
+            {
+                T ignore;
+                return !Peek(out ignore);
+            }
+        }
+
+        /// <summary>
+        /// Returns the capacity of this queue.
+        /// </summary>
+        public override int Capacity
+        {
+            get { return _capacity; }
+        }
+
+        /// <summary>
+        /// Returns the number of additional elements that this queue can
+        /// accept without blocking.
+        /// </summary>
+        public override int RemainingCapacity
+        {
+            get { return _capacity - Count; }
+        }
+
+        /// <summary>
+        /// Does the real work for all drain methods. Caller must
+        /// guarantee the <paramref name="action"/> is not <c>null</c> and
+        /// <paramref name="maxElements"/> is greater then zero (0).
+        /// </summary>
+        /// <exception cref="NotSupportedException">
+        /// If <paramref name="criteria"/> is not <c>null</c>, as only the
+        /// head of this queue can be removed.
+        /// </exception>
+        /// <seealso cref="IQueue{T}.Drain(System.Action{T})"/>
+        /// <seealso cref="IQueue{T}.Drain(System.Action{T}, int)"/>
+        /// <seealso cref="IQueue{T}.Drain(System.Action{T}, Predicate{T})"/>
+        /// <seealso cref="IQueue{T}.Drain(System.Action{T}, int, Predicate{T})"/>
+        internal protected override int DoDrain(Action<T> action, int maxElements, Predicate<T> criteria)
+        {
+            if (criteria != null) throw new NotSupportedException(
+                "Only the head of an array queue can be removed.");
+            int n = 0;
+            T element;
+            while (n < maxElements && Poll(out element))
+            {
+                action(element);
+                n++;
+            }
+            return n;
+        }
+
+        #endregion
+
+        #region IBlockingQueue<T> Members
+
+        /// <summary>
+        /// Inserts the specified element into this queue, waiting through
+        /// the <see cref="WaitStrategy"/> if necessary for space to become
+        /// available.
+        /// </summary>
+        /// <param name="element">The element to add.</param>
+        /// <exception cref="ThreadInterruptedException">
+        /// If interrupted while waiting.
+        /// </exception>
+        public override void Put(T element)
+        {
+            while (!Offer(element)) _waitStrategy.Await(_hasSpace);
+        }
+
+        /// <summary>
+        /// Inserts the specified element into this queue, waiting up to the
+        /// specified wait time if necessary for space to become available.
+        /// </summary>
+        /// <param name="element">The element to add.</param>
+        /// <param name="duration">How long to wait before giving up.</param>
+        /// <returns>
+        /// <c>true</c> if successful, or <c>false</c> if the specified
+        /// waiting time elapses before space is available.
+        /// </returns>
+        /// <exception cref="ThreadInterruptedException">
+        /// If interrupted while waiting.
+        /// </exception>
+        public override bool Offer(T element, TimeSpan duration)
+        {
+            if (Offer(element)) return true;
+            DateTime deadline = WaitTime.Deadline(duration);
+            for (;;)
+            {
+                if (!_waitStrategy.Await(_hasSpace, duration)) return false;
+                if (Offer(element)) return true;
+                duration = deadline.Subtract(DateTime.UtcNow);
+            }
+        }
+
+        /// <summary>
+        /// Retrieves and removes the head of this queue, waiting through the
+        /// <see cref="WaitStrategy"/> if necessary until an element becomes
+        /// available.
+        /// </summary>
+        /// <returns>The head of this queue.</returns>
+        /// <exception cref="ThreadInterruptedException">
+        /// If interrupted while waiting.
+        /// </exception>
+        public override T Take()
+        {
+            T element;
+            while (!Poll(out element)) _waitStrategy.Await(_hasElement);
+            return element;
+        }
+
+        /// <summary>
+        /// Retrieves and removes the head of this queue, waiting up to the
+        /// specified wait time if necessary for an element to become
+        /// available.
+        /// </summary>
+        /// <param name="duration">How long to wait before giving up.</param>
+        /// <param name="element">
+        /// Set to the head of this queue. <c>default(T)</c> if queue is empty.
+        /// </param>
+        /// <returns>
+        /// <c>false</c> if the specified waiting time elapses before an
+        /// element is available. Otherwise <c>true</c>.
+        /// </returns>
+        /// <exception cref="ThreadInterruptedException">
+        /// If interrupted while waiting.
+        /// </exception>
+        public override bool Poll(TimeSpan duration, out T element)
+        {
+            if (Poll(out element)) return true;
+            DateTime deadline = WaitTime.Deadline(duration);
+            for (;;)
+            {
+                if (!_waitStrategy.Await(_hasElement, duration)) return false;
+                if (Poll(out element)) return true;
+                duration = deadline.Subtract(DateTime.UtcNow);
+            }
+        }
+
+        #endregion
+
+        #region ICollection<T> Members
+
+        /// <summary>
+        /// Returns the number of elements in this queue.
+        /// </summary>
+        /// <remarks>
+        /// The result is exact only when the queue is quiescent.
+        /// </remarks>
+        public override int Count
+        {
+            get
+            {
+                // head first, so that it never overtakes the tail read later
+                long head = _head.Value;
+                long size = _tail.Value - head;
+                return size < 0 ? 0 : (size > _capacity ? _capacity : (int) size);
+            }
+        }
+
+        /// <summary>
+        /// Returns an enumerator over the elements in this queue in proper
+        /// sequence.
+        /// </summary>
+        /// <remarks>
+        /// The returned <see cref="IEnumerator{T}"/> is a "weakly consistent"
+        /// enumerator over a snapshot of the elements. It will not throw
+        /// <see cref="InvalidOperationException"/> when the queue is
+        /// concurrently modified and does not reflect any modification
+        /// after its creation.
+        /// </remarks>
+        /// <returns>
+        /// An enumerator over the elements in this queue in proper sequence.
+        /// </returns>
+        public override IEnumerator<T> GetEnumerator()
+        {
+            return Snapshot().GetEnumerator();
+        }
+
+        /// <summary>
+        /// Does the actual work of copying to array.
+        /// </summary>
+        /// <param name="array">
+        /// The one-dimensional <see cref="Array"/> that is the
+        /// destination of the elements copied from <see cref="ICollection{T}"/>.
+        /// The <see cref="Array"/> must have zero-based indexing.
+        /// </param>
+        /// <param name="arrayIndex">
+        /// The zero-based index in array at which copying begins.
+        /// </param>
+        /// <param name="ensureCapacity">
+        /// If is <c>true</c>, calls <see cref="AbstractCollection{T}.EnsureCapacity"/>
+        /// </param>
+        /// <returns>
+        /// A new array of same runtime type as <paramref name="array"/> if
+        /// <paramref name="array"/> is too small to hold all elements and
+        /// <paramref name="ensureCapacity"/> is <c>false</c>. Otherwise
+        /// the <paramref name="array"/> instance itself.
+        /// </returns>
+        protected override T[] DoCopyTo(T[] array, int arrayIndex, bool ensureCapacity)
+        {
+            List<T> snapshot = Snapshot();
+            if (ensureCapacity) array = EnsureCapacity(array, snapshot.Count);
+            snapshot.CopyTo(array, arrayIndex);
+            return array;
+        }
+
+        #endregion
+
+        private int IndexOf(long pos)
+        {
+            return (int) (_mask >= 0 ? pos & _mask : pos % _capacity);
+        }
+
+        private bool HasSpace()
+        {
+            long pos = _tail.Value;
+            return Sequence.Read(ref _slots[IndexOf(pos)].Sequence) >= pos;
+        }
+
+        private bool HasElement()
+        {
+            long pos = _head.Value;
+            return Sequence.Read(ref _slots[IndexOf(pos)].Sequence) >= pos + 1;
+        }
+
+        /// <summary>
+        /// Reads the element at <paramref name="pos"/> without claiming it,
+        /// failing if it is not published or is taken during the read.
+        /// </summary>
+        private bool TryRead(long pos, out T element)
+        {
+            int index = IndexOf(pos);
+            if (Sequence.Read(ref _slots[index].Sequence) == pos + 1)
+            {
+                element = _slots[index].Item;
+                // keep the read of the item before the recheck
+                Thread.MemoryBarrier();
+                if (Sequence.Read(ref _slots[index].Sequence) == pos + 1) return true;
+            }
+            element = default(T);
+            return false;
+        }
+
+        private List<T> Snapshot()
+        {
+            List<T> list = new List<T>();
+            long tail = _tail.Value;
+            for (long pos = _head.Value; pos < tail; pos++)
+            {
+                T element;
+                if (TryRead(pos, out element))
+                {
+                    list.Add(element);
+                }
+                else if (Sequence.Read(ref _slots[IndexOf(pos)].Sequence) < pos + 1)
+                {
+                    break; // claimed but not yet published
+                }
+                // otherwise taken since we read the head, skip it
+            }
+            return list;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+
+using System;
+using System.Threading;
+
+namespace Spring.Threading.Collections.Generic
+{
+    /// <summary>
+    /// Consumes the events of a <see cref="RingBuffer{T}"/> in batches: it
+    /// waits once for whatever is available through its
+    /// <see cref="SequenceBarrier"/>, hands all of it to an
+    /// <see cref="IEventHandler{T}"/>, and only then publishes its progress
+    /// in <see cref="Sequence"/>.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// The processor is an <see cref="IRunnable"/> that runs until
+    /// <see cref="Halt"/> is called, so it can be given to a thread or an
+    /// <see cref="IExecutor"/>. Processors sharing a barrier are halted
+    /// together, because halting alerts the barrier.
+    /// </para>
+    /// <para>
+    /// If the handler throws, <see cref="Run"/> ends with the exception and
+    /// <see cref="Sequence"/> stays at the last event of the previous batch.
+    /// </para>
+    /// <para>
+    /// NOTE: this class is NOT present in java.util.concurrent.
+    /// </para>
+    /// </remarks>
+    /// <typeparam name="T">The type of the events.</typeparam>
+    public class BatchEventProcessor<T> : IRunnable //NET_ONLY
+    {
+        private const int Idle = 0;
+        private const int Halted = 1;
+        private const int Running = 2;
+        private const int Halting = 3;
+
+        private readonly RingBuffer<T> _ringBuffer;
+        private readonly SequenceBarrier _sequenceBarrier;
+        private readonly IEventHandler<T> _eventHandler;
+        private readonly Sequence _sequence = new Sequence();
+        private int _isRunning;
+
+        /// <summary>
+        /// Creates a processor of the events in <paramref name="ringBuffer"/>
+        /// that become available through <paramref name="sequenceBarrier"/>.
+        /// </summary>
+        /// <param name="ringBuffer">The ring buffer holding the events.</param>
+        /// <param name="sequenceBarrier">
+        /// A barrier of <paramref name="ringBuffer"/>, not shared with other
+        /// processors.
+        /// </param>
+        /// <param name="eventHandler">The handler of the events.</param>
+        /// <exception cref="ArgumentNullException">
+        /// If any argument is <c>null</c>.
+        /// </exception>
+        public BatchEventProcessor(RingBuffer<T> ringBuffer, SequenceBarrier sequenceBarrier,
+            IEventHandler<T> eventHandler)
+        {
+            if (ringBuffer == null) throw new ArgumentNullException("ringBuffer");
+            if (sequenceBarrier == null) throw new ArgumentNullException("sequenceBarrier");
+            if (eventHandler == null) throw new ArgumentNullException("eventHandler");
+            _ringBuffer = ringBuffer;
+            _sequenceBarrier = sequenceBarrier;
+            _eventHandler = eventHandler;
+        }
+
+        /// <summary>
+        /// The sequence of the last event processed. Track it in the barriers
+        /// of downstream processors, or add it to the gating sequences of
+        /// the ring buffer if there are none.
+        /// </summary>
+        public Sequence Sequence
+        {
+            get { return _sequence; }
+        }
+
+        /// <summary>
+        /// Whether <see cref="Run"/> is executing, including a run that
+        /// has been halted but not yet finished its current batch.
+        /// </summary>
+        public bool IsRunning
+        {
+            get { return Thread.VolatileRead(ref _isRunning) >= Running; }
+        }
+
+        /// <summary>
+        /// Makes <see cref="Run"/> return as soon as the current batch is
+        /// processed. If <see cref="Run"/> has not started yet, it returns
+        /// without processing anything when it does.
+        /// </summary>
+        public void Halt()
+        {
+            for (;;)
+            {
+                int state = Thread.VolatileRead(ref _isRunning);
+                if (state == Idle)
+                {
+                    if (Interlocked.CompareExchange(ref _isRunning, Halted, Idle) == Idle) return;
+                }
+                else if (state == Running)
+                {
+                    if (Interlocked.CompareExchange(ref _isRunning, Halting, Running) == Running)
+                    {
+                        _sequenceBarrier.Alert();
+                        return;
+                    }
+                }
+                else return; // already halted or halting
+            }
+        }
+
+        /// <summary>
+        /// Processes events until halted. Returns at once if
+        /// <see cref="Halt"/> was called since the last run ended.
+        /// </summary>
+        /// <exception cref="InvalidOperationException">
+        /// If the processor is already running, or halted but still
+        /// finishing its current batch.
+        /// </exception>
+        /// <exception cref="ThreadInterruptedException">
+        /// If interrupted while waiting for events.
+        /// </exception>
+        public void Run()
+        {
+            int state = Interlocked.CompareExchange(ref _isRunning, Running, Idle);
+            if (state >= Running)
+                throw new InvalidOperationException("Processor is already running.");
+            if (state == Halted)
+            {
+                // halted before the start, the next run clears the alert
+                Interlocked.CompareExchange(ref _isRunning, Idle, Halted);
+                return;
+            }
+            try
+            {
+                _sequenceBarrier.ClearAlert();
+                // a Halt between the start and the clear lost its alert
+                if (Thread.VolatileRead(ref _isRunning) == Halting) return;
+                long next = _sequence.Value + 1;
+                long available;
+                while (_sequenceBarrier.WaitFor(next, out available))
+                {
+                    if (available < next) continue; // claimed but not yet published
+                    for (; next <= available; next++)
+                    {
+                        _eventHandler.OnEvent(_ringBuffer[next], next, next == available);
+                    }
+                    _sequence.Value = available;
+                }
+            }
+            finally
+            {
+                Interlocked.Exchange(ref _isRunning, Idle);
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+
+using System;
+using System.Threading;
+using Spring.Utility;
+
+namespace Spring.Threading.Collections.Generic
+{
+    /// <summary>
+    /// An <see cref="IWaitStrategy"/> that blocks waiting threads on a
+    /// monitor. Waiting costs no processor time at all, at the price of
+    /// a full fence in every <see cref="SignalAll"/> and a monitor pulse
+    /// whenever a thread is actually waiting.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// An instance keeps track of its waiting threads, so it must not be
+    /// shared between structures.
+    /// </para>
+    /// <para>
+    /// NOTE: this class is NOT present in java.util.concurrent.
+    /// </para>
+    /// </remarks>
+    [Serializable]
+    public class BlockingWaitStrategy : IWaitStrategy //NET_ONLY
+    {
+        private readonly object _lock = new object();
+        private volatile int _waiters;
+
+        /// <summary>
+        /// Waits until <paramref name="condition"/> returns <c>true</c>.
+        /// </summary>
+        /// <param name="condition">The state change to wait for.</param>
+        /// <exception cref="ThreadInterruptedException">
+        /// If interrupted while waiting.
+        /// </exception>
+        public virtual void Await(Func<bool> condition)
+        {
+            Await(condition, WaitTime.Forever);
+        }
+
+        /// <summary>
+        /// Waits until <paramref name="condition"/> returns <c>true</c> or
+        /// <paramref name="duration"/> elapses.
+        /// </summary>
+        /// <param name="condition">The state change to wait for.</param>
+        /// <param name="duration">
+        /// How long to wait before giving up, or <see cref="Timeout.Infinite"/>
+        /// milliseconds to wait forever.
+        /// </param>
+        /// <returns>
+        /// The last value returned by <paramref name="condition"/>.
+        /// </returns>
+        /// <exception cref="ThreadInterruptedException">
+        /// If interrupted while waiting.
+        /// </exception>
+        public virtual bool Await(Func<bool> condition, TimeSpan duration)
+        {
+            if (condition()) return true;
+            bool forever = duration == WaitTime.Forever;
+            DateTime deadline = forever ? DateTime.MaxValue : WaitTime.Deadline(duration);
+            lock (_lock)
+            {
+                // The increment is a full fence, pairing with the one in
+                // SignalAll so that either the signaller sees the waiter
+                // or the waiter sees the new state.
+#pragma warning disable 420 // a reference to a volatile field will not be treated as volatile
+                Interlocked.Increment(ref _waiters);
+                try
+                {
+                    while (!condition())
+                    {
+                        if (forever)
+                        {
+                            Monitor.Wait(_lock);
+                            continue;
+                        }
+                        if (duration.Ticks <= 0) return false;
+                        Monitor.Wait(_lock, WaitTime.Cap(duration));
+                        duration = deadline.Subtract(DateTime.UtcNow);
+                    }
+                    return true;
+                }
+                finally
+                {
+                    Interlocked.Decrement(ref _waiters);
+                }
+#pragma warning restore 420
+            }
+        }
+
+        /// <summary>
+        /// Wakes up all waiting threads. Does not take the monitor when no
+        /// thread is waiting.
+        /// </summary>
+        public virtual void SignalAll()
+        {
+            Thread.MemoryBarrier();
+            if (_waiters == 0) return;
+            lock (_lock) Monitor.PulseAll(_lock);
+        }
+    }
+}
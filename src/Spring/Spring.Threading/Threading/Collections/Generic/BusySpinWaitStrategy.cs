@@ -0,0 +1,97 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+
+using System;
+using System.Threading;
+using Spring.Utility;
+
+namespace Spring.Threading.Collections.Generic
+{
+    /// <summary>
+    /// An <see cref="IWaitStrategy"/> that spins until the condition
+    /// holds, without ever giving up its time slice voluntarily. Lowest
+    /// latency of all strategies, but only suitable when every waiting
+    /// thread has a core of its own.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// Spinning alone never notices <see cref="Thread.Interrupt"/>, so
+    /// the strategy enters a zero length sleep once every
+    /// 2<sup>16</sup> iterations to let a pending interrupt through.
+    /// </para>
+    /// <para>
+    /// NOTE: this class is NOT present in java.util.concurrent.
+    /// </para>
+    /// </remarks>
+    [Serializable]
+    public class BusySpinWaitStrategy : IWaitStrategy //NET_ONLY
+    {
+        private const int _interruptCheckMask = (1 << 16) - 1;
+
+        /// <summary>
+        /// Waits until <paramref name="condition"/> returns <c>true</c>.
+        /// </summary>
+        /// <param name="condition">The state change to wait for.</param>
+        /// <exception cref="ThreadInterruptedException">
+        /// If interrupted while waiting.
+        /// </exception>
+        public virtual void Await(Func<bool> condition)
+        {
+            for (int i = 1; !condition(); i++)
+            {
+                if ((i & _interruptCheckMask) == 0) Thread.Sleep(0);
+                else Thread.SpinWait(1);
+            }
+        }
+
+        /// <summary>
+        /// Waits until <paramref name="condition"/> returns <c>true</c> or
+        /// <paramref name="duration"/> elapses.
+        /// </summary>
+        /// <param name="condition">The state change to wait for.</param>
+        /// <param name="duration">How long to wait before giving up.</param>
+        /// <returns>
+        /// The last value returned by <paramref name="condition"/>.
+        /// </returns>
+        /// <exception cref="ThreadInterruptedException">
+        /// If interrupted while waiting.
+        /// </exception>
+        public virtual bool Await(Func<bool> condition, TimeSpan duration)
+        {
+            DateTime deadline = WaitTime.Deadline(duration);
+            for (int i = 1; !condition(); i++)
+            {
+                if ((i & _interruptCheckMask) == 0) Thread.Sleep(0);
+                else Thread.SpinWait(1);
+                // reading the clock costs more than a spin, do it sparingly
+                if ((i & 0xFF) == 0 && DateTime.UtcNow >= deadline) return false;
+            }
+            return true;
+        }
+
+        /// <summary>
+        /// Does nothing, as waiting threads poll the condition.
+        /// </summary>
+        public virtual void SignalAll()
+        {
+        }
+    }
+}
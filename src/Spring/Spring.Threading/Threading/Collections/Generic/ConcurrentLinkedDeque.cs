@@ -0,0 +1,1284 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+
+using System;
+using System.Collections.Generic;
+using System.Runtime.Serialization;
+using System.Threading;
+using Spring.Collections.Generic;
+
+namespace Spring.Threading.Collections.Generic
+{
+    /// <summary>
+    /// An unbounded concurrent <see cref="IDeque{T}"/> based on linked
+    /// nodes. Concurrent insertion, removal, and access operations execute
+    /// safely across multiple threads, and no operation takes a lock.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// A <see cref="ConcurrentLinkedDeque{T}"/> is an appropriate choice
+    /// when many threads will share access to a common collection, for
+    /// example as a LIFO stack through <see cref="Push"/> and
+    /// <see cref="Pop"/>, or as a FIFO queue.
+    /// </para>
+    /// <para>
+    /// Enumerators are <i>weakly consistent</i>, returning elements
+    /// reflecting the state of the deque at some point at or since the
+    /// creation of the enumerator. They do not throw
+    /// <see cref="InvalidOperationException"/>, and may proceed
+    /// concurrently with other operations.
+    /// </para>
+    /// <para>
+    /// Beware that, unlike in most collections, <see cref="Count"/> is
+    /// <b>not</b> a constant-time operation. Because of the asynchronous
+    /// nature of these deques, determining the current number of elements
+    /// requires a traversal of the elements, and so may report inaccurate
+    /// results if this collection is modified during traversal.
+    /// </para>
+    /// <para>
+    /// Based on the on the back port of JCP JSR-166.
+    /// </para>
+    /// </remarks>
+    /// <typeparam name="T">The type of elements held in this deque.</typeparam>
+    /// <author>Doug Lea</author>
+    /// <author>Martin Buchholz</author>
+    [Serializable]
+    public class ConcurrentLinkedDeque<T> : AbstractQueue<T>, IDeque<T>, ISerializable //JDK_1_7
+    {
+        /*
+         * This is an implementation of a concurrent lock-free deque
+         * supporting interior removes but not interior insertions, as
+         * required to support the entire IDeque interface.
+         *
+         * We extend the techniques developed for ConcurrentLinkedQueue
+         * (see the internal docs for that class), so understanding that
+         * class first is recommended.
+         *
+         * The data structure is a symmetrical doubly-linked "GC-robust"
+         * linked list of nodes. We minimize the number of volatile writes
+         * using two techniques: advancing multiple hops with a single
+         * CAS and mixing volatile and non-volatile writes of the same
+         * memory locations.
+         *
+         * A node contains the expected element, links to predecessor
+         * ("Prev") and successor ("Next") nodes, and a taken flag:
+         *
+         * class Node { T Item; volatile Node Prev, Next; volatile int taken; }
+         *
+         * A node p is considered "live" if it is not taken. As with
+         * ConcurrentLinkedQueue, Java marks removal by nulling the item;
+         * T may be a value type and default(T) is a legal element, so
+         * an element is logically deleted by a CAS of the taken flag
+         * from 0 to 1 instead, and the item is never written again.
+         *
+         * At any time, there is precisely one "first" node with a null
+         * Prev reference that terminates any chain of Prev references
+         * starting at a live node. Similarly there is precisely one
+         * "last" node terminating any chain of Next references starting
+         * at a live node. The "first" and "last" nodes may or may not be
+         * live. The "first" and "last" nodes are always mutually
+         * reachable.
+         *
+         * A new element is added atomically by CASing the null Prev or
+         * Next reference in the first or last node to a fresh node
+         * containing the element. The element's node atomically becomes
+         * "live" at that point.
+         *
+         * A node is considered "active" if it is a live node, or the
+         * first or last node. Active nodes cannot be unlinked.
+         *
+         * A "self-link" is a Next or Prev reference that is the same
+         * node: p.Prev == p or p.Next == p. Self-links are used in the
+         * node unlinking process. Active nodes never have self-links.
+         *
+         * The head and tail fields are only approximations to the first
+         * and last nodes of the deque; they may lag, so that most
+         * insertions and removals cost one CAS rather than two, exactly
+         * as with the tail of ConcurrentLinkedQueue.
+         *
+         * Removing an element is a three-stage process: "logical
+         * deletion" (taking the node), "unlinking" (making the active
+         * nodes around it point at each other, so it is no longer
+         * reachable from active nodes), and "gc-unlinking" (pointing the
+         * removed node at itself or at a terminator, so that it does not
+         * keep a chain of other removed nodes reachable). Traversals that
+         * run into a self-link restart from head or tail; those that run
+         * into PREV_TERMINATOR or NEXT_TERMINATOR know they fell off the
+         * end of the list.
+         *
+         * To keep the cost of removals from one end low, interior
+         * removed nodes are always squeezed out, but removed nodes next
+         * to the first or last node are only unlinked once HOPS of them
+         * have accumulated.
+         */
+
+        /// <summary>
+        /// Marks the Prev link of a node unlinked from the front.
+        /// </summary>
+        private static readonly Node PREV_TERMINATOR = Node.NewPrevTerminator();
+
+        /// <summary>
+        /// Marks the Next link of a node unlinked from the back.
+        /// </summary>
+        private static readonly Node NEXT_TERMINATOR = Node.NewNextTerminator();
+
+        private const int HOPS = 2;
+
+        /// <summary>
+        /// A node from which the first node on list (that is, the unique
+        /// node p with p.Prev == null &amp;&amp; p.Next != p) can be reached
+        /// in O(1) time.
+        /// </summary>
+        [NonSerialized]
+        private volatile Node _head;
+
+        /// <summary>
+        /// A node from which the last node on list (that is, the unique
+        /// node p with p.Next == null &amp;&amp; p.Prev != p) can be reached
+        /// in O(1) time.
+        /// </summary>
+        [NonSerialized]
+        private volatile Node _tail;
+
+        /// <summary>
+        /// Constructs an empty deque.
+        /// </summary>
+        public ConcurrentLinkedDeque()
+        {
+            _head = _tail = new Node();
+        }
+
+        /// <summary>
+        /// Constructs a deque initially containing the elements of the
+        /// given collection, added in traversal order of the collection's
+        /// enumerator.
+        /// </summary>
+        /// <param name="collection">
+        /// The collection of elements to initially contain.
+        /// </param>
+        /// <exception cref="ArgumentNullException">
+        /// If <paramref name="collection"/> is <c>null</c>.
+        /// </exception>
+        public ConcurrentLinkedDeque(IEnumerable<T> collection) : this()
+        {
+            if (collection == null) throw new ArgumentNullException("collection");
+            foreach (T e in collection) LinkLast(e);
+        }
+
+        /// <summary>
+        /// Reconstitutes the deque from the <see cref="SerializationInfo"/>.
+        /// </summary>
+        /// <param name="info">The <see cref="SerializationInfo"/> to pull date from.</param>
+        /// <param name="context">The contextual information about the source or destination.</param>
+        protected ConcurrentLinkedDeque(SerializationInfo info, StreamingContext context)
+            : this((T[])info.GetValue("Data", typeof(T[])))
+        {
+        }
+
+        /// <summary>
+        /// Populates a <see cref="SerializationInfo"/> with the data needed
+        /// to serialize the target object.
+        /// </summary>
+        /// <param name="info">The <see cref="SerializationInfo"/> to populate with data.</param>
+        /// <param name="context">The destination for this serialization.</param>
+        public virtual void GetObjectData(SerializationInfo info, StreamingContext context)
+        {
+            info.AddValue("Data", ToArray());
+        }
+
+        #region IDeque<T> Members
+
+        /// <summary>
+        /// Inserts the specified element at the front of this deque. As the
+        /// deque is unbounded, this method will never throw
+        /// <see cref="InvalidOperationException"/>.
+        /// </summary>
+        /// <param name="element">The element to add.</param>
+        public virtual void AddFirst(T element)
+        {
+            LinkFirst(element);
+        }
+
+        /// <summary>
+        /// Inserts the specified element at the end of this deque. As the
+        /// deque is unbounded, this method will never throw
+        /// <see cref="InvalidOperationException"/>.
+        /// </summary>
+        /// <param name="element">The element to add.</param>
+        public virtual void AddLast(T element)
+        {
+            LinkLast(element);
+        }
+
+        /// <summary>
+        /// Inserts the specified element at the front of this deque. As the
+        /// deque is unbounded, this method will never return <c>false</c>.
+        /// </summary>
+        /// <param name="element">The element to add.</param>
+        /// <returns><c>true</c> always.</returns>
+        public virtual bool OfferFirst(T element)
+        {
+            LinkFirst(element);
+            return true;
+        }
+
+        /// <summary>
+        /// Inserts the specified element at the end of this deque. As the
+        /// deque is unbounded, this method will never return <c>false</c>.
+        /// </summary>
+        /// <param name="element">The element to add.</param>
+        /// <returns><c>true</c> always.</returns>
+        public virtual bool OfferLast(T element)
+        {
+            LinkLast(element);
+            return true;
+        }
+
+        /// <summary>
+        /// Retrieves and removes the first element of this deque.
+        /// </summary>
+        /// <returns>The head of this deque.</returns>
+        /// <exception cref="InvalidOperationException">
+        /// If this deque is empty.
+        /// </exception>
+        public virtual T RemoveFirst()
+        {
+            T element;
+            if (PollFirst(out element)) return element;
+            throw new InvalidOperationException("Deque is empty.");
+        }
+
+        /// <summary>
+        /// Retrieves and removes the last element of this deque.
+        /// </summary>
+        /// <returns>The tail of this deque.</returns>
+        /// <exception cref="InvalidOperationException">
+        /// If this deque is empty.
+        /// </exception>
+        public virtual T RemoveLast()
+        {
+            T element;
+            if (PollLast(out element)) return element;
+            throw new InvalidOperationException("Deque is empty.");
+        }
+
+        /// <summary>
+        /// Retrieves and removes the first element of this deque into out
+        /// parameter <paramref name="element"/>.
+        /// </summary>
+        /// <param name="element">
+        /// Set to the head of this deque. <c>default(T)</c> if deque is empty.
+        /// </param>
+        /// <returns>
+        /// <c>false</c> if the deque is empty. Otherwise <c>true</c>.
+        /// </returns>
+        public virtual bool PollFirst(out T element)
+        {
+            for (Node p = First(); p != null; p = Successor(p))
+            {
+                if (!p.IsTaken && p.TryTake())
+                {
+                    Unlink(p);
+                    element = p.Item;
+                    return true;
+                }
+            }
+            element = default(T);
+            return false;
+        }
+
+        /// <summary>
+        /// Retrieves and removes the last element of this deque into out
+        /// parameter <paramref name="element"/>.
+        /// </summary>
+        /// <param name="element">
+        /// Set to the tail of this deque. <c>default(T)</c> if deque is empty.
+        /// </param>
+        /// <returns>
+        /// <c>false</c> if the deque is empty. Otherwise <c>true</c>.
+        /// </returns>
+        public virtual bool PollLast(out T element)
+        {
+            for (Node p = Last(); p != null; p = Predecessor(p))
+            {
+                if (!p.IsTaken && p.TryTake())
+                {
+                    Unlink(p);
+                    element = p.Item;
+                    return true;
+                }
+            }
+            element = default(T);
+            return false;
+        }
+
+        /// <summary>
+        /// Retrieves, but does not remove, the first element of this deque.
+        /// </summary>
+        /// <returns>The head of this deque.</returns>
+        /// <exception cref="InvalidOperationException">
+        /// If this deque is empty.
+        /// </exception>
+        public virtual T GetFirst()
+        {
+            T element;
+            if (PeekFirst(out element)) return element;
+            throw new InvalidOperationException("Deque is empty.");
+        }
+
+        /// <summary>
+        /// Retrieves, but does not remove, the last element of this deque.
+        /// </summary>
+        /// <returns>The tail of this deque.</returns>
+        /// <exception cref="InvalidOperationException">
+        /// If this deque is empty.
+        /// </exception>
+        public virtual T GetLast()
+        {
+            T element;
+            if (PeekLast(out element)) return element;
+            throw new InvalidOperationException("Deque is empty.");
+        }
+
+        /// <summary>
+        /// Retrieves, but does not remove, the first element of this deque
+        /// into out parameter <paramref name="element"/>.
+        /// </summary>
+        /// <param name="element">
+        /// The head of this deque. <c>default(T)</c> if deque is empty.
+        /// </param>
+        /// <returns>
+        /// <c>false</c> if the deque is empty. Otherwise <c>true</c>.
+        /// </returns>
+        public virtual bool PeekFirst(out T element)
+        {
+            for (Node p = First(); p != null; p = Successor(p))
+            {
+                if (p.IsTaken) continue;
+                element = p.Item;
+                return true;
+            }
+            element = default(T);
+            return false;
+        }
+
+        /// <summary>
+        /// Retrieves, but does not remove, the last element of this deque
+        /// into out parameter <paramref name="element"/>.
+        /// </summary>
+        /// <param name="element">
+        /// The tail of this deque. <c>default(T)</c> if deque is empty.
+        /// </param>
+        /// <returns>
+        /// <c>false</c> if the deque is empty. Otherwise <c>true</c>.
+        /// </returns>
+        public virtual bool PeekLast(out T element)
+        {
+            for (Node p = Last(); p != null; p = Predecessor(p))
+            {
+                if (p.IsTaken) continue;
+                element = p.Item;
+                return true;
+            }
+            element = default(T);
+            return false;
+        }
+
+        /// <summary>
+        /// Removes the first element <c>e</c> such that <c>element</c>
+        /// equals <c>e</c>, if such an element exists in this deque. If the
+        /// deque does not contain the element, it is unchanged.
+        /// </summary>
+        /// <param name="element">Element to be removed from this deque, if present.</param>
+        /// <returns><c>true</c> if the deque contained the specified element.</returns>
+        public virtual bool RemoveFirstOccurrence(T element)
+        {
+            IEqualityComparer<T> comparer = EqualityComparer<T>.Default;
+            for (Node p = First(); p != null; p = Successor(p))
+            {
+                if (!p.IsTaken && comparer.Equals(element, p.Item) && p.TryTake())
+                {
+                    Unlink(p);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /// <summary>
+        /// Removes the last element <c>e</c> such that <c>element</c>
+        /// equals <c>e</c>, if such an element exists in this deque. If the
+        /// deque does not contain the element, it is unchanged.
+        /// </summary>
+        /// <param name="element">Element to be removed from this deque, if present.</param>
+        /// <returns><c>true</c> if the deque contained the specified element.</returns>
+        public virtual bool RemoveLastOccurrence(T element)
+        {
+            IEqualityComparer<T> comparer = EqualityComparer<T>.Default;
+            for (Node p = Last(); p != null; p = Predecessor(p))
+            {
+                if (!p.IsTaken && comparer.Equals(element, p.Item) && p.TryTake())
+                {
+                    Unlink(p);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /// <summary>
+        /// Pushes an element onto the stack represented by this deque, in
+        /// other words, inserts it at the front of this deque.
+        /// </summary>
+        /// <param name="element">The element to push.</param>
+        public virtual void Push(T element)
+        {
+            AddFirst(element);
+        }
+
+        /// <summary>
+        /// Pops an element from the stack represented by this deque, in
+        /// other words, removes and returns the first element of this deque.
+        /// </summary>
+        /// <returns>The element at the front of this deque.</returns>
+        /// <exception cref="InvalidOperationException">
+        /// If this deque is empty.
+        /// </exception>
+        public virtual T Pop()
+        {
+            return RemoveFirst();
+        }
+
+        /// <summary>
+        /// Returns an enumerator over the elements in this deque in reverse
+        /// sequential order. The elements will be returned in order from
+        /// last (tail) to first (head). The enumerator is weakly consistent,
+        /// see <see cref="GetEnumerator"/>.
+        /// </summary>
+        /// <returns>
+        /// An enumerator over the elements in this deque in reverse sequence.
+        /// </returns>
+        public virtual IEnumerator<T> GetDescendingEnumerator()
+        {
+            return new Enumerator(this, false);
+        }
+
+        #endregion
+
+        #region IQueue<T> Members
+
+        /// <summary>
+        /// Inserts the specified element at the tail of this deque. As the
+        /// deque is unbounded, this method will never return <c>false</c>.
+        /// </summary>
+        /// <param name="element">The element to add.</param>
+        /// <returns><c>true</c> always.</returns>
+        public override bool Offer(T element)
+        {
+            return OfferLast(element);
+        }
+
+        /// <summary>
+        /// Retrieves and removes the head of the queue represented by this
+        /// deque into out parameter <paramref name="element"/>. Same as
+        /// <see cref="PollFirst"/>.
+        /// </summary>
+        /// <param name="element">
+        /// Set to the head of this deque. <c>default(T)</c> if deque is empty.
+        /// </param>
+        /// <returns>
+        /// <c>false</c> if the deque is empty. Otherwise <c>true</c>.
+        /// </returns>
+        public override bool Poll(out T element)
+        {
+            return PollFirst(out element);
+        }
+
+        /// <summary>
+        /// Retrieves, but does not remove, the head of the queue represented
+        /// by this deque into out parameter <paramref name="element"/>. Same
+        /// as <see cref="PeekFirst"/>.
+        /// </summary>
+        /// <param name="element">
+        /// The head of this deque. <c>default(T)</c> if deque is empty.
+        /// </param>
+        /// <returns>
+        /// <c>false</c> if the deque is empty. Otherwise <c>true</c>.
+        /// </returns>
+        public override bool Peek(out T element)
+        {
+            return PeekFirst(out element);
+        }
+
+        /// <summary>
+        /// Returns <c>true</c> if this deque contains no elements.
+        /// </summary>
+        public override bool IsEmpty
+        {
+            get
+            {
+                T ignore;
+                return !PeekFirst(out ignore);
+            }
+        }
+
+        /// <summary>
+        /// Returns <see cref="int.MaxValue"/> because a
+        /// <see cref="ConcurrentLinkedDeque{T}"/> is not capacity
+        /// constrained.
+        /// </summary>
+        public override int Capacity
+        {
+            get { return int.MaxValue; }
+        }
+
+        /// <summary>
+        /// Returns <see cref="int.MaxValue"/> because a
+        /// <see cref="ConcurrentLinkedDeque{T}"/> is not capacity
+        /// constrained.
+        /// </summary>
+        public override int RemainingCapacity
+        {
+            get { return int.MaxValue; }
+        }
+
+        /// <summary>
+        /// Does the real work for all drain methods. Caller must
+        /// guarantee the <paramref name="action"/> is not <c>null</c> and
+        /// <paramref name="maxElements"/> is greater then zero (0).
+        /// </summary>
+        /// <remarks>
+        /// Each element is removed from the deque before it is passed to
+        /// <paramref name="action"/>, so no two concurrent drains ever
+        /// deliver the same element.
+        /// </remarks>
+        /// <seealso cref="IQueue{T}.Drain(System.Action{T})"/>
+        /// <seealso cref="IQueue{T}.Drain(System.Action{T}, int)"/>
+        /// <seealso cref="IQueue{T}.Drain(System.Action{T}, Predicate{T})"/>
+        /// <seealso cref="IQueue{T}.Drain(System.Action{T}, int, Predicate{T})"/>
+        internal protected override int DoDrain(Action<T> action, int maxElements, Predicate<T> criteria)
+        {
+            int n = 0;
+            for (Node p = First(); p != null && n < maxElements; p = Successor(p))
+            {
+                if (!p.IsTaken && (criteria == null || criteria(p.Item)) && p.TryTake())
+                {
+                    Unlink(p);
+                    action(p.Item);
+                    n++;
+                }
+            }
+            return n;
+        }
+
+        #endregion
+
+        #region ICollection<T> Members
+
+        /// <summary>
+        /// Returns the number of elements in this deque. If this deque
+        /// contains more than <see cref="int.MaxValue"/> elements, returns
+        /// <see cref="int.MaxValue"/>.
+        /// </summary>
+        /// <remarks>
+        /// Beware that, unlike in most collections, this method is <b>not</b>
+        /// a constant-time operation. Because of the asynchronous nature of
+        /// these deques, determining the current number of elements requires
+        /// an O(n) traversal.
+        /// </remarks>
+        public override int Count
+        {
+            get
+            {
+                int count = 0;
+                for (Node p = First(); p != null; p = Successor(p))
+                {
+                    // saturate rather than overflow on huge deques
+                    if (!p.IsTaken && ++count == int.MaxValue) break;
+                }
+                return count;
+            }
+        }
+
+        /// <summary>
+        /// Returns <c>true</c> if this deque contains at least one element
+        /// equal to <paramref name="item"/>.
+        /// </summary>
+        /// <param name="item">The element whose presence is to be tested.</param>
+        /// <returns><c>true</c> if this deque contains the specified element.</returns>
+        public override bool Contains(T item)
+        {
+            IEqualityComparer<T> comparer = EqualityComparer<T>.Default;
+            for (Node p = First(); p != null; p = Successor(p))
+            {
+                if (!p.IsTaken && comparer.Equals(item, p.Item)) return true;
+            }
+            return false;
+        }
+
+        /// <summary>
+        /// Removes the first element equal to <paramref name="item"/>, if
+        /// such an element exists in this deque. Same as
+        /// <see cref="RemoveFirstOccurrence"/>.
+        /// </summary>
+        /// <param name="item">Element to be removed from this deque, if present.</param>
+        /// <returns><c>true</c> if the deque contained the specified element.</returns>
+        public override bool Remove(T item)
+        {
+            return RemoveFirstOccurrence(item);
+        }
+
+        /// <summary>
+        /// Returns an enumerator over the elements in this deque in proper
+        /// sequence. The elements will be returned in order from first
+        /// (head) to last (tail).
+        /// </summary>
+        /// <remarks>
+        /// The returned <see cref="IEnumerator{T}"/> is a "weakly consistent"
+        /// enumerator that will not throw <see cref="InvalidOperationException"/>
+        /// when the deque is concurrently modified, and guarantees to traverse
+        /// elements as they existed upon construction of the enumerator, and
+        /// may (but is not guaranteed to) reflect any modifications subsequent
+        /// to construction.
+        /// </remarks>
+        /// <returns>
+        /// An enumerator over the elements in this deque in proper sequence.
+        /// </returns>
+        public override IEnumerator<T> GetEnumerator()
+        {
+            return new Enumerator(this, true);
+        }
+
+        /// <summary>
+        /// Does the actual work of copying to array. The elements are
+        /// collected before <paramref name="array"/> is sized, because the
+        /// deque may grow or shrink while it is traversed.
+        /// </summary>
+        /// <param name="array">
+        /// The one-dimensional <see cref="Array"/> that is the
+        /// destination of the elements copied from <see cref="ICollection{T}"/>.
+        /// The <see cref="Array"/> must have zero-based indexing.
+        /// </param>
+        /// <param name="arrayIndex">
+        /// The zero-based index in array at which copying begins.
+        /// </param>
+        /// <param name="ensureCapacity">
+        /// If is <c>true</c>, calls <see cref="AbstractCollection{T}.EnsureCapacity"/>
+        /// </param>
+        /// <returns>
+        /// A new array of same runtime type as <paramref name="array"/> if
+        /// <paramref name="array"/> is too small to hold all elements and
+        /// <paramref name="ensureCapacity"/> is <c>false</c>. Otherwise
+        /// the <paramref name="array"/> instance itself.
+        /// </returns>
+        protected override T[] DoCopyTo(T[] array, int arrayIndex, bool ensureCapacity)
+        {
+            List<T> snapshot = new List<T>();
+            foreach (T e in this) snapshot.Add(e);
+            if (ensureCapacity) array = EnsureCapacity(array, snapshot.Count);
+            snapshot.CopyTo(array, arrayIndex);
+            return array;
+        }
+
+        #endregion
+
+        #region Linking and unlinking
+
+        /// <summary>
+        /// Links <paramref name="e"/> as first element.
+        /// </summary>
+        private void LinkFirst(T e)
+        {
+            Node newNode = new Node(e);
+            for (;;) // restart from head
+            {
+                for (Node h = _head, p = h, q; ; )
+                {
+                    if ((q = p.Prev) != null && (q = (p = q).Prev) != null)
+                    {
+                        // Check for head updates every other hop.
+                        // If p == q, we are sure to follow head instead.
+                        p = (h != (h = _head)) ? h : q;
+                    }
+                    else if (p.Next == p) // PREV_TERMINATOR
+                    {
+                        break;
+                    }
+                    else
+                    {
+                        // p is first node
+                        newNode.Next = p; // CAS piggyback
+                        if (p.CasPrev(null, newNode))
+                        {
+                            // Successful CAS is the linearization point
+                            // for e to become an element of this deque,
+                            // and for newNode to become "live".
+                            if (p != h) CasHead(h, newNode); // hop two nodes at a time, failure is OK
+                            return;
+                        }
+                        // Lost CAS race to another thread; re-read prev
+                    }
+                }
+            }
+        }
+
+        /// <summary>
+        /// Links <paramref name="e"/> as last element.
+        /// </summary>
+        private void LinkLast(T e)
+        {
+            Node newNode = new Node(e);
+            for (;;) // restart from tail
+            {
+                for (Node t = _tail, p = t, q; ; )
+                {
+                    if ((q = p.Next) != null && (q = (p = q).Next) != null)
+                    {
+                        // Check for tail updates every other hop.
+                        // If p == q, we are sure to follow tail instead.
+                        p = (t != (t = _tail)) ? t : q;
+                    }
+                    else if (p.Prev == p) // NEXT_TERMINATOR
+                    {
+                        break;
+                    }
+                    else
+                    {
+                        // p is last node
+                        newNode.Prev = p; // CAS piggyback
+                        if (p.CasNext(null, newNode))
+                        {
+                            // Successful CAS is the linearization point
+                            // for e to become an element of this deque,
+                            // and for newNode to become "live".
+                            if (p != t) CasTail(t, newNode); // hop two nodes at a time, failure is OK
+                            return;
+                        }
+                        // Lost CAS race to another thread; re-read next
+                    }
+                }
+            }
+        }
+
+        /// <summary>
+        /// Unlinks non-null node <paramref name="x"/>, which has been taken.
+        /// </summary>
+        private void Unlink(Node x)
+        {
+            Node prev = x.Prev;
+            Node next = x.Next;
+            if (prev == null)
+            {
+                UnlinkFirst(x, next);
+                return;
+            }
+            if (next == null)
+            {
+                UnlinkLast(x, prev);
+                return;
+            }
+
+            // Unlink interior node.
+            //
+            // This is the common case, since a series of polls at the
+            // same end will be "interior" removes, except perhaps for the
+            // first one, since end nodes cannot be unlinked.
+            //
+            // At any time, all active nodes are mutually reachable by
+            // following a sequence of either next or prev pointers.
+            //
+            // Our strategy is to find the unique active predecessor and
+            // successor of x. Try to fix up their links so that they point
+            // to each other, leaving x unreachable from active nodes. If
+            // successful, and if x has no live predecessor/successor, we
+            // additionally try to gc-unlink, leaving active nodes
+            // unreachable from x, by rechecking that the status of
+            // predecessor and successor are unchanged and ensuring that x
+            // is not reachable from tail/head, before setting x's
+            // prev/next links to their logical approximate replacements,
+            // self/TERMINATOR.
+            Node activePred, activeSucc;
+            bool isFirst, isLast;
+            int hops = 1;
+
+            // Find active predecessor
+            for (Node p = prev; ; ++hops)
+            {
+                if (!p.IsTaken)
+                {
+                    activePred = p;
+                    isFirst = false;
+                    break;
+                }
+                Node q = p.Prev;
+                if (q == null)
+                {
+                    if (p.Next == p) return;
+                    activePred = p;
+                    isFirst = true;
+                    break;
+                }
+                if (p == q) return;
+                p = q;
+            }
+
+            // Find active successor
+            for (Node p = next; ; ++hops)
+            {
+                if (!p.IsTaken)
+                {
+                    activeSucc = p;
+                    isLast = false;
+                    break;
+                }
+                Node q = p.Next;
+                if (q == null)
+                {
+                    if (p.Prev == p) return;
+                    activeSucc = p;
+                    isLast = true;
+                    break;
+                }
+                if (p == q) return;
+                p = q;
+            }
+
+            // always squeeze out interior deleted nodes
+            if (hops < HOPS && (isFirst | isLast)) return;
+
+            // Squeeze out deleted nodes between activePred and
+            // activeSucc, including x.
+            SkipDeletedSuccessors(activePred);
+            SkipDeletedPredecessors(activeSucc);
+
+            // Try to gc-unlink, if possible
+            if ((isFirst | isLast) &&
+                // Recheck expected state of predecessor and successor
+                (activePred.Next == activeSucc) &&
+                (activeSucc.Prev == activePred) &&
+                (isFirst ? activePred.Prev == null : !activePred.IsTaken) &&
+                (isLast ? activeSucc.Next == null : !activeSucc.IsTaken))
+            {
+                UpdateHead(); // Ensure x is not reachable from head
+                UpdateTail(); // Ensure x is not reachable from tail
+
+                // Finally, actually gc-unlink
+                x.Prev = isFirst ? PREV_TERMINATOR : x;
+                x.Next = isLast ? NEXT_TERMINATOR : x;
+            }
+        }
+
+        /// <summary>
+        /// Unlinks non-null first node.
+        /// </summary>
+        private void UnlinkFirst(Node first, Node next)
+        {
+            for (Node o = null, p = next, q; ; )
+            {
+                if (!p.IsTaken || (q = p.Next) == null)
+                {
+                    if (o != null && p.Prev != p && first.CasNext(next, p))
+                    {
+                        SkipDeletedPredecessors(p);
+                        if (first.Prev == null &&
+                            (p.Next == null || !p.IsTaken) &&
+                            p.Prev == first)
+                        {
+                            UpdateHead(); // Ensure o is not reachable from head
+                            UpdateTail(); // Ensure o is not reachable from tail
+
+                            // Finally, actually gc-unlink
+                            o.Next = o;
+                            o.Prev = PREV_TERMINATOR;
+                        }
+                    }
+                    return;
+                }
+                if (p == q) return;
+                o = p;
+                p = q;
+            }
+        }
+
+        /// <summary>
+        /// Unlinks non-null last node.
+        /// </summary>
+        private void UnlinkLast(Node last, Node prev)
+        {
+            for (Node o = null, p = prev, q; ; )
+            {
+                if (!p.IsTaken || (q = p.Prev) == null)
+                {
+                    if (o != null && p.Next != p && last.CasPrev(prev, p))
+                    {
+                        SkipDeletedSuccessors(p);
+                        if (last.Next == null &&
+                            (p.Prev == null || !p.IsTaken) &&
+                            p.Next == last)
+                        {
+                            UpdateHead(); // Ensure o is not reachable from head
+                            UpdateTail(); // Ensure o is not reachable from tail
+
+                            // Finally, actually gc-unlink
+                            o.Prev = o;
+                            o.Next = NEXT_TERMINATOR;
+                        }
+                    }
+                    return;
+                }
+                if (p == q) return;
+                o = p;
+                p = q;
+            }
+        }
+
+        /// <summary>
+        /// Guarantees that any node which was unlinked before a call to
+        /// this method will be unreachable from head after it returns.
+        /// Does not guarantee to eliminate slack, only that head will point
+        /// to a node that was active while this method was running.
+        /// </summary>
+        private void UpdateHead()
+        {
+            // Either head already points to an active node, or we keep
+            // trying to cas it to the first node until it does.
+            Node h, p, q;
+            while ((h = _head).IsTaken && (p = h.Prev) != null) // restart from head
+            {
+                for (;;)
+                {
+                    if ((q = p.Prev) == null || (q = (p = q).Prev) == null)
+                    {
+                        // It is possible that p is PREV_TERMINATOR, but if
+                        // so, the CAS is guaranteed to fail.
+                        if (CasHead(h, p)) return;
+                        break;
+                    }
+                    if (h != _head) break;
+                    p = q;
+                }
+            }
+        }
+
+        /// <summary>
+        /// Guarantees that any node which was unlinked before a call to
+        /// this method will be unreachable from tail after it returns.
+        /// Does not guarantee to eliminate slack, only that tail will point
+        /// to a node that was active while this method was running.
+        /// </summary>
+        private void UpdateTail()
+        {
+            // Either tail already points to an active node, or we keep
+            // trying to cas it to the last node until it does.
+            Node t, p, q;
+            while ((t = _tail).IsTaken && (p = t.Next) != null) // restart from tail
+            {
+                for (;;)
+                {
+                    if ((q = p.Next) == null || (q = (p = q).Next) == null)
+                    {
+                        // It is possible that p is NEXT_TERMINATOR, but if
+                        // so, the CAS is guaranteed to fail.
+                        if (CasTail(t, p)) return;
+                        break;
+                    }
+                    if (t != _tail) break;
+                    p = q;
+                }
+            }
+        }
+
+        private static void SkipDeletedPredecessors(Node x)
+        {
+            do
+            {
+                Node prev = x.Prev;
+                Node p = ActivePredecessorFrom(prev);
+                // found active CAS target
+                if (p != null && (prev == p || x.CasPrev(prev, p))) return;
+            } while (!x.IsTaken || x.Next == null);
+        }
+
+        private static void SkipDeletedSuccessors(Node x)
+        {
+            do
+            {
+                Node next = x.Next;
+                Node p = ActiveSuccessorFrom(next);
+                // found active CAS target
+                if (p != null && (next == p || x.CasNext(next, p))) return;
+            } while (!x.IsTaken || x.Prev == null);
+        }
+
+        /// <summary>
+        /// Walks back from <paramref name="p"/> to the first active node,
+        /// or returns <c>null</c> if it ran into an unlinked node.
+        /// </summary>
+        private static Node ActivePredecessorFrom(Node p)
+        {
+            for (;;)
+            {
+                if (!p.IsTaken) return p;
+                Node q = p.Prev;
+                if (q == null) return (p.Next == p) ? null : p;
+                if (p == q) return null;
+                p = q;
+            }
+        }
+
+        /// <summary>
+        /// Walks forward from <paramref name="p"/> to the first active
+        /// node, or returns <c>null</c> if it ran into an unlinked node.
+        /// </summary>
+        private static Node ActiveSuccessorFrom(Node p)
+        {
+            for (;;)
+            {
+                if (!p.IsTaken) return p;
+                Node q = p.Next;
+                if (q == null) return (p.Prev == p) ? null : p;
+                if (p == q) return null;
+                p = q;
+            }
+        }
+
+        /// <summary>
+        /// Returns the successor of <paramref name="p"/>, or the first node
+        /// if <paramref name="p"/>.Next has been linked to self, which will
+        /// only be true if traversing with a stale pointer that is now off
+        /// the list.
+        /// </summary>
+        private Node Successor(Node p)
+        {
+            Node q = p.Next;
+            return (p == q) ? First() : q;
+        }
+
+        /// <summary>
+        /// Returns the predecessor of <paramref name="p"/>, or the last node
+        /// if <paramref name="p"/>.Prev has been linked to self, which will
+        /// only be true if traversing with a stale pointer that is now off
+        /// the list.
+        /// </summary>
+        private Node Predecessor(Node p)
+        {
+            Node q = p.Prev;
+            return (p == q) ? Last() : q;
+        }
+
+        /// <summary>
+        /// Returns the first node, the unique node p for which
+        /// p.Prev == null &amp;&amp; p.Next != p. The returned node may or
+        /// may not be logically deleted. Guarantees that head is set to
+        /// the returned node.
+        /// </summary>
+        private Node First()
+        {
+            for (;;) // restart from head
+            {
+                for (Node h = _head, p = h, q; ; )
+                {
+                    if ((q = p.Prev) != null && (q = (p = q).Prev) != null)
+                    {
+                        // Check for head updates every other hop.
+                        // If p == q, we are sure to follow head instead.
+                        p = (h != (h = _head)) ? h : q;
+                    }
+                    else if (p == h
+                             // It is possible that p is PREV_TERMINATOR,
+                             // but if so, the CAS is guaranteed to fail.
+                             || CasHead(h, p))
+                    {
+                        return p;
+                    }
+                    else
+                    {
+                        break;
+                    }
+                }
+            }
+        }
+
+        /// <summary>
+        /// Returns the last node, the unique node p for which
+        /// p.Next == null &amp;&amp; p.Prev != p. The returned node may or
+        /// may not be logically deleted. Guarantees that tail is set to
+        /// the returned node.
+        /// </summary>
+        private Node Last()
+        {
+            for (;;) // restart from tail
+            {
+                for (Node t = _tail, p = t, q; ; )
+                {
+                    if ((q = p.Next) != null && (q = (p = q).Next) != null)
+                    {
+                        // Check for tail updates every other hop.
+                        // If p == q, we are sure to follow tail instead.
+                        p = (t != (t = _tail)) ? t : q;
+                    }
+                    else if (p == t
+                             // It is possible that p is NEXT_TERMINATOR,
+                             // but if so, the CAS is guaranteed to fail.
+                             || CasTail(t, p))
+                    {
+                        return p;
+                    }
+                    else
+                    {
+                        break;
+                    }
+                }
+            }
+        }
+
+#pragma warning disable 420 // a reference to a volatile field will not be treated as volatile
+        private bool CasHead(Node cmp, Node val)
+        {
+            return Interlocked.CompareExchange(ref _head, val, cmp) == cmp;
+        }
+
+        private bool CasTail(Node cmp, Node val)
+        {
+            return Interlocked.CompareExchange(ref _tail, val, cmp) == cmp;
+        }
+#pragma warning restore 420
+
+        #endregion
+
+        private sealed class Node
+        {
+            internal readonly T Item;
+            internal volatile Node Prev;
+            internal volatile Node Next;
+            private volatile int _taken;
+
+            /// <summary>
+            /// Creates a node that holds no element, such as the initial
+            /// head and tail or a terminator.
+            /// </summary>
+            internal Node()
+            {
+                _taken = 1;
+            }
+
+            internal Node(T item)
+            {
+                Item = item;
+            }
+
+            internal static Node NewPrevTerminator()
+            {
+                Node terminator = new Node();
+                terminator.Next = terminator;
+                return terminator;
+            }
+
+            internal static Node NewNextTerminator()
+            {
+                Node terminator = new Node();
+                terminator.Prev = terminator;
+                return terminator;
+            }
+
+            internal bool IsTaken
+            {
+                get { return _taken != 0; }
+            }
+
+#pragma warning disable 420 // a reference to a volatile field will not be treated as volatile
+            /// <summary>
+            /// Logically deletes this node. Only one caller succeeds.
+            /// </summary>
+            internal bool TryTake()
+            {
+                return Interlocked.CompareExchange(ref _taken, 1, 0) == 0;
+            }
+
+            internal bool CasPrev(Node cmp, Node val)
+            {
+                return Interlocked.CompareExchange(ref Prev, val, cmp) == cmp;
+            }
+
+            internal bool CasNext(Node cmp, Node val)
+            {
+                return Interlocked.CompareExchange(ref Next, val, cmp) == cmp;
+            }
+#pragma warning restore 420
+        }
+
+        private sealed class Enumerator : AbstractEnumerator<T>
+        {
+            private readonly ConcurrentLinkedDeque<T> _deque;
+            private readonly bool _ascending;
+            /// <summary>
+            /// The node holding the current element, or <c>null</c> before
+            /// the enumeration started.
+            /// </summary>
+            private Node _currentNode;
+            /// <summary>
+            /// Once an element was found present it must be returned, even
+            /// if it is removed before <see cref="FetchCurrent"/> is called.
+            /// </summary>
+            private T _currentItem;
+
+            internal Enumerator(ConcurrentLinkedDeque<T> deque, bool ascending)
+            {
+                _deque = deque;
+                _ascending = ascending;
+            }
+
+            protected override T FetchCurrent()
+            {
+                return _currentItem;
+            }
+
+            protected override bool GoNext()
+            {
+                Node p = _currentNode == null ? StartNode() : NextNode(_currentNode);
+                for (; p != null; p = NextNode(p))
+                {
+                    if (p.IsTaken) continue;
+                    _currentNode = p;
+                    _currentItem = p.Item;
+                    return true;
+                }
+                return false;
+            }
+
+            protected override void DoReset()
+            {
+                _currentNode = null;
+                _currentItem = default(T);
+            }
+
+            private Node StartNode()
+            {
+                return _ascending ? _deque.First() : _deque.Last();
+            }
+
+            private Node NextNode(Node p)
+            {
+                return _ascending ? _deque.Successor(p) : _deque.Predecessor(p);
+            }
+        }
+    }
+}
@@ -0,0 +1,611 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+
+using System;
+using System.Collections.Generic;
+using System.Runtime.Serialization;
+using System.Threading;
+using Spring.Collections.Generic;
+
+namespace Spring.Threading.Collections.Generic
+{
+    /// <summary>
+    /// An unbounded thread-safe <see cref="IQueue{T}"/> based on linked
+    /// nodes. This queue orders elements FIFO (first-in-first-out). The
+    /// <b>head</b> of the queue is that element that has been on the queue
+    /// the longest time. The <b>tail</b> of the queue is that element that
+    /// has been on the queue the shortest time. New elements are inserted
+    /// at the tail of the queue, and the queue retrieval operations obtain
+    /// elements at the head of the queue.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// A <see cref="ConcurrentLinkedQueue{T}"/> is an appropriate choice
+    /// when many threads will share access to a common collection. Unlike
+    /// most other concurrent collection implementations, this class does
+    /// not permit blocking and takes no lock at all: it uses the wait-free
+    /// algorithm described in <a
+    /// href="http://www.cs.rochester.edu/u/michael/PODC96.html"> Simple,
+    /// Fast, and Practical Non-Blocking and Blocking Concurrent Queue
+    /// Algorithms</a> by Maged M. Michael and Michael L. Scott, with every
+    /// link change done by a single <see cref="Interlocked"/> compare and
+    /// swap.
+    /// </para>
+    /// <para>
+    /// Enumerators are <i>weakly consistent</i>, returning elements
+    /// reflecting the state of the queue at some point at or since the
+    /// creation of the enumerator. They do not throw
+    /// <see cref="InvalidOperationException"/>, and may proceed
+    /// concurrently with other operations.
+    /// </para>
+    /// <para>
+    /// Beware that, unlike in most collections, <see cref="Count"/> is
+    /// <b>not</b> a constant-time operation. Because of the asynchronous
+    /// nature of these queues, determining the current number of elements
+    /// requires a traversal of the elements, and so may report inaccurate
+    /// results if the collection is modified during traversal.
+    /// </para>
+    /// <para>
+    /// Based on the on the back port of JCP JSR-166.
+    /// </para>
+    /// </remarks>
+    /// <author>Doug Lea</author>
+    [Serializable]
+    public class ConcurrentLinkedQueue<T> : AbstractQueue<T>, ISerializable //JDK_1_6
+    {
+        /*
+         * This is a modification of the Michael & Scott algorithm,
+         * adapted for a garbage-collected environment, with support for
+         * interior node deletion (to support Remove(T)).
+         *
+         * An element is logically removed by a CAS of its node's Taken
+         * flag from 0 to 1; that CAS is the linearization point of the
+         * removal. Java marks removal by nulling the item, which cannot
+         * be done here because T may be a value type and default(T) is a
+         * legal element. The item itself is written once before the node
+         * is published and never changes.
+         *
+         * Both head and tail are permitted to lag. In fact, failing to
+         * update them every time one could is a significant optimization
+         * (fewer CASes). Offer only swings the tail once it is two or
+         * more hops behind, and Poll only moves the head when it is at
+         * least one taken node behind. So an uncontended operation
+         * costs about one and a half CASes instead of two.
+         *
+         * Since head and tail are updated concurrently and
+         * independently, it is possible for tail to lag behind head
+         * (why not?). When a node is dequeued as the head moves past it,
+         * its next link is pointed at itself. A traversal that reaches a
+         * self-linked node knows it fell off the list and restarts from
+         * head.
+         *
+         * Invariants:
+         * - there is exactly one last node, whose Next is null, and it
+         *   can be reached from head in O(1) time (head may lag, tail too)
+         * - all live nodes are reachable from head
+         * - head is never null, head.Next never points to head
+         * - tail is never null, the last node is reachable from tail
+         */
+
+        [NonSerialized]
+        private volatile Node _head;
+
+        [NonSerialized]
+        private volatile Node _tail;
+
+        /// <summary>
+        /// Creates a <see cref="ConcurrentLinkedQueue{T}"/> that is
+        /// initially empty.
+        /// </summary>
+        public ConcurrentLinkedQueue()
+        {
+            _head = _tail = Node.NewDummy();
+        }
+
+        /// <summary>
+        /// Creates a <see cref="ConcurrentLinkedQueue{T}"/> initially
+        /// containing the elements of the given collection, added in
+        /// traversal order of the collection's enumerator.
+        /// </summary>
+        /// <param name="collection">
+        /// The collection of elements to initially contain.
+        /// </param>
+        /// <exception cref="ArgumentNullException">
+        /// If <paramref name="collection"/> is <c>null</c>.
+        /// </exception>
+        public ConcurrentLinkedQueue(IEnumerable<T> collection)
+        {
+            if (collection == null) throw new ArgumentNullException("collection");
+            Initialize(collection);
+        }
+
+        /// <summary>
+        /// Reconstitutes the queue from the <see cref="SerializationInfo"/>.
+        /// </summary>
+        /// <param name="info">The <see cref="SerializationInfo"/> to pull date from.</param>
+        /// <param name="context">The contextual information about the source or destination.</param>
+        protected ConcurrentLinkedQueue(SerializationInfo info, StreamingContext context)
+        {
+            Initialize((T[])info.GetValue("Data", typeof(T[])));
+        }
+
+        /// <summary>
+        /// Populates a <see cref="SerializationInfo"/> with the data needed
+        /// to serialize the target object.
+        /// </summary>
+        /// <param name="info">The <see cref="SerializationInfo"/> to populate with data.</param>
+        /// <param name="context">The destination for this serialization.</param>
+        public virtual void GetObjectData(SerializationInfo info, StreamingContext context)
+        {
+            info.AddValue("Data", ToArray());
+        }
+
+        /// <summary>
+        /// Inserts the specified element at the tail of this queue. As the
+        /// queue is unbounded, this method never returns <c>false</c>.
+        /// </summary>
+        /// <param name="element">The element to add.</param>
+        /// <returns><c>true</c> always.</returns>
+        public override bool Offer(T element)
+        {
+            Node newNode = new Node(element);
+            for (Node t = _tail, p = t; ; )
+            {
+                Node q = p.Next;
+                if (q == null)
+                {
+                    // p is last node
+                    if (p.CasNext(null, newNode))
+                    {
+                        // Successful CAS is the linearization point for
+                        // element to become an element of this queue, and
+                        // for newNode to become "live". Hop two nodes at
+                        // a time, failure is OK.
+                        if (p != t) CasTail(t, newNode);
+                        return true;
+                    }
+                    // Lost CAS race to another thread; re-read next
+                }
+                else if (p == q)
+                {
+                    // We have fallen off list. If tail is unchanged, it
+                    // will also be off-list, in which case we need to jump
+                    // to head, from which all live nodes are always
+                    // reachable. Else the new tail is a better bet.
+                    Node h = _head;
+                    p = (t != (t = _tail)) ? t : h;
+                }
+                else
+                {
+                    // Check for tail updates after two hops.
+                    p = (p != t && t != (t = _tail)) ? t : q;
+                }
+            }
+        }
+
+        /// <summary>
+        /// Retrieves and removes the head of this queue into out parameter
+        /// <paramref name="element"/>.
+        /// </summary>
+        /// <param name="element">
+        /// Set to the head of this queue. <c>default(T)</c> if queue is empty.
+        /// </param>
+        /// <returns>
+        /// <c>false</c> if the queue is empty. Otherwise <c>true</c>.
+        /// </returns>
+        public override bool Poll(out T element)
+        {
+            for (;;)
+            {
+                for (Node h = _head, p = h, q; ; )
+                {
+                    if (!p.IsTaken && p.TryTake())
+                    {
+                        // Successful CAS is the linearization point for
+                        // the element to be removed from this queue.
+                        // Hop two nodes at a time.
+                        if (p != h) UpdateHead(h, ((q = p.Next) != null) ? q : p);
+                        element = p.Item;
+                        return true;
+                    }
+                    if ((q = p.Next) == null)
+                    {
+                        UpdateHead(h, p);
+                        element = default(T);
+                        return false;
+                    }
+                    if (p == q) break; // fell off the list, restart from head
+                    p = q;
+                }
+            }
+        }
+
+        /// <summary>
+        /// Retrieves, but does not remove, the head of this queue into out
+        /// parameter <paramref name="element"/>.
+        /// </summary>
+        /// <param name="element">
+        /// The head of this queue. <c>default(T)</c> if queue is empty.
+        /// </param>
+        /// <returns>
+        /// <c>false</c> is the queue is empty. Otherwise <c>true</c>.
+        /// </returns>
+        public override bool Peek(out T element)
+        {
+            Node p = First();
+            if (p == null)
+            {
+                element = default(T);
+                return false;
+            }
+            element = p.Item;
+            return true;
+        }
+
+        /// <summary>
+        /// Returns <c>true</c> if this queue contains no elements.
+        /// </summary>
+        public override bool IsEmpty
+        {
+            get { return First() == null; }
+        }
+
+        /// <summary>
+        /// Returns the number of elements in this queue. If this queue
+        /// contains more than <see cref="int.MaxValue"/> elements, returns
+        /// <see cref="int.MaxValue"/>.
+        /// </summary>
+        /// <remarks>
+        /// Beware that, unlike in most collections, this method is <b>not</b>
+        /// a constant-time operation. Because of the asynchronous nature of
+        /// these queues, determining the current number of elements requires
+        /// an O(n) traversal.
+        /// </remarks>
+        public override int Count
+        {
+            get
+            {
+                int count = 0;
+                for (Node p = First(); p != null; p = Successor(p))
+                {
+                    // saturate rather than overflow on huge queues
+                    if (!p.IsTaken && ++count == int.MaxValue) break;
+                }
+                return count;
+            }
+        }
+
+        /// <summary>
+        /// Returns <see cref="int.MaxValue"/> because a
+        /// <see cref="ConcurrentLinkedQueue{T}"/> is not capacity
+        /// constrained.
+        /// </summary>
+        public override int Capacity
+        {
+            get { return int.MaxValue; }
+        }
+
+        /// <summary>
+        /// Returns <see cref="int.MaxValue"/> because a
+        /// <see cref="ConcurrentLinkedQueue{T}"/> is not capacity
+        /// constrained.
+        /// </summary>
+        public override int RemainingCapacity
+        {
+            get { return int.MaxValue; }
+        }
+
+        /// <summary>
+        /// Returns <c>true</c> if this queue contains the specified element.
+        /// </summary>
+        /// <param name="item">The element to locate in this queue.</param>
+        /// <returns><c>true</c> if this queue contains the specified element.</returns>
+        public override bool Contains(T item)
+        {
+            IEqualityComparer<T> comparer = EqualityComparer<T>.Default;
+            for (Node p = First(); p != null; p = Successor(p))
+            {
+                if (!p.IsTaken && comparer.Equals(item, p.Item)) return true;
+            }
+            return false;
+        }
+
+        /// <summary>
+        /// Removes a single instance of the specified element from this
+        /// queue, if it is present.
+        /// </summary>
+        /// <param name="item">Element to be removed from this queue, if present.</param>
+        /// <returns><c>true</c> if this queue changed as a result of the call.</returns>
+        public override bool Remove(T item)
+        {
+            IEqualityComparer<T> comparer = EqualityComparer<T>.Default;
+            Node pred = null;
+            for (Node p = First(); p != null; p = Successor(p))
+            {
+                if (!p.IsTaken && comparer.Equals(item, p.Item) && p.TryTake())
+                {
+                    Unlink(pred, p);
+                    return true;
+                }
+                pred = p;
+            }
+            return false;
+        }
+
+        /// <summary>
+        /// Returns an enumerator over the elements in this queue in proper
+        /// sequence.
+        /// </summary>
+        /// <remarks>
+        /// The returned <see cref="IEnumerator{T}"/> is a "weakly consistent"
+        /// enumerator that will not throw <see cref="InvalidOperationException"/>
+        /// when the queue is concurrently modified, and guarantees to traverse
+        /// elements as they existed upon construction of the enumerator, and
+        /// may (but is not guaranteed to) reflect any modifications subsequent
+        /// to construction.
+        /// </remarks>
+        /// <returns>
+        /// An enumerator over the elements in this queue in proper sequence.
+        /// </returns>
+        public override IEnumerator<T> GetEnumerator()
+        {
+            return new Enumerator(this);
+        }
+
+        /// <summary>
+        /// Does the real work for all drain methods. Caller must
+        /// guarantee the <paramref name="action"/> is not <c>null</c> and
+        /// <paramref name="maxElements"/> is greater then zero (0).
+        /// </summary>
+        /// <remarks>
+        /// Each element is removed from the queue before it is passed to
+        /// <paramref name="action"/>, so no two concurrent drains ever
+        /// deliver the same element.
+        /// </remarks>
+        /// <seealso cref="IQueue{T}.Drain(System.Action{T})"/>
+        /// <seealso cref="IQueue{T}.Drain(System.Action{T}, int)"/>
+        /// <seealso cref="IQueue{T}.Drain(System.Action{T}, Predicate{T})"/>
+        /// <seealso cref="IQueue{T}.Drain(System.Action{T}, int, Predicate{T})"/>
+        internal protected override int DoDrain(Action<T> action, int maxElements, Predicate<T> criteria)
+        {
+            int n = 0;
+            if (criteria == null)
+            {
+                T element;
+                while (n < maxElements && Poll(out element))
+                {
+                    action(element);
+                    n++;
+                }
+                return n;
+            }
+            Node pred = null;
+            for (Node p = First(); p != null && n < maxElements; p = Successor(p))
+            {
+                if (!p.IsTaken && criteria(p.Item) && p.TryTake())
+                {
+                    Unlink(pred, p);
+                    action(p.Item);
+                    n++;
+                }
+                else
+                {
+                    pred = p;
+                }
+            }
+            return n;
+        }
+
+        /// <summary>
+        /// Does the actual work of copying to array. The elements are
+        /// collected before <paramref name="array"/> is sized, because the
+        /// queue may grow or shrink while it is traversed.
+        /// </summary>
+        /// <param name="array">
+        /// The one-dimensional <see cref="Array"/> that is the
+        /// destination of the elements copied from <see cref="ICollection{T}"/>.
+        /// The <see cref="Array"/> must have zero-based indexing.
+        /// </param>
+        /// <param name="arrayIndex">
+        /// The zero-based index in array at which copying begins.
+        /// </param>
+        /// <param name="ensureCapacity">
+        /// If is <c>true</c>, calls <see cref="AbstractCollection{T}.EnsureCapacity"/>
+        /// </param>
+        /// <returns>
+        /// A new array of same runtime type as <paramref name="array"/> if
+        /// <paramref name="array"/> is too small to hold all elements and
+        /// <paramref name="ensureCapacity"/> is <c>false</c>. Otherwise
+        /// the <paramref name="array"/> instance itself.
+        /// </returns>
+        protected override T[] DoCopyTo(T[] array, int arrayIndex, bool ensureCapacity)
+        {
+            List<T> snapshot = new List<T>();
+            foreach (T e in this) snapshot.Add(e);
+            if (ensureCapacity) array = EnsureCapacity(array, snapshot.Count);
+            snapshot.CopyTo(array, arrayIndex);
+            return array;
+        }
+
+        private void Initialize(IEnumerable<T> collection)
+        {
+            // Build the chain privately; it is published by the volatile
+            // writes below.
+            Node h = Node.NewDummy(), t = h;
+            foreach (T e in collection)
+            {
+                Node newNode = new Node(e);
+                t.Next = newNode;
+                t = newNode;
+            }
+            _tail = t;
+            _head = h;
+        }
+
+        /// <summary>
+        /// Returns the first live node on the list, or <c>null</c> if
+        /// empty. Moves the head past the taken nodes it walks over.
+        /// </summary>
+        private Node First()
+        {
+            for (;;)
+            {
+                for (Node h = _head, p = h, q; ; )
+                {
+                    bool hasItem = !p.IsTaken;
+                    if (hasItem || (q = p.Next) == null)
+                    {
+                        UpdateHead(h, p);
+                        return hasItem ? p : null;
+                    }
+                    if (p == q) break; // fell off the list, restart from head
+                    p = q;
+                }
+            }
+        }
+
+        /// <summary>
+        /// Returns the successor of <paramref name="p"/>, or the head node
+        /// if <paramref name="p"/> has been unlinked from the head of the
+        /// list.
+        /// </summary>
+        private Node Successor(Node p)
+        {
+            Node next = p.Next;
+            return (p == next) ? _head : next;
+        }
+
+        /// <summary>
+        /// Tries to CAS head to <paramref name="p"/>. If successful, points
+        /// the old head at itself as a sentinel for traversals that are
+        /// still holding on to it.
+        /// </summary>
+        private void UpdateHead(Node h, Node p)
+        {
+            if (h != p && CasHead(h, p)) h.Next = h;
+        }
+
+        /// <summary>
+        /// Unlinks the taken node <paramref name="p"/> from its predecessor,
+        /// unless it is the last node, which must stay to anchor the tail.
+        /// </summary>
+        private void Unlink(Node pred, Node p)
+        {
+            Node next = Successor(p);
+            if (pred != null && next != null) pred.CasNext(p, next);
+        }
+
+#pragma warning disable 420 // a reference to a volatile field will not be treated as volatile
+        private bool CasHead(Node cmp, Node val)
+        {
+            return Interlocked.CompareExchange(ref _head, val, cmp) == cmp;
+        }
+
+        private bool CasTail(Node cmp, Node val)
+        {
+            return Interlocked.CompareExchange(ref _tail, val, cmp) == cmp;
+        }
+#pragma warning restore 420
+
+        private sealed class Node
+        {
+            internal readonly T Item;
+            internal volatile Node Next;
+            private volatile int _taken;
+
+            internal Node(T item)
+            {
+                Item = item;
+            }
+
+            /// <summary>
+            /// Creates the initial head node, which holds no element.
+            /// </summary>
+            internal static Node NewDummy()
+            {
+                Node dummy = new Node(default(T));
+                dummy._taken = 1;
+                return dummy;
+            }
+
+            internal bool IsTaken
+            {
+                get { return _taken != 0; }
+            }
+
+#pragma warning disable 420 // a reference to a volatile field will not be treated as volatile
+            internal bool TryTake()
+            {
+                return Interlocked.CompareExchange(ref _taken, 1, 0) == 0;
+            }
+
+            internal bool CasNext(Node cmp, Node val)
+            {
+                return Interlocked.CompareExchange(ref Next, val, cmp) == cmp;
+            }
+#pragma warning restore 420
+        }
+
+        private sealed class Enumerator : AbstractEnumerator<T>
+        {
+            private readonly ConcurrentLinkedQueue<T> _queue;
+            /// <summary>
+            /// The node holding the current element, or <c>null</c> before
+            /// the enumeration started.
+            /// </summary>
+            private Node _currentNode;
+            /// <summary>
+            /// Once an element was found present it must be returned, even
+            /// if it is removed before <see cref="FetchCurrent"/> is called.
+            /// </summary>
+            private T _currentItem;
+
+            internal Enumerator(ConcurrentLinkedQueue<T> queue)
+            {
+                _queue = queue;
+            }
+
+            protected override T FetchCurrent()
+            {
+                return _currentItem;
+            }
+
+            protected override bool GoNext()
+            {
+                Node p = _currentNode == null ? _queue.First() : _queue.Successor(_currentNode);
+                for (; p != null; p = _queue.Successor(p))
+                {
+                    if (p.IsTaken) continue;
+                    _currentNode = p;
+                    _currentItem = p.Item;
+                    return true;
+                }
+                return false;
+            }
+
+            protected override void DoReset()
+            {
+                _currentNode = null;
+                _currentItem = default(T);
+            }
+        }
+    }
+}
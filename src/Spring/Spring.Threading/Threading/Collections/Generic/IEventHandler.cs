@@ -0,0 +1,45 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+
+namespace Spring.Threading.Collections.Generic
+{
+    /// <summary>
+    /// Processes the events of a <see cref="RingBuffer{T}"/> on behalf of a
+    /// <see cref="BatchEventProcessor{T}"/>.
+    /// </summary>
+    /// <remarks>
+    /// NOTE: this interface is NOT present in java.util.concurrent.
+    /// </remarks>
+    /// <typeparam name="T">The type of the events.</typeparam>
+    public interface IEventHandler<T> //NET_ONLY
+    {
+        /// <summary>
+        /// Called for each published event, in sequence order.
+        /// </summary>
+        /// <param name="data">The event.</param>
+        /// <param name="sequence">The sequence of the event.</param>
+        /// <param name="endOfBatch">
+        /// <c>true</c> for the last event that is currently available, which
+        /// is the time to flush anything batched up.
+        /// </param>
+        void OnEvent(T data, long sequence, bool endOfBatch);
+    }
+}
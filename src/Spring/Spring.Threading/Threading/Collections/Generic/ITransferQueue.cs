@@ -0,0 +1,145 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+
+using System;
+using System.Threading;
+
+namespace Spring.Threading.Collections.Generic
+{
+    /// <summary>
+    /// A <see cref="IBlockingQueue{T}"/> in which producers may wait for
+    /// consumers to receive elements.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// A <see cref="ITransferQueue{T}"/> may be useful for example in
+    /// message passing applications in which producers sometimes (using
+    /// method <see cref="Transfer"/>) await receipt of elements by
+    /// consumers invoking <see cref="IBlockingQueue{T}.Take"/> or
+    /// <see cref="IBlockingQueue{T}.Poll(TimeSpan, out T)"/>, while at
+    /// other times enqueue elements (via method
+    /// <see cref="IBlockingQueue{T}.Put"/>) without waiting for receipt.
+    /// Non-blocking and time-out versions of <see cref="TryTransfer(T)"/>
+    /// are also available. A <see cref="ITransferQueue{T}"/> may also be
+    /// queried, via <see cref="HasWaitingConsumer"/>, whether there are any
+    /// threads waiting for items, which is a converse analogy to a
+    /// <see cref="IQueue{T}.Peek"/> operation.
+    /// </para>
+    /// <para>
+    /// Like other blocking queues, a <see cref="ITransferQueue{T}"/> may be
+    /// capacity bounded. If so, an attempted transfer operation may
+    /// initially block waiting for available space, and/or subsequently
+    /// block waiting for reception by a consumer. Note that in a queue
+    /// with zero capacity, such as <see cref="SynchronousQueue{T}"/>,
+    /// <see cref="IBlockingQueue{T}.Put"/> and <see cref="Transfer"/> are
+    /// effectively synonymous.
+    /// </para>
+    /// <para>
+    /// Based on the on the back port of JCP JSR-166.
+    /// </para>
+    /// </remarks>
+    /// <typeparam name="T">The type of elements held in this queue.</typeparam>
+    /// <author>Doug Lea</author>
+    public interface ITransferQueue<T> : IBlockingQueue<T> //JDK_1_7
+    {
+        /// <summary>
+        /// Transfers the element to a waiting consumer immediately, if
+        /// possible.
+        /// </summary>
+        /// <remarks>
+        /// More precisely, transfers the specified element immediately if
+        /// there exists a consumer already waiting to receive it (in
+        /// <see cref="IBlockingQueue{T}.Take"/> or timed
+        /// <see cref="IBlockingQueue{T}.Poll(TimeSpan, out T)"/>), otherwise
+        /// returning <c>false</c> without enqueuing the element.
+        /// </remarks>
+        /// <param name="element">The element to transfer.</param>
+        /// <returns>
+        /// <c>true</c> if the element was transferred, else <c>false</c>.
+        /// </returns>
+        bool TryTransfer(T element);
+
+        /// <summary>
+        /// Transfers the element to a consumer, waiting if necessary to do
+        /// so.
+        /// </summary>
+        /// <remarks>
+        /// More precisely, transfers the specified element immediately if
+        /// there exists a consumer already waiting to receive it (in
+        /// <see cref="IBlockingQueue{T}.Take"/> or timed
+        /// <see cref="IBlockingQueue{T}.Poll(TimeSpan, out T)"/>), else
+        /// waits until the element is received by a consumer.
+        /// </remarks>
+        /// <param name="element">The element to transfer.</param>
+        /// <exception cref="ThreadInterruptedException">
+        /// If interrupted while waiting, in which case the element is not
+        /// left enqueued.
+        /// </exception>
+        void Transfer(T element);
+
+        /// <summary>
+        /// Transfers the element to a consumer if it is possible to do so
+        /// before the timeout elapses.
+        /// </summary>
+        /// <remarks>
+        /// More precisely, transfers the specified element immediately if
+        /// there exists a consumer already waiting to receive it (in
+        /// <see cref="IBlockingQueue{T}.Take"/> or timed
+        /// <see cref="IBlockingQueue{T}.Poll(TimeSpan, out T)"/>), else
+        /// waits until the element is received by a consumer, returning
+        /// <c>false</c> if the specified wait time elapses before the
+        /// element can be transferred.
+        /// </remarks>
+        /// <param name="element">The element to transfer.</param>
+        /// <param name="duration">How long to wait before giving up.</param>
+        /// <returns>
+        /// <c>true</c> if successful, or <c>false</c> if the specified
+        /// waiting time elapses before completion, in which case the
+        /// element is not left enqueued.
+        /// </returns>
+        /// <exception cref="ThreadInterruptedException">
+        /// If interrupted while waiting, in which case the element is not
+        /// left enqueued.
+        /// </exception>
+        bool TryTransfer(T element, TimeSpan duration);
+
+        /// <summary>
+        /// Returns <c>true</c> if there is at least one consumer waiting to
+        /// receive an element via <see cref="IBlockingQueue{T}.Take"/> or
+        /// timed <see cref="IBlockingQueue{T}.Poll(TimeSpan, out T)"/>. The
+        /// return value represents a momentary state of affairs.
+        /// </summary>
+        bool HasWaitingConsumer { get; }
+
+        /// <summary>
+        /// Returns an estimate of the number of consumers waiting to
+        /// receive elements via <see cref="IBlockingQueue{T}.Take"/> or
+        /// timed <see cref="IBlockingQueue{T}.Poll(TimeSpan, out T)"/>. The
+        /// return value is an approximation of a momentary state of
+        /// affairs, that may be inaccurate if consumers have completed or
+        /// given up waiting. The value may be useful for monitoring and
+        /// heuristics, but not for synchronization control.
+        /// Implementations of this method are likely to be noticeably
+        /// slower than those for <see cref="HasWaitingConsumer"/>.
+        /// </summary>
+        int WaitingConsumerCount { get; }
+    }
+}
@@ -0,0 +1,80 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+
+using System;
+
+namespace Spring.Threading.Collections.Generic
+{
+    /// <summary>
+    /// Decides how a thread waits for a lock-free structure, such as an
+    /// <see cref="AbstractArrayQueue{T}"/>, to change state. The structure
+    /// itself never blocks; only its blocking operations go through the
+    /// wait strategy, so the strategy trades latency against CPU usage.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// The structure calls <see cref="SignalAll"/> after every state
+    /// change. Strategies that poll can ignore it, and should, because it
+    /// is on the fast path of every operation.
+    /// </para>
+    /// <para>
+    /// Implementations must let <see cref="System.Threading.Thread.Interrupt"/>
+    /// end a wait with <see cref="System.Threading.ThreadInterruptedException"/>.
+    /// </para>
+    /// <para>
+    /// NOTE: this interface is NOT present in java.util.concurrent.
+    /// </para>
+    /// </remarks>
+    /// <seealso cref="YieldingWaitStrategy"/>
+    /// <seealso cref="SleepingWaitStrategy"/>
+    /// <seealso cref="BlockingWaitStrategy"/>
+    /// <seealso cref="BusySpinWaitStrategy"/>
+    public interface IWaitStrategy //NET_ONLY
+    {
+        /// <summary>
+        /// Waits until <paramref name="condition"/> returns <c>true</c>.
+        /// </summary>
+        /// <param name="condition">The state change to wait for.</param>
+        /// <exception cref="System.Threading.ThreadInterruptedException">
+        /// If interrupted while waiting.
+        /// </exception>
+        void Await(Func<bool> condition);
+
+        /// <summary>
+        /// Waits until <paramref name="condition"/> returns <c>true</c> or
+        /// <paramref name="duration"/> elapses.
+        /// </summary>
+        /// <param name="condition">The state change to wait for.</param>
+        /// <param name="duration">How long to wait before giving up.</param>
+        /// <returns>
+        /// The last value returned by <paramref name="condition"/>.
+        /// </returns>
+        /// <exception cref="System.Threading.ThreadInterruptedException">
+        /// If interrupted while waiting.
+        /// </exception>
+        bool Await(Func<bool> condition, TimeSpan duration);
+
+        /// <summary>
+        /// Notifies all waiting threads that the state has changed.
+        /// </summary>
+        void SignalAll();
+    }
+}
@@ -0,0 +1,1135 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+
+using System;
+using System.Collections.Generic;
+using System.Runtime.Serialization;
+using System.Threading;
+using Spring.Collections.Generic;
+using Spring.Threading.Locks;
+using Spring.Utility;
+
+namespace Spring.Threading.Collections.Generic
+{
+    /// <summary>
+    /// An unbounded <see cref="ITransferQueue{T}"/> based on linked nodes.
+    /// This queue orders elements FIFO (first-in-first-out) with respect
+    /// to any given producer. The <b>head</b> of the queue is that element
+    /// that has been on the queue the longest time for some producer. The
+    /// <b>tail</b> of the queue is that element that has been on the queue
+    /// the shortest time for some producer.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// One queue serves both direct handoff, like a
+    /// <see cref="SynchronousQueue{T}"/>, through <see cref="Transfer"/>
+    /// and <see cref="TryTransfer(T)"/>, and buffering, like an unbounded
+    /// <see cref="LinkedBlockingQueue{T}"/>, through
+    /// <see cref="Put"/> and <see cref="Offer(T)"/>. No operation takes
+    /// a lock; threads that must wait spin briefly before they park.
+    /// </para>
+    /// <para>
+    /// Beware that, unlike in most collections, <see cref="Count"/> is
+    /// <b>not</b> a constant-time operation. Because of the asynchronous
+    /// nature of these queues, determining the current number of elements
+    /// requires a traversal of the elements, and so may report inaccurate
+    /// results if this collection is modified during traversal.
+    /// </para>
+    /// <para>
+    /// Based on the on the back port of JCP JSR-166.
+    /// </para>
+    /// </remarks>
+    /// <typeparam name="T">The type of elements held in this queue.</typeparam>
+    /// <author>Doug Lea</author>
+    [Serializable]
+    public class LinkedTransferQueue<T> : AbstractBlockingQueue<T>, ITransferQueue<T>, ISerializable //JDK_1_7
+    {
+        /*
+         * *** Overview of Dual Queues with Slack ***
+         *
+         * Dual Queues, introduced by Scherer and Scott
+         * (http://www.cs.rice.edu/~wns1/papers/2004-DISC-DDS.pdf) are
+         * (linked) queues in which nodes may represent either data or
+         * requests. When a thread tries to enqueue a data node, but
+         * encounters a request node, it instead "matches" and removes it;
+         * and vice versa for enqueuing requests. Blocking Dual Queues
+         * arrange that threads enqueuing unmatched requests block until
+         * other threads provide the match.
+         *
+         * A FIFO dual queue may be implemented using a variation of the
+         * Michael & Scott (M&S) lock-free queue algorithm. It maintains
+         * two pointer fields, "head", pointing to a (matched) node that
+         * in turn points to the first actual (unmatched) queue node (or
+         * null if empty); and "tail" that points to the last node on the
+         * queue (or again null if empty).
+         *
+         * Matching is cheap, but head and tail updates are not: each
+         * costs a CAS that all threads contend on. So, like
+         * ConcurrentLinkedQueue, we let them lag. The head is only
+         * advanced once it is at least two matched nodes behind ("slack"
+         * of two), and the tail only once the last node is two hops
+         * away. Slack cuts the CAS traffic per operation by about half
+         * while keeping traversals from the head short.
+         *
+         * A node is matched once its status leaves WAITING. A data node
+         * carries its item from construction, so a consumer matches it
+         * with a single CAS of the status. A request node has no item
+         * yet; a producer first claims it with a CAS to CLAIMED, then
+         * stores the item and publishes MATCHED. A waiter that gives up
+         * (timeout or interrupt) CASes its own node from WAITING to
+         * CANCELLED. Java encodes all of this in the item field itself;
+         * that is not possible here because T may be a value type and
+         * default(T) is a legal element.
+         *
+         * Items are never cleared, so a reader that saw a node unmatched
+         * can read its item without re-checking. Matched nodes become
+         * garbage as soon as the head moves past them or they are
+         * unspliced.
+         *
+         * *** Blocking ***
+         *
+         * A thread whose node is at or near the front of the queue is
+         * likely to be matched soon, so it spins for a while (when more
+         * than one processor is available) before it records its parker
+         * in the node and parks. Threads further back in the chain spin
+         * less, and yield now and then so as not to starve the thread
+         * they are waiting for. Parking uses LockSupport, so an
+         * interrupt surfaces as a ThreadInterruptedException out of the
+         * park; the waiter then cancels its node, unless it was matched
+         * in the meantime, in which case it completes normally and
+         * re-asserts the interrupt.
+         *
+         * *** Unlinking cancelled nodes ***
+         *
+         * A cancelled or removed node is unspliced from its predecessor
+         * with a CAS. That can fail to take effect when the predecessor
+         * is itself unlinked concurrently, so failed attempts are
+         * counted and, once SWEEP_THRESHOLD of them accumulated, a full
+         * sweep removes all matched nodes that are still linked.
+         */
+
+        /// <summary>Whether spinning makes sense at all.</summary>
+        private static readonly bool _isMultiProcessor = Environment.ProcessorCount > 1;
+
+        /// <summary>
+        /// The number of times to spin before blocking when a node is
+        /// first in the queue.
+        /// </summary>
+        private const int FRONT_SPINS = 1 << 7;
+
+        /// <summary>
+        /// The number of times to spin before blocking when a node is
+        /// preceded by another node that is apparently spinning. Also
+        /// serves as the yield period while spinning.
+        /// </summary>
+        private const int CHAINED_SPINS = FRONT_SPINS >> 1;
+
+        /// <summary>
+        /// The maximum number of estimated removal failures
+        /// (<see cref="_sweepVotes"/>) to tolerate before sweeping through
+        /// the queue unlinking cancelled nodes that were not unlinked
+        /// upon initial removal.
+        /// </summary>
+        private const int SWEEP_THRESHOLD = 32;
+
+        // Possible values for "how" argument in Xfer method.
+        private const int NOW = 0;   // for untimed Poll, TryTransfer
+        private const int ASYNC = 1; // for Offer, Put, Add
+        private const int SYNC = 2;  // for Transfer, Take
+        private const int TIMED = 3; // for timed Poll, TryTransfer
+
+        /// <summary>Head of the queue; <c>null</c> until first enqueue.</summary>
+        [NonSerialized]
+        private volatile Node _head;
+
+        /// <summary>Tail of the queue; <c>null</c> until first append.</summary>
+        [NonSerialized]
+        private volatile Node _tail;
+
+        /// <summary>The number of apparent failures to unsplice removed nodes.</summary>
+        [NonSerialized]
+        private volatile int _sweepVotes;
+
+        /// <summary>
+        /// Creates an initially empty <see cref="LinkedTransferQueue{T}"/>.
+        /// </summary>
+        public LinkedTransferQueue()
+        {
+        }
+
+        /// <summary>
+        /// Creates a <see cref="LinkedTransferQueue{T}"/> initially
+        /// containing the elements of the given collection, added in
+        /// traversal order of the collection's enumerator.
+        /// </summary>
+        /// <param name="collection">
+        /// The collection of elements to initially contain.
+        /// </param>
+        /// <exception cref="ArgumentNullException">
+        /// If <paramref name="collection"/> is <c>null</c>.
+        /// </exception>
+        public LinkedTransferQueue(IEnumerable<T> collection)
+        {
+            if (collection == null) throw new ArgumentNullException("collection");
+            foreach (T e in collection) Put(e);
+        }
+
+        /// <summary>
+        /// Reconstitutes the queue from the <see cref="SerializationInfo"/>.
+        /// </summary>
+        /// <param name="info">The <see cref="SerializationInfo"/> to pull date from.</param>
+        /// <param name="context">The contextual information about the source or destination.</param>
+        protected LinkedTransferQueue(SerializationInfo info, StreamingContext context)
+        {
+            foreach (T e in (T[])info.GetValue("Data", typeof(T[]))) Put(e);
+        }
+
+        /// <summary>
+        /// Populates a <see cref="SerializationInfo"/> with the data needed
+        /// to serialize the target object. Waiting consumers are not
+        /// serialized.
+        /// </summary>
+        /// <param name="info">The <see cref="SerializationInfo"/> to populate with data.</param>
+        /// <param name="context">The destination for this serialization.</param>
+        public virtual void GetObjectData(SerializationInfo info, StreamingContext context)
+        {
+            info.AddValue("Data", ToArray());
+        }
+
+        #region Producer operations
+
+        /// <summary>
+        /// Inserts the specified element at the tail of this queue. As the
+        /// queue is unbounded, this method will never block.
+        /// </summary>
+        /// <param name="element">The element to add.</param>
+        public override void Put(T element)
+        {
+            T ignore;
+            Xfer(element, true, ASYNC, TimeSpan.Zero, out ignore);
+        }
+
+        /// <summary>
+        /// Inserts the specified element at the tail of this queue. As the
+        /// queue is unbounded, this method will never block or return
+        /// <c>false</c>.
+        /// </summary>
+        /// <param name="element">The element to add.</param>
+        /// <param name="duration">Ignored.</param>
+        /// <returns><c>true</c> always.</returns>
+        public override bool Offer(T element, TimeSpan duration)
+        {
+            Put(element);
+            return true;
+        }
+
+        /// <summary>
+        /// Inserts the specified element at the tail of this queue. As the
+        /// queue is unbounded, this method will never return <c>false</c>.
+        /// </summary>
+        /// <param name="element">The element to add.</param>
+        /// <returns><c>true</c> always.</returns>
+        public override bool Offer(T element)
+        {
+            Put(element);
+            return true;
+        }
+
+        /// <summary>
+        /// Transfers the element to a waiting consumer immediately, if
+        /// possible, otherwise returns <c>false</c> without enqueuing the
+        /// element.
+        /// </summary>
+        /// <param name="element">The element to transfer.</param>
+        /// <returns>
+        /// <c>true</c> if the element was transferred, else <c>false</c>.
+        /// </returns>
+        public virtual bool TryTransfer(T element)
+        {
+            T ignore;
+            return Xfer(element, true, NOW, TimeSpan.Zero, out ignore);
+        }
+
+        /// <summary>
+        /// Transfers the element to a consumer, waiting if necessary to do
+        /// so. The element is enqueued at the tail of this queue and the
+        /// call returns once a consumer received it.
+        /// </summary>
+        /// <param name="element">The element to transfer.</param>
+        /// <exception cref="ThreadInterruptedException">
+        /// If interrupted while waiting, in which case the element is not
+        /// left enqueued.
+        /// </exception>
+        public virtual void Transfer(T element)
+        {
+            T ignore;
+            Xfer(element, true, SYNC, TimeSpan.Zero, out ignore);
+        }
+
+        /// <summary>
+        /// Transfers the element to a consumer if it is possible to do so
+        /// before the timeout elapses. The element is enqueued at the tail
+        /// of this queue until it is received or the time runs out.
+        /// </summary>
+        /// <param name="element">The element to transfer.</param>
+        /// <param name="duration">How long to wait before giving up.</param>
+        /// <returns>
+        /// <c>true</c> if successful, or <c>false</c> if the specified
+        /// waiting time elapses before completion, in which case the
+        /// element is not left enqueued.
+        /// </returns>
+        /// <exception cref="ThreadInterruptedException">
+        /// If interrupted while waiting, in which case the element is not
+        /// left enqueued.
+        /// </exception>
+        public virtual bool TryTransfer(T element, TimeSpan duration)
+        {
+            T ignore;
+            return Xfer(element, true, TIMED, duration, out ignore);
+        }
+
+        #endregion
+
+        #region Consumer operations
+
+        /// <summary>
+        /// Retrieves and removes the head of this queue, waiting if necessary
+        /// until an element becomes available.
+        /// </summary>
+        /// <returns>The head of this queue.</returns>
+        /// <exception cref="ThreadInterruptedException">
+        /// If interrupted while waiting.
+        /// </exception>
+        public override T Take()
+        {
+            T element;
+            Xfer(default(T), false, SYNC, TimeSpan.Zero, out element);
+            return element;
+        }
+
+        /// <summary>
+        /// Retrieves and removes the head of this queue, waiting up to the
+        /// specified wait time if necessary for an element to become available.
+        /// </summary>
+        /// <param name="duration">How long to wait before giving up.</param>
+        /// <param name="element">
+        /// Set to the head of this queue. <c>default(T)</c> if queue is empty.
+        /// </param>
+        /// <returns>
+        /// <c>false</c> if the queue is still empty after waited for the time
+        /// specified by the <paramref name="duration"/>. Otherwise <c>true</c>.
+        /// </returns>
+        /// <exception cref="ThreadInterruptedException">
+        /// If interrupted while waiting.
+        /// </exception>
+        public override bool Poll(TimeSpan duration, out T element)
+        {
+            return Xfer(default(T), false, TIMED, duration, out element);
+        }
+
+        /// <summary>
+        /// Retrieves and removes the head of this queue into out parameter
+        /// <paramref name="element"/>.
+        /// </summary>
+        /// <param name="element">
+        /// Set to the head of this queue. <c>default(T)</c> if queue is empty.
+        /// </param>
+        /// <returns>
+        /// <c>false</c> if the queue is empty. Otherwise <c>true</c>.
+        /// </returns>
+        public override bool Poll(out T element)
+        {
+            return Xfer(default(T), false, NOW, TimeSpan.Zero, out element);
+        }
+
+        /// <summary>
+        /// Retrieves, but does not remove, the head of this queue into out
+        /// parameter <paramref name="element"/>.
+        /// </summary>
+        /// <param name="element">
+        /// The head of this queue. <c>default(T)</c> if queue is empty.
+        /// </param>
+        /// <returns>
+        /// <c>false</c> is the queue is empty. Otherwise <c>true</c>.
+        /// </returns>
+        public override bool Peek(out T element)
+        {
+            for (Node p = _head; p != null; p = Successor(p))
+            {
+                if (p.IsMatched) continue;
+                if (!p.IsData) break;
+                element = p.Item;
+                return true;
+            }
+            element = default(T);
+            return false;
+        }
+
+        #endregion
+
+        #region Inspection
+
+        /// <summary>
+        /// Returns <c>true</c> if there is at least one consumer waiting to
+        /// receive an element via <see cref="Take"/> or timed
+        /// <see cref="Poll(TimeSpan, out T)"/>. The return value represents
+        /// a momentary state of affairs.
+        /// </summary>
+        public virtual bool HasWaitingConsumer
+        {
+            get { return FirstOfMode(false) != null; }
+        }
+
+        /// <summary>
+        /// Returns an estimate of the number of consumers waiting to
+        /// receive elements via <see cref="Take"/> or timed
+        /// <see cref="Poll(TimeSpan, out T)"/>. Like <see cref="Count"/>,
+        /// this requires a traversal of the queue.
+        /// </summary>
+        public virtual int WaitingConsumerCount
+        {
+            get { return CountOfMode(false); }
+        }
+
+        /// <summary>
+        /// Returns <c>true</c> if this queue contains no elements.
+        /// </summary>
+        public override bool IsEmpty
+        {
+            get
+            {
+                for (Node p = _head; p != null; p = Successor(p))
+                {
+                    if (!p.IsMatched) return !p.IsData;
+                }
+                return true;
+            }
+        }
+
+        /// <summary>
+        /// Returns the number of elements in this queue. If this queue
+        /// contains more than <see cref="int.MaxValue"/> elements, returns
+        /// <see cref="int.MaxValue"/>.
+        /// </summary>
+        /// <remarks>
+        /// Beware that, unlike in most collections, this method is <b>not</b>
+        /// a constant-time operation. Because of the asynchronous nature of
+        /// these queues, determining the current number of elements requires
+        /// an O(n) traversal.
+        /// </remarks>
+        public override int Count
+        {
+            get { return CountOfMode(true); }
+        }
+
+        /// <summary>
+        /// Returns <see cref="int.MaxValue"/> because a
+        /// <see cref="LinkedTransferQueue{T}"/> is not capacity constrained.
+        /// </summary>
+        public override int Capacity
+        {
+            get { return int.MaxValue; }
+        }
+
+        /// <summary>
+        /// Returns <see cref="int.MaxValue"/> because a
+        /// <see cref="LinkedTransferQueue{T}"/> is not capacity constrained.
+        /// </summary>
+        public override int RemainingCapacity
+        {
+            get { return int.MaxValue; }
+        }
+
+        /// <summary>
+        /// Returns <c>true</c> if this queue contains the specified element.
+        /// </summary>
+        /// <param name="item">The element to locate in this queue.</param>
+        /// <returns><c>true</c> if this queue contains the specified element.</returns>
+        public override bool Contains(T item)
+        {
+            IEqualityComparer<T> comparer = EqualityComparer<T>.Default;
+            for (Node p = _head; p != null; p = Successor(p))
+            {
+                if (p.IsData)
+                {
+                    if (!p.IsMatched && comparer.Equals(item, p.Item)) return true;
+                }
+                else if (!p.IsMatched) break;
+            }
+            return false;
+        }
+
+        /// <summary>
+        /// Removes a single instance of the specified element from this
+        /// queue, if it is present.
+        /// </summary>
+        /// <param name="item">Element to be removed from this queue, if present.</param>
+        /// <returns><c>true</c> if this queue changed as a result of the call.</returns>
+        public override bool Remove(T item)
+        {
+            IEqualityComparer<T> comparer = EqualityComparer<T>.Default;
+            return MatchData(e => comparer.Equals(item, e), null, 1) == 1;
+        }
+
+        /// <summary>
+        /// Returns an enumerator over the elements in this queue in proper
+        /// sequence.
+        /// </summary>
+        /// <remarks>
+        /// The returned <see cref="IEnumerator{T}"/> is a "weakly consistent"
+        /// enumerator that will not throw <see cref="InvalidOperationException"/>
+        /// when the queue is concurrently modified, and guarantees to traverse
+        /// elements as they existed upon construction of the enumerator, and
+        /// may (but is not guaranteed to) reflect any modifications subsequent
+        /// to construction.
+        /// </remarks>
+        /// <returns>
+        /// An enumerator over the elements in this queue in proper sequence.
+        /// </returns>
+        public override IEnumerator<T> GetEnumerator()
+        {
+            return new Enumerator(this);
+        }
+
+        /// <summary>
+        /// Does the real work for all drain methods. Caller must
+        /// guarantee the <paramref name="action"/> is not <c>null</c> and
+        /// <paramref name="maxElements"/> is greater then zero (0).
+        /// </summary>
+        /// <remarks>
+        /// Each element is matched, and so removed from the queue, before
+        /// it is passed to <paramref name="action"/>. A producer waiting in
+        /// <see cref="Transfer"/> for a drained element returns.
+        /// </remarks>
+        /// <seealso cref="IQueue{T}.Drain(System.Action{T})"/>
+        /// <seealso cref="IQueue{T}.Drain(System.Action{T}, int)"/>
+        /// <seealso cref="IQueue{T}.Drain(System.Action{T}, Predicate{T})"/>
+        /// <seealso cref="IQueue{T}.Drain(System.Action{T}, int, Predicate{T})"/>
+        internal protected override int DoDrain(Action<T> action, int maxElements, Predicate<T> criteria)
+        {
+            if (criteria != null) return MatchData(criteria, action, maxElements);
+            int n = 0;
+            T element;
+            while (n < maxElements && Poll(out element))
+            {
+                action(element);
+                n++;
+            }
+            return n;
+        }
+
+        /// <summary>
+        /// Does the actual work of copying to array. The elements are
+        /// collected before <paramref name="array"/> is sized, because the
+        /// queue may grow or shrink while it is traversed.
+        /// </summary>
+        /// <param name="array">
+        /// The one-dimensional <see cref="Array"/> that is the
+        /// destination of the elements copied from <see cref="ICollection{T}"/>.
+        /// The <see cref="Array"/> must have zero-based indexing.
+        /// </param>
+        /// <param name="arrayIndex">
+        /// The zero-based index in array at which copying begins.
+        /// </param>
+        /// <param name="ensureCapacity">
+        /// If is <c>true</c>, calls <see cref="AbstractCollection{T}.EnsureCapacity"/>
+        /// </param>
+        /// <returns>
+        /// A new array of same runtime type as <paramref name="array"/> if
+        /// <paramref name="array"/> is too small to hold all elements and
+        /// <paramref name="ensureCapacity"/> is <c>false</c>. Otherwise
+        /// the <paramref name="array"/> instance itself.
+        /// </returns>
+        protected override T[] DoCopyTo(T[] array, int arrayIndex, bool ensureCapacity)
+        {
+            List<T> snapshot = new List<T>();
+            foreach (T e in this) snapshot.Add(e);
+            if (ensureCapacity) array = EnsureCapacity(array, snapshot.Count);
+            snapshot.CopyTo(array, arrayIndex);
+            return array;
+        }
+
+        #endregion
+
+        #region Dual queue machinery
+
+        /// <summary>
+        /// Implements all queuing methods.
+        /// </summary>
+        /// <param name="e">The item to offer, ignored for requests.</param>
+        /// <param name="haveData">
+        /// <c>true</c> for a put, offer or transfer, <c>false</c> for a take
+        /// or poll.
+        /// </param>
+        /// <param name="how">NOW, ASYNC, SYNC, or TIMED.</param>
+        /// <param name="duration">Timeout, used only if TIMED.</param>
+        /// <param name="item">
+        /// The item received by a request, or default(T).
+        /// </param>
+        /// <returns>
+        /// <c>true</c> if the operation was matched, <c>false</c> if it
+        /// timed out, found nothing to match, or (ASYNC) was enqueued.
+        /// </returns>
+        /// <exception cref="ThreadInterruptedException">
+        /// If interrupted while waiting in SYNC or TIMED mode.
+        /// </exception>
+        private bool Xfer(T e, bool haveData, int how, TimeSpan duration, out T item)
+        {
+            Node s = null; // the node to append, if needed
+
+            for (;;) // restart on append race
+            {
+                for (Node h = _head, p = h; p != null; ) // find & match first node
+                {
+                    if (!p.IsMatched)
+                    {
+                        if (p.IsData == haveData) break; // can't match
+                        if (p.TryMatch(e, out item))
+                        {
+                            for (Node q = p; q != h; )
+                            {
+                                Node n = q.Next; // update by 2 unless singleton
+                                if (_head == h && CasHead(h, n ?? q))
+                                {
+                                    h.ForgetNext();
+                                    break;
+                                }
+                                // advance and retry
+                                if ((h = _head) == null || (q = h.Next) == null || !q.IsMatched)
+                                    break; // unless slack < 2
+                            }
+                            p.Unpark();
+                            return true;
+                        }
+                    }
+                    Node next = p.Next;
+                    p = (p != next) ? next : (h = _head); // use head if p offlist
+                }
+
+                if (how != NOW) // no matches available
+                {
+                    if (s == null) s = new Node(e, haveData);
+                    Node pred = TryAppend(s, haveData);
+                    if (pred == null) continue; // lost race vs opposite mode
+                    if (how != ASYNC) return AwaitMatch(s, pred, how == TIMED, duration, out item);
+                }
+                item = default(T);
+                return false; // not waiting
+            }
+        }
+
+        /// <summary>
+        /// Tries to append node <paramref name="s"/> as tail.
+        /// </summary>
+        /// <param name="s">The node to append.</param>
+        /// <param name="haveData">Whether <paramref name="s"/> is a data node.</param>
+        /// <returns>
+        /// <c>null</c> on failure due to losing race with append in
+        /// different mode, else <paramref name="s"/>'s predecessor, or
+        /// <paramref name="s"/> itself if no predecessor.
+        /// </returns>
+        private Node TryAppend(Node s, bool haveData)
+        {
+            for (Node t = _tail, p = t; ; ) // move p to last node and append
+            {
+                Node n, u; // temps for reads of next & tail
+                if (p == null && (p = _head) == null)
+                {
+                    if (CasHead(null, s)) return s; // initialize
+                }
+                else if (p.CannotPrecede(haveData))
+                {
+                    return null; // lost race vs opposite mode
+                }
+                else if ((n = p.Next) != null) // not last; keep traversing
+                {
+                    p = p != t && t != (u = _tail) ? (t = u) : // stale tail
+                        (p != n) ? n : null;                  // restart if off list
+                }
+                else if (!p.CasNext(null, s))
+                {
+                    p = p.Next; // re-read on CAS failure
+                }
+                else
+                {
+                    if (p != t) // update if slack now >= 2
+                    {
+                        while ((_tail != t || !CasTail(t, s)) &&
+                               (t = _tail) != null &&
+                               (s = t.Next) != null && // advance and retry
+                               (s = s.Next) != null && s != t)
+                        {
+                        }
+                    }
+                    return p;
+                }
+            }
+        }
+
+        /// <summary>
+        /// Spins, yields, then parks until node <paramref name="s"/> is
+        /// matched or the caller gives up.
+        /// </summary>
+        /// <param name="s">The waiting node.</param>
+        /// <param name="pred">
+        /// The predecessor of <paramref name="s"/>, or <paramref name="s"/>
+        /// itself if it has no predecessor, or <c>null</c> if unknown (the
+        /// <c>null</c> case does not occur in any current calls but may in
+        /// possible future extensions).
+        /// </param>
+        /// <param name="timed">If <c>true</c>, wait only until timeout elapses.</param>
+        /// <param name="duration">Timeout, used only if timed is <c>true</c>.</param>
+        /// <param name="item">The matched item.</param>
+        /// <returns><c>true</c> if matched, <c>false</c> on timeout.</returns>
+        /// <exception cref="ThreadInterruptedException">
+        /// If interrupted before matched.
+        /// </exception>
+        private bool AwaitMatch(Node s, Node pred, bool timed, TimeSpan duration, out T item)
+        {
+            DateTime deadline = timed ? WaitTime.Deadline(duration) : DateTime.MaxValue;
+            int spins = -1; // initialized after first status check
+            bool interrupted = false;
+
+            for (;;)
+            {
+                if (s.IsMatchedByOther) // matched
+                {
+                    item = s.Item;
+                    s.ForgetContents(); // avoid garbage
+                    if (interrupted) Thread.CurrentThread.Interrupt();
+                    return true;
+                }
+                if (timed && (duration = deadline.Subtract(DateTime.UtcNow)).Ticks <= 0 && s.TryCancel())
+                {
+                    Unsplice(pred, s);
+                    item = default(T);
+                    return false;
+                }
+
+                if (spins < 0) // establish spins at/near front
+                {
+                    spins = SpinsFor(pred, s.IsData);
+                }
+                else if (spins > 0) // spin
+                {
+                    if ((--spins & (CHAINED_SPINS - 1)) == 0) Thread.Sleep(0); // occasionally yield
+                }
+                else if (s.Waiter == null)
+                {
+                    s.SetWaiter(LockSupport.CurrentParker); // request unpark then recheck
+                }
+                else
+                {
+                    try
+                    {
+                        if (timed) LockSupport.Park(this, duration);
+                        else LockSupport.Park(this);
+                    }
+                    catch (ThreadInterruptedException)
+                    {
+                        if (s.TryCancel())
+                        {
+                            Unsplice(pred, s);
+                            throw;
+                        }
+                        // matched concurrently, finish the handoff first
+                        interrupted = true;
+                    }
+                }
+            }
+        }
+
+        /// <summary>
+        /// Returns spin/yield value for a node with given predecessor and
+        /// data mode.
+        /// </summary>
+        private static int SpinsFor(Node pred, bool haveData)
+        {
+            if (_isMultiProcessor && pred != null)
+            {
+                if (pred.IsData != haveData) return FRONT_SPINS + CHAINED_SPINS; // phase change
+                if (pred.IsMatched) return FRONT_SPINS; // probably at front
+                if (pred.Waiter == null) return CHAINED_SPINS; // pred apparently spinning
+            }
+            return 0;
+        }
+
+        /// <summary>
+        /// Returns the successor of <paramref name="p"/>, or the head node
+        /// if <paramref name="p"/> has been unlinked from the head of the
+        /// list.
+        /// </summary>
+        private Node Successor(Node p)
+        {
+            Node next = p.Next;
+            return (p == next) ? _head : next;
+        }
+
+        /// <summary>
+        /// Returns the first unmatched node of the given mode, or
+        /// <c>null</c> if none.
+        /// </summary>
+        private Node FirstOfMode(bool isData)
+        {
+            for (Node p = _head; p != null; p = Successor(p))
+            {
+                if (!p.IsMatched) return (p.IsData == isData) ? p : null;
+            }
+            return null;
+        }
+
+        /// <summary>
+        /// Traverses and counts unmatched nodes of the given mode.
+        /// </summary>
+        private int CountOfMode(bool isData)
+        {
+            int count = 0;
+            for (Node p = _head; p != null; )
+            {
+                if (!p.IsMatched)
+                {
+                    if (p.IsData != isData) return 0;
+                    if (++count == int.MaxValue) break; // saturated
+                }
+                Node n = p.Next;
+                if (n != p)
+                {
+                    p = n;
+                }
+                else
+                {
+                    count = 0;
+                    p = _head;
+                }
+            }
+            return count;
+        }
+
+        /// <summary>
+        /// Matches and unsplices up to <paramref name="maxElements"/> data
+        /// nodes whose items satisfy <paramref name="criteria"/>, handing
+        /// each item to <paramref name="action"/> if it is not <c>null</c>.
+        /// </summary>
+        private int MatchData(Predicate<T> criteria, Action<T> action, int maxElements)
+        {
+            int n = 0;
+            for (Node pred = null, p = _head; p != null && n < maxElements; )
+            {
+                bool removed = false;
+                if (p.IsData)
+                {
+                    if (!p.IsMatched && criteria(p.Item) && p.TryMatchData())
+                    {
+                        removed = true;
+                        n++;
+                        Unsplice(pred, p);
+                        if (action != null) action(p.Item);
+                    }
+                }
+                else if (!p.IsMatched)
+                {
+                    break; // only requests follow
+                }
+                Node next = p.Next;
+                if (next == p)
+                {
+                    pred = null; // offlist, restart
+                    p = _head;
+                    continue;
+                }
+                if (!removed) pred = p;
+                p = next;
+            }
+            return n;
+        }
+
+        /// <summary>
+        /// Unsplices (now or later) the given cancelled or removed node
+        /// <paramref name="s"/> from the queue, given its
+        /// <paramref name="pred"/> at the time.
+        /// </summary>
+        private void Unsplice(Node pred, Node s)
+        {
+            s.ForgetContents(); // forget unneeded fields
+            /*
+             * See above for rationale. Briefly: if pred still points to
+             * s, try to unlink s. If s cannot be unlinked, because it is
+             * trailing node or pred might be unlinked, and neither pred
+             * nor s are head or offlist, add to sweepVotes, and if enough
+             * votes have accumulated, sweep.
+             */
+            if (pred == null || pred == s || pred.Next != s) return;
+            Node n = s.Next;
+            if (n != null && (n == s || !pred.CasNext(s, n) || !pred.IsMatched)) return;
+            for (;;) // check if at, or could be, head
+            {
+                Node h = _head;
+                if (h == pred || h == s || h == null) return; // at head or list empty
+                if (!h.IsMatched) break;
+                Node hn = h.Next;
+                if (hn == null) return; // now empty
+                if (hn != h && CasHead(h, hn)) h.ForgetNext(); // advance head
+            }
+            if (pred.Next == pred || s.Next == s) return; // offlist
+            for (;;) // sweep now if enough votes
+            {
+                int v = _sweepVotes;
+                if (v < SWEEP_THRESHOLD)
+                {
+                    if (CasSweepVotes(v, v + 1)) break;
+                }
+                else if (CasSweepVotes(v, 0))
+                {
+                    Sweep();
+                    break;
+                }
+            }
+        }
+
+        /// <summary>
+        /// Unlinks matched (typically cancelled) nodes encountered in a
+        /// traversal from head.
+        /// </summary>
+        private void Sweep()
+        {
+            for (Node p = _head, s, n; p != null && (s = p.Next) != null; )
+            {
+                if (!s.IsMatched) p = s; // unmatched nodes are never self-linked
+                else if ((n = s.Next) == null) break; // trailing node is pinned
+                else if (s == n) p = _head; // stale
+                else p.CasNext(s, n);
+            }
+        }
+
+#pragma warning disable 420 // a reference to a volatile field will not be treated as volatile
+        private bool CasHead(Node cmp, Node val)
+        {
+            return Interlocked.CompareExchange(ref _head, val, cmp) == cmp;
+        }
+
+        private bool CasTail(Node cmp, Node val)
+        {
+            return Interlocked.CompareExchange(ref _tail, val, cmp) == cmp;
+        }
+
+        private bool CasSweepVotes(int cmp, int val)
+        {
+            return Interlocked.CompareExchange(ref _sweepVotes, val, cmp) == cmp;
+        }
+#pragma warning restore 420
+
+        #endregion
+
+        /// <summary>
+        /// Queue nodes. A data node holds its item from construction; a
+        /// request node receives one when matched.
+        /// </summary>
+        private sealed class Node
+        {
+            private const int WAITING = 0;
+            private const int CLAIMED = 1; // request node, item being stored
+            private const int MATCHED = 2;
+            private const int CANCELLED = 3;
+
+            internal readonly bool IsData;
+            internal T Item;
+            internal volatile Node Next;
+            private volatile int _status;
+            private volatile LockSupport.Parker _waiter;
+
+            internal Node(T item, bool isData)
+            {
+                Item = item;
+                IsData = isData;
+            }
+
+            /// <summary>
+            /// The parker of the waiting thread, <c>null</c> until it is
+            /// about to park.
+            /// </summary>
+            internal LockSupport.Parker Waiter
+            {
+                get { return _waiter; }
+            }
+
+            /// <summary>
+            /// Whether this node was matched, cancelled or removed.
+            /// </summary>
+            internal bool IsMatched
+            {
+                get { return _status != WAITING; }
+            }
+
+            /// <summary>
+            /// Whether another thread completed a match with this node, so
+            /// that its <see cref="Item"/> is the one to hand back.
+            /// </summary>
+            internal bool IsMatchedByOther
+            {
+                get { return _status == MATCHED; }
+            }
+
+            /// <summary>
+            /// Returns <c>true</c> if a node with the given mode cannot be
+            /// appended to this node because this node is unmatched and has
+            /// opposite data mode.
+            /// </summary>
+            internal bool CannotPrecede(bool haveData)
+            {
+                return IsData != haveData && !IsMatched;
+            }
+
+            /// <summary>
+            /// Links node to itself to avoid garbage retention. Called only
+            /// after CASing head field, so uses a plain write.
+            /// </summary>
+            internal void ForgetNext()
+            {
+                Next = this;
+            }
+
+            /// <summary>
+            /// Drops the waiter reference once it is no longer needed.
+            /// The item is kept, see the class overview.
+            /// </summary>
+            internal void ForgetContents()
+            {
+                _waiter = null;
+            }
+
+            /// <summary>
+            /// Unparks the waiter, if any.
+            /// </summary>
+            internal void Unpark()
+            {
+                LockSupport.Parker w = _waiter;
+                if (w != null) w.Unpark();
+            }
+
+#pragma warning disable 420 // a reference to a volatile field will not be treated as volatile
+            /// <summary>
+            /// Records the parker of the waiting thread. A full fence, so
+            /// that the waiter re-reads the status only after a matcher
+            /// can see the parker.
+            /// </summary>
+            internal void SetWaiter(LockSupport.Parker parker)
+            {
+                Interlocked.Exchange(ref _waiter, parker);
+            }
+
+            internal bool CasNext(Node cmp, Node val)
+            {
+                return Interlocked.CompareExchange(ref Next, val, cmp) == cmp;
+            }
+
+            /// <summary>
+            /// Matches this unmatched node of the opposite mode: takes the
+            /// item of a data node, or gives <paramref name="e"/> to a
+            /// request node.
+            /// </summary>
+            /// <param name="e">The item to give, ignored for data nodes.</param>
+            /// <param name="item">The item taken, or <paramref name="e"/>.</param>
+            internal bool TryMatch(T e, out T item)
+            {
+                if (IsData)
+                {
+                    item = Item;
+                    return TryMatchData();
+                }
+                if (Interlocked.CompareExchange(ref _status, CLAIMED, WAITING) != WAITING)
+                {
+                    item = default(T);
+                    return false;
+                }
+                Item = e;
+                // full fence, so the unpark after this reads the waiter afresh
+                Interlocked.Exchange(ref _status, MATCHED);
+                item = e;
+                return true;
+            }
+
+            /// <summary>
+            /// Tries to match a data node, unparking its waiter if
+            /// successful.
+            /// </summary>
+            internal bool TryMatchData()
+            {
+                if (Interlocked.CompareExchange(ref _status, MATCHED, WAITING) != WAITING) return false;
+                Unpark();
+                return true;
+            }
+
+            /// <summary>
+            /// Called by the waiting thread to give up on its own node.
+            /// </summary>
+            internal bool TryCancel()
+            {
+                return Interlocked.CompareExchange(ref _status, CANCELLED, WAITING) == WAITING;
+            }
+#pragma warning restore 420
+        }
+
+        private sealed class Enumerator : AbstractEnumerator<T>
+        {
+            private readonly LinkedTransferQueue<T> _queue;
+            /// <summary>
+            /// The node holding the current element, or <c>null</c> before
+            /// the enumeration started.
+            /// </summary>
+            private Node _currentNode;
+            /// <summary>
+            /// Once an element was found present it must be returned, even
+            /// if it is removed before <see cref="FetchCurrent"/> is called.
+            /// </summary>
+            private T _currentItem;
+
+            internal Enumerator(LinkedTransferQueue<T> queue)
+            {
+                _queue = queue;
+            }
+
+            protected override T FetchCurrent()
+            {
+                return _currentItem;
+            }
+
+            protected override bool GoNext()
+            {
+                Node p = _currentNode == null ? _queue._head : _queue.Successor(_currentNode);
+                for (; p != null; p = _queue.Successor(p))
+                {
+                    if (p.IsMatched) continue;
+                    if (!p.IsData) break; // only requests follow
+                    _currentNode = p;
+                    _currentItem = p.Item;
+                    return true;
+                }
+                return false;
+            }
+
+            protected override void DoReset()
+            {
+                _currentNode = null;
+                _currentItem = default(T);
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+
+using System;
+
+namespace Spring.Threading.Collections.Generic
+{
+    /// <summary>
+    /// A bounded lock-free queue backed by an array for any number of
+    /// producer and consumer threads.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// Producers claim slots with a CAS on the tail and consumers with a
+    /// CAS on the head, so both ends scale independently of each other.
+    /// This is Dmitry Vyukov's bounded MPMC queue.
+    /// </para>
+    /// <para>
+    /// Elements are ordered FIFO. Inserting or removing an element does
+    /// not take a lock and does not allocate. The blocking operations wait
+    /// through the <see cref="IWaitStrategy"/> given at construction,
+    /// <see cref="SleepingWaitStrategy"/> by default. See
+    /// <see cref="AbstractArrayQueue{T}"/> for the algorithm and for the
+    /// operations that are not supported.
+    /// </para>
+    /// <para>
+    /// NOTE: this class is NOT present in java.util.concurrent.
+    /// </para>
+    /// </remarks>
+    /// <typeparam name="T">The type of elements held in this queue.</typeparam>
+    public class MpmcArrayQueue<T> : AbstractArrayQueue<T> //NET_ONLY
+    {
+        /// <summary>
+        /// Creates a <see cref="MpmcArrayQueue{T}"/> with the given (fixed)
+        /// <paramref name="capacity"/> that waits with a
+        /// <see cref="SleepingWaitStrategy"/>.
+        /// </summary>
+        /// <param name="capacity">The capacity of this queue.</param>
+        /// <exception cref="ArgumentOutOfRangeException">
+        /// If <paramref name="capacity"/> is less than 1.
+        /// </exception>
+        public MpmcArrayQueue(int capacity)
+            : this(capacity, new SleepingWaitStrategy())
+        {
+        }
+
+        /// <summary>
+        /// Creates a <see cref="MpmcArrayQueue{T}"/> with the given (fixed)
+        /// <paramref name="capacity"/> that waits with the given
+        /// <paramref name="waitStrategy"/>.
+        /// </summary>
+        /// <param name="capacity">The capacity of this queue.</param>
+        /// <param name="waitStrategy">
+        /// How the blocking operations wait for space or elements.
+        /// </param>
+        /// <exception cref="ArgumentOutOfRangeException">
+        /// If <paramref name="capacity"/> is less than 1.
+        /// </exception>
+        /// <exception cref="ArgumentNullException">
+        /// If <paramref name="waitStrategy"/> is <c>null</c>.
+        /// </exception>
+        public MpmcArrayQueue(int capacity, IWaitStrategy waitStrategy)
+            : base(capacity, waitStrategy, true, true)
+        {
+        }
+    }
+}
@@ -0,0 +1,147 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+
+using System.Threading;
+
+namespace Spring.Threading.Collections.Generic
+{
+    /// <summary>
+    /// A <see cref="Sequencer"/> for any number of producer threads.
+    /// Producers claim sequences with a CAS on the cursor, which is
+    /// therefore the highest claimed sequence. Since producers may
+    /// publish out of order, each slot records the lap in which it was
+    /// last published.
+    /// </summary>
+    /// <remarks>
+    /// NOTE: this class is NOT present in java.util.concurrent.
+    /// </remarks>
+    internal sealed class MultiProducerSequencer : Sequencer //NET_ONLY
+    {
+        private readonly Sequence _gatingSequenceCache = new Sequence();
+        /// <summary>
+        /// The lap, sequence divided by buffer size, in which each slot was
+        /// last published.
+        /// </summary>
+        private readonly int[] _availableBuffer;
+        private readonly int _indexMask;
+        private readonly int _indexShift;
+
+        internal MultiProducerSequencer(int bufferSize, IWaitStrategy waitStrategy)
+            : base(bufferSize, waitStrategy)
+        {
+            _availableBuffer = new int[bufferSize];
+            for (int i = 0; i < bufferSize; i++) _availableBuffer[i] = -1;
+            _indexMask = bufferSize - 1;
+            while ((1 << _indexShift) < bufferSize) _indexShift++;
+        }
+
+        internal override long Next(int n)
+        {
+            for (int i = 0; ; )
+            {
+                long current = Cursor.Value;
+                long next = current + n;
+                long wrapPoint = next - BufferSize;
+                long cachedGatingValue = _gatingSequenceCache.Value;
+                if (wrapPoint > cachedGatingValue || cachedGatingValue > current)
+                {
+                    long minimum = Sequence.Minimum(GatingSequences, current);
+                    if (wrapPoint > minimum)
+                    {
+                        Backoff(i++);
+                        continue;
+                    }
+                    _gatingSequenceCache.Value = minimum;
+                }
+                else if (Cursor.CompareAndSet(current, next))
+                {
+                    return next;
+                }
+            }
+        }
+
+        internal override bool TryNext(int n, out long sequence)
+        {
+            for (;;)
+            {
+                long current = Cursor.Value;
+                long next = current + n;
+                if (!HasAvailableCapacity(n, current))
+                {
+                    sequence = Sequence.InitialValue;
+                    return false;
+                }
+                if (Cursor.CompareAndSet(current, next))
+                {
+                    sequence = next;
+                    return true;
+                }
+            }
+        }
+
+        internal override void Publish(long lo, long hi)
+        {
+            for (long sequence = lo; sequence <= hi; sequence++)
+            {
+                Thread.VolatileWrite(ref _availableBuffer[(int) sequence & _indexMask],
+                                     (int) (sequence >> _indexShift));
+            }
+            WaitStrategy.SignalAll();
+        }
+
+        internal override bool IsAvailable(long sequence)
+        {
+            return Thread.VolatileRead(ref _availableBuffer[(int) sequence & _indexMask])
+                   == (int) (sequence >> _indexShift);
+        }
+
+        internal override long GetHighestPublishedSequence(long lowerBound, long availableSequence)
+        {
+            for (long sequence = lowerBound; sequence <= availableSequence; sequence++)
+            {
+                if (!IsAvailable(sequence)) return sequence - 1;
+            }
+            return availableSequence;
+        }
+
+        internal override long RemainingCapacity
+        {
+            get
+            {
+                long produced = Cursor.Value;
+                return BufferSize - (produced - Sequence.Minimum(GatingSequences, produced));
+            }
+        }
+
+        private bool HasAvailableCapacity(int n, long cursorValue)
+        {
+            long wrapPoint = cursorValue + n - BufferSize;
+            long cachedGatingValue = _gatingSequenceCache.Value;
+            if (wrapPoint > cachedGatingValue || cachedGatingValue > cursorValue)
+            {
+                long minimum = Sequence.Minimum(GatingSequences, cursorValue);
+                _gatingSequenceCache.Value = minimum;
+                if (wrapPoint > minimum) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,319 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+
+using System;
+
+namespace Spring.Threading.Collections.Generic
+{
+    /// <summary>
+    /// A pre-allocated ring of events in the style of the LMAX Disruptor.
+    /// Producers claim sequences, fill in the events at those sequences
+    /// and publish them; consumers follow the producers, and each other,
+    /// through <see cref="SequenceBarrier"/>s and process the events in
+    /// batches. Neither side takes a lock or allocates per event.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// A producer uses the buffer as follows:
+    /// <code language="c#">
+    /// long sequence = ringBuffer.Next();
+    /// try
+    /// {
+    ///     ringBuffer[sequence].Price = price;
+    /// }
+    /// finally
+    /// {
+    ///     ringBuffer.Publish(sequence);
+    /// }
+    /// </code>
+    /// Every claimed sequence must be published, or consumers stall at it.
+    /// Events are usually mutable reference types created once by the
+    /// event factory; the indexer setter also allows value type events.
+    /// </para>
+    /// <para>
+    /// Consumers are usually <see cref="BatchEventProcessor{T}"/>s. A
+    /// barrier from <see cref="NewBarrier"/> without arguments follows the
+    /// producers; one made from the <see cref="BatchEventProcessor{T}.Sequence"/>s
+    /// of other processors follows those processors. This builds any
+    /// topology: several processors on the producers form a multicast,
+    /// and a processor following two others that both follow the
+    /// producers forms a diamond. The sequences of the last processors
+    /// must be added with <see cref="AddGatingSequences"/>, so that the
+    /// producers never overwrite events that are still to be processed.
+    /// </para>
+    /// <para>
+    /// Consumers wait for producers through the <see cref="IWaitStrategy"/>
+    /// of the buffer, and spin for other consumers. Producers spin and
+    /// yield when the buffer is full.
+    /// </para>
+    /// <para>
+    /// NOTE: this class is NOT present in java.util.concurrent.
+    /// </para>
+    /// </remarks>
+    /// <typeparam name="T">The type of the events.</typeparam>
+    public class RingBuffer<T> //NET_ONLY
+    {
+        private readonly T[] _entries;
+        private readonly int _indexMask;
+        private readonly Sequencer _sequencer;
+
+        /// <summary>
+        /// Creates a ring buffer for any number of producer threads, whose
+        /// consumers wait with a <see cref="BlockingWaitStrategy"/>.
+        /// </summary>
+        /// <param name="eventFactory">
+        /// Creates the event for each slot of the buffer.
+        /// </param>
+        /// <param name="bufferSize">
+        /// The number of events in the buffer, must be a power of two.
+        /// </param>
+        /// <exception cref="ArgumentNullException">
+        /// If <paramref name="eventFactory"/> is <c>null</c>.
+        /// </exception>
+        /// <exception cref="ArgumentOutOfRangeException">
+        /// If <paramref name="bufferSize"/> is not a positive power of two.
+        /// </exception>
+        public RingBuffer(Func<T> eventFactory, int bufferSize)
+            : this(eventFactory, bufferSize, new BlockingWaitStrategy(), true)
+        {
+        }
+
+        /// <summary>
+        /// Creates a ring buffer.
+        /// </summary>
+        /// <param name="eventFactory">
+        /// Creates the event for each slot of the buffer.
+        /// </param>
+        /// <param name="bufferSize">
+        /// The number of events in the buffer, must be a power of two.
+        /// </param>
+        /// <param name="waitStrategy">
+        /// How consumers wait for the producers.
+        /// </param>
+        /// <param name="isMultiProducer">
+        /// <c>false</c> if only one thread at a time will ever claim and
+        /// publish, which makes claims cheaper.
+        /// </param>
+        /// <exception cref="ArgumentNullException">
+        /// If <paramref name="eventFactory"/> or <paramref name="waitStrategy"/>
+        /// is <c>null</c>.
+        /// </exception>
+        /// <exception cref="ArgumentOutOfRangeException">
+        /// If <paramref name="bufferSize"/> is not a positive power of two.
+        /// </exception>
+        public RingBuffer(Func<T> eventFactory, int bufferSize, IWaitStrategy waitStrategy, bool isMultiProducer)
+        {
+            if (eventFactory == null) throw new ArgumentNullException("eventFactory");
+            if (bufferSize < 1 || (bufferSize & (bufferSize - 1)) != 0)
+                throw new ArgumentOutOfRangeException("bufferSize", bufferSize, "Must be a power of two");
+            if (waitStrategy == null) throw new ArgumentNullException("waitStrategy");
+            _entries = new T[bufferSize];
+            for (int i = 0; i < bufferSize; i++) _entries[i] = eventFactory();
+            _indexMask = bufferSize - 1;
+            _sequencer = isMultiProducer
+                ? (Sequencer) new MultiProducerSequencer(bufferSize, waitStrategy)
+                : new SingleProducerSequencer(bufferSize, waitStrategy);
+        }
+
+        /// <summary>
+        /// The number of events in the buffer.
+        /// </summary>
+        public int BufferSize
+        {
+            get { return _sequencer.BufferSize; }
+        }
+
+        /// <summary>
+        /// The highest sequence claimed by the producers, which has been
+        /// published unless producers are concurrently publishing.
+        /// </summary>
+        public long Cursor
+        {
+            get { return _sequencer.Cursor.Value; }
+        }
+
+        /// <summary>
+        /// The number of sequences that can be claimed before the producers
+        /// have to wait for the slowest gating consumer.
+        /// </summary>
+        public long RemainingCapacity
+        {
+            get { return _sequencer.RemainingCapacity; }
+        }
+
+        /// <summary>
+        /// Gets or sets the event at the given <paramref name="sequence"/>.
+        /// A producer may only set events at sequences it has claimed and not
+        /// yet published.
+        /// </summary>
+        /// <param name="sequence">The sequence of the event.</param>
+        public T this[long sequence]
+        {
+            get { return _entries[(int) sequence & _indexMask]; }
+            set { _entries[(int) sequence & _indexMask] = value; }
+        }
+
+        /// <summary>
+        /// Claims the next sequence, waiting for a slot if the buffer is
+        /// full.
+        /// </summary>
+        /// <returns>The claimed sequence.</returns>
+        public long Next()
+        {
+            return _sequencer.Next(1);
+        }
+
+        /// <summary>
+        /// Claims the next <paramref name="n"/> sequences at once, waiting for
+        /// slots if necessary, for publishing events in a batch.
+        /// </summary>
+        /// <param name="n">The number of sequences to claim.</param>
+        /// <returns>
+        /// The highest claimed sequence. The lowest one is the returned
+        /// value minus <paramref name="n"/> plus one.
+        /// </returns>
+        /// <exception cref="ArgumentOutOfRangeException">
+        /// If <paramref name="n"/> is less than one or greater than
+        /// <see cref="BufferSize"/>.
+        /// </exception>
+        public long Next(int n)
+        {
+            CheckBatchSize(n);
+            return _sequencer.Next(n);
+        }
+
+        /// <summary>
+        /// Claims the next sequence if the buffer is not full.
+        /// </summary>
+        /// <param name="sequence">Set to the claimed sequence.</param>
+        /// <returns><c>false</c> if the buffer is full.</returns>
+        public bool TryNext(out long sequence)
+        {
+            return _sequencer.TryNext(1, out sequence);
+        }
+
+        /// <summary>
+        /// Claims the next <paramref name="n"/> sequences at once if the
+        /// buffer has slots for all of them.
+        /// </summary>
+        /// <param name="n">The number of sequences to claim.</param>
+        /// <param name="sequence">Set to the highest claimed sequence.</param>
+        /// <returns><c>false</c> if the buffer does not have the slots.</returns>
+        /// <exception cref="ArgumentOutOfRangeException">
+        /// If <paramref name="n"/> is less than one or greater than
+        /// <see cref="BufferSize"/>.
+        /// </exception>
+        public bool TryNext(int n, out long sequence)
+        {
+            CheckBatchSize(n);
+            return _sequencer.TryNext(n, out sequence);
+        }
+
+        /// <summary>
+        /// Publishes the event at the given claimed <paramref name="sequence"/>.
+        /// </summary>
+        /// <param name="sequence">The sequence to publish.</param>
+        public void Publish(long sequence)
+        {
+            _sequencer.Publish(sequence, sequence);
+        }
+
+        /// <summary>
+        /// Publishes the events at the claimed sequences from
+        /// <paramref name="lo"/> to <paramref name="hi"/>, both inclusive.
+        /// </summary>
+        /// <param name="lo">The lowest sequence to publish.</param>
+        /// <param name="hi">The highest sequence to publish.</param>
+        public void Publish(long lo, long hi)
+        {
+            _sequencer.Publish(lo, hi);
+        }
+
+        /// <summary>
+        /// Returns <c>true</c> if the event at <paramref name="sequence"/>
+        /// is published and not yet overwritten.
+        /// </summary>
+        /// <param name="sequence">The sequence to check.</param>
+        public bool IsPublished(long sequence)
+        {
+            return _sequencer.IsAvailable(sequence);
+        }
+
+        /// <summary>
+        /// Adds the sequences of consumers that the producers must not
+        /// overtake. Each sequence is moved to the <see cref="Cursor"/>, so
+        /// that its consumer starts with the next event published.
+        /// </summary>
+        /// <param name="gatingSequences">The sequences to add.</param>
+        /// <exception cref="ArgumentNullException">
+        /// If <paramref name="gatingSequences"/> or any of its elements is
+        /// <c>null</c>.
+        /// </exception>
+        public void AddGatingSequences(params Sequence[] gatingSequences)
+        {
+            _sequencer.AddGatingSequences(CheckSequences(gatingSequences, "gatingSequences"));
+        }
+
+        /// <summary>
+        /// Removes a sequence added by <see cref="AddGatingSequences"/>.
+        /// </summary>
+        /// <param name="sequence">The sequence to remove.</param>
+        /// <returns><c>true</c> if the sequence was found and removed.</returns>
+        public bool RemoveGatingSequence(Sequence sequence)
+        {
+            return _sequencer.RemoveGatingSequence(sequence);
+        }
+
+        /// <summary>
+        /// Creates a barrier that follows the given sequences of other
+        /// consumers, or the producers if none are given.
+        /// </summary>
+        /// <param name="sequencesToTrack">
+        /// The sequences of the consumers that must have processed an event
+        /// before it is available through the barrier.
+        /// </param>
+        /// <returns>A new barrier.</returns>
+        /// <exception cref="ArgumentNullException">
+        /// If <paramref name="sequencesToTrack"/> or any of its elements is
+        /// <c>null</c>.
+        /// </exception>
+        public SequenceBarrier NewBarrier(params Sequence[] sequencesToTrack)
+        {
+            return new SequenceBarrier(_sequencer, CheckSequences(sequencesToTrack, "sequencesToTrack"));
+        }
+
+        private void CheckBatchSize(int n)
+        {
+            if (n < 1 || n > BufferSize) throw new ArgumentOutOfRangeException(
+                "n", n, "Must be between 1 and the buffer size");
+        }
+
+        private static Sequence[] CheckSequences(Sequence[] sequences, string name)
+        {
+            if (sequences == null) throw new ArgumentNullException(name);
+            foreach (Sequence sequence in sequences)
+            {
+                if (sequence == null) throw new ArgumentNullException(name);
+            }
+            return (Sequence[]) sequences.Clone();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+
+using System;
+using System.Runtime.InteropServices;
+using System.Threading;
+
+namespace Spring.Threading.Collections.Generic
+{
+    /// <summary>
+    /// A 64 bit position counter, with the raw accesses and CAS of
+    /// <see cref="Spring.Threading.AtomicTypes.AtomicLong"/>, that sits
+    /// in the middle of a 128 byte object. Counters of producers and
+    /// consumers are written by different threads at very high rates, and
+    /// padding them keeps two counters from ever sharing a cache line,
+    /// even with adjacent sector prefetch.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// Sequences track positions in an <see cref="AbstractArrayQueue{T}"/>
+    /// or a <see cref="RingBuffer{T}"/>, where consumers publish their
+    /// progress through a sequence that producers and downstream consumers
+    /// read.
+    /// </para>
+    /// <para>
+    /// NOTE: this class is NOT present in java.util.concurrent.
+    /// </para>
+    /// </remarks>
+    [StructLayout(LayoutKind.Explicit, Size = 128)]
+    public sealed class Sequence //NET_ONLY
+    {
+        /// <summary>
+        /// The value of a sequence before anything was claimed or
+        /// processed.
+        /// </summary>
+        public const long InitialValue = -1L;
+
+        private static readonly bool _isNativeLongAccess = IntPtr.Size == 8;
+
+        [FieldOffset(64)]
+        private long _value;
+
+        /// <summary>
+        /// Creates a sequence with value <see cref="InitialValue"/>.
+        /// </summary>
+        public Sequence() : this(InitialValue)
+        {
+        }
+
+        /// <summary>
+        /// Creates a sequence with the given initial value.
+        /// </summary>
+        /// <param name="initialValue">The initial value.</param>
+        public Sequence(long initialValue)
+        {
+            _value = initialValue;
+        }
+
+        /// <summary>
+        /// Gets and sets the current value with volatile semantics.
+        /// </summary>
+        public long Value
+        {
+            get { return Read(ref _value); }
+            set { Write(ref _value, value); }
+        }
+
+        /// <summary>
+        /// Atomically sets the value to <paramref name="update"/> if the
+        /// current value equals <paramref name="expect"/>.
+        /// </summary>
+        /// <param name="expect">The expected value.</param>
+        /// <param name="update">The new value.</param>
+        /// <returns>
+        /// <c>true</c> if successful. <c>false</c> indicates that the
+        /// actual value was not equal to the expected value.
+        /// </returns>
+        public bool CompareAndSet(long expect, long update)
+        {
+            return Interlocked.CompareExchange(ref _value, update, expect) == expect;
+        }
+
+        /// <summary>
+        /// Atomically adds <paramref name="delta"/> to the current value.
+        /// </summary>
+        /// <param name="delta">The value to add.</param>
+        /// <returns>The updated value.</returns>
+        public long AddAndGet(long delta)
+        {
+            return Interlocked.Add(ref _value, delta);
+        }
+
+        /// <summary>
+        /// Returns the string representation of the current value.
+        /// </summary>
+        /// <returns>The string representation of the current value.</returns>
+        public override string ToString()
+        {
+            return Value.ToString();
+        }
+
+        /// <summary>
+        /// Returns the smallest value of <paramref name="sequences"/>, or
+        /// <paramref name="minimum"/> if it is smaller than all of them.
+        /// </summary>
+        internal static long Minimum(Sequence[] sequences, long minimum)
+        {
+            for (int i = 0; i < sequences.Length; i++)
+            {
+                long value = sequences[i].Value;
+                if (value < minimum) minimum = value;
+            }
+            return minimum;
+        }
+
+        /// <summary>
+        /// Volatile read of a 64 bit location, atomic on 32 bit platforms.
+        /// </summary>
+        internal static long Read(ref long location)
+        {
+            return _isNativeLongAccess ? Thread.VolatileRead(ref location) : Interlocked.Read(ref location);
+        }
+
+        /// <summary>
+        /// Volatile write of a 64 bit location, atomic on 32 bit platforms.
+        /// </summary>
+        internal static void Write(ref long location, long value)
+        {
+            if (_isNativeLongAccess) Thread.VolatileWrite(ref location, value);
+            else Interlocked.Exchange(ref location, value);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+
+using System;
+
+namespace Spring.Threading.Collections.Generic
+{
+    /// <summary>
+    /// Tells a consumer of a <see cref="RingBuffer{T}"/> up to which
+    /// sequence events are available to it: published by the producers
+    /// and, if the barrier tracks other consumers, processed by all of
+    /// them. Created by <see cref="RingBuffer{T}.NewBarrier"/>.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// A barrier waits for the producers through the
+    /// <see cref="IWaitStrategy"/> of the ring buffer and then spins for
+    /// the tracked consumers, which are expected to be close behind the
+    /// producers. Several consumer threads may wait on the same barrier,
+    /// but an alert ends the waits of all of them, so consumers sharing a
+    /// barrier are halted together.
+    /// </para>
+    /// <para>
+    /// NOTE: this class is NOT present in java.util.concurrent.
+    /// </para>
+    /// </remarks>
+    public sealed class SequenceBarrier //NET_ONLY
+    {
+        private readonly Sequencer _sequencer;
+        private readonly Sequence[] _dependentSequences;
+        private volatile bool _isAlerted;
+
+        internal SequenceBarrier(Sequencer sequencer, Sequence[] dependentSequences)
+        {
+            _sequencer = sequencer;
+            _dependentSequences = dependentSequences;
+        }
+
+        /// <summary>
+        /// The highest sequence the tracked consumers have all processed,
+        /// or the cursor of the ring buffer if the barrier tracks the
+        /// producers.
+        /// </summary>
+        public long Cursor
+        {
+            get
+            {
+                return _dependentSequences.Length == 0
+                    ? _sequencer.Cursor.Value
+                    : Sequence.Minimum(_dependentSequences, long.MaxValue);
+            }
+        }
+
+        /// <summary>
+        /// Whether the barrier was alerted and not cleared since.
+        /// </summary>
+        public bool IsAlerted
+        {
+            get { return _isAlerted; }
+        }
+
+        /// <summary>
+        /// Alerts the barrier, ending the current and all further waits
+        /// until <see cref="ClearAlert"/> is called. Used to halt the
+        /// consumer waiting on the barrier.
+        /// </summary>
+        public void Alert()
+        {
+            _isAlerted = true;
+            _sequencer.WaitStrategy.SignalAll();
+        }
+
+        /// <summary>
+        /// Clears the alert, so that waits are possible again.
+        /// </summary>
+        public void ClearAlert()
+        {
+            _isAlerted = false;
+        }
+
+        /// <summary>
+        /// Waits until <paramref name="sequence"/> is available, and returns
+        /// the highest available sequence, which may be well past it.
+        /// </summary>
+        /// <remarks>
+        /// With multiple producers the returned sequence can be lower than
+        /// <paramref name="sequence"/> while a producer that claimed it
+        /// has not published it yet. The caller should simply wait again.
+        /// </remarks>
+        /// <param name="sequence">The sequence to wait for.</param>
+        /// <param name="availableSequence">
+        /// Set to the highest sequence available to the consumer.
+        /// </param>
+        /// <returns><c>false</c> if the barrier is alerted.</returns>
+        /// <exception cref="System.Threading.ThreadInterruptedException">
+        /// If interrupted while waiting.
+        /// </exception>
+        public bool WaitFor(long sequence, out long availableSequence)
+        {
+            availableSequence = Sequence.InitialValue;
+            if (_isAlerted) return false;
+            if (_sequencer.Cursor.Value < sequence)
+            {
+                // the target is captured per call, the barrier may be shared
+                _sequencer.WaitStrategy.Await(() => _isAlerted || _sequencer.Cursor.Value >= sequence);
+                if (_isAlerted) return false;
+            }
+            long available;
+            for (int i = 0; (available = Cursor) < sequence; i++)
+            {
+                if (_isAlerted) return false;
+                Sequencer.Backoff(i);
+            }
+            availableSequence = _sequencer.GetHighestPublishedSequence(sequence, available);
+            return true;
+        }
+    }
+}
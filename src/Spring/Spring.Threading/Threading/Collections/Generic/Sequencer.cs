@@ -0,0 +1,148 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+
+using System;
+using System.Threading;
+
+namespace Spring.Threading.Collections.Generic
+{
+    /// <summary>
+    /// Coordinates the claiming of sequences in a <see cref="RingBuffer{T}"/>
+    /// by its producers. A producer claims sequences, writes the events
+    /// at those sequences and then publishes them. A claim may not run
+    /// more than a buffer size ahead of the slowest gating sequence, that
+    /// is of the last consumers of the topology.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// Producers waiting for capacity spin and yield rather than going
+    /// through the <see cref="IWaitStrategy"/>, because consumers do not
+    /// signal their progress.
+    /// </para>
+    /// <para>
+    /// NOTE: this class is NOT present in java.util.concurrent.
+    /// </para>
+    /// </remarks>
+    internal abstract class Sequencer //NET_ONLY
+    {
+        private static readonly int _spins = Environment.ProcessorCount > 1 ? 1 << 7 : 0;
+
+        internal readonly int BufferSize;
+        internal readonly IWaitStrategy WaitStrategy;
+
+        /// <summary>
+        /// The highest claimed sequence for multiple producers, the highest
+        /// published sequence for a single producer.
+        /// </summary>
+        internal readonly Sequence Cursor = new Sequence();
+
+        private volatile Sequence[] _gatingSequences = new Sequence[0];
+
+        protected Sequencer(int bufferSize, IWaitStrategy waitStrategy)
+        {
+            BufferSize = bufferSize;
+            WaitStrategy = waitStrategy;
+        }
+
+        internal Sequence[] GatingSequences
+        {
+            get { return _gatingSequences; }
+        }
+
+        /// <summary>
+        /// Adds sequences that claims must not wrap past. Each sequence is
+        /// first moved to the cursor, so that a consumer added late does
+        /// not hold producers back for events it will never see.
+        /// </summary>
+        internal void AddGatingSequences(Sequence[] sequences)
+        {
+            for (;;)
+            {
+                Sequence[] current = _gatingSequences;
+                Sequence[] update = new Sequence[current.Length + sequences.Length];
+                Array.Copy(current, update, current.Length);
+                long cursor = Cursor.Value;
+                for (int i = 0; i < sequences.Length; i++)
+                {
+                    sequences[i].Value = cursor;
+                    update[current.Length + i] = sequences[i];
+                }
+#pragma warning disable 420 // a reference to a volatile field will not be treated as volatile
+                if (Interlocked.CompareExchange(ref _gatingSequences, update, current) == current) break;
+#pragma warning restore 420
+            }
+        }
+
+        internal bool RemoveGatingSequence(Sequence sequence)
+        {
+            for (;;)
+            {
+                Sequence[] current = _gatingSequences;
+                int index = Array.IndexOf(current, sequence);
+                if (index < 0) return false;
+                Sequence[] update = new Sequence[current.Length - 1];
+                Array.Copy(current, 0, update, 0, index);
+                Array.Copy(current, index + 1, update, index, update.Length - index);
+#pragma warning disable 420 // a reference to a volatile field will not be treated as volatile
+                if (Interlocked.CompareExchange(ref _gatingSequences, update, current) == current) return true;
+#pragma warning restore 420
+            }
+        }
+
+        /// <summary>
+        /// Claims the next <paramref name="n"/> sequences, waiting for
+        /// capacity if necessary, and returns the highest of them.
+        /// </summary>
+        internal abstract long Next(int n);
+
+        /// <summary>
+        /// Claims the next <paramref name="n"/> sequences if there is
+        /// capacity for them right now.
+        /// </summary>
+        internal abstract bool TryNext(int n, out long sequence);
+
+        /// <summary>
+        /// Makes the claimed sequences from <paramref name="lo"/> to
+        /// <paramref name="hi"/> visible to the consumers.
+        /// </summary>
+        internal abstract void Publish(long lo, long hi);
+
+        internal abstract bool IsAvailable(long sequence);
+
+        /// <summary>
+        /// Returns the highest sequence up to which all sequences from
+        /// <paramref name="lowerBound"/> are published, which is
+        /// <paramref name="lowerBound"/> - 1 if that one is not.
+        /// </summary>
+        internal abstract long GetHighestPublishedSequence(long lowerBound, long availableSequence);
+
+        internal abstract long RemainingCapacity { get; }
+
+        /// <summary>
+        /// Idles a thread that polls for progress of other threads.
+        /// </summary>
+        internal static void Backoff(int iteration)
+        {
+            if (iteration < _spins) Thread.SpinWait(1);
+            else Thread.Sleep(0);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+
+using System.Threading;
+
+namespace Spring.Threading.Collections.Generic
+{
+    /// <summary>
+    /// A <see cref="Sequencer"/> for a single producer thread. Claims are
+    /// plain writes, and the cursor is the highest published sequence.
+    /// </summary>
+    /// <remarks>
+    /// NOTE: this class is NOT present in java.util.concurrent.
+    /// </remarks>
+    internal sealed class SingleProducerSequencer : Sequencer //NET_ONLY
+    {
+        // only ever touched by the producer thread
+        private long _nextValue = Sequence.InitialValue;
+        private long _cachedGatingValue = Sequence.InitialValue;
+
+        internal SingleProducerSequencer(int bufferSize, IWaitStrategy waitStrategy)
+            : base(bufferSize, waitStrategy)
+        {
+        }
+
+        internal override long Next(int n)
+        {
+            long nextValue = _nextValue;
+            long nextSequence = nextValue + n;
+            long wrapPoint = nextSequence - BufferSize;
+            long cachedGatingValue = _cachedGatingValue;
+            if (wrapPoint > cachedGatingValue || cachedGatingValue > nextValue)
+            {
+                long minimum;
+                for (int i = 0; wrapPoint > (minimum = GatingMinimum(nextValue)); i++) Backoff(i);
+                _cachedGatingValue = minimum;
+            }
+            _nextValue = nextSequence;
+            return nextSequence;
+        }
+
+        internal override bool TryNext(int n, out long sequence)
+        {
+            long nextValue = _nextValue;
+            long wrapPoint = nextValue + n - BufferSize;
+            long cachedGatingValue = _cachedGatingValue;
+            if (wrapPoint > cachedGatingValue || cachedGatingValue > nextValue)
+            {
+                long minimum = GatingMinimum(nextValue);
+                _cachedGatingValue = minimum;
+                if (wrapPoint > minimum)
+                {
+                    sequence = Sequence.InitialValue;
+                    return false;
+                }
+            }
+            sequence = _nextValue = nextValue + n;
+            return true;
+        }
+
+        internal override void Publish(long lo, long hi)
+        {
+            Cursor.Value = hi;
+            WaitStrategy.SignalAll();
+        }
+
+        internal override bool IsAvailable(long sequence)
+        {
+            long cursor = Cursor.Value;
+            return sequence <= cursor && sequence > cursor - BufferSize;
+        }
+
+        internal override long GetHighestPublishedSequence(long lowerBound, long availableSequence)
+        {
+            return availableSequence;
+        }
+
+        internal override long RemainingCapacity
+        {
+            get
+            {
+                long produced = _nextValue;
+                return BufferSize - (produced - Sequence.Minimum(GatingSequences, produced));
+            }
+        }
+
+        private long GatingMinimum(long nextValue)
+        {
+            // make the last publish visible before reading the consumers,
+            // which may be waiting for it while we wait for them
+            Thread.MemoryBarrier();
+            return Sequence.Minimum(GatingSequences, nextValue);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+
+using System;
+using System.Threading;
+using Spring.Utility;
+
+namespace Spring.Threading.Collections.Generic
+{
+    /// <summary>
+    /// An <see cref="IWaitStrategy"/> that spins, then yields, and then
+    /// sleeps for a millisecond at a time until the condition holds. A
+    /// long wait costs almost no processor time while the producers and
+    /// consumers never pay for signalling each other, which makes it a
+    /// good default for background pipelines.
+    /// </summary>
+    /// <remarks>
+    /// NOTE: this class is NOT present in java.util.concurrent.
+    /// </remarks>
+    [Serializable]
+    public class SleepingWaitStrategy : IWaitStrategy //NET_ONLY
+    {
+        private static readonly int _spins = Environment.ProcessorCount > 1 ? 1 << 7 : 0;
+        private const int _yields = 1 << 7;
+
+        /// <summary>
+        /// Waits until <paramref name="condition"/> returns <c>true</c>.
+        /// </summary>
+        /// <param name="condition">The state change to wait for.</param>
+        /// <exception cref="ThreadInterruptedException">
+        /// If interrupted while waiting.
+        /// </exception>
+        public virtual void Await(Func<bool> condition)
+        {
+            for (int i = 0; !condition(); i++) Idle(i);
+        }
+
+        /// <summary>
+        /// Waits until <paramref name="condition"/> returns <c>true</c> or
+        /// <paramref name="duration"/> elapses.
+        /// </summary>
+        /// <param name="condition">The state change to wait for.</param>
+        /// <param name="duration">How long to wait before giving up.</param>
+        /// <returns>
+        /// The last value returned by <paramref name="condition"/>.
+        /// </returns>
+        /// <exception cref="ThreadInterruptedException">
+        /// If interrupted while waiting.
+        /// </exception>
+        public virtual bool Await(Func<bool> condition, TimeSpan duration)
+        {
+            DateTime deadline = WaitTime.Deadline(duration);
+            for (int i = 0; !condition(); i++)
+            {
+                if (i >= _spins && DateTime.UtcNow >= deadline) return false;
+                Idle(i);
+            }
+            return true;
+        }
+
+        /// <summary>
+        /// Does nothing, as waiting threads poll the condition.
+        /// </summary>
+        public virtual void SignalAll()
+        {
+        }
+
+        private static void Idle(int iteration)
+        {
+            if (iteration < _spins) Thread.SpinWait(1);
+            else Thread.Sleep(iteration < _spins + _yields ? 0 : 1);
+        }
+    }
+}
@@ -20,6 +20,8 @@
 
 using System;
 using System.Threading;
+using Spring.Threading.Future;
+using Spring.Threading.Locks;
 
 namespace Spring.Threading
 {
@@ -62,6 +64,21 @@ namespace Spring.Threading
     /// successful return from a corresponding <see cref="Await()"/> in another 
     /// thread.
     /// </para>
+    /// <para>
+    /// The count is the state of an <see cref="AbstractQueuedSynchronizer"/>.
+    /// <see cref="CountDown"/> decrements it with a CAS and never takes a
+    /// lock, and once the count is zero <see cref="Await()"/> returns after
+    /// a single volatile read. Waiting threads queue on the synchronizer,
+    /// and releasing them is a chain: each woken thread wakes the next.
+    /// So neither side contends on a monitor, and a released latch is
+    /// cheap to use as a gate that is checked very often.
+    /// </para>
+    /// <para>
+    /// Instead of blocking a thread in <see cref="Await()"/>, a caller can
+    /// register a callback with <see cref="OnRelease(IExecutor, Action)"/>.
+    /// It waits as a queued node and runs on the given
+    /// <see cref="IExecutor"/> when the count reaches zero.
+    /// </para>
     /// <example>
     /// <b>Sample usage:</b> 
     /// <br/>
@@ -159,7 +176,49 @@ namespace Spring.Threading
     /// <author>Kenneth Xu</author>
     public class CountDownLatch //BACKPORT_3_1
     {
-        private int _count;
+        private readonly Sync _sync;
+
+        /// <summary>
+        /// Callbacks registered by <see cref="OnRelease{T}"/>, created on
+        /// first use.
+        /// </summary>
+        private volatile AsyncWaitQueue _asyncWaiters;
+
+        /// <summary>
+        /// Synchronization control For <see cref="CountDownLatch"/>. Uses
+        /// AQS state to represent count.
+        /// </summary>
+        private sealed class Sync : AbstractQueuedSynchronizer
+        {
+            internal Sync(int count)
+            {
+                State = count;
+            }
+
+            internal int Count
+            {
+                get { return State; }
+            }
+
+            protected override int TryAcquireShared(int acquires)
+            {
+                return (State == 0) ? 1 : -1;
+            }
+
+            protected override bool TryReleaseShared(int releases)
+            {
+                // Decrement count; signal when transition to zero
+                for (;;)
+                {
+                    int c = State;
+                    if (c == 0)
+                        return false;
+                    int nextc = c - 1;
+                    if (CompareAndSetState(c, nextc))
+                        return nextc == 0;
+                }
+            }
+        }
 
         /// <summary> 
         /// Returns the current count.
@@ -170,7 +229,7 @@ namespace Spring.Threading
         /// <returns>the current count.</returns>
         public long Count
         {
-            get { return _count; }
+            get { return _sync.Count; }
 
         }
         /// <summary> 
@@ -188,7 +247,7 @@ namespace Spring.Threading
             if (count < 0)
                 throw new ArgumentOutOfRangeException(
                     "count", count, "Count must be greater than 0.");
-            _count = count;
+            _sync = new Sync(count);
         }
 
         /// <summary> 
@@ -215,11 +274,8 @@ namespace Spring.Threading
         /// </exception>
         public void Await()
         {
-            lock (this)
-            {
-                while (_count > 0)
-                    Monitor.Wait(this);
-            }
+            if (_sync.Count == 0) return;
+            _sync.AcquireSharedInterruptibly(1);
         }
 
         /// <summary> 
@@ -259,29 +315,7 @@ namespace Spring.Threading
         /// </exception>
         public bool Await(TimeSpan duration)
         {
-            DateTime deadline = DateTime.UtcNow.Add(duration);
-            lock (this)
-            {
-                if (_count <= 0)
-                    return true;
-                else if (duration.Ticks <= 0)
-                    return false;
-                else
-                {
-                    for (;; )
-                    {
-                        Monitor.Wait(this, duration);
-                        if (_count <= 0)
-                            return true;
-                        else
-                        {
-                            duration = deadline.Subtract(DateTime.UtcNow);
-                            if (duration.Ticks <= 0)
-                                return false;
-                        }
-                    }
-                }
-            }
+            return _sync.Count == 0 || _sync.TryAcquireShared(1, duration);
         }
 
         /// <summary> 
@@ -300,13 +334,57 @@ namespace Spring.Threading
         /// </remarks>
         public void CountDown()
         {
-            lock (this)
-            {
-                if (_count == 0)
-                    return;
-                if (--_count == 0)
-                    Monitor.PulseAll(this);
-            }
+            if (!_sync.ReleaseShared(1)) return;
+            AsyncWaitQueue q = _asyncWaiters;
+            if (q != null && q.HasWaiters) q.Dispatch();
+        }
+
+        /// <summary>
+        /// Runs <paramref name="callback"/> on <paramref name="executor"/>
+        /// once the latch has counted down to zero, without blocking the
+        /// calling thread.
+        /// </summary>
+        /// <param name="executor">The executor to run the callback.</param>
+        /// <param name="callback">The action to run.</param>
+        /// <returns>
+        /// An <see cref="IFuture{T}"/> that completes with the callback.
+        /// </returns>
+        /// <seealso cref="OnRelease{T}"/>
+        public IFuture<Void> OnRelease(IExecutor executor, Action callback)
+        {
+            return AsyncWaiters.Enqueue(1, executor, callback);
+        }
+
+        /// <summary>
+        /// Runs <paramref name="callback"/> on <paramref name="executor"/>
+        /// once the latch has counted down to zero, without blocking the
+        /// calling thread.
+        /// </summary>
+        /// <remarks>
+        /// <para>
+        /// If the current <see cref="Count"/> is zero then the callback is
+        /// handed to the executor right away. Otherwise it is queued, and
+        /// the <see cref="CountDown()"/> that brings the count to zero hands
+        /// all queued callbacks to their executors, in registration order.
+        /// </para>
+        /// <para>
+        /// Cancelling the returned future before the callback started
+        /// withdraws it.
+        /// </para>
+        /// </remarks>
+        /// <param name="executor">The executor to run the callback.</param>
+        /// <param name="callback">The function to run.</param>
+        /// <returns>
+        /// An <see cref="IFuture{T}"/> that completes with the result of the
+        /// callback.
+        /// </returns>
+        /// <exception cref="ArgumentNullException">
+        /// If <paramref name="executor"/> or <paramref name="callback"/> is
+        /// <c>null</c>.
+        /// </exception>
+        public IFuture<T> OnRelease<T>(IExecutor executor, Func<T> callback)
+        {
+            return AsyncWaiters.Enqueue(1, executor, callback);
         }
 
         /// <summary> 
@@ -323,5 +401,18 @@ namespace Spring.Threading
         {
             return base.ToString() + "[Count = " + Count + "]";
         }
+
+        private AsyncWaitQueue AsyncWaiters
+        {
+            get
+            {
+                AsyncWaitQueue q = _asyncWaiters;
+                if (q != null) return q;
+                q = new AsyncWaitQueue(delegate { return _sync.Count == 0; }, delegate { });
+#pragma warning disable 420 // a reference to a volatile field will not be treated as volatile
+                return Interlocked.CompareExchange(ref _asyncWaiters, q, null) ?? q;
+#pragma warning restore 420
+            }
+        }
     }
 }
\ No newline at end of file
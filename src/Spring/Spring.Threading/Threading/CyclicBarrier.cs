@@ -19,6 +19,7 @@
 #endregion
 
 using System;
+using System.Collections.Generic;
 using System.Threading;
 using Spring.Threading.Locks;
 
@@ -51,6 +52,19 @@ namespace Spring.Threading
     /// <see cref="ThreadInterruptedException"/> if they too were interrupted 
     /// at about the same time).
     /// </para>
+    /// <para>
+    /// By default every party passes through a single lock, and the last
+    /// party to arrive wakes all the others. With many parties, that is a
+    /// wake-up storm followed by a hand-off of the lock to each woken
+    /// party in turn. A barrier created with a non-zero fan-in (see
+    /// <see cref="CyclicBarrier(int, Action, int)"/>) instead counts
+    /// arrivals on a <i>combining tree</i> whose nodes each take at most
+    /// fan-in arrivals. Only the party completing a node moves on to its
+    /// parent, and the party completing the root trips the barrier. Wake-up
+    /// runs back down the tree: each released party wakes the parties
+    /// that stopped at the nodes it completed. No lock is involved, and no
+    /// thread wakes more than fan-in - 1 parties per tree level.
+    /// </para>
     /// </remarks>
     /// <example>
     /// <para>
@@ -144,6 +158,12 @@ namespace Spring.Threading
         /// <summary>The current generation </summary>
         private Generation _generation;
 
+        /// <summary>
+        /// The combining tree counting arrivals, or <c>null</c> when the
+        /// barrier is guarded by <see cref="_lock"/>.
+        /// </summary>
+        private readonly CombiningTree _tree;
+
         /// <summary> 
         /// Number of parties yet to arrive. Counts down from 
         /// <see cref="Parties"/> to 0 on each generation.  It is reset to 
@@ -171,6 +191,7 @@ namespace Spring.Threading
         {
             get
             {
+                if (_tree != null) return _tree.IsBroken;
                 using (_lock.Lock())
                 {
                     return _generation.isBroken;
@@ -187,6 +208,7 @@ namespace Spring.Threading
         {
             get
             {
+                if (_tree != null) return _tree.NumberOfWaitingParties;
                 using (_lock.Lock())
                 {
                     return _parties - _count;
@@ -266,6 +288,58 @@ namespace Spring.Threading
         {
         }
 
+        /// <summary> 
+        /// Creates a new <see cref="CyclicBarrier"/> that will trip when the
+        /// given number of <paramref name="parties"/> (threads) are waiting 
+        /// upon it, counting arrivals on a combining tree with the given
+        /// <paramref name="fanIn"/>, and which will execute the given
+        /// barrier action when the barrier is tripped, performed by the last
+        /// thread entering the barrier.
+        /// </summary>
+        /// <remarks>
+        /// A combining tree pays off at high party counts, where a single
+        /// lock makes every trip wake all the parties at once and then hand
+        /// the lock to each of them in turn. Arrival indices returned by
+        /// <see cref="Await()"/> remain distinct and zero still denotes the
+        /// last party to arrive, but the other indices follow arrival order
+        /// only among the parties sharing a leaf of the tree.
+        /// </remarks>
+        /// <param name="parties">
+        /// The number of threads that must invoke <see cref="Await()"/> or
+        /// <see cref="Await(System.TimeSpan)"/> before the barrier is tripped.
+        /// </param>
+        /// <param name="barrierAction">
+        /// The <see cref="Action"/> delegate to execute when the barrier is
+        /// tripped, or <c>null</c>  if there is no action.
+        /// </param>
+        /// <param name="fanIn">
+        /// The maximum number of arrivals combined at each node of the tree,
+        /// or zero to guard the barrier with a single lock.
+        /// </param>
+        /// <exception cref="ArgumentOutOfRangeException">
+        /// If <paramref name="parties"/> is less than 1, or
+        /// <paramref name="fanIn"/> is neither zero nor at least 2.
+        /// </exception>
+        public CyclicBarrier(int parties, Action barrierAction, int fanIn)
+            : this(parties, barrierAction)
+        {
+            if (fanIn < 0 || fanIn == 1)
+            {
+                throw new ArgumentOutOfRangeException("fanIn", fanIn, "parameter fanIn must be zero or at least 2");
+            }
+            if (fanIn > 0) _tree = new CombiningTree(this, fanIn);
+        }
+
+        /// <summary>
+        /// Return the maximum number of arrivals combined at each node of
+        /// the combining tree, or zero if the barrier is guarded by a single
+        /// lock.
+        /// </summary>
+        public virtual int FanIn
+        {
+            get { return _tree == null ? 0 : _tree.FanIn; }
+        }
+
         /// <summary> 
         /// Waits until all <see cref="Parties"/> have invoked 
         /// <see cref="Await()"/> or <see cref="Await(System.TimeSpan)"/>
@@ -414,6 +488,11 @@ namespace Spring.Threading
         /// </remarks>
         public virtual void Reset()
         {
+            if (_tree != null)
+            {
+                _tree.Reset();
+                return;
+            }
             using (_lock.Lock())
             {
                 BreakBarrier();
@@ -448,6 +527,7 @@ namespace Spring.Threading
         /// <summary> Main barrier code, covering the various policies.</summary>
         private int DoWait(bool timed, TimeSpan duration)
         {
+            if (_tree != null) return _tree.DoWait(timed, duration);
             using (_lock.Lock())
             {
                 Generation currentGeneration = _generation;
@@ -537,5 +617,409 @@ namespace Spring.Threading
         {
             internal bool isBroken;
         }
+
+        /// <summary>
+        /// Lock-free barrier state that counts arrivals on a tree of nodes
+        /// taking at most <see cref="FanIn"/> arrivals each.
+        /// </summary>
+        /// <remarks>
+        /// <para>
+        /// The shape of the tree is fixed at construction: the leaves take
+        /// the parties, and each inner node takes one arrival per child.
+        /// The arrival counts and wait stacks live in a
+        /// <see cref="TreeGeneration"/>, so a trip or a reset only has to
+        /// publish a fresh one. An arriving thread claims a slot in the
+        /// first leaf with room, starting at a leaf picked by its thread id.
+        /// The thread that fills a node climbs to the parent; any other
+        /// thread pushes itself on the wait stack of the node where it
+        /// stopped. The thread filling the root runs the barrier action.
+        /// </para>
+        /// <para>
+        /// A generation moves from <see cref="Open"/> to either
+        /// <see cref="Tripping"/> (the root is full) or <see cref="Broken"/>
+        /// (by timeout, interruption or reset), decided by a single CAS.
+        /// Once tripping, waiters that time out or are interrupted keep
+        /// waiting for the outcome, just as they would be held on the lock
+        /// while the barrier action runs in the lock-based mode.
+        /// </para>
+        /// </remarks>
+#pragma warning disable 420 // a reference to a volatile field will not be treated as volatile
+        private sealed class CombiningTree
+        {
+            private const int Open = 0;
+            private const int Tripping = 1;
+            private const int Tripped = 2;
+            private const int Broken = 3;
+
+            /// <summary>
+            /// Number of times a waiter polls the generation state before
+            /// parking. Barrier rounds are usually short and regular, so a
+            /// little spinning saves most of the park and unpark calls on
+            /// multiprocessors.
+            /// </summary>
+            private static readonly int _spinsBeforePark = Environment.ProcessorCount > 1 ? 1 << 6 : 0;
+
+            private readonly CyclicBarrier _barrier;
+            internal readonly int FanIn;
+            private readonly int _leafCount;
+
+            /// <summary>Number of arrivals that fill each node.</summary>
+            private readonly int[] _capacity;
+
+            /// <summary>Index of the parent of each node, -1 at the root.</summary>
+            private readonly int[] _parent;
+
+            private volatile TreeGeneration _generation;
+
+            internal CombiningTree(CyclicBarrier barrier, int fanIn)
+            {
+                _barrier = barrier;
+                FanIn = fanIn;
+                int parties = barrier._parties;
+                List<int> capacity = new List<int>();
+                List<int> parent = new List<int>();
+                int levelStart = 0;
+                int levelCount = (parties + fanIn - 1)/fanIn;
+                _leafCount = levelCount;
+                AddLevel(capacity, parent, levelCount, parties);
+                while (levelCount > 1)
+                {
+                    int nextStart = levelStart + levelCount;
+                    int nextCount = (levelCount + fanIn - 1)/fanIn;
+                    for (int i = 0; i < levelCount; i++)
+                        parent[levelStart + i] = nextStart + i/fanIn;
+                    AddLevel(capacity, parent, nextCount, levelCount);
+                    levelStart = nextStart;
+                    levelCount = nextCount;
+                }
+                _capacity = capacity.ToArray();
+                _parent = parent.ToArray();
+                _generation = new TreeGeneration(_capacity.Length);
+            }
+
+            /// <summary>
+            /// Appends a level of <paramref name="count"/> nodes sharing
+            /// <paramref name="arrivals"/> arrivals, all nodes but the last
+            /// taking <see cref="FanIn"/>.
+            /// </summary>
+            private void AddLevel(List<int> capacity, List<int> parent, int count, int arrivals)
+            {
+                for (int i = 0; i < count; i++)
+                {
+                    capacity.Add(i < count - 1 ? FanIn : arrivals - (count - 1)*FanIn);
+                    parent.Add(-1);
+                }
+            }
+
+            internal bool IsBroken
+            {
+                get { return _generation.State == Broken; }
+            }
+
+            internal int NumberOfWaitingParties
+            {
+                get
+                {
+                    TreeGeneration g = _generation;
+                    if (g.State != Open) return 0;
+                    int waiting = 0;
+                    for (int i = 0; i < _leafCount; i++)
+                        waiting += Math.Min(Thread.VolatileRead(ref g.Arrivals[i]), _capacity[i]);
+                    return waiting;
+                }
+            }
+
+            internal int DoWait(bool timed, TimeSpan duration)
+            {
+                DateTime deadline = DateTime.UtcNow.Add(duration);
+                for (;;)
+                {
+                    TreeGeneration g = _generation;
+                    if (g.State == Broken)
+                        throw new BrokenBarrierException();
+
+                    int leaf, slot;
+                    if (!TryTakeSlot(g, out leaf, out slot))
+                    {
+                        // Every slot is taken, so the generation is about
+                        // to trip or break; wait for its successor.
+                        AwaitSuccessor(g);
+                        continue;
+                    }
+
+                    int index = _barrier._parties - 1 - (leaf*FanIn + slot);
+                    int node = leaf;
+                    bool filled = slot + 1 == _capacity[leaf];
+                    while (filled && _parent[node] >= 0)
+                    {
+                        node = _parent[node];
+                        filled = Interlocked.Increment(ref g.Arrivals[node]) == _capacity[node];
+                    }
+                    return filled
+                        ? Trip(g, leaf, index)
+                        : AwaitTrip(g, leaf, node, index, timed, deadline, duration);
+                }
+            }
+
+            /// <summary>
+            /// Claims an arrival slot in the first leaf of
+            /// <paramref name="g"/> with room, or returns <c>false</c> if
+            /// all leaves are full.
+            /// </summary>
+            private bool TryTakeSlot(TreeGeneration g, out int leaf, out int slot)
+            {
+                int n = _leafCount;
+                int start = (int) (unchecked((uint) Thread.CurrentThread.ManagedThreadId*0x9e3779b9)%(uint) n);
+                for (int k = 0; k < n; k++)
+                {
+                    int i = start + k;
+                    if (i >= n) i -= n;
+                    for (;;)
+                    {
+                        int c = Thread.VolatileRead(ref g.Arrivals[i]);
+                        if (c >= _capacity[i]) break;
+                        if (Interlocked.CompareExchange(ref g.Arrivals[i], c + 1, c) == c)
+                        {
+                            leaf = i;
+                            slot = c;
+                            return true;
+                        }
+                    }
+                }
+                leaf = slot = -1;
+                return false;
+            }
+
+            /// <summary>
+            /// Runs the barrier action on behalf of the last party to
+            /// arrive, publishes the next generation and starts the wake-up.
+            /// </summary>
+            private int Trip(TreeGeneration g, int leaf, int index)
+            {
+                if (Interlocked.CompareExchange(ref g.State, Tripping, Open) != Open)
+                    throw new BrokenBarrierException();
+                bool ranAction = false;
+                try
+                {
+                    Action command = _barrier._barrierCommand;
+                    if (command != null) command();
+                    ranAction = true;
+                }
+                finally
+                {
+                    if (!ranAction)
+                    {
+                        g.State = Broken;
+                        ReleaseAll(g);
+                    }
+                }
+                g.TrippedIndex = index;
+                _generation = new TreeGeneration(_capacity.Length);
+                g.State = Tripped;
+                ReleaseSuccessors(g);
+                ReleasePath(g, leaf, -1);
+                return 0;
+            }
+
+            /// <summary>
+            /// Waits until <paramref name="g"/>, whose slots are all taken,
+            /// is replaced by its successor or breaks. Like a party held on
+            /// the lock in the lock-based mode, an interrupt does not end
+            /// the wait but is kept for the next generation.
+            /// </summary>
+            private void AwaitSuccessor(TreeGeneration g)
+            {
+                for (int spins = _spinsBeforePark; spins > 0; --spins)
+                {
+                    if (_generation != g || g.State == Broken) return;
+                    Thread.SpinWait(1);
+                }
+                WaitNode w = new WaitNode();
+                do w.Next = g.Successors;
+                while (Interlocked.CompareExchange(ref g.Successors, w, w.Next) != w.Next);
+
+                bool interrupted = false;
+                try
+                {
+                    while (_generation == g && g.State != Broken)
+                    {
+                        try
+                        {
+                            LockSupport.Park(_barrier);
+                        }
+                        catch (ThreadInterruptedException)
+                        {
+                            interrupted = true;
+                        }
+                    }
+                }
+                finally
+                {
+                    if (interrupted) Thread.CurrentThread.Interrupt();
+                }
+            }
+
+            /// <summary>
+            /// Waits at <paramref name="node"/> until <paramref name="g"/>
+            /// trips or breaks, then wakes the parties waiting at the nodes
+            /// this thread filled on its way up from <paramref name="leaf"/>.
+            /// </summary>
+            private int AwaitTrip(TreeGeneration g, int leaf, int node, int index,
+                                  bool timed, DateTime deadline, TimeSpan duration)
+            {
+                WaitNode w = new WaitNode();
+                do w.Next = g.Waiters[node];
+                while (Interlocked.CompareExchange(ref g.Waiters[node], w, w.Next) != w.Next);
+
+                bool interrupted = false;
+                int spins = timed && duration.Ticks <= 0 ? 0 : _spinsBeforePark;
+                try
+                {
+                    for (;;)
+                    {
+                        int state = g.State;
+                        if (state == Tripped) break;
+                        if (state == Broken) throw new BrokenBarrierException();
+                        if (spins > 0)
+                        {
+                            --spins;
+                            Thread.SpinWait(1);
+                            continue;
+                        }
+                        try
+                        {
+                            if (timed && state == Open)
+                            {
+                                TimeSpan remaining = deadline.Subtract(DateTime.UtcNow);
+                                if (remaining.Ticks <= 0)
+                                {
+                                    if (TryBreak(g)) throw new TimeoutException();
+                                    continue;
+                                }
+                                LockSupport.Park(_barrier, remaining);
+                            }
+                            else
+                            {
+                                LockSupport.Park(_barrier);
+                            }
+                        }
+                        catch (ThreadInterruptedException e)
+                        {
+                            if (TryBreak(g)) throw SystemExtensions.PreserveStackTrace(e);
+                            // We're about to finish waiting even if we had not
+                            // been interrupted, so this interrupt is deemed to
+                            // "belong" to subsequent execution.
+                            interrupted = true;
+                        }
+                    }
+                }
+                finally
+                {
+                    if (interrupted) Thread.CurrentThread.Interrupt();
+                }
+                ReleasePath(g, leaf, node);
+                return index == 0 ? g.TrippedIndex : index;
+            }
+
+            internal void Reset()
+            {
+                for (;;)
+                {
+                    TreeGeneration g = _generation;
+                    int state = g.State;
+                    if (state == Tripping || state == Tripped)
+                    {
+                        // Wait for the trip in progress to publish the
+                        // next generation, which is the one to reset.
+                        AwaitSuccessor(g);
+                        continue;
+                    }
+                    if (state == Open && !TryBreak(g)) continue;
+                    if (Interlocked.CompareExchange(ref _generation, new TreeGeneration(_capacity.Length), g) == g)
+                    {
+                        ReleaseSuccessors(g);
+                        return;
+                    }
+                }
+            }
+
+            /// <summary>
+            /// Breaks <paramref name="g"/> if it is still open, waking all
+            /// its waiters.
+            /// </summary>
+            private bool TryBreak(TreeGeneration g)
+            {
+                if (Interlocked.CompareExchange(ref g.State, Broken, Open) != Open) return false;
+                ReleaseAll(g);
+                return true;
+            }
+
+            private static void ReleaseAll(TreeGeneration g)
+            {
+                for (int i = g.Waiters.Length - 1; i >= 0; i--)
+                    Release(g, i);
+                ReleaseSuccessors(g);
+            }
+
+            /// <summary>
+            /// Wakes the parties waiting at the nodes from
+            /// <paramref name="node"/> up to, but not including,
+            /// <paramref name="stop"/>, highest node first so that the
+            /// threads with most parties to wake in turn start first.
+            /// </summary>
+            private void ReleasePath(TreeGeneration g, int node, int stop)
+            {
+                if (node == stop) return;
+                ReleasePath(g, _parent[node], stop);
+                Release(g, node);
+            }
+
+            private static void Release(TreeGeneration g, int node)
+            {
+                for (WaitNode q = Interlocked.Exchange(ref g.Waiters[node], null); q != null; q = q.Next)
+                    q.Unpark();
+            }
+
+            private static void ReleaseSuccessors(TreeGeneration g)
+            {
+                for (WaitNode q = Interlocked.Exchange(ref g.Successors, null); q != null; q = q.Next)
+                    q.Unpark();
+            }
+        }
+#pragma warning restore 420
+
+        /// <summary>
+        /// A generation of a <see cref="CombiningTree"/>, holding the arrival
+        /// count and the stack of waiting parties of every node.
+        /// </summary>
+        private sealed class TreeGeneration
+        {
+            internal volatile int State;
+            internal int TrippedIndex;
+            internal readonly int[] Arrivals;
+            internal readonly WaitNode[] Waiters;
+
+            /// <summary>
+            /// Parties of the next generation that arrived while every slot
+            /// of this one was taken.
+            /// </summary>
+            internal WaitNode Successors;
+
+            internal TreeGeneration(int nodes)
+            {
+                Arrivals = new int[nodes];
+                Waiters = new WaitNode[nodes];
+            }
+        }
+
+        private sealed class WaitNode : LockSupport.ParkingNode
+        {
+            internal WaitNode Next;
+
+            internal WaitNode()
+            {
+                CaptureParker();
+            }
+        }
     }
 }
\ No newline at end of file
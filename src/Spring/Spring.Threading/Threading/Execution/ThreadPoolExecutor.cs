@@ -593,6 +593,12 @@ namespace Spring.Threading.Execution
         /// </summary>
         private volatile IThreadFactory _threadFactory;
 
+        /// <summary>
+        /// Statistics shared by the locks of all workers, <c>null</c> when
+        /// worker locks are not instrumented.
+        /// </summary>
+        private volatile LockStatistics _workerLockStatistics;
+
         #endregion
 
         #region Control State Packing & Unpacking Functions
@@ -637,6 +643,26 @@ namespace Spring.Threading.Execution
 
         #region Public Properties
 
+        /// <summary> 
+        /// Gets and sets the <see cref="LockStatistics"/> shared by the
+        /// locks of all current and future workers, so that they roll up
+        /// under the tag of this executor. Setting <c>null</c> stops
+        /// recording.
+        /// </summary>
+        public LockStatistics WorkerLockStatistics
+        {
+            get { return _workerLockStatistics; }
+            set
+            {
+                using (_mainLock.Lock())
+                {
+                    _workerLockStatistics = value;
+                    foreach (Worker w in _currentWorkerThreads.Keys)
+                        w.Statistics = value;
+                }
+            }
+        }
+
         /// <summary> 
         /// Gets and sets the time limit for which threads may remain idle before
         /// being terminated.  
@@ -1700,6 +1726,8 @@ namespace Spring.Threading.Execution
                     return false;
                 }
 
+                if (_workerLockStatistics != null)
+                    w.Statistics = _workerLockStatistics;
                 _currentWorkerThreads[w] = w;
 
                 var s = _currentWorkerThreads.Count;
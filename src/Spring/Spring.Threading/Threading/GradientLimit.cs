@@ -0,0 +1,172 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+using System;
+
+namespace Spring.Threading
+{
+    /// <summary>
+    /// Delay based limit that compares a short term to a long term average
+    /// of the latency, and scales the limit by their ratio.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// The long term average is an exponential moving average over
+    /// <see cref="LongWindow"/> samples and stands for the latency the
+    /// service has when it is not overloaded. The gradient
+    /// <c>tolerance * longRtt / rtt</c>, capped to between 0.5 and 1, is
+    /// one while the latency stays within the tolerance and drops as the
+    /// service starts queuing. The new limit is
+    /// <c>L * gradient + sqrt(L)</c>, where the square root leaves room
+    /// for a small queue so that the limit keeps probing upwards. A
+    /// dropped call counts as the lowest gradient.
+    /// </para>
+    /// <para>
+    /// Unlike <see cref="VegasLimit"/> this does not depend on a single
+    /// lowest latency, so it copes better with latencies that are noisy,
+    /// and it follows a service that got slower as soon as the long term
+    /// average does. When the long term average is more than twice the
+    /// current latency it is decayed, so that it recovers quickly after a
+    /// period of overload.
+    /// </para>
+    /// <para>
+    /// NOTE: this class is NOT present in java.util.concurrent.
+    /// </para>
+    /// </remarks>
+    public class GradientLimit : AbstractLimit //NET_ONLY
+    {
+        private const double MinGradient = 0.5;
+
+        private readonly double _smoothing;
+        private readonly double _tolerance;
+        private readonly int _longWindow;
+        private double _longRtt;
+        private int _warmupSamples;
+
+        /// <summary>
+        /// Creates a <see cref="GradientLimit"/> that starts at 20, stays
+        /// within 1 and 1000, applies a fifth of each change, tolerates a
+        /// latency of 1.5 times the long term average and averages over
+        /// 600 samples.
+        /// </summary>
+        public GradientLimit() : this(20, 1, 1000, 0.2, 1.5, 600)
+        {
+        }
+
+        /// <summary>
+        /// Creates a <see cref="GradientLimit"/> with the given parameters.
+        /// </summary>
+        /// <param name="initialLimit">The limit before the first sample.</param>
+        /// <param name="minLimit">The lower bound of the limit, at least one.</param>
+        /// <param name="maxLimit">The upper bound of the limit.</param>
+        /// <param name="smoothing">
+        /// The share of each computed change that is applied, greater than
+        /// zero and at most one.
+        /// </param>
+        /// <param name="tolerance">
+        /// How many times the long term average the latency may grow to
+        /// before the limit is reduced, at least one.
+        /// </param>
+        /// <param name="longWindow">
+        /// The number of samples of the long term average, at least one.
+        /// </param>
+        /// <exception cref="ArgumentOutOfRangeException">
+        /// If the limits are out of order, or any other parameter is out
+        /// of range.
+        /// </exception>
+        public GradientLimit(int initialLimit, int minLimit, int maxLimit,
+                             double smoothing, double tolerance, int longWindow)
+            : base(initialLimit, minLimit, maxLimit)
+        {
+            if (smoothing <= 0 || smoothing > 1)
+                throw new ArgumentOutOfRangeException("smoothing", smoothing, "Must be greater than 0 and at most 1.");
+            if (tolerance < 1)
+                throw new ArgumentOutOfRangeException("tolerance", tolerance, "Must be at least one.");
+            if (longWindow < 1)
+                throw new ArgumentOutOfRangeException("longWindow", longWindow, "Must be at least one.");
+            _smoothing = smoothing;
+            _tolerance = tolerance;
+            _longWindow = longWindow;
+        }
+
+        /// <summary>
+        /// The share of each computed change that is applied.
+        /// </summary>
+        public double Smoothing
+        {
+            get { return _smoothing; }
+        }
+
+        /// <summary>
+        /// How many times the long term average the latency may grow to
+        /// before the limit is reduced.
+        /// </summary>
+        public double Tolerance
+        {
+            get { return _tolerance; }
+        }
+
+        /// <summary>
+        /// The number of samples of the long term average.
+        /// </summary>
+        public int LongWindow
+        {
+            get { return _longWindow; }
+        }
+
+        /// <summary>
+        /// The long term average of the latency, zero before the first
+        /// sample.
+        /// </summary>
+        public TimeSpan LongTermLatency
+        {
+            get { return new TimeSpan((long) _longRtt); }
+        }
+
+        /// <summary>
+        /// Scales the limit by the ratio of the long term average to the
+        /// latency of this call.
+        /// </summary>
+        protected override double NewLimit(double limit, TimeSpan latency, int inFlight, bool dropped)
+        {
+            double rtt = latency.Ticks;
+            if (rtt > 0) UpdateLongRtt(rtt);
+            if (!dropped && (rtt <= 0 || IsAppLimited(limit, inFlight))) return limit;
+
+            double gradient = dropped ? MinGradient :
+                Math.Max(MinGradient, Math.Min(1.0, _tolerance * _longRtt / rtt));
+            double newLimit = limit * gradient + Math.Sqrt(limit);
+            return limit + (newLimit - limit) * _smoothing;
+        }
+
+        private void UpdateLongRtt(double rtt)
+        {
+            if (_warmupSamples < _longWindow)
+            {
+                // plain average until the window is filled
+                _warmupSamples++;
+                _longRtt += (rtt - _longRtt) / _warmupSamples;
+                return;
+            }
+            _longRtt += (rtt - _longRtt) * 2 / (_longWindow + 1);
+            if (_longRtt > 2 * rtt) _longRtt *= 0.95;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 using System;
+using System.Runtime.InteropServices;
 using System.Threading;
+using Spring.Threading.Locks;
 
 namespace Spring.Threading.Helpers
 {
@@ -9,108 +11,354 @@ namespace Spring.Threading.Helpers
 	/// method, and receives the object presented by the other
 	/// thread on return.
 	/// </summary>
+	/// <remarks>
+	/// <para>
+	/// The basic idea is to maintain a "slot", which is a reference to a
+	/// node containing both an item to offer and a "hole" waiting to get
+	/// filled in. If an incoming thread sees that the slot is empty, it
+	/// CASes a node there and waits for another to invoke exchange. That
+	/// second thread sees that the slot is non-empty, so CASes it back to
+	/// empty, and also exchanges items by CASing the hole, plus unparking
+	/// the first thread if it is blocked.
+	/// </para>
+	/// <para>
+	/// Under contention a single slot becomes a bottleneck, so the
+	/// exchanger uses an <i>arena</i> of slots. Threads start at a slot
+	/// picked by hashing their id, and the number of slots in use grows
+	/// when CASes fail repeatedly and shrinks again when threads spin
+	/// unmatched, so that pairs of threads spread out over the arena. Only
+	/// slot 0 ever blocks; waiters in other slots spin for a while and then
+	/// move towards slot 0, which guarantees that two threads always meet
+	/// eventually.
+	/// </para>
+	/// <para>
+	/// See "A Scalable Elimination-based Exchange Channel" by William
+	/// Scherer, Doug Lea, and Michael Scott in Proceedings of SCOOL05
+	/// workshop.
+	/// </para>
+	/// </remarks>
 	/// <author>Doug Lea</author>
 	/// <author>Bill Scherer</author>
 	/// <author>Michael Scott</author>
 	/// <author>Griffin Caprio (.NET)</author>
 	public class Exchanger
 	{
-		private readonly object _lock = new Object();
+		/// <summary>The number of CPUs, for sizing and spin control.</summary>
+		private static readonly int NCPU = Environment.ProcessorCount;
 
-		/// <summary>Holder for the item being exchanged </summary>
-		private object _itemToBeExchanged;
+		/// <summary>
+		/// The capacity of the arena. Set to a value that provides more
+		/// than enough space to handle contention. On small machines most
+		/// slots will be unused, but it is still not wasted because the
+		/// extra space provides some machine-level address padding to
+		/// minimize interference with heavily CAS'ed slot locations.
+		/// </summary>
+		private const int CAPACITY = 32;
 
-		/// <summary> 
-		/// Arrival count transitions from 0 to 1 to 2 then back to 0
-		/// during an exchange.
+		/// <summary>
+		/// The value of <see cref="_max"/> that will hold all threads without
+		/// contention. When this value is less than <see cref="CAPACITY"/>,
+		/// some otherwise wasted expansion can be avoided.
+		/// </summary>
+		private static readonly int FULL = Math.Max(0, Math.Min(CAPACITY, NCPU/2) - 1);
+
+		/// <summary>
+		/// The number of times to spin (doing nothing except polling a
+		/// memory location) before blocking or giving up while waiting to be
+		/// fulfilled. Should be zero on uniprocessors. On multiprocessors,
+		/// this value should be large enough so that two threads exchanging
+		/// items as fast as possible block only when one of them is stalled
+		/// (due to GC or preemption), but not much longer, to avoid wasting
+		/// CPU resources.
 		/// </summary>
-		private int _arrivalCount;
+		private static readonly int SPINS = (NCPU == 1) ? 0 : 2000;
+
+		/// <summary>
+		/// The number of times to spin before blocking in timed waits.
+		/// Timed waits spin more slowly because checking the time takes
+		/// time.
+		/// </summary>
+		private static readonly int TIMED_SPINS = SPINS/20;
+
+		/// <summary>
+		/// Sentinel item representing cancellation of a wait due to
+		/// interruption, timeout, or elapsed spin-waits. This value is
+		/// placed in holes on cancellation, and used as a return value from
+		/// waiting methods to indicate failure to set or get hole.
+		/// </summary>
+		private static readonly object CANCEL = new object();
+
+		/// <summary>
+		/// Value representing null arguments/returns from public methods.
+		/// This disambiguates from internal requirement that holes start
+		/// out as null to mean they are not yet set.
+		/// </summary>
+		private static readonly object NULL_ITEM = new object();
+
+		/// <summary>
+		/// Slot array. Elements are lazily initialized when needed. Slots
+		/// are never removed, and the array itself is only locked to create
+		/// a slot.
+		/// </summary>
+		private readonly Slot[] _arena = new Slot[CAPACITY];
+
+		/// <summary>
+		/// The maximum slot index being used. The value sometimes increases
+		/// when a thread experiences too many CAS contentions, and sometimes
+		/// decreases when a spin-wait elapses. Changes are performed only
+		/// via compareAndSet, to avoid stale values when a thread happens to
+		/// stall right before setting.
+		/// </summary>
+		private int _max;
 
 		/// <summary> Main exchange function, handling the different policy variants.</summary>
-		private object doExchange(Object objectToExchange, bool timed, TimeSpan duration)
+		/// <returns>
+		/// The other thread's item, or <see cref="CANCEL"/> if interrupted
+		/// or timed out.
+		/// </returns>
+		private object doExchange(object item, bool timed, TimeSpan duration)
 		{
-			lock (_lock)
+			Node me = new Node(item); // Create in case occupying
+			int index = hashIndex(); // Index of current slot
+			int fails = 0; // Number of CAS failures
+
+			for (;;)
 			{
-				TimeSpan durationToWait = duration;
-				object other;
-				DateTime deadline = timed ? DateTime.Now.Add(duration): new DateTime(0);
-				while (_arrivalCount == 2)
+				object y; // Contents of current slot
+				Slot slot = _arena[index];
+				if (slot == null) // Lazily initialize slots
+					createSlot(index); // Continue loop to reread
+				else if ((y = slot.Value) != null && // Try to fulfill
+				         slot.CompareAndSet(y, null))
 				{
-					if (!timed)
-						Monitor.Wait(_lock);
-					else if (durationToWait.Ticks > 0)
+					Node you = (Node) y; // Transfer item
+					if (you.CompareAndSet(null, item))
 					{
-						Monitor.Wait(_lock, durationToWait);
-						durationToWait = deadline.Subtract(DateTime.Now);
-					}
-					else
-						throw new TimeoutException("Timeout waiting for other thread.");
+						you.Unpark();
+						return you.Item;
+					} // Else cancelled; continue
+				}
+				else if (y == null && // Try to occupy
+				         slot.CompareAndSet(null, me))
+				{
+					if (index == 0) // Blocking wait for slot 0
+						return timed ? awaitFillTimed(me, slot, duration) : awaitFill(me, slot);
+					object v = spinWait(me, slot); // Spin wait for non-0
+					if (v != CANCEL)
+						return v;
+					me = new Node(item); // Throw away cancelled node
+					int m = Thread.VolatileRead(ref _max);
+					if (m > (index = (int) ((uint) index >> 1))) // Decrease index
+						Interlocked.CompareExchange(ref _max, m - 1, m); // Maybe shrink table
 				}
+				else if (++fails > 1) // Allow 2 fails on 1st slot
+				{
+					int m = Thread.VolatileRead(ref _max);
+					if (fails > 3 && m < FULL && Interlocked.CompareExchange(ref _max, m + 1, m) == m)
+						index = m + 1; // Grow on 3rd failed slot
+					else if (--index < 0)
+						index = m; // Circularly traverse
+				}
+			}
+		}
+
+		/// <summary>
+		/// Returns a hash index for the current thread. Uses a one-step
+		/// FNV-1a hash code of the thread id, which spreads the sequential
+		/// ids of the runtime well enough. The hash is masked to the number
+		/// of bits needed to cover <see cref="_max"/>, and rotated until it
+		/// fits, rather than taken modulo, to keep the slot distribution
+		/// uniform.
+		/// </summary>
+		private int hashIndex()
+		{
+			int hash = unchecked((Thread.CurrentThread.ManagedThreadId ^ (int) 0x811c9dc5)*0x01000193);
+			int m = Thread.VolatileRead(ref _max);
+			int nbits = ((unchecked((int) 0xfffffc00) >> m) & 4) | // Compute ceil(log2(m+1))
+			            ((int) (0x000001f8u >> m) & 2) | // The constants hold
+			            ((int) (0xffff00f2u >> m) & 1); // a lookup table
+			int index;
+			while ((index = hash & ((1 << nbits) - 1)) > m) // May retry on
+				hash = (int) ((uint) hash >> nbits) | (hash << (33 - nbits)); // non-power-2 m
+			return index;
+		}
 
-				int count = ++_arrivalCount;
+		/// <summary>
+		/// Creates a new slot at given index. Called only when the slot
+		/// appears to be null. Relies on double-check using builtin locks,
+		/// since they rarely contend.
+		/// </summary>
+		private void createSlot(int index)
+		{
+			// Create slot outside of lock to narrow sync region
+			Slot newSlot = new Slot();
+			Slot[] a = _arena;
+			lock (a)
+			{
+				if (a[index] == null)
+					a[index] = newSlot;
+			}
+		}
 
-				// If item is already waiting, replace it and signal other thread
-				if (count == 2)
+		/// <summary>
+		/// Tries to cancel a wait for the given node waiting in the given
+		/// slot, if so, helping clear the node from its slot to avoid
+		/// garbage retention.
+		/// </summary>
+		/// <returns><c>true</c> if successfully cancelled.</returns>
+		private static bool tryCancel(Node node, Slot slot)
+		{
+			if (!node.CompareAndSet(null, CANCEL))
+				return false;
+			if (slot.Value == node) // pre-check to minimize contention
+				slot.CompareAndSet(node, null);
+			return true;
+		}
+
+		/// <summary>
+		/// Spin-waits for hole for a non-0 slot. Fails if spin elapses
+		/// before hole filled. Does not check interrupt, relying on check in
+		/// the public exchange methods to abort if interrupted on entry.
+		/// </summary>
+		/// <returns>On success, the hole; on failure, <see cref="CANCEL"/>.</returns>
+		private static object spinWait(Node node, Slot slot)
+		{
+			int spins = SPINS;
+			for (;;)
+			{
+				object v = node.Value;
+				if (v != null)
+					return v;
+				if (spins > 0)
+					--spins;
+				else
+					tryCancel(node, slot);
+			}
+		}
+
+		/// <summary>
+		/// Waits for (by spinning and/or blocking) and gets the hole filled
+		/// in by another thread. Fails if interrupted before hole filled.
+		/// </summary>
+		/// <remarks>
+		/// An interrupt that arrives after the hole was filled cannot cancel
+		/// the exchange any more, so it is re-asserted on the current thread
+		/// and the other item returned.
+		/// </remarks>
+		/// <returns>The other thread's item.</returns>
+		/// <exception cref="ThreadInterruptedException">
+		/// If interrupted before the hole was filled.
+		/// </exception>
+		private static object awaitFill(Node node, Slot slot)
+		{
+			int spins = SPINS;
+			for (;;)
+			{
+				object v = node.Value;
+				if (v != null)
+					return v;
+				if (spins > 0) // Spin-wait phase
+					--spins;
+				else if (!node.HasParker) // Set up to block next
+					node.CaptureParker();
+				else
 				{
-					other = _itemToBeExchanged;
-					_itemToBeExchanged = objectToExchange;
-					Monitor.Pulse(_lock);
-					return other;
+					try
+					{
+						LockSupport.Park(node);
+					}
+					catch (ThreadInterruptedException e)
+					{
+						if (tryCancel(node, slot))
+							throw SystemExtensions.PreserveStackTrace(e);
+						Thread.CurrentThread.Interrupt();
+						return node.Value;
+					}
 				}
+			}
+		}
 
-				// Otherwise, set item and wait for another thread to
-				// replace it and signal us.
-
-				_itemToBeExchanged = objectToExchange;
-				ThreadInterruptedException interrupted = null;
-				try
+		/// <summary>
+		/// Waits for and gets the hole filled in by another thread, giving
+		/// up when the <paramref name="duration"/> elapses. On timeout, the
+		/// arena is scanned once more for a waiting thread to exchange with.
+		/// </summary>
+		/// <returns>
+		/// The other thread's item, or <see cref="CANCEL"/> if timed out.
+		/// </returns>
+		/// <exception cref="ThreadInterruptedException">
+		/// If interrupted before the hole was filled.
+		/// </exception>
+		private object awaitFillTimed(Node node, Slot slot, TimeSpan duration)
+		{
+			int spins = TIMED_SPINS;
+			DateTime deadline = DateTime.UtcNow.Add(duration);
+			for (;;)
+			{
+				object v = node.Value;
+				if (v != null)
+					return v;
+				TimeSpan remaining = deadline.Subtract(DateTime.UtcNow);
+				if (remaining.Ticks > 0)
 				{
-					while (_arrivalCount != 2)
+					if (spins > 0)
+						--spins;
+					else if (!node.HasParker)
+						node.CaptureParker();
+					else
 					{
-						if (!timed)
-							Monitor.Wait(_lock);
-						else if (durationToWait.Ticks > 0)
+						try
 						{
-							Monitor.Wait(_lock, durationToWait);
-
-							durationToWait = deadline.Subtract(DateTime.Now);
+							LockSupport.Park(node, remaining);
+						}
+						catch (ThreadInterruptedException e)
+						{
+							if (tryCancel(node, slot))
+								throw SystemExtensions.PreserveStackTrace(e);
+							Thread.CurrentThread.Interrupt();
+							return node.Value;
 						}
-						else
-							break; // timed out
 					}
 				}
-				catch (ThreadInterruptedException ie)
-				{
-					interrupted = ie;
-				}
+				else if (tryCancel(node, slot))
+					return scanOnTimeout(node);
+			}
+		}
 
-				// Get and reset item and count after the wait.
-				// (We need to do this even if wait was aborted.)
-				other = _itemToBeExchanged;
-				_itemToBeExchanged = null;
-				count = _arrivalCount;
-				_arrivalCount = 0;
-				Monitor.Pulse(_lock);
-
-				// If the other thread replaced item, then we must
-				// continue even if cancelled.
-				if (count == 2)
+		/// <summary>
+		/// Sweeps through arena checking for any waiting threads. Called
+		/// only upon return from timeout while waiting in slot 0. When a
+		/// thread gives up on a timed wait, it is possible that a
+		/// previously-entered thread is still waiting in some other slot.
+		/// So we scan to check for any. This is almost always overkill, but
+		/// decreases the likelihood of timeouts when there are other threads
+		/// present to far less than that in lock-based exchangers in which
+		/// earlier-arriving threads may still be waiting on entry locks.
+		/// </summary>
+		/// <returns>The other thread's item, or <see cref="CANCEL"/> if none.</returns>
+		private object scanOnTimeout(Node node)
+		{
+			for (int j = _arena.Length - 1; j >= 0; --j)
+			{
+				Slot slot = _arena[j];
+				if (slot == null) continue;
+				object y;
+				while ((y = slot.Value) != null)
 				{
-					if (interrupted != null)
-						Thread.CurrentThread.Interrupt();
-					return other;
+					if (slot.CompareAndSet(y, null))
+					{
+						Node you = (Node) y;
+						if (you.CompareAndSet(null, node.Item))
+						{
+							you.Unpark();
+							return you.Item;
+						}
+					}
 				}
-
-				// If no one is waiting for us, we can back out
-				if (interrupted != null)
-					throw interrupted;
-					// must be timeout
-			    throw new TimeoutException();
 			}
+			return CANCEL;
 		}
 
-		
-
 		/// <summary> 
 		/// Waits for another thread to arrive at this exchange point (unless
 		/// <see cref="System.Threading.Thread.Interrupt()"/> is called,
@@ -140,7 +388,8 @@ namespace Spring.Threading.Helpers
 		/// <exception cref="System.Threading.ThreadInterruptedException">if the current thread was interrupted</exception>
 		public virtual object Exchange(object objectToExchange)
 		{
-			return doExchange(objectToExchange, false, new TimeSpan(0));
+			object v = doExchange(objectToExchange ?? NULL_ITEM, false, TimeSpan.Zero);
+			return v == NULL_ITEM ? null : v;
 		}
 
 		/// <summary> 
@@ -171,9 +420,65 @@ namespace Spring.Threading.Helpers
 		/// <param name="duration">Duration to wait for another thread to enter.</param>
 		/// <returns> the object provided by the other thread.</returns>
 		/// <exception cref="System.Threading.ThreadInterruptedException">if the current thread was interrupted</exception>
+		/// <exception cref="TimeoutException">if the specified <paramref name="duration"/> elapses before another thread enters</exception>
 		public virtual object Exchange(object objectToExchange, TimeSpan duration)
 		{
-			return doExchange(objectToExchange, true, duration);
+			object v = doExchange(objectToExchange ?? NULL_ITEM, true, duration);
+			if (v == CANCEL)
+				throw new TimeoutException();
+			return v == NULL_ITEM ? null : v;
+		}
+
+#pragma warning disable 420 // a reference to a volatile field will not be treated as volatile
+		/// <summary>
+		/// Nodes hold partially exchanged data. The value is the "hole" that
+		/// the other thread fills in, and the parker of the owner is
+		/// captured only when it is about to block.
+		/// </summary>
+		private sealed class Node : LockSupport.ParkingNode
+		{
+			/// <summary>The element offered by the thread creating this node.</summary>
+			public readonly object Item;
+
+			private volatile object _hole;
+
+			public Node(object item)
+			{
+				Item = item;
+			}
+
+			public object Value
+			{
+				get { return _hole; }
+			}
+
+			public bool CompareAndSet(object expect, object update)
+			{
+				return Interlocked.CompareExchange(ref _hole, update, expect) == expect;
+			}
+		}
+
+		/// <summary>
+		/// A slot holding the waiting <see cref="Node"/>, if any. The
+		/// reference sits in the middle of a 128 byte object so that
+		/// heavily CAS'ed slots never share a cache line.
+		/// </summary>
+		[StructLayout(LayoutKind.Explicit, Size = 128)]
+		private sealed class Slot
+		{
+			[FieldOffset(64)]
+			private volatile object _node;
+
+			public object Value
+			{
+				get { return _node; }
+			}
+
+			public bool CompareAndSet(object expect, object update)
+			{
+				return Interlocked.CompareExchange(ref _node, update, expect) == expect;
+			}
 		}
+#pragma warning restore 420
 	}
 }
\ No newline at end of file
@@ -100,6 +100,35 @@ namespace Spring.Threading.Helpers
 		    return w;
 		}
 
+        /// <summary>
+        /// Unlinks the nodes whose waiters gave up by timing out or being
+        /// interrupted. Signallers dequeue a node before signalling it, so
+        /// every node left in the queue that is no longer waiting has been
+        /// cancelled. Must be called under the same lock as
+        /// <see cref="Enqueue"/> and <see cref="Dequeue"/>.
+        /// </summary>
+        public void UnlinkCancelled()
+        {
+            WaitNode trail = null;
+            WaitNode node = _head;
+            while (node != null)
+            {
+                WaitNode next = node.NextWaitNode;
+                if (node.IsWaiting)
+                {
+                    trail = node;
+                }
+                else
+                {
+                    node.NextWaitNode = null;
+                    if (trail == null) _head = next;
+                    else trail.NextWaitNode = next;
+                    if (next == null) _tail = trail;
+                }
+                node = next;
+            }
+        }
+
         // In backport 3.1 but not used.
         //public void PutBack(WaitNode w)
         //{
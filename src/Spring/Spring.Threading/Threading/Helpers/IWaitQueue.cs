@@ -45,6 +45,7 @@ namespace Spring.Threading.Helpers
 
 	    void Enqueue(WaitNode w); // assumed not to block
 	    WaitNode Dequeue(); // should return null if empty
+	    void UnlinkCancelled(); // drops nodes that are no longer waiting
         // In backport 3.1 but not used.
         //void PutBack(WaitNode w);
 	}
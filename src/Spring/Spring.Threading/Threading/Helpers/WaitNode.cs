@@ -20,25 +20,35 @@
 
 using System;
 using System.Threading;
+using Spring.Threading.Locks;
 
 namespace Spring.Threading.Helpers
 {
 	/// <summary>
 	/// The wait node used by implementations of <see cref="IWaitQueue"/>.
+	/// The owner blocks with <see cref="LockSupport"/> and the signaller
+	/// claims the node with a single compare-and-swap, so signalling a
+	/// specific thread does not need a monitor per node.
 	/// NOTE: this class is NOT present in java.util.concurrent.
 	/// </summary>
 	/// <author>Doug Lea</author>
 	/// <author>Griffin Caprio (.NET)</author>
     /// <author>Kenneth Xu</author>
-	internal class WaitNode // was WaitQueue.WaitNode in BACKPORT_3_1
+	internal class WaitNode : LockSupport.ParkingNode // was WaitQueue.WaitNode in BACKPORT_3_1
 	{
+		private const int WAITING = 0;
+		private const int SIGNALLING = 1; // claimed by signaller, take over in progress
+		private const int SIGNALLED = 2;
+		private const int CANCELLED = 3;
+
 		internal Thread _owner;
-		internal bool _waiting = true;
+		private int _state = WAITING;
 		internal WaitNode _nextWaitNode;
 
         public WaitNode()
 		{
 			_owner = Thread.CurrentThread;
+			CaptureParker();
 		}
 
         internal virtual Thread Owner
@@ -51,7 +61,7 @@ namespace Spring.Threading.Helpers
 		{
 			get
 			{
-				return _waiting;
+				return Thread.VolatileRead(ref _state) == WAITING;
 			}
 		}
 
@@ -63,114 +73,122 @@ namespace Spring.Threading.Helpers
 
 		public virtual bool Signal(IQueuedSync sync)
 		{
-			lock (this)
+			if (Interlocked.CompareExchange(ref _state, SIGNALLING, WAITING) != WAITING)
 			{
-				bool signalled = _waiting;
-				if (signalled)
-				{
-					_waiting = false;
-					Monitor.Pulse(this);
-					sync.TakeOver(this);
-				}
-				return signalled;
+				return false;
 			}
+			// the owner cannot proceed before SIGNALLED is published below
+			sync.TakeOver(this);
+			Thread.VolatileWrite(ref _state, SIGNALLED);
+			Unpark();
+			return true;
 		}
 
         public virtual bool DoTimedWait( IQueuedSync sync, TimeSpan duration)
 		{
-			lock (this)
+		    if (sync.Recheck(this) || IsSignalled)
 			{
-			    if (sync.Recheck(this) || !_waiting)
-				{
-					return true;
-				}
-			    if (duration.Ticks <= 0)
-			    {
-			        _waiting = false;
-			        return false;
-			    }
-			    DateTime deadline = DateTime.UtcNow.Add(duration);
-			    try
-			    {
-			        for (;; )
-			        {
-			            Monitor.Wait(this, duration);
-			            if (!_waiting) // definitely signalled
-			                return true;
-			            duration = deadline.Subtract(DateTime.UtcNow);
-			            if (duration.Ticks <= 0) // time out
-			            {
-			                _waiting = false;
-			                return false;
-			            }
-			        }
-			    }
-			    catch (ThreadInterruptedException ex)
-			    {
-			        if (_waiting) // no notification
-			        {
-			            _waiting = false; // invalidate for the signaller
-			            throw SystemExtensions.PreserveStackTrace(ex);
-			        }
-                    // thread was interrupted after it was notified
-			        Thread.CurrentThread.Interrupt();
-			        return true;
-			    }
+				return true;
 			}
+		    DateTime deadline = DateTime.UtcNow.Add(duration);
+		    try
+		    {
+		        for (;; )
+		        {
+		            if (duration.Ticks <= 0) // time out
+		            {
+		                if (TryCancel()) return false;
+		                AwaitSignalled(); // lost the race to a signaller
+		                return true;
+		            }
+		            LockSupport.Park(this, duration);
+		            if (IsSignalled) // definitely signalled
+		                return true;
+		            duration = deadline.Subtract(DateTime.UtcNow);
+		        }
+		    }
+		    catch (ThreadInterruptedException ex)
+		    {
+		        if (TryCancel()) // no notification
+		        {
+		            throw SystemExtensions.PreserveStackTrace(ex);
+		        }
+		        // thread was interrupted after it was notified
+		        AwaitSignalled();
+		        Thread.CurrentThread.Interrupt();
+		        return true;
+		    }
 		}
 
         public virtual void DoWait(IQueuedSync sync)
 		{
-			lock (this)
+			if (!sync.Recheck(this))
 			{
-				if (!sync.Recheck(this))
+				try
 				{
-					try
-					{
-						while (_waiting) Monitor.Wait(this);
-					}
-					catch (ThreadInterruptedException ex)
+					while (!IsSignalled) LockSupport.Park(this);
+				}
+				catch (ThreadInterruptedException ex)
+				{
+					if (TryCancel())
 					{
-						if (_waiting)
-						{
-							// no notification
-							_waiting = false; // invalidate for the signaller
-							throw SystemExtensions.PreserveStackTrace(ex);
-						}
-					    // thread was interrupted after it was notified
-					    Thread.CurrentThread.Interrupt();
-					    return;
+						// no notification
+						throw SystemExtensions.PreserveStackTrace(ex);
 					}
+				    // thread was interrupted after it was notified
+				    AwaitSignalled();
+				    Thread.CurrentThread.Interrupt();
+				    return;
 				}
 			}
 		}
 
 		public virtual void DoWaitUninterruptibly(IQueuedSync sync)
 		{
-			lock (this)
+			if (!sync.Recheck(this))
 			{
-				if (!sync.Recheck(this))
+				if (AwaitSignalled())
 				{
-					bool wasInterrupted = false;
-					while (_waiting)
-					{
-						try
-						{
-							Monitor.Wait(this);
-						}
-						catch (ThreadInterruptedException)
-						{
-							wasInterrupted = true;
-                            // no need to notify; if we were signalled, we
-                            // must be not waiting, and we'll act like signalled
-                        }
-					}
-					if (wasInterrupted)
-					{
-						Thread.CurrentThread.Interrupt();
-					}
+					Thread.CurrentThread.Interrupt();
 				}
 			}
 		}
+
+		private bool IsSignalled
+		{
+			get { return Thread.VolatileRead(ref _state) == SIGNALLED; }
+		}
+
+		/// <summary>
+		/// Invalidates the node for the signaller.
+		/// </summary>
+		/// <returns><c>false</c> if a signaller has already claimed the node.</returns>
+		private bool TryCancel()
+		{
+			return Interlocked.CompareExchange(ref _state, CANCELLED, WAITING) == WAITING;
+		}
+
+		/// <summary>
+		/// Parks until the node is signalled, ignoring interrupts.
+		/// </summary>
+		/// <returns><c>true</c> if the thread was interrupted while waiting.</returns>
+		private bool AwaitSignalled()
+		{
+			bool wasInterrupted = false;
+			while (!IsSignalled)
+			{
+				try
+				{
+					LockSupport.Park(this);
+				}
+				catch (ThreadInterruptedException)
+				{
+					wasInterrupted = true;
+                    // no need to notify; if we were signalled, we
+                    // must be not waiting, and we'll act like signalled
+                }
+			}
+			return wasInterrupted;
+		}
 	}
 }
@@ -0,0 +1,66 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+using System;
+
+namespace Spring.Threading
+{
+    /// <summary>
+    /// Computes the concurrency limit of an <see cref="AdaptiveLimiter"/>
+    /// from the samples of completed calls.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// The limiter calls <see cref="Update"/> once per completed call and
+    /// never concurrently, so implementations need no synchronization of
+    /// their own. They must not block.
+    /// </para>
+    /// <para>
+    /// NOTE: this interface is NOT present in java.util.concurrent.
+    /// </para>
+    /// </remarks>
+    /// <seealso cref="AimdLimit"/>
+    /// <seealso cref="VegasLimit"/>
+    /// <seealso cref="GradientLimit"/>
+    public interface ILimitAlgorithm //NET_ONLY
+    {
+        /// <summary>
+        /// The current limit, the initial limit before the first sample.
+        /// </summary>
+        int Limit { get; }
+
+        /// <summary>
+        /// Accounts for one completed call and returns the new limit.
+        /// </summary>
+        /// <param name="latency">The time the call took.</param>
+        /// <param name="inFlight">
+        /// The number of calls in flight when this one completed, this one
+        /// included. Algorithms use it to tell whether the limit was
+        /// actually reached, and so whether the sample says anything about
+        /// a larger limit.
+        /// </param>
+        /// <param name="dropped">
+        /// <c>true</c> if the call was rejected or timed out downstream, a
+        /// sign of overload regardless of <paramref name="latency"/>.
+        /// </param>
+        /// <returns>The new limit, at least one.</returns>
+        int Update(TimeSpan latency, int inFlight, bool dropped);
+    }
+}
@@ -0,0 +1,66 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+using System;
+using System.Threading;
+
+namespace Spring.Threading.Locks
+{
+    /// <summary>
+    /// A synchronizer that may be exclusively owned by a thread. This
+    /// class provides a basis for creating locks and related synchronizers
+    /// that may entail a notion of ownership. The
+    /// <see cref="AbstractOwnableSynchronizer"/> class itself does not
+    /// manage or use this information. However, subclasses and tools may
+    /// use appropriately maintained values to help control and monitor
+    /// access and provide diagnostics.
+    /// <p/>
+    /// Based on the on the back port of JCP JSR-166.
+    /// </summary>
+    /// <author>Doug Lea</author>
+    [Serializable]
+    public abstract class AbstractOwnableSynchronizer //JDK_1_6
+    {
+        /// <summary>
+        /// The current owner of exclusive mode synchronization.
+        /// </summary>
+        [NonSerialized]
+        private Thread _exclusiveOwnerThread;
+
+        /// <summary>
+        /// Empty constructor for use by subclasses.
+        /// </summary>
+        protected AbstractOwnableSynchronizer()
+        {
+        }
+
+        /// <summary>
+        /// Gets / Sets the thread that currently owns exclusive access. A
+        /// <c>null</c> value indicates that no thread owns access. This
+        /// property does not otherwise impose any synchronization or
+        /// volatile field accesses.
+        /// </summary>
+        protected Thread ExclusiveOwnerThread
+        {
+            get { return _exclusiveOwnerThread; }
+            set { _exclusiveOwnerThread = value; }
+        }
+    }
+}
@@ -0,0 +1,1682 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+using System;
+using System.Collections.Generic;
+using System.Threading;
+using Spring.Utility;
+
+namespace Spring.Threading.Locks
+{
+    /// <summary>
+    /// Provides a framework for implementing blocking locks and related
+    /// synchronizers (semaphores, events, etc) that rely on
+    /// first-in-first-out (FIFO) wait queues.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// This class is designed to be a useful basis for most kinds of
+    /// synchronizers that rely on a single atomic <see cref="int"/> value
+    /// to represent state. Subclasses must define the protected methods
+    /// that change this state, and which define what that state means in
+    /// terms of this object being acquired or released. Given these, the
+    /// other methods in this class carry out all queuing and blocking
+    /// mechanics. Subclasses can maintain other state fields, but only the
+    /// atomically updated value manipulated using <see cref="State"/> and
+    /// <see cref="CompareAndSetState"/> is tracked with respect to
+    /// synchronization.
+    /// </para>
+    /// <para>
+    /// Subclasses should be defined as non-public internal helper classes
+    /// that are used to implement the synchronization properties of their
+    /// enclosing class. This class supports either or both a default
+    /// <i>exclusive</i> mode and a <i>shared</i> mode. When acquired in
+    /// exclusive mode, attempted acquires by other threads cannot succeed.
+    /// Shared mode acquires by multiple threads may (but need not) succeed.
+    /// Threads waiting in the different modes share the same FIFO queue.
+    /// Usually, implementation subclasses support only one of these modes,
+    /// but both can come into play for example in a read-write lock.
+    /// </para>
+    /// <para>
+    /// This class defines a nested <see cref="ConditionObject"/> class that
+    /// can be used as an <see cref="ICondition"/> implementation by
+    /// subclasses supporting exclusive mode for which method
+    /// <see cref="IsHeldExclusively"/> reports whether synchronization is
+    /// exclusively held with respect to the current thread.
+    /// </para>
+    /// <para>
+    /// To use this class as the basis of a synchronizer, redefine the
+    /// following methods, as applicable, by inspecting and/or modifying the
+    /// synchronization state using <see cref="State"/> and/or
+    /// <see cref="CompareAndSetState"/>:
+    /// <list type="bullet">
+    /// <item><see cref="TryAcquire(int)"/></item>
+    /// <item><see cref="TryRelease"/></item>
+    /// <item><see cref="TryAcquireShared(int)"/></item>
+    /// <item><see cref="TryReleaseShared"/></item>
+    /// <item><see cref="IsHeldExclusively"/></item>
+    /// </list>
+    /// Each of these methods by default throws
+    /// <see cref="NotSupportedException"/>. Implementations of these
+    /// methods must be internally thread-safe, and should in general be
+    /// short and not block.
+    /// </para>
+    /// <para>
+    /// The wait queue is a variant of a "CLH" (Craig, Landin, and
+    /// Hagersten) lock queue. Each node keeps the status of its thread;
+    /// a thread is signalled when its predecessor releases. Waiting
+    /// threads are blocked and woken individually, so a release never
+    /// wakes more than the thread that is next in line.
+    /// </para>
+    /// <para>
+    /// Thread interruption is delivered by the runtime as a
+    /// <see cref="ThreadInterruptedException"/> raised from the blocked
+    /// thread. Uninterruptible acquires catch it, keep waiting and re-assert
+    /// the interrupt once the acquire completes.
+    /// </para>
+    /// <para>
+    /// Based on the on the back port of JCP JSR-166.
+    /// </para>
+    /// </remarks>
+    /// <author>Doug Lea</author>
+    [Serializable]
+    public abstract class AbstractQueuedSynchronizer : AbstractOwnableSynchronizer //JDK_1_6
+    {
+        /// <summary>
+        /// Head of the wait queue, lazily initialized. Except for
+        /// initialization, it is modified only via <see cref="SetHead"/>.
+        /// If head exists, its <see cref="Node.WaitStatus"/> is guaranteed
+        /// not to be <see cref="Node.CANCELLED"/>.
+        /// </summary>
+        [NonSerialized]
+        private volatile Node _head;
+
+        /// <summary>
+        /// Tail of the wait queue, lazily initialized. Modified only via
+        /// <see cref="Enq"/> to add new wait node.
+        /// </summary>
+        [NonSerialized]
+        private volatile Node _tail;
+
+        /// <summary>
+        /// The synchronization state.
+        /// </summary>
+        private int _state;
+
+        /// <summary>
+        /// Creates a new <see cref="AbstractQueuedSynchronizer"/> instance
+        /// with initial synchronization state of zero.
+        /// </summary>
+        protected AbstractQueuedSynchronizer()
+        {
+        }
+
+        /// <summary>
+        /// Gets / Sets the current value of synchronization state. This
+        /// operation has memory semantics of a volatile read / write.
+        /// </summary>
+        protected int State
+        {
+            get { return Thread.VolatileRead(ref _state); }
+            set { Interlocked.Exchange(ref _state, value); }
+        }
+
+        /// <summary>
+        /// Atomically sets synchronization state to the given updated value
+        /// if the current state value equals the expected value.
+        /// </summary>
+        /// <param name="expect">The expected value.</param>
+        /// <param name="update">The new value.</param>
+        /// <returns>
+        /// <c>true</c> if successful. <c>false</c> return indicates that the
+        /// actual value was not equal to the expected value.
+        /// </returns>
+        protected bool CompareAndSetState(int expect, int update)
+        {
+            return Interlocked.CompareExchange(ref _state, update, expect) == expect;
+        }
+
+        #region Queuing utilities
+
+        /// <summary>
+        /// Inserts node into queue, initializing if necessary.
+        /// </summary>
+        /// <param name="node">The node to insert.</param>
+        /// <returns>The node's predecessor.</returns>
+        private Node Enq(Node node)
+        {
+            for (;;)
+            {
+                Node t = _tail;
+                if (t == null) // Must initialize
+                {
+                    if (CompareAndSetHead(new Node())) _tail = _head;
+                }
+                else
+                {
+                    node.Prev = t;
+                    if (CompareAndSetTail(t, node))
+                    {
+                        t.Next = node;
+                        return t;
+                    }
+                }
+            }
+        }
+
+        /// <summary>
+        /// Creates and enqueues node for current thread and given mode.
+        /// </summary>
+        /// <param name="mode">
+        /// <see cref="Node.EXCLUSIVE"/> for exclusive, <see cref="Node.SHARED"/>
+        /// for shared.
+        /// </param>
+        /// <returns>The new node.</returns>
+        private Node AddWaiter(Node mode)
+        {
+            Node node = new Node(Thread.CurrentThread, mode);
+            // Try the fast path of enq; backup to full enq on failure
+            Node pred = _tail;
+            if (pred != null)
+            {
+                node.Prev = pred;
+                if (CompareAndSetTail(pred, node))
+                {
+                    pred.Next = node;
+                    return node;
+                }
+            }
+            Enq(node);
+            return node;
+        }
+
+        /// <summary>
+        /// Sets head of queue to be node, thus dequeuing. Called only by
+        /// acquire methods. Also nulls out unused fields for sake of GC and
+        /// to suppress unnecessary signals and traversals.
+        /// </summary>
+        private void SetHead(Node node)
+        {
+            _head = node;
+            node.Thread = null;
+            node.Prev = null;
+        }
+
+        /// <summary>
+        /// Wakes up node's successor, if one exists.
+        /// </summary>
+        private void UnparkSuccessor(Node node)
+        {
+            // If status is negative (i.e., possibly needing signal) try to
+            // clear in anticipation of signalling. It is OK if this fails or
+            // if status is changed by waiting thread.
+            int ws = node.WaitStatus;
+            if (ws < 0) node.CompareAndSetWaitStatus(ws, 0);
+
+            // Thread to unpark is held in successor, which is normally just
+            // the next node. But if cancelled or apparently null, traverse
+            // backwards from tail to find the actual non-cancelled successor.
+            Node s = node.Next;
+            if (s == null || s.WaitStatus > 0)
+            {
+                s = null;
+                for (Node t = _tail; t != null && t != node; t = t.Prev)
+                    if (t.WaitStatus <= 0) s = t;
+            }
+            if (s != null) s.Unpark();
+        }
+
+        /// <summary>
+        /// Release action for shared mode -- signal successor and ensure
+        /// propagation.
+        /// </summary>
+        private void DoReleaseShared()
+        {
+            // Ensure that a release propagates, even if there are other
+            // in-progress acquires/releases. Loop in case a new node is
+            // added while we are doing this.
+            for (;;)
+            {
+                Node h = _head;
+                if (h != null && h != _tail)
+                {
+                    int ws = h.WaitStatus;
+                    if (ws == Node.SIGNAL)
+                    {
+                        if (!h.CompareAndSetWaitStatus(Node.SIGNAL, 0))
+                            continue; // loop to recheck cases
+                        UnparkSuccessor(h);
+                    }
+                    else if (ws == 0 && !h.CompareAndSetWaitStatus(0, Node.PROPAGATE))
+                        continue; // loop on failed CAS
+                }
+                if (h == _head) // loop if head changed
+                    break;
+            }
+        }
+
+        /// <summary>
+        /// Sets head of queue, and checks if successor may be waiting in
+        /// shared mode, if so propagating if either propagate &gt; 0 or
+        /// PROPAGATE status was set.
+        /// </summary>
+        private void SetHeadAndPropagate(Node node, int propagate)
+        {
+            Node h = _head; // Record old head for check below
+            SetHead(node);
+            if (propagate > 0 || h == null || h.WaitStatus < 0 ||
+                (h = _head) == null || h.WaitStatus < 0)
+            {
+                Node s = node.Next;
+                if (s == null || s.IsShared) DoReleaseShared();
+            }
+        }
+
+        #endregion
+
+        #region Utilities for various versions of acquire
+
+        /// <summary>
+        /// Cancels an ongoing attempt to acquire.
+        /// </summary>
+        private void CancelAcquire(Node node)
+        {
+            // Ignore if node doesn't exist
+            if (node == null) return;
+
+            node.Thread = null;
+
+            // Skip cancelled predecessors
+            Node pred = node.Prev;
+            while (pred.WaitStatus > 0)
+                node.Prev = pred = pred.Prev;
+
+            // predNext is the apparent node to unsplice. CASes below will
+            // fail if not, in which case, we lost race vs another cancel
+            // or signal, so no further action is necessary.
+            Node predNext = pred.Next;
+
+            // After this atomic step, other Nodes can skip past us. Before,
+            // we are free of interference from other threads.
+            node.WaitStatus = Node.CANCELLED;
+
+            // If we are the tail, remove ourselves.
+            if (node == _tail && CompareAndSetTail(node, pred))
+            {
+                pred.CompareAndSetNext(predNext, null);
+            }
+            else
+            {
+                // If successor needs signal, try to set pred's next-link
+                // so it will get one. Otherwise wake it up to propagate.
+                int ws;
+                if (pred != _head &&
+                    ((ws = pred.WaitStatus) == Node.SIGNAL ||
+                     (ws <= 0 && pred.CompareAndSetWaitStatus(ws, Node.SIGNAL))) &&
+                    pred.Thread != null)
+                {
+                    Node next = node.Next;
+                    if (next != null && next.WaitStatus <= 0)
+                        pred.CompareAndSetNext(predNext, next);
+                }
+                else
+                {
+                    UnparkSuccessor(node);
+                }
+
+                node.Next = node; // help GC
+            }
+        }
+
+        /// <summary>
+        /// Checks and updates status for a node that failed to acquire.
+        /// Returns <c>true</c> if thread should block. This is the main
+        /// signal control in all acquire loops. Requires that
+        /// <c>pred == node.Prev</c>.
+        /// </summary>
+        private static bool ShouldParkAfterFailedAcquire(Node pred, Node node)
+        {
+            int ws = pred.WaitStatus;
+            if (ws == Node.SIGNAL)
+                // This node has already set status asking a release to
+                // signal it, so it can safely park.
+                return true;
+            if (ws > 0)
+            {
+                // Predecessor was cancelled. Skip over predecessors and
+                // indicate retry.
+                do
+                {
+                    node.Prev = pred = pred.Prev;
+                } while (pred.WaitStatus > 0);
+                pred.Next = node;
+            }
+            else
+            {
+                // waitStatus must be 0 or PROPAGATE. Indicate that we need
+                // a signal, but don't park yet. Caller will need to retry
+                // to make sure it cannot acquire before parking.
+                pred.CompareAndSetWaitStatus(ws, Node.SIGNAL);
+            }
+            return false;
+        }
+
+        /// <summary>
+        /// Convenience method to park and then check if interrupted.
+        /// </summary>
+        /// <returns><c>true</c> if interrupted.</returns>
+        private static bool ParkAndCheckInterrupt(object blocker)
+        {
+            try
+            {
+                LockSupport.Park(blocker);
+                return false;
+            }
+            catch (ThreadInterruptedException)
+            {
+                return true;
+            }
+        }
+
+        /// <summary>
+        /// Acquires in exclusive uninterruptible mode for thread already in
+        /// queue. Used by condition wait methods as well as acquire.
+        /// </summary>
+        /// <returns><c>true</c> if interrupted while waiting.</returns>
+        internal bool AcquireQueued(Node node, int arg)
+        {
+            bool failed = true;
+            try
+            {
+                bool interrupted = false;
+                for (;;)
+                {
+                    Node p = node.Predecessor;
+                    if (p == _head && TryAcquire(arg))
+                    {
+                        SetHead(node);
+                        p.Next = null; // help GC
+                        failed = false;
+                        return interrupted;
+                    }
+                    if (ShouldParkAfterFailedAcquire(p, node) && ParkAndCheckInterrupt(this))
+                        interrupted = true;
+                }
+            }
+            finally
+            {
+                if (failed) CancelAcquire(node);
+            }
+        }
+
+        /// <summary>
+        /// Acquires in exclusive interruptible mode.
+        /// </summary>
+        private void DoAcquireInterruptibly(int arg)
+        {
+            Node node = AddWaiter(Node.EXCLUSIVE);
+            bool failed = true;
+            try
+            {
+                for (;;)
+                {
+                    Node p = node.Predecessor;
+                    if (p == _head && TryAcquire(arg))
+                    {
+                        SetHead(node);
+                        p.Next = null; // help GC
+                        failed = false;
+                        return;
+                    }
+                    if (ShouldParkAfterFailedAcquire(p, node)) LockSupport.Park(this);
+                }
+            }
+            finally
+            {
+                if (failed) CancelAcquire(node);
+            }
+        }
+
+        /// <summary>
+        /// Acquires in exclusive timed mode.
+        /// </summary>
+        private bool DoAcquire(int arg, TimeSpan duration)
+        {
+            if (duration.Ticks <= 0) return false;
+            DateTime deadline = WaitTime.Deadline(duration);
+            Node node = AddWaiter(Node.EXCLUSIVE);
+            bool failed = true;
+            try
+            {
+                for (;;)
+                {
+                    Node p = node.Predecessor;
+                    if (p == _head && TryAcquire(arg))
+                    {
+                        SetHead(node);
+                        p.Next = null; // help GC
+                        failed = false;
+                        return true;
+                    }
+                    duration = deadline.Subtract(DateTime.UtcNow);
+                    if (duration.Ticks <= 0) return false;
+                    if (ShouldParkAfterFailedAcquire(p, node)) LockSupport.Park(this, duration);
+                }
+            }
+            finally
+            {
+                if (failed) CancelAcquire(node);
+            }
+        }
+
+        /// <summary>
+        /// Acquires in shared uninterruptible mode.
+        /// </summary>
+        private void DoAcquireShared(int arg)
+        {
+            Node node = AddWaiter(Node.SHARED);
+            bool failed = true;
+            try
+            {
+                bool interrupted = false;
+                for (;;)
+                {
+                    Node p = node.Predecessor;
+                    if (p == _head)
+                    {
+                        int r = TryAcquireShared(arg);
+                        if (r >= 0)
+                        {
+                            SetHeadAndPropagate(node, r);
+                            p.Next = null; // help GC
+                            if (interrupted) Thread.CurrentThread.Interrupt();
+                            failed = false;
+                            return;
+                        }
+                    }
+                    if (ShouldParkAfterFailedAcquire(p, node) && ParkAndCheckInterrupt(this))
+                        interrupted = true;
+                }
+            }
+            finally
+            {
+                if (failed) CancelAcquire(node);
+            }
+        }
+
+        /// <summary>
+        /// Acquires in shared interruptible mode.
+        /// </summary>
+        private void DoAcquireSharedInterruptibly(int arg)
+        {
+            Node node = AddWaiter(Node.SHARED);
+            bool failed = true;
+            try
+            {
+                for (;;)
+                {
+                    Node p = node.Predecessor;
+                    if (p == _head)
+                    {
+                        int r = TryAcquireShared(arg);
+                        if (r >= 0)
+                        {
+                            SetHeadAndPropagate(node, r);
+                            p.Next = null; // help GC
+                            failed = false;
+                            return;
+                        }
+                    }
+                    if (ShouldParkAfterFailedAcquire(p, node)) LockSupport.Park(this);
+                }
+            }
+            finally
+            {
+                if (failed) CancelAcquire(node);
+            }
+        }
+
+        /// <summary>
+        /// Acquires in shared timed mode.
+        /// </summary>
+        private bool DoAcquireShared(int arg, TimeSpan duration)
+        {
+            if (duration.Ticks <= 0) return false;
+            DateTime deadline = WaitTime.Deadline(duration);
+            Node node = AddWaiter(Node.SHARED);
+            bool failed = true;
+            try
+            {
+                for (;;)
+                {
+                    Node p = node.Predecessor;
+                    if (p == _head)
+                    {
+                        int r = TryAcquireShared(arg);
+                        if (r >= 0)
+                        {
+                            SetHeadAndPropagate(node, r);
+                            p.Next = null; // help GC
+                            failed = false;
+                            return true;
+                        }
+                    }
+                    duration = deadline.Subtract(DateTime.UtcNow);
+                    if (duration.Ticks <= 0) return false;
+                    if (ShouldParkAfterFailedAcquire(p, node)) LockSupport.Park(this, duration);
+                }
+            }
+            finally
+            {
+                if (failed) CancelAcquire(node);
+            }
+        }
+
+        #endregion
+
+        #region Main exported methods
+
+        /// <summary>
+        /// Attempts to acquire in exclusive mode. This method should query
+        /// if the state of the object permits it to be acquired in the
+        /// exclusive mode, and if so to acquire it.
+        /// </summary>
+        /// <remarks>
+        /// This method is always invoked by the thread performing acquire.
+        /// If this method reports failure, the acquire method may queue the
+        /// thread, if it is not already queued, until it is signalled by a
+        /// release from some other thread. The default implementation
+        /// throws <see cref="NotSupportedException"/>.
+        /// </remarks>
+        /// <param name="arg">
+        /// The acquire argument. This value is always the one passed to an
+        /// acquire method, or is the value saved on entry to a condition
+        /// wait. The value is otherwise uninterpreted and can represent
+        /// anything you like.
+        /// </param>
+        /// <returns><c>true</c> if successful.</returns>
+        /// <exception cref="SynchronizationLockException">
+        /// If acquiring would place this synchronizer in an illegal state.
+        /// </exception>
+        /// <exception cref="NotSupportedException">
+        /// If exclusive mode is not supported.
+        /// </exception>
+        protected virtual bool TryAcquire(int arg)
+        {
+            throw new NotSupportedException();
+        }
+
+        /// <summary>
+        /// Attempts to set the state to reflect a release in exclusive mode.
+        /// This method is always invoked by the thread performing release.
+        /// The default implementation throws <see cref="NotSupportedException"/>.
+        /// </summary>
+        /// <param name="arg">
+        /// The release argument. This value is always the one passed to a
+        /// release method, or the current state value upon entry to a
+        /// condition wait.
+        /// </param>
+        /// <returns>
+        /// <c>true</c> if this object is now in a fully released state, so
+        /// that any waiting threads may attempt to acquire; and <c>false</c>
+        /// otherwise.
+        /// </returns>
+        /// <exception cref="SynchronizationLockException">
+        /// If releasing would place this synchronizer in an illegal state.
+        /// </exception>
+        /// <exception cref="NotSupportedException">
+        /// If exclusive mode is not supported.
+        /// </exception>
+        protected virtual bool TryRelease(int arg)
+        {
+            throw new NotSupportedException();
+        }
+
+        /// <summary>
+        /// Attempts to acquire in shared mode. This method should query if
+        /// the state of the object permits it to be acquired in the shared
+        /// mode, and if so to acquire it. The default implementation throws
+        /// <see cref="NotSupportedException"/>.
+        /// </summary>
+        /// <param name="arg">The acquire argument.</param>
+        /// <returns>
+        /// A negative value on failure; zero if acquisition in shared mode
+        /// succeeded but no subsequent shared-mode acquire can succeed; and
+        /// a positive value if acquisition in shared mode succeeded and
+        /// subsequent shared-mode acquires might also succeed, in which
+        /// case a subsequent waiting thread must check availability.
+        /// </returns>
+        /// <exception cref="SynchronizationLockException">
+        /// If acquiring would place this synchronizer in an illegal state.
+        /// </exception>
+        /// <exception cref="NotSupportedException">
+        /// If shared mode is not supported.
+        /// </exception>
+        protected virtual int TryAcquireShared(int arg)
+        {
+            throw new NotSupportedException();
+        }
+
+        /// <summary>
+        /// Attempts to set the state to reflect a release in shared mode.
+        /// This method is always invoked by the thread performing release.
+        /// The default implementation throws <see cref="NotSupportedException"/>.
+        /// </summary>
+        /// <param name="arg">The release argument.</param>
+        /// <returns>
+        /// <c>true</c> if this release of shared mode may permit a waiting
+        /// acquire (shared or exclusive) to succeed; and <c>false</c>
+        /// otherwise.
+        /// </returns>
+        /// <exception cref="SynchronizationLockException">
+        /// If releasing would place this synchronizer in an illegal state.
+        /// </exception>
+        /// <exception cref="NotSupportedException">
+        /// If shared mode is not supported.
+        /// </exception>
+        protected virtual bool TryReleaseShared(int arg)
+        {
+            throw new NotSupportedException();
+        }
+
+        /// <summary>
+        /// Returns <c>true</c> if synchronization is held exclusively with
+        /// respect to the current (calling) thread. This method is invoked
+        /// upon each call to a non-waiting <see cref="ConditionObject"/>
+        /// method. The default implementation throws
+        /// <see cref="NotSupportedException"/>.
+        /// </summary>
+        /// <returns>
+        /// <c>true</c> if synchronization is held exclusively;
+        /// <c>false</c> otherwise.
+        /// </returns>
+        /// <exception cref="NotSupportedException">
+        /// If conditions are not supported.
+        /// </exception>
+        protected internal virtual bool IsHeldExclusively()
+        {
+            throw new NotSupportedException();
+        }
+
+        /// <summary>
+        /// Acquires in exclusive mode, ignoring interrupts. Implemented by
+        /// first invoking at least once <see cref="TryAcquire(int)"/>,
+        /// returning on success. Otherwise the thread is queued, possibly
+        /// repeatedly blocking and unblocking, invoking
+        /// <see cref="TryAcquire(int)"/> until success. An interrupt
+        /// received while waiting is re-asserted on return.
+        /// </summary>
+        /// <param name="arg">The acquire argument.</param>
+        public void Acquire(int arg)
+        {
+            if (!TryAcquire(arg) && AcquireQueued(AddWaiter(Node.EXCLUSIVE), arg))
+                Thread.CurrentThread.Interrupt();
+        }
+
+        /// <summary>
+        /// Acquires in exclusive mode, aborting if interrupted. Implemented
+        /// by invoking at least once <see cref="TryAcquire(int)"/>,
+        /// returning on success. Otherwise the thread is queued, possibly
+        /// repeatedly blocking and unblocking, invoking
+        /// <see cref="TryAcquire(int)"/> until success or the thread is
+        /// interrupted.
+        /// </summary>
+        /// <param name="arg">The acquire argument.</param>
+        /// <exception cref="ThreadInterruptedException">
+        /// If the current thread is interrupted.
+        /// </exception>
+        public void AcquireInterruptibly(int arg)
+        {
+            if (!TryAcquire(arg)) DoAcquireInterruptibly(arg);
+        }
+
+        /// <summary>
+        /// Attempts to acquire in exclusive mode, aborting if interrupted,
+        /// and failing if the given timeout elapses.
+        /// </summary>
+        /// <param name="arg">The acquire argument.</param>
+        /// <param name="duration">The maximum time to wait.</param>
+        /// <returns><c>true</c> if acquired; <c>false</c> if timed out.</returns>
+        /// <exception cref="ThreadInterruptedException">
+        /// If the current thread is interrupted.
+        /// </exception>
+        public bool TryAcquire(int arg, TimeSpan duration)
+        {
+            return TryAcquire(arg) || DoAcquire(arg, duration);
+        }
+
+        /// <summary>
+        /// Releases in exclusive mode. Implemented by unblocking one or more
+        /// threads if <see cref="TryRelease"/> returns <c>true</c>.
+        /// </summary>
+        /// <param name="arg">The release argument.</param>
+        /// <returns>The value returned from <see cref="TryRelease"/>.</returns>
+        public bool Release(int arg)
+        {
+            if (TryRelease(arg))
+            {
+                Node h = _head;
+                if (h != null && h.WaitStatus != 0) UnparkSuccessor(h);
+                return true;
+            }
+            return false;
+        }
+
+        /// <summary>
+        /// Acquires in shared mode, ignoring interrupts. Implemented by
+        /// first invoking at least once <see cref="TryAcquireShared(int)"/>,
+        /// returning on success. Otherwise the thread is queued, possibly
+        /// repeatedly blocking and unblocking, invoking
+        /// <see cref="TryAcquireShared(int)"/> until success.
+        /// </summary>
+        /// <param name="arg">The acquire argument.</param>
+        public void AcquireShared(int arg)
+        {
+            if (TryAcquireShared(arg) < 0) DoAcquireShared(arg);
+        }
+
+        /// <summary>
+        /// Acquires in shared mode, aborting if interrupted.
+        /// </summary>
+        /// <param name="arg">The acquire argument.</param>
+        /// <exception cref="ThreadInterruptedException">
+        /// If the current thread is interrupted.
+        /// </exception>
+        public void AcquireSharedInterruptibly(int arg)
+        {
+            if (TryAcquireShared(arg) < 0) DoAcquireSharedInterruptibly(arg);
+        }
+
+        /// <summary>
+        /// Attempts to acquire in shared mode, aborting if interrupted, and
+        /// failing if the given timeout elapses.
+        /// </summary>
+        /// <param name="arg">The acquire argument.</param>
+        /// <param name="duration">The maximum time to wait.</param>
+        /// <returns><c>true</c> if acquired; <c>false</c> if timed out.</returns>
+        /// <exception cref="ThreadInterruptedException">
+        /// If the current thread is interrupted.
+        /// </exception>
+        public bool TryAcquireShared(int arg, TimeSpan duration)
+        {
+            return TryAcquireShared(arg) >= 0 || DoAcquireShared(arg, duration);
+        }
+
+        /// <summary>
+        /// Releases in shared mode. Implemented by unblocking one or more
+        /// threads if <see cref="TryReleaseShared"/> returns <c>true</c>.
+        /// </summary>
+        /// <param name="arg">The release argument.</param>
+        /// <returns>The value returned from <see cref="TryReleaseShared"/>.</returns>
+        public bool ReleaseShared(int arg)
+        {
+            if (TryReleaseShared(arg))
+            {
+                DoReleaseShared();
+                return true;
+            }
+            return false;
+        }
+
+        #endregion
+
+        #region Queue inspection methods
+
+        /// <summary>
+        /// Queries whether any threads are waiting to acquire. Note that
+        /// because cancellations due to interrupts and timeouts may occur
+        /// at any time, a <c>true</c> return does not guarantee that any
+        /// other thread will ever acquire.
+        /// </summary>
+        public bool HasQueuedThreads
+        {
+            get { return _head != _tail; }
+        }
+
+        /// <summary>
+        /// Queries whether any threads have ever contended to acquire this
+        /// synchronizer; that is if an acquire method has ever blocked.
+        /// </summary>
+        public bool HasContended
+        {
+            get { return _head != null; }
+        }
+
+        /// <summary>
+        /// Returns the first (longest-waiting) thread in the queue, or
+        /// <c>null</c> if no threads are currently queued.
+        /// </summary>
+        public Thread FirstQueuedThread
+        {
+            get
+            {
+                if (_head == _tail) return null;
+                // Traverse from tail as next links may be stale.
+                Thread first = null;
+                for (Node p = _tail; p != null && p != _head; p = p.Prev)
+                {
+                    Thread t = p.Thread;
+                    if (t != null) first = t;
+                }
+                return first;
+            }
+        }
+
+        /// <summary>
+        /// Returns <c>true</c> if the given thread is currently queued.
+        /// </summary>
+        /// <param name="thread">The thread.</param>
+        /// <returns><c>true</c> if the given thread is on the queue.</returns>
+        /// <exception cref="ArgumentNullException">
+        /// If <paramref name="thread"/> is <c>null</c>.
+        /// </exception>
+        public bool IsQueued(Thread thread)
+        {
+            if (thread == null) throw new ArgumentNullException("thread");
+            for (Node p = _tail; p != null; p = p.Prev)
+                if (p.Thread == thread) return true;
+            return false;
+        }
+
+        /// <summary>
+        /// Returns <c>true</c> if the apparent first queued thread, if one
+        /// exists, is waiting in exclusive mode. If this method returns
+        /// <c>true</c>, and the current thread is attempting to acquire in
+        /// shared mode (that is, this method is invoked from
+        /// <see cref="TryAcquireShared(int)"/>) then it is guaranteed that
+        /// the current thread is not the first queued thread. Used only as a
+        /// heuristic in <see cref="ReentrantReadWriteLock"/>.
+        /// </summary>
+        internal bool ApparentlyFirstQueuedIsExclusive
+        {
+            get
+            {
+                Node h, s;
+                return (h = _head) != null && (s = h.Next) != null && !s.IsShared && s.Thread != null;
+            }
+        }
+
+        /// <summary>
+        /// Queries whether any threads have been waiting to acquire longer
+        /// than the current thread. This can be used by a fair synchronizer
+        /// to avoid barging: its <see cref="TryAcquire(int)"/> should return
+        /// <c>false</c> if this property is <c>true</c> and the current
+        /// thread is not reentrantly acquiring.
+        /// </summary>
+        public bool HasQueuedPredecessors
+        {
+            get
+            {
+                // The correctness of this depends on head being initialized
+                // before tail and on head.Next being accurate if the current
+                // thread is first in queue.
+                Node t = _tail; // Read fields in reverse initialization order
+                Node h = _head;
+                Node s;
+                return h != t && ((s = h.Next) == null || s.Thread != Thread.CurrentThread);
+            }
+        }
+
+        /// <summary>
+        /// Returns an estimate of the number of threads waiting to acquire.
+        /// This method is designed for use in monitoring system state, not
+        /// for synchronization control.
+        /// </summary>
+        public int QueueLength
+        {
+            get
+            {
+                int n = 0;
+                for (Node p = _tail; p != null; p = p.Prev)
+                    if (p.Thread != null) ++n;
+                return n;
+            }
+        }
+
+        /// <summary>
+        /// Returns a collection containing threads that may be waiting to
+        /// acquire. The returned collection is only a best-effort estimate.
+        /// </summary>
+        public ICollection<Thread> QueuedThreads
+        {
+            get { return GetQueuedThreads(null); }
+        }
+
+        /// <summary>
+        /// Returns a collection containing threads that may be waiting to
+        /// acquire in exclusive mode.
+        /// </summary>
+        public ICollection<Thread> ExclusiveQueuedThreads
+        {
+            get { return GetQueuedThreads(false); }
+        }
+
+        /// <summary>
+        /// Returns a collection containing threads that may be waiting to
+        /// acquire in shared mode.
+        /// </summary>
+        public ICollection<Thread> SharedQueuedThreads
+        {
+            get { return GetQueuedThreads(true); }
+        }
+
+        private ICollection<Thread> GetQueuedThreads(bool? shared)
+        {
+            List<Thread> list = new List<Thread>();
+            for (Node p = _tail; p != null; p = p.Prev)
+            {
+                if (shared == null || p.IsShared == shared.Value)
+                {
+                    Thread t = p.Thread;
+                    if (t != null) list.Add(t);
+                }
+            }
+            return list;
+        }
+
+        /// <summary>
+        /// Returns a string identifying this synchronizer, as well as its
+        /// state. The state, in brackets, includes the string "State ="
+        /// followed by the current value of <see cref="State"/>, and either
+        /// "nonempty" or "empty" depending on whether the queue is empty.
+        /// </summary>
+        /// <returns>A string identifying this synchronizer, as well as its state.</returns>
+        public override string ToString()
+        {
+            return base.ToString() + "[State = " + State + ", " +
+                   (HasQueuedThreads ? "non" : "") + "empty queue]";
+        }
+
+        #endregion
+
+        #region Internal support methods for Conditions
+
+        /// <summary>
+        /// Returns <c>true</c> if a node, always one that was initially
+        /// placed on a condition queue, is now waiting to reacquire on sync
+        /// queue.
+        /// </summary>
+        private bool IsOnSyncQueue(Node node)
+        {
+            if (node.WaitStatus == Node.CONDITION || node.Prev == null) return false;
+            if (node.Next != null) return true; // If has successor, it must be on queue
+            // node.Prev can be non-null, but not yet on queue because the
+            // CAS to place it on queue can fail. So we have to traverse from
+            // tail to make sure it actually made it.
+            return FindNodeFromTail(node);
+        }
+
+        private bool FindNodeFromTail(Node node)
+        {
+            for (Node t = _tail; t != null; t = t.Prev)
+                if (t == node) return true;
+            return false;
+        }
+
+        /// <summary>
+        /// Transfers a node from a condition queue onto sync queue.
+        /// </summary>
+        /// <returns>
+        /// <c>true</c> if successfully transferred (else the node was
+        /// cancelled before signal).
+        /// </returns>
+        private bool TransferForSignal(Node node)
+        {
+            // If cannot change waitStatus, the node has been cancelled.
+            if (!node.CompareAndSetWaitStatus(Node.CONDITION, 0)) return false;
+
+            // Splice onto queue and try to set waitStatus of predecessor to
+            // indicate that thread is (probably) waiting. If cancelled or
+            // attempt to set waitStatus fails, wake up to resync.
+            Node p = Enq(node);
+            int ws = p.WaitStatus;
+            if (ws > 0 || !p.CompareAndSetWaitStatus(ws, Node.SIGNAL)) node.Unpark();
+            return true;
+        }
+
+        /// <summary>
+        /// Transfers node, if necessary, to sync queue after a cancelled
+        /// wait.
+        /// </summary>
+        /// <returns><c>true</c> if cancelled before the node was signalled.</returns>
+        private bool TransferAfterCancelledWait(Node node)
+        {
+            if (node.CompareAndSetWaitStatus(Node.CONDITION, 0))
+            {
+                Enq(node);
+                return true;
+            }
+            // If we lost out to a signal, then we can't proceed until it
+            // finishes its enq. Cancelling during an incomplete transfer is
+            // both rare and transient, so just spin.
+            while (!IsOnSyncQueue(node)) Thread.Sleep(0);
+            return false;
+        }
+
+        /// <summary>
+        /// Invokes release with current state value; returns saved state.
+        /// Cancels node and throws exception on failure.
+        /// </summary>
+        private int FullyRelease(Node node)
+        {
+            bool failed = true;
+            try
+            {
+                int savedState = State;
+                if (Release(savedState))
+                {
+                    failed = false;
+                    return savedState;
+                }
+                throw new SynchronizationLockException();
+            }
+            finally
+            {
+                if (failed) node.WaitStatus = Node.CANCELLED;
+            }
+        }
+
+        #endregion
+
+        #region Instrumentation methods for conditions
+
+        /// <summary>
+        /// Queries whether the given <see cref="ConditionObject"/> uses this
+        /// synchronizer as its lock.
+        /// </summary>
+        /// <param name="condition">The condition.</param>
+        /// <returns><c>true</c> if owned.</returns>
+        /// <exception cref="ArgumentNullException">
+        /// If <paramref name="condition"/> is <c>null</c>.
+        /// </exception>
+        public bool Owns(ConditionObject condition)
+        {
+            if (condition == null) throw new ArgumentNullException("condition");
+            return condition.IsOwnedBy(this);
+        }
+
+        /// <summary>
+        /// Queries whether any threads are waiting on the given condition
+        /// associated with this synchronizer.
+        /// </summary>
+        /// <param name="condition">The condition.</param>
+        /// <returns><c>true</c> if there are any waiting threads.</returns>
+        /// <exception cref="ArgumentNullException">
+        /// If <paramref name="condition"/> is <c>null</c>.
+        /// </exception>
+        /// <exception cref="ArgumentException">
+        /// If the given condition is not associated with this synchronizer.
+        /// </exception>
+        /// <exception cref="SynchronizationLockException">
+        /// If exclusive synchronization is not held.
+        /// </exception>
+        public bool HasWaiters(ConditionObject condition)
+        {
+            if (!Owns(condition)) throw new ArgumentException("Not owner", "condition");
+            return condition.HasWaiters;
+        }
+
+        /// <summary>
+        /// Returns an estimate of the number of threads waiting on the given
+        /// condition associated with this synchronizer.
+        /// </summary>
+        /// <param name="condition">The condition.</param>
+        /// <returns>The estimated number of waiting threads.</returns>
+        /// <exception cref="ArgumentNullException">
+        /// If <paramref name="condition"/> is <c>null</c>.
+        /// </exception>
+        /// <exception cref="ArgumentException">
+        /// If the given condition is not associated with this synchronizer.
+        /// </exception>
+        /// <exception cref="SynchronizationLockException">
+        /// If exclusive synchronization is not held.
+        /// </exception>
+        public int GetWaitQueueLength(ConditionObject condition)
+        {
+            if (!Owns(condition)) throw new ArgumentException("Not owner", "condition");
+            return condition.WaitQueueLength;
+        }
+
+        /// <summary>
+        /// Returns a collection containing those threads that may be
+        /// waiting on the given condition associated with this synchronizer.
+        /// </summary>
+        /// <param name="condition">The condition.</param>
+        /// <returns>The collection of threads.</returns>
+        /// <exception cref="ArgumentNullException">
+        /// If <paramref name="condition"/> is <c>null</c>.
+        /// </exception>
+        /// <exception cref="ArgumentException">
+        /// If the given condition is not associated with this synchronizer.
+        /// </exception>
+        /// <exception cref="SynchronizationLockException">
+        /// If exclusive synchronization is not held.
+        /// </exception>
+        public ICollection<Thread> GetWaitingThreads(ConditionObject condition)
+        {
+            if (!Owns(condition)) throw new ArgumentException("Not owner", "condition");
+            return condition.WaitingThreads;
+        }
+
+        #endregion
+
+        /// <summary>
+        /// Condition implementation for an <see cref="AbstractQueuedSynchronizer"/>
+        /// serving as the basis of an <see cref="ILock"/> implementation.
+        /// </summary>
+        /// <remarks>
+        /// Method documentation for this class describes mechanics, not
+        /// behavioral specifications from the point of view of lock and
+        /// condition users. This class is serializable, but all fields are
+        /// transient, so deserialized conditions have no waiters.
+        /// </remarks>
+        [Serializable]
+        public class ConditionObject : ICondition
+        {
+            /// <summary>Mode meaning to reinterrupt on exit from wait.</summary>
+            private const int REINTERRUPT = 1;
+
+            /// <summary>Mode meaning to throw on exit from wait.</summary>
+            private const int THROW_IE = -1;
+
+            private readonly AbstractQueuedSynchronizer _sync;
+
+            /// <summary>First node of condition queue.</summary>
+            [NonSerialized]
+            private Node _firstWaiter;
+
+            /// <summary>Last node of condition queue.</summary>
+            [NonSerialized]
+            private Node _lastWaiter;
+
+            /// <summary>
+            /// Creates a new <see cref="ConditionObject"/> instance.
+            /// </summary>
+            /// <param name="sync">The synchronizer that owns this condition.</param>
+            /// <exception cref="ArgumentNullException">
+            /// If <paramref name="sync"/> is <c>null</c>.
+            /// </exception>
+            public ConditionObject(AbstractQueuedSynchronizer sync)
+            {
+                if (sync == null) throw new ArgumentNullException("sync");
+                _sync = sync;
+            }
+
+            #region Internal methods
+
+            /// <summary>
+            /// Adds a new waiter to wait queue.
+            /// </summary>
+            private Node AddConditionWaiter()
+            {
+                Node t = _lastWaiter;
+                // If lastWaiter is cancelled, clean out.
+                if (t != null && t.WaitStatus != Node.CONDITION)
+                {
+                    UnlinkCancelledWaiters();
+                    t = _lastWaiter;
+                }
+                Node node = new Node(Thread.CurrentThread, Node.CONDITION);
+                if (t == null) _firstWaiter = node;
+                else t.NextWaiter = node;
+                _lastWaiter = node;
+                return node;
+            }
+
+            /// <summary>
+            /// Removes and transfers nodes until hit non-cancelled one or null.
+            /// </summary>
+            private void DoSignal(Node first)
+            {
+                do
+                {
+                    if ((_firstWaiter = first.NextWaiter) == null) _lastWaiter = null;
+                    first.NextWaiter = null;
+                } while (!_sync.TransferForSignal(first) && (first = _firstWaiter) != null);
+            }
+
+            /// <summary>
+            /// Removes and transfers all nodes.
+            /// </summary>
+            private void DoSignalAll(Node first)
+            {
+                _lastWaiter = _firstWaiter = null;
+                do
+                {
+                    Node next = first.NextWaiter;
+                    first.NextWaiter = null;
+                    _sync.TransferForSignal(first);
+                    first = next;
+                } while (first != null);
+            }
+
+            /// <summary>
+            /// Unlinks cancelled waiter nodes from condition queue. Called
+            /// only while holding lock.
+            /// </summary>
+            private void UnlinkCancelledWaiters()
+            {
+                Node t = _firstWaiter;
+                Node trail = null;
+                while (t != null)
+                {
+                    Node next = t.NextWaiter;
+                    if (t.WaitStatus != Node.CONDITION)
+                    {
+                        t.NextWaiter = null;
+                        if (trail == null) _firstWaiter = next;
+                        else trail.NextWaiter = next;
+                        if (next == null) _lastWaiter = trail;
+                    }
+                    else
+                        trail = t;
+                    t = next;
+                }
+            }
+
+            private void CheckHeldExclusively()
+            {
+                if (!_sync.IsHeldExclusively()) throw new SynchronizationLockException();
+            }
+
+            /// <summary>
+            /// Throws the interrupt, re-asserts it, or does nothing,
+            /// depending on mode.
+            /// </summary>
+            private static void ReportInterruptAfterWait(int interruptMode, ThreadInterruptedException e)
+            {
+                if (interruptMode == THROW_IE)
+                    throw SystemExtensions.PreserveStackTrace(e);
+                if (interruptMode == REINTERRUPT)
+                    Thread.CurrentThread.Interrupt();
+            }
+
+            #endregion
+
+            #region Public methods
+
+            /// <summary>
+            /// Moves the longest-waiting thread, if one exists, from the
+            /// wait queue for this condition to the wait queue for the
+            /// owning lock.
+            /// </summary>
+            /// <exception cref="SynchronizationLockException">
+            /// If <see cref="IsHeldExclusively"/> returns <c>false</c>.
+            /// </exception>
+            public void Signal()
+            {
+                CheckHeldExclusively();
+                Node first = _firstWaiter;
+                if (first != null) DoSignal(first);
+            }
+
+            /// <summary>
+            /// Moves all threads from the wait queue for this condition to
+            /// the wait queue for the owning lock.
+            /// </summary>
+            /// <exception cref="SynchronizationLockException">
+            /// If <see cref="IsHeldExclusively"/> returns <c>false</c>.
+            /// </exception>
+            public void SignalAll()
+            {
+                CheckHeldExclusively();
+                Node first = _firstWaiter;
+                if (first != null) DoSignalAll(first);
+            }
+
+            /// <summary>
+            /// Implements uninterruptible condition wait: saves lock state,
+            /// releases it, blocks until signalled and reacquires the lock
+            /// by invoking specialized version of
+            /// <see cref="AbstractQueuedSynchronizer.Acquire"/> with saved
+            /// state as argument. An interrupt received while waiting is
+            /// re-asserted on return.
+            /// </summary>
+            public void AwaitUninterruptibly()
+            {
+                Node node = AddConditionWaiter();
+                int savedState = _sync.FullyRelease(node);
+                bool interrupted = false;
+                while (!_sync.IsOnSyncQueue(node))
+                {
+                    if (ParkAndCheckInterrupt(this)) interrupted = true;
+                }
+                if (_sync.AcquireQueued(node, savedState) || interrupted)
+                    Thread.CurrentThread.Interrupt();
+            }
+
+            /// <summary>
+            /// Implements interruptible condition wait: saves lock state,
+            /// releases it, blocks until signalled or interrupted and
+            /// reacquires the lock with saved state as argument. If
+            /// interrupted while blocked, throws
+            /// <see cref="ThreadInterruptedException"/> after reacquiring.
+            /// </summary>
+            /// <exception cref="ThreadInterruptedException">
+            /// If the current thread is interrupted.
+            /// </exception>
+            public void Await()
+            {
+                Node node = AddConditionWaiter();
+                int savedState = _sync.FullyRelease(node);
+                int interruptMode = 0;
+                ThreadInterruptedException interrupt = null;
+                while (!_sync.IsOnSyncQueue(node))
+                {
+                    try
+                    {
+                        LockSupport.Park(this);
+                    }
+                    catch (ThreadInterruptedException e)
+                    {
+                        interrupt = e;
+                        interruptMode = _sync.TransferAfterCancelledWait(node) ? THROW_IE : REINTERRUPT;
+                        break;
+                    }
+                }
+                if (_sync.AcquireQueued(node, savedState) && interruptMode != THROW_IE)
+                    interruptMode = REINTERRUPT;
+                if (node.NextWaiter != null) // clean up if cancelled
+                    UnlinkCancelledWaiters();
+                if (interruptMode != 0) ReportInterruptAfterWait(interruptMode, interrupt);
+            }
+
+            /// <summary>
+            /// Implements timed condition wait.
+            /// </summary>
+            /// <param name="timeSpan">The maximum time to wait.</param>
+            /// <returns>
+            /// <c>false</c> if the waiting time detectably elapsed before
+            /// return from the method, else <c>true</c>.
+            /// </returns>
+            /// <exception cref="ThreadInterruptedException">
+            /// If the current thread is interrupted.
+            /// </exception>
+            public bool Await(TimeSpan timeSpan)
+            {
+                return AwaitUntil(WaitTime.Deadline(timeSpan));
+            }
+
+            /// <summary>
+            /// Implements absolute timed condition wait.
+            /// </summary>
+            /// <param name="deadline">The absolute UTC time to wait until.</param>
+            /// <returns>
+            /// <c>false</c> if the deadline has elapsed upon return, else
+            /// <c>true</c>.
+            /// </returns>
+            /// <exception cref="ThreadInterruptedException">
+            /// If the current thread is interrupted.
+            /// </exception>
+            public bool AwaitUntil(DateTime deadline)
+            {
+                Node node = AddConditionWaiter();
+                int savedState = _sync.FullyRelease(node);
+                bool timedout = false;
+                int interruptMode = 0;
+                ThreadInterruptedException interrupt = null;
+                while (!_sync.IsOnSyncQueue(node))
+                {
+                    TimeSpan duration = deadline.Subtract(DateTime.UtcNow);
+                    if (duration.Ticks <= 0)
+                    {
+                        timedout = _sync.TransferAfterCancelledWait(node);
+                        break;
+                    }
+                    try
+                    {
+                        LockSupport.Park(this, duration);
+                    }
+                    catch (ThreadInterruptedException e)
+                    {
+                        interrupt = e;
+                        interruptMode = _sync.TransferAfterCancelledWait(node) ? THROW_IE : REINTERRUPT;
+                        break;
+                    }
+                }
+                if (_sync.AcquireQueued(node, savedState) && interruptMode != THROW_IE)
+                    interruptMode = REINTERRUPT;
+                if (node.NextWaiter != null) UnlinkCancelledWaiters();
+                if (interruptMode != 0) ReportInterruptAfterWait(interruptMode, interrupt);
+                return !timedout;
+            }
+
+            #endregion
+
+            #region Support for instrumentation
+
+            /// <summary>
+            /// Returns <c>true</c> if this condition was created by the
+            /// given synchronization object.
+            /// </summary>
+            internal bool IsOwnedBy(AbstractQueuedSynchronizer sync)
+            {
+                return sync == _sync;
+            }
+
+            /// <summary>
+            /// Queries whether any threads are waiting on this condition.
+            /// </summary>
+            /// <exception cref="SynchronizationLockException">
+            /// If <see cref="IsHeldExclusively"/> returns <c>false</c>.
+            /// </exception>
+            protected internal bool HasWaiters
+            {
+                get
+                {
+                    CheckHeldExclusively();
+                    for (Node w = _firstWaiter; w != null; w = w.NextWaiter)
+                        if (w.WaitStatus == Node.CONDITION) return true;
+                    return false;
+                }
+            }
+
+            /// <summary>
+            /// Returns an estimate of the number of threads waiting on this
+            /// condition.
+            /// </summary>
+            /// <exception cref="SynchronizationLockException">
+            /// If <see cref="IsHeldExclusively"/> returns <c>false</c>.
+            /// </exception>
+            protected internal int WaitQueueLength
+            {
+                get
+                {
+                    CheckHeldExclusively();
+                    int n = 0;
+                    for (Node w = _firstWaiter; w != null; w = w.NextWaiter)
+                        if (w.WaitStatus == Node.CONDITION) ++n;
+                    return n;
+                }
+            }
+
+            /// <summary>
+            /// Returns a collection containing those threads that may be
+            /// waiting on this condition.
+            /// </summary>
+            /// <exception cref="SynchronizationLockException">
+            /// If <see cref="IsHeldExclusively"/> returns <c>false</c>.
+            /// </exception>
+            protected internal ICollection<Thread> WaitingThreads
+            {
+                get
+                {
+                    CheckHeldExclusively();
+                    List<Thread> list = new List<Thread>();
+                    for (Node w = _firstWaiter; w != null; w = w.NextWaiter)
+                    {
+                        if (w.WaitStatus == Node.CONDITION)
+                        {
+                            Thread t = w.Thread;
+                            if (t != null) list.Add(t);
+                        }
+                    }
+                    return list;
+                }
+            }
+
+            #endregion
+        }
+
+        #region CAS support
+
+#pragma warning disable 420 // a reference to a volatile field will not be treated as volatile
+        private bool CompareAndSetHead(Node update)
+        {
+            return Interlocked.CompareExchange(ref _head, update, null) == null;
+        }
+
+        private bool CompareAndSetTail(Node expect, Node update)
+        {
+            return Interlocked.CompareExchange(ref _tail, update, expect) == expect;
+        }
+#pragma warning restore 420
+
+        #endregion
+
+        /// <summary>
+        /// Wait queue node class.
+        /// </summary>
+        /// <remarks>
+        /// <para>
+        /// A node of the CLH queue; it is also used, with status
+        /// <see cref="CONDITION"/>, as a node of the condition queues. Each
+        /// node records its thread, the status of that thread and the links
+        /// to its neighbours. Prev links are used primarily to handle
+        /// cancellation; the next link is an optimization that may be stale,
+        /// which is why successors are searched backwards from the tail when
+        /// a next link appears to be null.
+        /// </para>
+        /// <para>
+        /// Nodes are only ever created by the thread they describe, which
+        /// parks with <see cref="LockSupport"/>. The node keeps that
+        /// thread's parker, so a release wakes exactly the successor and
+        /// nothing else.
+        /// </para>
+        /// </remarks>
+        internal sealed class Node : LockSupport.ParkingNode
+        {
+            /// <summary>Marker to indicate a node is waiting in shared mode.</summary>
+            internal static readonly Node SHARED = new Node();
+
+            /// <summary>Marker to indicate a node is waiting in exclusive mode.</summary>
+            internal static readonly Node EXCLUSIVE = null;
+
+            /// <summary>WaitStatus value to indicate thread has cancelled.</summary>
+            internal const int CANCELLED = 1;
+
+            /// <summary>WaitStatus value to indicate successor's thread needs unparking.</summary>
+            internal const int SIGNAL = -1;
+
+            /// <summary>WaitStatus value to indicate thread is waiting on condition.</summary>
+            internal const int CONDITION = -2;
+
+            /// <summary>WaitStatus value to indicate the next AcquireShared should unconditionally propagate.</summary>
+            internal const int PROPAGATE = -3;
+
+            private int _waitStatus;
+
+            /// <summary>
+            /// Link to predecessor node that current node/thread relies on
+            /// for checking waitStatus.
+            /// </summary>
+            internal volatile Node Prev;
+
+            /// <summary>
+            /// Link to the successor node that the current node/thread
+            /// unparks upon release.
+            /// </summary>
+            internal volatile Node Next;
+
+            /// <summary>
+            /// The thread that enqueued this node. Nulled out after use.
+            /// </summary>
+            internal volatile Thread Thread;
+
+            /// <summary>
+            /// Link to next node waiting on condition, or the special value
+            /// <see cref="SHARED"/>.
+            /// </summary>
+            internal Node NextWaiter;
+
+            /// <summary>Used to establish initial head or SHARED marker.</summary>
+            internal Node()
+            {
+            }
+
+            /// <summary>Used by AddWaiter.</summary>
+            internal Node(Thread thread, Node mode)
+            {
+                NextWaiter = mode;
+                Thread = thread;
+                CaptureParker();
+            }
+
+            /// <summary>Used by Condition.</summary>
+            internal Node(Thread thread, int waitStatus)
+            {
+                _waitStatus = waitStatus;
+                Thread = thread;
+                CaptureParker();
+            }
+
+            /// <summary>
+            /// Returns <c>true</c> if node is waiting in shared mode.
+            /// </summary>
+            internal bool IsShared
+            {
+                get { return NextWaiter == SHARED; }
+            }
+
+            /// <summary>
+            /// Returns previous node. The null check could be elided, but
+            /// is present to help the VM.
+            /// </summary>
+            /// <exception cref="NullReferenceException">If null.</exception>
+            internal Node Predecessor
+            {
+                get
+                {
+                    Node p = Prev;
+                    if (p == null) throw new NullReferenceException();
+                    return p;
+                }
+            }
+
+            internal int WaitStatus
+            {
+                get { return Thread.VolatileRead(ref _waitStatus); }
+                set { Thread.VolatileWrite(ref _waitStatus, value); }
+            }
+
+            internal bool CompareAndSetWaitStatus(int expect, int update)
+            {
+                return Interlocked.CompareExchange(ref _waitStatus, update, expect) == expect;
+            }
+
+#pragma warning disable 420 // a reference to a volatile field will not be treated as volatile
+            internal bool CompareAndSetNext(Node expect, Node update)
+            {
+                return Interlocked.CompareExchange(ref Next, update, expect) == expect;
+            }
+#pragma warning restore 420
+        }
+    }
+}
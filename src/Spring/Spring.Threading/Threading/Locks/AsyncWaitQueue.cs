@@ -0,0 +1,316 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+using System;
+using System.Collections.Generic;
+using System.Threading;
+using Spring.Threading.Future;
+
+namespace Spring.Threading.Locks
+{
+    /// <summary>
+    /// A FIFO queue of asynchronous acquisition requests, shared by the
+    /// synchronizers that offer non-blocking acquire variants. A waiting
+    /// request costs one queued node instead of a parked thread.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// The owning synchronizer supplies two delegates: a non-blocking
+    /// attempt to acquire on behalf of a request, and the inverse that
+    /// gives back an acquisition a request could not use. Whenever the
+    /// synchronizer may have become available it calls
+    /// <see cref="Dispatch"/>, which grants requests from the head of the
+    /// queue for as long as the attempt succeeds. A granted request hands
+    /// its callback to the request's <see cref="IExecutor"/>. With a
+    /// synchronous executor the callback runs on the releasing thread.
+    /// Requests granted while that thread is already starting a callback
+    /// are started by the outer dispatch once the callback returns, so a
+    /// chain of callbacks that each release the synchronizer runs in a
+    /// loop instead of one nested call per request.
+    /// </para>
+    /// <para>
+    /// Each request is represented by an <see cref="IFuture{T}"/>.
+    /// Cancelling it before its callback started withdraws the request
+    /// and gives back anything acquired for it. Once the callback runs it
+    /// owns the acquisition.
+    /// </para>
+    /// <para>
+    /// NOTE: this class is NOT present in java.util.concurrent.
+    /// </para>
+    /// </remarks>
+    internal sealed class AsyncWaitQueue //NET_ONLY
+    {
+        /// <summary>
+        /// Granted requests waiting for the outermost <see cref="Dispatch"/>
+        /// on this thread to start them, or <c>null</c> if the thread is not
+        /// starting any.
+        /// </summary>
+        [ThreadStatic] private static Queue<Waiter> _toStart;
+
+        private readonly Func<int, bool> _tryAcquire;
+        private readonly Action<int> _release;
+
+        /// <summary>
+        /// Guards the list, which is only ever touched by asynchronous
+        /// requests and the releases that find them waiting.
+        /// </summary>
+        private readonly object _listLock = new object();
+        private Waiter _head;
+        private Waiter _tail;
+        private volatile int _count;
+
+        /// <summary>
+        /// Creates a queue for the synchronizer represented by the given
+        /// delegates.
+        /// </summary>
+        /// <param name="tryAcquire">
+        /// Attempts to acquire the given argument without blocking.
+        /// </param>
+        /// <param name="release">
+        /// Gives back an acquisition of the given argument that was made by
+        /// <paramref name="tryAcquire"/> but not used.
+        /// </param>
+        internal AsyncWaitQueue(Func<int, bool> tryAcquire, Action<int> release)
+        {
+            _tryAcquire = tryAcquire;
+            _release = release;
+        }
+
+        /// <summary>
+        /// Whether there are requests that are not yet granted. Cheap
+        /// enough to guard <see cref="Dispatch"/> on every release.
+        /// </summary>
+        internal bool HasWaiters
+        {
+            get { return _count > 0; }
+        }
+
+        /// <summary>
+        /// The number of requests that are not yet granted, including
+        /// cancelled ones that have not yet been unlinked.
+        /// </summary>
+        internal int Count
+        {
+            get { return _count; }
+        }
+
+        /// <summary>
+        /// Enqueues a request for <paramref name="arg"/> and grants it right
+        /// away if the synchronizer is available.
+        /// </summary>
+        internal IFuture<T> Enqueue<T>(int arg, IExecutor executor, Func<T> callback)
+        {
+            if (executor == null) throw new ArgumentNullException("executor");
+            if (callback == null) throw new ArgumentNullException("callback");
+            Waiter<T> w = new Waiter<T>(this, arg, executor, callback);
+            lock (_listLock)
+            {
+                if (_tail == null) _head = w;
+                else _tail.Next = w;
+                _tail = w;
+                _count++;
+            }
+            Dispatch();
+            return w.Task;
+        }
+
+        /// <summary>
+        /// Enqueues a request for <paramref name="arg"/> that completes with
+        /// a <c>null</c> result.
+        /// </summary>
+        internal IFuture<Void> Enqueue(int arg, IExecutor executor, Action callback)
+        {
+            if (callback == null) throw new ArgumentNullException("callback");
+            return Enqueue<Void>(arg, executor, delegate { callback(); return null; });
+        }
+
+        /// <summary>
+        /// Grants requests in FIFO order while the synchronizer can be
+        /// acquired for them, then starts their callbacks outside the list
+        /// lock. Stops at the first request that cannot be granted, so a
+        /// large request is not overtaken by smaller ones behind it. Called
+        /// again from a callback started on this thread, it leaves the
+        /// starting to the outer call.
+        /// </summary>
+        internal void Dispatch()
+        {
+            List<Waiter> granted = null;
+            lock (_listLock)
+            {
+                Waiter w;
+                while ((w = _head) != null)
+                {
+                    if (!w.IsWithdrawn)
+                    {
+                        if (!_tryAcquire(w.Arg)) break;
+                        if (w.TryGrant())
+                        {
+                            if (granted == null) granted = new List<Waiter>();
+                            granted.Add(w);
+                        }
+                        else
+                        {
+                            // cancelled concurrently, the next one may use it
+                            _release(w.Arg);
+                        }
+                    }
+                    _head = w.Next;
+                    if (_head == null) _tail = null;
+                    w.Next = null;
+                    _count--;
+                }
+            }
+            if (granted == null) return;
+            Queue<Waiter> toStart = _toStart;
+            if (toStart != null)
+            {
+                foreach (Waiter g in granted) toStart.Enqueue(g);
+                return;
+            }
+            toStart = _toStart = new Queue<Waiter>(granted);
+            try
+            {
+                while (toStart.Count > 0) toStart.Dequeue().Start();
+            }
+            finally
+            {
+                _toStart = null;
+            }
+        }
+
+        private void GiveBack(int arg)
+        {
+            _release(arg);
+            Dispatch();
+        }
+
+        /// <summary>
+        /// Queue node, moving from waiting through granted to started, or
+        /// to withdrawn when cancelled or rejected before it started.
+        /// </summary>
+        private abstract class Waiter
+        {
+            protected const int Waiting = 0;
+            protected const int Granted = 1;
+            protected const int Started = 2;
+            protected const int Withdrawn = 3;
+
+            internal readonly int Arg;
+            internal Waiter Next;
+            protected int _phase;
+
+            protected Waiter(int arg)
+            {
+                Arg = arg;
+            }
+
+            internal bool IsWithdrawn
+            {
+                get { return Thread.VolatileRead(ref _phase) == Withdrawn; }
+            }
+
+            internal bool TryGrant()
+            {
+                return Interlocked.CompareExchange(ref _phase, Granted, Waiting) == Waiting;
+            }
+
+            internal abstract void Start();
+        }
+
+        private sealed class Waiter<T> : Waiter
+        {
+            private readonly AsyncWaitQueue _queue;
+            private readonly IExecutor _executor;
+            internal readonly Completion Task;
+            private volatile bool _called;
+
+            internal Waiter(AsyncWaitQueue queue, int arg, IExecutor executor, Func<T> callback)
+                : base(arg)
+            {
+                _queue = queue;
+                _executor = executor;
+                Task = new Completion(this, callback);
+            }
+
+            internal override void Start()
+            {
+                try
+                {
+                    _executor.Execute(Run);
+                }
+                catch (Exception e)
+                {
+                    if (Interlocked.CompareExchange(ref _phase, Withdrawn, Granted) == Granted)
+                        _queue.GiveBack(Arg);
+                    Task.Fail(e);
+                }
+            }
+
+            private void Run()
+            {
+                if (Interlocked.CompareExchange(ref _phase, Started, Granted) != Granted) return;
+                Task.Run();
+                // cancelled between grant and run, the callback never got it
+                if (!_called) _queue.GiveBack(Arg);
+            }
+
+            private T Call(Func<T> callback)
+            {
+                _called = true;
+                return callback();
+            }
+
+            private void Cancelled()
+            {
+                switch (Interlocked.Exchange(ref _phase, Withdrawn))
+                {
+                    case Waiting:
+                        // may unblock the requests behind this one
+                        _queue.Dispatch();
+                        break;
+                    case Granted:
+                        _queue.GiveBack(Arg);
+                        break;
+                }
+            }
+
+            internal sealed class Completion : FutureTask<T>
+            {
+                private readonly Waiter<T> _waiter;
+
+                internal Completion(Waiter<T> waiter, Func<T> callback)
+                    : base(() => waiter.Call(callback))
+                {
+                    _waiter = waiter;
+                }
+
+                internal void Fail(Exception e)
+                {
+                    SetException(e);
+                }
+
+                protected internal override void Done()
+                {
+                    if (IsCancelled) _waiter.Cancelled();
+                }
+            }
+        }
+    }
+}
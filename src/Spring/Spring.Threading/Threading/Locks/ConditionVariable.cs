@@ -21,9 +21,23 @@
 using System;
 using System.Collections.Generic;
 using System.Threading;
+using Spring.Threading.Helpers;
 
 namespace Spring.Threading.Locks
 {
+    /// <summary>
+    /// The <see cref="ICondition"/> returned by a nonfair
+    /// <see cref="ReentrantLock"/>.
+    /// </summary>
+    /// <remarks>
+    /// Every waiter enqueues its own <see cref="WaitNode"/> and parks on
+    /// it, so <see cref="Signal"/> wakes exactly the longest waiting thread
+    /// and <see cref="SignalAll"/> wakes the waiters in the order they
+    /// arrived. A waiter that times out or is interrupted cancels its node,
+    /// and a signal that loses that race moves on to the next node instead
+    /// of being passed on by waking yet another thread. Cancelled nodes are
+    /// unlinked once the waiter holds the lock again.
+    /// </remarks>
 	/// <author>Doug Lea</author>
 	/// <author>Griffin Caprio (.NET)</author>
     /// <author>Kenneth Xu</author>
@@ -31,8 +45,27 @@ namespace Spring.Threading.Locks
     internal class ConditionVariable : ICondition // BACKPORT_3_1
     {
 	    private const string _notSupportedMessage = "Use FAIR version";
+
+        /// <summary>
+        /// The waiters never need to recheck a condition on their own nor
+        /// take anything over when signalled: both are done by the lock.
+        /// </summary>
+        private static readonly IQueuedSync _sync = new Sync();
+
 	    protected internal IExclusiveLock _lock;
 
+        /// <summary>
+        /// Waiting threads in arrival order. Only accessed while holding
+        /// <see cref="_lock"/>.
+        /// </summary>
+        protected readonly IWaitQueue _wq = new FIFOWaitQueue();
+
+        private class Sync : IQueuedSync
+        {
+            public bool Recheck(WaitNode node) { return false; }
+            public void TakeOver(WaitNode node) {}
+        }
+
         /// <summary> 
         /// Create a new <see cref="ConditionVariable"/> that relies on the given mutual
         /// exclusion lock.
@@ -69,159 +102,43 @@ namespace Spring.Threading.Locks
 
         public virtual void AwaitUninterruptibly()
         {
-            int holdCount = _lock.HoldCount;
-            if (holdCount == 0)
-            {
-                throw new SynchronizationLockException();
-            }
-            bool wasInterrupted = false;
-            try
-            {
-                lock (this)
-                {
-                    for (int i = holdCount; i > 0; i--) _lock.Unlock();
-                    try
-                    {
-                        Monitor.Wait(this);
-                    }
-                    catch (ThreadInterruptedException)
-                    {
-                        wasInterrupted = true;
-                        // may have masked the signal and there is no way
-                        // to tell; we must wake up spuriously.
-                    }
-                }
-            }
-            finally
-            {
-                for (int i = holdCount; i > 0; i--) _lock.Lock();
-                if (wasInterrupted)
-                {
-                    Thread.CurrentThread.Interrupt();
-                }
-            }
+            DoWait(delegate(WaitNode n) { n.DoWaitUninterruptibly(_sync); return true; });
         }
 
         public virtual void Await()
         {
-            int holdCount = _lock.HoldCount;
-            if (holdCount == 0)
-            {
-                throw new SynchronizationLockException();
-            }
-            // This requires sleep(0) to implement in .Net, too expensive!
-            // if (Thread.interrupted()) throw new InterruptedException();
-            try
-            {
-                lock (this)
-                {
-                    for (int i = holdCount; i > 0; i--) _lock.Unlock();
-                    try
-                    {
-                        Monitor.Wait(this);
-                    }
-                    catch (ThreadInterruptedException e)
-                    {
-                        Monitor.Pulse(this);
-                        throw SystemExtensions.PreserveStackTrace(e);
-                    }
-                }
-            }
-            finally
-            {
-                for (int i = holdCount; i > 0; i--) _lock.Lock();
-            }
+            DoWait(delegate(WaitNode n) { n.DoWait(_sync); return true; });
         }
 
         public virtual bool Await(TimeSpan durationToWait)
         {
-            int holdCount = _lock.HoldCount;
-            if (holdCount == 0)
-            {
-                throw new SynchronizationLockException();
-            }
-            // This requires sleep(0) to implement in .Net, too expensive!
-            // if (Thread.interrupted()) throw new InterruptedException();
-            try
-            {
-                lock (this)
-                {
-                    for (int i = holdCount; i > 0; i--) _lock.Unlock();
-                    try
-                    {
-                        // .Net implementation is a little different than backport 3.1 
-                        // by taking advantage of the return value from Monitor.Wait.
-                        return (durationToWait.Ticks > 0) && Monitor.Wait(this, durationToWait);
-                    }
-                    catch (ThreadInterruptedException e)
-                    {
-                        Monitor.Pulse(this);
-                        throw SystemExtensions.PreserveStackTrace(e);
-                    }
-                }
-            }
-            finally
-            {
-                for (int i = holdCount; i > 0; i--) _lock.Lock();
-            }
+            return DoWait(n => n.DoTimedWait(_sync, durationToWait));
         }
 
         public virtual bool AwaitUntil(DateTime deadline)
         {
-            int holdCount = _lock.HoldCount;
-            if (holdCount == 0)
-            {
-                throw new SynchronizationLockException();
-            }
-            if ((deadline.Subtract(DateTime.UtcNow)).Ticks <= 0) return false;
-            // This requires sleep(0) to implement in .Net, too expensive!
-            // if (Thread.interrupted()) throw new InterruptedException();
-            try
-            {
-                lock (this)
-                {
-                    for (int i = holdCount; i > 0; i--) _lock.Unlock();
-                    try
-                    {
-                        // .Net has DateTime precision issue so we need to retry.
-                        TimeSpan durationToWait;
-                        while ((durationToWait = deadline.Subtract(DateTime.UtcNow)).Ticks > 0)
-                        {
-                            // .Net implementation is different than backport 3.1 
-                            // by taking advantage of the return value from Monitor.Wait.
-                            if (Monitor.Wait(this, durationToWait)) return true;
-                        }
-                    }
-                    catch (ThreadInterruptedException e)
-                    {
-                        Monitor.Pulse(this);
-                        throw SystemExtensions.PreserveStackTrace(e);
-                    }
-                }
-            }
-            finally
-            {
-                for (int i = holdCount; i > 0; i--) _lock.Lock();
-            }
-            return false;
+            return Await(deadline.Subtract(DateTime.UtcNow));
         }
 
         public virtual void Signal()
         {
-            lock (this)
+            AssertOwnership();
+            for (;;)
             {
-                AssertOwnership();
-                Monitor.Pulse(this);
+                WaitNode w = _wq.Dequeue();
+                if (w == null) return;  // no one to signal
+                if (w.Signal(_sync)) return; // notify if still waiting, else skip
             }
         }
 
-
         public virtual void SignalAll()
         {
-            lock (this)
+            AssertOwnership();
+            for (;;)
             {
-                AssertOwnership();
-                Monitor.PulseAll(this);
+                WaitNode w = _wq.Dequeue();
+                if (w == null) return;  // no more to signal
+                w.Signal(_sync);
             }
         }
 
@@ -235,6 +152,39 @@ namespace Spring.Threading.Locks
             }
         }
 
+        /// <summary>
+        /// Fully releases the lock, runs <paramref name="wait"/> on a new
+        /// node and reacquires the lock with the same hold count.
+        /// </summary>
+        /// <param name="wait">
+        /// Waits on the node, returning <c>true</c> if it was signalled
+        /// and <c>false</c> if it was cancelled.
+        /// </param>
+        /// <returns>The result of <paramref name="wait"/>.</returns>
+        private bool DoWait(Func<WaitNode, bool> wait)
+        {
+            int holdCount = _lock.HoldCount;
+            if (holdCount == 0)
+            {
+                throw new SynchronizationLockException();
+            }
+            WaitNode n = new WaitNode();
+            _wq.Enqueue(n);
+            for (int i = holdCount; i > 0; i--) _lock.Unlock();
+            bool signalled = false;
+            try
+            {
+                signalled = wait(n);
+            }
+            finally
+            {
+                for (int i = holdCount; i > 0; i--) _lock.Lock();
+                // A signalled node was already dequeued by its signaller.
+                if (!signalled) _wq.UnlinkCancelled();
+            }
+            return signalled;
+        }
+
         internal interface IExclusiveLock : ILock
         {
             bool IsHeldByCurrentThread { get; }
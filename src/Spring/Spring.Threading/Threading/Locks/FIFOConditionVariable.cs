@@ -21,26 +21,21 @@
 using System;
 using System.Collections.Generic;
 using System.Threading;
-using Spring.Threading.Helpers;
 
 namespace Spring.Threading.Locks
 {
+    /// <summary>
+    /// The <see cref="ICondition"/> returned by a fair
+    /// <see cref="ReentrantLock"/>. Waits and signals exactly like
+    /// <see cref="ConditionVariable"/>, and in addition supports the
+    /// inspection of its waiters.
+    /// </summary>
 	/// <author>Doug Lea</author>
 	/// <author>Griffin Caprio (.NET)</author>
 	/// <author>Kenneth Xu</author>
 	[Serializable]
 	internal class FIFOConditionVariable : ConditionVariable // BACKPORT_3_1
 	{
-        private static readonly IQueuedSync _sync = new Sync();
-
-        private readonly IWaitQueue _wq = new FIFOWaitQueue();
-
-		private class Sync : IQueuedSync
-		{
-			public bool Recheck(WaitNode node) { return false; }
-			public void TakeOver(WaitNode node) {}
-		}
-
 		protected internal override int WaitQueueLength
 		{
 			get
@@ -70,50 +65,6 @@ namespace Spring.Threading.Locks
 		{
 		}
 
-        public override void AwaitUninterruptibly()
-        {
-            DoWait(n => n.DoWaitUninterruptibly(_sync));
-        }
-
-	    public override void Await()
-		{
-            DoWait(n => n.DoWait(_sync));
-		}
-
-		public override bool Await(TimeSpan timespan)
-		{
-			bool success = false;
-            DoWait(n => success = n.DoTimedWait(_sync, timespan));
-            return success;
-		}
-
-		public override bool AwaitUntil(DateTime deadline)
-		{
-			return Await(deadline.Subtract(DateTime.UtcNow));
-		}
-
-		public override void Signal()
-		{
-            AssertOwnership();
-            for (; ; )
-			{
-				WaitNode w = _wq.Dequeue();
-                if (w == null) return;  // no one to signal
-                if (w.Signal(_sync)) return; // notify if still waiting, else skip
-			}
-		}
-
-		public override void SignalAll()
-		{
-            AssertOwnership();
-            for (; ; )
-			{
-				WaitNode w = _wq.Dequeue();
-                if (w == null) return;  // no more to signal
-				w.Signal(_sync);
-			}
-		}
-
 	    protected internal override bool HasWaiters
 	    {
 	        get
@@ -122,25 +73,5 @@ namespace Spring.Threading.Locks
 	            return _wq.HasNodes;
 	        }
 	    }
-
-        private void DoWait(Action<WaitNode> action)
-        {
-            int holdCount = Lock.HoldCount;
-            if (holdCount == 0)
-            {
-                throw new SynchronizationLockException();
-            }
-            WaitNode n = new WaitNode();
-            _wq.Enqueue(n);
-            for (int i = holdCount; i > 0; i--) Lock.Unlock();
-            try
-            {
-                action(n);
-            }
-            finally
-            {
-                for (int i = holdCount; i > 0; i--) Lock.Lock();
-            }
-        }
 	}
 }
\ No newline at end of file
@@ -0,0 +1,365 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+using System;
+using System.Collections.Generic;
+using System.Diagnostics;
+using System.Text;
+using Spring.Threading.AtomicTypes;
+
+namespace Spring.Threading.Locks
+{
+    /// <summary>
+    /// Collects contention statistics of one or more locks: the number of
+    /// acquisitions, how many of them had to wait, and the time spent
+    /// waiting for and holding the locks.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// Instrumentation is opt-in. A lock records statistics only after an
+    /// instance of this class is assigned to its <c>Statistics</c>
+    /// property, or when it is created while
+    /// <see cref="EnabledForNewLocks"/> is <c>true</c>. A lock without
+    /// statistics pays a single field read per operation.
+    /// </para>
+    /// <para>
+    /// The counters are striped (<see cref="LongAdder"/> and
+    /// <see cref="LongAccumulator"/>), so one instance can be shared by
+    /// many locks that are used concurrently, for example all worker locks
+    /// of a <see cref="Spring.Threading.Execution.ThreadPoolExecutor"/>.
+    /// The values are therefore not an atomic snapshot while the locks are
+    /// in use.
+    /// </para>
+    /// <para>
+    /// An acquisition counts as contended when the lock could not be taken
+    /// right away, and only then is its wait time measured. Hold times are
+    /// measured from the outermost acquisition to the final release of
+    /// exclusive holds; shared (read) holds are counted but not timed.
+    /// Failed and interrupted acquisition attempts are not recorded.
+    /// </para>
+    /// <para>
+    /// Every instance created with a public constructor is registered and
+    /// can be pulled with <see cref="Registered"/> or, combined by
+    /// <see cref="Tag"/>, with <see cref="RollUpByTag"/>. The registry only
+    /// holds weak references, so statistics go away together with their
+    /// locks.
+    /// </para>
+    /// <para>
+    /// NOTE: this class is NOT present in java.util.concurrent.
+    /// </para>
+    /// </remarks>
+    public class LockStatistics //NET_ONLY
+    {
+        private static readonly List<WeakReference> _registry = new List<WeakReference>();
+
+        /// <summary>
+        /// Registry size at which collected statistics are next pruned.
+        /// Guarded by <see cref="_registry"/>.
+        /// </summary>
+        private static int _pruneThreshold = 64;
+        private static volatile bool _enabledForNewLocks;
+
+        private readonly string _tag;
+        private readonly LongAdder _acquisitions = new LongAdder();
+        private readonly LongAdder _contendedAcquisitions = new LongAdder();
+        private readonly LongAdder _waitTicks = new LongAdder();
+        private readonly LongAccumulator _maxWaitTicks = new LongAccumulator(Math.Max, 0);
+        private readonly LongAdder _timedHolds = new LongAdder();
+        private readonly LongAdder _holdTicks = new LongAdder();
+        private readonly LongAccumulator _maxHoldTicks = new LongAccumulator(Math.Max, 0);
+
+        /// <summary>
+        /// Creates and registers statistics without a tag.
+        /// </summary>
+        public LockStatistics() : this(null)
+        {
+        }
+
+        /// <summary>
+        /// Creates and registers statistics with the given
+        /// <paramref name="tag"/>.
+        /// </summary>
+        /// <param name="tag">
+        /// Name under which <see cref="RollUpByTag"/> combines these
+        /// statistics with others, typically identifying the owner of the
+        /// locks. May be <c>null</c>.
+        /// </param>
+        public LockStatistics(string tag) : this(tag, true)
+        {
+        }
+
+        private LockStatistics(string tag, bool register)
+        {
+            _tag = tag;
+            if (register)
+            {
+                lock (_registry)
+                {
+                    if (_registry.Count >= _pruneThreshold) PruneCollected();
+                    _registry.Add(new WeakReference(this));
+                }
+            }
+        }
+
+        /// <summary>
+        /// Gets / Sets whether locks created from now on record statistics.
+        /// Each such lock gets its own instance, tagged with the name of the
+        /// lock type. Defaults to <c>false</c>.
+        /// </summary>
+        public static bool EnabledForNewLocks
+        {
+            get { return _enabledForNewLocks; }
+            set { _enabledForNewLocks = value; }
+        }
+
+        /// <summary>
+        /// The tag given at construction, may be <c>null</c>.
+        /// </summary>
+        public string Tag
+        {
+            get { return _tag; }
+        }
+
+        /// <summary>
+        /// Number of successful acquisitions, including reentrant ones.
+        /// </summary>
+        public long Acquisitions
+        {
+            get { return _acquisitions.Sum(); }
+        }
+
+        /// <summary>
+        /// Number of acquisitions that had to wait for the lock.
+        /// </summary>
+        public long ContendedAcquisitions
+        {
+            get { return _contendedAcquisitions.Sum(); }
+        }
+
+        /// <summary>
+        /// Cumulative time spent waiting by contended acquisitions.
+        /// </summary>
+        public TimeSpan TotalWaitTime
+        {
+            get { return ToTimeSpan(_waitTicks.Sum()); }
+        }
+
+        /// <summary>
+        /// Longest wait of a single contended acquisition.
+        /// </summary>
+        public TimeSpan MaxWaitTime
+        {
+            get { return ToTimeSpan(_maxWaitTicks.Value); }
+        }
+
+        /// <summary>
+        /// Number of exclusive holds whose duration was measured.
+        /// </summary>
+        public long TimedHolds
+        {
+            get { return _timedHolds.Sum(); }
+        }
+
+        /// <summary>
+        /// Cumulative duration of the measured exclusive holds.
+        /// </summary>
+        public TimeSpan TotalHoldTime
+        {
+            get { return ToTimeSpan(_holdTicks.Sum()); }
+        }
+
+        /// <summary>
+        /// Longest measured exclusive hold.
+        /// </summary>
+        public TimeSpan MaxHoldTime
+        {
+            get { return ToTimeSpan(_maxHoldTicks.Value); }
+        }
+
+        /// <summary>
+        /// Returns the registered statistics that are still reachable.
+        /// </summary>
+        public static IList<LockStatistics> Registered
+        {
+            get
+            {
+                List<LockStatistics> result = new List<LockStatistics>();
+                lock (_registry)
+                {
+                    _registry.RemoveAll(delegate(WeakReference r)
+                                            {
+                                                LockStatistics s = (LockStatistics) r.Target;
+                                                if (s == null) return true;
+                                                result.Add(s);
+                                                return false;
+                                            });
+                }
+                return result;
+            }
+        }
+
+        /// <summary>
+        /// The number of entries in the registry, including those of
+        /// collected statistics that are not yet pruned.
+        /// </summary>
+        internal static int RegistrySize
+        {
+            get { lock (_registry) return _registry.Count; }
+        }
+
+        /// <summary>
+        /// Drops the entries of collected statistics once the registry
+        /// reaches <see cref="_pruneThreshold"/>, then sets the threshold to
+        /// twice the surviving count, at least 64. Called on add with the
+        /// lock on <see cref="_registry"/> held.
+        /// </summary>
+        private static void PruneCollected()
+        {
+            _registry.RemoveAll(delegate(WeakReference r) { return !r.IsAlive; });
+            _pruneThreshold = Math.Max(64, _registry.Count * 2);
+        }
+
+        /// <summary>
+        /// Returns the sum of the registered statistics per
+        /// <see cref="Tag"/>. Statistics without a tag are combined under
+        /// the empty string. The returned instances are detached copies
+        /// that are not registered.
+        /// </summary>
+        public static IDictionary<string, LockStatistics> RollUpByTag()
+        {
+            Dictionary<string, LockStatistics> result = new Dictionary<string, LockStatistics>();
+            foreach (LockStatistics s in Registered)
+            {
+                string tag = s._tag ?? string.Empty;
+                LockStatistics sum;
+                if (!result.TryGetValue(tag, out sum))
+                {
+                    sum = new LockStatistics(tag, false);
+                    result.Add(tag, sum);
+                }
+                sum.Add(s);
+            }
+            return result;
+        }
+
+        /// <summary>
+        /// Resets all counters to zero. Only effective if there are no
+        /// concurrent updates.
+        /// </summary>
+        public void Reset()
+        {
+            _acquisitions.Reset();
+            _contendedAcquisitions.Reset();
+            _waitTicks.Reset();
+            _maxWaitTicks.Reset();
+            _timedHolds.Reset();
+            _holdTicks.Reset();
+            _maxHoldTicks.Reset();
+        }
+
+        /// <summary>
+        /// Returns a string identifying these statistics and their values.
+        /// </summary>
+        public override string ToString()
+        {
+            StringBuilder sb = new StringBuilder(base.ToString());
+            if (_tag != null) sb.Append("(").Append(_tag).Append(")");
+            return sb.Append("[Acquisitions = ").Append(Acquisitions)
+                .Append(", Contended = ").Append(ContendedAcquisitions)
+                .Append(", Wait = ").Append(TotalWaitTime).Append("/").Append(MaxWaitTime)
+                .Append(", Hold = ").Append(TotalHoldTime).Append("/").Append(MaxHoldTime)
+                .Append("]").ToString();
+        }
+
+        /// <summary>
+        /// Statistics for a lock being created, or <c>null</c> unless
+        /// <see cref="EnabledForNewLocks"/> is set.
+        /// </summary>
+        internal static LockStatistics ForNewLock(object @lock)
+        {
+            return _enabledForNewLocks ? new LockStatistics(@lock.GetType().Name) : null;
+        }
+
+        /// <summary>
+        /// Current time stamp in <see cref="Stopwatch"/> ticks. Never zero,
+        /// so that zero can mean "not measured".
+        /// </summary>
+        internal static long Timestamp
+        {
+            get
+            {
+                long now = Stopwatch.GetTimestamp();
+                return now == 0 ? 1 : now;
+            }
+        }
+
+        /// <summary>
+        /// Records a successful acquisition and returns the time stamp at
+        /// which the lock was acquired.
+        /// </summary>
+        /// <param name="waitStart">
+        /// Time stamp at which a contended acquisition started waiting, or
+        /// zero for an acquisition that did not wait.
+        /// </param>
+        internal long RecordAcquired(long waitStart)
+        {
+            long now = Timestamp;
+            _acquisitions.Increment();
+            if (waitStart != 0)
+            {
+                long waited = now - waitStart;
+                _contendedAcquisitions.Increment();
+                _waitTicks.Add(waited);
+                _maxWaitTicks.Accumulate(waited);
+            }
+            return now;
+        }
+
+        /// <summary>
+        /// Records the final release of an exclusive hold that started at
+        /// <paramref name="holdStart"/>. Does nothing when the start was
+        /// not measured (zero).
+        /// </summary>
+        internal void RecordReleased(long holdStart)
+        {
+            if (holdStart == 0) return;
+            long held = Timestamp - holdStart;
+            _timedHolds.Increment();
+            _holdTicks.Add(held);
+            _maxHoldTicks.Accumulate(held);
+        }
+
+        private void Add(LockStatistics other)
+        {
+            _acquisitions.Add(other._acquisitions.Sum());
+            _contendedAcquisitions.Add(other._contendedAcquisitions.Sum());
+            _waitTicks.Add(other._waitTicks.Sum());
+            _maxWaitTicks.Accumulate(other._maxWaitTicks.Value);
+            _timedHolds.Add(other._timedHolds.Sum());
+            _holdTicks.Add(other._holdTicks.Sum());
+            _maxHoldTicks.Accumulate(other._maxHoldTicks.Value);
+        }
+
+        private static TimeSpan ToTimeSpan(long stopwatchTicks)
+        {
+            return new TimeSpan((long) (stopwatchTicks * ((double) TimeSpan.TicksPerSecond / Stopwatch.Frequency)));
+        }
+    }
+}
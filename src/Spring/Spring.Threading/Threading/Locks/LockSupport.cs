@@ -0,0 +1,392 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+using System;
+using System.Collections.Generic;
+using System.Threading;
+
+namespace Spring.Threading.Locks
+{
+    /// <summary>
+    /// Basic thread blocking primitives for creating locks and other
+    /// synchronization classes.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// This class associates, with each thread that uses it, a permit. A
+    /// call to <see cref="Park()"/> will return immediately if the permit
+    /// is available, consuming it in the process; otherwise it <i>may</i>
+    /// block. A call to <see cref="Unpark"/> makes the permit available,
+    /// if it was not already available. (Unlike with semaphores though,
+    /// permits do not accumulate. There is at most one.)
+    /// </para>
+    /// <para>
+    /// Methods <see cref="Park()"/> and <see cref="Unpark"/> provide
+    /// efficient means of blocking and unblocking a specific thread. Races
+    /// between one thread invoking <see cref="Park()"/> and another thread
+    /// trying to <see cref="Unpark"/> it will preserve liveness, due to the
+    /// permit. Unlike <see cref="Monitor.Pulse"/>, an unpark issued before
+    /// the target thread blocks is not lost.
+    /// </para>
+    /// <para>
+    /// The <see cref="Park()"/> methods may also return at any other time,
+    /// for "no reason", so in general must be invoked within a loop that
+    /// rechecks conditions upon return. In this sense park serves as an
+    /// optimization of a "busy wait" that does not waste as much time
+    /// spinning, but must be paired with an <see cref="Unpark"/> to be
+    /// effective.
+    /// </para>
+    /// <para>
+    /// The runtime delivers <see cref="Thread.Interrupt"/> to a blocked
+    /// thread as a <see cref="ThreadInterruptedException"/>, so unlike its
+    /// Java counterpart a parked thread that is interrupted leaves
+    /// <see cref="Park()"/> by that exception rather than by returning.
+    /// </para>
+    /// <para>
+    /// The <see cref="Park(object)"/> overloads record the object the
+    /// thread is blocked on, for the benefit of monitoring and diagnostic
+    /// tools. It can be retrieved with <see cref="GetBlocker"/>.
+    /// </para>
+    /// <para>
+    /// Based on the on the back port of JCP JSR-166.
+    /// </para>
+    /// </remarks>
+    /// <author>Doug Lea</author>
+    public static class LockSupport //JDK_1_6
+    {
+        /// <summary>
+        /// Parkers of all the threads that have used this class, so that
+        /// other threads can unpark them. Guarded by itself.
+        /// </summary>
+        private static readonly Dictionary<Thread, Parker> _parkers = new Dictionary<Thread, Parker>();
+
+        /// <summary>
+        /// Registry size at which terminated threads are next swept out.
+        /// Guarded by <see cref="_parkers"/>.
+        /// </summary>
+        private static int _sweepThreshold = 64;
+
+        [ThreadStatic]
+        private static Parker _currentParker;
+
+        /// <summary>
+        /// Makes available the permit for the given thread, if it was not
+        /// already available. If the thread was blocked on
+        /// <see cref="Park()"/> then it will unblock. Otherwise, its next
+        /// call to <see cref="Park()"/> is guaranteed not to block.
+        /// </summary>
+        /// <param name="thread">
+        /// The thread to unpark, or <c>null</c>, in which case this
+        /// operation has no effect.
+        /// </param>
+        public static void Unpark(Thread thread)
+        {
+            if (thread == null) return;
+            Parker parker = thread == Thread.CurrentThread ? CurrentParker : ParkerOf(thread);
+            parker.Unpark();
+        }
+
+        /// <summary>
+        /// Disables the current thread for thread scheduling purposes unless
+        /// the permit is available.
+        /// </summary>
+        /// <remarks>
+        /// If the permit is available then it is consumed and the call
+        /// returns immediately; otherwise the current thread lies dormant
+        /// until some other thread invokes <see cref="Unpark"/> with the
+        /// current thread as the target, the current thread is interrupted,
+        /// or the call spuriously (that is, for no reason) returns.
+        /// </remarks>
+        /// <exception cref="ThreadInterruptedException">
+        /// If the current thread is interrupted while blocked.
+        /// </exception>
+        public static void Park()
+        {
+            CurrentParker.Park(null, Timeout.Infinite);
+        }
+
+        /// <summary>
+        /// Same as <see cref="Park()"/>, recording <paramref name="blocker"/>
+        /// as the object responsible for this thread parking.
+        /// </summary>
+        /// <param name="blocker">
+        /// The synchronization object responsible for this thread parking.
+        /// </param>
+        /// <exception cref="ThreadInterruptedException">
+        /// If the current thread is interrupted while blocked.
+        /// </exception>
+        public static void Park(object blocker)
+        {
+            CurrentParker.Park(blocker, Timeout.Infinite);
+        }
+
+        /// <summary>
+        /// Disables the current thread for thread scheduling purposes, for
+        /// up to the specified waiting time, unless the permit is available.
+        /// Same as <see cref="Park()"/> otherwise.
+        /// </summary>
+        /// <param name="duration">The maximum time to wait.</param>
+        /// <exception cref="ThreadInterruptedException">
+        /// If the current thread is interrupted while blocked.
+        /// </exception>
+        public static void Park(TimeSpan duration)
+        {
+            Park(null, duration);
+        }
+
+        /// <summary>
+        /// Same as <see cref="Park(TimeSpan)"/>, recording
+        /// <paramref name="blocker"/> as the object responsible for this
+        /// thread parking.
+        /// </summary>
+        /// <param name="blocker">
+        /// The synchronization object responsible for this thread parking.
+        /// </param>
+        /// <param name="duration">The maximum time to wait.</param>
+        /// <exception cref="ThreadInterruptedException">
+        /// If the current thread is interrupted while blocked.
+        /// </exception>
+        public static void Park(object blocker, TimeSpan duration)
+        {
+            if (duration.Ticks > 0) CurrentParker.Park(blocker, ToMilliseconds(duration));
+        }
+
+        /// <summary>
+        /// Disables the current thread for thread scheduling purposes, until
+        /// the specified deadline, unless the permit is available. Same as
+        /// <see cref="Park()"/> otherwise.
+        /// </summary>
+        /// <param name="deadline">The absolute UTC time to wait until.</param>
+        /// <exception cref="ThreadInterruptedException">
+        /// If the current thread is interrupted while blocked.
+        /// </exception>
+        public static void ParkUntil(DateTime deadline)
+        {
+            Park(null, deadline.Subtract(DateTime.UtcNow));
+        }
+
+        /// <summary>
+        /// Same as <see cref="ParkUntil(DateTime)"/>, recording
+        /// <paramref name="blocker"/> as the object responsible for this
+        /// thread parking.
+        /// </summary>
+        /// <param name="blocker">
+        /// The synchronization object responsible for this thread parking.
+        /// </param>
+        /// <param name="deadline">The absolute UTC time to wait until.</param>
+        /// <exception cref="ThreadInterruptedException">
+        /// If the current thread is interrupted while blocked.
+        /// </exception>
+        public static void ParkUntil(object blocker, DateTime deadline)
+        {
+            Park(blocker, deadline.Subtract(DateTime.UtcNow));
+        }
+
+        /// <summary>
+        /// Returns the blocker object supplied to the most recent invocation
+        /// of a park method that has not yet unblocked, or <c>null</c> if not
+        /// blocked. The value returned is just a momentary snapshot -- the
+        /// thread may have since unblocked or blocked on a different
+        /// blocker object.
+        /// </summary>
+        /// <param name="thread">The thread.</param>
+        /// <returns>The blocker.</returns>
+        /// <exception cref="ArgumentNullException">
+        /// If <paramref name="thread"/> is <c>null</c>.
+        /// </exception>
+        public static object GetBlocker(Thread thread)
+        {
+            if (thread == null) throw new ArgumentNullException("thread");
+            Parker parker;
+            lock (_parkers)
+            {
+                if (!_parkers.TryGetValue(thread, out parker)) return null;
+            }
+            return parker.Blocker;
+        }
+
+        /// <summary>
+        /// The parker of the current thread. Synchronizers that record the
+        /// waiting thread in a node can keep this instead, and unpark it
+        /// without a registry lookup.
+        /// </summary>
+        internal static Parker CurrentParker
+        {
+            get { return _currentParker ?? (_currentParker = ParkerOf(Thread.CurrentThread)); }
+        }
+
+        private static Parker ParkerOf(Thread thread)
+        {
+            lock (_parkers)
+            {
+                Parker parker;
+                if (!_parkers.TryGetValue(thread, out parker))
+                {
+                    if (_parkers.Count >= _sweepThreshold) SweepTerminatedThreads();
+                    parker = new Parker();
+                    _parkers.Add(thread, parker);
+                }
+                return parker;
+            }
+        }
+
+        /// <summary>
+        /// Drops the parkers of threads that have terminated. Called with
+        /// the lock on <see cref="_parkers"/> held, whenever the registry
+        /// grows past <see cref="_sweepThreshold"/>, so that the cost is
+        /// amortized over the registrations.
+        /// </summary>
+        private static void SweepTerminatedThreads()
+        {
+            List<Thread> terminated = new List<Thread>();
+            foreach (Thread t in _parkers.Keys)
+            {
+                if ((t.ThreadState & (ThreadState.Stopped | ThreadState.Aborted)) != 0) terminated.Add(t);
+            }
+            foreach (Thread t in terminated) _parkers.Remove(t);
+            _sweepThreshold = Math.Max(64, _parkers.Count * 2);
+        }
+
+        private static int ToMilliseconds(TimeSpan duration)
+        {
+            double ms = Math.Ceiling(duration.TotalMilliseconds);
+            return ms >= int.MaxValue ? int.MaxValue : (int) ms;
+        }
+
+        /// <summary>
+        /// Base of the wait nodes that synchronizers queue for blocked
+        /// threads. The node keeps the <see cref="Parker"/> of its waiter,
+        /// so that releasing it does not go through the registry lock of
+        /// <see cref="LockSupport.Unpark"/>.
+        /// </summary>
+        internal abstract class ParkingNode
+        {
+            private volatile Parker _parker;
+
+            /// <summary>
+            /// Whether <see cref="CaptureParker"/> has been called.
+            /// </summary>
+            internal bool HasParker
+            {
+                get { return _parker != null; }
+            }
+
+            /// <summary>
+            /// Records the parker of the current thread as the waiter. A full
+            /// fence, so that the waiter's next read of its wait condition
+            /// cannot move ahead of it: either the waiter sees the condition
+            /// change, or the thread changing it sees the parker.
+            /// </summary>
+            internal void CaptureParker()
+            {
+#pragma warning disable 420 // a reference to a volatile field will not be treated as volatile
+                Interlocked.Exchange(ref _parker, CurrentParker);
+#pragma warning restore 420
+            }
+
+            /// <summary>
+            /// Makes the permit of the waiter available, waking it if it is
+            /// parked. Does nothing if no parker was captured.
+            /// </summary>
+            internal void Unpark()
+            {
+                Parker p = _parker;
+                if (p != null) p.Unpark();
+            }
+        }
+
+        /// <summary>
+        /// The permit of one thread. Only the owning thread parks on it;
+        /// any thread may unpark it.
+        /// </summary>
+        internal sealed class Parker
+        {
+            /// <summary>
+            /// 1 if the permit is available, else 0.
+            /// </summary>
+            private int _permit;
+
+            /// <summary>
+            /// Whether the owner is, or is about to be, blocked in
+            /// <see cref="Monitor.Wait(object,int)"/>. Lets
+            /// <see cref="Unpark"/> skip the monitor when nobody is waiting.
+            /// </summary>
+            private volatile bool _blocked;
+
+            private volatile object _blocker;
+
+            internal object Blocker
+            {
+                get { return _blocker; }
+            }
+
+            /// <summary>
+            /// Consumes the permit, blocking for up to
+            /// <paramref name="millisecondsTimeout"/> if it is not available.
+            /// </summary>
+            internal void Park(object blocker, int millisecondsTimeout)
+            {
+                if (Interlocked.Exchange(ref _permit, 0) == 1) return;
+                _blocker = blocker;
+                try
+                {
+                    lock (this)
+                    {
+                        _blocked = true;
+                        // Interlocked.Exchange is a full fence, so either we
+                        // see the permit or Unpark sees _blocked.
+                        if (Interlocked.Exchange(ref _permit, 0) == 1) return;
+                        Monitor.Wait(this, millisecondsTimeout);
+                        Interlocked.Exchange(ref _permit, 0);
+                    }
+                }
+                finally
+                {
+                    _blocked = false;
+                    _blocker = null;
+                }
+            }
+
+            /// <summary>
+            /// Makes the permit available, waking the owner if it is blocked.
+            /// </summary>
+            internal void Unpark()
+            {
+                if (Interlocked.Exchange(ref _permit, 1) == 1 || !_blocked) return;
+                bool interrupted = false;
+                for (;;)
+                {
+                    // A wake up must not be lost because the caller is
+                    // interrupted while contending for the monitor.
+                    try
+                    {
+                        lock (this) Monitor.Pulse(this);
+                        break;
+                    }
+                    catch (ThreadInterruptedException)
+                    {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) Thread.CurrentThread.Interrupt();
+            }
+        }
+    }
+}
@@ -23,6 +23,7 @@ using System.Collections.Generic;
 using System.Diagnostics;
 using System.Runtime.Serialization;
 using System.Threading;
+using Spring.Threading.Future;
 using Spring.Threading.Helpers;
 
 namespace Spring.Threading.Locks
@@ -90,6 +91,12 @@ namespace Spring.Threading.Locks
 	/// instrumentation and monitoring.
     /// </para>
     /// <para>
+    /// <see cref="LockAsync(IExecutor, Action)"/> runs a critical section
+    /// on an <see cref="IExecutor"/> without blocking the caller. While the
+    /// lock is held elsewhere the request waits as a queued node, not as a
+    /// parked thread.
+    /// </para>
+    /// <para>
     /// Serialization of this class behaves in the same way as built-in
 	/// locks: a deserialized lock is in the unlocked state, regardless of
 	/// its state when serialized.
@@ -115,12 +122,18 @@ namespace Spring.Threading.Locks
 		[Serializable]
 		private abstract class Sync
 		{
-			[NonSerialized] protected Thread _owner;
+			/// <summary>
+			/// Stands in as the owner while the lock is held on behalf of an
+			/// asynchronous request that is on its way to its executor.
+			/// </summary>
+			private static readonly Thread AsyncOwner = new Thread(delegate { });
+
+			[NonSerialized] protected volatile Thread _owner;
 			[NonSerialized] protected int _holds;
 
 			internal Thread Owner
 			{
-				get { lock (this) return _owner; }
+				get { lock (this) return _owner == AsyncOwner ? null : _owner; }
 			}
 
 			public int HoldCount
@@ -164,6 +177,49 @@ namespace Spring.Threading.Locks
 				throw new NotSupportedException("Use FAIR version");
 			}
 
+			public virtual int SpinLimit
+			{
+				get { return 0; }
+			}
+
+			/// <summary>
+			/// Acquires the lock on behalf of an asynchronous request if it
+			/// is free, without assigning it to a thread yet.
+			/// </summary>
+			internal virtual bool TryAcquireForAsync()
+			{
+				lock (this)
+				{
+					if (_owner != null) return false;
+					_owner = AsyncOwner;
+					_holds = 1;
+					return true;
+				}
+			}
+
+			/// <summary>
+			/// Makes the current thread the owner of a lock acquired by
+			/// <see cref="TryAcquireForAsync"/>.
+			/// </summary>
+			internal void TakeOverFromAsync()
+			{
+				lock (this)
+				{
+					Debug.Assert(_owner == AsyncOwner && _holds == 1);
+					_owner = Thread.CurrentThread;
+				}
+			}
+
+			/// <summary>
+			/// Releases a lock acquired by <see cref="TryAcquireForAsync"/>
+			/// for a request that will not use it.
+			/// </summary>
+			internal void ReleaseFromAsync()
+			{
+				TakeOverFromAsync();
+				Unlock();
+			}
+
             public abstract void Lock();
 			public abstract bool IsFair { get; }
 			public abstract void LockInterruptibly();
@@ -193,17 +249,105 @@ namespace Spring.Threading.Locks
 		[Serializable]
 		private sealed class NonfairSync : Sync
 		{
+            /// <summary>
+            /// Number of <see cref="Thread.SpinWait"/> iterations in one
+            /// spin step.
+            /// </summary>
+            private const int SpinWaitIterations = 4;
+
+            /// <summary>
+            /// Lower bound of the adaptive spin budget, so that a lock that
+            /// recently had to block still probes for a short release.
+            /// </summary>
+            private const int MinSpinBudget = 16;
+
+            private readonly int _spinLimit;
+
+            /// <summary>
+            /// Number of spin steps a waiter tolerates while the same
+            /// thread keeps holding the lock. Derived from the hold times
+            /// observed by recent successful spins, halved on each failure.
+            /// </summary>
+            [NonSerialized] private int _spinBudget;
+
+            public NonfairSync(int spinLimit)
+            {
+                _spinLimit = spinLimit;
+                _spinBudget = spinLimit;
+            }
+
 		    public override bool IsFair
 			{
 				get { return false; }
 			}
 
+		    public override int SpinLimit
+		    {
+                get { return _spinLimit; }
+		    }
+
+            /// <summary>
+            /// Spins while the lock is held by another thread, as long as
+            /// the lock keeps changing hands or the current owner has held
+            /// it for no longer than the spin budget. Returns <c>true</c>
+            /// if the lock was acquired without blocking.
+            /// </summary>
+            private bool SpinAcquire(Thread caller)
+            {
+                Thread owner = _owner;
+                if (owner == null || owner == caller) return false;
+                int budget = Math.Max(_spinBudget, MinSpinBudget);
+                int held = 0;
+                for (int spins = 0; spins < _spinLimit; spins++)
+                {
+                    Thread.SpinWait(SpinWaitIterations);
+                    Thread current = _owner;
+                    if (current == null)
+                    {
+                        if (Monitor.TryEnter(this))
+                        {
+                            try
+                            {
+                                if (_owner == null)
+                                {
+                                    _owner = caller;
+                                    _holds = 1;
+                                    // the owner we waited for held the lock
+                                    // for about 'held' steps, allow twice that
+                                    _spinBudget = Math.Min(_spinLimit, (budget + (held << 1)) >> 1);
+                                    return true;
+                                }
+                            }
+                            finally
+                            {
+                                Monitor.Exit(this);
+                            }
+                        }
+                    }
+                    else if (current != owner)
+                    {
+                        // lock was handed over, the owners are making progress
+                        owner = current;
+                        held = 0;
+                    }
+                    else if (++held > budget)
+                    {
+                        break;
+                    }
+                }
+                _spinBudget = budget >> 1;
+                return false;
+            }
+
             /// <summary>
-            /// Performs lock.  Try immediate barge, backing up to normal acquire on failure.
+            /// Performs lock.  Try immediate barge, then spin while the
+            /// owner is likely to release soon, backing up to normal
+            /// acquire on failure.
             /// </summary>
             public override void Lock()
             {
                 Thread caller = Thread.CurrentThread;
+                if (_spinLimit > 0 && SpinAcquire(caller)) return;
                 lock (this)
                 {
                     if (GetHold(caller)) return;
@@ -242,6 +386,7 @@ namespace Spring.Threading.Locks
 		    public override void LockInterruptibly()
 			{
 				Thread caller = Thread.CurrentThread;
+                if (_spinLimit > 0 && SpinAcquire(caller)) return;
 				lock (this)
 				{
                     if (GetHold(caller)) return;
@@ -267,6 +412,7 @@ namespace Spring.Threading.Locks
 			{
 				Thread caller = Thread.CurrentThread;
 
+                if (durationToWait.Ticks > 0 && _spinLimit > 0 && SpinAcquire(caller)) return true;
 				lock (this)
 				{
 				    if (GetHold(caller)) return true;
@@ -325,6 +471,14 @@ namespace Spring.Threading.Locks
 				get { return true; }
 			}
 
+			internal override bool TryAcquireForAsync()
+			{
+				lock (this)
+				{
+					return !_wq.HasNodes && base.TryAcquireForAsync();
+				}
+			}
+
 			public bool Recheck(WaitNode node)
 			{
 				Thread caller = Thread.CurrentThread;
@@ -471,6 +625,20 @@ namespace Spring.Threading.Locks
 
 		private readonly Sync sync;
 
+		[NonSerialized] private volatile LockStatistics _statistics;
+
+		/// <summary>
+		/// Time stamp of the outermost acquisition by the current owner,
+		/// only maintained when <see cref="_statistics"/> is set.
+		/// </summary>
+		[NonSerialized] private long _holdStart;
+
+		/// <summary>
+		/// Pending asynchronous lock requests, created on first use.
+		/// </summary>
+		[NonSerialized] private volatile AsyncWaitQueue _asyncWaiters;
+
+
 		/// <summary> 
 		/// Queries the number of holds on this lock by the current thread.
 		/// 
@@ -587,11 +755,14 @@ namespace Spring.Threading.Locks
 		/// Returns the thread that currently owns this lock, or
 		/// <c>null</c> if not owned. Note that the owner may be
 		/// momentarily <c>null</c> even if there are threads trying to
-		/// acquire the lock but have not yet done so.  This method is
+		/// acquire the lock but have not yet done so. The owner is also
+		/// <c>null</c> while the lock is held for a granted asynchronous
+		/// request that has not yet started on its executor, even though
+		/// <see cref="IsLocked"/> is <c>true</c>.  This method is
 		/// designed to facilitate construction of subclasses that provide
 		/// more extensive lock monitoring facilities.
 		/// </summary>
-		/// <returns> the owner, or <c>null</c> if not owned.
+		/// <returns> the owner, or <c>null</c> if not owned by a thread.
 		/// </returns>
 		protected internal virtual Thread Owner
 		{
@@ -616,6 +787,25 @@ namespace Spring.Threading.Locks
 		}
 
 
+		/// <summary> 
+		/// Returns the maximum number of spin steps a thread takes before
+		/// blocking when this lock is held by another thread, or zero if
+		/// waiting threads block right away. Fair locks never spin.
+		/// </summary>
+		/// <seealso cref="DefaultSpinLimit"/>
+		public virtual int SpinLimit
+		{
+			get { return sync.SpinLimit; }
+		}
+
+		/// <summary> 
+		/// The spin limit of nonfair locks created without an explicit
+		/// limit: zero on a single processor machine, where spinning can
+		/// only delay the owner, otherwise large enough to cover critical
+		/// sections of a few microseconds.
+		/// </summary>
+		public static readonly int DefaultSpinLimit = Environment.ProcessorCount > 1 ? 1024 : 0;
+
 		/// <summary> Creates an instance of <see cref="Spring.Threading.Locks.ReentrantLock"/>.
 		/// This is equivalent to using <tt>ReentrantLock(false)</tt>.
 		/// </summary>
@@ -629,9 +819,50 @@ namespace Spring.Threading.Locks
 		/// </summary>
 		/// <param name="fair"><c>true</c> if this lock will be fair, else <c>false</c>
 		/// </param>
-		public ReentrantLock(bool fair)
+		public ReentrantLock(bool fair) : this(fair, DefaultSpinLimit)
+		{
+		}
+
+		/// <summary> 
+		///	Creates an instance of <see cref="Spring.Threading.Locks.ReentrantLock"/> with the
+		/// given fairness policy and spin limit.
+		/// </summary>
+		/// <remarks>
+		/// A nonfair lock briefly spins before blocking when it is held by
+		/// another thread. The actual number of spin steps adapts to the hold
+		/// times observed by earlier acquisitions and stops early when the
+		/// owner does not release within that budget, so short critical
+		/// sections avoid the cost of blocking while long ones do not burn
+		/// processor time. The <paramref name="spinLimit"/> caps the number
+		/// of spin steps; zero disables spinning. Fair locks grant the lock
+		/// in arrival order and ignore the spin limit.
+		/// </remarks>
+		/// <param name="fair"><c>true</c> if this lock will be fair, else <c>false</c>
+		/// </param>
+		/// <param name="spinLimit">maximum number of spin steps before blocking,
+		/// zero to always block right away</param>
+		/// <exception cref="ArgumentOutOfRangeException">
+		/// If <paramref name="spinLimit"/> is negative.
+		/// </exception>
+		public ReentrantLock(bool fair, int spinLimit)
 		{
-			sync = fair ? (Sync) new FairSync() : new NonfairSync();
+			if (spinLimit < 0)
+				throw new ArgumentOutOfRangeException("spinLimit", spinLimit, "Must not be negative.");
+			sync = fair ? (Sync) new FairSync() : new NonfairSync(spinLimit);
+			_statistics = LockStatistics.ForNewLock(this);
+		}
+
+		/// <summary> 
+		/// Gets / Sets the <see cref="LockStatistics"/> this lock records
+		/// its acquisitions, waits and hold times to, or <c>null</c> (the
+		/// default unless <see cref="LockStatistics.EnabledForNewLocks"/> is
+		/// set) to record nothing. The same instance may be shared by
+		/// several locks to combine their statistics.
+		/// </summary>
+		public LockStatistics Statistics
+		{
+			get { return _statistics; }
+			set { _statistics = value; }
 		}
 
         /// <summary>
@@ -688,7 +919,21 @@ namespace Spring.Threading.Locks
         /// <seealso cref="LockInterruptibly"/>
         public virtual IDisposable Lock()
 		{
-			sync.Lock();
+			LockStatistics stats = _statistics;
+			if (stats == null)
+			{
+				sync.Lock();
+			}
+			else
+			{
+				long waitStart = 0;
+				if (!TryAcquireForStatistics())
+				{
+					waitStart = LockStatistics.Timestamp;
+					sync.Lock();
+				}
+				RecordAcquired(stats, waitStart);
+			}
             return this;
 		}
 
@@ -817,7 +1062,21 @@ namespace Spring.Threading.Locks
         /// <seealso cref="Lock"/>
         public virtual IDisposable LockInterruptibly()
 		{
-			sync.LockInterruptibly();
+			LockStatistics stats = _statistics;
+			if (stats == null)
+			{
+				sync.LockInterruptibly();
+			}
+			else
+			{
+				long waitStart = 0;
+				if (!TryAcquireForStatistics())
+				{
+					waitStart = LockStatistics.Timestamp;
+					sync.LockInterruptibly();
+				}
+				RecordAcquired(stats, waitStart);
+			}
 		    return this;
 		}
 
@@ -854,7 +1113,10 @@ namespace Spring.Threading.Locks
 		/// </returns>
 		public virtual bool TryLock()
 		{
-			return sync.TryLock();
+			if (!sync.TryLock()) return false;
+			LockStatistics stats = _statistics;
+			if (stats != null) RecordAcquired(stats, 0);
+			return true;
 		}
 
 		/// <summary> 
@@ -926,7 +1188,80 @@ namespace Spring.Threading.Locks
 		/// <exception cref="System.Threading.ThreadInterruptedException">If the current thread is interrupted</exception>
 		public virtual bool TryLock(TimeSpan timeSpan)
 		{
-			return sync.TryLock(timeSpan);
+			LockStatistics stats = _statistics;
+			if (stats == null) return sync.TryLock(timeSpan);
+			long waitStart = 0;
+			if (!TryAcquireForStatistics())
+			{
+				waitStart = LockStatistics.Timestamp;
+				if (!sync.TryLock(timeSpan)) return false;
+			}
+			RecordAcquired(stats, waitStart);
+			return true;
+		}
+
+		/// <summary>
+		/// Runs <paramref name="criticalSection"/> on
+		/// <paramref name="executor"/> while holding this lock, without
+		/// blocking the calling thread.
+		/// </summary>
+		/// <param name="executor">The executor to run the critical section.</param>
+		/// <param name="criticalSection">The action to run while holding the lock.</param>
+		/// <returns>
+		/// An <see cref="IFuture{T}"/> that completes with the critical section.
+		/// </returns>
+		/// <seealso cref="LockAsync{T}(IExecutor, Func{T})"/>
+		public virtual IFuture<Void> LockAsync(IExecutor executor, Action criticalSection)
+		{
+			if (criticalSection == null) throw new ArgumentNullException("criticalSection");
+			return LockAsync<Void>(executor, delegate { criticalSection(); return null; });
+		}
+
+		/// <summary>
+		/// Runs <paramref name="criticalSection"/> on
+		/// <paramref name="executor"/> while holding this lock, without
+		/// blocking the calling thread.
+		/// <p/>
+		/// The lock is acquired on behalf of the request as soon as it is
+		/// free, otherwise the request waits in a FIFO queue until a later
+		/// <see cref="Unlock"/> frees the lock. The granted request is then
+		/// handed to the executor, whose thread becomes the owner of the
+		/// lock for the critical section and releases it right after. The
+		/// executor thread never waits for the lock. A fair lock serves its
+		/// blocked threads first.
+		/// <p/>
+		/// Cancelling the returned future before the critical section started
+		/// withdraws the request, releasing the lock if it was already
+		/// acquired for it.
+		/// </summary>
+		/// <param name="executor">The executor to run the critical section.</param>
+		/// <param name="criticalSection">The function to run while holding the lock.</param>
+		/// <returns>
+		/// An <see cref="IFuture{T}"/> that completes with the result of the
+		/// critical section.
+		/// </returns>
+		/// <exception cref="System.ArgumentNullException">
+		/// If <paramref name="executor"/> or <paramref name="criticalSection"/>
+		/// is <c>null</c>.
+		/// </exception>
+		public virtual IFuture<T> LockAsync<T>(IExecutor executor, Func<T> criticalSection)
+		{
+			if (criticalSection == null) throw new ArgumentNullException("criticalSection");
+			long waitStart = _statistics != null && sync.IsLocked ? LockStatistics.Timestamp : 0;
+			return AsyncWaiters.Enqueue(0, executor, delegate
+			{
+				sync.TakeOverFromAsync();
+				LockStatistics stats = _statistics;
+				if (stats != null) RecordAcquired(stats, waitStart);
+				try
+				{
+					return criticalSection();
+				}
+				finally
+				{
+					Unlock();
+				}
+			});
 		}
 
 		/// <summary> 
@@ -940,7 +1275,9 @@ namespace Spring.Threading.Locks
 		/// <exception cref="System.Threading.SynchronizationLockException">if the current thread does not hold this lock.</exception>
 		public virtual void Unlock()
 		{
-			sync.Unlock();
+			Release();
+			AsyncWaitQueue q = _asyncWaiters;
+			if (q != null && q.HasWaiters) q.Dispatch();
 		}
 
 		/// <summary> 
@@ -1086,14 +1423,68 @@ namespace Spring.Threading.Locks
 		/// <summary> 
 		/// Returns a string identifying this lock, as well as its lock
 		/// state.  The state, in brackets, includes either the string
-		/// 'Unlocked' or the string 'Locked by'
-		/// followed by the <see cref="System.Threading.Thread.Name"/>  of the owning thread.
+		/// 'Unlocked', the string 'Locked by thread'
+		/// followed by the <see cref="System.Threading.Thread.Name"/>  of the owning thread,
+		/// or the string 'Locked by asynchronous request'.
 		/// </summary>
 		/// <returns> a string identifying this lock, as well as its lock state.</returns>
 		public override string ToString()
 		{
 			Thread o = Owner;
-			return base.ToString() + ((o == null) ? "[Unlocked]" : "[Locked by thread " + o.Name + "]");
+			if (o != null) return base.ToString() + "[Locked by thread " + o.Name + "]";
+			return base.ToString() + (IsLocked ? "[Locked by asynchronous request]" : "[Unlocked]");
+		}
+
+		private void Release()
+		{
+			LockStatistics stats = _statistics;
+			if (stats == null || sync.HoldCount != 1)
+			{
+				sync.Unlock();
+				return;
+			}
+			long holdStart = _holdStart;
+			_holdStart = 0;
+			sync.Unlock();
+			stats.RecordReleased(holdStart);
+		}
+
+		/// <summary>
+		/// Attempts the acquisition without waiting, so that instrumented
+		/// acquisitions can tell whether they were contended. A fair lock
+		/// does not barge ahead of queued threads, except to re-enter a
+		/// hold of the current thread, which never waits.
+		/// </summary>
+		private bool TryAcquireForStatistics()
+		{
+			return (!sync.IsFair || sync.IsHeldByCurrentThread || !sync.HasQueuedThreads) && sync.TryLock();
+		}
+
+		private void RecordAcquired(LockStatistics stats, long waitStart)
+		{
+			long now = stats.RecordAcquired(waitStart);
+			if (sync.HoldCount == 1) _holdStart = now;
+		}
+
+		private AsyncWaitQueue AsyncWaiters
+		{
+			get
+			{
+				AsyncWaitQueue q = _asyncWaiters;
+				if (q != null) return q;
+				q = new AsyncWaitQueue(TryAcquireForAsync, delegate { sync.ReleaseFromAsync(); });
+#pragma warning disable 420 // a reference to a volatile field will not be treated as volatile
+				return Interlocked.CompareExchange(ref _asyncWaiters, q, null) ?? q;
+#pragma warning restore 420
+			}
+		}
+
+		/// <summary>
+		/// Grants the head asynchronous request by acquiring the lock for it.
+		/// </summary>
+		private bool TryAcquireForAsync(int ignore)
+		{
+			return sync.TryAcquireForAsync();
 		}
 
 		private ConditionVariable AsConditionVariable(ICondition condition)
@@ -1112,7 +1503,7 @@ namespace Spring.Threading.Locks
 
 	    void IDisposable.Dispose()
         {
-            sync.Unlock();
+            Unlock();
         }
 
         #endregion
@@ -1,6 +1,5 @@
 using System;
-using System.Collections;
-using System.Reflection;
+using System.Collections.Generic;
 using System.Runtime.Serialization;
 using System.Threading;
 
@@ -16,18 +15,45 @@ namespace Spring.Threading.Locks
 	/// <ul>
 	/// <li><b>Acquisition order</b></li>
 	/// <p/>
-	/// The order of entry to the
+	/// This class does not impose a reader or writer preference
+	/// ordering for lock access. However, it does support an optional
+	/// <i>fairness</i> policy.
+	/// <p/>
+	/// <b>Non-fair mode (default)</b>
+	/// When constructed as non-fair (the default), the order of entry to the
 	/// lock need not be in arrival order. If readers are
-	/// active and a writer enters the lock then no subsequent readers will
-	/// be granted the read lock until after that writer has acquired and
-	/// released the write lock.
+	/// active and a writer is first in the wait queue then no subsequent
+	/// readers will be granted the read lock until after that writer has
+	/// acquired and released the write lock. A continuously contended
+	/// non-fair lock may indefinitely postpone one or more reader or writer
+	/// threads, but will normally have higher throughput than a fair lock.
+	/// <p/>
+	/// <b>Fair mode</b>
+	/// When constructed as fair, threads contend for entry using an
+	/// approximately arrival-order policy. When the currently held lock
+	/// is released either the longest-waiting single writer thread will
+	/// be assigned the write lock, or if there is a group of reader threads
+	/// waiting longer than all waiting writer threads, that group will be
+	/// assigned the read lock.
+	/// <p/>
+	/// A thread that tries to acquire a fair read lock (non-reentrantly)
+	/// will block if either the write lock is held, or there is a waiting
+	/// writer thread. The thread will not acquire the read lock until
+	/// after the oldest currently waiting writer thread has acquired and
+	/// released the write lock. A thread that tries to acquire a fair
+	/// write lock (non-reentrantly) will block unless both the read lock
+	/// and write lock are free (which implies there are no waiting
+	/// threads). Note that the non-blocking <see cref="ReadLock.TryLock()"/>
+	/// and <see cref="WriteLock.TryLock()"/> methods do not honor this
+	/// fair setting and will acquire the lock if it is possible,
+	/// regardless of waiting threads.
 	/// 
 	/// <li><b>Reentrancy</b></li>
 	/// <p/>
 	/// This lock allows both readers and writers to reacquire read or
-	/// write locks in the style of a <see cref="Spring.Threading.Locks.ReentrantLock"/>. Readers are not
-	/// allowed until all write locks held by the writing thread have been
-	/// released.
+	/// write locks in the style of a <see cref="Spring.Threading.Locks.ReentrantLock"/>. Non-reentrant
+	/// readers are not allowed until all write locks held by the writing
+	/// thread have been released.
 	/// <p/>
 	/// Additionally, a writer can acquire the read lock - but not vice-versa.
 	/// Among other applications, reentrancy can be useful when
@@ -55,8 +81,8 @@ namespace Spring.Threading.Locks
 	/// This <see cref="Spring.Threading.Locks.ICondition"/> can, of course, only be used with the write lock.
 	/// <p/>
 	/// The read lock does not support a <see cref="Spring.Threading.Locks.ICondition"/> and
-	/// <see cref="Spring.Threading.Locks.ReaderLock.NewCondition()"/> throws
-	/// <see cref="System.InvalidOperationException"/>.
+	/// <see cref="ReadLock.NewCondition()"/> throws
+	/// <see cref="System.NotSupportedException"/>.
 	/// 
 	/// <li><b>Instrumentation</b></li>
 	/// <p/> 
@@ -81,21 +107,21 @@ namespace Spring.Threading.Locks
 	///		ReentrantReadWriteLock rwl = new ReentrantReadWriteLock();
 	/// 
 	/// 	void processCachedData() {
-	/// 		rwl.ReadLock.Lock();
+	/// 		rwl.ReaderLock.Lock();
 	/// 		if (!cacheValid) {
-	/// 			rwl.ReadLock.Unlock();
-	/// 			rwl.WriteLock.Lock();
+	/// 			rwl.ReaderLock.Unlock();
+	/// 			rwl.WriterLock.Lock();
 	/// 			if (!cacheValid) {
 	/// 				data = ...
 	/// 				cacheValid = true;
 	/// 			}
 	/// 			// downgrade lock
-	/// 			rwl.ReadLock.Lock();  // reacquire read without giving up write lock
-	/// 			rwl.WriteLock.Unlock(); // unlock write, still hold read
+	/// 			rwl.ReaderLock.Lock();  // reacquire read without giving up write lock
+	/// 			rwl.WriterLock.Unlock(); // unlock write, still hold read
 	/// 		}
 	/// 
 	/// 		use(data);
-	/// 		rwl.ReadLock.Unlock();
+	/// 		rwl.ReaderLock.Unlock();
 	/// 	}
 	/// }
 	/// </code>
@@ -105,27 +131,27 @@ namespace Spring.Threading.Locks
 	/// only when the collections are expected to be large, accessed by
 	/// more reader threads than writer threads, and entail operations with
 	/// overhead that outweighs synchronization overhead. For example, here
-	/// is a class using a TreeMap that is expected to be large and
+	/// is a class using a dictionary that is expected to be large and
 	/// concurrently accessed.
 	/// 
 	/// <code>
 	/// class RWDictionary {
-	///		private final IDictionary m = new Hashtable();
-	/// 	private final ReentrantReadWriteLock rwl = new ReentrantReadWriteLock();
-	/// 	private final Lock r = rwl.ReadLock;
-	/// 	private final Lock w = rwl.WriteLock;
+	///		private readonly IDictionary m = new Hashtable();
+	/// 	private readonly ReentrantReadWriteLock rwl = new ReentrantReadWriteLock();
+	/// 	private readonly ILock r = rwl.ReaderLock;
+	/// 	private readonly ILock w = rwl.WriterLock;
 	/// 
 	/// 	public object Get(string key) {
-	/// 		r.Lock(); try { return m[key]; } finally { r.Unlock(); }
+	/// 		using(r.Lock()) { return m[key]; }
 	/// 	}
 	/// 	public ICollection AllKeys() {
-	/// 		r.Lock(); try { return m.Keys; } finally { r.Unlock(); }
+	/// 		using(r.Lock()) { return m.Keys; }
 	/// 	}
-	/// 	public object Put(string key, object value) {
-	/// 		w.Lock(); try { return m.Add(key, value); } finally { w.Unlock(); }
+	/// 	public void Put(string key, object value) {
+	/// 		using(w.Lock()) { m[key] = value; }
 	/// 	}
-	/// 	public void clear() {
-	/// 		w.Lock(); try { m.Clear(); } finally { w.Unlock(); }
+	/// 	public void Clear() {
+	/// 		using(w.Lock()) { m.Clear(); }
 	/// 	}
 	/// }
 	/// </code>
@@ -134,94 +160,94 @@ namespace Spring.Threading.Locks
 	/// <h3>Implementation Notes</h3>
 	/// 
 	/// <p/>
-	/// A reentrant write lock intrinsically defines an owner and can
-	/// only be released by the thread that acquired it.  In contrast, in
-	/// this implementation, the read lock has no concept of ownership, and
-	/// there is no requirement that the thread releasing a read lock is
-	/// the same as the one that acquired it.  However, this property is
-	/// not guaranteed to hold in future implementations of this class.
+	/// The lock is built on <see cref="AbstractQueuedSynchronizer"/>. The
+	/// lower 16 bits of the synchronization state hold the write hold
+	/// count and the upper 16 bits the total read hold count, so acquiring
+	/// an uncontended read lock is a single compare-and-swap.
 	/// 
-	/// <p/> This lock supports a maximum of 65536 recursive write locks
-	/// and 65536 read locks.
+	/// <p/>
+	/// The per-thread read hold counts, needed for reentrancy and to
+	/// detect unmatched unlocks, are kept off the shared path: the first
+	/// reader's count is held in plain fields, the last successful
+	/// reader's counter is cached, and only other readers fall back to a
+	/// thread local map. None of these allocates once a thread has read
+	/// the lock before, and no reader ever takes a monitor.
+	/// 
+	/// <p/> This lock supports a maximum of 65535 recursive write locks
+	/// and 65535 read locks. Attempts to exceed these limits result in
+	/// <see cref="SynchronizationLockException"/> from locking methods.
 	/// </remarks>
 	/// <author>Doug Lea</author>
 	/// <author>Griffin Caprio(.NET)</author> 
 	[Serializable]
-	public class ReentrantReadWriteLock : IReadWriteLock, ISerializable
+	public class ReentrantReadWriteLock : IReadWriteLock, ISerializable //JDK_1_6
 	{
-        /// <summary>
-        /// Enumeration indicatiing which lock to signal.
-        /// </summary>
-        public enum Signaller
-        {
-            /// <summary>
-            /// No Lock
-            /// </summary>
-            NONE = 0,
-            /// <summary>
-            /// Reader Lock
-            /// </summary>
-            READER = 1,
-            /// <summary>
-            /// Writer Lock
-            /// </summary>
-            WRITER = 2
-        }
-		[NonSerialized] internal int _activeReaders = 0;
-		[NonSerialized] internal Thread _activeWriter = null;
-		[NonSerialized] internal int _waitingReaders = 0;
-		[NonSerialized] internal int _waitingWriters = 0;
-		[NonSerialized] internal int _writeHolds = 0;
-		[NonSerialized] internal Hashtable _readers = new Hashtable();
-
-		internal ReaderLock _readerLock;
-		internal WriterLock _writerLock;
-
-		internal static readonly int ONE = 1;
-
-		[ThreadStatic] internal static readonly NullSignaller Null_Signaller = new NullSignaller();
+		/// <summary>Inner class providing readlock</summary>
+		private readonly ReadLock _readerLock;
+
+		/// <summary>Inner class providing writelock</summary>
+		private readonly WriteLock _writerLock;
+
+		/// <summary>Performs all synchronization mechanics</summary>
+		internal readonly Sync _sync;
 
 		#region Constructors
 
 		/// <summary> 
 		/// Creates a new <see cref="Spring.Threading.Locks.ReentrantReadWriteLock"/> with
-		/// default ordering properties.
+		/// default (nonfair) ordering properties.
+		/// </summary>
+		public ReentrantReadWriteLock() : this(false)
+		{
+		}
+
+		/// <summary> 
+		/// Creates a new <see cref="Spring.Threading.Locks.ReentrantReadWriteLock"/> with
+		/// the given fairness policy.
 		/// </summary>
-		public ReentrantReadWriteLock()
+		/// <param name="fair"><c>true</c> if this lock should use a fair ordering policy.</param>
+		public ReentrantReadWriteLock(bool fair)
 		{
-			_readerLock = new ReaderLock(this);
-			_writerLock = new WriterLock(this);
+			_sync = fair ? (Sync) new FairSync() : new NonfairSync();
+			_sync.Statistics = LockStatistics.ForNewLock(this);
+			_readerLock = new ReadLock(this);
+			_writerLock = new WriteLock(this);
 		}
 
 		/// <summary>
-		/// Deserializes a <see cref="Spring.Threading.Locks.ReentrantReadWriteLock"/> instance from the supplied <see cref="System.Runtime.Serialization.SerializationInfo"/>
+		/// Deserializes a <see cref="Spring.Threading.Locks.ReentrantReadWriteLock"/> instance from the supplied <see cref="System.Runtime.Serialization.SerializationInfo"/>.
+		/// The deserialized lock is always unlocked and keeps the fairness
+		/// policy of the serialized one.
 		/// </summary>
 		/// <param name="info">The <see cref="System.Runtime.Serialization.SerializationInfo"/> to pull date from.</param>
 		/// <param name="context">The contextual information about the source or destination.</param>
 		protected ReentrantReadWriteLock(SerializationInfo info, StreamingContext context)
+			: this(info.GetBoolean("fair"))
 		{
-			Type thisType = this.GetType();
-			MemberInfo[] mi = FormatterServices.GetSerializableMembers(thisType, context);
-			for (int i = 0; i < mi.Length; i++)
-			{
-				FieldInfo fi = (FieldInfo) mi[i];
-				fi.SetValue(this, info.GetValue(fi.Name, fi.FieldType));
-			}
-			lock (this)
-			{
-				_readers = new Hashtable();
-			}
 		}
 
 		#endregion
 
 		#region Properties
 
-		/// <summary>Returns <c>true</c> if this lock has fairness set true. This implementation always returns <c>false</c></summary>
-		/// <returns><c>false</c> if this lock has fairness set false.</returns>
+		/// <summary> 
+		/// Gets / Sets the <see cref="LockStatistics"/> both the read and
+		/// the write lock record their acquisitions and waits to, or
+		/// <c>null</c> (the default unless
+		/// <see cref="LockStatistics.EnabledForNewLocks"/> is set) to record
+		/// nothing. Hold times are recorded for the write lock only.
+		/// </summary>
+		public LockStatistics Statistics
+		{
+			get { return _sync.Statistics; }
+			set { _sync.Statistics = value; }
+		}
+
+		/// <summary>Returns <c>true</c> if this lock has fairness set true.</summary>
+		/// <returns><c>true</c> if this lock has fairness set true.</returns>
 		public bool IsFair
 		{
-			get { return false; }
+			get { return _sync is FairSync; }
 		}
 
 		/// <summary> 
@@ -236,14 +262,7 @@ namespace Spring.Threading.Locks
 		/// </returns>
 		protected internal Thread Owner
 		{
-			get
-			{
-				lock (this)
-				{
-					return _activeWriter;
-				}
-			}
-
+			get { return _sync.Owner; }
 		}
 
 		/// <summary> 
@@ -254,14 +273,7 @@ namespace Spring.Threading.Locks
 		/// <returns>the number of read locks held.</returns>
 		public int ReadLockCount
 		{
-			get
-			{
-				lock (this)
-				{
-					return _activeReaders;
-				}
-			}
-
+			get { return _sync.ReadLockCount; }
 		}
 
 		/// <summary> 
@@ -274,14 +286,7 @@ namespace Spring.Threading.Locks
 		/// </returns>
 		public bool IsWriteLockHeld
 		{
-			get
-			{
-				lock (this)
-				{
-					return _activeWriter != null;
-				}
-			}
-
+			get { return _sync.IsWriteLocked; }
 		}
 
 		/// <summary> 
@@ -291,14 +296,7 @@ namespace Spring.Threading.Locks
 		/// </returns>
 		public bool WriterLockedByCurrentThread
 		{
-			get
-			{
-				lock (this)
-				{
-					return _activeWriter == Thread.CurrentThread;
-				}
-			}
-
+			get { return _sync.IsHeldExclusively(); }
 		}
 
 		/// <summary> 
@@ -311,14 +309,20 @@ namespace Spring.Threading.Locks
 		/// </returns>
 		public int WriteHoldCount
 		{
-			get
-			{
-				lock (this)
-				{
-					return _writeHolds;
-				}
-			}
+			get { return _sync.WriteHoldCount; }
+		}
 
+		/// <summary> 
+		/// Queries the number of reentrant read holds on this lock by the
+		/// current thread. A reader thread has a hold on a lock for
+		/// each lock action that is not matched by an unlock action.
+		/// </summary>
+		/// <returns> the number of holds on the read lock by the current thread,
+		/// or zero if the read lock is not held by the current thread.
+		/// </returns>
+		public int ReadHoldCount
+		{
+			get { return _sync.ReadHoldCount; }
 		}
 
 		/// <summary> 
@@ -332,47 +336,100 @@ namespace Spring.Threading.Locks
 		/// <returns>the estimated number of threads waiting for this lock</returns>
 		public int QueueLength
 		{
-			get
-			{
-				lock (this)
-				{
-					return _waitingWriters + _waitingReaders;
-				}
-			}
+			get { return _sync.QueueLength; }
 		}
 
-		/// <summary>
-		/// Gets the write lock associated with this <see cref="Spring.Threading.Locks.ReentrantReadWriteLock"/> instance.
+		/// <summary> 
+		/// Queries whether any threads are waiting to acquire the read or
+		/// write lock. Note that because cancellations may occur at any
+		/// time, a <c>true</c> return does not guarantee that any other
+		/// thread will ever acquire a lock.  This method is designed
+		/// primarily for use in monitoring of the system state.
 		/// </summary>
-		public ILock WriterLock
+		/// <returns> <c>true</c> if there may be other threads waiting to
+		/// acquire the lock, <c>false</c> otherwise.
+		/// </returns>
+		public bool HasQueuedThreads
 		{
-			get { return _writerLock; }
+			get { return _sync.HasQueuedThreads; }
 		}
 
-		/// <summary>
-		/// Gets the read lock associated with this <see cref="Spring.Threading.Locks.ReentrantReadWriteLock"/> instance.
+		/// <summary> 
+		/// Queries whether the <paramref name="thread"/> is waiting to acquire
+		/// either the read or write lock. Note that because cancellations may
+		/// occur at any time, a <c>true</c> return does not guarantee that
+		/// this thread will ever acquire a lock.  This method is designed
+		/// primarily for use in monitoring of the system state.
 		/// </summary>
-		public ILock ReaderLock
+		/// <param name="thread">the <see cref="System.Threading.Thread"/> instance.</param>
+		/// <returns> <c>true</c> if the given thread is queued waiting for this lock, <c>false</c> otherwise.</returns>
+		/// <exception cref="System.ArgumentNullException">if <paramref name="thread"/> is null.</exception>
+		public bool IsQueuedThread(Thread thread)
 		{
-			get { return _readerLock; }
+			return _sync.IsQueued(thread);
 		}
 
-		/// <summary>
-		/// Gets the ReaderLock signaller for this <see cref="Spring.Threading.Locks.ReentrantReadWriteLock"/> instance. 
+		/// <summary> 
+		/// Returns a collection containing threads that may be waiting to
+		/// acquire either the read or write lock.  Since the actual set of
+		/// threads may change dynamically while constructing this result,
+		/// the returned collection is only a best-effort estimate.  The
+		/// elements of the returned collection are in no particular order.
+		/// This method is designed to facilitate construction of subclasses
+		/// that provide more extensive monitoring facilities.
 		/// </summary>
-		internal ISignaller SignallerReaderLock
+		/// <returns> collection of threads</returns>
+		protected internal virtual ICollection<Thread> QueuedThreads
 		{
-			get { return _readerLock; }
+			get { return _sync.QueuedThreads; }
+		}
+
+		/// <summary> 
+		/// Returns a collection containing threads that may be waiting to
+		/// acquire the write lock.  Since the actual set of threads may
+		/// change dynamically while constructing this result, the returned
+		/// collection is only a best-effort estimate.  The elements of the
+		/// returned collection are in no particular order.  This method is
+		/// designed to facilitate construction of subclasses that provide
+		/// more extensive lock monitoring facilities.
+		/// </summary>
+		/// <returns> collection of threads</returns>
+		protected internal virtual ICollection<Thread> QueuedWriterThreads
+		{
+			get { return _sync.ExclusiveQueuedThreads; }
+		}
+
+		/// <summary> 
+		/// Returns a collection containing threads that may be waiting to
+		/// acquire the read lock.  Since the actual set of threads may
+		/// change dynamically while constructing this result, the returned
+		/// collection is only a best-effort estimate.  The elements of the
+		/// returned collection are in no particular order.  This method is
+		/// designed to facilitate construction of subclasses that provide
+		/// more extensive lock monitoring facilities.
+		/// </summary>
+		/// <returns> collection of threads</returns>
+		protected internal virtual ICollection<Thread> QueuedReaderThreads
+		{
+			get { return _sync.SharedQueuedThreads; }
 		}
 
 		/// <summary>
-		/// Gets the WriterLock signaller for this <see cref="Spring.Threading.Locks.ReentrantReadWriteLock"/> instance. 
+		/// Gets the write lock associated with this <see cref="Spring.Threading.Locks.ReentrantReadWriteLock"/> instance.
 		/// </summary>
-		internal ISignaller SignallerWriterLock
+		public ILock WriterLock
 		{
 			get { return _writerLock; }
 		}
 
+		/// <summary>
+		/// Gets the read lock associated with this <see cref="Spring.Threading.Locks.ReentrantReadWriteLock"/> instance.
+		/// </summary>
+		public ILock ReaderLock
+		{
+			get { return _readerLock; }
+		}
+
 		#endregion	
 
 		#region Public Methods
@@ -388,7 +445,8 @@ namespace Spring.Threading.Locks
 		/// </returns>
 		public override String ToString()
 		{
-			return base.ToString() + "[Write locks = " + WriteHoldCount + ", Read locks = " + ReadLockCount + "]";
+			int c = _sync.Count;
+			return base.ToString() + "[Write locks = " + Sync.ExclusiveCount(c) + ", Read locks = " + Sync.SharedCount(c) + "]";
 		}
 
 		/// <summary>
@@ -396,321 +454,956 @@ namespace Spring.Threading.Locks
 		/// </summary>
 		/// <param name="info">The <see cref="System.Runtime.Serialization.SerializationInfo"/> to populate with data.</param>
 		/// <param name="context">The destination (see <see cref="System.Runtime.Serialization.StreamingContext"/>) for this serialization. </param>
-		public void GetObjectData(SerializationInfo info, StreamingContext context)
+		public virtual void GetObjectData(SerializationInfo info, StreamingContext context)
 		{
-			Type thisType = this.GetType();
-			MemberInfo[] mi = FormatterServices.GetSerializableMembers(thisType, context);
-			for (int i = 0; i < mi.Length; i++)
-			{
-				info.AddValue(mi[i].Name, ((FieldInfo) mi[i]).GetValue(this));
-			}
+			info.AddValue("fair", IsFair);
 		}
 
-		#endregion
-
-		#region Internal Lock Management Methods
-
-		/// <summary>
-		/// Attemptes to aquire a new read lock for the current thread. If the read lock was not aquired, the number of readers waiting for a 
-		/// read lock is incremented. 
+		/// <summary> 
+		/// Queries whether any threads are waiting on the <paramref name="condition"/>
+		/// associated with the write lock. Note that because timeouts and
+		/// interrupts may occur at any time, a <c>true</c> return does
+		/// not guarantee that a future <tt>signal</tt> will awaken any
+		/// threads.  This method is designed primarily for use in
+		/// monitoring of the system state.
 		/// </summary>
-		/// <returns><c>true</c> if a read lock was aquired, <c>false</c> otherwise.</returns>
-		internal bool StartReadFromNewReader()
+		/// <param name="condition">the condition</param>
+		/// <returns> <c>true</c> if there are any waiting threads.</returns>
+		/// <exception cref="System.ArgumentNullException">if the <paramref name="condition"/> is null</exception>
+		/// <exception cref="System.ArgumentException">if the <paramref name="condition"/> is not associated with this lock</exception>
+		/// <exception cref="SynchronizationLockException">if the write lock is not held</exception>
+		public virtual bool HasWaiters(ICondition condition)
 		{
-			lock (this)
-			{
-				bool pass = StartRead();
-				if (!pass)
-					++_waitingReaders;
-				return pass;
-			}
+			return _sync.HasWaiters(AsConditionObject(condition));
 		}
 
-		/// <summary>
-		/// Attemps to aquire a new write lock for the current thread.  If the write lock was not aquired, the number of writers waiting for a 
-		/// write lock is incremented.
+		/// <summary> 
+		/// Returns an estimate of the number of threads waiting on the
+		/// <paramref name="condition"/> associated with the write lock. Note that because
+		/// timeouts and interrupts may occur at any time, the estimate
+		/// serves only as an upper bound on the actual number of waiters.
+		/// This method is designed for use in monitoring of the system
+		/// state, not for synchronization control.
 		/// </summary>
-		/// <returns><c>true</c> if the write lock was aquired, <c>false</c> otherwise.</returns>
-		internal bool StartWriteFromNewWriter()
+		/// <param name="condition">the condition</param>
+		/// <returns> the estimated number of waiting threads.</returns>
+		/// <exception cref="System.ArgumentNullException">if the <paramref name="condition"/> is null</exception>
+		/// <exception cref="System.ArgumentException">if the <paramref name="condition"/> is not associated with this lock</exception>
+		/// <exception cref="SynchronizationLockException">if the write lock is not held</exception>
+		public virtual int GetWaitQueueLength(ICondition condition)
 		{
-			lock (this)
-			{
-				bool pass = StartWrite();
-				if (!pass)
-					++_waitingWriters;
-				return pass;
-			}
+			return _sync.GetWaitQueueLength(AsConditionObject(condition));
 		}
 
-		/// <summary>
-		/// Attemps to aquire a new read lock from the current threads waiting readers.  If the read lock was aquired, the number of waiting readers
-		/// is decremented.
+		/// <summary> 
+		/// Returns a collection containing those threads that may be
+		/// waiting on the <paramref name="condition"/> associated with the write lock.
+		/// Because the actual set of threads may change dynamically while
+		/// constructing this result, the returned collection is only a
+		/// best-effort estimate. The elements of the returned collection
+		/// are in no particular order.  This method is designed to
+		/// facilitate construction of subclasses that provide more
+		/// extensive condition monitoring facilities.
 		/// </summary>
-		/// <returns><c>true</c> if the read lock was aquired, <c>false</c> otherwise.</returns>
-		internal bool StartReadFromWaitingReader()
+		/// <param name="condition">the condition</param>
+		/// <returns> the collection of threads waiting on <paramref name="condition"/></returns>
+		/// <exception cref="System.ArgumentNullException">if the <paramref name="condition"/> is null</exception>
+		/// <exception cref="System.ArgumentException">if the <paramref name="condition"/> is not associated with this lock</exception>
+		/// <exception cref="SynchronizationLockException">if the write lock is not held</exception>
+		protected internal virtual ICollection<Thread> GetWaitingThreads(ICondition condition)
 		{
-			lock (this)
-			{
-				bool pass = StartRead();
-				if (pass)
-					--_waitingReaders;
-				return pass;
-			}
+			return _sync.GetWaitingThreads(AsConditionObject(condition));
 		}
 
-		/// <summary>
-		/// Attempes to aquire a new write lock for the current thread.  If the write lock was aquired, the number of waiting writers for a write lock
-		/// is decremented.
-		/// </summary>
-		/// <returns><c>true</c> if the write lock was aquired, <c>false</c> otherwise.</returns>
-		internal bool StartWriteFromWaitingWriter()
+		private static AbstractQueuedSynchronizer.ConditionObject AsConditionObject(ICondition condition)
 		{
-			lock (this)
-			{
-				bool pass = StartWrite();
-				if (pass)
-					--_waitingWriters;
-				return pass;
-			}
+			if (condition == null) throw new ArgumentNullException("condition");
+			AbstractQueuedSynchronizer.ConditionObject c = condition as AbstractQueuedSynchronizer.ConditionObject;
+			if (c == null) throw new ArgumentException("Not owner", "condition");
+			return c;
 		}
 
+		#endregion
+
+		#region Synchronizer
+
 		/// <summary>
-		/// Cancels a reader waiting for a read lock.
+		/// Synchronization implementation for <see cref="ReentrantReadWriteLock"/>.
+		/// Subclassed into fair and nonfair versions.
 		/// </summary>
-		internal void CancelWaitingReader()
+		[Serializable]
+		internal abstract class Sync : AbstractQueuedSynchronizer
 		{
-			lock (this)
+			/*
+			 * Read vs write count extraction constants and functions.
+			 * Lock state is logically divided into two unsigned shorts:
+			 * The lower one representing the exclusive (writer) lock hold count,
+			 * and the upper the shared (reader) hold count.
+			 */
+			internal const int SHARED_SHIFT = 16;
+			internal const int SHARED_UNIT = (1 << SHARED_SHIFT);
+			internal const int MAX_COUNT = (1 << SHARED_SHIFT) - 1;
+			internal const int EXCLUSIVE_MASK = (1 << SHARED_SHIFT) - 1;
+
+			/// <summary>Returns the number of shared holds represented in count.</summary>
+			internal static int SharedCount(int c)
+			{
+				return (int) ((uint) c >> SHARED_SHIFT);
+			}
+
+			/// <summary>Returns the number of exclusive holds represented in count.</summary>
+			internal static int ExclusiveCount(int c)
+			{
+				return c & EXCLUSIVE_MASK;
+			}
+
+			/// <summary>
+			/// A counter for per-thread read hold counts. Maintained as a
+			/// thread local; cached in <see cref="_cachedHoldCounter"/>.
+			/// </summary>
+			internal sealed class HoldCounter
+			{
+				internal int Count;
+				internal readonly Thread Owner = Thread.CurrentThread;
+			}
+
+			/// <summary>
+			/// The read hold counters of the current thread, one per lock it
+			/// holds for reading other than as first reader. An entry is
+			/// removed whenever the thread's read hold count drops to 0.
+			/// </summary>
+			[ThreadStatic]
+			private static Dictionary<Sync, HoldCounter> _readHolds;
+
+			/// <summary>
+			/// The hold count of the last thread to successfully acquire
+			/// the read lock. This saves the thread local lookup in the
+			/// common case where the next release is of the last acquire.
+			/// This is non-volatile since it is just used as a heuristic,
+			/// and would be great for threads to cache.
+			/// </summary>
+			[NonSerialized]
+			private HoldCounter _cachedHoldCounter;
+
+			/// <summary>
+			/// <see cref="_firstReader"/> is the first thread to have
+			/// acquired the read lock. <see cref="_firstReaderHoldCount"/>
+			/// is its hold count. This allows tracking of read holds for
+			/// uncontended read locks to be very cheap.
+			/// </summary>
+			[NonSerialized]
+			private Thread _firstReader;
+			[NonSerialized]
+			private int _firstReaderHoldCount;
+
+			/// <summary>
+			/// Statistics recorded by both lock views, <c>null</c> when
+			/// instrumentation is off.
+			/// </summary>
+			[NonSerialized]
+			internal volatile LockStatistics Statistics;
+
+			/// <summary>
+			/// Time stamp of the outermost write acquisition, only
+			/// maintained while <see cref="Statistics"/> is set.
+			/// </summary>
+			[NonSerialized]
+			private long _writeHoldStart;
+
+			/// <summary>
+			/// Returns <c>true</c> if the current thread, when trying to
+			/// acquire the read lock, and otherwise eligible to do so,
+			/// should block because of policy for overtaking other waiting
+			/// threads.
+			/// </summary>
+			internal abstract bool ReaderShouldBlock();
+
+			/// <summary>
+			/// Returns <c>true</c> if the current thread, when trying to
+			/// acquire the write lock, and otherwise eligible to do so,
+			/// should block because of policy for overtaking other waiting
+			/// threads.
+			/// </summary>
+			internal abstract bool WriterShouldBlock();
+
+			/// <summary>
+			/// Returns the current thread's hold counter, creating and
+			/// registering it if absent.
+			/// </summary>
+			private HoldCounter ReadHolds
+			{
+				get
+				{
+					Dictionary<Sync, HoldCounter> readHolds = _readHolds;
+					if (readHolds == null) _readHolds = readHolds = new Dictionary<Sync, HoldCounter>();
+					HoldCounter rh;
+					if (!readHolds.TryGetValue(this, out rh))
+					{
+						rh = new HoldCounter();
+						readHolds.Add(this, rh);
+					}
+					return rh;
+				}
+			}
+
+			private void SetReadHolds(HoldCounter rh)
+			{
+				Dictionary<Sync, HoldCounter> readHolds = _readHolds;
+				if (readHolds == null) _readHolds = readHolds = new Dictionary<Sync, HoldCounter>();
+				readHolds[this] = rh;
+			}
+
+			private void RemoveReadHolds()
 			{
-				--_waitingReaders;
+				Dictionary<Sync, HoldCounter> readHolds = _readHolds;
+				if (readHolds != null) readHolds.Remove(this);
+			}
+
+			/*
+			 * Note that TryRelease and TryAcquire can be called by
+			 * Conditions. So it is possible that their arguments contain
+			 * both read and write holds that are all released during a
+			 * condition wait and re-established in TryAcquire.
+			 */
+
+			protected override bool TryRelease(int releases)
+			{
+				if (!IsHeldExclusively()) throw new SynchronizationLockException();
+				int nextc = State - releases;
+				bool free = ExclusiveCount(nextc) == 0;
+				if (free) ExclusiveOwnerThread = null;
+				State = nextc;
+				return free;
+			}
+
+			protected override bool TryAcquire(int acquires)
+			{
+				/*
+				 * Walkthrough:
+				 * 1. If read count nonzero or write count nonzero
+				 *    and owner is a different thread, fail.
+				 * 2. If count would saturate, fail. (This can only
+				 *    happen if count is already nonzero.)
+				 * 3. Otherwise, this thread is eligible for lock if
+				 *    it is either a reentrant acquire or
+				 *    queue policy allows it. If so, update state
+				 *    and set owner.
+				 */
+				Thread current = Thread.CurrentThread;
+				int c = State;
+				int w = ExclusiveCount(c);
+				if (c != 0)
+				{
+					// (Note: if c != 0 and w == 0 then shared count != 0)
+					if (w == 0 || current != ExclusiveOwnerThread) return false;
+					if (w + ExclusiveCount(acquires) > MAX_COUNT)
+						throw new SynchronizationLockException("Maximum lock count exceeded");
+					// Reentrant acquire
+					State = c + acquires;
+					return true;
+				}
+				if (WriterShouldBlock() || !CompareAndSetState(c, c + acquires)) return false;
+				ExclusiveOwnerThread = current;
+				return true;
+			}
+
+			protected override bool TryReleaseShared(int unused)
+			{
+				Thread current = Thread.CurrentThread;
+				if (_firstReader == current)
+				{
+					if (_firstReaderHoldCount == 1) _firstReader = null;
+					else _firstReaderHoldCount--;
+				}
+				else
+				{
+					HoldCounter rh = _cachedHoldCounter;
+					if (rh == null || rh.Owner != current) rh = ReadHolds;
+					int count = rh.Count;
+					if (count <= 1)
+					{
+						RemoveReadHolds();
+						if (count <= 0)
+							throw new SynchronizationLockException("attempt to unlock read lock, not locked by current thread");
+					}
+					--rh.Count;
+				}
+				for (;;)
+				{
+					int c = State;
+					int nextc = c - SHARED_UNIT;
+					if (CompareAndSetState(c, nextc))
+						// Releasing the read lock has no effect on readers,
+						// but it may allow waiting writers to proceed if
+						// both read and write locks are now free.
+						return nextc == 0;
+				}
+			}
+
+			protected override int TryAcquireShared(int unused)
+			{
+				/*
+				 * Walkthrough:
+				 * 1. If write lock held by another thread, fail.
+				 * 2. Otherwise, this thread is eligible for
+				 *    lock wrt state, so ask if it should block
+				 *    because of queue policy. If not, try
+				 *    to grant by CASing state and updating count.
+				 *    Note that step does not check for reentrant
+				 *    acquires, which is postponed to full version
+				 *    to avoid having to check hold count in
+				 *    the more typical non-reentrant case.
+				 * 3. If step 2 fails either because thread
+				 *    apparently not eligible or CAS fails or count
+				 *    saturated, chain to version with full retry loop.
+				 */
+				Thread current = Thread.CurrentThread;
+				int c = State;
+				if (ExclusiveCount(c) != 0 && ExclusiveOwnerThread != current) return -1;
+				int r = SharedCount(c);
+				if (!ReaderShouldBlock() && r < MAX_COUNT && CompareAndSetState(c, c + SHARED_UNIT))
+				{
+					if (r == 0)
+					{
+						_firstReader = current;
+						_firstReaderHoldCount = 1;
+					}
+					else if (_firstReader == current)
+					{
+						_firstReaderHoldCount++;
+					}
+					else
+					{
+						HoldCounter rh = _cachedHoldCounter;
+						if (rh == null || rh.Owner != current) _cachedHoldCounter = rh = ReadHolds;
+						else if (rh.Count == 0) SetReadHolds(rh);
+						rh.Count++;
+					}
+					return 1;
+				}
+				return FullTryAcquireShared(current);
+			}
+
+			/// <summary>
+			/// Full version of acquire for reads, that handles CAS misses
+			/// and reentrant reads not dealt with in
+			/// <see cref="TryAcquireShared"/>.
+			/// </summary>
+			private int FullTryAcquireShared(Thread current)
+			{
+				HoldCounter rh = null;
+				for (;;)
+				{
+					int c = State;
+					if (ExclusiveCount(c) != 0)
+					{
+						if (ExclusiveOwnerThread != current) return -1;
+						// else we hold the exclusive lock; blocking here
+						// would cause deadlock.
+					}
+					else if (ReaderShouldBlock())
+					{
+						// Make sure we're not acquiring read lock reentrantly
+						if (_firstReader != current)
+						{
+							if (rh == null)
+							{
+								rh = _cachedHoldCounter;
+								if (rh == null || rh.Owner != current)
+								{
+									rh = ReadHolds;
+									if (rh.Count == 0) RemoveReadHolds();
+								}
+							}
+							if (rh.Count == 0) return -1;
+						}
+					}
+					if (SharedCount(c) == MAX_COUNT)
+						throw new SynchronizationLockException("Maximum lock count exceeded");
+					if (CompareAndSetState(c, c + SHARED_UNIT))
+					{
+						if (SharedCount(c) == 0)
+						{
+							_firstReader = current;
+							_firstReaderHoldCount = 1;
+						}
+						else if (_firstReader == current)
+						{
+							_firstReaderHoldCount++;
+						}
+						else
+						{
+							if (rh == null) rh = _cachedHoldCounter;
+							if (rh == null || rh.Owner != current) rh = ReadHolds;
+							else if (rh.Count == 0) SetReadHolds(rh);
+							rh.Count++;
+							_cachedHoldCounter = rh; // cache for release
+						}
+						return 1;
+					}
+				}
+			}
+
+			/// <summary>
+			/// Performs TryLock for write, enabling barging in both modes.
+			/// This is identical in effect to <see cref="TryAcquire"/>
+			/// except for lack of calls to <see cref="WriterShouldBlock"/>.
+			/// </summary>
+			internal bool TryWriteLock()
+			{
+				Thread current = Thread.CurrentThread;
+				int c = State;
+				if (c != 0)
+				{
+					int w = ExclusiveCount(c);
+					if (w == 0 || current != ExclusiveOwnerThread) return false;
+					if (w == MAX_COUNT) throw new SynchronizationLockException("Maximum lock count exceeded");
+				}
+				if (!CompareAndSetState(c, c + 1)) return false;
+				ExclusiveOwnerThread = current;
+				return true;
+			}
+
+			/// <summary>
+			/// Performs TryLock for read, enabling barging in both modes.
+			/// This is identical in effect to <see cref="TryAcquireShared"/>
+			/// except for lack of calls to <see cref="ReaderShouldBlock"/>.
+			/// </summary>
+			internal bool TryReadLock()
+			{
+				Thread current = Thread.CurrentThread;
+				for (;;)
+				{
+					int c = State;
+					if (ExclusiveCount(c) != 0 && ExclusiveOwnerThread != current) return false;
+					int r = SharedCount(c);
+					if (r == MAX_COUNT) throw new SynchronizationLockException("Maximum lock count exceeded");
+					if (CompareAndSetState(c, c + SHARED_UNIT))
+					{
+						if (r == 0)
+						{
+							_firstReader = current;
+							_firstReaderHoldCount = 1;
+						}
+						else if (_firstReader == current)
+						{
+							_firstReaderHoldCount++;
+						}
+						else
+						{
+							HoldCounter rh = _cachedHoldCounter;
+							if (rh == null || rh.Owner != current) _cachedHoldCounter = rh = ReadHolds;
+							else if (rh.Count == 0) SetReadHolds(rh);
+							rh.Count++;
+						}
+						return true;
+					}
+				}
+			}
+
+			/// <summary>
+			/// Attempts an instrumented read acquisition without waiting,
+			/// not barging ahead of queued threads.
+			/// </summary>
+			internal bool TryReadLockForStatistics()
+			{
+				return !HasQueuedThreads && TryReadLock();
+			}
+
+			/// <summary>
+			/// Attempts an instrumented write acquisition without waiting,
+			/// not barging ahead of queued threads.
+			/// </summary>
+			internal bool TryWriteLockForStatistics()
+			{
+				return !HasQueuedThreads && TryWriteLock();
+			}
+
+			internal void RecordWriteAcquired(LockStatistics stats, long waitStart)
+			{
+				long now = stats.RecordAcquired(waitStart);
+				if (WriteHoldCount == 1) _writeHoldStart = now;
+			}
+
+			/// <summary>
+			/// Releases one write hold, recording the hold time on the final
+			/// release.
+			/// </summary>
+			internal void ReleaseWrite()
+			{
+				LockStatistics stats = Statistics;
+				if (stats == null || WriteHoldCount != 1)
+				{
+					Release(1);
+					return;
+				}
+				long holdStart = _writeHoldStart;
+				_writeHoldStart = 0;
+				Release(1);
+				stats.RecordReleased(holdStart);
+			}
+
+			protected internal override bool IsHeldExclusively()
+			{
+				// While we must in general read state before owner, we
+				// don't need to do so to check if current thread is owner
+				return ExclusiveOwnerThread == Thread.CurrentThread;
+			}
+
+			internal ConditionObject NewCondition()
+			{
+				return new ConditionObject(this);
+			}
+
+			internal Thread Owner
+			{
+				get
+				{
+					// Must read state before owner to ensure memory consistency
+					return ExclusiveCount(State) == 0 ? null : ExclusiveOwnerThread;
+				}
+			}
+
+			internal int ReadLockCount
+			{
+				get { return SharedCount(State); }
+			}
+
+			internal bool IsWriteLocked
+			{
+				get { return ExclusiveCount(State) != 0; }
+			}
+
+			internal int WriteHoldCount
+			{
+				get { return IsHeldExclusively() ? ExclusiveCount(State) : 0; }
+			}
+
+			internal int ReadHoldCount
+			{
+				get
+				{
+					if (ReadLockCount == 0) return 0;
+
+					Thread current = Thread.CurrentThread;
+					if (_firstReader == current) return _firstReaderHoldCount;
+
+					HoldCounter rh = _cachedHoldCounter;
+					if (rh != null && rh.Owner == current) return rh.Count;
+
+					Dictionary<Sync, HoldCounter> readHolds = _readHolds;
+					return readHolds != null && readHolds.TryGetValue(this, out rh) ? rh.Count : 0;
+				}
+			}
+
+			internal int Count
+			{
+				get { return State; }
 			}
 		}
 
 		/// <summary>
-		/// Cancels a writer waiting for a write lock.
+		/// Nonfair version of <see cref="Sync"/>.
 		/// </summary>
-		internal void CancelWaitingWriter()
+		[Serializable]
+		private sealed class NonfairSync : Sync
 		{
-			lock (this)
+			internal override bool WriterShouldBlock()
 			{
-				--_waitingWriters;
+				return false; // writers can always barge
+			}
+
+			internal override bool ReaderShouldBlock()
+			{
+				/* As a heuristic to avoid indefinite writer starvation,
+				 * block if the thread that momentarily appears to be head
+				 * of queue, if one exists, is a waiting writer.  This is
+				 * only a probabilistic effect since a new reader will not
+				 * block if there is a waiting writer behind other enabled
+				 * readers that have not yet drained from the queue.
+				 */
+				return ApparentlyFirstQueuedIsExclusive;
 			}
 		}
 
 		/// <summary>
-		/// Determines if new read locks from the current thread are able to be aquired.
+		/// Fair version of <see cref="Sync"/>. Readers and writers alike
+		/// queue behind any thread that has been waiting longer, so a
+		/// steady stream of readers cannot postpone a queued writer.
 		/// </summary>
-		/// <remarks>
-		/// The criteria to determine if new read locks from the current thread are able to be aquired are as follows:
-		/// <ul>
-		///	<li>
-		/// If there is no active writer and there are no waiting writers	
-		///	</li> 
-		///	<li>
-		/// If the active writer is the current thrad.	
-		///	</li>
-		/// </ul>
-		/// <p/>
-		/// If either of the above condidtions is true, readers are allowed.  Otherwise, no readers are allowed.
-		/// </remarks>
-		internal bool AllowReader
+		[Serializable]
+		private sealed class FairSync : Sync
 		{
-			get { return (_activeWriter == null && _waitingWriters == 0) || _activeWriter == Thread.CurrentThread; }
+			internal override bool WriterShouldBlock()
+			{
+				return HasQueuedPredecessors;
+			}
+
+			internal override bool ReaderShouldBlock()
+			{
+				return HasQueuedPredecessors;
+			}
 		}
 
+		#endregion
+
+		#region Lock views
+
 		/// <summary>
-		/// Determines if new write locks from the current thread can be aquried.
+		/// The lock returned by <see cref="ReentrantReadWriteLock.ReaderLock"/>.
 		/// </summary>
-		/// <remarks>
-		/// The criteria to determine if new write locks from the current thread are able to be aquired are as follows:
-		/// <ul>
-		/// <li>
-		/// The number of active readers is 0. 
-		/// </li>
-		/// <li>
-		/// There is only one total reader and it is the current thread. 
-		/// </li>
-		/// </ul>
-		/// If either of the above condiditions is true, writers are allowed.  Otherwise, no writers are allowed.
-		/// </remarks>
-		internal bool AllowWriter
+		[Serializable]
+		public class ReadLock : ILock, IDisposable
 		{
-			get { return _activeReaders == 0 || (_readers.Count == 1 && _readers[Thread.CurrentThread] != null); }
-		}
+			private readonly Sync _sync;
 
-		/// <summary>
-		///	Attempts to start a new read lock for the current Thread.  
-		///	</summary>
-		///	<remarks>
-		///	If the current thread already has a read lock, the number of active readers is simply incremented, as well as the number of readers for that 
-		///	thread.
-		///	<p/>
-		///	If the current thread does <b>not</b> have a read lock, and readers are allowed, the number of active readers is incremented, as well as the 
-		///	number of readers for that thread.
-		///	<p/>
-		///	If the current thread does not have a read lock, and new read locks are <b>not</b> allowed, false is returned and a new read lock is <b>not</b>
-		///	aquired.   
-		/// </remarks>
-		/// <returns><c>true</c> if a read lock was aquired, <c>false</c> otherwise.</returns>
-		internal bool StartRead()
-		{
-			lock (this)
+			/// <summary>
+			/// Constructor for use by subclasses.
+			/// </summary>
+			/// <param name="lock">The outer lock object.</param>
+			/// <exception cref="ArgumentNullException">
+			/// If <paramref name="lock"/> is <c>null</c>.
+			/// </exception>
+			protected internal ReadLock(ReentrantReadWriteLock @lock)
+			{
+				if (@lock == null) throw new ArgumentNullException("lock");
+				_sync = @lock._sync;
+			}
+
+			/// <summary>
+			/// Acquires the read lock.
+			/// </summary>
+			/// <remarks>
+			/// Acquires the read lock if the write lock is not held by
+			/// another thread and returns immediately. If the write lock is
+			/// held by another thread then the current thread becomes
+			/// disabled for thread scheduling purposes and lies dormant
+			/// until the read lock has been acquired.
+			/// </remarks>
+			/// <returns>
+			/// An <see cref="IDisposable"/> that releases the read lock when
+			/// disposed.
+			/// </returns>
+			public virtual IDisposable Lock()
 			{
-				Thread currentThread = Thread.CurrentThread;
-				object currentReaderCountForThread = _readers[currentThread];
-				if (currentReaderCountForThread != null)
+				LockStatistics stats = _sync.Statistics;
+				if (stats == null)
 				{
-					_readers[currentThread] = (int) (currentReaderCountForThread) + 1;
-					++_activeReaders;
-					return true;
+					_sync.AcquireShared(1);
 				}
-				else if (AllowReader)
+				else
 				{
-					_readers[currentThread] = ONE;
-					++_activeReaders;
-					return true;
+					long waitStart = 0;
+					if (!_sync.TryReadLockForStatistics())
+					{
+						waitStart = LockStatistics.Timestamp;
+						_sync.AcquireShared(1);
+					}
+					stats.RecordAcquired(waitStart);
 				}
-				else
-					return false;
+				return this;
 			}
-		}
 
-		/// <summary>
-		///	Attempts to start a new write lock for the current Thread.  
-		///	</summary>
-		///	<remarks>
-		///	If the current thread is already the active writer, the number of writer holds is simply incremented.  Otherwise, if there are no current
-		///	write holds and writers are allowed, the current thread becomes the active writer. 
-		/// </remarks>
-		/// <returns><c>true</c> if a write lock was aquired, <c>false</c> otherwise.</returns>
-		internal bool StartWrite()
-		{
-			lock (this)
+			/// <summary>
+			/// Acquires the read lock unless the current thread is
+			/// interrupted.
+			/// </summary>
+			/// <returns>
+			/// An <see cref="IDisposable"/> that releases the read lock when
+			/// disposed.
+			/// </returns>
+			/// <exception cref="ThreadInterruptedException">
+			/// If the current thread is interrupted.
+			/// </exception>
+			public virtual IDisposable LockInterruptibly()
 			{
-				if (_activeWriter == Thread.CurrentThread)
+				LockStatistics stats = _sync.Statistics;
+				if (stats == null)
 				{
-					++_writeHolds;
-					return true;
+					_sync.AcquireSharedInterruptibly(1);
 				}
-				else if (_writeHolds == 0)
+				else
 				{
-					if (AllowWriter)
+					long waitStart = 0;
+					if (!_sync.TryReadLockForStatistics())
 					{
-						_activeWriter = Thread.CurrentThread;
-						_writeHolds = 1;
-						return true;
-					}
-					else
-					{
-						return false;
+						waitStart = LockStatistics.Timestamp;
+						_sync.AcquireSharedInterruptibly(1);
 					}
+					stats.RecordAcquired(waitStart);
 				}
-				else
+				return this;
+			}
+
+			/// <summary>
+			/// Acquires the read lock only if the write lock is not held by
+			/// another thread at the time of invocation. Even when the lock
+			/// has been set to use a fair ordering policy, a call to
+			/// <see cref="TryLock()"/> will immediately acquire the read lock
+			/// if it is available.
+			/// </summary>
+			/// <returns><c>true</c> if the read lock was acquired.</returns>
+			public virtual bool TryLock()
+			{
+				if (!_sync.TryReadLock()) return false;
+				LockStatistics stats = _sync.Statistics;
+				if (stats != null) stats.RecordAcquired(0);
+				return true;
+			}
+
+			/// <summary>
+			/// Acquires the read lock if the write lock is not held by
+			/// another thread within the given waiting time and the current
+			/// thread has not been interrupted.
+			/// </summary>
+			/// <param name="timeSpan">The time to wait for the read lock.</param>
+			/// <returns><c>true</c> if the read lock was acquired.</returns>
+			/// <exception cref="ThreadInterruptedException">
+			/// If the current thread is interrupted.
+			/// </exception>
+			public virtual bool TryLock(TimeSpan timeSpan)
+			{
+				LockStatistics stats = _sync.Statistics;
+				if (stats == null) return _sync.TryAcquireShared(1, timeSpan);
+				long waitStart = 0;
+				if (!_sync.TryReadLockForStatistics())
 				{
-					return false;
+					waitStart = LockStatistics.Timestamp;
+					if (!_sync.TryAcquireShared(1, timeSpan)) return false;
 				}
+				stats.RecordAcquired(waitStart);
+				return true;
+			}
+
+			/// <summary>
+			/// Attempts to release this lock. If the number of readers is
+			/// now zero then the lock is made available for write lock
+			/// attempts.
+			/// </summary>
+			/// <exception cref="SynchronizationLockException">
+			/// If the current thread does not hold the read lock.
+			/// </exception>
+			public virtual void Unlock()
+			{
+				_sync.ReleaseShared(1);
+			}
+
+			/// <summary>
+			/// Throws <see cref="NotSupportedException"/> because read locks
+			/// do not support conditions.
+			/// </summary>
+			/// <exception cref="NotSupportedException">Always.</exception>
+			public virtual ICondition NewCondition()
+			{
+				throw new NotSupportedException();
+			}
+
+			/// <summary>
+			/// Returns a string identifying this lock, as well as its lock
+			/// state. The state, in brackets, includes the string
+			/// "Read locks =" followed by the number of held read locks.
+			/// </summary>
+			/// <returns>A string identifying this lock, as well as its lock state.</returns>
+			public override string ToString()
+			{
+				return base.ToString() + "[Read locks = " + _sync.ReadLockCount + "]";
+			}
+
+			void IDisposable.Dispose()
+			{
+				Unlock();
 			}
 		}
 
 		/// <summary>
-		/// Ends a read lock for the current thread. 
+		/// The lock returned by <see cref="ReentrantReadWriteLock.WriterLock"/>.
 		/// </summary>
-		/// <returns><see cref="Spring.Threading.Locks.WriterLock"/> for this instance if there are no more readers for the current thread, there are no
-		/// more active readers for the read lock, and there are waiter writers.  Otherwise, a a No-Op instance of 
-		/// <see cref="Spring.Threading.Locks.ISignaller"/> is returned.
-		/// <p/>
-		/// <b>Note:</b> This deviates from the Java implementation by returning a No-Op instance of <see cref="Spring.Threading.Locks.ISignaller"/> instead
-		/// of null to avoid having null checks scattered around.  This is an example of the Null Object pattern.
-		/// </returns>
-		/// <exception cref="System.Threading.ThreadStateException">
-		/// Thrown if there are no current readers for the lock from the current thread.
-		/// </exception>
-		internal Signaller EndRead()
+		[Serializable]
+		public class WriteLock : ILock, IDisposable
 		{
-			lock (this)
+			private readonly Sync _sync;
+
+			/// <summary>
+			/// Constructor for use by subclasses.
+			/// </summary>
+			/// <param name="lock">The outer lock object.</param>
+			/// <exception cref="ArgumentNullException">
+			/// If <paramref name="lock"/> is <c>null</c>.
+			/// </exception>
+			protected internal WriteLock(ReentrantReadWriteLock @lock)
+			{
+				if (@lock == null) throw new ArgumentNullException("lock");
+				_sync = @lock._sync;
+			}
+
+			/// <summary>
+			/// Acquires the write lock.
+			/// </summary>
+			/// <remarks>
+			/// Acquires the write lock if neither the read nor write lock
+			/// are held by another thread and returns immediately, setting
+			/// the write lock hold count to one. If the current thread
+			/// already holds the write lock then the hold count is
+			/// incremented by one and the method returns immediately.
+			/// Otherwise the current thread lies dormant until the write
+			/// lock has been acquired.
+			/// </remarks>
+			/// <returns>
+			/// An <see cref="IDisposable"/> that releases the write lock
+			/// when disposed.
+			/// </returns>
+			public virtual IDisposable Lock()
 			{
-				Thread currentThread = Thread.CurrentThread;
-				object currentReaderCountForThread = _readers[currentThread];
-				if (currentReaderCountForThread == null)
+				LockStatistics stats = _sync.Statistics;
+				if (stats == null)
 				{
-					throw new ThreadStateException("No current readers for the lock from thread " + currentThread.Name + ".");
+					_sync.Acquire(1);
 				}
-				--_activeReaders;
-				if ((int) currentReaderCountForThread != ONE)
+				else
 				{
-					int decrementedReaderCountForThread = (int) currentReaderCountForThread - 1;
-					if (decrementedReaderCountForThread == 1)
-					{
-						_readers[currentThread] = ONE;
-					}
-					else
+					long waitStart = 0;
+					if (!_sync.TryWriteLockForStatistics())
 					{
-						_readers[currentThread] = decrementedReaderCountForThread;
+						waitStart = LockStatistics.Timestamp;
+						_sync.Acquire(1);
 					}
-					return Signaller.NONE;
+					_sync.RecordWriteAcquired(stats, waitStart);
+				}
+				return this;
+			}
+
+			/// <summary>
+			/// Acquires the write lock unless the current thread is
+			/// interrupted.
+			/// </summary>
+			/// <returns>
+			/// An <see cref="IDisposable"/> that releases the write lock
+			/// when disposed.
+			/// </returns>
+			/// <exception cref="ThreadInterruptedException">
+			/// If the current thread is interrupted.
+			/// </exception>
+			public virtual IDisposable LockInterruptibly()
+			{
+				LockStatistics stats = _sync.Statistics;
+				if (stats == null)
+				{
+					_sync.AcquireInterruptibly(1);
 				}
 				else
 				{
-					_readers.Remove(currentThread);
+					long waitStart = 0;
+					if (!_sync.TryWriteLockForStatistics())
+					{
+						waitStart = LockStatistics.Timestamp;
+						_sync.AcquireInterruptibly(1);
+					}
+					_sync.RecordWriteAcquired(stats, waitStart);
+				}
+				return this;
+			}
 
-					if (_writeHolds > 0)
-						return Signaller.NONE;
-					else if (_activeReaders == 0 && _waitingWriters > 0)
-						return Signaller.WRITER;
-					else
-						return Signaller.NONE;
+			/// <summary>
+			/// Acquires the write lock only if it is not held by another
+			/// thread at the time of invocation. Even when the lock has been
+			/// set to use a fair ordering policy, a call to
+			/// <see cref="TryLock()"/> will immediately acquire the lock if
+			/// it is available.
+			/// </summary>
+			/// <returns><c>true</c> if the lock was free and was acquired by
+			/// the current thread, or the write lock was already held by the
+			/// current thread; and <c>false</c> otherwise.</returns>
+			public virtual bool TryLock()
+			{
+				if (!_sync.TryWriteLock()) return false;
+				LockStatistics stats = _sync.Statistics;
+				if (stats != null) _sync.RecordWriteAcquired(stats, 0);
+				return true;
+			}
+
+			/// <summary>
+			/// Acquires the write lock if it is not held by another thread
+			/// within the given waiting time and the current thread has not
+			/// been interrupted.
+			/// </summary>
+			/// <param name="timeSpan">The time to wait for the write lock.</param>
+			/// <returns><c>true</c> if the write lock was acquired.</returns>
+			/// <exception cref="ThreadInterruptedException">
+			/// If the current thread is interrupted.
+			/// </exception>
+			public virtual bool TryLock(TimeSpan timeSpan)
+			{
+				LockStatistics stats = _sync.Statistics;
+				if (stats == null) return _sync.TryAcquire(1, timeSpan);
+				long waitStart = 0;
+				if (!_sync.TryWriteLockForStatistics())
+				{
+					waitStart = LockStatistics.Timestamp;
+					if (!_sync.TryAcquire(1, timeSpan)) return false;
 				}
+				_sync.RecordWriteAcquired(stats, waitStart);
+				return true;
 			}
-		}
 
-		/// <summary>
-		/// Ends a write lock from the current lock.
-		/// </summary>
-		/// <returns>
-		/// <see cref="Spring.Threading.Locks.ReaderLock"/> for this instance if there are more write holds, waiting readers, and readers are allowed.  
-		/// If there are more write holds, no waiting readers or readers are not allowed, and waiting writers, then the 
-		/// <see cref="Spring.Threading.Locks.WriterLock"/> for this instance is returned.  Other wise a No-Op instance of 
-		/// <see cref="Spring.Threading.Locks.ISignaller"/> is returned.
-		/// <p/>
-		/// <b>Note:</b> This deviates from the Java implementation by returning a No-Op instance of <see cref="Spring.Threading.Locks.ISignaller"/> instead
-		/// of null to avoid having null checks scattered around.  This is an example of the Null Object pattern.
-		/// </returns>
-		/// <exception cref="System.Threading.SynchronizationLockException">
-		/// Thrown if the current thread is not currently the active writer.
-		/// </exception>
-		internal Signaller EndWrite()
-		{
-            lock (this)
-            {
-                if (_activeWriter != Thread.CurrentThread)
-                {
-                    throw new SynchronizationLockException();
-                }
-                --_writeHolds;
-                if (_writeHolds > 0)
-                {
-                    return Signaller.NONE;
-                }
-                else
-                {
-                    _activeWriter = null;
-                    if (_waitingReaders > 0 && AllowReader)
-                    {
-
-                        return Signaller.READER;
-                    }
-                    else if (_waitingWriters > 0)
-                    {
-
-                        return Signaller.WRITER;
-                    }
-                    else
-                    {
-                        return Signaller.NONE;
-                    }
-                }
-            }
+			/// <summary>
+			/// Attempts to release this lock. If the current thread is the
+			/// holder of this lock then the hold count is decremented. If
+			/// the hold count is now zero then the lock is released.
+			/// </summary>
+			/// <exception cref="SynchronizationLockException">
+			/// If the current thread does not hold this lock.
+			/// </exception>
+			public virtual void Unlock()
+			{
+				_sync.ReleaseWrite();
+			}
+
+			/// <summary>
+			/// Returns an <see cref="ICondition"/> instance for use with this
+			/// write lock.
+			/// </summary>
+			/// <returns>The condition object.</returns>
+			public virtual ICondition NewCondition()
+			{
+				return _sync.NewCondition();
+			}
+
+			/// <summary>
+			/// Queries if this write lock is held by the current thread.
+			/// </summary>
+			public virtual bool IsHeldByCurrentThread
+			{
+				get { return _sync.IsHeldExclusively(); }
+			}
+
+			/// <summary>
+			/// Queries the number of holds on this write lock by the current
+			/// thread, or zero if this lock is not held by the current thread.
+			/// </summary>
+			public virtual int HoldCount
+			{
+				get { return _sync.WriteHoldCount; }
+			}
+
+			/// <summary>
+			/// Returns a string identifying this lock, as well as its lock
+			/// state. The state, in brackets includes either the string
+			/// "Unlocked" or the string "Locked by" followed by the name of
+			/// the owning thread.
+			/// </summary>
+			/// <returns>A string identifying this lock, as well as its lock state.</returns>
+			public override string ToString()
+			{
+				Thread o = _sync.Owner;
+				return base.ToString() + ((o == null) ? "[Unlocked]" : "[Locked by thread " + o.Name + "]");
+			}
+
+			void IDisposable.Dispose()
+			{
+				Unlock();
+			}
 		}
 
 		#endregion
 	}
-}
\ No newline at end of file
+}
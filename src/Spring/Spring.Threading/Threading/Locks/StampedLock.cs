@@ -0,0 +1,1006 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+using System;
+using System.Runtime.Serialization;
+using System.Threading;
+
+namespace Spring.Threading.Locks
+{
+    /// <summary>
+    /// A capability-based lock with three modes for controlling read/write
+    /// access. The state of a <see cref="StampedLock"/> consists of a
+    /// version and mode. Lock acquisition methods return a stamp that
+    /// represents and controls access with respect to a lock state;
+    /// "try" versions of these methods may instead return the special
+    /// value zero to represent failure to acquire access. Lock release and
+    /// conversion methods require stamps as arguments, and fail if they do
+    /// not match the state of the lock.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// The three modes are:
+    /// <list type="bullet">
+    /// <item><b>Writing.</b> <see cref="WriteLock"/> possibly blocks
+    /// waiting for exclusive access, returning a stamp that can be used in
+    /// <see cref="UnlockWrite"/> to release the lock. Untimed and timed
+    /// versions of <see cref="TryWriteLock()"/> are also provided. When the
+    /// lock is held in write mode, no read locks may be obtained, and all
+    /// optimistic read validations will fail.</item>
+    /// <item><b>Reading.</b> <see cref="ReadLock"/> possibly blocks
+    /// waiting for non-exclusive access, returning a stamp that can be
+    /// used in <see cref="UnlockRead"/> to release the lock. Untimed and
+    /// timed versions of <see cref="TryReadLock()"/> are also
+    /// provided.</item>
+    /// <item><b>Optimistic Reading.</b> <see cref="TryOptimisticRead"/>
+    /// returns a non-zero stamp only if the lock is not currently held in
+    /// write mode. <see cref="Validate"/> returns <c>true</c> if the lock
+    /// has not been acquired in write mode since obtaining a given stamp.
+    /// This mode can be thought of as an extremely weak version of a
+    /// read-lock, that can be broken by a writer at any time. The use of
+    /// optimistic mode for short read-only code segments often reduces
+    /// contention and improves throughput, since it performs no writes to
+    /// shared memory at all. However, its use is inherently fragile.
+    /// Optimistic read sections should only read fields and hold them in
+    /// local variables for later use after validation.</item>
+    /// </list>
+    /// </para>
+    /// <para>
+    /// This class also supports methods that conditionally provide
+    /// conversions across the three modes. For example,
+    /// <see cref="TryConvertToWriteLock"/> attempts to "upgrade" a mode,
+    /// returning a valid write stamp if (1) already in writing mode (2) in
+    /// reading mode and there are no other readers or (3) in optimistic
+    /// mode and the lock is available.
+    /// </para>
+    /// <para>
+    /// <see cref="StampedLock"/>s are designed for use as internal
+    /// utilities in the development of thread-safe components. Their use
+    /// relies on knowledge of the internal properties of the data, objects,
+    /// and methods they are protecting. They are not reentrant, so locked
+    /// bodies should not call other unknown methods that may try to
+    /// re-acquire locks (although you may pass a stamp to other methods
+    /// that can use or convert it). Unvalidated optimistic read sections
+    /// cannot call methods that are not known to tolerate potential
+    /// inconsistencies. Stamps use finite representations, and are not
+    /// cryptographically secure (i.e., a valid stamp may be guessable).
+    /// Stamp values may recycle after (no sooner than) one year of
+    /// continuous operation. A stamp held without use or validation for
+    /// longer than this period may fail to validate correctly.
+    /// </para>
+    /// <para>
+    /// The scheduling policy of <see cref="StampedLock"/> does not
+    /// consistently prefer readers over writers or vice versa. A new
+    /// reader does however queue behind a writer that is first in the
+    /// wait queue. All "try" methods are best-effort and do not
+    /// necessarily conform to any scheduling or fairness policy.
+    /// </para>
+    /// <para>
+    /// Because it supports coordinated usage across multiple lock modes,
+    /// this class does not directly implement the <see cref="ILock"/> or
+    /// <see cref="IReadWriteLock"/> interfaces. However, a
+    /// <see cref="StampedLock"/> may be viewed as an <see cref="ILock"/>
+    /// or <see cref="IReadWriteLock"/> in applications requiring only the
+    /// associated set of functionality, via <see cref="AsReadLock"/>,
+    /// <see cref="AsWriteLock"/> and <see cref="AsReadWriteLock"/>.
+    /// </para>
+    /// <para>
+    /// Sample usage. The following illustrates some usage idioms in a
+    /// class that maintains simple two-dimensional points.
+    /// <code>
+    /// class Point {
+    ///     private double x, y;
+    ///     private readonly StampedLock sl = new StampedLock();
+    ///
+    ///     void Move(double deltaX, double deltaY) { // an exclusively locked method
+    ///         long stamp = sl.WriteLock();
+    ///         try {
+    ///             x += deltaX;
+    ///             y += deltaY;
+    ///         } finally {
+    ///             sl.UnlockWrite(stamp);
+    ///         }
+    ///     }
+    ///
+    ///     double DistanceFromOrigin() { // A read-only method
+    ///         long stamp = sl.TryOptimisticRead();
+    ///         double currentX = x, currentY = y;
+    ///         if (!sl.Validate(stamp)) {
+    ///             stamp = sl.ReadLock();
+    ///             try {
+    ///                 currentX = x;
+    ///                 currentY = y;
+    ///             } finally {
+    ///                 sl.UnlockRead(stamp);
+    ///             }
+    ///         }
+    ///         return Math.Sqrt(currentX * currentX + currentY * currentY);
+    ///     }
+    /// }
+    /// </code>
+    /// </para>
+    /// <para>
+    /// The lock state is a single <see cref="long"/> held by an
+    /// <see cref="AbstractQueuedLongSynchronizer"/>, which also provides
+    /// the wait queue for blocked readers and writers. The low 7 bits
+    /// count readers (with an overflow count for more than 126), the next
+    /// bit marks the write lock and the remaining bits form the version,
+    /// which is bumped on every write unlock. A stamp is a snapshot of
+    /// that word.
+    /// </para>
+    /// <para>
+    /// Serialization of this class behaves in the same way as built-in
+    /// locks: a deserialized lock is in the unlocked state, regardless of
+    /// its state when serialized.
+    /// </para>
+    /// <para>
+    /// Based on the on the back port of JCP JSR-166.
+    /// </para>
+    /// </remarks>
+    /// <author>Doug Lea</author>
+    [Serializable]
+    public class StampedLock : ISerializable //JDK_1_8
+    {
+        // Values for lock state and stamp operations
+        private const int LG_READERS = 7;
+        private const long RUNIT = 1L;
+        private const long WBIT = 1L << LG_READERS;
+        private const long RBITS = WBIT - 1L;
+        private const long RFULL = RBITS - 1L;
+        private const long ABITS = RBITS | WBIT;
+        private const long SBITS = ~RBITS; // note overlap with ABITS
+
+        // Initial value for lock state; avoids failure value zero
+        private const long ORIGIN = WBIT << 1;
+
+        private readonly Sync _sync;
+
+        [NonSerialized]
+        private ReadLockView _readLockView;
+        [NonSerialized]
+        private WriteLockView _writeLockView;
+        [NonSerialized]
+        private ReadWriteLockView _readWriteLockView;
+
+        /// <summary>
+        /// Creates a new lock, initially in unlocked state.
+        /// </summary>
+        public StampedLock()
+        {
+            _sync = new Sync();
+        }
+
+        /// <summary>
+        /// Deserializes a <see cref="StampedLock"/> instance from the
+        /// supplied <see cref="SerializationInfo"/>. The deserialized lock
+        /// is always unlocked.
+        /// </summary>
+        /// <param name="info">The <see cref="SerializationInfo"/> to pull date from.</param>
+        /// <param name="context">The contextual information about the source or destination.</param>
+        protected StampedLock(SerializationInfo info, StreamingContext context) : this()
+        {
+        }
+
+        /// <summary>
+        /// Populates a <see cref="SerializationInfo"/> with the data needed
+        /// to serialize the target object.
+        /// </summary>
+        /// <param name="info">The <see cref="SerializationInfo"/> to populate with data.</param>
+        /// <param name="context">The destination for this serialization.</param>
+        public virtual void GetObjectData(SerializationInfo info, StreamingContext context)
+        {
+        }
+
+        #region Write mode
+
+        /// <summary>
+        /// Exclusively acquires the lock, blocking if necessary until
+        /// available.
+        /// </summary>
+        /// <returns>A write stamp that can be used to unlock or convert mode.</returns>
+        public long WriteLock()
+        {
+            long next = _sync.TryWriteLock();
+            if (next != 0L) return next;
+            _sync.Acquire(1L);
+            return _sync.Current;
+        }
+
+        /// <summary>
+        /// Exclusively acquires the lock if it is immediately available.
+        /// </summary>
+        /// <returns>
+        /// A write stamp that can be used to unlock or convert mode, or
+        /// zero if the lock is not available.
+        /// </returns>
+        public long TryWriteLock()
+        {
+            return _sync.TryWriteLock();
+        }
+
+        /// <summary>
+        /// Exclusively acquires the lock if it is available within the
+        /// given time and the current thread has not been interrupted.
+        /// Behavior under timeout and interruption matches that specified
+        /// for <see cref="ILock.TryLock(TimeSpan)"/>.
+        /// </summary>
+        /// <param name="duration">The maximum time to wait for the lock.</param>
+        /// <returns>
+        /// A write stamp that can be used to unlock or convert mode, or
+        /// zero if the lock is not available.
+        /// </returns>
+        /// <exception cref="ThreadInterruptedException">
+        /// If the current thread is interrupted before acquiring the lock.
+        /// </exception>
+        public long TryWriteLock(TimeSpan duration)
+        {
+            return _sync.TryAcquire(1L, duration) ? _sync.Current : 0L;
+        }
+
+        /// <summary>
+        /// Exclusively acquires the lock, blocking if necessary until
+        /// available or the current thread is interrupted. Behavior under
+        /// interruption matches that specified for
+        /// <see cref="ILock.LockInterruptibly"/>.
+        /// </summary>
+        /// <returns>A write stamp that can be used to unlock or convert mode.</returns>
+        /// <exception cref="ThreadInterruptedException">
+        /// If the current thread is interrupted before acquiring the lock.
+        /// </exception>
+        public long WriteLockInterruptibly()
+        {
+            _sync.AcquireInterruptibly(1L);
+            return _sync.Current;
+        }
+
+        #endregion
+
+        #region Read mode
+
+        /// <summary>
+        /// Non-exclusively acquires the lock, blocking if necessary until
+        /// available.
+        /// </summary>
+        /// <returns>A read stamp that can be used to unlock or convert mode.</returns>
+        public long ReadLock()
+        {
+            _sync.AcquireShared(1L);
+            return _sync.Current;
+        }
+
+        /// <summary>
+        /// Non-exclusively acquires the lock if it is immediately available.
+        /// </summary>
+        /// <returns>
+        /// A read stamp that can be used to unlock or convert mode, or zero
+        /// if the lock is not available.
+        /// </returns>
+        public long TryReadLock()
+        {
+            return _sync.TryReadLock();
+        }
+
+        /// <summary>
+        /// Non-exclusively acquires the lock if it is available within the
+        /// given time and the current thread has not been interrupted.
+        /// Behavior under timeout and interruption matches that specified
+        /// for <see cref="ILock.TryLock(TimeSpan)"/>.
+        /// </summary>
+        /// <param name="duration">The maximum time to wait for the lock.</param>
+        /// <returns>
+        /// A read stamp that can be used to unlock or convert mode, or zero
+        /// if the lock is not available.
+        /// </returns>
+        /// <exception cref="ThreadInterruptedException">
+        /// If the current thread is interrupted before acquiring the lock.
+        /// </exception>
+        public long TryReadLock(TimeSpan duration)
+        {
+            return _sync.TryAcquireShared(1L, duration) ? _sync.Current : 0L;
+        }
+
+        /// <summary>
+        /// Non-exclusively acquires the lock, blocking if necessary until
+        /// available or the current thread is interrupted. Behavior under
+        /// interruption matches that specified for
+        /// <see cref="ILock.LockInterruptibly"/>.
+        /// </summary>
+        /// <returns>A read stamp that can be used to unlock or convert mode.</returns>
+        /// <exception cref="ThreadInterruptedException">
+        /// If the current thread is interrupted before acquiring the lock.
+        /// </exception>
+        public long ReadLockInterruptibly()
+        {
+            _sync.AcquireSharedInterruptibly(1L);
+            return _sync.Current;
+        }
+
+        #endregion
+
+        #region Optimistic read mode
+
+        /// <summary>
+        /// Returns a stamp that can later be validated, or zero if
+        /// exclusively locked.
+        /// </summary>
+        /// <returns>
+        /// A valid optimistic read stamp, or zero if exclusively locked.
+        /// </returns>
+        public long TryOptimisticRead()
+        {
+            long s = _sync.Current;
+            return ((s & WBIT) == 0L) ? (s & SBITS) : 0L;
+        }
+
+        /// <summary>
+        /// Returns <c>true</c> if the lock has not been exclusively acquired
+        /// since issuance of the given stamp. Always returns <c>false</c> if
+        /// the stamp is zero. Always returns <c>true</c> if the stamp
+        /// represents a currently held lock. Invoking this method with a
+        /// value not obtained from <see cref="TryOptimisticRead"/> or a
+        /// locking method for this lock has no defined effect or result.
+        /// </summary>
+        /// <param name="stamp">A stamp.</param>
+        /// <returns>
+        /// <c>true</c> if the lock has not been exclusively acquired since
+        /// issuance of the given stamp; else <c>false</c>.
+        /// </returns>
+        public bool Validate(long stamp)
+        {
+            // Keep the reads of the guarded fields before the state read
+            Thread.MemoryBarrier();
+            return (stamp & SBITS) == (_sync.Current & SBITS);
+        }
+
+        #endregion
+
+        #region Unlock
+
+        /// <summary>
+        /// If the lock state matches the given stamp, releases the
+        /// exclusive lock.
+        /// </summary>
+        /// <param name="stamp">A stamp returned by a write-lock operation.</param>
+        /// <exception cref="SynchronizationLockException">
+        /// If the stamp does not match the current state of this lock.
+        /// </exception>
+        public void UnlockWrite(long stamp)
+        {
+            _sync.Release(stamp);
+        }
+
+        /// <summary>
+        /// If the lock state matches the given stamp, releases the
+        /// non-exclusive lock.
+        /// </summary>
+        /// <param name="stamp">A stamp returned by a read-lock operation.</param>
+        /// <exception cref="SynchronizationLockException">
+        /// If the stamp does not match the current state of this lock.
+        /// </exception>
+        public void UnlockRead(long stamp)
+        {
+            if ((stamp & ABITS) == 0L) throw new SynchronizationLockException();
+            _sync.ReleaseShared(stamp);
+        }
+
+        /// <summary>
+        /// If the lock state matches the given stamp, releases the
+        /// corresponding mode of the lock.
+        /// </summary>
+        /// <param name="stamp">A stamp returned by a lock operation.</param>
+        /// <exception cref="SynchronizationLockException">
+        /// If the stamp does not match the current state of this lock.
+        /// </exception>
+        public void Unlock(long stamp)
+        {
+            if ((stamp & WBIT) != 0L) UnlockWrite(stamp);
+            else UnlockRead(stamp);
+        }
+
+        /// <summary>
+        /// Releases the write lock if it is held, without requiring a stamp
+        /// value. This method may be useful for recovery after errors.
+        /// </summary>
+        /// <returns><c>true</c> if the lock was held, else <c>false</c>.</returns>
+        public bool TryUnlockWrite()
+        {
+            long s = _sync.Current;
+            if ((s & WBIT) == 0L) return false;
+            _sync.Release(s);
+            return true;
+        }
+
+        /// <summary>
+        /// Releases one hold of the read lock if it is held, without
+        /// requiring a stamp value. This method may be useful for recovery
+        /// after errors.
+        /// </summary>
+        /// <returns><c>true</c> if the read lock was held, else <c>false</c>.</returns>
+        public bool TryUnlockRead()
+        {
+            return _sync.TryUnlockRead();
+        }
+
+        #endregion
+
+        #region Conversions
+
+        /// <summary>
+        /// If the lock state matches the given stamp, atomically performs
+        /// one of the following actions. If the stamp represents holding a
+        /// write lock, returns it. Or, if a read lock, if the write lock is
+        /// available, releases the read lock and returns a write stamp. Or,
+        /// if an optimistic read, returns a write stamp only if immediately
+        /// available. This method returns zero in all other cases.
+        /// </summary>
+        /// <param name="stamp">A stamp.</param>
+        /// <returns>A valid write stamp, or zero on failure.</returns>
+        public long TryConvertToWriteLock(long stamp)
+        {
+            return _sync.TryConvertToWriteLock(stamp);
+        }
+
+        /// <summary>
+        /// If the lock state matches the given stamp, atomically performs
+        /// one of the following actions. If the stamp represents holding a
+        /// write lock, releases it and obtains a read lock. Or, if a read
+        /// lock, returns it. Or, if an optimistic read, acquires a read
+        /// lock and returns a read stamp only if immediately available.
+        /// This method returns zero in all other cases.
+        /// </summary>
+        /// <param name="stamp">A stamp.</param>
+        /// <returns>A valid read stamp, or zero on failure.</returns>
+        public long TryConvertToReadLock(long stamp)
+        {
+            return _sync.TryConvertToReadLock(stamp);
+        }
+
+        /// <summary>
+        /// If the lock state matches the given stamp then, atomically, if
+        /// the stamp represents holding a lock, releases it and returns an
+        /// observation stamp. Or, if an optimistic read, returns it if
+        /// validated. This method returns zero in all other cases, and so
+        /// may be useful as a form of "tryUnlock".
+        /// </summary>
+        /// <param name="stamp">A stamp.</param>
+        /// <returns>A valid optimistic read stamp, or zero on failure.</returns>
+        public long TryConvertToOptimisticRead(long stamp)
+        {
+            return _sync.TryConvertToOptimisticRead(stamp);
+        }
+
+        #endregion
+
+        #region Status
+
+        /// <summary>
+        /// Returns <c>true</c> if the lock is currently held exclusively.
+        /// </summary>
+        public bool IsWriteLocked
+        {
+            get { return (_sync.Current & WBIT) != 0L; }
+        }
+
+        /// <summary>
+        /// Returns <c>true</c> if the lock is currently held non-exclusively.
+        /// </summary>
+        public bool IsReadLocked
+        {
+            get { return (_sync.Current & RBITS) != 0L; }
+        }
+
+        /// <summary>
+        /// Queries the number of read locks held for this lock. This method
+        /// is designed for use in monitoring system state, not for
+        /// synchronization control.
+        /// </summary>
+        public int ReadLockCount
+        {
+            get { return _sync.GetReadLockCount(_sync.Current); }
+        }
+
+        /// <summary>
+        /// Tells whether a stamp represents holding a lock exclusively.
+        /// </summary>
+        /// <param name="stamp">A stamp returned by a previous operation.</param>
+        /// <returns><c>true</c> if the stamp was returned by a successful write-lock operation.</returns>
+        public static bool IsWriteLockStamp(long stamp)
+        {
+            return (stamp & ABITS) == WBIT;
+        }
+
+        /// <summary>
+        /// Tells whether a stamp represents holding a lock non-exclusively.
+        /// </summary>
+        /// <param name="stamp">A stamp returned by a previous operation.</param>
+        /// <returns><c>true</c> if the stamp was returned by a successful read-lock operation.</returns>
+        public static bool IsReadLockStamp(long stamp)
+        {
+            return (stamp & RBITS) != 0L;
+        }
+
+        /// <summary>
+        /// Tells whether a stamp represents holding a lock.
+        /// </summary>
+        /// <param name="stamp">A stamp returned by a previous operation.</param>
+        /// <returns><c>true</c> if the stamp was returned by a successful read-lock or write-lock operation.</returns>
+        public static bool IsLockStamp(long stamp)
+        {
+            return (stamp & ABITS) != 0L;
+        }
+
+        /// <summary>
+        /// Tells whether a stamp represents a successful optimistic read.
+        /// </summary>
+        /// <param name="stamp">A stamp returned by a previous operation.</param>
+        /// <returns><c>true</c> if the stamp was returned by a successful optimistic read.</returns>
+        public static bool IsOptimisticReadStamp(long stamp)
+        {
+            return (stamp & ABITS) == 0L && stamp != 0L;
+        }
+
+        /// <summary>
+        /// Returns a string identifying this lock, as well as its lock
+        /// state. The state, in brackets, includes the string "Unlocked",
+        /// "Write-locked" or "Read-locks:" followed by the number of held
+        /// read locks.
+        /// </summary>
+        /// <returns>A string identifying this lock, as well as its lock state.</returns>
+        public override string ToString()
+        {
+            long s = _sync.Current;
+            return base.ToString() +
+                   ((s & ABITS) == 0L ? "[Unlocked]" :
+                    (s & WBIT) != 0L ? "[Write-locked]" :
+                    "[Read-locks:" + _sync.GetReadLockCount(s) + "]");
+        }
+
+        #endregion
+
+        #region Views
+
+        /// <summary>
+        /// Returns a plain <see cref="ILock"/> view of this
+        /// <see cref="StampedLock"/> in which the <see cref="ILock.Lock"/>
+        /// method is mapped to <see cref="ReadLock"/>, and similarly for
+        /// other methods. The returned lock does not support a
+        /// <see cref="ICondition"/>; <see cref="ILock.NewCondition"/> throws
+        /// <see cref="NotSupportedException"/>.
+        /// </summary>
+        /// <returns>The lock.</returns>
+        public ILock AsReadLock()
+        {
+            ReadLockView v = _readLockView;
+            return v ?? (_readLockView = new ReadLockView(this));
+        }
+
+        /// <summary>
+        /// Returns a plain <see cref="ILock"/> view of this
+        /// <see cref="StampedLock"/> in which the <see cref="ILock.Lock"/>
+        /// method is mapped to <see cref="WriteLock"/>, and similarly for
+        /// other methods. The returned lock does not support a
+        /// <see cref="ICondition"/>; <see cref="ILock.NewCondition"/> throws
+        /// <see cref="NotSupportedException"/>.
+        /// </summary>
+        /// <returns>The lock.</returns>
+        public ILock AsWriteLock()
+        {
+            WriteLockView v = _writeLockView;
+            return v ?? (_writeLockView = new WriteLockView(this));
+        }
+
+        /// <summary>
+        /// Returns a <see cref="IReadWriteLock"/> view of this
+        /// <see cref="StampedLock"/> in which the
+        /// <see cref="IReadWriteLock.ReaderLock"/> is mapped to
+        /// <see cref="AsReadLock"/>, and <see cref="IReadWriteLock.WriterLock"/>
+        /// to <see cref="AsWriteLock"/>.
+        /// </summary>
+        /// <returns>The lock.</returns>
+        public IReadWriteLock AsReadWriteLock()
+        {
+            ReadWriteLockView v = _readWriteLockView;
+            return v ?? (_readWriteLockView = new ReadWriteLockView(this));
+        }
+
+        private sealed class ReadLockView : ILock, IDisposable
+        {
+            private readonly StampedLock _lock;
+
+            internal ReadLockView(StampedLock @lock)
+            {
+                _lock = @lock;
+            }
+
+            public IDisposable Lock()
+            {
+                _lock.ReadLock();
+                return this;
+            }
+
+            public IDisposable LockInterruptibly()
+            {
+                _lock.ReadLockInterruptibly();
+                return this;
+            }
+
+            public bool TryLock()
+            {
+                return _lock.TryReadLock() != 0L;
+            }
+
+            public bool TryLock(TimeSpan timeSpan)
+            {
+                return _lock.TryReadLock(timeSpan) != 0L;
+            }
+
+            public void Unlock()
+            {
+                if (!_lock.TryUnlockRead()) throw new SynchronizationLockException();
+            }
+
+            public ICondition NewCondition()
+            {
+                throw new NotSupportedException();
+            }
+
+            void IDisposable.Dispose()
+            {
+                Unlock();
+            }
+        }
+
+        private sealed class WriteLockView : ILock, IDisposable
+        {
+            private readonly StampedLock _lock;
+
+            internal WriteLockView(StampedLock @lock)
+            {
+                _lock = @lock;
+            }
+
+            public IDisposable Lock()
+            {
+                _lock.WriteLock();
+                return this;
+            }
+
+            public IDisposable LockInterruptibly()
+            {
+                _lock.WriteLockInterruptibly();
+                return this;
+            }
+
+            public bool TryLock()
+            {
+                return _lock.TryWriteLock() != 0L;
+            }
+
+            public bool TryLock(TimeSpan timeSpan)
+            {
+                return _lock.TryWriteLock(timeSpan) != 0L;
+            }
+
+            public void Unlock()
+            {
+                if (!_lock.TryUnlockWrite()) throw new SynchronizationLockException();
+            }
+
+            public ICondition NewCondition()
+            {
+                throw new NotSupportedException();
+            }
+
+            void IDisposable.Dispose()
+            {
+                Unlock();
+            }
+        }
+
+        private sealed class ReadWriteLockView : IReadWriteLock
+        {
+            private readonly StampedLock _lock;
+
+            internal ReadWriteLockView(StampedLock @lock)
+            {
+                _lock = @lock;
+            }
+
+            public ILock ReaderLock
+            {
+                get { return _lock.AsReadLock(); }
+            }
+
+            public ILock WriterLock
+            {
+                get { return _lock.AsWriteLock(); }
+            }
+        }
+
+        #endregion
+
+        /// <summary>
+        /// Holds the lock state and queues the threads blocked in read or
+        /// write mode. Exclusive acquires take the write lock, shared
+        /// acquires a read lock. The release argument is the stamp being
+        /// released.
+        /// </summary>
+        private sealed class Sync : AbstractQueuedLongSynchronizer
+        {
+            /// <summary>
+            /// Release argument that changes nothing but lets queued
+            /// threads retry, used after conversions that make the lock
+            /// available. Never a valid read stamp.
+            /// </summary>
+            private const long SIGNAL_ONLY = 0L;
+
+            /// <summary>
+            /// Extra reader count when state read count saturated.
+            /// Guarded by setting the reader bits to <see cref="RBITS"/>.
+            /// </summary>
+            private int _readerOverflow;
+
+            internal Sync()
+            {
+                State = ORIGIN;
+            }
+
+            internal long Current
+            {
+                get { return State; }
+            }
+
+            internal int GetReadLockCount(long s)
+            {
+                long readers;
+                if ((readers = s & RBITS) >= RFULL) readers = RFULL + _readerOverflow;
+                return (int) readers;
+            }
+
+            protected override bool TryAcquire(long unused)
+            {
+                return TryWriteLock() != 0L;
+            }
+
+            protected override bool TryRelease(long stamp)
+            {
+                long s = State;
+                if (s != stamp || (stamp & WBIT) == 0L) throw new SynchronizationLockException();
+                State = UnlockWriteState(s);
+                return true;
+            }
+
+            protected override int TryAcquireShared(long unused)
+            {
+                // A new reader defers to a writer at the head of the queue;
+                // the queued reader that is first in line never sees itself
+                // as an exclusive waiter, so it always gets to retry.
+                if (ApparentlyFirstQueuedIsExclusive) return -1;
+                return TryReadLock() != 0L ? 1 : -1;
+            }
+
+            protected override bool TryReleaseShared(long stamp)
+            {
+                if (stamp == SIGNAL_ONLY) return true;
+                for (;;)
+                {
+                    long s = State, m = s & ABITS;
+                    if ((s & SBITS) != (stamp & SBITS) || m == 0L || m == WBIT)
+                        throw new SynchronizationLockException();
+                    if (m < RFULL)
+                    {
+                        if (CompareAndSetState(s, s - RUNIT)) return m == RUNIT;
+                    }
+                    else if (TryDecReaderOverflow(s) != 0L) return false;
+                }
+            }
+
+            internal long TryWriteLock()
+            {
+                long s = State, next;
+                return ((s & ABITS) == 0L && CompareAndSetState(s, next = s + WBIT)) ? next : 0L;
+            }
+
+            internal long TryReadLock()
+            {
+                for (;;)
+                {
+                    long s = State, m = s & ABITS, next;
+                    if (m == WBIT) return 0L;
+                    if (m < RFULL)
+                    {
+                        if (CompareAndSetState(s, next = s + RUNIT)) return next;
+                    }
+                    else if ((next = TryIncReaderOverflow(s)) != 0L) return next;
+                }
+            }
+
+            internal bool TryUnlockRead()
+            {
+                for (;;)
+                {
+                    long s = State, m = s & ABITS;
+                    if (m == 0L || m >= WBIT) return false;
+                    if (m < RFULL)
+                    {
+                        if (CompareAndSetState(s, s - RUNIT))
+                        {
+                            if (m == RUNIT) ReleaseShared(SIGNAL_ONLY);
+                            return true;
+                        }
+                    }
+                    else if (TryDecReaderOverflow(s) != 0L) return true;
+                }
+            }
+
+            internal long TryConvertToWriteLock(long stamp)
+            {
+                long a = stamp & ABITS, m, s, next;
+                while (((s = State) & SBITS) == (stamp & SBITS))
+                {
+                    if ((m = s & ABITS) == 0L)
+                    {
+                        if (a != 0L) break;
+                        if (CompareAndSetState(s, next = s + WBIT)) return next;
+                    }
+                    else if (m == WBIT)
+                    {
+                        if (a != m) break;
+                        return stamp;
+                    }
+                    else if (m == RUNIT && a != 0L)
+                    {
+                        if (CompareAndSetState(s, next = s - RUNIT + WBIT)) return next;
+                    }
+                    else break;
+                }
+                return 0L;
+            }
+
+            internal long TryConvertToReadLock(long stamp)
+            {
+                long a, s, next;
+                while (((s = State) & SBITS) == (stamp & SBITS))
+                {
+                    if ((a = stamp & ABITS) >= WBIT)
+                    {
+                        // write stamp
+                        if (s != stamp) break;
+                        State = next = s + (WBIT + RUNIT);
+                        ReleaseShared(SIGNAL_ONLY); // let queued readers join
+                        return next;
+                    }
+                    if (a == 0L)
+                    {
+                        // optimistic read stamp
+                        if ((s & ABITS) < RFULL)
+                        {
+                            if (CompareAndSetState(s, next = s + RUNIT)) return next;
+                        }
+                        else if ((next = TryIncReaderOverflow(s)) != 0L) return next;
+                    }
+                    else
+                    {
+                        // already a read stamp
+                        if ((s & ABITS) == 0L) break;
+                        return stamp;
+                    }
+                }
+                return 0L;
+            }
+
+            internal long TryConvertToOptimisticRead(long stamp)
+            {
+                long a, m, s, next;
+                Thread.MemoryBarrier();
+                while (((s = State) & SBITS) == (stamp & SBITS))
+                {
+                    if ((a = stamp & ABITS) >= WBIT)
+                    {
+                        // write stamp
+                        if (s != stamp) break;
+                        next = UnlockWriteState(s);
+                        Release(s);
+                        return next;
+                    }
+                    if (a == 0L) return stamp; // already an optimistic read stamp
+                    if ((m = s & ABITS) == 0L) break; // invalid read stamp
+                    if (m < RFULL)
+                    {
+                        if (CompareAndSetState(s, next = s - RUNIT))
+                        {
+                            if (m == RUNIT) ReleaseShared(SIGNAL_ONLY);
+                            return next & SBITS;
+                        }
+                    }
+                    else if ((next = TryDecReaderOverflow(s)) != 0L) return next & SBITS;
+                }
+                return 0L;
+            }
+
+            /// <summary>
+            /// Returns the state after releasing the write lock held in
+            /// state <paramref name="s"/>, bumping the version and skipping
+            /// the zero failure value on wrap around.
+            /// </summary>
+            private static long UnlockWriteState(long s)
+            {
+                return ((s += WBIT) == 0L) ? ORIGIN : s;
+            }
+
+            /// <summary>
+            /// Tries to increment the reader count by first setting the
+            /// reader bits to <see cref="RBITS"/>, which acts as a spin lock
+            /// over <see cref="_readerOverflow"/>.
+            /// </summary>
+            /// <param name="s">A reader overflow stamp: (s &amp; ABITS) &gt;= RFULL.</param>
+            /// <returns>The new stamp on success, else zero.</returns>
+            private long TryIncReaderOverflow(long s)
+            {
+                if ((s & ABITS) == RFULL)
+                {
+                    if (CompareAndSetState(s, s | RBITS))
+                    {
+                        ++_readerOverflow;
+                        State = s;
+                        return s;
+                    }
+                }
+                else
+                {
+                    Thread.Sleep(0); // another reader holds the overflow spin lock
+                }
+                return 0L;
+            }
+
+            /// <summary>
+            /// Tries to decrement the reader count, either from
+            /// <see cref="_readerOverflow"/> or from the state.
+            /// </summary>
+            /// <param name="s">A reader overflow stamp: (s &amp; ABITS) &gt;= RFULL.</param>
+            /// <returns>The new stamp on success, else zero.</returns>
+            private long TryDecReaderOverflow(long s)
+            {
+                if ((s & ABITS) == RFULL)
+                {
+                    if (CompareAndSetState(s, s | RBITS))
+                    {
+                        int r;
+                        long next;
+                        if ((r = _readerOverflow) > 0)
+                        {
+                            _readerOverflow = r - 1;
+                            next = s;
+                        }
+                        else
+                            next = s - RUNIT;
+                        State = next;
+                        return next;
+                    }
+                }
+                else
+                {
+                    Thread.Sleep(0); // another reader holds the overflow spin lock
+                }
+                return 0L;
+            }
+        }
+    }
+}
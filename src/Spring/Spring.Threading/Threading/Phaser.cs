@@ -0,0 +1,1053 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+using System;
+using System.Threading;
+using Spring.Threading.AtomicTypes;
+using Spring.Threading.Locks;
+using Spring.Utility;
+
+namespace Spring.Threading
+{
+    /// <summary>
+    /// A reusable synchronization barrier, similar in functionality to
+    /// <see cref="CyclicBarrier"/> and <see cref="CountDownLatch"/> but
+    /// supporting more flexible usage.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// <b>Registration.</b> Unlike the case for other barriers, the number
+    /// of parties <i>registered</i> to synchronize on a phaser may vary
+    /// over time. Tasks may be registered at any time (using methods
+    /// <see cref="Register"/>, <see cref="BulkRegister"/>, or forms of
+    /// constructors establishing initial numbers of parties), and
+    /// optionally deregistered upon any arrival (using
+    /// <see cref="ArriveAndDeregister"/>). As is the case with most basic
+    /// synchronization constructs, registration and deregistration affect
+    /// only internal counts; they do not establish any further internal
+    /// bookkeeping, so tasks cannot query whether they are registered.
+    /// </para>
+    /// <para>
+    /// <b>Synchronization.</b> Like a <see cref="CyclicBarrier"/>, a
+    /// <see cref="Phaser"/> may be repeatedly awaited. Method
+    /// <see cref="ArriveAndAwaitAdvance"/> has effect analogous to
+    /// <see cref="CyclicBarrier.Await()"/>. Each generation of a phaser has
+    /// an associated phase number. The phase number starts at zero, and
+    /// advances when all parties arrive at the phaser, wrapping around to
+    /// zero after reaching <see cref="int.MaxValue"/>. Methods
+    /// <see cref="Arrive"/> and <see cref="ArriveAndDeregister"/> record
+    /// arrival without blocking and return the arrival phase number;
+    /// <see cref="AwaitAdvance"/> waits for the phase to advance from the
+    /// given arrival phase number. When the final party for a given phase
+    /// arrives, <see cref="OnAdvance"/> is performed before the phase
+    /// advances, which can be overridden to perform an action, similar to
+    /// a barrier action of <see cref="CyclicBarrier"/>, and to control
+    /// termination.
+    /// </para>
+    /// <para>
+    /// <b>Termination.</b> A phaser may enter a <i>termination</i> state,
+    /// that may be checked using <see cref="IsTerminated"/>. Upon
+    /// termination, all synchronization methods immediately return without
+    /// waiting for advance, as indicated by a negative return value.
+    /// Similarly, attempts to register upon termination have no effect.
+    /// Termination is triggered when an invocation of
+    /// <see cref="OnAdvance"/> returns <c>true</c>. The default
+    /// implementation returns <c>true</c> if a deregistration has caused
+    /// the number of registered parties to become zero. Method
+    /// <see cref="ForceTermination"/> is also available to abruptly release
+    /// waiting threads and allow them to terminate.
+    /// </para>
+    /// <para>
+    /// <b>Tiering.</b> Phasers may be <i>tiered</i> (i.e., constructed in
+    /// tree structures) to reduce contention. Phasers with large numbers of
+    /// parties that would otherwise experience heavy synchronization
+    /// contention costs may instead be set up so that groups of
+    /// sub-phasers share a common parent. A sub-phaser with registered
+    /// parties is registered with its parent as a single party, and only
+    /// the last arrival at the sub-phaser arrives at the parent, so the
+    /// arrival traffic of each group stays on its own state word. Waiting
+    /// threads of the whole tree share the queues of the root.
+    /// </para>
+    /// <para>
+    /// <b>Implementation notes</b>: This implementation restricts the
+    /// maximum number of parties to 65535. Attempts to register additional
+    /// parties result in <see cref="InvalidOperationException"/>. However,
+    /// you can and should create tiered phasers to accommodate arbitrarily
+    /// large sets of participants.
+    /// </para>
+    /// <para>
+    /// Based on the on the back port of JCP JSR-166.
+    /// </para>
+    /// </remarks>
+    /// <author>Doug Lea</author>
+    public class Phaser //JDK_1_8
+    {
+        /*
+         * The primary state representation is a single long that packs
+         * four bit-fields:
+         *
+         * unarrived  -- the number of parties yet to hit barrier (bits  0-15)
+         * parties    -- the number of parties to wait            (bits 16-31)
+         * phase      -- the generation of the barrier            (bits 32-62)
+         * terminated -- set if barrier is terminated             (bit  63 / sign)
+         *
+         * Except that a phaser with no registered parties is
+         * distinguished by the otherwise illegal state of having zero
+         * parties and one unarrived parties (encoded as EMPTY below).
+         *
+         * All modifications to state are performed via CAS except initial
+         * registration of a sub-phaser (i.e., one with a non-null
+         * parent). In this (relatively rare) case, we use built-in
+         * synchronization to lock while first registering with its
+         * parent.
+         *
+         * The phase of a sub-phaser is allowed to lag that of its
+         * ancestors until it is actually accessed -- see method
+         * ReconcileState.
+         */
+        private long _state;
+
+        private const int MAX_PARTIES = 0xffff;
+        private const int MAX_PHASE = int.MaxValue;
+        private const int PARTIES_SHIFT = 16;
+        private const int PHASE_SHIFT = 32;
+        private const int UNARRIVED_MASK = 0xffff;
+        private const long PARTIES_MASK = 0xffff0000L;
+        private const long COUNTS_MASK = 0xffffffffL;
+        private const long TERMINATION_BIT = long.MinValue;
+
+        // some special values
+        private const int ONE_ARRIVAL = 1;
+        private const int ONE_PARTY = 1 << PARTIES_SHIFT;
+        private const int ONE_DEREGISTER = ONE_ARRIVAL | ONE_PARTY;
+        private const int EMPTY = 1;
+
+        private static readonly bool _isNativeLongAccess = IntPtr.Size == 8;
+
+        /// <summary>
+        /// The number of CPUs, for spin control.
+        /// </summary>
+        private static readonly int NCPU = Environment.ProcessorCount;
+
+        /// <summary>
+        /// The number of times to spin before blocking while waiting for
+        /// advance, per arrival while waiting. On multiprocessors, fully
+        /// blocking and waking up a large number of threads all at once is
+        /// usually a very slow process, so we use rechargeable spins to
+        /// avoid it when threads regularly arrive: When a thread in
+        /// <see cref="InternalAwaitAdvance"/> notices another arrival before
+        /// blocking, and there appear to be enough CPUs available, it spins
+        /// <see cref="SPINS_PER_ARRIVAL"/> more times before blocking.
+        /// </summary>
+        private static readonly int SPINS_PER_ARRIVAL = (NCPU < 2) ? 1 : 1 << 8;
+
+        /// <summary>
+        /// The parent of this phaser, or <c>null</c> if none.
+        /// </summary>
+        private readonly Phaser _parent;
+
+        /// <summary>
+        /// The root of phaser tree. Equals this if not in a tree.
+        /// </summary>
+        private readonly Phaser _root;
+
+        /// <summary>
+        /// Heads of Treiber stacks for waiting threads. To eliminate
+        /// contention when releasing some threads while adding others, we
+        /// use two of them, alternating across even and odd phases.
+        /// Subphasers share queues with root to speed up releases.
+        /// </summary>
+        private readonly AtomicReference<QNode> _evenQ;
+        private readonly AtomicReference<QNode> _oddQ;
+
+        /// <summary>
+        /// Creates a new phaser with no initially registered parties, no
+        /// parent, and initial phase number 0. Any thread using this phaser
+        /// will need to first register for it.
+        /// </summary>
+        public Phaser() : this(null, 0)
+        {
+        }
+
+        /// <summary>
+        /// Creates a new phaser with the given number of registered
+        /// unarrived parties, no parent, and initial phase number 0.
+        /// </summary>
+        /// <param name="parties">
+        /// The number of parties required to advance to the next phase.
+        /// </param>
+        /// <exception cref="ArgumentOutOfRangeException">
+        /// If <paramref name="parties"/> is less than zero or greater than
+        /// the maximum number of parties supported.
+        /// </exception>
+        public Phaser(int parties) : this(null, parties)
+        {
+        }
+
+        /// <summary>
+        /// Equivalent to <see cref="Phaser(Phaser, int)"/> with zero
+        /// parties.
+        /// </summary>
+        /// <param name="parent">The parent phaser.</param>
+        public Phaser(Phaser parent) : this(parent, 0)
+        {
+        }
+
+        /// <summary>
+        /// Creates a new phaser with the given parent and number of
+        /// registered unarrived parties. When the given parent is non-null
+        /// and the given number of parties is greater than zero, this child
+        /// phaser is registered with its parent.
+        /// </summary>
+        /// <param name="parent">The parent phaser.</param>
+        /// <param name="parties">
+        /// The number of parties required to advance to the next phase.
+        /// </param>
+        /// <exception cref="ArgumentOutOfRangeException">
+        /// If <paramref name="parties"/> is less than zero or greater than
+        /// the maximum number of parties supported.
+        /// </exception>
+        public Phaser(Phaser parent, int parties)
+        {
+            if ((uint) parties >> PARTIES_SHIFT != 0)
+                throw new ArgumentOutOfRangeException("parties", parties, "Illegal number of parties.");
+            int phase = 0;
+            _parent = parent;
+            if (parent != null)
+            {
+                Phaser root = parent._root;
+                _root = root;
+                _evenQ = root._evenQ;
+                _oddQ = root._oddQ;
+                if (parties != 0)
+                    phase = parent.DoRegister(1);
+            }
+            else
+            {
+                _root = this;
+                _evenQ = new AtomicReference<QNode>();
+                _oddQ = new AtomicReference<QNode>();
+            }
+            _state = (parties == 0)
+                         ? EMPTY
+                         : ((long) phase << PHASE_SHIFT) |
+                           ((long) parties << PARTIES_SHIFT) |
+                           (long) parties;
+        }
+
+        private static int UnarrivedOf(long s)
+        {
+            int counts = (int) s;
+            return (counts == EMPTY) ? 0 : (counts & UNARRIVED_MASK);
+        }
+
+        private static int PartiesOf(long s)
+        {
+            return (int) ((uint) s >> PARTIES_SHIFT);
+        }
+
+        private static int PhaseOf(long s)
+        {
+            return (int) ((ulong) s >> PHASE_SHIFT);
+        }
+
+        private static int ArrivedOf(long s)
+        {
+            int counts = (int) s;
+            return (counts == EMPTY) ? 0 : (int) ((uint) counts >> PARTIES_SHIFT) - (counts & UNARRIVED_MASK);
+        }
+
+        private long State
+        {
+            get { return _isNativeLongAccess ? Thread.VolatileRead(ref _state) : Interlocked.Read(ref _state); }
+        }
+
+        private bool CasState(long expect, long update)
+        {
+            return Interlocked.CompareExchange(ref _state, update, expect) == expect;
+        }
+
+        /// <summary>
+        /// Returns message string for bounds exceptions on arrival.
+        /// </summary>
+        private string BadArrive(long s)
+        {
+            return "Attempted arrival of unregistered party for " + StateToString(s);
+        }
+
+        /// <summary>
+        /// Returns message string for bounds exceptions on registration.
+        /// </summary>
+        private string BadRegister(long s)
+        {
+            return "Attempt to register more than " + MAX_PARTIES + " parties for " + StateToString(s);
+        }
+
+        /// <summary>
+        /// Main implementation for methods <see cref="Arrive"/> and
+        /// <see cref="ArriveAndDeregister"/>. Manually tuned to speed up
+        /// and minimize race windows for the common case of just
+        /// decrementing unarrived field.
+        /// </summary>
+        /// <param name="adjust">
+        /// Value to subtract from state; <see cref="ONE_ARRIVAL"/> for
+        /// arrive, <see cref="ONE_DEREGISTER"/> for arriveAndDeregister.
+        /// </param>
+        private int DoArrive(int adjust)
+        {
+            Phaser root = _root;
+            for (;;)
+            {
+                long s = (root == this) ? State : ReconcileState();
+                int phase = PhaseOf(s);
+                if (phase < 0)
+                    return phase;
+                int counts = (int) s;
+                int unarrived = (counts == EMPTY) ? 0 : (counts & UNARRIVED_MASK);
+                if (unarrived <= 0)
+                    throw new InvalidOperationException(BadArrive(s));
+                long next = s - adjust;
+                if (CasState(s, next))
+                {
+                    s = next;
+                    if (unarrived == 1)
+                    {
+                        long n = s & PARTIES_MASK; // base of next state
+                        int nextUnarrived = (int) ((ulong) n >> PARTIES_SHIFT);
+                        if (root == this)
+                        {
+                            if (OnAdvance(phase, nextUnarrived))
+                                n |= TERMINATION_BIT;
+                            else if (nextUnarrived == 0)
+                                n |= EMPTY;
+                            else
+                                n |= (long) nextUnarrived;
+                            int nextPhase = (phase + 1) & MAX_PHASE;
+                            n |= (long) nextPhase << PHASE_SHIFT;
+                            CasState(s, n);
+                            ReleaseWaiters(phase);
+                        }
+                        else if (nextUnarrived == 0) // propagate deregistration
+                        {
+                            phase = _parent.DoArrive(ONE_DEREGISTER);
+                            CasState(s, s | EMPTY);
+                        }
+                        else
+                        {
+                            phase = _parent.DoArrive(ONE_ARRIVAL);
+                        }
+                    }
+                    return phase;
+                }
+            }
+        }
+
+        /// <summary>
+        /// Implementation of <see cref="Register"/> and
+        /// <see cref="BulkRegister"/>.
+        /// </summary>
+        /// <param name="registrations">Number to add to both parties and unarrived fields. Must be greater than zero.</param>
+        private int DoRegister(int registrations)
+        {
+            // adjustment to state
+            long adjust = ((long) registrations << PARTIES_SHIFT) | (long) registrations;
+            Phaser parent = _parent;
+            int phase;
+            for (;;)
+            {
+                long s = (parent == null) ? State : ReconcileState();
+                int counts = (int) s;
+                int parties = (int) ((uint) counts >> PARTIES_SHIFT);
+                int unarrived = counts & UNARRIVED_MASK;
+                if (registrations > MAX_PARTIES - parties)
+                    throw new InvalidOperationException(BadRegister(s));
+                phase = PhaseOf(s);
+                if (phase < 0)
+                    break;
+                if (counts != EMPTY) // not 1st registration
+                {
+                    if (parent == null || ReconcileState() == s)
+                    {
+                        if (unarrived == 0) // wait out advance
+                            _root.InternalAwaitAdvance(phase, null);
+                        else if (CasState(s, s + adjust))
+                            break;
+                    }
+                }
+                else if (parent == null) // 1st root registration
+                {
+                    long next = ((long) phase << PHASE_SHIFT) | adjust;
+                    if (CasState(s, next))
+                        break;
+                }
+                else
+                {
+                    lock (this) // 1st sub registration
+                    {
+                        if (State == s) // recheck under lock
+                        {
+                            phase = parent.DoRegister(1);
+                            if (phase < 0)
+                                break;
+                            // finish registration whenever parent registration
+                            // succeeded, even when racing with termination,
+                            // since these are part of the same "transaction".
+                            while (!CasState(s, ((long) phase << PHASE_SHIFT) | adjust))
+                            {
+                                s = State;
+                                phase = PhaseOf(_root.State);
+                            }
+                            break;
+                        }
+                    }
+                }
+            }
+            return phase;
+        }
+
+        /// <summary>
+        /// Resolves lagged phase propagation from root if necessary.
+        /// Reconciliation normally occurs when root has advanced but
+        /// subphasers have not yet done so, in which case they must finish
+        /// their own advance by setting unarrived to parties (or if parties
+        /// is zero, resetting to unregistered EMPTY state).
+        /// </summary>
+        /// <returns>The reconciled state.</returns>
+        private long ReconcileState()
+        {
+            Phaser root = _root;
+            long s = State;
+            if (root != this)
+            {
+                int phase;
+                // CAS to root phase with current parties, tripping unarrived
+                while ((phase = PhaseOf(root.State)) != PhaseOf(s))
+                {
+                    int p;
+                    long next = ((long) phase << PHASE_SHIFT) |
+                                ((phase < 0)
+                                     ? (s & COUNTS_MASK)
+                                     : (((p = (int) ((uint) s >> PARTIES_SHIFT)) == 0)
+                                            ? EMPTY
+                                            : ((s & PARTIES_MASK) | (long) p)));
+                    if (CasState(s, next))
+                    {
+                        s = next;
+                        break;
+                    }
+                    s = State;
+                }
+            }
+            return s;
+        }
+
+        /// <summary>
+        /// Adds a new unarrived party to this phaser. If an ongoing
+        /// invocation of <see cref="OnAdvance"/> is in progress, this method
+        /// may await its completion before returning. If this phaser has a
+        /// parent, and this phaser previously had no registered parties,
+        /// this child phaser is also registered with its parent. If this
+        /// phaser is terminated, the attempt to register has no effect, and
+        /// a negative value is returned.
+        /// </summary>
+        /// <returns>
+        /// The arrival phase number to which this registration applied. If
+        /// this value is negative, then this phaser has terminated, in
+        /// which case registration has no effect.
+        /// </returns>
+        /// <exception cref="InvalidOperationException">
+        /// If attempting to register more than the maximum supported number
+        /// of parties.
+        /// </exception>
+        public int Register()
+        {
+            return DoRegister(1);
+        }
+
+        /// <summary>
+        /// Adds the given number of new unarrived parties to this phaser.
+        /// Same as <see cref="Register"/> otherwise.
+        /// </summary>
+        /// <param name="parties">
+        /// The number of additional parties required to advance to the
+        /// next phase.
+        /// </param>
+        /// <returns>
+        /// The arrival phase number to which this registration applied. If
+        /// this value is negative, then this phaser has terminated, in
+        /// which case registration has no effect.
+        /// </returns>
+        /// <exception cref="InvalidOperationException">
+        /// If attempting to register more than the maximum supported number
+        /// of parties.
+        /// </exception>
+        /// <exception cref="ArgumentOutOfRangeException">
+        /// If <paramref name="parties"/> is less than zero.
+        /// </exception>
+        public int BulkRegister(int parties)
+        {
+            if (parties < 0)
+                throw new ArgumentOutOfRangeException("parties", parties, "Must not be negative.");
+            if (parties == 0)
+                return Phase;
+            return DoRegister(parties);
+        }
+
+        /// <summary>
+        /// Arrives at this phaser, without waiting for others to arrive.
+        /// </summary>
+        /// <remarks>
+        /// It is a usage error for an unregistered party to invoke this
+        /// method. However, this error may result in an
+        /// <see cref="InvalidOperationException"/> only upon some subsequent
+        /// operation on this phaser, if ever.
+        /// </remarks>
+        /// <returns>
+        /// The arrival phase number, or a negative value if terminated.
+        /// </returns>
+        /// <exception cref="InvalidOperationException">
+        /// If not terminated and the number of unarrived parties would
+        /// become negative.
+        /// </exception>
+        public int Arrive()
+        {
+            return DoArrive(ONE_ARRIVAL);
+        }
+
+        /// <summary>
+        /// Arrives at this phaser and deregisters from it without waiting
+        /// for others to arrive. Deregistration reduces the number of
+        /// parties required to advance in future phases. If this phaser has
+        /// a parent, and deregistration causes this phaser to have zero
+        /// parties, this phaser is also deregistered from its parent.
+        /// </summary>
+        /// <returns>
+        /// The arrival phase number, or a negative value if terminated.
+        /// </returns>
+        /// <exception cref="InvalidOperationException">
+        /// If not terminated and the number of registered or unarrived
+        /// parties would become negative.
+        /// </exception>
+        public int ArriveAndDeregister()
+        {
+            return DoArrive(ONE_DEREGISTER);
+        }
+
+        /// <summary>
+        /// Arrives at this phaser and awaits others. Equivalent in effect to
+        /// <c>AwaitAdvance(Arrive())</c>. If you need to await with
+        /// interruption or timeout, you can arrange this with an analogous
+        /// construction using one of the other forms of the
+        /// <see cref="AwaitAdvance"/> method. If instead you need to
+        /// deregister upon arrival, use
+        /// <c>AwaitAdvance(ArriveAndDeregister())</c>.
+        /// </summary>
+        /// <returns>
+        /// The arrival phase number, or the (negative) current phase if
+        /// terminated.
+        /// </returns>
+        /// <exception cref="InvalidOperationException">
+        /// If not terminated and the number of unarrived parties would
+        /// become negative.
+        /// </exception>
+        public int ArriveAndAwaitAdvance()
+        {
+            // Specialization of DoArrive+AwaitAdvance eliminating some reads/paths
+            Phaser root = _root;
+            for (;;)
+            {
+                long s = (root == this) ? State : ReconcileState();
+                int phase = PhaseOf(s);
+                if (phase < 0)
+                    return phase;
+                int counts = (int) s;
+                int unarrived = (counts == EMPTY) ? 0 : (counts & UNARRIVED_MASK);
+                if (unarrived <= 0)
+                    throw new InvalidOperationException(BadArrive(s));
+                long next = s - ONE_ARRIVAL;
+                if (CasState(s, next))
+                {
+                    s = next;
+                    if (unarrived > 1)
+                        return root.InternalAwaitAdvance(phase, null);
+                    if (root != this)
+                        return _parent.ArriveAndAwaitAdvance();
+                    long n = s & PARTIES_MASK; // base of next state
+                    int nextUnarrived = (int) ((ulong) n >> PARTIES_SHIFT);
+                    if (OnAdvance(phase, nextUnarrived))
+                        n |= TERMINATION_BIT;
+                    else if (nextUnarrived == 0)
+                        n |= EMPTY;
+                    else
+                        n |= (long) nextUnarrived;
+                    int nextPhase = (phase + 1) & MAX_PHASE;
+                    n |= (long) nextPhase << PHASE_SHIFT;
+                    if (!CasState(s, n))
+                        return PhaseOf(State); // terminated
+                    ReleaseWaiters(phase);
+                    return nextPhase;
+                }
+            }
+        }
+
+        /// <summary>
+        /// Awaits the phase of this phaser to advance from the given phase
+        /// value, returning immediately if the current phase is not equal
+        /// to the given phase value or this phaser is terminated.
+        /// </summary>
+        /// <remarks>
+        /// If the current thread is interrupted while waiting, it continues
+        /// to wait, and is interrupted again when this method returns.
+        /// </remarks>
+        /// <param name="phase">
+        /// An arrival phase number, or negative value if terminated; this
+        /// argument is normally the value returned by a previous call to
+        /// <see cref="Arrive"/> or <see cref="ArriveAndDeregister"/>.
+        /// </param>
+        /// <returns>
+        /// The next arrival phase number, or the argument if it is
+        /// negative, or the (negative) current phase if terminated.
+        /// </returns>
+        public int AwaitAdvance(int phase)
+        {
+            Phaser root = _root;
+            long s = (root == this) ? State : ReconcileState();
+            int p = PhaseOf(s);
+            if (phase < 0)
+                return phase;
+            if (p == phase)
+                return root.InternalAwaitAdvance(phase, null);
+            return p;
+        }
+
+        /// <summary>
+        /// Awaits the phase of this phaser to advance from the given phase
+        /// value, throwing <see cref="ThreadInterruptedException"/> if
+        /// interrupted while waiting, or returning immediately if the
+        /// current phase is not equal to the given phase value or this
+        /// phaser is terminated.
+        /// </summary>
+        /// <param name="phase">
+        /// An arrival phase number, or negative value if terminated; this
+        /// argument is normally the value returned by a previous call to
+        /// <see cref="Arrive"/> or <see cref="ArriveAndDeregister"/>.
+        /// </param>
+        /// <returns>
+        /// The next arrival phase number, or the argument if it is
+        /// negative, or the (negative) current phase if terminated.
+        /// </returns>
+        /// <exception cref="ThreadInterruptedException">
+        /// If thread interrupted while waiting.
+        /// </exception>
+        public int AwaitAdvanceInterruptibly(int phase)
+        {
+            Phaser root = _root;
+            long s = (root == this) ? State : ReconcileState();
+            int p = PhaseOf(s);
+            if (phase < 0)
+                return phase;
+            if (p == phase)
+            {
+                QNode node = new QNode(this, phase, true, false, TimeSpan.Zero);
+                p = root.InternalAwaitAdvance(phase, node);
+                if (node.WasInterrupted)
+                    throw new ThreadInterruptedException();
+            }
+            return p;
+        }
+
+        /// <summary>
+        /// Awaits the phase of this phaser to advance from the given phase
+        /// value or the given timeout to elapse, throwing
+        /// <see cref="ThreadInterruptedException"/> if interrupted while
+        /// waiting, or returning immediately if the current phase is not
+        /// equal to the given phase value or this phaser is terminated.
+        /// </summary>
+        /// <param name="phase">
+        /// An arrival phase number, or negative value if terminated; this
+        /// argument is normally the value returned by a previous call to
+        /// <see cref="Arrive"/> or <see cref="ArriveAndDeregister"/>.
+        /// </param>
+        /// <param name="durationToWait">
+        /// How long to wait before giving up.
+        /// </param>
+        /// <returns>
+        /// The next arrival phase number, or the argument if it is
+        /// negative, or the (negative) current phase if terminated.
+        /// </returns>
+        /// <exception cref="ThreadInterruptedException">
+        /// If thread interrupted while waiting.
+        /// </exception>
+        /// <exception cref="TimeoutException">
+        /// If timed out while waiting.
+        /// </exception>
+        public int AwaitAdvanceInterruptibly(int phase, TimeSpan durationToWait)
+        {
+            Phaser root = _root;
+            long s = (root == this) ? State : ReconcileState();
+            int p = PhaseOf(s);
+            if (phase < 0)
+                return phase;
+            if (p == phase)
+            {
+                QNode node = new QNode(this, phase, true, true, durationToWait);
+                p = root.InternalAwaitAdvance(phase, node);
+                if (node.WasInterrupted)
+                    throw new ThreadInterruptedException();
+                if (p == phase)
+                    throw new TimeoutException();
+            }
+            return p;
+        }
+
+        /// <summary>
+        /// Forces this phaser to enter termination state. Counts of
+        /// registered parties are unaffected. If this phaser is a member of
+        /// a tiered set of phasers, then all of the phasers in the set are
+        /// terminated. If this phaser is already terminated, this method
+        /// has no effect. This method may be useful for coordinating
+        /// recovery after one or more tasks encounter unexpected
+        /// exceptions.
+        /// </summary>
+        public void ForceTermination()
+        {
+            // Only need to change root state
+            Phaser root = _root;
+            long s;
+            while ((s = root.State) >= 0)
+            {
+                if (root.CasState(s, s | TERMINATION_BIT))
+                {
+                    // signal all threads
+                    ReleaseWaiters(0); // Waiters on evenQ
+                    ReleaseWaiters(1); // Waiters on oddQ
+                    return;
+                }
+            }
+        }
+
+        /// <summary>
+        /// Returns the current phase number. The maximum phase number is
+        /// <see cref="int.MaxValue"/>, after which it restarts at zero. Upon
+        /// termination, the phase number is negative, in which case the
+        /// prevailing phase prior to termination may be obtained via
+        /// <c>Phase + int.MinValue</c>.
+        /// </summary>
+        public int Phase
+        {
+            get { return PhaseOf(_root.State); }
+        }
+
+        /// <summary>
+        /// Returns the number of parties registered at this phaser.
+        /// </summary>
+        public int RegisteredParties
+        {
+            get { return PartiesOf(State); }
+        }
+
+        /// <summary>
+        /// Returns the number of registered parties that have arrived at
+        /// the current phase of this phaser. If this phaser has terminated,
+        /// the returned value is meaningless and arbitrary.
+        /// </summary>
+        public int ArrivedParties
+        {
+            get { return ArrivedOf(ReconcileState()); }
+        }
+
+        /// <summary>
+        /// Returns the number of registered parties that have not yet
+        /// arrived at the current phase of this phaser. If this phaser has
+        /// terminated, the returned value is meaningless and arbitrary.
+        /// </summary>
+        public int UnarrivedParties
+        {
+            get { return UnarrivedOf(ReconcileState()); }
+        }
+
+        /// <summary>
+        /// Returns the parent of this phaser, or <c>null</c> if none.
+        /// </summary>
+        public Phaser Parent
+        {
+            get { return _parent; }
+        }
+
+        /// <summary>
+        /// Returns the root ancestor of this phaser, which is the same as
+        /// this phaser if it has no parent.
+        /// </summary>
+        public Phaser Root
+        {
+            get { return _root; }
+        }
+
+        /// <summary>
+        /// Returns <c>true</c> if this phaser has been terminated.
+        /// </summary>
+        public bool IsTerminated
+        {
+            get { return _root.State < 0L; }
+        }
+
+        /// <summary>
+        /// Overridable method to perform an action upon impending phase
+        /// advance, and to control termination. This method is invoked upon
+        /// arrival of the party advancing this phaser (when all other
+        /// waiting parties are dormant). If this method returns
+        /// <c>true</c>, this phaser will be set to a final termination state
+        /// upon advance, and subsequent calls to <see cref="IsTerminated"/>
+        /// will return true. Any (unchecked) exception thrown by an
+        /// invocation of this method is propagated to the party attempting
+        /// to advance this phaser, in which case no advance occurs.
+        /// </summary>
+        /// <remarks>
+        /// <para>
+        /// The arguments to this method provide the state of the phaser
+        /// prevailing for the current transition. The effects of invoking
+        /// arrival, registration, and waiting methods on this phaser from
+        /// within <see cref="OnAdvance"/> are unspecified and should not be
+        /// relied on.
+        /// </para>
+        /// <para>
+        /// If this phaser is a member of a tiered set of phasers, then
+        /// <see cref="OnAdvance"/> is invoked only for its root phaser on
+        /// each advance.
+        /// </para>
+        /// <para>
+        /// The default implementation returns <c>true</c> when
+        /// <paramref name="registeredParties"/> is zero.
+        /// </para>
+        /// </remarks>
+        /// <param name="phase">
+        /// The current phase number on entry to this method, before this
+        /// phaser is advanced.
+        /// </param>
+        /// <param name="registeredParties">
+        /// The current number of registered parties.
+        /// </param>
+        /// <returns><c>true</c> if this phaser should terminate.</returns>
+        protected virtual bool OnAdvance(int phase, int registeredParties)
+        {
+            return registeredParties == 0;
+        }
+
+        /// <summary>
+        /// Returns a string identifying this phaser, as well as its state.
+        /// The state, in brackets, includes the string "phase = " followed
+        /// by the phase number, "parties = " followed by the number of
+        /// registered parties, and "arrived = " followed by the number of
+        /// arrived parties.
+        /// </summary>
+        public override string ToString()
+        {
+            return StateToString(ReconcileState());
+        }
+
+        private string StateToString(long s)
+        {
+            return base.ToString() +
+                   "[phase = " + PhaseOf(s) +
+                   " parties = " + PartiesOf(s) +
+                   " arrived = " + ArrivedOf(s) + "]";
+        }
+
+        // Waiting mechanics
+
+        /// <summary>
+        /// Removes and signals threads from queue for phase.
+        /// </summary>
+        private void ReleaseWaiters(int phase)
+        {
+            QNode q; // first element of queue
+            Thread t; // its thread
+            AtomicReference<QNode> head = (phase & 1) == 0 ? _evenQ : _oddQ;
+            while ((q = head.Value) != null && q.Phase != PhaseOf(_root.State))
+            {
+                if (head.CompareAndSet(q, q.Next) && (t = q.Thread) != null)
+                {
+                    q.Thread = null;
+                    q.Unpark();
+                }
+            }
+        }
+
+        /// <summary>
+        /// Variant of <see cref="ReleaseWaiters"/> that additionally tries
+        /// to remove any nodes no longer waiting for advance due to timeout
+        /// or interrupt. Currently, nodes are removed only if they are at
+        /// head of queue, which suffices to reduce memory footprint in most
+        /// usages.
+        /// </summary>
+        /// <returns>Current phase on exit.</returns>
+        private int AbortWait(int phase)
+        {
+            AtomicReference<QNode> head = (phase & 1) == 0 ? _evenQ : _oddQ;
+            for (;;)
+            {
+                Thread t;
+                QNode q = head.Value;
+                int p = PhaseOf(_root.State);
+                if (q == null || ((t = q.Thread) != null && q.Phase == p))
+                    return p;
+                if (head.CompareAndSet(q, q.Next) && t != null)
+                {
+                    q.Thread = null;
+                    q.Unpark();
+                }
+            }
+        }
+
+        /// <summary>
+        /// Possibly blocks and waits for phase to advance unless aborted.
+        /// Call only on root phaser.
+        /// </summary>
+        /// <param name="phase">Current phase.</param>
+        /// <param name="node">
+        /// If non-null, the wait node to track interrupt and timeout; if
+        /// null, denotes noninterruptible wait.
+        /// </param>
+        /// <returns>Current phase.</returns>
+        private int InternalAwaitAdvance(int phase, QNode node)
+        {
+            ReleaseWaiters(phase - 1); // ensure old queue clean
+            bool queued = false; // true when node is enqueued
+            int lastUnarrived = 0; // to increase spins upon change
+            int spins = SPINS_PER_ARRIVAL;
+            long s;
+            int p;
+            while ((p = PhaseOf(s = State)) == phase)
+            {
+                if (node == null) // spinning in noninterruptible mode
+                {
+                    int unarrived = (int) s & UNARRIVED_MASK;
+                    if (unarrived != lastUnarrived && (lastUnarrived = unarrived) < NCPU)
+                        spins += SPINS_PER_ARRIVAL;
+                    if (--spins < 0)
+                        node = new QNode(this, phase, false, false, TimeSpan.Zero);
+                    else
+                        Thread.SpinWait(1);
+                }
+                else if (node.IsReleasable) // done or aborted
+                {
+                    break;
+                }
+                else if (!queued) // push onto queue
+                {
+                    AtomicReference<QNode> head = (phase & 1) == 0 ? _evenQ : _oddQ;
+                    QNode q = node.Next = head.Value;
+                    if ((q == null || q.Phase == phase) && PhaseOf(State) == phase) // avoid stale enq
+                        queued = head.CompareAndSet(q, node);
+                }
+                else
+                {
+                    node.Block();
+                }
+            }
+
+            if (node != null)
+            {
+                if (node.Thread != null)
+                    node.Thread = null; // avoid need for Unpark()
+                if (node.WasInterrupted && !node.Interruptible)
+                    Thread.CurrentThread.Interrupt();
+                if (p == phase && (p = PhaseOf(State)) == phase)
+                    return AbortWait(phase); // possibly clean up on abort
+            }
+            ReleaseWaiters(phase);
+            return p;
+        }
+
+        /// <summary>
+        /// Wait nodes for Treiber stack representing wait queue.
+        /// </summary>
+        private sealed class QNode : LockSupport.ParkingNode
+        {
+            private readonly Phaser _phaser;
+            internal readonly int Phase;
+            internal readonly bool Interruptible;
+            private readonly bool _timed;
+            private readonly DateTime _deadline;
+            internal bool WasInterrupted;
+            internal volatile Thread Thread; // nulled to cancel wait
+            internal QNode Next;
+
+            internal QNode(Phaser phaser, int phase, bool interruptible, bool timed, TimeSpan duration)
+            {
+                _phaser = phaser;
+                Phase = phase;
+                Interruptible = interruptible;
+                _timed = timed;
+                _deadline = timed ? WaitTime.Deadline(duration) : DateTime.MaxValue;
+                Thread = Thread.CurrentThread;
+                CaptureParker();
+            }
+
+            internal bool IsReleasable
+            {
+                get
+                {
+                    if (Thread == null)
+                        return true;
+                    if (_phaser.Phase != Phase)
+                    {
+                        Thread = null;
+                        return true;
+                    }
+                    if (WasInterrupted && Interruptible)
+                    {
+                        Thread = null;
+                        return true;
+                    }
+                    if (_timed && _deadline <= DateTime.UtcNow)
+                    {
+                        Thread = null;
+                        return true;
+                    }
+                    return false;
+                }
+            }
+
+            /// <summary>
+            /// Parks until released. An interrupt delivered while parked is
+            /// recorded in <see cref="WasInterrupted"/>, it aborts the wait
+            /// only if the node is interruptible.
+            /// </summary>
+            internal void Block()
+            {
+                while (!IsReleasable)
+                {
+                    try
+                    {
+                        if (_timed)
+                            LockSupport.ParkUntil(this, _deadline);
+                        else
+                            LockSupport.Park(this);
+                    }
+                    catch (ThreadInterruptedException)
+                    {
+                        WasInterrupted = true;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,723 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+using System;
+using System.Collections.Generic;
+using System.Threading;
+using Spring.Threading.Future;
+using Spring.Threading.Locks;
+
+namespace Spring.Threading
+{
+    /// <summary>
+    /// A counting semaphore. Conceptually, a semaphore maintains a set of
+    /// permits. Each <see cref="Acquire()"/> blocks if necessary until a
+    /// permit is available, and then takes it. Each <see cref="Release()"/>
+    /// adds a permit, potentially releasing a blocking acquirer. However,
+    /// no actual permit objects are used; the <see cref="Semaphore"/> just
+    /// keeps a count of the number available and acts accordingly.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// Semaphores are often used to restrict the number of threads than can
+    /// access some (physical or logical) resource, for example the
+    /// connections of a pool. There is no notion of ownership: a permit may
+    /// be released by a thread other than the one that acquired it.
+    /// </para>
+    /// <para>
+    /// The constructor for this class optionally accepts a <b>fairness</b>
+    /// parameter. When set <c>false</c>, this class makes no guarantees
+    /// about the order in which threads acquire permits. In particular,
+    /// barging is permitted, that is, a thread invoking
+    /// <see cref="Acquire()"/> can be allocated a permit ahead of a thread
+    /// that has been waiting. When fairness is set <c>true</c>, the
+    /// semaphore guarantees that threads invoking any of the acquire
+    /// methods are selected to obtain permits in the order in which their
+    /// invocation of those methods was processed (first-in-first-out;
+    /// FIFO). Note that the untimed <see cref="TryAcquire()"/> methods do
+    /// not honor the fairness setting, but will take any permits that are
+    /// available.
+    /// </para>
+    /// <para>
+    /// The permit count is kept in the state of an
+    /// <see cref="AbstractQueuedSynchronizer"/> and updated with
+    /// compare-and-set. While permits are available, acquiring and
+    /// releasing never lock and never touch the wait queue; a thread only
+    /// queues up, and a release only wakes it up, when permits run out.
+    /// </para>
+    /// <para>
+    /// The <see cref="AcquireAsync(int, IExecutor, Action)"/> methods never
+    /// block the caller. A request that cannot be served right away waits
+    /// as a queued node, not as a parked thread, and its callback runs on
+    /// the given <see cref="IExecutor"/> once a release makes the permits
+    /// available.
+    /// </para>
+    /// <para>
+    /// <b>Memory consistency effects</b>: Actions in a thread prior to
+    /// calling a "release" method such as <see cref="Release()"/>
+    /// <i>happen-before</i> actions following a successful "acquire" method
+    /// such as <see cref="Acquire()"/> in another thread.
+    /// </para>
+    /// <para>
+    /// Based on the on the back port of JCP JSR-166.
+    /// </para>
+    /// </remarks>
+    /// <author>Doug Lea</author>
+    [Serializable]
+    public class Semaphore //JDK_1_6
+    {
+        /// <summary>All mechanics via AbstractQueuedSynchronizer subclass</summary>
+        private readonly Sync _sync;
+
+        /// <summary>
+        /// Pending asynchronous acquisitions, created on first use.
+        /// </summary>
+        [NonSerialized] private volatile AsyncWaitQueue _asyncWaiters;
+
+        /// <summary>
+        /// Synchronization implementation for semaphore. Uses AQS state to
+        /// represent permits. Subclassed into fair and nonfair versions.
+        /// </summary>
+        [Serializable]
+        private abstract class Sync : AbstractQueuedSynchronizer
+        {
+            /// <summary>
+            /// Statistics recorded by the acquire methods, <c>null</c> when
+            /// instrumentation is off.
+            /// </summary>
+            [NonSerialized]
+            internal volatile LockStatistics Statistics;
+
+            protected Sync(int permits)
+            {
+                State = permits;
+            }
+
+            internal int Permits
+            {
+                get { return State; }
+            }
+
+            internal abstract bool IsFair { get; }
+
+            internal int NonfairTryAcquireShared(int acquires)
+            {
+                for (;;)
+                {
+                    int available = State;
+                    int remaining = available - acquires;
+                    if (remaining < 0 || CompareAndSetState(available, remaining))
+                        return remaining;
+                }
+            }
+
+            protected override bool TryReleaseShared(int releases)
+            {
+                for (;;)
+                {
+                    int current = State;
+                    int next = current + releases;
+                    if (next < current) // overflow
+                        throw new SystemException("Maximum permit count exceeded");
+                    if (CompareAndSetState(current, next))
+                        return true;
+                }
+            }
+
+            internal void ReducePermits(int reductions)
+            {
+                for (;;)
+                {
+                    int current = State;
+                    int next = current - reductions;
+                    if (next > current) // underflow
+                        throw new SystemException("Permit count underflow");
+                    if (CompareAndSetState(current, next))
+                        return;
+                }
+            }
+
+            internal int DrainPermits()
+            {
+                for (;;)
+                {
+                    int current = State;
+                    if (current == 0 || CompareAndSetState(current, 0))
+                        return current;
+                }
+            }
+        }
+
+        /// <summary>
+        /// Nonfair version. Acquiring is a plain compare-and-set on the
+        /// permit count that only falls back to the wait queue when no
+        /// permits are left.
+        /// </summary>
+        [Serializable]
+        private sealed class NonfairSync : Sync
+        {
+            internal NonfairSync(int permits) : base(permits)
+            {
+            }
+
+            internal override bool IsFair
+            {
+                get { return false; }
+            }
+
+            protected override int TryAcquireShared(int acquires)
+            {
+                return NonfairTryAcquireShared(acquires);
+            }
+        }
+
+        /// <summary>
+        /// Fair version. Never takes permits ahead of queued threads.
+        /// </summary>
+        [Serializable]
+        private sealed class FairSync : Sync
+        {
+            internal FairSync(int permits) : base(permits)
+            {
+            }
+
+            internal override bool IsFair
+            {
+                get { return true; }
+            }
+
+            protected override int TryAcquireShared(int acquires)
+            {
+                for (;;)
+                {
+                    if (HasQueuedPredecessors)
+                        return -1;
+                    int available = State;
+                    int remaining = available - acquires;
+                    if (remaining < 0 || CompareAndSetState(available, remaining))
+                        return remaining;
+                }
+            }
+        }
+
+        /// <summary>
+        /// Creates a <see cref="Semaphore"/> with the given number of
+        /// permits and nonfair fairness setting.
+        /// </summary>
+        /// <param name="permits">
+        /// The initial number of permits available. This value may be
+        /// negative, in which case releases must occur before any acquires
+        /// will be granted.
+        /// </param>
+        public Semaphore(int permits) : this(permits, false)
+        {
+        }
+
+        /// <summary>
+        /// Creates a <see cref="Semaphore"/> with the given number of
+        /// permits and the given fairness setting.
+        /// </summary>
+        /// <param name="permits">
+        /// The initial number of permits available. This value may be
+        /// negative, in which case releases must occur before any acquires
+        /// will be granted.
+        /// </param>
+        /// <param name="fair">
+        /// <c>true</c> if this semaphore will guarantee first-in first-out
+        /// granting of permits under contention, else <c>false</c>.
+        /// </param>
+        public Semaphore(int permits, bool fair)
+        {
+            _sync = fair ? (Sync) new FairSync(permits) : new NonfairSync(permits);
+            _sync.Statistics = LockStatistics.ForNewLock(this);
+        }
+
+        /// <summary>
+        /// Returns <c>true</c> if this semaphore has fairness set true.
+        /// </summary>
+        public bool IsFair
+        {
+            get { return _sync.IsFair; }
+        }
+
+        /// <summary>
+        /// Returns the current number of permits available in this
+        /// semaphore. This method is typically used for debugging and
+        /// testing purposes.
+        /// </summary>
+        public int AvailablePermits
+        {
+            get { return _sync.Permits; }
+        }
+
+        /// <summary>
+        /// Gets / Sets the <see cref="LockStatistics"/> the acquire methods
+        /// record acquisitions and waits to, or <c>null</c> (the default
+        /// unless <see cref="LockStatistics.EnabledForNewLocks"/> is set) to
+        /// record nothing. Semaphores have no owner, so no hold times are
+        /// recorded.
+        /// </summary>
+        public LockStatistics Statistics
+        {
+            get { return _sync.Statistics; }
+            set { _sync.Statistics = value; }
+        }
+
+        /// <summary>
+        /// Acquires a permit from this semaphore, blocking until one is
+        /// available, or the thread is interrupted.
+        /// </summary>
+        /// <exception cref="ThreadInterruptedException">
+        /// If the current thread is interrupted.
+        /// </exception>
+        public void Acquire()
+        {
+            Acquire(1);
+        }
+
+        /// <summary>
+        /// Acquires the given number of permits from this semaphore,
+        /// blocking until all are available, or the thread is interrupted.
+        /// </summary>
+        /// <param name="permits">The number of permits to acquire.</param>
+        /// <exception cref="ThreadInterruptedException">
+        /// If the current thread is interrupted.
+        /// </exception>
+        /// <exception cref="ArgumentOutOfRangeException">
+        /// If <paramref name="permits"/> is negative.
+        /// </exception>
+        public void Acquire(int permits)
+        {
+            CheckPermits(permits);
+            LockStatistics stats = _sync.Statistics;
+            if (stats == null)
+            {
+                AcquireQueued(permits, true);
+                return;
+            }
+            long waitStart = 0;
+            if (!TryAcquireForStatistics(permits))
+            {
+                waitStart = LockStatistics.Timestamp;
+                AcquireQueued(permits, true);
+            }
+            stats.RecordAcquired(waitStart);
+        }
+
+        /// <summary>
+        /// Acquires a permit from this semaphore, blocking until one is
+        /// available. If the current thread is interrupted while waiting,
+        /// it continues to wait, and its interrupt status is set again when
+        /// the method returns.
+        /// </summary>
+        public void AcquireUninterruptibly()
+        {
+            AcquireUninterruptibly(1);
+        }
+
+        /// <summary>
+        /// Acquires the given number of permits from this semaphore,
+        /// blocking until all are available. If the current thread is
+        /// interrupted while waiting, it continues to wait, and its
+        /// interrupt status is set again when the method returns.
+        /// </summary>
+        /// <param name="permits">The number of permits to acquire.</param>
+        /// <exception cref="ArgumentOutOfRangeException">
+        /// If <paramref name="permits"/> is negative.
+        /// </exception>
+        public void AcquireUninterruptibly(int permits)
+        {
+            CheckPermits(permits);
+            LockStatistics stats = _sync.Statistics;
+            if (stats == null)
+            {
+                AcquireQueued(permits, false);
+                return;
+            }
+            long waitStart = 0;
+            if (!TryAcquireForStatistics(permits))
+            {
+                waitStart = LockStatistics.Timestamp;
+                AcquireQueued(permits, false);
+            }
+            stats.RecordAcquired(waitStart);
+        }
+
+        /// <summary>
+        /// Acquires a permit from this semaphore, only if one is available
+        /// at the time of invocation. Even when this semaphore has been set
+        /// to use a fair ordering policy, a call to <see cref="TryAcquire()"/>
+        /// will immediately acquire a permit if one is available, whether
+        /// or not other threads are currently waiting.
+        /// </summary>
+        /// <returns>
+        /// <c>true</c> if a permit was acquired and <c>false</c> otherwise.
+        /// </returns>
+        public bool TryAcquire()
+        {
+            return TryAcquire(1);
+        }
+
+        /// <summary>
+        /// Acquires the given number of permits from this semaphore, only
+        /// if all are available at the time of invocation. Like
+        /// <see cref="TryAcquire()"/>, this does not honor the fairness
+        /// setting.
+        /// </summary>
+        /// <param name="permits">The number of permits to acquire.</param>
+        /// <returns>
+        /// <c>true</c> if the permits were acquired and <c>false</c>
+        /// otherwise.
+        /// </returns>
+        /// <exception cref="ArgumentOutOfRangeException">
+        /// If <paramref name="permits"/> is negative.
+        /// </exception>
+        public bool TryAcquire(int permits)
+        {
+            CheckPermits(permits);
+            if (_sync.NonfairTryAcquireShared(permits) < 0) return false;
+            LockStatistics stats = _sync.Statistics;
+            if (stats != null) stats.RecordAcquired(0);
+            return true;
+        }
+
+        /// <summary>
+        /// Acquires a permit from this semaphore, if one becomes available
+        /// within the given waiting time and the current thread has not
+        /// been interrupted.
+        /// </summary>
+        /// <param name="durationToWait">The maximum time to wait for a permit.</param>
+        /// <returns>
+        /// <c>true</c> if a permit was acquired and <c>false</c> if the
+        /// waiting time elapsed before a permit was acquired.
+        /// </returns>
+        /// <exception cref="ThreadInterruptedException">
+        /// If the current thread is interrupted.
+        /// </exception>
+        public bool TryAcquire(TimeSpan durationToWait)
+        {
+            return TryAcquire(1, durationToWait);
+        }
+
+        /// <summary>
+        /// Acquires the given number of permits from this semaphore, if all
+        /// become available within the given waiting time and the current
+        /// thread has not been interrupted.
+        /// </summary>
+        /// <param name="permits">The number of permits to acquire.</param>
+        /// <param name="durationToWait">The maximum time to wait for the permits.</param>
+        /// <returns>
+        /// <c>true</c> if all permits were acquired and <c>false</c> if the
+        /// waiting time elapsed before all permits were acquired.
+        /// </returns>
+        /// <exception cref="ThreadInterruptedException">
+        /// If the current thread is interrupted.
+        /// </exception>
+        /// <exception cref="ArgumentOutOfRangeException">
+        /// If <paramref name="permits"/> is negative.
+        /// </exception>
+        public bool TryAcquire(int permits, TimeSpan durationToWait)
+        {
+            CheckPermits(permits);
+            LockStatistics stats = _sync.Statistics;
+            if (stats == null) return TryAcquireQueued(permits, durationToWait);
+            long waitStart = 0;
+            if (!TryAcquireForStatistics(permits))
+            {
+                waitStart = LockStatistics.Timestamp;
+                if (!TryAcquireQueued(permits, durationToWait)) return false;
+            }
+            stats.RecordAcquired(waitStart);
+            return true;
+        }
+
+        /// <summary>
+        /// Acquires a permit from this semaphore without blocking the
+        /// calling thread, and runs <paramref name="callback"/> on
+        /// <paramref name="executor"/> once it is acquired.
+        /// </summary>
+        /// <param name="executor">The executor to run the callback.</param>
+        /// <param name="callback">
+        /// Runs while holding the permit, and is responsible to release it.
+        /// </param>
+        /// <returns>
+        /// An <see cref="IFuture{T}"/> that completes with the callback.
+        /// </returns>
+        /// <seealso cref="AcquireAsync{T}(int, IExecutor, Func{T})"/>
+        public IFuture<Void> AcquireAsync(IExecutor executor, Action callback)
+        {
+            return AcquireAsync(1, executor, callback);
+        }
+
+        /// <summary>
+        /// Acquires the given number of permits from this semaphore without
+        /// blocking the calling thread, and runs <paramref name="callback"/>
+        /// on <paramref name="executor"/> once all are acquired.
+        /// </summary>
+        /// <param name="permits">The number of permits to acquire.</param>
+        /// <param name="executor">The executor to run the callback.</param>
+        /// <param name="callback">
+        /// Runs while holding the permits, and is responsible to release them.
+        /// </param>
+        /// <returns>
+        /// An <see cref="IFuture{T}"/> that completes with the callback.
+        /// </returns>
+        /// <exception cref="ArgumentOutOfRangeException">
+        /// If <paramref name="permits"/> is negative.
+        /// </exception>
+        /// <seealso cref="AcquireAsync{T}(int, IExecutor, Func{T})"/>
+        public IFuture<Void> AcquireAsync(int permits, IExecutor executor, Action callback)
+        {
+            CheckPermits(permits);
+            return AsyncWaiters.Enqueue(permits, executor, callback);
+        }
+
+        /// <summary>
+        /// Acquires a permit from this semaphore without blocking the
+        /// calling thread, and runs <paramref name="callback"/> on
+        /// <paramref name="executor"/> once it is acquired.
+        /// </summary>
+        /// <param name="executor">The executor to run the callback.</param>
+        /// <param name="callback">
+        /// Runs while holding the permit, and is responsible to release it.
+        /// </param>
+        /// <returns>
+        /// An <see cref="IFuture{T}"/> that completes with the result of the
+        /// callback.
+        /// </returns>
+        /// <seealso cref="AcquireAsync{T}(int, IExecutor, Func{T})"/>
+        public IFuture<T> AcquireAsync<T>(IExecutor executor, Func<T> callback)
+        {
+            return AcquireAsync(1, executor, callback);
+        }
+
+        /// <summary>
+        /// Acquires the given number of permits from this semaphore without
+        /// blocking the calling thread, and runs <paramref name="callback"/>
+        /// on <paramref name="executor"/> once all are acquired.
+        /// </summary>
+        /// <remarks>
+        /// <para>
+        /// The permits are taken right away if they are available, otherwise
+        /// the request is queued and granted by a later
+        /// <see cref="Release()"/>. Queued requests are granted in FIFO order
+        /// among themselves; a request never overtakes an earlier one that
+        /// asks for more permits than are available. Like
+        /// <see cref="TryAcquire()"/> they may be granted ahead of blocked
+        /// threads of a nonfair semaphore, but a fair semaphore serves its
+        /// blocked threads first.
+        /// </para>
+        /// <para>
+        /// Cancelling the returned future before the callback started
+        /// withdraws the request, and returns the permits if they were
+        /// already acquired for it. Once started, the callback owns the
+        /// permits even if the future is cancelled while it runs. If the
+        /// executor rejects the callback, the permits are returned and the
+        /// future fails with the rejection.
+        /// </para>
+        /// </remarks>
+        /// <param name="permits">The number of permits to acquire.</param>
+        /// <param name="executor">The executor to run the callback.</param>
+        /// <param name="callback">
+        /// Runs while holding the permits, and is responsible to release them.
+        /// </param>
+        /// <returns>
+        /// An <see cref="IFuture{T}"/> that completes with the result of the
+        /// callback.
+        /// </returns>
+        /// <exception cref="ArgumentOutOfRangeException">
+        /// If <paramref name="permits"/> is negative.
+        /// </exception>
+        /// <exception cref="ArgumentNullException">
+        /// If <paramref name="executor"/> or <paramref name="callback"/> is
+        /// <c>null</c>.
+        /// </exception>
+        public IFuture<T> AcquireAsync<T>(int permits, IExecutor executor, Func<T> callback)
+        {
+            CheckPermits(permits);
+            return AsyncWaiters.Enqueue(permits, executor, callback);
+        }
+
+        /// <summary>
+        /// Releases a permit, returning it to the semaphore. There is no
+        /// requirement that a thread that releases a permit must have
+        /// acquired that permit by calling <see cref="Acquire()"/>.
+        /// </summary>
+        public void Release()
+        {
+            _sync.ReleaseShared(1);
+            SignalAsyncWaiters();
+        }
+
+        /// <summary>
+        /// Releases the given number of permits, returning them to the
+        /// semaphore.
+        /// </summary>
+        /// <param name="permits">The number of permits to release.</param>
+        /// <exception cref="ArgumentOutOfRangeException">
+        /// If <paramref name="permits"/> is negative.
+        /// </exception>
+        public void Release(int permits)
+        {
+            CheckPermits(permits);
+            _sync.ReleaseShared(permits);
+            SignalAsyncWaiters();
+        }
+
+        /// <summary>
+        /// Acquires and returns all permits that are immediately available,
+        /// or if negative permits are available, releases them.
+        /// </summary>
+        /// <returns>The number of permits acquired or, if negative, the number released.</returns>
+        public int DrainPermits()
+        {
+            return _sync.DrainPermits();
+        }
+
+        /// <summary>
+        /// Shrinks the number of available permits by the indicated
+        /// reduction. This method can be useful in subclasses that use
+        /// semaphores to track resources that become unavailable. This
+        /// method differs from <see cref="Acquire()"/> in that it does not
+        /// block waiting for permits to become available.
+        /// </summary>
+        /// <param name="reduction">The number of permits to remove.</param>
+        /// <exception cref="ArgumentOutOfRangeException">
+        /// If <paramref name="reduction"/> is negative.
+        /// </exception>
+        protected void ReducePermits(int reduction)
+        {
+            if (reduction < 0)
+                throw new ArgumentOutOfRangeException("reduction", reduction, "Must not be negative.");
+            _sync.ReducePermits(reduction);
+        }
+
+        /// <summary>
+        /// Queries whether any threads are waiting to acquire. Note that
+        /// because cancellations may occur at any time, a <c>true</c>
+        /// return does not guarantee that any other thread will ever
+        /// acquire. This method is designed primarily for use in monitoring
+        /// of the system state.
+        /// </summary>
+        public bool HasQueuedThreads
+        {
+            get { return _sync.HasQueuedThreads; }
+        }
+
+        /// <summary>
+        /// Returns an estimate of the number of threads waiting to acquire.
+        /// This method is designed for use in monitoring of the system
+        /// state, not for synchronization control.
+        /// </summary>
+        public int QueueLength
+        {
+            get { return _sync.QueueLength; }
+        }
+
+        /// <summary>
+        /// Returns a collection containing threads that may be waiting to
+        /// acquire. This method is designed to facilitate construction of
+        /// subclasses that provide more extensive monitoring facilities.
+        /// </summary>
+        protected internal virtual ICollection<Thread> QueuedThreads
+        {
+            get { return _sync.QueuedThreads; }
+        }
+
+        /// <summary>
+        /// Returns a string identifying this semaphore, as well as its
+        /// state. The state, in brackets, includes the string
+        /// "Permits =" followed by the number of permits.
+        /// </summary>
+        public override string ToString()
+        {
+            return base.ToString() + "[Permits = " + _sync.Permits + "]";
+        }
+
+        /// <summary>
+        /// Attempts an instrumented or asynchronous acquisition without
+        /// waiting, not barging ahead of queued threads of a fair semaphore.
+        /// </summary>
+        private bool TryAcquireForStatistics(int permits)
+        {
+            return (!_sync.IsFair || !_sync.HasQueuedThreads) && _sync.NonfairTryAcquireShared(permits) >= 0;
+        }
+
+        private AsyncWaitQueue AsyncWaiters
+        {
+            get
+            {
+                AsyncWaitQueue q = _asyncWaiters;
+                if (q != null) return q;
+                q = new AsyncWaitQueue(TryAcquireForStatistics, n => _sync.ReleaseShared(n));
+#pragma warning disable 420 // a reference to a volatile field will not be treated as volatile
+                return Interlocked.CompareExchange(ref _asyncWaiters, q, null) ?? q;
+#pragma warning restore 420
+            }
+        }
+
+        private void SignalAsyncWaiters()
+        {
+            AsyncWaitQueue q = _asyncWaiters;
+            if (q != null && q.HasWaiters) q.Dispatch();
+        }
+
+        /// <summary>
+        /// Acquires through the queue of blocked threads. Asynchronous
+        /// requests of a fair semaphore give way to queued threads, so they
+        /// are dispatched again whenever a thread leaves the queue, whether
+        /// it acquired, was interrupted or timed out. Otherwise permits left
+        /// over by that thread would wait for an unrelated release.
+        /// </summary>
+        private void AcquireQueued(int permits, bool interruptible)
+        {
+            try
+            {
+                if (interruptible) _sync.AcquireSharedInterruptibly(permits);
+                else _sync.AcquireShared(permits);
+            }
+            finally
+            {
+                if (_sync.IsFair) SignalAsyncWaiters();
+            }
+        }
+
+        /// <summary>
+        /// Timed variant of <see cref="AcquireQueued"/>.
+        /// </summary>
+        private bool TryAcquireQueued(int permits, TimeSpan durationToWait)
+        {
+            try
+            {
+                return _sync.TryAcquireShared(permits, durationToWait);
+            }
+            finally
+            {
+                if (_sync.IsFair) SignalAsyncWaiters();
+            }
+        }
+
+        private static void CheckPermits(int permits)
+        {
+            if (permits < 0)
+                throw new ArgumentOutOfRangeException("permits", permits, "Must not be negative.");
+        }
+    }
+}
@@ -0,0 +1,159 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+using System;
+
+namespace Spring.Threading
+{
+    /// <summary>
+    /// Delay based limit in the style of TCP Vegas: estimates how many
+    /// calls are queued downstream from the ratio of the lowest latency
+    /// seen to the current one, and keeps that queue short.
+    /// </summary>
+    /// <remarks>
+    /// <para>
+    /// With <c>L</c> the limit, <c>rtt</c> the latency of a call and
+    /// <c>rttNoLoad</c> the lowest latency seen, the estimated queue is
+    /// <c>L * (1 - rttNoLoad / rtt)</c>. Up to <c>log10(L)</c> the limit
+    /// grows by <c>6 * log10(L)</c>, below <c>3 * log10(L)</c> it grows by
+    /// <c>log10(L)</c>, and above <c>6 * log10(L)</c>, or on a drop, it
+    /// shrinks by <c>log10(L)</c>. In between it stays put. The logarithm
+    /// is at least one, so that small limits still move.
+    /// </para>
+    /// <para>
+    /// The lowest latency is forgotten every <see cref="ProbeInterval"/>
+    /// limits' worth of samples, so that the algorithm follows a service
+    /// that became permanently slower, for example after a deployment.
+    /// </para>
+    /// <para>
+    /// NOTE: this class is NOT present in java.util.concurrent.
+    /// </para>
+    /// </remarks>
+    public class VegasLimit : AbstractLimit //NET_ONLY
+    {
+        private readonly double _smoothing;
+        private readonly int _probeInterval;
+        private long _rttNoLoad;
+        private long _samplesToProbe;
+
+        /// <summary>
+        /// Creates a <see cref="VegasLimit"/> that starts at 20, stays
+        /// within 1 and 1000, applies every change in full and probes for
+        /// the lowest latency every 30 limits' worth of samples.
+        /// </summary>
+        public VegasLimit() : this(20, 1, 1000, 1.0, 30)
+        {
+        }
+
+        /// <summary>
+        /// Creates a <see cref="VegasLimit"/> with the given parameters.
+        /// </summary>
+        /// <param name="initialLimit">The limit before the first sample.</param>
+        /// <param name="minLimit">The lower bound of the limit, at least one.</param>
+        /// <param name="maxLimit">The upper bound of the limit.</param>
+        /// <param name="smoothing">
+        /// The share of each computed change that is applied, greater than
+        /// zero and at most one.
+        /// </param>
+        /// <param name="probeInterval">
+        /// The number of samples, as a multiple of the limit, after which
+        /// the lowest latency is measured anew, at least one.
+        /// </param>
+        /// <exception cref="ArgumentOutOfRangeException">
+        /// If the limits are out of order, or <paramref name="smoothing"/>
+        /// or <paramref name="probeInterval"/> is out of range.
+        /// </exception>
+        public VegasLimit(int initialLimit, int minLimit, int maxLimit, double smoothing, int probeInterval)
+            : base(initialLimit, minLimit, maxLimit)
+        {
+            if (smoothing <= 0 || smoothing > 1)
+                throw new ArgumentOutOfRangeException("smoothing", smoothing, "Must be greater than 0 and at most 1.");
+            if (probeInterval < 1)
+                throw new ArgumentOutOfRangeException("probeInterval", probeInterval, "Must be at least one.");
+            _smoothing = smoothing;
+            _probeInterval = probeInterval;
+            _samplesToProbe = (long) probeInterval * initialLimit;
+        }
+
+        /// <summary>
+        /// The share of each computed change that is applied.
+        /// </summary>
+        public double Smoothing
+        {
+            get { return _smoothing; }
+        }
+
+        /// <summary>
+        /// The number of samples, as a multiple of the limit, after which
+        /// the lowest latency is measured anew.
+        /// </summary>
+        public int ProbeInterval
+        {
+            get { return _probeInterval; }
+        }
+
+        /// <summary>
+        /// The lowest latency seen since the last probe, zero before the
+        /// first sample.
+        /// </summary>
+        public TimeSpan NoLoadLatency
+        {
+            get { return new TimeSpan(_rttNoLoad); }
+        }
+
+        /// <summary>
+        /// Moves the limit according to the estimated downstream queue.
+        /// </summary>
+        protected override double NewLimit(double limit, TimeSpan latency, int inFlight, bool dropped)
+        {
+            if (--_samplesToProbe <= 0)
+            {
+                _samplesToProbe = (long) (_probeInterval * limit);
+                _rttNoLoad = 0;
+            }
+            long rtt = latency.Ticks;
+            if (rtt > 0 && (_rttNoLoad == 0 || rtt < _rttNoLoad))
+            {
+                _rttNoLoad = rtt;
+                if (!dropped) return limit;
+            }
+
+            double log = Math.Max(1, Math.Log10(limit));
+            double newLimit;
+            if (dropped)
+                newLimit = limit - log;
+            else if (rtt <= 0 || IsAppLimited(limit, inFlight))
+                return limit;
+            else
+            {
+                double queue = Math.Ceiling(limit * (1 - (double) _rttNoLoad / rtt));
+                if (queue <= log)
+                    newLimit = limit + 6 * log;
+                else if (queue < 3 * log)
+                    newLimit = limit + log;
+                else if (queue > 6 * log)
+                    newLimit = limit - log;
+                else
+                    return limit;
+            }
+            return limit + (newLimit - limit) * _smoothing;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+/*
+ * Simulates a downstream service that works on at most CAPACITY calls
+ * at a time, each taking SERVICE_MS, and queues the rest. A call that
+ * waited longer than TIMEOUT_MS in the service queue is dropped. Client
+ * threads, many more than the capacity, call the service in a closed
+ * loop through a limiter. A call the limiter does not admit is shed: the
+ * client backs off for a millisecond and tries again.
+ *
+ * Outputs, per limiter and client thread count, the admitted and shed
+ * calls per second, the dropped calls, the mean and 99th percentile
+ * latency of admitted calls in milliseconds, and the final limit:
+ *  "None"            no limiter, every call queues at the service
+ *  "Fixed"           Semaphore with CAPACITY permits, the hand tuned limit
+ *  "AIMD"            AdaptiveLimiter with AimdLimit
+ *  "Vegas"           AdaptiveLimiter with VegasLimit
+ *  "Gradient"        AdaptiveLimiter with GradientLimit
+ * Without a limiter the latency grows with the number of clients until
+ * calls time out. The adaptive limiters should keep it bounded near the
+ * latency of the fixed limit without being told the capacity.
+ *
+ * Usage: AdaptiveLimiterLoops [maxThreads [millisPerRun]]
+ */
+using System;
+using System.Collections.Generic;
+using System.Diagnostics;
+using System.Threading;
+using Spring.Threading;
+using Semaphore = Spring.Threading.Semaphore;
+
+public class AdaptiveLimiterLoops
+{
+    internal const int TRIALS = 2;
+    internal const int CAPACITY = 8;
+    internal const int SERVICE_MS = 2;
+    internal const int TIMEOUT_MS = 100;
+    internal static int maxThreads = 256;
+    internal static int millisPerRun = 2000;
+
+    internal static readonly string[] names = { "None", "Fixed", "AIMD", "Vegas", "Gradient" };
+
+    public static void main(string[] args)
+    {
+        if (args.Length > 0)
+            maxThreads = Int32.Parse(args[0]);
+        if (args.Length > 1)
+            millisPerRun = Int32.Parse(args[1]);
+
+        Console.Out.WriteLine("Warmup...");
+        for (int k = 0; k < names.Length; ++k)
+        {
+            oneRun(k, CAPACITY * 2, millisPerRun / 10, false);
+            Console.Out.Write(".");
+        }
+        Console.Out.WriteLine();
+
+        for (int j = 0; j < TRIALS; ++j)
+        {
+            Console.Out.WriteLine("Trial " + j);
+            for (int i = CAPACITY * 2; i <= maxThreads; i <<= 2)
+            {
+                Console.Out.WriteLine("Threads: " + i);
+                for (int k = 0; k < names.Length; ++k)
+                    oneRun(k, i, millisPerRun, true);
+                Console.Out.WriteLine();
+            }
+        }
+    }
+
+    internal static ILimiter newLimiter(int k)
+    {
+        switch (k)
+        {
+            case 0: return new NoLimiter();
+            case 1: return new FixedLimiter(CAPACITY);
+            case 2: return new Adaptive(new AimdLimit(20, 1, 1000, 0.9, TimeSpan.FromMilliseconds(TIMEOUT_MS / 2)));
+            case 3: return new Adaptive(new VegasLimit());
+            default: return new Adaptive(new GradientLimit());
+        }
+    }
+
+    internal static void oneRun(int k, int nthreads, int millis, bool print)
+    {
+        ILimiter limiter = newLimiter(k);
+        Service service = new Service();
+        int stop = 0;
+        long shed = 0;
+        long dropped = 0;
+        List<long>[] latencies = new List<long>[nthreads];
+        Thread[] threads = new Thread[nthreads];
+        CountDownLatch ready = new CountDownLatch(nthreads);
+        CountDownLatch go = new CountDownLatch(1);
+        for (int t = 0; t < nthreads; ++t)
+        {
+            List<long> mine = latencies[t] = new List<long>();
+            threads[t] = new Thread(delegate()
+                {
+                    ready.CountDown();
+                    go.Await();
+                    while (Thread.VolatileRead(ref stop) == 0)
+                    {
+                        if (!limiter.TryAcquire())
+                        {
+                            Interlocked.Increment(ref shed);
+                            Thread.Sleep(1);
+                            continue;
+                        }
+                        Stopwatch watch = Stopwatch.StartNew();
+                        bool ok = service.Call();
+                        TimeSpan latency = watch.Elapsed;
+                        limiter.Release(latency, !ok);
+                        if (ok)
+                            mine.Add(latency.Ticks);
+                        else
+                            Interlocked.Increment(ref dropped);
+                    }
+                });
+            threads[t].Start();
+        }
+        ready.Await();
+        Stopwatch timer = Stopwatch.StartNew();
+        go.CountDown();
+        Thread.Sleep(millis);
+        Thread.VolatileWrite(ref stop, 1);
+        foreach (Thread t in threads)
+            t.Join();
+        timer.Stop();
+        if (print)
+            report(names[k], timer.Elapsed, latencies, shed, dropped, limiter.Limit);
+    }
+
+    internal static void report(string name, TimeSpan elapsed, List<long>[] latencies,
+                                long shed, long dropped, int limit)
+    {
+        List<long> all = new List<long>();
+        foreach (List<long> l in latencies)
+            all.AddRange(l);
+        all.Sort();
+        double seconds = Math.Max(elapsed.TotalSeconds, 0.001);
+        long sum = 0;
+        foreach (long ticks in all)
+            sum += ticks;
+        double mean = all.Count == 0 ? 0 : (double) sum / all.Count / TimeSpan.TicksPerMillisecond;
+        double p99 = all.Count == 0 ? 0 : (double) all[(all.Count - 1) * 99 / 100] / TimeSpan.TicksPerMillisecond;
+
+        Console.Out.Write(name.PadRight(10));
+        Console.Out.Write(LoopHelpers.rightJustify((long) (all.Count / seconds)) + " ok/s");
+        Console.Out.Write(LoopHelpers.rightJustify((long) (shed / seconds)) + " shed/s");
+        Console.Out.Write(LoopHelpers.rightJustify(dropped) + " dropped");
+        Console.Out.Write("  mean " + mean.ToString("F1").PadLeft(7) + " ms");
+        Console.Out.Write("  p99 " + p99.ToString("F1").PadLeft(7) + " ms");
+        Console.Out.WriteLine("  limit " + (limit == int.MaxValue ? "-" : limit.ToString()));
+    }
+
+    /// <summary>
+    /// The simulated service: CAPACITY workers and an unbounded queue in
+    /// front of them, from which calls that waited too long are dropped.
+    /// </summary>
+    internal sealed class Service
+    {
+        private readonly Semaphore workers = new Semaphore(CAPACITY, true);
+
+        public bool Call()
+        {
+            if (!workers.TryAcquire(TimeSpan.FromMilliseconds(TIMEOUT_MS)))
+                return false;
+            try
+            {
+                Thread.Sleep(SERVICE_MS);
+                return true;
+            }
+            finally
+            {
+                workers.Release();
+            }
+        }
+    }
+
+    internal interface ILimiter
+    {
+        bool TryAcquire();
+        void Release(TimeSpan latency, bool dropped);
+        int Limit { get; }
+    }
+
+    internal sealed class NoLimiter : ILimiter
+    {
+        public bool TryAcquire() { return true; }
+        public void Release(TimeSpan latency, bool dropped) { }
+        public int Limit { get { return int.MaxValue; } }
+    }
+
+    internal sealed class FixedLimiter : ILimiter
+    {
+        private readonly Semaphore permits;
+        private readonly int limit;
+
+        public FixedLimiter(int limit)
+        {
+            this.limit = limit;
+            permits = new Semaphore(limit);
+        }
+
+        public bool TryAcquire() { return permits.TryAcquire(); }
+        public void Release(TimeSpan latency, bool dropped) { permits.Release(); }
+        public int Limit { get { return limit; } }
+    }
+
+    internal sealed class Adaptive : ILimiter
+    {
+        private readonly AdaptiveLimiter limiter;
+
+        public Adaptive(ILimitAlgorithm algorithm)
+        {
+            limiter = new AdaptiveLimiter(algorithm);
+        }
+
+        public bool TryAcquire() { return limiter.TryAcquire(); }
+
+        public void Release(TimeSpan latency, bool dropped)
+        {
+            if (dropped)
+                limiter.ReleaseDropped(latency);
+            else
+                limiter.Release(latency);
+        }
+
+        public int Limit { get { return limiter.Limit; } }
+    }
+}
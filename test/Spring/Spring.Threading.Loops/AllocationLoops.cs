@@ -0,0 +1,106 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+/*
+ * Reports the bytes allocated per operation by the stamped and
+ * markable atomics, single threaded so that the GC heap size delta
+ * is attributable to the loop alone. Each case runs with
+ * collections counted; a collection during the measured loop makes
+ * the heap delta meaningless, so the number of collections is
+ * printed alongside.
+ *
+ * Cases:
+ *  "Stamped.CAS"        AtomicStampedReference CAS bumping the stamp
+ *  "Stamped.Unchanged"  AtomicStampedReference CAS to the current pair
+ *  "Markable.Toggle"    AtomicMarkableReference AttemptMark flip-flop
+ *  "StampedInt.CAS"     AtomicStampedInteger CAS bumping the stamp
+ *
+ * Usage: AllocationLoops [iters]
+ */
+using System;
+using Spring.Threading.AtomicTypes;
+
+public class AllocationLoops
+{
+    internal static int iters = 1000;
+
+    public static void main(string[] args)
+    {
+        if (args.Length > 0)
+            iters = Int32.Parse(args[0]);
+
+        Console.Out.WriteLine("Warmup...");
+        oneTest(iters, false);
+        oneTest(iters, true);
+    }
+
+    internal static void oneTest(int iters, bool print)
+    {
+        report("Stamped.CAS", iters, print, delegate(int n)
+            {
+                object node = new object();
+                AtomicStampedReference<object> r = new AtomicStampedReference<object>(node, 0);
+                for (int i = 0; i < n; ++i)
+                    r.CompareAndSet(node, node, i, i + 1);
+            });
+        report("Stamped.Unchanged", iters, print, delegate(int n)
+            {
+                object node = new object();
+                AtomicStampedReference<object> r = new AtomicStampedReference<object>(node, 0);
+                for (int i = 0; i < n; ++i)
+                    r.CompareAndSet(node, node, 0, 0);
+            });
+        report("Markable.Toggle", iters, print, delegate(int n)
+            {
+                object node = new object();
+                AtomicMarkableReference<object> r = new AtomicMarkableReference<object>(node, false);
+                for (int i = 0; i < n; ++i)
+                    r.AttemptMark(node, (i & 1) == 0);
+            });
+        report("StampedInt.CAS", iters, print, delegate(int n)
+            {
+                AtomicStampedInteger r = new AtomicStampedInteger(1, 0);
+                for (int i = 0; i < n; ++i)
+                    r.CompareAndSet(1, 1, i, i + 1);
+            });
+        if (print)
+            Console.Out.WriteLine();
+    }
+
+    internal delegate void Loop(int iters);
+
+    internal static void report(string name, int iters, bool print, Loop loop)
+    {
+        GC.Collect();
+        GC.WaitForPendingFinalizers();
+        GC.Collect();
+        int gcs = GC.CollectionCount(0);
+        long before = GC.GetTotalMemory(false);
+        loop(iters);
+        long after = GC.GetTotalMemory(false);
+        gcs = GC.CollectionCount(0) - gcs;
+        if (print)
+        {
+            Console.Out.Write(name.PadRight(20));
+            Console.Out.Write(LoopHelpers.rightJustify((after - before) / iters) + " bytes per op");
+            Console.Out.WriteLine(LoopHelpers.rightJustify(gcs) + " gen0 collections");
+        }
+    }
+}
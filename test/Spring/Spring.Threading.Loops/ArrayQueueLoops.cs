@@ -0,0 +1,156 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+
+
+/*
+ * Measures bounded array queues handing items from producers to
+ * consumers through Put and Take, in three shapes: one producer and
+ * one consumer, many producers and one consumer, and as many consumers
+ * as producers. Each queue only runs in the shapes it supports.
+ *
+ * Outputs, per queue and shape, the nanoseconds per item and the items
+ * transferred per millisecond:
+ *  "SPSC"       SpscArrayQueue, no CAS on either side
+ *  "MPSC"       MpscArrayQueue, CAS on the producer side
+ *  "MPMC"       MpmcArrayQueue, CAS on both sides
+ *  "ABQ"        ArrayBlockingQueue, one lock and two conditions
+ * The lock-free queues wait with a YieldingWaitStrategy.
+ *
+ * Usage: ArrayQueueLoops [maxPairs [items [capacity]]]
+ */
+using System;
+using System.Diagnostics;
+using System.Threading;
+using Spring.Threading;
+using Spring.Threading.Collections.Generic;
+
+public class ArrayQueueLoops
+{
+    internal const int TRIALS = 2;
+    internal static int maxPairs = 8;
+    internal static int items = 1000000;
+    internal static int capacity = 1024;
+
+    public static void main(string[] args)
+    {
+        if (args.Length > 0)
+            maxPairs = Int32.Parse(args[0]);
+        if (args.Length > 1)
+            items = Int32.Parse(args[1]);
+        if (args.Length > 2)
+            capacity = Int32.Parse(args[2]);
+
+        Console.Out.WriteLine("Warmup...");
+        oneTest(1, 1, items / 10, false);
+        oneTest(maxPairs, 1, items / 10, false);
+        oneTest(maxPairs, maxPairs, items / 10, false);
+        Console.Out.WriteLine();
+
+        for (int j = 0; j < TRIALS; ++j)
+        {
+            Console.Out.WriteLine("Trial " + j);
+            oneTest(1, 1, items, true);
+            for (int i = 2; i <= maxPairs; i <<= 1)
+                oneTest(i, 1, items, true);
+            for (int i = 2; i <= maxPairs; i <<= 1)
+                oneTest(i, i, items, true);
+        }
+    }
+
+    internal static void oneTest(int producers, int consumers, int items, bool print)
+    {
+        if (print)
+            Console.Out.WriteLine("Producers: " + producers + " Consumers: " + consumers);
+        if (producers == 1 && consumers == 1)
+            print1("SPSC", new SpscArrayQueue<int>(capacity, new YieldingWaitStrategy()), producers, consumers, items, print);
+        if (consumers == 1)
+            print1("MPSC", new MpscArrayQueue<int>(capacity, new YieldingWaitStrategy()), producers, consumers, items, print);
+        print1("MPMC", new MpmcArrayQueue<int>(capacity, new YieldingWaitStrategy()), producers, consumers, items, print);
+        print1("ABQ", new ArrayBlockingQueue<int>(capacity), producers, consumers, items, print);
+        if (print)
+            Console.Out.WriteLine();
+    }
+
+    internal static void print1(string name, IBlockingQueue<int> q, int producers, int consumers, int items, bool print)
+    {
+        long time = runQueue(q, producers, consumers, items);
+        if (print)
+        {
+            Console.Out.Write(name.PadRight(10));
+            Console.Out.Write(LoopHelpers.rightJustify(time / items) + " ns per item");
+            Console.Out.WriteLine(LoopHelpers.rightJustify((long) items * 1000000L / Math.Max(time, 1)) + " items per ms");
+        }
+    }
+
+    /// <summary>
+    /// Moves <paramref name="items"/> items from the producers to the
+    /// consumers and returns the elapsed time in nanoseconds.
+    /// </summary>
+    internal static long runQueue(IBlockingQueue<int> q, int producers, int consumers, int items)
+    {
+        int nthreads = producers + consumers;
+        CountDownLatch ready = new CountDownLatch(nthreads);
+        CountDownLatch go = new CountDownLatch(1);
+        long[] sums = new long[consumers];
+        Thread[] threads = new Thread[nthreads];
+        for (int i = 0; i < producers; ++i)
+        {
+            int first = i * (items / producers);
+            int count = (i == producers - 1) ? items - first : items / producers;
+            threads[i] = new Thread(delegate()
+                {
+                    ready.CountDown();
+                    go.Await();
+                    for (int k = 0; k < count; ++k)
+                        q.Put(first + k);
+                });
+        }
+        for (int i = 0; i < consumers; ++i)
+        {
+            int index = i;
+            int count = items / consumers + (i < items % consumers ? 1 : 0);
+            threads[producers + i] = new Thread(delegate()
+                {
+                    ready.CountDown();
+                    go.Await();
+                    long sum = 0;
+                    for (int k = 0; k < count; ++k)
+                        sum += q.Take();
+                    sums[index] = sum;
+                });
+        }
+        foreach (Thread t in threads)
+            t.Start();
+        ready.Await();
+        Stopwatch timer = Stopwatch.StartNew();
+        go.CountDown();
+        foreach (Thread t in threads)
+            t.Join();
+        timer.Stop();
+
+        long total = 0;
+        foreach (long sum in sums)
+            total += sum;
+        if (total != (long) items * (items - 1) / 2 || !q.IsEmpty)
+            throw new SystemException("lost items: " + total);
+        return timer.Elapsed.Ticks * 100;
+    }
+}
@@ -0,0 +1,260 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+
+
+/*
+ * Measures deques under symmetric load at both usage patterns of our
+ * callers: as a LIFO stack (push and pop at the front, like undo stacks
+ * and resource pools) and as a FIFO queue (add at the back, poll at the
+ * front). Every thread inserts an item and then removes one, so all
+ * threads contend on the same end(s).
+ *
+ * Outputs, per deque, pattern and thread count, the nanoseconds per
+ * insert/remove pair and the total pairs per millisecond:
+ *  "Lock-free"  ConcurrentLinkedDeque, CAS on links and ends
+ *  "One-lock"   a LinkedList guarded by a single monitor for both ends,
+ *               as LinkedBlockingDeque does
+ *
+ * Usage: ConcurrentDequeLoops [maxThreads [items]]
+ */
+using System;
+using System.Collections.Generic;
+using System.Diagnostics;
+using System.Threading;
+using Spring.Collections.Generic;
+using Spring.Threading;
+using Spring.Threading.Collections.Generic;
+
+public class ConcurrentDequeLoops
+{
+    internal const int TRIALS = 2;
+    internal static int maxThreads = 16;
+    internal static int items = 1000000;
+
+    public static void main(string[] args)
+    {
+        if (args.Length > 0)
+            maxThreads = Int32.Parse(args[0]);
+        if (args.Length > 1)
+            items = Int32.Parse(args[1]);
+
+        Console.Out.WriteLine("Warmup...");
+        for (int i = 1; i <= maxThreads; i <<= 1)
+        {
+            oneTest(i, items / 10, false);
+            Console.Out.Write(".");
+        }
+        Console.Out.WriteLine();
+
+        for (int j = 0; j < TRIALS; ++j)
+        {
+            Console.Out.WriteLine("Trial " + j);
+            for (int i = 1; i <= maxThreads; i <<= 1)
+                oneTest(i, items, true);
+        }
+    }
+
+    internal static void oneTest(int nthreads, int items, bool print)
+    {
+        if (print)
+            Console.Out.WriteLine("Threads: " + nthreads);
+        print1("Lock-free", "stack", new ConcurrentLinkedDeque<int>(), true, nthreads, items, print);
+        print1("One-lock", "stack", new SynchronizedDeque<int>(), true, nthreads, items, print);
+        print1("Lock-free", "queue", new ConcurrentLinkedDeque<int>(), false, nthreads, items, print);
+        print1("One-lock", "queue", new SynchronizedDeque<int>(), false, nthreads, items, print);
+        if (print)
+            Console.Out.WriteLine();
+    }
+
+    internal static void print1(string name, string pattern, IDeque<int> d, bool lifo, int nthreads, int items, bool print)
+    {
+        long time = runDeque(d, lifo, nthreads, items);
+        if (print)
+        {
+            Console.Out.Write(name.PadRight(10));
+            Console.Out.Write(pattern.PadRight(6));
+            Console.Out.Write(LoopHelpers.rightJustify(time / items) + " ns per pair");
+            Console.Out.WriteLine(LoopHelpers.rightJustify((long) items * 1000000L / Math.Max(time, 1)) + " pairs per ms");
+        }
+    }
+
+    /// <summary>
+    /// Runs <paramref name="items"/> insert/remove pairs split over
+    /// <paramref name="nthreads"/> threads and returns the elapsed time in
+    /// nanoseconds.
+    /// </summary>
+    internal static long runDeque(IDeque<int> d, bool lifo, int nthreads, int items)
+    {
+        CountDownLatch ready = new CountDownLatch(nthreads);
+        CountDownLatch go = new CountDownLatch(1);
+        long[] sums = new long[nthreads];
+        Thread[] threads = new Thread[nthreads];
+        int perThread = items / nthreads;
+        for (int i = 0; i < nthreads; ++i)
+        {
+            int index = i;
+            int first = i * perThread;
+            int count = (i == nthreads - 1) ? items - first : perThread;
+            threads[i] = new Thread(delegate()
+                {
+                    ready.CountDown();
+                    go.Await();
+                    long sum = 0;
+                    for (int k = 0; k < count; ++k)
+                    {
+                        if (lifo)
+                            d.AddFirst(first + k);
+                        else
+                            d.AddLast(first + k);
+                        int x;
+                        // our own insert guarantees the deque is not empty
+                        if (!d.PollFirst(out x))
+                            throw new SystemException("poll failed");
+                        sum += x;
+                    }
+                    sums[index] = sum;
+                });
+        }
+        foreach (Thread t in threads)
+            t.Start();
+        ready.Await();
+        Stopwatch timer = Stopwatch.StartNew();
+        go.CountDown();
+        foreach (Thread t in threads)
+            t.Join();
+        timer.Stop();
+
+        long total = 0;
+        foreach (long sum in sums)
+            total += sum;
+        if (total != (long) items * (items - 1) / 2 || !d.IsEmpty)
+            throw new SystemException("lost items: " + total);
+        return timer.Elapsed.Ticks * 100;
+    }
+
+    /// <summary>
+    /// Baseline deque that guards both ends with one monitor, the same
+    /// locking scheme as LinkedBlockingDeque. Only the operations used by
+    /// <see cref="runDeque"/> are supported.
+    /// </summary>
+    internal class SynchronizedDeque<T> : AbstractQueue<T>, IDeque<T>
+    {
+        private readonly LinkedList<T> _list = new LinkedList<T>();
+
+        public void AddFirst(T element)
+        {
+            lock (_list) _list.AddFirst(element);
+        }
+
+        public void AddLast(T element)
+        {
+            lock (_list) _list.AddLast(element);
+        }
+
+        public bool OfferFirst(T element)
+        {
+            AddFirst(element);
+            return true;
+        }
+
+        public bool OfferLast(T element)
+        {
+            AddLast(element);
+            return true;
+        }
+
+        public bool PollFirst(out T element)
+        {
+            lock (_list)
+            {
+                if (_list.Count == 0)
+                {
+                    element = default(T);
+                    return false;
+                }
+                element = _list.First.Value;
+                _list.RemoveFirst();
+                return true;
+            }
+        }
+
+        public bool PollLast(out T element)
+        {
+            lock (_list)
+            {
+                if (_list.Count == 0)
+                {
+                    element = default(T);
+                    return false;
+                }
+                element = _list.Last.Value;
+                _list.RemoveLast();
+                return true;
+            }
+        }
+
+        public bool PeekFirst(out T element)
+        {
+            lock (_list)
+            {
+                element = _list.Count == 0 ? default(T) : _list.First.Value;
+                return _list.Count != 0;
+            }
+        }
+
+        public bool PeekLast(out T element)
+        {
+            lock (_list)
+            {
+                element = _list.Count == 0 ? default(T) : _list.Last.Value;
+                return _list.Count != 0;
+            }
+        }
+
+        public T RemoveFirst() { throw new NotSupportedException(); }
+        public T RemoveLast() { throw new NotSupportedException(); }
+        public T GetFirst() { throw new NotSupportedException(); }
+        public T GetLast() { throw new NotSupportedException(); }
+        public bool RemoveFirstOccurrence(T element) { throw new NotSupportedException(); }
+        public bool RemoveLastOccurrence(T element) { throw new NotSupportedException(); }
+        public void Push(T element) { AddFirst(element); }
+        public T Pop() { throw new NotSupportedException(); }
+        public IEnumerator<T> GetDescendingEnumerator() { throw new NotSupportedException(); }
+
+        public override bool Offer(T element) { return OfferLast(element); }
+        public override bool Poll(out T element) { return PollFirst(out element); }
+        public override bool Peek(out T element) { return PeekFirst(out element); }
+        public override int Capacity { get { return int.MaxValue; } }
+        public override int RemainingCapacity { get { return int.MaxValue; } }
+
+        public override bool IsEmpty
+        {
+            get { lock (_list) return _list.Count == 0; }
+        }
+
+        public override IEnumerator<T> GetEnumerator() { throw new NotSupportedException(); }
+
+        internal protected override int DoDrain(Action<T> action, int maxElements, Predicate<T> criteria)
+        {
+            throw new NotSupportedException();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+
+/*
+ * Measures unbounded queues under symmetric load: every thread offers
+ * an item and then polls one, so the head and the tail are contended
+ * by all threads at once.
+ *
+ * Outputs, per queue and thread count, the nanoseconds per
+ * offer/poll pair and the total pairs per millisecond:
+ *  "Lock-free"  ConcurrentLinkedQueue, CAS on head, tail and links
+ *  "Two-lock"   LinkedBlockingQueue, one monitor for each end
+ *
+ * Usage: ConcurrentQueueLoops [maxThreads [items]]
+ */
+using System;
+using System.Diagnostics;
+using System.Threading;
+using Spring.Collections.Generic;
+using Spring.Threading;
+using Spring.Threading.Collections.Generic;
+
+public class ConcurrentQueueLoops
+{
+    internal const int TRIALS = 2;
+    internal static int maxThreads = 16;
+    internal static int items = 1000000;
+
+    public static void main(string[] args)
+    {
+        if (args.Length > 0)
+            maxThreads = Int32.Parse(args[0]);
+        if (args.Length > 1)
+            items = Int32.Parse(args[1]);
+
+        Console.Out.WriteLine("Warmup...");
+        for (int i = 1; i <= maxThreads; i <<= 1)
+        {
+            oneTest(i, items / 10, false);
+            Console.Out.Write(".");
+        }
+        Console.Out.WriteLine();
+
+        for (int j = 0; j < TRIALS; ++j)
+        {
+            Console.Out.WriteLine("Trial " + j);
+            for (int i = 1; i <= maxThreads; i <<= 1)
+                oneTest(i, items, true);
+        }
+    }
+
+    internal static void oneTest(int nthreads, int items, bool print)
+    {
+        if (print)
+            Console.Out.WriteLine("Threads: " + nthreads);
+        print1("Lock-free", new ConcurrentLinkedQueue<int>(), nthreads, items, print);
+        print1("Two-lock", new LinkedBlockingQueue<int>(), nthreads, items, print);
+        if (print)
+            Console.Out.WriteLine();
+    }
+
+    internal static void print1(string name, IQueue<int> q, int nthreads, int items, bool print)
+    {
+        long time = runQueue(q, nthreads, items);
+        if (print)
+        {
+            Console.Out.Write(name.PadRight(10));
+            Console.Out.Write(LoopHelpers.rightJustify(time / items) + " ns per pair");
+            Console.Out.WriteLine(LoopHelpers.rightJustify((long) items * 1000000L / Math.Max(time, 1)) + " pairs per ms");
+        }
+    }
+
+    /// <summary>
+    /// Runs <paramref name="items"/> offer/poll pairs split over
+    /// <paramref name="nthreads"/> threads and returns the elapsed time in
+    /// nanoseconds.
+    /// </summary>
+    internal static long runQueue(IQueue<int> q, int nthreads, int items)
+    {
+        CountDownLatch ready = new CountDownLatch(nthreads);
+        CountDownLatch go = new CountDownLatch(1);
+        long[] sums = new long[nthreads];
+        Thread[] threads = new Thread[nthreads];
+        int perThread = items / nthreads;
+        for (int i = 0; i < nthreads; ++i)
+        {
+            int index = i;
+            int first = i * perThread;
+            int count = (i == nthreads - 1) ? items - first : perThread;
+            threads[i] = new Thread(delegate()
+                {
+                    ready.CountDown();
+                    go.Await();
+                    long sum = 0;
+                    for (int k = 0; k < count; ++k)
+                    {
+                        q.Offer(first + k);
+                        int x;
+                        // our own offer guarantees the queue is not empty
+                        if (!q.Poll(out x))
+                            throw new SystemException("poll failed");
+                        sum += x;
+                    }
+                    sums[index] = sum;
+                });
+        }
+        foreach (Thread t in threads)
+            t.Start();
+        ready.Await();
+        Stopwatch timer = Stopwatch.StartNew();
+        go.CountDown();
+        foreach (Thread t in threads)
+            t.Join();
+        timer.Stop();
+
+        long total = 0;
+        foreach (long sum in sums)
+            total += sum;
+        if (total != (long) items * (items - 1) / 2 || !q.IsEmpty)
+            throw new SystemException("lost items: " + total);
+        return timer.Elapsed.Ticks * 100;
+    }
+}
@@ -0,0 +1,197 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+/*
+ * Measures the two ways latches are used in practice:
+ *
+ *  "Gate"     A released latch used as an "initialized" gate. Each
+ *             thread calls Await on a latch that has already counted
+ *             down, over and over, as if checking before every use.
+ *  "Count"    Many threads count down one latch with a large count
+ *             while a few threads wait for it to reach zero.
+ *
+ * Outputs, per scenario, guard and thread count, the nanoseconds per
+ * operation and the total operations per millisecond:
+ *  "Latch"           Spring.Threading.CountDownLatch
+ *  "Monitor"         latch guarded by a lock statement with PulseAll on
+ *                    release, the way the count was kept before
+ *
+ * Usage: CountDownLatchLoops [maxThreads [itersPerThread]]
+ */
+using System;
+using System.Diagnostics;
+using System.Threading;
+using Spring.Threading;
+
+public class CountDownLatchLoops
+{
+    internal const int TRIALS = 2;
+    internal const int WAITERS = 4;
+    internal static int maxThreads = 64;
+    internal static int iters = 1000000;
+
+    public static void main(string[] args)
+    {
+        if (args.Length > 0)
+            maxThreads = Int32.Parse(args[0]);
+        if (args.Length > 1)
+            iters = Int32.Parse(args[1]);
+
+        Console.Out.WriteLine("Warmup...");
+        for (int i = 1; i <= maxThreads; i <<= 1)
+        {
+            oneTest(i, iters / 10, false);
+            Console.Out.Write(".");
+        }
+        Console.Out.WriteLine();
+
+        for (int j = 0; j < TRIALS; ++j)
+        {
+            Console.Out.WriteLine("Trial " + j);
+            for (int i = 1; i <= maxThreads; i <<= 1)
+                oneTest(i, iters, true);
+        }
+    }
+
+    internal static void oneTest(int nthreads, int iters, bool print)
+    {
+        if (print)
+            Console.Out.WriteLine("Threads: " + nthreads);
+        long total = (long) nthreads * iters;
+        for (int k = 0; k < 2; ++k)
+        {
+            bool monitor = k == 1;
+            string name = monitor ? "Monitor" : "Latch";
+
+            ILatch gate = monitor ? (ILatch) new MonitorLatch(1) : new SpringLatch(1);
+            gate.CountDown();
+            long time = run(nthreads, delegate()
+                {
+                    for (int i = 0; i < iters; ++i)
+                        gate.Await();
+                });
+            if (print)
+                report("Gate " + name, time, total);
+
+            ILatch counter = monitor ? (ILatch) new MonitorLatch(nthreads * iters) : new SpringLatch(nthreads * iters);
+            Thread[] waiters = new Thread[WAITERS];
+            for (int w = 0; w < WAITERS; ++w)
+            {
+                waiters[w] = new Thread(counter.Await);
+                waiters[w].Start();
+            }
+            time = run(nthreads, delegate()
+                {
+                    for (int i = 0; i < iters; ++i)
+                        counter.CountDown();
+                });
+            foreach (Thread w in waiters)
+                w.Join();
+            if (print)
+                report("Count " + name, time, total);
+        }
+        if (print)
+            Console.Out.WriteLine();
+    }
+
+    internal static void report(string name, long time, long total)
+    {
+        Console.Out.Write(name.PadRight(16));
+        Console.Out.Write(LoopHelpers.rightJustify(time / total) + " ns per op");
+        Console.Out.WriteLine(LoopHelpers.rightJustify(total * 1000000L / Math.Max(time, 1)) + " ops per ms");
+    }
+
+    /// <summary>
+    /// Runs <paramref name="body"/> in each of <paramref name="nthreads"/>
+    /// threads and returns the elapsed time in nanoseconds.
+    /// </summary>
+    internal static long run(int nthreads, ThreadStart body)
+    {
+        CountDownLatch ready = new CountDownLatch(nthreads);
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] threads = new Thread[nthreads];
+        for (int i = 0; i < nthreads; ++i)
+        {
+            threads[i] = new Thread(delegate()
+                {
+                    ready.CountDown();
+                    go.Await();
+                    body();
+                });
+            threads[i].Start();
+        }
+        ready.Await();
+        Stopwatch timer = Stopwatch.StartNew();
+        go.CountDown();
+        foreach (Thread t in threads)
+            t.Join();
+        timer.Stop();
+        return timer.Elapsed.Ticks * 100;
+    }
+
+    internal interface ILatch
+    {
+        void Await();
+        void CountDown();
+    }
+
+    internal sealed class SpringLatch : ILatch
+    {
+        private readonly CountDownLatch latch;
+
+        public SpringLatch(int count)
+        {
+            latch = new CountDownLatch(count);
+        }
+
+        public void Await() { latch.Await(); }
+        public void CountDown() { latch.CountDown(); }
+    }
+
+    internal sealed class MonitorLatch : ILatch
+    {
+        private int count;
+
+        public MonitorLatch(int count)
+        {
+            this.count = count;
+        }
+
+        public void Await()
+        {
+            lock (this)
+            {
+                while (count > 0)
+                    Monitor.Wait(this);
+            }
+        }
+
+        public void CountDown()
+        {
+            lock (this)
+            {
+                if (count == 0)
+                    return;
+                if (--count == 0)
+                    Monitor.PulseAll(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+/*
+ * Compares the throughput of shared counters that are hammered by an
+ * increasing number of threads. Every thread performs the same number
+ * of updates, with a read of the counter every 16 updates, so the
+ * output shows how each counter scales from 1 thread up to the given
+ * maximum (64 by default), doubling the thread count on each step.
+ *
+ * Outputs, per counter and thread count, the nanoseconds per update
+ * and the total updates per millisecond:
+ *  "AtomicInteger"   AtomicInteger.IncrementValueAndReturn
+ *  "AtomicLong"      AtomicLong.IncrementValueAndReturn
+ *  "LongAdder"       LongAdder.Increment, striped over padded cells
+ *  "Monitor"         increment done under a lock statement, the
+ *                    way a monitor based atomic would do it
+ *
+ * Usage: CounterLoops [maxThreads [itersPerThread]]
+ */
+using System;
+using System.Collections.Generic;
+using System.Diagnostics;
+using System.Threading;
+using Spring.Threading;
+using Spring.Threading.AtomicTypes;
+
+public class CounterLoops
+{
+    internal const int TRIALS = 2;
+    internal const int readEvery = 16;
+    internal static int maxThreads = 64;
+    internal static long iters = 1000000;
+
+    public static void main(string[] args)
+    {
+        if (args.Length > 0)
+            maxThreads = Int32.Parse(args[0]);
+        if (args.Length > 1)
+            iters = Int64.Parse(args[1]);
+
+        Console.Out.WriteLine("Warmup...");
+        for (int i = 1; i <= maxThreads; i <<= 1)
+        {
+            oneTest(i, iters / 10, false);
+            Console.Out.Write(".");
+        }
+        Console.Out.WriteLine();
+
+        for (int j = 0; j < TRIALS; ++j)
+        {
+            Console.Out.WriteLine("Trial " + j);
+            for (int i = 1; i <= maxThreads; i <<= 1)
+                oneTest(i, iters, true);
+        }
+    }
+
+    internal static void oneTest(int nthreads, long iters, bool print)
+    {
+        if (print)
+            Console.Out.WriteLine("Threads: " + nthreads);
+        foreach (ICounter counter in newCounters())
+        {
+            long time = runCounter(counter, nthreads, iters);
+            long total = nthreads * iters;
+            if (counter.Sum != total)
+                throw new SystemException(counter.Name + " lost updates: " + counter.Sum + " != " + total);
+            if (print)
+            {
+                Console.Out.Write(counter.Name.PadRight(16));
+                Console.Out.Write(LoopHelpers.rightJustify(time / total) + " ns per update");
+                Console.Out.WriteLine(LoopHelpers.rightJustify(total * 1000000L / Math.Max(time, 1)) + " updates per ms");
+            }
+        }
+        if (print)
+            Console.Out.WriteLine();
+    }
+
+    internal static IList<ICounter> newCounters()
+    {
+        List<ICounter> counters = new List<ICounter>();
+        counters.Add(new AtomicIntegerCounter());
+        counters.Add(new AtomicLongCounter());
+        counters.Add(new LongAdderCounter());
+        counters.Add(new MonitorCounter());
+        return counters;
+    }
+
+    /// <summary>
+    /// Runs <paramref name="iters"/> updates of <paramref name="counter"/> in
+    /// each of <paramref name="nthreads"/> threads and returns the elapsed
+    /// time in nanoseconds.
+    /// </summary>
+    internal static long runCounter(ICounter counter, int nthreads, long iters)
+    {
+        CountDownLatch ready = new CountDownLatch(nthreads);
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] threads = new Thread[nthreads];
+        for (int i = 0; i < nthreads; ++i)
+        {
+            threads[i] = new Thread(delegate()
+                {
+                    ready.CountDown();
+                    go.Await();
+                    long sink = 0;
+                    for (long k = 0; k < iters; ++k)
+                    {
+                        counter.Increment();
+                        if ((k % readEvery) == 0)
+                            sink += counter.Sum;
+                    }
+                    if (sink == 42) Console.Out.Write(""); // defeat dead code elimination
+                });
+            threads[i].Start();
+        }
+        ready.Await();
+        Stopwatch timer = Stopwatch.StartNew();
+        go.CountDown();
+        foreach (Thread t in threads)
+            t.Join();
+        timer.Stop();
+        return timer.Elapsed.Ticks * 100;
+    }
+
+    internal interface ICounter
+    {
+        string Name { get; }
+        void Increment();
+        long Sum { get; }
+    }
+
+    internal sealed class AtomicIntegerCounter : ICounter
+    {
+        private readonly AtomicInteger value = new AtomicInteger();
+        public string Name { get { return "AtomicInteger"; } }
+        public void Increment() { value.IncrementValueAndReturn(); }
+        public long Sum { get { return value.Value; } }
+    }
+
+    internal sealed class AtomicLongCounter : ICounter
+    {
+        private readonly AtomicLong value = new AtomicLong();
+        public string Name { get { return "AtomicLong"; } }
+        public void Increment() { value.IncrementValueAndReturn(); }
+        public long Sum { get { return value.Value; } }
+    }
+
+    internal sealed class LongAdderCounter : ICounter
+    {
+        private readonly LongAdder value = new LongAdder();
+        public string Name { get { return "LongAdder"; } }
+        public void Increment() { value.Increment(); }
+        public long Sum { get { return value.Sum(); } }
+    }
+
+    internal sealed class MonitorCounter : ICounter
+    {
+        private long value;
+        public string Name { get { return "Monitor"; } }
+        public void Increment() { lock (this) ++value; }
+        public long Sum { get { lock (this) return value; } }
+    }
+}
@@ -0,0 +1,127 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+/*
+ * Measures the cost of a CyclicBarrier round as the number of parties
+ * grows, comparing the default lock-guarded barrier with barriers that
+ * count arrivals on combining trees of a few fan-ins. Each thread
+ * repeatedly does a little local work and then awaits the barrier, whose
+ * action bumps a counter.
+ *
+ * Outputs, per guard and thread count, the nanoseconds per barrier
+ * round and the total rounds per millisecond:
+ *  "Lock"            CyclicBarrier guarded by a single ReentrantLock
+ *  "Tree4"           CyclicBarrier on a combining tree with fan-in 4
+ *  "Tree16"          CyclicBarrier on a combining tree with fan-in 16
+ *
+ * Usage: CyclicBarrierLoops [maxThreads [rounds]]
+ */
+using System;
+using System.Diagnostics;
+using System.Threading;
+using Spring.Threading;
+
+public class CyclicBarrierLoops
+{
+    internal const int TRIALS = 2;
+    internal static int maxThreads = 256;
+    internal static int rounds = 2000;
+    internal static int[] fanIns = new int[] {0, 4, 16};
+
+    public static void main(string[] args)
+    {
+        if (args.Length > 0)
+            maxThreads = Int32.Parse(args[0]);
+        if (args.Length > 1)
+            rounds = Int32.Parse(args[1]);
+
+        Console.Out.WriteLine("Warmup...");
+        for (int i = 2; i <= maxThreads; i <<= 1)
+        {
+            oneTest(i, rounds / 10, false);
+            Console.Out.Write(".");
+        }
+        Console.Out.WriteLine();
+
+        for (int j = 0; j < TRIALS; ++j)
+        {
+            Console.Out.WriteLine("Trial " + j);
+            for (int i = 2; i <= maxThreads; i <<= 1)
+                oneTest(i, rounds, true);
+        }
+    }
+
+    internal static void oneTest(int nthreads, int rounds, bool print)
+    {
+        if (print)
+            Console.Out.WriteLine("Threads: " + nthreads);
+        foreach (int fanIn in fanIns)
+        {
+            int trips = 0;
+            CyclicBarrier barrier = new CyclicBarrier(nthreads, () => ++trips, fanIn);
+            long time = runBarrier(barrier, nthreads, rounds);
+            if (trips != rounds)
+                throw new Exception("Expected " + rounds + " trips but saw " + trips);
+            if (print)
+            {
+                Console.Out.Write((fanIn == 0 ? "Lock" : "Tree" + fanIn).PadRight(16));
+                Console.Out.Write(LoopHelpers.rightJustify(time / rounds) + " ns per round");
+                Console.Out.WriteLine(LoopHelpers.rightJustify(rounds * 1000000L / Math.Max(time, 1)) + " rounds per ms");
+            }
+        }
+        if (print)
+            Console.Out.WriteLine();
+    }
+
+    /// <summary>
+    /// Runs <paramref name="rounds"/> rounds of <paramref name="barrier"/>
+    /// in each of its parties and returns the elapsed time in nanoseconds.
+    /// </summary>
+    internal static long runBarrier(CyclicBarrier barrier, int nthreads, int rounds)
+    {
+        CountDownLatch ready = new CountDownLatch(nthreads);
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] threads = new Thread[nthreads];
+        for (int i = 0; i < nthreads; ++i)
+        {
+            threads[i] = new Thread(delegate()
+                {
+                    int local = LoopHelpers.compute1((int) DateTime.Now.Ticks ^ Thread.CurrentThread.GetHashCode());
+                    ready.CountDown();
+                    go.Await();
+                    for (int k = 0; k < rounds; ++k)
+                    {
+                        local = LoopHelpers.compute6(local);
+                        barrier.Await();
+                    }
+                    if (local == 0)
+                        Console.Out.Write(" "); // keep the local work alive
+                });
+            threads[i].Start();
+        }
+        ready.Await();
+        Stopwatch timer = Stopwatch.StartNew();
+        go.CountDown();
+        foreach (Thread t in threads)
+            t.Join();
+        timer.Stop();
+        return timer.Elapsed.Ticks * 100;
+    }
+}
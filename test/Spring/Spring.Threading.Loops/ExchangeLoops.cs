@@ -0,0 +1,241 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+/*
+ * Measures exchange throughput when all threads share one exchanger,
+ * as in a multi-stage double-buffering pipeline. Each thread repeatedly
+ * exchanges the item it last received, for a fixed time per trial.
+ *
+ * Outputs, per guard and thread count, the exchanges per second and
+ * the nanoseconds per exchange:
+ *  "Arena"           Spring.Threading.Helpers.Exchanger
+ *  "Monitor"         single-slot exchanger guarded by a lock statement,
+ *                    the way exchanges were done before the arena
+ *
+ * Usage: ExchangeLoops [-t trialMillis] [-r reps] [maxThreads]
+ */
+using System;
+using System.Diagnostics;
+using System.Threading;
+using Spring.Threading.Helpers;
+
+public class ExchangeLoops
+{
+    internal static readonly int NCPUS = Environment.ProcessorCount;
+    internal static readonly int DEFAULT_THREADS = NCPUS + 2;
+    internal const long DEFAULT_TRIAL_MILLIS = 10000;
+
+    public static void main(string[] args)
+    {
+        int maxThreads = DEFAULT_THREADS;
+        long trialMillis = DEFAULT_TRIAL_MILLIS;
+        int nReps = 3;
+
+        // Parse and check args
+        int argc = 0;
+        while (argc < args.Length)
+        {
+            string option = args[argc++];
+            if (option.Equals("-t"))
+                trialMillis = Int32.Parse(args[argc++]);
+            else if (option.Equals("-r"))
+                nReps = Int32.Parse(args[argc++]);
+            else
+                maxThreads = Int32.Parse(option);
+        }
+
+        // Display runtime parameters
+        Console.Out.Write("ExchangeTest");
+        Console.Out.Write(" -t " + trialMillis);
+        Console.Out.Write(" -r " + nReps);
+        Console.Out.Write(" max threads " + maxThreads);
+        Console.Out.WriteLine();
+        long warmupTime = 2000;
+        int sleepTime = 100;
+
+        Console.Out.WriteLine("Warmups..");
+        for (int i = maxThreads; i >= 2; i -= 1)
+        {
+            oneRun(i, warmupTime++, false);
+            Thread.Sleep(sleepTime);
+        }
+
+        for (int j = 0; j < nReps; ++j)
+        {
+            Console.Out.WriteLine("Trial: " + j);
+            for (int i = 2; i <= maxThreads; i += 2)
+            {
+                oneRun(i, trialMillis, true);
+                Thread.Sleep(sleepTime);
+            }
+        }
+    }
+
+    internal static void oneRun(int nThreads, long trialMillis, bool print)
+    {
+        if (print)
+            Console.Out.WriteLine(nThreads + " threads");
+        foreach (IExchange x in new IExchange[] {new ArenaExchange(), new MonitorExchange()})
+        {
+            long elapsed;
+            long iters = runExchange(x, nThreads, trialMillis, out elapsed);
+            if (print)
+            {
+                Console.Out.Write(x.Name.PadRight(16));
+                Console.Out.Write(LoopHelpers.rightJustify(iters * 1000L * 1000L * 1000L / elapsed) + " it/s");
+                Console.Out.WriteLine(LoopHelpers.rightJustify(elapsed / iters) + " ns/it");
+            }
+        }
+        if (print)
+            Console.Out.WriteLine();
+    }
+
+    /// <summary>
+    /// Runs <paramref name="nThreads"/> threads exchanging through
+    /// <paramref name="x"/> for <paramref name="trialMillis"/> and returns
+    /// the total number of exchanges.
+    /// </summary>
+    internal static long runExchange(IExchange x, int nThreads, long trialMillis, out long elapsed)
+    {
+        Runner[] runners = new Runner[nThreads];
+        Thread[] threads = new Thread[nThreads];
+        for (int i = 0; i < nThreads; ++i)
+        {
+            runners[i] = new Runner(x);
+            threads[i] = new Thread(runners[i].Run);
+        }
+
+        Stopwatch timer = Stopwatch.StartNew();
+        for (int i = 0; i < nThreads; ++i)
+            threads[i].Start();
+        Thread.Sleep((int) trialMillis);
+        Runner.done = true;
+        // Wake up the threads left waiting for a partner that has quit.
+        for (int i = 0; i < nThreads; ++i)
+            threads[i].Interrupt();
+        elapsed = timer.Elapsed.Ticks * 100;
+        for (int i = 0; i < nThreads; ++i)
+            threads[i].Join();
+        Runner.done = false;
+        long iters = 1;
+        for (int i = 0; i < nThreads; ++i)
+            iters += runners[i].iters;
+        return iters;
+    }
+
+    internal sealed class Runner
+    {
+        internal static volatile bool done;
+        private readonly IExchange exchanger;
+        private readonly object mine = 2688;
+        internal volatile int iters;
+
+        internal Runner(IExchange x)
+        {
+            exchanger = x;
+        }
+
+        public void Run()
+        {
+            IExchange x = exchanger;
+            object m = mine;
+            int i = 0;
+            try
+            {
+                while (!done)
+                {
+                    object e = x.Exchange(m);
+                    if (e == null || e == m)
+                        throw new Exception("Exchanged " + e + " for " + m);
+                    m = e;
+                    ++i;
+                }
+            }
+            catch (ThreadInterruptedException)
+            {
+            }
+            iters = i;
+        }
+    }
+
+    internal interface IExchange
+    {
+        string Name { get; }
+        object Exchange(object item);
+    }
+
+    internal sealed class ArenaExchange : IExchange
+    {
+        private readonly Exchanger exchanger = new Exchanger();
+
+        public string Name { get { return "Arena"; } }
+        public object Exchange(object item) { return exchanger.Exchange(item); }
+    }
+
+    /// <summary>
+    /// Single-slot exchanger in which every pair goes through one monitor
+    /// and a third arrival waits for the current pair to finish.
+    /// </summary>
+    internal sealed class MonitorExchange : IExchange
+    {
+        private object item;
+        private int arrivalCount;
+
+        public string Name { get { return "Monitor"; } }
+
+        public object Exchange(object x)
+        {
+            lock (this)
+            {
+                while (arrivalCount == 2)
+                    Monitor.Wait(this);
+                if (++arrivalCount == 2)
+                {
+                    object other = item;
+                    item = x;
+                    Monitor.PulseAll(this);
+                    return other;
+                }
+                item = x;
+                try
+                {
+                    while (arrivalCount != 2)
+                        Monitor.Wait(this);
+                }
+                catch (ThreadInterruptedException)
+                {
+                    if (arrivalCount != 2)
+                    {
+                        item = null;
+                        arrivalCount = 0;
+                        Monitor.PulseAll(this);
+                        throw;
+                    }
+                    Thread.CurrentThread.Interrupt();
+                }
+                object result = item;
+                item = null;
+                arrivalCount = 0;
+                Monitor.PulseAll(this);
+                return result;
+            }
+        }
+    }
+}
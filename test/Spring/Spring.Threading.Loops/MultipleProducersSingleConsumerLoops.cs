@@ -0,0 +1,146 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+
+/*
+ * Measures unbounded queues with an increasing number of producers
+ * feeding one consumer that spins on Poll. The producers contend on
+ * the tail only, which is where the lazy tail update of the lock-free
+ * queue saves the most.
+ *
+ * Outputs, per queue and producer count, the nanoseconds per item
+ * transferred and the total items per millisecond:
+ *  "Lock-free"  ConcurrentLinkedQueue
+ *  "Two-lock"   LinkedBlockingQueue
+ *
+ * Usage: MultipleProducersSingleConsumerLoops [maxProducers [items]]
+ */
+using System;
+using System.Diagnostics;
+using System.Threading;
+using Spring.Collections.Generic;
+using Spring.Threading;
+using Spring.Threading.Collections.Generic;
+
+public class MultipleProducersSingleConsumerLoops
+{
+    internal const int TRIALS = 2;
+    internal static int maxProducers = 16;
+    internal static int items = 1000000;
+
+    public static void main(string[] args)
+    {
+        if (args.Length > 0)
+            maxProducers = Int32.Parse(args[0]);
+        if (args.Length > 1)
+            items = Int32.Parse(args[1]);
+
+        Console.Out.WriteLine("Warmup...");
+        for (int i = 1; i <= maxProducers; i <<= 1)
+        {
+            oneTest(i, items / 10, false);
+            Console.Out.Write(".");
+        }
+        Console.Out.WriteLine();
+
+        for (int j = 0; j < TRIALS; ++j)
+        {
+            Console.Out.WriteLine("Trial " + j);
+            for (int i = 1; i <= maxProducers; i <<= 1)
+                oneTest(i, items, true);
+        }
+    }
+
+    internal static void oneTest(int nproducers, int items, bool print)
+    {
+        if (print)
+            Console.Out.WriteLine("Producers: " + nproducers + " Consumers: 1");
+        print1("Lock-free", new ConcurrentLinkedQueue<int>(), nproducers, items, print);
+        print1("Two-lock", new LinkedBlockingQueue<int>(), nproducers, items, print);
+        if (print)
+            Console.Out.WriteLine();
+    }
+
+    internal static void print1(string name, IQueue<int> q, int nproducers, int items, bool print)
+    {
+        long time = runQueue(q, nproducers, items);
+        if (print)
+        {
+            Console.Out.Write(name.PadRight(10));
+            Console.Out.Write(LoopHelpers.rightJustify(time / items) + " ns per item");
+            Console.Out.WriteLine(LoopHelpers.rightJustify((long) items * 1000000L / Math.Max(time, 1)) + " items per ms");
+        }
+    }
+
+    /// <summary>
+    /// Transfers <paramref name="items"/> items through
+    /// <paramref name="q"/> from <paramref name="nproducers"/> producer
+    /// threads to a single consumer thread and returns the elapsed time
+    /// in nanoseconds.
+    /// </summary>
+    internal static long runQueue(IQueue<int> q, int nproducers, int items)
+    {
+        CountDownLatch ready = new CountDownLatch(nproducers + 1);
+        CountDownLatch go = new CountDownLatch(1);
+        long consumed = 0;
+        Thread[] threads = new Thread[nproducers + 1];
+        int perProducer = items / nproducers;
+        for (int i = 0; i < nproducers; ++i)
+        {
+            int first = i * perProducer;
+            int count = (i == nproducers - 1) ? items - first : perProducer;
+            threads[i] = new Thread(delegate()
+                {
+                    ready.CountDown();
+                    go.Await();
+                    for (int k = 0; k < count; ++k)
+                        q.Offer(first + k);
+                });
+        }
+        threads[nproducers] = new Thread(delegate()
+            {
+                ready.CountDown();
+                go.Await();
+                long sum = 0;
+                for (int n = 0; n < items; )
+                {
+                    int x;
+                    if (q.Poll(out x))
+                    {
+                        sum += x;
+                        ++n;
+                    }
+                }
+                consumed = sum;
+            });
+        foreach (Thread t in threads)
+            t.Start();
+        ready.Await();
+        Stopwatch timer = Stopwatch.StartNew();
+        go.CountDown();
+        foreach (Thread t in threads)
+            t.Join();
+        timer.Stop();
+
+        if (consumed != (long) items * (items - 1) / 2)
+            throw new SystemException("lost items: " + consumed);
+        return timer.Elapsed.Ticks * 100;
+    }
+}
@@ -0,0 +1,188 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+/*
+ * Measures the cost of a barrier round as the number of parties grows,
+ * comparing a single flat phaser, whose state word takes every arrival,
+ * with a tree of sub-phasers that spreads arrivals over one state word
+ * per group. Each thread repeatedly does a little local work and then
+ * arrives and awaits advance.
+ *
+ * Outputs, per guard and thread count, the nanoseconds per barrier
+ * round and the total rounds per millisecond:
+ *  "Flat"            one Spring.Threading.Phaser for all parties
+ *  "Tiered"          groups of at most fanout parties on sub-phasers
+ *                    of a common root phaser
+ *  "Barrier"         Spring.Threading.CyclicBarrier
+ *
+ * Usage: PhaserLoops [maxThreads [rounds [fanout]]]
+ */
+using System;
+using System.Collections.Generic;
+using System.Diagnostics;
+using System.Threading;
+using Spring.Threading;
+
+public class PhaserLoops
+{
+    internal const int TRIALS = 2;
+    internal static int maxThreads = 256;
+    internal static int rounds = 2000;
+    internal static int fanout = 16;
+
+    public static void main(string[] args)
+    {
+        if (args.Length > 0)
+            maxThreads = Int32.Parse(args[0]);
+        if (args.Length > 1)
+            rounds = Int32.Parse(args[1]);
+        if (args.Length > 2)
+            fanout = Int32.Parse(args[2]);
+
+        Console.Out.WriteLine("Warmup...");
+        for (int i = 2; i <= maxThreads; i <<= 1)
+        {
+            oneTest(i, rounds / 10, false);
+            Console.Out.Write(".");
+        }
+        Console.Out.WriteLine();
+
+        for (int j = 0; j < TRIALS; ++j)
+        {
+            Console.Out.WriteLine("Trial " + j);
+            for (int i = 2; i <= maxThreads; i <<= 1)
+                oneTest(i, rounds, true);
+        }
+    }
+
+    internal static void oneTest(int nthreads, int rounds, bool print)
+    {
+        if (print)
+            Console.Out.WriteLine("Threads: " + nthreads);
+        foreach (Guard guard in newGuards(nthreads))
+        {
+            long time = runGuard(guard, nthreads, rounds);
+            if (print)
+            {
+                Console.Out.Write(guard.Name.PadRight(16));
+                Console.Out.Write(LoopHelpers.rightJustify(time / rounds) + " ns per round");
+                Console.Out.WriteLine(LoopHelpers.rightJustify(rounds * 1000000L / Math.Max(time, 1)) + " rounds per ms");
+            }
+        }
+        if (print)
+            Console.Out.WriteLine();
+    }
+
+    internal static IList<Guard> newGuards(int nthreads)
+    {
+        List<Guard> guards = new List<Guard>();
+        guards.Add(new FlatGuard(nthreads));
+        guards.Add(new TieredGuard(nthreads, fanout));
+        guards.Add(new BarrierGuard(nthreads));
+        return guards;
+    }
+
+    /// <summary>
+    /// Runs <paramref name="rounds"/> barrier rounds on
+    /// <paramref name="guard"/> with <paramref name="nthreads"/> parties
+    /// and returns the elapsed time in nanoseconds.
+    /// </summary>
+    internal static long runGuard(Guard guard, int nthreads, int rounds)
+    {
+        CountDownLatch ready = new CountDownLatch(nthreads);
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] threads = new Thread[nthreads];
+        for (int i = 0; i < nthreads; ++i)
+        {
+            int party = i;
+            threads[i] = new Thread(delegate()
+                {
+                    int local = LoopHelpers.compute1((int) DateTime.Now.Ticks ^ Thread.CurrentThread.GetHashCode());
+                    ready.CountDown();
+                    go.Await();
+                    for (int k = 0; k < rounds; ++k)
+                    {
+                        local = LoopHelpers.compute6(local);
+                        guard.Await(party);
+                    }
+                    if (local == 0)
+                        Console.Out.Write(" "); // keep the local work alive
+                });
+            threads[i].Start();
+        }
+        ready.Await();
+        Stopwatch timer = Stopwatch.StartNew();
+        go.CountDown();
+        foreach (Thread t in threads)
+            t.Join();
+        timer.Stop();
+        return timer.Elapsed.Ticks * 100;
+    }
+
+    internal abstract class Guard
+    {
+        public abstract string Name { get; }
+        public abstract void Await(int party);
+    }
+
+    internal sealed class FlatGuard : Guard
+    {
+        private readonly Phaser phaser;
+
+        public FlatGuard(int parties)
+        {
+            phaser = new Phaser(parties);
+        }
+
+        public override string Name { get { return "Flat"; } }
+        public override void Await(int party) { phaser.ArriveAndAwaitAdvance(); }
+    }
+
+    internal sealed class TieredGuard : Guard
+    {
+        private readonly Phaser[] leaves;
+        private readonly int fanout;
+
+        public TieredGuard(int parties, int fanout)
+        {
+            this.fanout = fanout;
+            Phaser root = new Phaser();
+            leaves = new Phaser[(parties + fanout - 1) / fanout];
+            for (int i = 0; i < leaves.Length; ++i)
+                leaves[i] = new Phaser(root, Math.Min(fanout, parties - i * fanout));
+        }
+
+        public override string Name { get { return "Tiered"; } }
+        public override void Await(int party) { leaves[party / fanout].ArriveAndAwaitAdvance(); }
+    }
+
+    internal sealed class BarrierGuard : Guard
+    {
+        private readonly CyclicBarrier barrier;
+
+        public BarrierGuard(int parties)
+        {
+            barrier = new CyclicBarrier(parties);
+        }
+
+        public override string Name { get { return "Barrier"; } }
+        public override void Await(int party) { barrier.Await(); }
+    }
+}
@@ -0,0 +1,164 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+/*
+ * Measures blocking queues with few producers feeding an increasing
+ * number of consumers. Consumers outnumber producers, so most of them
+ * wait for an element most of the time and every put has to wake one.
+ *
+ * Outputs, per queue and consumer count, the nanoseconds per item
+ * transferred and the total items per millisecond:
+ *  "Nonfair"   BlockingQueueWrapper over ArrayQueue, nonfair lock
+ *  "Fair"      BlockingQueueWrapper over ArrayQueue, fair lock
+ *  "LBQ"       LinkedBlockingQueue bounded by capacity
+ *  "SQ"        SynchronousQueue, nonfair
+ *  "LTQ"       LinkedTransferQueue, unbounded
+ *
+ * Usage: ProducerConsumerLoops [maxConsumers [items [producers [capacity]]]]
+ */
+using System;
+using System.Diagnostics;
+using System.Threading;
+using Spring.Collections.Generic;
+using Spring.Threading;
+using Spring.Threading.Collections.Generic;
+
+public class ProducerConsumerLoops
+{
+    internal const int TRIALS = 2;
+    internal const int POISON = -1;
+    internal static int maxConsumers = 64;
+    internal static int items = 1000000;
+    internal static int producers = 2;
+    internal static int capacity = 64;
+
+    public static void main(string[] args)
+    {
+        if (args.Length > 0)
+            maxConsumers = Int32.Parse(args[0]);
+        if (args.Length > 1)
+            items = Int32.Parse(args[1]);
+        if (args.Length > 2)
+            producers = Int32.Parse(args[2]);
+        if (args.Length > 3)
+            capacity = Int32.Parse(args[3]);
+
+        Console.Out.WriteLine("Warmup...");
+        for (int i = 1; i <= maxConsumers; i <<= 1)
+        {
+            oneTest(i, items / 10, false);
+            Console.Out.Write(".");
+        }
+        Console.Out.WriteLine();
+
+        for (int j = 0; j < TRIALS; ++j)
+        {
+            Console.Out.WriteLine("Trial " + j);
+            for (int i = 1; i <= maxConsumers; i <<= 1)
+                oneTest(i, items, true);
+        }
+    }
+
+    internal static void oneTest(int nconsumers, int items, bool print)
+    {
+        if (print)
+            Console.Out.WriteLine("Producers: " + producers + " Consumers: " + nconsumers);
+        foreach (bool fair in new bool[] {false, true})
+            print1(fair ? "Fair" : "Nonfair",
+                   new BlockingQueueWrapper<int>(new ArrayQueue<int>(capacity), capacity, fair),
+                   nconsumers, items, print);
+        print1("LBQ", new LinkedBlockingQueue<int>(capacity), nconsumers, items, print);
+        print1("SQ", new SynchronousQueue<int>(), nconsumers, items, print);
+        print1("LTQ", new LinkedTransferQueue<int>(), nconsumers, items, print);
+        if (print)
+            Console.Out.WriteLine();
+    }
+
+    internal static void print1(string name, IBlockingQueue<int> q, int nconsumers, int items, bool print)
+    {
+        long time = runQueue(q, nconsumers, items);
+        if (print)
+        {
+            Console.Out.Write(name.PadRight(10));
+            Console.Out.Write(LoopHelpers.rightJustify(time / items) + " ns per item");
+            Console.Out.WriteLine(LoopHelpers.rightJustify((long) items * 1000000L / Math.Max(time, 1)) + " items per ms");
+        }
+    }
+
+    /// <summary>
+    /// Transfers <paramref name="items"/> items through <paramref name="q"/>
+    /// from <see cref="producers"/> producer threads to
+    /// <paramref name="nconsumers"/> consumer threads and returns the
+    /// elapsed time in nanoseconds.
+    /// </summary>
+    internal static long runQueue(IBlockingQueue<int> q, int nconsumers, int items)
+    {
+        CountDownLatch ready = new CountDownLatch(producers + nconsumers);
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch produced = new CountDownLatch(producers);
+        long[] sums = new long[nconsumers];
+        Thread[] threads = new Thread[producers + nconsumers];
+        int perProducer = items / producers;
+        for (int i = 0; i < producers; ++i)
+        {
+            int first = i * perProducer;
+            int count = (i == producers - 1) ? items - first : perProducer;
+            threads[i] = new Thread(delegate()
+                {
+                    ready.CountDown();
+                    go.Await();
+                    for (int k = 0; k < count; ++k)
+                        q.Put(first + k);
+                    produced.CountDown();
+                });
+        }
+        for (int i = 0; i < nconsumers; ++i)
+        {
+            int index = i;
+            threads[producers + i] = new Thread(delegate()
+                {
+                    ready.CountDown();
+                    go.Await();
+                    long sum = 0;
+                    for (int x; (x = q.Take()) != POISON; )
+                        sum += x;
+                    sums[index] = sum;
+                });
+        }
+        foreach (Thread t in threads)
+            t.Start();
+        ready.Await();
+        Stopwatch timer = Stopwatch.StartNew();
+        go.CountDown();
+        produced.Await();
+        for (int i = 0; i < nconsumers; ++i)
+            q.Put(POISON);
+        foreach (Thread t in threads)
+            t.Join();
+        timer.Stop();
+
+        long total = 0;
+        foreach (long sum in sums)
+            total += sum;
+        if (total != (long) items * (items - 1) / 2)
+            throw new SystemException("lost items: " + total);
+        return timer.Elapsed.Ticks * 100;
+    }
+}
@@ -0,0 +1,155 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+/*
+ * Measures how long a writer waits for a ReentrantReadWriteLock while
+ * a continuous stream of readers holds it, in fair and nonfair mode.
+ * Readers spin acquiring the read lock, doing a little work and
+ * releasing it, with no pause in between. A single writer takes the
+ * write lock a number of times, pausing briefly between attempts, and
+ * records how long each Lock() call blocked.
+ *
+ * Outputs, per mode and reader count, the writer's median, 99th
+ * percentile and maximum wait in microseconds, together with the read
+ * throughput obtained meanwhile:
+ *  "Nonfair"   new ReentrantReadWriteLock(false)
+ *  "Fair"      new ReentrantReadWriteLock(true)
+ *
+ * Usage: RWLockLatencyLoops [maxReaders [writes]]
+ */
+using System;
+using System.Diagnostics;
+using System.Threading;
+using Spring.Threading;
+using Spring.Threading.AtomicTypes;
+using Spring.Threading.Locks;
+
+public class RWLockLatencyLoops
+{
+    internal const int TRIALS = 2;
+    internal static int maxReaders = 16;
+    internal static int writes = 1000;
+
+    public static void main(string[] args)
+    {
+        if (args.Length > 0)
+            maxReaders = Int32.Parse(args[0]);
+        if (args.Length > 1)
+            writes = Int32.Parse(args[1]);
+
+        Console.Out.WriteLine("Warmup...");
+        oneTest(maxReaders, writes / 10, false);
+        Console.Out.WriteLine();
+
+        for (int j = 0; j < TRIALS; ++j)
+        {
+            Console.Out.WriteLine("Trial " + j);
+            for (int i = 1; i <= maxReaders; i <<= 1)
+                oneTest(i, writes, true);
+        }
+    }
+
+    internal static void oneTest(int nreaders, int writes, bool print)
+    {
+        if (print)
+            Console.Out.WriteLine("Readers: " + nreaders);
+        foreach (bool fair in new bool[] {false, true})
+        {
+            long[] waits = new long[writes];
+            long reads = runLock(new ReentrantReadWriteLock(fair), nreaders, waits);
+            Array.Sort(waits);
+            if (print)
+            {
+                Console.Out.Write((fair ? "Fair" : "Nonfair").PadRight(10));
+                Console.Out.Write(" p50" + LoopHelpers.rightJustify(waits[waits.Length / 2]) + " us");
+                Console.Out.Write(" p99" + LoopHelpers.rightJustify(waits[waits.Length * 99 / 100]) + " us");
+                Console.Out.Write(" max" + LoopHelpers.rightJustify(waits[waits.Length - 1]) + " us");
+                Console.Out.WriteLine(LoopHelpers.rightJustify(reads) + " reads");
+            }
+        }
+        if (print)
+            Console.Out.WriteLine();
+    }
+
+    /// <summary>
+    /// Runs <paramref name="nreaders"/> reader threads against
+    /// <paramref name="rwl"/> while the calling thread performs one write
+    /// per element of <paramref name="waits"/>, storing the time each
+    /// write lock acquisition took in microseconds. Returns the number
+    /// of reads completed meanwhile.
+    /// </summary>
+    internal static long runLock(ReentrantReadWriteLock rwl, int nreaders, long[] waits)
+    {
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicLong reads = new AtomicLong();
+        CountDownLatch ready = new CountDownLatch(nreaders);
+        Thread[] threads = new Thread[nreaders];
+        int[] shared = new int[1];
+        for (int i = 0; i < nreaders; ++i)
+        {
+            int seed = LoopHelpers.compute1(i + 1);
+            threads[i] = new Thread(delegate()
+                {
+                    ILock r = rwl.ReaderLock;
+                    int x = seed;
+                    long n = 0;
+                    ready.CountDown();
+                    while (!done.Value)
+                    {
+                        r.Lock();
+                        try
+                        {
+                            x = LoopHelpers.compute6(x + shared[0]);
+                        }
+                        finally
+                        {
+                            r.Unlock();
+                        }
+                        ++n;
+                    }
+                    reads.AddDeltaAndReturnPreviousValue(n);
+                    if (x == 42) Console.Out.Write(""); // defeat dead code elimination
+                });
+            threads[i].Start();
+        }
+        ready.Await();
+        ILock w = rwl.WriterLock;
+        for (int k = 0; k < waits.Length; ++k)
+        {
+            Thread.Sleep(0);
+            Stopwatch timer = Stopwatch.StartNew();
+            w.Lock();
+            timer.Stop();
+            try
+            {
+                ++shared[0];
+            }
+            finally
+            {
+                w.Unlock();
+            }
+            waits[k] = timer.Elapsed.Ticks / 10;
+        }
+        done.Value = true;
+        foreach (Thread t in threads)
+            t.Join();
+        return reads.Value;
+    }
+}
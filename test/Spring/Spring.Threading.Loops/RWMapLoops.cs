@@ -0,0 +1,277 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+/*
+ * Measures a read-mostly map guarded by a lock, with an increasing
+ * number of threads. Each thread performs the same number of
+ * operations on a shared dictionary of small keys; one operation in
+ * writeEvery is a put, all others are gets. The lock is reentered for
+ * reading once per get, the pattern that used to funnel every reader
+ * through a single monitor in ReentrantReadWriteLock.
+ *
+ * Outputs, per guard and thread count, the nanoseconds per operation
+ * and the total operations per millisecond:
+ *  "RWLock"          ReentrantReadWriteLock, read lock for gets and
+ *                    write lock for puts
+ *  "RWLock nested"   same, but every get reacquires the read lock
+ *                    while already holding it (ReadHoldingWriteLock style
+ *                    reentrancy on the read side)
+ *  "StampedLock"     StampedLock, read stamps for gets and write
+ *                    stamps for puts
+ *  "ReentrantLock"   exclusive ReentrantLock for all operations
+ *  "Monitor"         exclusive lock statement for all operations
+ *
+ * Usage: RWMapLoops [maxThreads [itersPerThread [writeEvery]]]
+ */
+using System;
+using System.Collections.Generic;
+using System.Diagnostics;
+using System.Threading;
+using Spring.Threading;
+using Spring.Threading.Locks;
+
+public class RWMapLoops
+{
+    internal const int TRIALS = 2;
+    internal const int keys = 256;
+    internal static int maxThreads = 64;
+    internal static long iters = 1000000;
+    internal static int writeEvery = 64;
+
+    public static void main(string[] args)
+    {
+        if (args.Length > 0)
+            maxThreads = Int32.Parse(args[0]);
+        if (args.Length > 1)
+            iters = Int64.Parse(args[1]);
+        if (args.Length > 2)
+            writeEvery = Int32.Parse(args[2]);
+
+        Console.Out.WriteLine("Warmup...");
+        for (int i = 1; i <= maxThreads; i <<= 1)
+        {
+            oneTest(i, iters / 10, false);
+            Console.Out.Write(".");
+        }
+        Console.Out.WriteLine();
+
+        for (int j = 0; j < TRIALS; ++j)
+        {
+            Console.Out.WriteLine("Trial " + j);
+            for (int i = 1; i <= maxThreads; i <<= 1)
+                oneTest(i, iters, true);
+        }
+    }
+
+    internal static void oneTest(int nthreads, long iters, bool print)
+    {
+        if (print)
+            Console.Out.WriteLine("Threads: " + nthreads);
+        foreach (IGuardedMap map in newMaps())
+        {
+            long time = runMap(map, nthreads, iters);
+            long total = nthreads * iters;
+            if (print)
+            {
+                Console.Out.Write(map.Name.PadRight(16));
+                Console.Out.Write(LoopHelpers.rightJustify(time / total) + " ns per op");
+                Console.Out.WriteLine(LoopHelpers.rightJustify(total * 1000000L / Math.Max(time, 1)) + " ops per ms");
+            }
+        }
+        if (print)
+            Console.Out.WriteLine();
+    }
+
+    internal static IList<IGuardedMap> newMaps()
+    {
+        List<IGuardedMap> maps = new List<IGuardedMap>();
+        maps.Add(new RWLockMap(false));
+        maps.Add(new RWLockMap(true));
+        maps.Add(new StampedLockMap());
+        maps.Add(new ReentrantLockMap());
+        maps.Add(new MonitorMap());
+        return maps;
+    }
+
+    /// <summary>
+    /// Runs <paramref name="iters"/> operations on <paramref name="map"/> in
+    /// each of <paramref name="nthreads"/> threads and returns the elapsed
+    /// time in nanoseconds.
+    /// </summary>
+    internal static long runMap(IGuardedMap map, int nthreads, long iters)
+    {
+        CountDownLatch ready = new CountDownLatch(nthreads);
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] threads = new Thread[nthreads];
+        for (int i = 0; i < nthreads; ++i)
+        {
+            int seed = LoopHelpers.compute1(i + 1);
+            threads[i] = new Thread(delegate()
+                {
+                    ready.CountDown();
+                    go.Await();
+                    int r = seed;
+                    long sink = 0;
+                    for (long k = 0; k < iters; ++k)
+                    {
+                        r = LoopHelpers.compute6(r);
+                        int key = (r & 0x7fffffff) % keys;
+                        if ((k % writeEvery) == 0)
+                            map.Put(key, r);
+                        else
+                            sink += map.Get(key);
+                    }
+                    if (sink == 42) Console.Out.Write(""); // defeat dead code elimination
+                });
+            threads[i].Start();
+        }
+        ready.Await();
+        Stopwatch timer = Stopwatch.StartNew();
+        go.CountDown();
+        foreach (Thread t in threads)
+            t.Join();
+        timer.Stop();
+        return timer.Elapsed.Ticks * 100;
+    }
+
+    internal interface IGuardedMap
+    {
+        string Name { get; }
+        int Get(int key);
+        void Put(int key, int value);
+    }
+
+    internal sealed class RWLockMap : IGuardedMap
+    {
+        private readonly Dictionary<int, int> map = new Dictionary<int, int>();
+        private readonly ReentrantReadWriteLock rwl = new ReentrantReadWriteLock();
+        private readonly bool nested;
+
+        internal RWLockMap(bool nested)
+        {
+            this.nested = nested;
+        }
+
+        public string Name { get { return nested ? "RWLock nested" : "RWLock"; } }
+
+        public int Get(int key)
+        {
+            ILock r = rwl.ReaderLock;
+            r.Lock();
+            try
+            {
+                if (nested)
+                {
+                    r.Lock();
+                    r.Unlock();
+                }
+                int value;
+                return map.TryGetValue(key, out value) ? value : 0;
+            }
+            finally
+            {
+                r.Unlock();
+            }
+        }
+
+        public void Put(int key, int value)
+        {
+            using (rwl.WriterLock.Lock()) map[key] = value;
+        }
+    }
+
+    internal sealed class StampedLockMap : IGuardedMap
+    {
+        private readonly Dictionary<int, int> map = new Dictionary<int, int>();
+        private readonly StampedLock sl = new StampedLock();
+
+        public string Name { get { return "StampedLock"; } }
+
+        public int Get(int key)
+        {
+            long stamp = sl.ReadLock();
+            try
+            {
+                int value;
+                return map.TryGetValue(key, out value) ? value : 0;
+            }
+            finally
+            {
+                sl.UnlockRead(stamp);
+            }
+        }
+
+        public void Put(int key, int value)
+        {
+            long stamp = sl.WriteLock();
+            try
+            {
+                map[key] = value;
+            }
+            finally
+            {
+                sl.UnlockWrite(stamp);
+            }
+        }
+    }
+
+    internal sealed class ReentrantLockMap : IGuardedMap
+    {
+        private readonly Dictionary<int, int> map = new Dictionary<int, int>();
+        private readonly ReentrantLock rl = new ReentrantLock();
+
+        public string Name { get { return "ReentrantLock"; } }
+
+        public int Get(int key)
+        {
+            using (rl.Lock())
+            {
+                int value;
+                return map.TryGetValue(key, out value) ? value : 0;
+            }
+        }
+
+        public void Put(int key, int value)
+        {
+            using (rl.Lock()) map[key] = value;
+        }
+    }
+
+    internal sealed class MonitorMap : IGuardedMap
+    {
+        private readonly Dictionary<int, int> map = new Dictionary<int, int>();
+
+        public string Name { get { return "Monitor"; } }
+
+        public int Get(int key)
+        {
+            lock (map)
+            {
+                int value;
+                return map.TryGetValue(key, out value) ? value : 0;
+            }
+        }
+
+        public void Put(int key, int value)
+        {
+            lock (map) map[key] = value;
+        }
+    }
+}
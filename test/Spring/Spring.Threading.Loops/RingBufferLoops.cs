@@ -0,0 +1,333 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+
+
+
+/*
+ * Measures a RingBuffer with BatchEventProcessors in the usual Disruptor
+ * topologies, for throughput and for latency.
+ *
+ * Throughput: one producer publishes the events as fast as it can, and
+ * the time until the last processor has seen them all is measured.
+ * Outputs, per topology and wait strategy, the nanoseconds per event and
+ * the events per millisecond:
+ *  "Unicast"    one producer, one processor
+ *  "Multicast"  one producer, three processors each seeing every event
+ *  "Diamond"    one producer, two processors, and a third one that
+ *               follows both of them
+ *  "ABQ"        ArrayBlockingQueue handing over the same events from
+ *               one producer to one consumer, for comparison
+ *
+ * Latency: the producer stamps each event with Stopwatch.GetTimestamp()
+ * and waits for the unicast processor to see it before publishing the
+ * next one, so every event meets an idle processor. Outputs, per wait
+ * strategy, the mean and 99th percentile of the nanoseconds from publish
+ * to the processor.
+ *
+ * Usage: RingBufferLoops [events [bufferSize [latencyEvents]]]
+ */
+using System;
+using System.Diagnostics;
+using System.Threading;
+using Spring.Threading;
+using Spring.Threading.Collections.Generic;
+
+public class RingBufferLoops
+{
+    internal const int TRIALS = 2;
+    internal static int events = 10000000;
+    internal static int bufferSize = 1 << 16;
+    internal static int latencyEvents = 100000;
+
+    internal class ValueEvent
+    {
+        internal long Value;
+        internal long Doubled;
+    }
+
+    /// <summary>
+    /// Sums the values, optionally doubling them for the diamond.
+    /// </summary>
+    internal class SumHandler : IEventHandler<ValueEvent>
+    {
+        internal long Sum;
+        private readonly bool _isDoubling;
+
+        internal SumHandler(bool isDoubling)
+        {
+            _isDoubling = isDoubling;
+        }
+
+        public void OnEvent(ValueEvent data, long sequence, bool endOfBatch)
+        {
+            if (_isDoubling) data.Doubled = data.Value * 2;
+            Sum += data.Value;
+        }
+    }
+
+    /// <summary>
+    /// Records the ticks from the stamp in the event to its arrival.
+    /// </summary>
+    internal class LatencyHandler : IEventHandler<ValueEvent>
+    {
+        internal readonly long[] Latencies;
+
+        internal LatencyHandler(int count)
+        {
+            Latencies = new long[count];
+        }
+
+        public void OnEvent(ValueEvent data, long sequence, bool endOfBatch)
+        {
+            Latencies[sequence] = Stopwatch.GetTimestamp() - data.Value;
+        }
+    }
+
+    public static void main(string[] args)
+    {
+        if (args.Length > 0)
+            events = Int32.Parse(args[0]);
+        if (args.Length > 1)
+            bufferSize = Int32.Parse(args[1]);
+        if (args.Length > 2)
+            latencyEvents = Int32.Parse(args[2]);
+
+        Console.Out.WriteLine("Warmup...");
+        throughputTests(events / 10, false);
+        latencyTests(latencyEvents / 10, false);
+        Console.Out.WriteLine();
+
+        for (int j = 0; j < TRIALS; ++j)
+        {
+            Console.Out.WriteLine("Trial " + j);
+            throughputTests(events, true);
+            latencyTests(latencyEvents, true);
+        }
+    }
+
+    internal static IWaitStrategy[] newWaitStrategies()
+    {
+        return new IWaitStrategy[]
+            {
+                new BusySpinWaitStrategy(), new YieldingWaitStrategy(),
+                new SleepingWaitStrategy(), new BlockingWaitStrategy()
+            };
+    }
+
+    internal static string nameOf(IWaitStrategy waitStrategy)
+    {
+        return waitStrategy.GetType().Name.Replace("WaitStrategy", "");
+    }
+
+    internal static void throughputTests(int events, bool print)
+    {
+        if (print)
+            Console.Out.WriteLine("Throughput");
+        foreach (IWaitStrategy w in newWaitStrategies())
+            print1("Unicast", w, 1, false, events, print);
+        foreach (IWaitStrategy w in newWaitStrategies())
+            print1("Multicast", w, 3, false, events, print);
+        foreach (IWaitStrategy w in newWaitStrategies())
+            print1("Diamond", w, 2, true, events, print);
+        long time = runQueue(new ArrayBlockingQueue<long>(bufferSize), events);
+        if (print)
+        {
+            printThroughput("ABQ", "", time, events);
+            Console.Out.WriteLine();
+        }
+    }
+
+    internal static void print1(string name, IWaitStrategy waitStrategy, int processors, bool isDiamond,
+        int events, bool print)
+    {
+        long time = runRingBuffer(waitStrategy, processors, isDiamond, events);
+        if (print)
+            printThroughput(name, nameOf(waitStrategy), time, events);
+    }
+
+    internal static void printThroughput(string name, string waitStrategy, long time, int events)
+    {
+        Console.Out.Write(name.PadRight(10));
+        Console.Out.Write(waitStrategy.PadRight(10));
+        Console.Out.Write(LoopHelpers.rightJustify(time / events) + " ns per event");
+        Console.Out.WriteLine(LoopHelpers.rightJustify((long) events * 1000000L / Math.Max(time, 1)) + " events per ms");
+    }
+
+    /// <summary>
+    /// Publishes <paramref name="events"/> events to
+    /// <paramref name="processors"/> processors that follow the producer,
+    /// plus one following them all for the diamond, and returns the
+    /// elapsed time in nanoseconds.
+    /// </summary>
+    internal static long runRingBuffer(IWaitStrategy waitStrategy, int processors, bool isDiamond, int events)
+    {
+        RingBuffer<ValueEvent> rb = new RingBuffer<ValueEvent>(
+            delegate { return new ValueEvent(); }, bufferSize, waitStrategy, false);
+        int nthreads = isDiamond ? processors + 1 : processors;
+        SumHandler[] handlers = new SumHandler[nthreads];
+        BatchEventProcessor<ValueEvent>[] ps = new BatchEventProcessor<ValueEvent>[nthreads];
+        Sequence[] firstStage = new Sequence[processors];
+        for (int i = 0; i < processors; ++i)
+        {
+            handlers[i] = new SumHandler(isDiamond && i == 0);
+            ps[i] = new BatchEventProcessor<ValueEvent>(rb, rb.NewBarrier(), handlers[i]);
+            firstStage[i] = ps[i].Sequence;
+        }
+        if (isDiamond)
+        {
+            handlers[processors] = new SumHandler(false);
+            ps[processors] = new BatchEventProcessor<ValueEvent>(rb, rb.NewBarrier(firstStage), handlers[processors]);
+            rb.AddGatingSequences(ps[processors].Sequence);
+        }
+        else
+        {
+            rb.AddGatingSequences(firstStage);
+        }
+
+        Thread[] threads = new Thread[nthreads];
+        for (int i = 0; i < nthreads; ++i)
+        {
+            threads[i] = new Thread(ps[i].Run);
+            threads[i].Start();
+        }
+        while (!allRunning(ps))
+            Thread.Sleep(1);
+
+        Stopwatch timer = Stopwatch.StartNew();
+        for (long k = 0; k < events; ++k)
+        {
+            long sequence = rb.Next();
+            rb[sequence].Value = k;
+            rb.Publish(sequence);
+        }
+        foreach (BatchEventProcessor<ValueEvent> p in ps)
+        {
+            while (p.Sequence.Value < events - 1)
+                Thread.Sleep(0);
+        }
+        timer.Stop();
+
+        foreach (BatchEventProcessor<ValueEvent> p in ps)
+            p.Halt();
+        foreach (Thread t in threads)
+            t.Join();
+        foreach (SumHandler h in handlers)
+        {
+            if (h.Sum != (long) events * (events - 1) / 2)
+                throw new SystemException("lost events: " + h.Sum);
+        }
+        return timer.Elapsed.Ticks * 100;
+    }
+
+    /// <summary>
+    /// Hands <paramref name="events"/> items from one producer to one
+    /// consumer and returns the elapsed time in nanoseconds.
+    /// </summary>
+    internal static long runQueue(IBlockingQueue<long> q, int events)
+    {
+        CountDownLatch ready = new CountDownLatch(1);
+        long sum = 0;
+        Thread consumer = new Thread(delegate()
+            {
+                ready.CountDown();
+                for (int k = 0; k < events; ++k)
+                    sum += q.Take();
+            });
+        consumer.Start();
+        ready.Await();
+        Stopwatch timer = Stopwatch.StartNew();
+        for (long k = 0; k < events; ++k)
+            q.Put(k);
+        consumer.Join();
+        timer.Stop();
+        if (sum != (long) events * (events - 1) / 2)
+            throw new SystemException("lost items: " + sum);
+        return timer.Elapsed.Ticks * 100;
+    }
+
+    internal static bool allRunning(BatchEventProcessor<ValueEvent>[] ps)
+    {
+        foreach (BatchEventProcessor<ValueEvent> p in ps)
+        {
+            if (!p.IsRunning)
+                return false;
+        }
+        return true;
+    }
+
+    internal static void latencyTests(int events, bool print)
+    {
+        if (print)
+            Console.Out.WriteLine("Latency");
+        foreach (IWaitStrategy w in newWaitStrategies())
+        {
+            long[] latencies = runLatency(w, events);
+            if (print)
+            {
+                Array.Sort(latencies);
+                long total = 0;
+                foreach (long l in latencies)
+                    total += l;
+                Console.Out.Write("Unicast".PadRight(10));
+                Console.Out.Write(nameOf(w).PadRight(10));
+                Console.Out.Write(LoopHelpers.rightJustify(toNanos(total / events)) + " ns mean");
+                Console.Out.WriteLine(LoopHelpers.rightJustify(toNanos(latencies[events * 99 / 100])) + " ns 99%");
+            }
+        }
+        if (print)
+            Console.Out.WriteLine();
+    }
+
+    /// <summary>
+    /// Publishes <paramref name="events"/> stamped events one at a time
+    /// and returns the latency of each in Stopwatch ticks.
+    /// </summary>
+    internal static long[] runLatency(IWaitStrategy waitStrategy, int events)
+    {
+        RingBuffer<ValueEvent> rb = new RingBuffer<ValueEvent>(
+            delegate { return new ValueEvent(); }, bufferSize, waitStrategy, false);
+        LatencyHandler handler = new LatencyHandler(events);
+        BatchEventProcessor<ValueEvent> p = new BatchEventProcessor<ValueEvent>(rb, rb.NewBarrier(), handler);
+        rb.AddGatingSequences(p.Sequence);
+        Thread t = new Thread(p.Run);
+        t.Start();
+        while (!p.IsRunning)
+            Thread.Sleep(1);
+
+        for (int k = 0; k < events; ++k)
+        {
+            long sequence = rb.Next();
+            rb[sequence].Value = Stopwatch.GetTimestamp();
+            rb.Publish(sequence);
+            while (p.Sequence.Value < sequence)
+                Thread.SpinWait(1);
+        }
+
+        p.Halt();
+        t.Join();
+        return handler.Latencies;
+    }
+
+    internal static long toNanos(long ticks)
+    {
+        return (long) (ticks * (1000000000.0 / Stopwatch.Frequency));
+    }
+}
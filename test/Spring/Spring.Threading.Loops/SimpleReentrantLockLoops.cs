@@ -0,0 +1,179 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+/*
+ * Measures contended acquisition of ReentrantLock with critical sections
+ * of a few hundred nanoseconds, the case adaptive spinning is meant for.
+ * Each thread repeatedly locks, advances a shared xorshift sequence a few
+ * steps, unlocks, and then does a little local work.
+ *
+ * Outputs, per guard and thread count, the nanoseconds per lock/unlock
+ * pair and the total acquisitions per millisecond:
+ *  "Spin"            nonfair ReentrantLock with the default spin limit
+ *  "NoSpin"          nonfair ReentrantLock with spinning disabled
+ *  "Fair"            fair ReentrantLock
+ *  "Monitor"         lock statement
+ *
+ * Usage: SimpleReentrantLockLoops [maxThreads [itersPerThread [spinLimit]]]
+ */
+using System;
+using System.Collections.Generic;
+using System.Diagnostics;
+using System.Threading;
+using Spring.Threading;
+using Spring.Threading.Locks;
+
+public class SimpleReentrantLockLoops
+{
+    internal const int TRIALS = 2;
+    internal static int maxThreads = 64;
+    internal static int iters = 200000;
+    internal static int spinLimit = ReentrantLock.DefaultSpinLimit;
+
+    public static void main(string[] args)
+    {
+        if (args.Length > 0)
+            maxThreads = Int32.Parse(args[0]);
+        if (args.Length > 1)
+            iters = Int32.Parse(args[1]);
+        if (args.Length > 2)
+            spinLimit = Int32.Parse(args[2]);
+
+        Console.Out.WriteLine("Spin limit: " + spinLimit);
+        Console.Out.WriteLine("Warmup...");
+        for (int i = 1; i <= maxThreads; i <<= 1)
+        {
+            oneTest(i, iters / 10, false);
+            Console.Out.Write(".");
+        }
+        Console.Out.WriteLine();
+
+        for (int j = 0; j < TRIALS; ++j)
+        {
+            Console.Out.WriteLine("Trial " + j);
+            for (int i = 1; i <= maxThreads; i <<= 1)
+                oneTest(i, iters, true);
+        }
+    }
+
+    internal static void oneTest(int nthreads, int iters, bool print)
+    {
+        if (print)
+            Console.Out.WriteLine("Threads: " + nthreads);
+        foreach (Guard guard in newGuards())
+        {
+            long time = runGuard(guard, nthreads, iters);
+            long total = (long) nthreads * iters;
+            if (print)
+            {
+                Console.Out.Write(guard.Name.PadRight(16));
+                Console.Out.Write(LoopHelpers.rightJustify(time / total) + " ns per op");
+                Console.Out.WriteLine(LoopHelpers.rightJustify(total * 1000000L / Math.Max(time, 1)) + " ops per ms");
+            }
+        }
+        if (print)
+            Console.Out.WriteLine();
+    }
+
+    internal static IList<Guard> newGuards()
+    {
+        List<Guard> guards = new List<Guard>();
+        guards.Add(new LockGuard("Spin", new ReentrantLock(false, spinLimit)));
+        guards.Add(new LockGuard("NoSpin", new ReentrantLock(false, 0)));
+        guards.Add(new LockGuard("Fair", new ReentrantLock(true)));
+        guards.Add(new MonitorGuard());
+        return guards;
+    }
+
+    /// <summary>
+    /// Runs <paramref name="iters"/> critical sections guarded by
+    /// <paramref name="guard"/> in each of <paramref name="nthreads"/>
+    /// threads and returns the elapsed time in nanoseconds.
+    /// </summary>
+    internal static long runGuard(Guard guard, int nthreads, int iters)
+    {
+        CountDownLatch ready = new CountDownLatch(nthreads);
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] threads = new Thread[nthreads];
+        for (int i = 0; i < nthreads; ++i)
+        {
+            threads[i] = new Thread(delegate()
+                {
+                    int local = LoopHelpers.compute1((int) DateTime.Now.Ticks ^ Thread.CurrentThread.GetHashCode());
+                    ready.CountDown();
+                    go.Await();
+                    for (int k = 0; k < iters; ++k)
+                    {
+                        guard.Enter();
+                        try
+                        {
+                            guard.Value = LoopHelpers.compute6(LoopHelpers.compute6(guard.Value + k));
+                        }
+                        finally
+                        {
+                            guard.Exit();
+                        }
+                        local = LoopHelpers.compute1(local);
+                    }
+                    if (local == 0)
+                        Console.Out.Write(" "); // keep the local work alive
+                });
+            threads[i].Start();
+        }
+        ready.Await();
+        Stopwatch timer = Stopwatch.StartNew();
+        go.CountDown();
+        foreach (Thread t in threads)
+            t.Join();
+        timer.Stop();
+        return timer.Elapsed.Ticks * 100;
+    }
+
+    internal abstract class Guard
+    {
+        public int Value = 1;
+        public abstract string Name { get; }
+        public abstract void Enter();
+        public abstract void Exit();
+    }
+
+    internal sealed class LockGuard : Guard
+    {
+        private readonly string name;
+        private readonly ReentrantLock rl;
+
+        public LockGuard(string name, ReentrantLock rl)
+        {
+            this.name = name;
+            this.rl = rl;
+        }
+
+        public override string Name { get { return name; } }
+        public override void Enter() { rl.Lock(); }
+        public override void Exit() { rl.Unlock(); }
+    }
+
+    internal sealed class MonitorGuard : Guard
+    {
+        public override string Name { get { return "Monitor"; } }
+        public override void Enter() { Monitor.Enter(this); }
+        public override void Exit() { Monitor.Exit(this); }
+    }
+}
@@ -0,0 +1,225 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+/*
+ * Measures acquire/release throughput of counting semaphores, from a
+ * single permit (a mutex) up to enough permits that acquirers never have
+ * to wait, as in a connection pool limiter. Each thread repeatedly
+ * acquires one permit, does a little local work, and releases it.
+ *
+ * Outputs, per permit count, guard and thread count, the nanoseconds
+ * per acquire/release pair and the total pairs per millisecond:
+ *  "Nonfair"         nonfair Spring.Threading.Semaphore
+ *  "Fair"            fair Spring.Threading.Semaphore
+ *  "Monitor"         counting semaphore guarded by a lock statement,
+ *                    the way the permit count was kept before
+ *  "Kernel"          System.Threading.Semaphore
+ *
+ * Usage: SimpleSemaphoreLoops [maxThreads [itersPerThread [permits...]]]
+ */
+using System;
+using System.Collections.Generic;
+using System.Diagnostics;
+using System.Threading;
+using Spring.Threading;
+using Semaphore = Spring.Threading.Semaphore;
+
+public class SimpleSemaphoreLoops
+{
+    internal const int TRIALS = 2;
+    internal static int maxThreads = 64;
+    internal static int iters = 200000;
+    internal static int[] permitCounts = new int[] {1, 16, 512};
+
+    public static void main(string[] args)
+    {
+        if (args.Length > 0)
+            maxThreads = Int32.Parse(args[0]);
+        if (args.Length > 1)
+            iters = Int32.Parse(args[1]);
+        if (args.Length > 2)
+        {
+            permitCounts = new int[args.Length - 2];
+            for (int i = 2; i < args.Length; ++i)
+                permitCounts[i - 2] = Int32.Parse(args[i]);
+        }
+
+        Console.Out.WriteLine("Warmup...");
+        for (int i = 1; i <= maxThreads; i <<= 1)
+        {
+            oneTest(i, permitCounts[permitCounts.Length - 1], iters / 10, false);
+            Console.Out.Write(".");
+        }
+        Console.Out.WriteLine();
+
+        for (int j = 0; j < TRIALS; ++j)
+        {
+            Console.Out.WriteLine("Trial " + j);
+            foreach (int permits in permitCounts)
+            {
+                for (int i = 1; i <= maxThreads; i <<= 1)
+                    oneTest(i, permits, iters, true);
+            }
+        }
+    }
+
+    internal static void oneTest(int nthreads, int permits, int iters, bool print)
+    {
+        if (print)
+            Console.Out.WriteLine("Permits: " + permits + " Threads: " + nthreads);
+        foreach (Guard guard in newGuards(permits))
+        {
+            long time = runGuard(guard, nthreads, iters);
+            long total = (long) nthreads * iters;
+            if (print)
+            {
+                Console.Out.Write(guard.Name.PadRight(16));
+                Console.Out.Write(LoopHelpers.rightJustify(time / total) + " ns per op");
+                Console.Out.WriteLine(LoopHelpers.rightJustify(total * 1000000L / Math.Max(time, 1)) + " ops per ms");
+            }
+            guard.Dispose();
+        }
+        if (print)
+            Console.Out.WriteLine();
+    }
+
+    internal static IList<Guard> newGuards(int permits)
+    {
+        List<Guard> guards = new List<Guard>();
+        guards.Add(new SemaphoreGuard("Nonfair", new Semaphore(permits, false)));
+        guards.Add(new SemaphoreGuard("Fair", new Semaphore(permits, true)));
+        guards.Add(new MonitorGuard(permits));
+        guards.Add(new KernelGuard(permits));
+        return guards;
+    }
+
+    /// <summary>
+    /// Runs <paramref name="iters"/> acquire/release pairs on
+    /// <paramref name="guard"/> in each of <paramref name="nthreads"/>
+    /// threads and returns the elapsed time in nanoseconds.
+    /// </summary>
+    internal static long runGuard(Guard guard, int nthreads, int iters)
+    {
+        CountDownLatch ready = new CountDownLatch(nthreads);
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] threads = new Thread[nthreads];
+        for (int i = 0; i < nthreads; ++i)
+        {
+            threads[i] = new Thread(delegate()
+                {
+                    int local = LoopHelpers.compute1((int) DateTime.Now.Ticks ^ Thread.CurrentThread.GetHashCode());
+                    ready.CountDown();
+                    go.Await();
+                    for (int k = 0; k < iters; ++k)
+                    {
+                        guard.Acquire();
+                        try
+                        {
+                            local = LoopHelpers.compute6(local);
+                        }
+                        finally
+                        {
+                            guard.Release();
+                        }
+                    }
+                    if (local == 0)
+                        Console.Out.Write(" "); // keep the local work alive
+                });
+            threads[i].Start();
+        }
+        ready.Await();
+        Stopwatch timer = Stopwatch.StartNew();
+        go.CountDown();
+        foreach (Thread t in threads)
+            t.Join();
+        timer.Stop();
+        return timer.Elapsed.Ticks * 100;
+    }
+
+    internal abstract class Guard : IDisposable
+    {
+        public abstract string Name { get; }
+        public abstract void Acquire();
+        public abstract void Release();
+        public virtual void Dispose() { }
+    }
+
+    internal sealed class SemaphoreGuard : Guard
+    {
+        private readonly string name;
+        private readonly Semaphore sem;
+
+        public SemaphoreGuard(string name, Semaphore sem)
+        {
+            this.name = name;
+            this.sem = sem;
+        }
+
+        public override string Name { get { return name; } }
+        public override void Acquire() { sem.Acquire(); }
+        public override void Release() { sem.Release(); }
+    }
+
+    internal sealed class MonitorGuard : Guard
+    {
+        private int permits;
+
+        public MonitorGuard(int permits)
+        {
+            this.permits = permits;
+        }
+
+        public override string Name { get { return "Monitor"; } }
+
+        public override void Acquire()
+        {
+            lock (this)
+            {
+                while (permits <= 0)
+                    Monitor.Wait(this);
+                --permits;
+            }
+        }
+
+        public override void Release()
+        {
+            lock (this)
+            {
+                ++permits;
+                Monitor.Pulse(this);
+            }
+        }
+    }
+
+    internal sealed class KernelGuard : Guard
+    {
+        private readonly System.Threading.Semaphore sem;
+
+        public KernelGuard(int permits)
+        {
+            sem = new System.Threading.Semaphore(permits, permits);
+        }
+
+        public override string Name { get { return "Kernel"; } }
+        public override void Acquire() { sem.WaitOne(); }
+        public override void Release() { sem.Release(); }
+        public override void Dispose() { sem.Close(); }
+    }
+}
@@ -0,0 +1,249 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+/*
+ * Measures very short read sections, the case StampedLock's optimistic
+ * mode is meant for. A shared point of four fields is read by all
+ * threads; one operation in writeEvery moves the point instead. A read
+ * copies the fields into locals and checks that they are consistent
+ * (they always sum to zero).
+ *
+ * Outputs, per guard and thread count, the nanoseconds per operation
+ * and the total operations per millisecond:
+ *  "Optimistic"      StampedLock.TryOptimisticRead and Validate,
+ *                    falling back to a read stamp on failure
+ *  "StampedRead"     StampedLock read stamp for every read
+ *  "RWLock"          ReentrantReadWriteLock read lock for every read
+ *  "Monitor"         lock statement for all operations
+ *
+ * Usage: StampedLockLoops [maxThreads [itersPerThread [writeEvery]]]
+ */
+using System;
+using System.Collections.Generic;
+using System.Diagnostics;
+using System.Threading;
+using Spring.Threading;
+using Spring.Threading.Locks;
+
+public class StampedLockLoops
+{
+    internal const int TRIALS = 2;
+    internal static int maxThreads = 64;
+    internal static long iters = 1000000;
+    internal static int writeEvery = 256;
+
+    public static void main(string[] args)
+    {
+        if (args.Length > 0)
+            maxThreads = Int32.Parse(args[0]);
+        if (args.Length > 1)
+            iters = Int64.Parse(args[1]);
+        if (args.Length > 2)
+            writeEvery = Int32.Parse(args[2]);
+
+        Console.Out.WriteLine("Warmup...");
+        for (int i = 1; i <= maxThreads; i <<= 1)
+        {
+            oneTest(i, iters / 10, false);
+            Console.Out.Write(".");
+        }
+        Console.Out.WriteLine();
+
+        for (int j = 0; j < TRIALS; ++j)
+        {
+            Console.Out.WriteLine("Trial " + j);
+            for (int i = 1; i <= maxThreads; i <<= 1)
+                oneTest(i, iters, true);
+        }
+    }
+
+    internal static void oneTest(int nthreads, long iters, bool print)
+    {
+        if (print)
+            Console.Out.WriteLine("Threads: " + nthreads);
+        foreach (IPoint point in newPoints())
+        {
+            long time = runPoint(point, nthreads, iters);
+            long total = nthreads * iters;
+            if (print)
+            {
+                Console.Out.Write(point.Name.PadRight(16));
+                Console.Out.Write(LoopHelpers.rightJustify(time / total) + " ns per op");
+                Console.Out.WriteLine(LoopHelpers.rightJustify(total * 1000000L / Math.Max(time, 1)) + " ops per ms");
+            }
+        }
+        if (print)
+            Console.Out.WriteLine();
+    }
+
+    internal static IList<IPoint> newPoints()
+    {
+        List<IPoint> points = new List<IPoint>();
+        points.Add(new OptimisticPoint());
+        points.Add(new StampedReadPoint());
+        points.Add(new RWLockPoint());
+        points.Add(new MonitorPoint());
+        return points;
+    }
+
+    /// <summary>
+    /// Runs <paramref name="iters"/> operations on <paramref name="point"/>
+    /// in each of <paramref name="nthreads"/> threads and returns the
+    /// elapsed time in nanoseconds.
+    /// </summary>
+    internal static long runPoint(IPoint point, int nthreads, long iters)
+    {
+        CountDownLatch ready = new CountDownLatch(nthreads);
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] threads = new Thread[nthreads];
+        for (int i = 0; i < nthreads; ++i)
+        {
+            threads[i] = new Thread(delegate()
+                {
+                    ready.CountDown();
+                    go.Await();
+                    for (long k = 0; k < iters; ++k)
+                    {
+                        if ((k % writeEvery) == 0)
+                            point.Move((int) k & 0xff);
+                        else if (point.Sum() != 0)
+                            throw new SystemException(point.Name + " read an inconsistent point");
+                    }
+                });
+            threads[i].Start();
+        }
+        ready.Await();
+        Stopwatch timer = Stopwatch.StartNew();
+        go.CountDown();
+        foreach (Thread t in threads)
+            t.Join();
+        timer.Stop();
+        return timer.Elapsed.Ticks * 100;
+    }
+
+    internal interface IPoint
+    {
+        string Name { get; }
+        void Move(int delta);
+        int Sum();
+    }
+
+    /// <summary>
+    /// Four fields that always sum to zero when observed consistently.
+    /// </summary>
+    internal abstract class PointBase
+    {
+        protected int x, y, z, w;
+
+        protected void DoMove(int delta)
+        {
+            x += delta;
+            y -= delta;
+            z += delta << 1;
+            w -= delta << 1;
+        }
+    }
+
+    internal sealed class OptimisticPoint : PointBase, IPoint
+    {
+        private readonly StampedLock sl = new StampedLock();
+
+        public string Name { get { return "Optimistic"; } }
+
+        public void Move(int delta)
+        {
+            long stamp = sl.WriteLock();
+            try { DoMove(delta); }
+            finally { sl.UnlockWrite(stamp); }
+        }
+
+        public int Sum()
+        {
+            long stamp = sl.TryOptimisticRead();
+            int a = x, b = y, c = z, d = w;
+            if (!sl.Validate(stamp))
+            {
+                stamp = sl.ReadLock();
+                try
+                {
+                    a = x; b = y; c = z; d = w;
+                }
+                finally
+                {
+                    sl.UnlockRead(stamp);
+                }
+            }
+            return a + b + c + d;
+        }
+    }
+
+    internal sealed class StampedReadPoint : PointBase, IPoint
+    {
+        private readonly StampedLock sl = new StampedLock();
+
+        public string Name { get { return "StampedRead"; } }
+
+        public void Move(int delta)
+        {
+            long stamp = sl.WriteLock();
+            try { DoMove(delta); }
+            finally { sl.UnlockWrite(stamp); }
+        }
+
+        public int Sum()
+        {
+            long stamp = sl.ReadLock();
+            try { return x + y + z + w; }
+            finally { sl.UnlockRead(stamp); }
+        }
+    }
+
+    internal sealed class RWLockPoint : PointBase, IPoint
+    {
+        private readonly ReentrantReadWriteLock rwl = new ReentrantReadWriteLock();
+
+        public string Name { get { return "RWLock"; } }
+
+        public void Move(int delta)
+        {
+            using (rwl.WriterLock.Lock()) DoMove(delta);
+        }
+
+        public int Sum()
+        {
+            using (rwl.ReaderLock.Lock()) return x + y + z + w;
+        }
+    }
+
+    internal sealed class MonitorPoint : PointBase, IPoint
+    {
+        public string Name { get { return "Monitor"; } }
+
+        public void Move(int delta)
+        {
+            lock (this) DoMove(delta);
+        }
+
+        public int Sum()
+        {
+            lock (this) return x + y + z + w;
+        }
+    }
+}
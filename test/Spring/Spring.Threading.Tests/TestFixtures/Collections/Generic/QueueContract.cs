@@ -34,6 +34,12 @@ namespace Spring.TestFixtures.Collections.Generic
             get { return Options.Has(CollectionContractOptions.NoNull); }
             set { Options = Options.Set(CollectionContractOptions.NoNull, value); }
         }
+        /// <summary>
+        /// Set to <c>true</c> by queues that can only remove their head, so
+        /// that the tests of <see cref="ICollection{T}.Remove(T)"/> and of
+        /// the drain methods taking a criteria are skipped.
+        /// </summary>
+        protected bool NoRemoveByElement { get; set; }
 
         /// <summary>
         /// Only evaluates option <see cref="CollectionContractOptions.Unique"/>,
@@ -153,12 +159,14 @@ namespace Spring.TestFixtures.Collections.Generic
 
         [Test] public virtual void RemoveByElementReturnsFalseWhenEmpty()
         {
+            SkipWhenNoRemoveByElement();
             var q = NewQueue();
             Assert.IsFalse(q.Remove(TestData<T>.Zero));
         }
 
         [Test] public virtual void RemoveByElementFollowedByAddSucceeds()
         {
+            SkipWhenNoRemoveByElement();
             if (SampleSize == 0) Assert.Pass("Skip due to an empty queue.");
             var q = NewQueueFilledWithSample();
             var samples = NewSamples();
@@ -167,6 +175,12 @@ namespace Spring.TestFixtures.Collections.Generic
             T dummy; Assert.That(q.Poll(out dummy), Is.True);
         }
 
+        [Test] public override void RemoveOnlyOneOfDuplicatesWhenSupported()
+        {
+            SkipWhenNoRemoveByElement();
+            base.RemoveOnlyOneOfDuplicatesWhenSupported();
+        }
+
         [Test] public virtual void PollReturnsFalseWhenQueueIsEmpty()
         {
             IQueue<T> queue = NewQueue();
@@ -368,6 +382,7 @@ namespace Spring.TestFixtures.Collections.Generic
 
         [Test] public void DrainActsOnNoMoreThenMaxElementsPassedCriteria()
         {
+            SkipWhenNoRemoveByElement();
             Predicate<T> criteria = o => o.GetHashCode()%2 == 0;
 
             var size = SampleSize / 2;
@@ -390,6 +405,7 @@ namespace Spring.TestFixtures.Collections.Generic
 
         [Test] public void DrainActsOnSomeElementsPassedCriteria()
         {
+            SkipWhenNoRemoveByElement();
             Predicate<T> criteria = o => o.GetHashCode()%2 == 0;
             var expected = Samples.Where(e => criteria(e)).ToList();
 
@@ -404,6 +420,11 @@ namespace Spring.TestFixtures.Collections.Generic
             Assert.Pass("Skip test that is not applicable to current implmenetation.");
         }
 
+        protected void SkipWhenNoRemoveByElement()
+        {
+            if (NoRemoveByElement) Assert.Pass("Skip as this queue can only remove its head.");
+        }
+
         protected void AssertRemainingCapacity(IQueue<T> queue, int size)
         {
             AssertRemainingCapacity(queue, size, null);
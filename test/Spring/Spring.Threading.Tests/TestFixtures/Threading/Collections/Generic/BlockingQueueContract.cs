@@ -462,6 +462,7 @@ namespace Spring.TestFixtures.Threading.Collections.Generic
 
         [Test] public virtual void SelectiveDrainToMovesSelectedElementsIntoCollection()
         {
+            SkipWhenNoRemoveByElement();
             var expected = PollAll(NewBlockingQueueFilledWithSample()).Where(e=>e.GetHashCode()%2==0).ToArray();
             var q = NewBlockingQueueFilledWithSample();
             List<T> l = new List<T>();
@@ -0,0 +1,165 @@
+using System;
+using System.Threading;
+using NUnit.CommonFixtures;
+using NUnit.CommonFixtures.Threading;
+using NUnit.Framework;
+
+namespace Spring.Threading
+{
+    /// <summary>
+    /// Test cases for <see cref="AdaptiveLimiter"/>.
+    /// </summary>
+    [TestFixture]
+    public class AdaptiveLimiterTests : ThreadingTestFixture
+    {
+        private static readonly TimeSpan _latency = TimeSpan.FromMilliseconds(10);
+
+        /// <summary>
+        /// Returns whatever limit the test sets next.
+        /// </summary>
+        private class ScriptedLimit : ILimitAlgorithm
+        {
+            public int NextLimit;
+            public int Updates;
+            public int LastInFlight;
+
+            public ScriptedLimit(int initialLimit)
+            {
+                NextLimit = initialLimit;
+            }
+
+            public int Limit
+            {
+                get { return NextLimit; }
+            }
+
+            public int Update(TimeSpan latency, int inFlight, bool dropped)
+            {
+                Updates++;
+                LastInFlight = inFlight;
+                return NextLimit;
+            }
+        }
+
+        [Test] public void ConstructorChokesOnNullAlgorithm()
+        {
+            Assert.Throws<ArgumentNullException>(() => new AdaptiveLimiter(null));
+        }
+
+        [Test] public void NewLimiterAdmitsInitialLimit([Values(true, false)] bool isFair)
+        {
+            AdaptiveLimiter limiter = new AdaptiveLimiter(new ScriptedLimit(3), isFair);
+            Assert.AreEqual(3, limiter.Limit);
+            for (int i = 0; i < 3; i++) Assert.IsTrue(limiter.TryAcquire());
+            Assert.IsFalse(limiter.TryAcquire());
+            Assert.IsFalse(limiter.TryAcquire(Delays.Short));
+            Assert.AreEqual(3, limiter.InFlight);
+        }
+
+        [Test] public void ReleasePassesSampleToAlgorithm()
+        {
+            ScriptedLimit algorithm = new ScriptedLimit(2);
+            AdaptiveLimiter limiter = new AdaptiveLimiter(algorithm);
+            limiter.Acquire();
+            limiter.Acquire();
+            limiter.Release(_latency);
+            Assert.AreEqual(1, algorithm.Updates);
+            Assert.AreEqual(2, algorithm.LastInFlight);
+            limiter.ReleaseIgnored();
+            Assert.AreEqual(1, algorithm.Updates);
+            Assert.AreEqual(0, limiter.InFlight);
+        }
+
+        [Test] public void GrowingLimitAdmitsWaiters([Values(true, false)] bool isFair)
+        {
+            ScriptedLimit algorithm = new ScriptedLimit(1);
+            AdaptiveLimiter limiter = new AdaptiveLimiter(algorithm, isFair);
+            limiter.Acquire();
+            ThreadStart waiter = limiter.Acquire;
+            ThreadManager.StartAndAssertRegistered("T", waiter, waiter);
+            Thread.Sleep(Delays.Short);
+            Assert.AreEqual(2, limiter.QueueLength);
+            algorithm.NextLimit = 3;
+            limiter.Release(_latency);
+            ThreadManager.JoinAndVerify();
+            Assert.AreEqual(3, limiter.Limit);
+            Assert.AreEqual(2, limiter.InFlight);
+            Assert.IsTrue(limiter.TryAcquire());
+            Assert.IsFalse(limiter.TryAcquire());
+        }
+
+        [Test] public void ShrinkingLimitIsPaidBackByCallsInFlight()
+        {
+            ScriptedLimit algorithm = new ScriptedLimit(4);
+            AdaptiveLimiter limiter = new AdaptiveLimiter(algorithm);
+            for (int i = 0; i < 4; i++) limiter.Acquire();
+            algorithm.NextLimit = 1;
+            limiter.Release(_latency);
+            Assert.AreEqual(1, limiter.Limit);
+            Assert.AreEqual(3, limiter.InFlight);
+            limiter.Release(_latency);
+            limiter.Release(_latency);
+            Assert.IsFalse(limiter.TryAcquire());
+            limiter.Release(_latency);
+            Assert.IsTrue(limiter.TryAcquire());
+            Assert.IsFalse(limiter.TryAcquire());
+        }
+
+        [Test] public void ShrinkingLimitDoesNotWakeWaiters()
+        {
+            ScriptedLimit algorithm = new ScriptedLimit(2);
+            AdaptiveLimiter limiter = new AdaptiveLimiter(algorithm);
+            limiter.Acquire();
+            limiter.Acquire();
+            Thread t1 = ThreadManager.StartAndAssertRegistered("T1", limiter.Acquire);
+            Thread.Sleep(Delays.Short);
+            algorithm.NextLimit = 1;
+            limiter.Release(_latency);
+            Thread.Sleep(Delays.Short);
+            Assert.IsTrue(t1.IsAlive);
+            Assert.AreEqual(1, limiter.InFlight);
+            limiter.Release(_latency);
+            ThreadManager.JoinAndVerify();
+            Assert.AreEqual(1, limiter.InFlight);
+        }
+
+        [Test] public void DroppedCallsLowerAimdLimit()
+        {
+            AdaptiveLimiter limiter = new AdaptiveLimiter(new AimdLimit(10, 1, 100, 0.5, TimeSpan.FromSeconds(1)));
+            limiter.Acquire();
+            limiter.ReleaseDropped(_latency);
+            Assert.AreEqual(5, limiter.Limit);
+            for (int i = 0; i < 5; i++) Assert.IsTrue(limiter.TryAcquire());
+            Assert.IsFalse(limiter.TryAcquire());
+        }
+
+        [Test] public void ConcurrentCallsStayWithinLimit()
+        {
+            const int limit = 3;
+            AdaptiveLimiter limiter = new AdaptiveLimiter(new ScriptedLimit(limit));
+            int maxInFlight = 0;
+            ThreadStart caller = delegate
+                {
+                    for (int i = 0; i < 1000; i++)
+                    {
+                        limiter.Acquire();
+                        int n = limiter.InFlight;
+                        if (n > maxInFlight) maxInFlight = n;
+                        limiter.Release(_latency);
+                    }
+                };
+            ThreadManager.StartAndAssertRegistered("T", caller, caller, caller, caller, caller);
+            ThreadManager.JoinAndVerify(Delays.Long);
+            Assert.LessOrEqual(maxInFlight, limit);
+            Assert.AreEqual(0, limiter.InFlight);
+        }
+
+        [Test] public void ToStringReportsLimitAndInFlight()
+        {
+            AdaptiveLimiter limiter = new AdaptiveLimiter(new ScriptedLimit(7));
+            limiter.Acquire();
+            StringAssert.Contains("Limit = 7", limiter.ToString());
+            StringAssert.Contains("InFlight = 1", limiter.ToString());
+        }
+    }
+}
@@ -341,6 +341,65 @@ namespace Spring.Threading.AtomicTypes
 		}
 
 
+		[Test]
+		public void SnapshotCopiesCurrentValues()
+		{
+			long[] a = new long[] {17, 3, -42, 99, -7};
+			AtomicLongArray ai = new AtomicLongArray(a);
+			long[] dest = new long[a.Length + 1];
+			ai.Snapshot(dest);
+			for (int i = 0; i < a.Length; i++)
+				Assert.AreEqual(a[i], dest[i]);
+			Assert.AreEqual(0, dest[a.Length]);
+		}
+
+		[Test]
+		public void SnapshotChokesOnNullOrShortDestination()
+		{
+			AtomicLongArray ai = new AtomicLongArray(DEFAULT_COLLECTION_SIZE);
+			Assert.Throws<ArgumentNullException>(() => ai.Snapshot(null));
+			Assert.Throws<ArgumentException>(() => ai.Snapshot(new long[DEFAULT_COLLECTION_SIZE - 1]));
+		}
+
+		[Test]
+		public void AddAllAddsEachDeltaToElementAtSameIndex()
+		{
+			AtomicLongArray ai = new AtomicLongArray(new long[] {1, 2, 3, 4});
+			ai.AddAll(new long[] {10, 0, -3});
+			Assert.AreEqual(11, ai[0]);
+			Assert.AreEqual(2, ai[1]);
+			Assert.AreEqual(0, ai[2]);
+			Assert.AreEqual(4, ai[3]);
+		}
+
+		[Test]
+		public void AddAllChokesOnNullOrLongDeltas()
+		{
+			AtomicLongArray ai = new AtomicLongArray(DEFAULT_COLLECTION_SIZE);
+			Assert.Throws<ArgumentNullException>(() => ai.AddAll(null));
+			Assert.Throws<ArgumentException>(() => ai.AddAll(new long[DEFAULT_COLLECTION_SIZE + 1]));
+		}
+
+		[Test]
+		public void AddAllFromMultipleThreadsIsNotLost()
+		{
+			AtomicLongArray ai = new AtomicLongArray(DEFAULT_COLLECTION_SIZE);
+			long[] deltas = new long[DEFAULT_COLLECTION_SIZE];
+			for (int i = 0; i < deltas.Length; i++) deltas[i] = i;
+			for (int t = 0; t < 4; t++)
+			{
+				ThreadManager.StartAndAssertRegistered("T" + t, () =>
+					{
+						for (int k = 0; k < 1000; k++) ai.AddAll(deltas);
+					});
+			}
+			ThreadManager.JoinAndVerify(Delays.Long);
+			long[] dest = new long[DEFAULT_COLLECTION_SIZE];
+			ai.Snapshot(dest);
+			for (int i = 0; i < dest.Length; i++)
+				Assert.AreEqual(4000 * i, dest[i]);
+		}
+
 		[Test]
 		public void ToStringTest()
 		{
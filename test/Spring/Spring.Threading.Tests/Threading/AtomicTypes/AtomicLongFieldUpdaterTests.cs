@@ -0,0 +1,226 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+using System;
+using System.Threading;
+using NUnit.CommonFixtures;
+using NUnit.Framework;
+
+namespace Spring.Threading.AtomicTypes
+{
+    /// <summary>
+    /// Unit tests for the AtomicLongFieldUpdater class
+    /// </summary>
+    [TestFixture]
+    public class AtomicLongFieldUpdaterTests : ThreadingTestFixture
+    {
+#pragma warning disable 169, 420, 649
+        private long x;
+        private volatile int z;
+#pragma warning restore 169, 420, 649
+
+        private AtomicLongFieldUpdater<AtomicLongFieldUpdaterTests> NewUpdater()
+        {
+            return AtomicLongFieldUpdater<AtomicLongFieldUpdaterTests>.NewUpdater("x");
+        }
+
+        [Test]
+        public void ConstructorChokesOnNullFieldName()
+        {
+            Assert.Throws<ArgumentNullException>(
+                () => AtomicLongFieldUpdater<AtomicLongFieldUpdaterTests>.NewUpdater(null));
+        }
+
+        [Test]
+        public void ConstructorChokesOnNonExistentField()
+        {
+            Assert.Throws<ArgumentException>(
+                () => AtomicLongFieldUpdater<AtomicLongFieldUpdaterTests>.NewUpdater("y"));
+        }
+
+        [Test]
+        public void ConstructorChokesOnWrongFieldType()
+        {
+            Assert.Throws<ArgumentException>(
+                () => AtomicLongFieldUpdater<AtomicLongFieldUpdaterTests>.NewUpdater("z"));
+        }
+
+        [Test]
+        public void AcceptsNonVolatileLongField()
+        {
+            Assert.IsNotNull(NewUpdater());
+        }
+
+        [Test]
+        public void GetLastSetValue()
+        {
+            var a = NewUpdater();
+            x = 1;
+            Assert.AreEqual(1, a.Get(this));
+            a.Set(this, 2);
+            Assert.AreEqual(2, a.Get(this));
+            Assert.AreEqual(2, x);
+            a.Set(this, -3);
+            Assert.AreEqual(-3, a.Get(this));
+        }
+
+        [Test]
+        public void AddDeltaBeyondIntegerRange()
+        {
+            var a = NewUpdater();
+            x = int.MaxValue;
+            Assert.AreEqual(int.MaxValue + 1L, a.IncrementValueAndReturn(this));
+            Assert.AreEqual(long.MaxValue, a.AddDeltaAndReturnNewValue(this, long.MaxValue - int.MaxValue - 1L));
+            Assert.IsTrue(a.CompareAndSet(this, long.MaxValue, long.MinValue));
+            Assert.AreEqual(long.MinValue, a.Get(this));
+        }
+
+        [Test]
+        public void GetLastLazySetValue()
+        {
+            var a = NewUpdater();
+            x = 1;
+            a.LazySet(this, 2);
+            Assert.AreEqual(2, a.Get(this));
+            a.LazySet(this, -3);
+            Assert.AreEqual(-3, a.Get(this));
+        }
+
+        [Test]
+        public void CompareExpectedValueAndSetNewValue()
+        {
+            var a = NewUpdater();
+            x = 1;
+            Assert.IsTrue(a.CompareAndSet(this, 1, 2));
+            Assert.IsTrue(a.CompareAndSet(this, 2, -4));
+            Assert.AreEqual(-4, a.Get(this));
+            Assert.IsFalse(a.CompareAndSet(this, -5, 7));
+            Assert.AreEqual(-4, a.Get(this));
+            Assert.IsTrue(a.CompareAndSet(this, -4, 7));
+            Assert.AreEqual(7, a.Get(this));
+        }
+
+        [Test]
+        public void CompareExpectedValueAndSetNewValueInMultipleThreads()
+        {
+            var a = NewUpdater();
+            x = 1;
+            Thread t = ThreadManager.StartAndAssertRegistered(
+                "T1", () => { while (!a.CompareAndSet(this, 2, 3)) Thread.Sleep(100); });
+            Assert.IsTrue(a.CompareAndSet(this, 1, 2));
+            ThreadManager.JoinAndVerify(Delays.Long);
+            Assert.IsFalse(t.IsAlive);
+            Assert.AreEqual(3, a.Get(this));
+        }
+
+        [Test]
+        public void WeakCompareExpectedValueAndSetNewValue()
+        {
+            var a = NewUpdater();
+            x = 1;
+            while (!a.WeakCompareAndSet(this, 1, 2)) { }
+            while (!a.WeakCompareAndSet(this, 2, -4)) { }
+            Assert.AreEqual(-4, a.Get(this));
+            while (!a.WeakCompareAndSet(this, -4, 7)) { }
+            Assert.AreEqual(7, a.Get(this));
+        }
+
+        [Test]
+        public void Exchange()
+        {
+            var a = NewUpdater();
+            x = 1;
+            Assert.AreEqual(1, a.Exchange(this, 0));
+            Assert.AreEqual(0, a.Exchange(this, -10));
+            Assert.AreEqual(-10, a.Exchange(this, 1));
+        }
+
+        [Test]
+        public void AddDeltaAndReturnPreviousValue()
+        {
+            var a = NewUpdater();
+            x = 1;
+            Assert.AreEqual(1, a.AddDeltaAndReturnPreviousValue(this, 2));
+            Assert.AreEqual(3, a.Get(this));
+            Assert.AreEqual(3, a.AddDeltaAndReturnPreviousValue(this, -4));
+            Assert.AreEqual(-1, a.Get(this));
+        }
+
+        [Test]
+        public void ReturnValueAndDecrement()
+        {
+            var a = NewUpdater();
+            x = 1;
+            Assert.AreEqual(1, a.ReturnValueAndDecrement(this));
+            Assert.AreEqual(0, a.ReturnValueAndDecrement(this));
+            Assert.AreEqual(-1, a.ReturnValueAndDecrement(this));
+        }
+
+        [Test]
+        public void ReturnValueAndIncrement()
+        {
+            var a = NewUpdater();
+            x = 1;
+            Assert.AreEqual(1, a.ReturnValueAndIncrement(this));
+            Assert.AreEqual(2, a.Get(this));
+            a.Set(this, -2);
+            Assert.AreEqual(-2, a.ReturnValueAndIncrement(this));
+            Assert.AreEqual(-1, a.ReturnValueAndIncrement(this));
+            Assert.AreEqual(0, a.ReturnValueAndIncrement(this));
+            Assert.AreEqual(1, a.Get(this));
+        }
+
+        [Test]
+        public void AddDeltaAndReturnNewValue()
+        {
+            var a = NewUpdater();
+            x = 1;
+            Assert.AreEqual(3, a.AddDeltaAndReturnNewValue(this, 2));
+            Assert.AreEqual(3, a.Get(this));
+            Assert.AreEqual(-1, a.AddDeltaAndReturnNewValue(this, -4));
+            Assert.AreEqual(-1, a.Get(this));
+        }
+
+        [Test]
+        public void DecrementValueAndReturn()
+        {
+            var a = NewUpdater();
+            x = 1;
+            Assert.AreEqual(0, a.DecrementValueAndReturn(this));
+            Assert.AreEqual(-1, a.DecrementValueAndReturn(this));
+            Assert.AreEqual(-2, a.DecrementValueAndReturn(this));
+            Assert.AreEqual(-2, a.Get(this));
+        }
+
+        [Test]
+        public void IncrementValueAndReturn()
+        {
+            var a = NewUpdater();
+            x = 1;
+            Assert.AreEqual(2, a.IncrementValueAndReturn(this));
+            Assert.AreEqual(2, a.Get(this));
+            a.Set(this, -2);
+            Assert.AreEqual(-1, a.IncrementValueAndReturn(this));
+            Assert.AreEqual(0, a.IncrementValueAndReturn(this));
+            Assert.AreEqual(1, a.IncrementValueAndReturn(this));
+            Assert.AreEqual(1, a.Get(this));
+        }
+    }
+}
@@ -145,6 +145,26 @@ namespace Spring.Threading.AtomicTypes
             Assert.AreEqual(m3, ai.GetValue(out mark));
 			Assert.IsTrue(mark);
 		}
+		[Test]
+		public void AttemptMarkTogglesRepeatedly()
+		{
+			bool mark;
+			AtomicMarkable<T> ai = new AtomicMarkable<T>(one, false);
+			for (int i = 0; i < 4; i++)
+			{
+				Assert.IsTrue(ai.AttemptMark(one, true));
+				Assert.AreEqual(one, ai.GetValue(out mark));
+				Assert.IsTrue(mark);
+				Assert.IsTrue(ai.CompareAndSet(one, one, true, false));
+				Assert.AreEqual(one, ai.GetValue(out mark));
+				Assert.IsFalse(mark);
+			}
+			Assert.IsFalse(ai.CompareAndSet(one, one, true, false));
+			ai.SetNewAtomicValue(two, true);
+			Assert.AreEqual(two, ai.GetValue(out mark));
+			Assert.IsTrue(mark);
+		}
+
 		[Test]
 			public void SerializeAndDeseralize()
 		{
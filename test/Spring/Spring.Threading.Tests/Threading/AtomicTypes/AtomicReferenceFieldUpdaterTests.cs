@@ -0,0 +1,157 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+using System;
+using System.Threading;
+using NUnit.CommonFixtures;
+using NUnit.Framework;
+
+namespace Spring.Threading.AtomicTypes
+{
+    /// <summary>
+    /// Unit tests for the AtomicReferenceFieldUpdater class
+    /// </summary>
+    [TestFixture]
+    public class AtomicReferenceFieldUpdaterTests : ThreadingTestFixture
+    {
+#pragma warning disable 169, 420, 649
+        private volatile string x;
+        private string w;
+        private volatile object z;
+#pragma warning restore 169, 420, 649
+
+        private const string one = "one", two = "two", three = "three", seven = "seven";
+
+        private AtomicReferenceFieldUpdater<AtomicReferenceFieldUpdaterTests, string> NewUpdater()
+        {
+            return AtomicReferenceFieldUpdater<AtomicReferenceFieldUpdaterTests, string>.NewUpdater("x");
+        }
+
+        [Test]
+        public void ConstructorChokesOnNullFieldName()
+        {
+            Assert.Throws<ArgumentNullException>(
+                () => AtomicReferenceFieldUpdater<AtomicReferenceFieldUpdaterTests, string>.NewUpdater(null));
+        }
+
+        [Test]
+        public void ConstructorChokesOnNonExistentField()
+        {
+            Assert.Throws<ArgumentException>(
+                () => AtomicReferenceFieldUpdater<AtomicReferenceFieldUpdaterTests, string>.NewUpdater("y"));
+        }
+
+        [Test]
+        public void ConstructorChokesOnNonVolatileField()
+        {
+            Assert.Throws<ArgumentException>(
+                () => AtomicReferenceFieldUpdater<AtomicReferenceFieldUpdaterTests, string>.NewUpdater("w"));
+        }
+
+        [Test]
+        public void ConstructorChokesOnWrongFieldType()
+        {
+            Assert.Throws<ArgumentException>(
+                () => AtomicReferenceFieldUpdater<AtomicReferenceFieldUpdaterTests, string>.NewUpdater("z"));
+        }
+
+        [Test]
+        public void GetLastSetValue()
+        {
+            var a = NewUpdater();
+            x = one;
+            Assert.AreSame(one, a.Get(this));
+            a.Set(this, two);
+            Assert.AreSame(two, a.Get(this));
+            Assert.AreSame(two, x);
+            a.Set(this, null);
+            Assert.IsNull(a.Get(this));
+        }
+
+        [Test]
+        public void GetLastLazySetValue()
+        {
+            var a = NewUpdater();
+            x = one;
+            a.LazySet(this, two);
+            Assert.AreSame(two, a.Get(this));
+            a.LazySet(this, three);
+            Assert.AreSame(three, a.Get(this));
+        }
+
+        [Test]
+        public void CompareExpectedValueAndSetNewValue()
+        {
+            var a = NewUpdater();
+            x = one;
+            Assert.IsTrue(a.CompareAndSet(this, one, two));
+            Assert.IsTrue(a.CompareAndSet(this, two, null));
+            Assert.IsNull(a.Get(this));
+            Assert.IsFalse(a.CompareAndSet(this, three, seven));
+            Assert.IsNull(a.Get(this));
+            Assert.IsTrue(a.CompareAndSet(this, null, seven));
+            Assert.AreSame(seven, a.Get(this));
+        }
+
+        [Test]
+        public void CompareAndSetUsesReferenceEquality()
+        {
+            var a = NewUpdater();
+            x = one;
+            string copy = new string(one.ToCharArray());
+            Assert.IsFalse(a.CompareAndSet(this, copy, two));
+            Assert.AreSame(one, a.Get(this));
+        }
+
+        [Test]
+        public void CompareExpectedValueAndSetNewValueInMultipleThreads()
+        {
+            var a = NewUpdater();
+            x = one;
+            Thread t = ThreadManager.StartAndAssertRegistered(
+                "T1", () => { while (!a.CompareAndSet(this, two, three)) Thread.Sleep(100); });
+            Assert.IsTrue(a.CompareAndSet(this, one, two));
+            ThreadManager.JoinAndVerify(Delays.Long);
+            Assert.IsFalse(t.IsAlive);
+            Assert.AreSame(three, a.Get(this));
+        }
+
+        [Test]
+        public void WeakCompareExpectedValueAndSetNewValue()
+        {
+            var a = NewUpdater();
+            x = one;
+            while (!a.WeakCompareAndSet(this, one, two)) { }
+            while (!a.WeakCompareAndSet(this, two, three)) { }
+            Assert.AreSame(three, a.Get(this));
+        }
+
+        [Test]
+        public void Exchange()
+        {
+            var a = NewUpdater();
+            x = one;
+            Assert.AreSame(one, a.Exchange(this, two));
+            Assert.AreSame(two, a.Exchange(this, null));
+            Assert.IsNull(a.Exchange(this, one));
+            Assert.AreSame(one, a.Get(this));
+        }
+    }
+}
@@ -0,0 +1,136 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+using System.IO;
+using System.Runtime.Serialization.Formatters.Binary;
+using System.Threading;
+using NUnit.CommonFixtures;
+using NUnit.Framework;
+
+namespace Spring.Threading.AtomicTypes
+{
+    /// <summary>
+    /// Unit tests for the AtomicStampedInteger class
+    /// </summary>
+    [TestFixture]
+    public class AtomicStampedIntegerTests : ThreadingTestFixture
+    {
+        [Test]
+        public void Constructor()
+        {
+            AtomicStampedInteger ai = new AtomicStampedInteger(1, 0);
+            Assert.AreEqual(1, ai.Value);
+            Assert.AreEqual(0, ai.Stamp);
+            AtomicStampedInteger a2 = new AtomicStampedInteger(-1, int.MinValue);
+            Assert.AreEqual(-1, a2.Value);
+            Assert.AreEqual(int.MinValue, a2.Stamp);
+        }
+
+        [Test]
+        public void GetSet()
+        {
+            int stamp;
+            AtomicStampedInteger ai = new AtomicStampedInteger(1, 0);
+            ai.SetNewAtomicValue(2, 0);
+            Assert.AreEqual(2, ai.GetValue(out stamp));
+            Assert.AreEqual(0, stamp);
+            ai.SetNewAtomicValue(-1, -1);
+            Assert.AreEqual(-1, ai.GetValue(out stamp));
+            Assert.AreEqual(-1, stamp);
+            ai.SetNewAtomicValue(int.MaxValue, 7);
+            Assert.AreEqual(int.MaxValue, ai.GetValue(out stamp));
+            Assert.AreEqual(7, stamp);
+        }
+
+        [Test]
+        public void AttemptStamp()
+        {
+            int stamp;
+            AtomicStampedInteger ai = new AtomicStampedInteger(1, 0);
+            Assert.IsTrue(ai.AttemptStamp(1, 1));
+            Assert.AreEqual(1, ai.GetValue(out stamp));
+            Assert.AreEqual(1, stamp);
+            Assert.IsTrue(ai.AttemptStamp(1, 1));
+            Assert.IsFalse(ai.AttemptStamp(2, 3));
+            Assert.AreEqual(1, ai.Stamp);
+        }
+
+        [Test]
+        public void CompareAndSet()
+        {
+            int stamp;
+            AtomicStampedInteger ai = new AtomicStampedInteger(1, 0);
+            Assert.IsTrue(ai.CompareAndSet(1, 2, 0, 0));
+            Assert.AreEqual(2, ai.GetValue(out stamp));
+            Assert.AreEqual(0, stamp);
+            Assert.IsTrue(ai.CompareAndSet(2, -3, 0, 1));
+            Assert.AreEqual(-3, ai.GetValue(out stamp));
+            Assert.AreEqual(1, stamp);
+            Assert.IsFalse(ai.CompareAndSet(-3, 4, 0, 2));
+            Assert.IsFalse(ai.CompareAndSet(2, 4, 1, 2));
+            Assert.AreEqual(-3, ai.GetValue(out stamp));
+            Assert.AreEqual(1, stamp);
+        }
+
+        [Test]
+        public void CompareAndSetInMultipleThreads()
+        {
+            AtomicStampedInteger ai = new AtomicStampedInteger(1, 0);
+            Thread t = ThreadManager.StartAndAssertRegistered(
+                "T1", () => { while (!ai.CompareAndSet(2, 3, 1, 2)) Thread.Sleep(Delays.Short); });
+            Assert.IsTrue(ai.CompareAndSet(1, 2, 0, 1));
+            ThreadManager.JoinAndVerify(Delays.Long);
+            Assert.IsFalse(t.IsAlive);
+            Assert.AreEqual(3, ai.Value);
+            Assert.AreEqual(2, ai.Stamp);
+        }
+
+        [Test]
+        public void WeakCompareAndSet()
+        {
+            AtomicStampedInteger ai = new AtomicStampedInteger(1, 0);
+            while (!ai.WeakCompareAndSet(1, 2, 0, 1)) { }
+            Assert.AreEqual(2, ai.Value);
+            Assert.AreEqual(1, ai.Stamp);
+        }
+
+        [Test]
+        public void ToStringShowsValueAndStamp()
+        {
+            Assert.AreEqual("[-1, 5]", new AtomicStampedInteger(-1, 5).ToString());
+        }
+
+        [Test]
+        public void SerializeAndDeseralize()
+        {
+            AtomicStampedInteger atomicStamped = new AtomicStampedInteger(42, 7);
+            MemoryStream bout = new MemoryStream(10000);
+
+            BinaryFormatter formatter = new BinaryFormatter();
+            formatter.Serialize(bout, atomicStamped);
+
+            MemoryStream bin = new MemoryStream(bout.ToArray());
+            BinaryFormatter formatter2 = new BinaryFormatter();
+            AtomicStampedInteger r = (AtomicStampedInteger) formatter2.Deserialize(bin);
+            Assert.AreEqual(42, r.Value);
+            Assert.AreEqual(7, r.Stamp);
+        }
+    }
+}
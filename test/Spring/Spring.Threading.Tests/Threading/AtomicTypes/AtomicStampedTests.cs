@@ -155,6 +155,18 @@ namespace Spring.Threading.AtomicTypes
 		    Assert.AreEqual(m3, ai.GetValue(out mark));
 			Assert.AreEqual(1, mark);
 		}
+		[Test]
+		public void CompareAndSetDefaultValueChangesOnlyStamp()
+		{
+			int stamp;
+			AtomicStamped<T> ai = new AtomicStamped<T>(default(T), 0);
+			Assert.IsTrue(ai.CompareAndSet(default(T), default(T), 0, 1));
+			Assert.That(ai.GetValue(out stamp), Is.EqualTo(default(T)));
+			Assert.AreEqual(1, stamp);
+			Assert.IsFalse(ai.CompareAndSet(default(T), default(T), 0, 2));
+			Assert.AreEqual(1, ai.Stamp);
+		}
+
 		[Test]
 		public void SerializeAndDeseralize()
 		{
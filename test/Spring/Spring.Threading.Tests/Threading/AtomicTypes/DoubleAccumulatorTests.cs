@@ -0,0 +1,83 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+using System;
+using NUnit.CommonFixtures;
+using NUnit.Framework;
+
+namespace Spring.Threading.AtomicTypes
+{
+    /// <summary>
+    /// Unit tests for the DoubleAccumulator class
+    /// </summary>
+    [TestFixture]
+    public class DoubleAccumulatorTests : ThreadingTestFixture
+    {
+        private const int _threads = 4;
+        private const int _incs = 100000;
+
+        [Test]
+        public void ConstructorChokesOnNullFunction()
+        {
+            Assert.Throws<ArgumentNullException>(() => new DoubleAccumulator(null, 0.0));
+        }
+
+        [Test]
+        public void AccumulateUpdatesCurrentValue()
+        {
+            DoubleAccumulator ai = new DoubleAccumulator(Math.Max, 0.0);
+            Assert.AreEqual(0.0, ai.Value);
+            ai.Accumulate(2.0);
+            Assert.AreEqual(2.0, ai.Value);
+            ai.Accumulate(-4.0);
+            Assert.AreEqual(2.0, ai.Value);
+        }
+
+        [Test]
+        public void ResetSetsValueToIdentity()
+        {
+            DoubleAccumulator ai = new DoubleAccumulator(Math.Max, double.NegativeInfinity);
+            ai.Accumulate(2.0);
+            Assert.AreEqual(2.0, ai.ReturnValueAndReset());
+            Assert.AreEqual(double.NegativeInfinity, ai.Value);
+            ai.Accumulate(3.0);
+            ai.Reset();
+            Assert.AreEqual(double.NegativeInfinity, ai.Value);
+        }
+
+        [Test]
+        public void AccumulatesFromMultipleThreadsAreNotLost()
+        {
+            DoubleAccumulator acc = new DoubleAccumulator(Math.Max, 0.0);
+            CountDownLatch go = new CountDownLatch(1);
+            for (int i = 0; i < _threads; i++)
+            {
+                ThreadManager.StartAndAssertRegistered("T" + i, () =>
+                    {
+                        go.Await();
+                        for (int j = 1; j <= _incs; j++) acc.Accumulate(j);
+                    });
+            }
+            go.CountDown();
+            ThreadManager.JoinAndVerify(Delays.Long);
+            Assert.AreEqual((double) _incs, acc.Value);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+using NUnit.CommonFixtures;
+using NUnit.Framework;
+
+namespace Spring.Threading.AtomicTypes
+{
+    /// <summary>
+    /// Unit tests for the DoubleAdder class
+    /// </summary>
+    [TestFixture]
+    public class DoubleAdderTests : ThreadingTestFixture
+    {
+        private const int _threads = 4;
+        private const int _incs = 100000;
+
+        [Test]
+        public void DefaultConstructorHasZeroSum()
+        {
+            DoubleAdder ai = new DoubleAdder();
+            Assert.AreEqual(0.0, ai.Sum());
+        }
+
+        [Test]
+        public void AddAddsGivenValueToCurrentSum()
+        {
+            DoubleAdder ai = new DoubleAdder();
+            ai.Add(2.0);
+            Assert.AreEqual(2.0, ai.Sum());
+            ai.Add(-4.0);
+            Assert.AreEqual(-2.0, ai.Sum());
+        }
+
+        [Test]
+        public void ResetSetsSumToZero()
+        {
+            DoubleAdder ai = new DoubleAdder();
+            ai.Add(2.0);
+            ai.Reset();
+            Assert.AreEqual(0.0, ai.Sum());
+        }
+
+        [Test]
+        public void SumThenResetReturnsSumAndSetsToZero()
+        {
+            DoubleAdder ai = new DoubleAdder();
+            ai.Add(2.0);
+            Assert.AreEqual(2.0, ai.SumThenReset());
+            Assert.AreEqual(0.0, ai.Sum());
+        }
+
+        [Test]
+        public void AddsFromMultipleThreadsAreNotLost()
+        {
+            DoubleAdder a = new DoubleAdder();
+            CountDownLatch go = new CountDownLatch(1);
+            for (int i = 0; i < _threads; i++)
+            {
+                ThreadManager.StartAndAssertRegistered("T" + i, () =>
+                    {
+                        go.Await();
+                        for (int j = 0; j < _incs; j++) a.Add(1.0);
+                    });
+            }
+            go.CountDown();
+            ThreadManager.JoinAndVerify(Delays.Long);
+            Assert.AreEqual((double) _threads * _incs, a.Sum());
+        }
+    }
+}
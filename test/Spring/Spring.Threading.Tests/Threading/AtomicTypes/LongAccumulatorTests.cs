@@ -0,0 +1,115 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+using System;
+using NUnit.CommonFixtures;
+using NUnit.Framework;
+
+namespace Spring.Threading.AtomicTypes
+{
+    /// <summary>
+    /// Unit tests for the LongAccumulator class
+    /// </summary>
+    [TestFixture]
+    public class LongAccumulatorTests : ThreadingTestFixture
+    {
+        private const int _threads = 4;
+        private const int _incs = 100000;
+
+        [Test]
+        public void ConstructorChokesOnNullFunction()
+        {
+            Assert.Throws<ArgumentNullException>(() => new LongAccumulator(null, 0L));
+        }
+
+        [Test]
+        public void DefaultValueIsIdentity()
+        {
+            LongAccumulator ai = new LongAccumulator(Math.Max, 0L);
+            Assert.AreEqual(0L, ai.Value);
+            ai = new LongAccumulator(Math.Max, long.MinValue);
+            Assert.AreEqual(long.MinValue, ai.Value);
+        }
+
+        [Test]
+        public void AccumulateUpdatesCurrentValue()
+        {
+            LongAccumulator ai = new LongAccumulator(Math.Max, 0L);
+            ai.Accumulate(2);
+            Assert.AreEqual(2L, ai.Value);
+            ai.Accumulate(-4);
+            Assert.AreEqual(2L, ai.Value);
+            ai.Accumulate(4);
+            Assert.AreEqual(4L, ai.Value);
+        }
+
+        [Test]
+        public void ResetSetsValueToIdentity()
+        {
+            LongAccumulator ai = new LongAccumulator(Math.Max, 0L);
+            ai.Accumulate(2);
+            Assert.AreEqual(2L, ai.Value);
+            ai.Reset();
+            Assert.AreEqual(0L, ai.Value);
+        }
+
+        [Test]
+        public void ReturnValueAndResetReturnsValueAndSetsToIdentity()
+        {
+            LongAccumulator ai = new LongAccumulator(Math.Max, 0L);
+            ai.Accumulate(2);
+            Assert.AreEqual(2L, ai.ReturnValueAndReset());
+            Assert.AreEqual(0L, ai.Value);
+        }
+
+        [Test]
+        public void ToStringReturnsCurrentValue()
+        {
+            LongAccumulator ai = new LongAccumulator(Math.Max, 0L);
+            Assert.AreEqual("0", ai.ToString());
+            ai.Accumulate(1);
+            Assert.AreEqual("1", ai.ToString());
+        }
+
+        [Test]
+        public void AccumulatesFromMultipleThreadsAreNotLost()
+        {
+            LongAccumulator acc = new LongAccumulator(Math.Max, 0L);
+            LongAccumulator sum = new LongAccumulator((x, y) => x + y, 0L);
+            CountDownLatch go = new CountDownLatch(1);
+            for (int i = 0; i < _threads; i++)
+            {
+                ThreadManager.StartAndAssertRegistered("T" + i, () =>
+                    {
+                        go.Await();
+                        for (int j = 1; j <= _incs; j++)
+                        {
+                            acc.Accumulate(j);
+                            sum.Accumulate(1);
+                        }
+                    });
+            }
+            go.CountDown();
+            ThreadManager.JoinAndVerify(Delays.Long);
+            Assert.AreEqual((long) _incs, acc.Value);
+            Assert.AreEqual((long) _threads * _incs, sum.Value);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+#region License
+
+/*
+ * Copyright (C) 2002-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#endregion
+
+using System.Threading;
+using NUnit.CommonFixtures;
+using NUnit.Framework;
+
+namespace Spring.Threading.AtomicTypes
+{
+    /// <summary>
+    /// Unit tests for the LongAdder class
+    /// </summary>
+    [TestFixture]
+    public class LongAdderTests : ThreadingTestFixture
+    {
+        private const int _threads = 4;
+        private const int _incs = 100000;
+
+        [Test]
+        public void DefaultConstructorHasZeroSum()
+        {
+            LongAdder ai = new LongAdder();
+            Assert.AreEqual(0L, ai.Sum());
+        }
+
+        [Test]
+        public void AddAddsGivenValueToCurrentSum()
+        {
+            LongAdder ai = new LongAdder();
+            ai.Add(2);
+            Assert.AreEqual(2L, ai.Sum());
+            ai.Add(-4);
+            Assert.AreEqual(-2L, ai.Sum());
+        }
+
+        [Test]
+        public void IncrementAndDecrement()
+        {
+            LongAdder ai = new LongAdder();
+            ai.Increment();
+            Assert.AreEqual(1L, ai.Sum());
+            ai.Increment();
+            Assert.AreEqual(2L, ai.Sum());
+            ai.Decrement();
+            ai.Decrement();
+            ai.Decrement();
+            Assert.AreEqual(-1L, ai.Sum());
+        }
+
+        [Test]
+        public void ResetSetsSumToZero()
+        {
+            LongAdder ai = new LongAdder();
+            ai.Add(2);
+            Assert.AreEqual(2L, ai.Sum());
+            ai.Reset();
+            Assert.AreEqual(0L, ai.Sum());
+        }
+
+        [Test]
+        public void SumThenResetReturnsSumAndSetsToZero()
+        {
+            LongAdder ai = new LongAdder();
+            ai.Add(2);
+            Assert.AreEqual(2L, ai.Sum());
+            Assert.AreEqual(2L, ai.SumThenReset());
+            Assert.AreEqual(0L, ai.Sum());
+        }
+
+        [Test]
+        public void ToStringReturnsCurrentSum()
+        {
+            LongAdder ai = new LongAdder();
+            Assert.AreEqual("0", ai.ToString());
+            ai.Increment();
+            Assert.AreEqual("1", ai.ToString());
+        }
+
+        [Test]
+        public void ImplicitConversionReturnsCurrentSum()
+        {
+            LongAdder ai = new LongAdder();
+            ai.Add(42);
+            long sum = ai;
+            Assert.AreEqual(42L, sum);
+        }
+
+        [Test]
+        public void AddsFromMultipleThreadsAreNotLost()
+        {
+            LongAdder a = new LongAdder();
+            CountDownLatch go = new CountDownLatch(1);
+            for (int i = 0; i < _threads; i++)
+            {
+                ThreadManager.StartAndAssertRegistered("T" + i, () =>
+                    {
+                        go.Await();
+                        for (int j = 0; j < _incs; j++)
+                        {
+                            a.Increment();
+                            if ((j & 0xff) == 0) Thread.Sleep(0);
+                        }
+                    });
+            }
+            go.CountDown();
+            ThreadManager.JoinAndVerify(Delays.Long);
+            Assert.AreEqual((long) _threads * _incs, a.Sum());
+            Assert.AreEqual((long) _threads * _incs, a.SumThenReset());
+            Assert.AreEqual(0L, a.Sum());
+        }
+    }
+}
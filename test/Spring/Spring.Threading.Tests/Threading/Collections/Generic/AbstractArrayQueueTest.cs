@@ -0,0 +1,199 @@
+﻿using System;
+using System.Collections.Generic;
+using System.Linq;
+using System.Threading;
+using NUnit.CommonFixtures;
+using NUnit.CommonFixtures.Collections;
+using NUnit.Framework;
+using Spring.TestFixtures.Threading.Collections.Generic;
+
+namespace Spring.Threading.Collections.Generic
+{
+    /// <summary>
+    /// Test cases shared by the subclasses of <see cref="AbstractArrayQueue{T}"/>
+    /// that are not covered by <see cref="BlockingQueueContract{T}"/>: the
+    /// construction, the slot indexing and the blocking operations under
+    /// each <see cref="IWaitStrategy"/>. Concurrent tests use no more
+    /// producers and consumers than the queue under test supports.
+    /// </summary>
+    /// <typeparam name="T"></typeparam>
+    public abstract class AbstractArrayQueueTest<T> : ThreadingTestFixture<T>
+    {
+        private const CollectionContractOptions _defaultContractOptions =
+            CollectionContractOptions.Fifo |
+            CollectionContractOptions.Bounded |
+            CollectionContractOptions.ToStringPrintItems |
+            CollectionContractOptions.WeaklyConsistentEnumerator;
+
+        protected static readonly Type[] WaitStrategyTypes =
+            {
+                typeof(YieldingWaitStrategy), typeof(SleepingWaitStrategy),
+                typeof(BlockingWaitStrategy), typeof(BusySpinWaitStrategy)
+            };
+
+        private readonly T[] _samples = TestData<T>.MakeTestArray(9);
+
+        protected abstract AbstractArrayQueue<TE> NewQueue<TE>(int capacity, IWaitStrategy waitStrategy);
+
+        protected abstract int MaxProducers { get; }
+
+        protected abstract int MaxConsumers { get; }
+
+        private AbstractArrayQueue<T> NewQueue(int capacity)
+        {
+            return NewQueue<T>(capacity, new SleepingWaitStrategy());
+        }
+
+        private static IWaitStrategy NewWaitStrategy(Type type)
+        {
+            return (IWaitStrategy) Activator.CreateInstance(type);
+        }
+
+
+        [Test] public void ConstructorChokesOnNonPositiveCapacity([Values(0, -1)] int capacity)
+        {
+            var e = Assert.Throws<ArgumentOutOfRangeException>(() => NewQueue(capacity));
+            Assert.That(e.ParamName, Is.EqualTo("capacity"));
+        }
+
+        [Test] public void ConstructorChokesOnNullWaitStrategy()
+        {
+            var e = Assert.Throws<ArgumentNullException>(() => NewQueue<T>(1, null));
+            Assert.That(e.ParamName, Is.EqualTo("waitStrategy"));
+        }
+
+        [Test] public void CapacityReturnsTheValueSetInConstructor([Values(1, 5, 8)] int capacity)
+        {
+            var q = NewQueue(capacity);
+            Assert.That(q.Capacity, Is.EqualTo(capacity));
+            Assert.That(q.RemainingCapacity, Is.EqualTo(capacity));
+            Assert.IsTrue(q.IsEmpty);
+        }
+
+        [Test] public void OfferFailsWhenFullAndPollReturnsElementsInFifoOrder([Values(5, 8)] int capacity)
+        {
+            var q = NewQueue(capacity);
+            // go around the array a few times
+            for (int lap = 0; lap < 3; lap++)
+            {
+                for (int i = 0; i < capacity; i++) Assert.IsTrue(q.Offer(_samples[i]));
+                Assert.IsFalse(q.Offer(_samples[0]));
+                Assert.That(q.Count, Is.EqualTo(capacity));
+                Assert.That(q.RemainingCapacity, Is.EqualTo(0));
+                CollectionAssert.AreEqual(_samples.Take(capacity).ToList(), q.ToList());
+                T value;
+                for (int i = 0; i < capacity; i++)
+                {
+                    Assert.IsTrue(q.Peek(out value));
+                    Assert.That(value, Is.EqualTo(_samples[i]));
+                    Assert.IsTrue(q.Poll(out value));
+                    Assert.That(value, Is.EqualTo(_samples[i]));
+                }
+                Assert.IsFalse(q.Poll(out value));
+                Assert.IsFalse(q.Peek(out value));
+                Assert.IsTrue(q.IsEmpty);
+            }
+        }
+
+        [Test] public void RemoveByElementIsNotSupported()
+        {
+            var q = NewQueue(2);
+            q.Add(_samples[0]);
+            Assert.Throws<NotSupportedException>(() => q.Remove(_samples[0]));
+        }
+
+        [Test] public void DrainChokesOnCriteria()
+        {
+            var q = NewQueue(2);
+            q.Add(_samples[0]);
+            var drained = new List<T>();
+            Assert.Throws<NotSupportedException>(() => q.Drain(drained.Add, e => true));
+            Assert.Throws<NotSupportedException>(() => q.DrainTo(drained, e => true));
+            Assert.That(q.Count, Is.EqualTo(1));
+        }
+
+        [Test] public void TimedOfferAndPollTimeOut([ValueSource("WaitStrategyTypes")] Type waitStrategy)
+        {
+            var q = NewQueue<T>(1, NewWaitStrategy(waitStrategy));
+            T value;
+            Assert.IsFalse(q.Poll(Delays.Short, out value));
+            q.Put(_samples[0]);
+            Assert.IsFalse(q.Offer(_samples[1], Delays.Short));
+            Assert.That(q.Take(), Is.EqualTo(_samples[0]));
+        }
+
+        [Test] public void TakeBlocksInterruptiblyWhenEmpty([ValueSource("WaitStrategyTypes")] Type waitStrategy)
+        {
+            var q = NewQueue<T>(1, NewWaitStrategy(waitStrategy));
+            Thread t = ThreadManager.StartAndAssertRegistered(
+                "T1", () => Assert.Throws<ThreadInterruptedException>(() => q.Take()));
+            Thread.Sleep(Delays.Short);
+            t.Interrupt();
+            ThreadManager.JoinAndVerify();
+        }
+
+        [Test] public void PutBlocksUntilTakeMakesSpace([ValueSource("WaitStrategyTypes")] Type waitStrategy)
+        {
+            var q = NewQueue<T>(1, NewWaitStrategy(waitStrategy));
+            q.Put(_samples[0]);
+            ThreadManager.StartAndAssertRegistered("T1", () => q.Put(_samples[1]));
+            Thread.Sleep(Delays.Short);
+            Assert.That(q.Take(), Is.EqualTo(_samples[0]));
+            ThreadManager.JoinAndVerify();
+            Assert.That(q.Take(), Is.EqualTo(_samples[1]));
+        }
+
+        [Test] public void BlockingTransferDeliversEveryElementOnce([ValueSource("WaitStrategyTypes")] Type waitStrategy)
+        {
+            const int perProducer = 20000;
+            var q = NewQueue<int>(64, NewWaitStrategy(waitStrategy));
+            int producers = MaxProducers;
+            int consumers = MaxConsumers;
+            int total = producers * perProducer;
+            var taken = new int[total];
+            var actions = new List<Action>();
+            for (int i = 0; i < producers; i++)
+            {
+                int first = i * perProducer;
+                actions.Add(() => { for (int k = 0; k < perProducer; k++) q.Put(first + k); });
+            }
+            for (int i = 0; i < consumers; i++)
+            {
+                int count = total / consumers + (i < total % consumers ? 1 : 0);
+                actions.Add(() => { for (int k = 0; k < count; k++) Interlocked.Increment(ref taken[q.Take()]); });
+            }
+            ThreadManager.StartAndAssertRegistered("T", actions.ToArray());
+            ThreadManager.JoinAndVerify(Delays.Long);
+            Assert.IsTrue(q.IsEmpty);
+            Assert.That(taken, Has.All.EqualTo(1));
+        }
+
+        [Test] public void SingleProducerSeesFifoOrderAcrossThreads()
+        {
+            const int count = 50000;
+            var q = NewQueue<int>(16, new YieldingWaitStrategy());
+            ThreadManager.StartAndAssertRegistered(
+                "T", () => { for (int k = 0; k < count; k++) q.Put(k); },
+                     () => { for (int k = 0; k < count; k++) Assert.That(q.Take(), Is.EqualTo(k)); });
+            ThreadManager.JoinAndVerify(Delays.Long);
+        }
+
+        /// <summary>
+        /// Runs <see cref="BlockingQueueContract{T}"/> against an array queue
+        /// of capacity <c>SampleSize</c>.
+        /// </summary>
+        public abstract class ArrayQueueContract : BlockingQueueContract<T>
+        {
+            protected ArrayQueueContract(CollectionContractOptions options)
+                : base(options | _defaultContractOptions)
+            {
+                NoRemoveByElement = true;
+            }
+
+            [Test] public override void DeserializedQueueIsSameAsOriginal()
+            {
+                SkipForCurrentQueueImplementation();
+            }
+        }
+    }
+}
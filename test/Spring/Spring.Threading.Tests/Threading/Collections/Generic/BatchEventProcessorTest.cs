@@ -0,0 +1,283 @@
+﻿using System;
+using System.Collections.Generic;
+using System.Threading;
+using NUnit.CommonFixtures;
+using NUnit.Framework;
+
+namespace Spring.Threading.Collections.Generic
+{
+    /// <summary>
+    /// Test cases for <see cref="BatchEventProcessor{T}"/> in the topologies
+    /// it is built for.
+    /// </summary>
+    [TestFixture] public class BatchEventProcessorTest : ThreadingTestFixture
+    {
+        private class ValueEvent
+        {
+            public long Value;
+            public long Doubled;
+            public long Negated;
+        }
+
+        /// <summary>
+        /// Records what it sees and optionally transforms the event.
+        /// </summary>
+        private class RecordingHandler : IEventHandler<ValueEvent>
+        {
+            private readonly Action<ValueEvent> _action;
+            public readonly List<long> Values = new List<long>();
+            public int Batches;
+            public long ExpectedSequence;
+            public long Sum;
+
+            public RecordingHandler() : this(null)
+            {
+            }
+
+            public RecordingHandler(Action<ValueEvent> action)
+            {
+                _action = action;
+            }
+
+            public void OnEvent(ValueEvent data, long sequence, bool endOfBatch)
+            {
+                Assert.That(sequence, Is.EqualTo(ExpectedSequence++));
+                if (_action != null) _action(data);
+                Values.Add(data.Value);
+                Sum += data.Value;
+                if (endOfBatch) Batches++;
+            }
+        }
+
+        private RingBuffer<ValueEvent> _ringBuffer;
+        private readonly List<BatchEventProcessor<ValueEvent>> _processors =
+            new List<BatchEventProcessor<ValueEvent>>();
+
+        [SetUp] public void SetUp()
+        {
+            NewRingBuffer(new BlockingWaitStrategy(), true);
+            _processors.Clear();
+        }
+
+        private void NewRingBuffer(IWaitStrategy waitStrategy, bool isMultiProducer)
+        {
+            _ringBuffer = new RingBuffer<ValueEvent>(() => new ValueEvent(), 16, waitStrategy, isMultiProducer);
+        }
+
+        private BatchEventProcessor<ValueEvent> NewProcessor(
+            IEventHandler<ValueEvent> handler, params Sequence[] sequencesToTrack)
+        {
+            var p = new BatchEventProcessor<ValueEvent>(
+                _ringBuffer, _ringBuffer.NewBarrier(sequencesToTrack), handler);
+            _processors.Add(p);
+            return p;
+        }
+
+        private void Start()
+        {
+            foreach (var p in _processors) ThreadManager.StartAndAssertRegistered("P", p.Run);
+        }
+
+        private void Publish(int count)
+        {
+            for (int i = 0; i < count; i++)
+            {
+                long sequence = _ringBuffer.Next();
+                _ringBuffer[sequence].Value = sequence;
+                _ringBuffer.Publish(sequence);
+            }
+        }
+
+        private void AwaitAndHalt(long lastSequence)
+        {
+            foreach (var p in _processors)
+            {
+                for (int i = 0; p.Sequence.Value < lastSequence; i++)
+                {
+                    Assert.That(i, Is.LessThan(Delays.Long.TotalMilliseconds), "processor stalled");
+                    Thread.Sleep(1);
+                }
+            }
+            foreach (var p in _processors) p.Halt();
+            ThreadManager.JoinAndVerify();
+            foreach (var p in _processors) Assert.IsFalse(p.IsRunning);
+        }
+
+        private static long SumTo(long count)
+        {
+            return count * (count - 1) / 2;
+        }
+
+        [Test] public void ConstructorChokesOnNullArgument()
+        {
+            var barrier = _ringBuffer.NewBarrier();
+            var handler = new RecordingHandler();
+            Assert.Throws<ArgumentNullException>(
+                () => new BatchEventProcessor<ValueEvent>(null, barrier, handler));
+            Assert.Throws<ArgumentNullException>(
+                () => new BatchEventProcessor<ValueEvent>(_ringBuffer, null, handler));
+            Assert.Throws<ArgumentNullException>(
+                () => new BatchEventProcessor<ValueEvent>(_ringBuffer, barrier, null));
+        }
+
+        [Test] public void UnicastProcessesEveryEventInOrder(
+            [Values(typeof(YieldingWaitStrategy), typeof(SleepingWaitStrategy), typeof(BlockingWaitStrategy),
+                    typeof(BusySpinWaitStrategy))] Type waitStrategy,
+            [Values(true, false)] bool isMultiProducer)
+        {
+            const int count = 10000;
+            NewRingBuffer((IWaitStrategy) Activator.CreateInstance(waitStrategy), isMultiProducer);
+            var handler = new RecordingHandler();
+            _ringBuffer.AddGatingSequences(NewProcessor(handler).Sequence);
+            Start();
+            Publish(count);
+            AwaitAndHalt(count - 1);
+            Assert.That(handler.Values.Count, Is.EqualTo(count));
+            Assert.That(handler.Sum, Is.EqualTo(SumTo(count)));
+        }
+
+        [Test] public void EndOfBatchMarksLastAvailableEvent()
+        {
+            var handler = new RecordingHandler();
+            var p = NewProcessor(handler);
+            _ringBuffer.AddGatingSequences(p.Sequence);
+            long hi = _ringBuffer.Next(5);
+            _ringBuffer.Publish(hi - 4, hi);
+            Start();
+            AwaitAndHalt(hi);
+            Assert.That(handler.Values.Count, Is.EqualTo(5));
+            Assert.That(handler.Batches, Is.EqualTo(1));
+        }
+
+        [Test] public void MulticastDeliversEveryEventToEveryProcessor()
+        {
+            const int count = 5000;
+            var handlers = new[] {new RecordingHandler(), new RecordingHandler(), new RecordingHandler()};
+            foreach (var h in handlers) _ringBuffer.AddGatingSequences(NewProcessor(h).Sequence);
+            Start();
+            Publish(count);
+            AwaitAndHalt(count - 1);
+            foreach (var h in handlers) Assert.That(h.Sum, Is.EqualTo(SumTo(count)));
+        }
+
+        [Test] public void ProcessorsCanShareOneBarrier()
+        {
+            const int count = 1000;
+            var barrier = _ringBuffer.NewBarrier();
+            var fast = new RecordingHandler();
+            var slow = new RecordingHandler(e => { if (e.Value == 0) Thread.Sleep(Delays.Short); });
+            foreach (var h in new[] {fast, slow})
+            {
+                var p = new BatchEventProcessor<ValueEvent>(_ringBuffer, barrier, h);
+                _processors.Add(p);
+                _ringBuffer.AddGatingSequences(p.Sequence);
+            }
+            Start();
+            Publish(count);
+            AwaitAndHalt(count - 1);
+            Assert.That(fast.Sum, Is.EqualTo(SumTo(count)));
+            Assert.That(slow.Sum, Is.EqualTo(SumTo(count)));
+        }
+
+        [Test] public void DiamondRunsJoinAfterBothBranches()
+        {
+            const int count = 5000;
+            var doubler = NewProcessor(new RecordingHandler(e => e.Doubled = e.Value * 2));
+            var negator = NewProcessor(new RecordingHandler(e => e.Negated = -e.Value));
+            var join = NewProcessor(new RecordingHandler(e =>
+            {
+                Assert.That(e.Doubled, Is.EqualTo(e.Value * 2));
+                Assert.That(e.Negated, Is.EqualTo(-e.Value));
+            }), doubler.Sequence, negator.Sequence);
+            _ringBuffer.AddGatingSequences(join.Sequence);
+            Start();
+            Publish(count);
+            AwaitAndHalt(count - 1);
+        }
+
+        [Test] public void ConcurrentProducersAreAllProcessed()
+        {
+            const int perProducer = 5000;
+            var handler = new RecordingHandler();
+            _ringBuffer.AddGatingSequences(NewProcessor(handler).Sequence);
+            Start();
+            Action producer = () => Publish(perProducer);
+            ThreadManager.StartAndAssertRegistered("T", producer, producer, producer);
+            AwaitAndHalt(3 * perProducer - 1);
+            Assert.That(handler.Sum, Is.EqualTo(SumTo(3 * perProducer)));
+        }
+
+        [Test] public void HaltStopsIdleProcessorAndRunCanBeRestarted()
+        {
+            var handler = new RecordingHandler();
+            var p = NewProcessor(handler);
+            _ringBuffer.AddGatingSequences(p.Sequence);
+            Start();
+            Thread.Sleep(Delays.Short);
+            Assert.IsTrue(p.IsRunning);
+            AwaitAndHalt(Sequence.InitialValue);
+            Publish(3);
+            Start();
+            AwaitAndHalt(2);
+            Assert.That(handler.Values.Count, Is.EqualTo(3));
+        }
+
+        [Test] public void HaltBeforeRunMakesThatRunReturnAtOnce()
+        {
+            var handler = new RecordingHandler();
+            var p = NewProcessor(handler);
+            _ringBuffer.AddGatingSequences(p.Sequence);
+            Publish(3);
+            p.Halt();
+            Start();
+            ThreadManager.JoinAndVerify();
+            Assert.IsFalse(p.IsRunning);
+            Assert.That(handler.Values.Count, Is.EqualTo(0));
+            Start();
+            AwaitAndHalt(2);
+            Assert.That(handler.Values.Count, Is.EqualTo(3));
+        }
+
+        [Test] public void RunChokesWhenAlreadyRunning()
+        {
+            var p = NewProcessor(new RecordingHandler());
+            Start();
+            Thread.Sleep(Delays.Short);
+            Assert.Throws<InvalidOperationException>(p.Run);
+            AwaitAndHalt(Sequence.InitialValue);
+        }
+
+        [Test] public void RunChokesWhileHaltedRunFinishesItsBatch()
+        {
+            var entered = new ManualResetEvent(false);
+            var proceed = new ManualResetEvent(false);
+            var handler = new RecordingHandler(e => { entered.Set(); proceed.WaitOne(); });
+            var p = NewProcessor(handler);
+            _ringBuffer.AddGatingSequences(p.Sequence);
+            Start();
+            Publish(1);
+            Assert.IsTrue(entered.WaitOne(Delays.Long));
+            p.Halt();
+            Assert.IsTrue(p.IsRunning);
+            Assert.Throws<InvalidOperationException>(p.Run);
+            Assert.Throws<InvalidOperationException>(p.Run);
+            proceed.Set();
+            ThreadManager.JoinAndVerify();
+            Assert.IsFalse(p.IsRunning);
+            Assert.That(p.Sequence.Value, Is.EqualTo(0L));
+            Assert.That(handler.Values.Count, Is.EqualTo(1));
+        }
+
+        [Test] public void HandlerExceptionEndsRunAtLastCompleteBatch()
+        {
+            var handler = new RecordingHandler(e => { if (e.Value == 2) throw new InvalidOperationException(); });
+            var p = NewProcessor(handler);
+            _ringBuffer.AddGatingSequences(p.Sequence);
+            Publish(3);
+            Assert.Throws<InvalidOperationException>(p.Run);
+            Assert.IsFalse(p.IsRunning);
+            Assert.That(p.Sequence.Value, Is.EqualTo(Sequence.InitialValue));
+            Assert.That(handler.Values.Count, Is.EqualTo(2));
+        }
+    }
+}
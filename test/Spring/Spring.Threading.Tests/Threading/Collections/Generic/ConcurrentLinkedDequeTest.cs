@@ -0,0 +1,226 @@
+﻿using System;
+using System.Collections.Generic;
+using System.Linq;
+using System.Threading;
+using NUnit.CommonFixtures;
+using NUnit.CommonFixtures.Collections;
+using NUnit.CommonFixtures.Threading;
+using NUnit.Framework;
+using Spring.Collections.Generic;
+using Spring.TestFixtures.Collections.Generic;
+
+namespace Spring.Threading.Collections.Generic
+{
+    /// <summary>
+    /// Test cases for <see cref="ConcurrentLinkedDeque{T}"/>
+    /// </summary>
+    /// <typeparam name="T"></typeparam>
+    /// <author>Doug Lea</author>
+    [TestFixture(typeof(string))]
+    [TestFixture(typeof(int))]
+    public class ConcurrentLinkedDequeTest<T> : QueueContract<T>
+    {
+        private TestThreadManager ThreadManager { get; set; }
+
+        public ConcurrentLinkedDequeTest() : base(
+            CollectionContractOptions.Fifo |
+            CollectionContractOptions.ToStringPrintItems |
+            CollectionContractOptions.WeaklyConsistentEnumerator)
+        {
+        }
+
+        protected override IQueue<T> NewQueue()
+        {
+            return new ConcurrentLinkedDeque<T>();
+        }
+
+        protected override IQueue<T> NewQueueFilledWithSample()
+        {
+            return new ConcurrentLinkedDeque<T>(TestData<T>.MakeTestArray(SampleSize));
+        }
+
+        [SetUp] public void SetUpThreadManager()
+        {
+            ThreadManager = new TestThreadManager();
+        }
+
+        [TearDown] public void TearDownThreadManager()
+        {
+            ThreadManager.TearDown(true);
+        }
+
+        [Test] public void ConstructorCreatesDequeWithUnlimitedCapacity()
+        {
+            var deque = new ConcurrentLinkedDeque<T>();
+            Assert.AreEqual(int.MaxValue, deque.RemainingCapacity);
+            Assert.AreEqual(int.MaxValue, deque.Capacity);
+            Assert.IsTrue(deque.IsEmpty);
+            Assert.AreEqual(0, deque.Count);
+        }
+
+        [Test] public void ConstructorChokesOnNullCollectionArgument()
+        {
+            var e = Assert.Throws<ArgumentNullException>(
+                () => { new ConcurrentLinkedDeque<T>(null); });
+            Assert.That(e.ParamName, Is.EqualTo("collection"));
+        }
+
+        [Test] public void ConstructorCreatesDequeConstainsAllElementsInCollection()
+        {
+            var deque = new ConcurrentLinkedDeque<T>(Samples);
+            CollectionAssert.AreEqual(Samples, deque.ToList());
+        }
+
+        [Test] public void AddFirstAndPollFirstBehaveAsStack()
+        {
+            var deque = new ConcurrentLinkedDeque<T>();
+            foreach (T sample in Samples) deque.Push(sample);
+            foreach (T sample in Samples.Reverse())
+            {
+                Assert.That(deque.GetFirst(), Is.EqualTo(sample));
+                Assert.That(deque.Pop(), Is.EqualTo(sample));
+            }
+            Assert.IsTrue(deque.IsEmpty);
+        }
+
+        [Test] public void OfferFirstAndOfferLastInsertAtEachEnd()
+        {
+            var deque = new ConcurrentLinkedDeque<T>();
+            Assert.IsTrue(deque.OfferFirst(TestData<T>.Two));
+            Assert.IsTrue(deque.OfferLast(TestData<T>.Three));
+            Assert.IsTrue(deque.OfferFirst(TestData<T>.One));
+            CollectionAssert.AreEqual(
+                new[] {TestData<T>.One, TestData<T>.Two, TestData<T>.Three}, deque.ToList());
+        }
+
+        [Test] public void PollLastRetrievesElementsFromTail()
+        {
+            var deque = new ConcurrentLinkedDeque<T>(Samples);
+            T value;
+            foreach (T sample in Samples.Reverse())
+            {
+                Assert.IsTrue(deque.PeekLast(out value));
+                Assert.That(value, Is.EqualTo(sample));
+                Assert.IsTrue(deque.PollLast(out value));
+                Assert.That(value, Is.EqualTo(sample));
+            }
+            Assert.IsFalse(deque.PollLast(out value));
+            Assert.IsFalse(deque.PeekLast(out value));
+        }
+
+        [Test] public void RemoveAndGetChokeWhenDequeIsEmpty()
+        {
+            var deque = new ConcurrentLinkedDeque<T>();
+            Assert.Throws<InvalidOperationException>(() => deque.RemoveFirst());
+            Assert.Throws<InvalidOperationException>(() => deque.RemoveLast());
+            Assert.Throws<InvalidOperationException>(() => deque.GetFirst());
+            Assert.Throws<InvalidOperationException>(() => deque.GetLast());
+            Assert.Throws<InvalidOperationException>(() => deque.Pop());
+        }
+
+        [Test] public void OfferAndPollWelcomeDefaultValue()
+        {
+            var deque = new ConcurrentLinkedDeque<T>();
+            deque.AddFirst(default(T));
+            Assert.IsFalse(deque.IsEmpty);
+            Assert.IsTrue(deque.Contains(default(T)));
+            Assert.That(deque.RemoveLast(), Is.EqualTo(default(T)));
+            Assert.IsTrue(deque.IsEmpty);
+        }
+
+        [Test] public void RemoveOccurrenceRemovesFromRequestedEnd()
+        {
+            var deque = new ConcurrentLinkedDeque<T>();
+            deque.AddLast(TestData<T>.One);
+            deque.AddLast(TestData<T>.Two);
+            deque.AddLast(TestData<T>.One);
+            deque.AddLast(TestData<T>.Two);
+            Assert.IsTrue(deque.RemoveFirstOccurrence(TestData<T>.One));
+            Assert.IsTrue(deque.RemoveLastOccurrence(TestData<T>.Two));
+            CollectionAssert.AreEqual(new[] {TestData<T>.Two, TestData<T>.One}, deque.ToList());
+            Assert.IsFalse(deque.RemoveFirstOccurrence(TestData<T>.Three));
+            Assert.IsFalse(deque.RemoveLastOccurrence(TestData<T>.Three));
+        }
+
+        [Test] public void RemoveByElementUnlinksInteriorElement()
+        {
+            var deque = new ConcurrentLinkedDeque<T>(Samples);
+            int index = Samples.Length / 2;
+            Assert.IsTrue(deque.Remove(Samples[index]));
+            Assert.IsFalse(deque.Contains(Samples[index]));
+            Assert.AreEqual(Samples.Length - 1, deque.Count);
+            CollectionAssert.AreEqual(Samples.Where((e, i) => i != index).ToList(), deque.ToList());
+        }
+
+        [Test] public void DescendingEnumeratorTraversesFromTail()
+        {
+            var deque = new ConcurrentLinkedDeque<T>(Samples);
+            var result = new List<T>();
+            var e = deque.GetDescendingEnumerator();
+            while (e.MoveNext()) result.Add(e.Current);
+            CollectionAssert.AreEqual(Samples.Reverse().ToList(), result);
+        }
+
+        [Test] public void EnumeratorSkipsElementsRemovedDuringEnumeration()
+        {
+            var deque = new ConcurrentLinkedDeque<T>(Samples);
+            var e = deque.GetEnumerator();
+            Assert.IsTrue(e.MoveNext());
+            Assert.That(e.Current, Is.EqualTo(Samples[0]));
+            deque.RemoveFirst();
+            deque.RemoveFirst();
+            deque.RemoveLast();
+            var rest = new List<T>();
+            while (e.MoveNext()) rest.Add(e.Current);
+            CollectionAssert.AreEqual(Samples.Skip(2).Take(Samples.Length - 3).ToList(), rest);
+        }
+
+        [Test] public void DrainWithCriteriaRemovesOnlyMatchingElements()
+        {
+            var deque = new ConcurrentLinkedDeque<T>(Samples);
+            var drained = new List<T>();
+            int n = deque.Drain(drained.Add, e => !Equals(e, Samples[1]));
+            Assert.AreEqual(Samples.Length - 1, n);
+            CollectionAssert.AreEqual(Samples.Where((e, i) => i != 1).ToList(), drained);
+            Assert.AreEqual(1, deque.Count);
+            Assert.IsTrue(deque.Contains(Samples[1]));
+        }
+
+        [Test] public void ConcurrentPushAndPopAtBothEndsTransferEveryElementOnce()
+        {
+            const int pairs = 2;
+            const int perProducer = 10000;
+            var deque = new ConcurrentLinkedDeque<int>();
+            var taken = new int[pairs * 2 * perProducer];
+            int remaining = taken.Length;
+            var actions = new List<Action>();
+            for (int i = 0; i < pairs * 2; i++)
+            {
+                int first = i * perProducer;
+                bool front = (i & 1) == 0;
+                actions.Add(delegate
+                                {
+                                    for (int k = 0; k < perProducer; k++)
+                                    {
+                                        if (front) deque.AddFirst(first + k);
+                                        else deque.AddLast(first + k);
+                                    }
+                                });
+                actions.Add(delegate
+                                {
+                                    int x;
+                                    while (Thread.VolatileRead(ref remaining) > 0)
+                                    {
+                                        if (!(front ? deque.PollFirst(out x) : deque.PollLast(out x))) continue;
+                                        Interlocked.Increment(ref taken[x]);
+                                        Interlocked.Decrement(ref remaining);
+                                    }
+                                });
+            }
+            ThreadManager.StartAndAssertRegistered("T", actions.ToArray());
+            ThreadManager.JoinAndVerify(Delays.Long);
+            Assert.IsTrue(deque.IsEmpty);
+            Assert.That(taken, Has.All.EqualTo(1));
+        }
+    }
+}
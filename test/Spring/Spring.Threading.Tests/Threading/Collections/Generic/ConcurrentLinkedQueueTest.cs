@@ -0,0 +1,168 @@
+﻿using System;
+using System.Collections.Generic;
+using System.Linq;
+using System.Threading;
+using NUnit.CommonFixtures;
+using NUnit.CommonFixtures.Collections;
+using NUnit.CommonFixtures.Threading;
+using NUnit.Framework;
+using Spring.Collections.Generic;
+using Spring.TestFixtures.Collections.Generic;
+
+namespace Spring.Threading.Collections.Generic
+{
+    /// <summary>
+    /// Test cases for <see cref="ConcurrentLinkedQueue{T}"/>
+    /// </summary>
+    /// <typeparam name="T"></typeparam>
+    /// <author>Doug Lea</author>
+    [TestFixture(typeof(string))]
+    [TestFixture(typeof(int))]
+    public class ConcurrentLinkedQueueTest<T> : QueueContract<T>
+    {
+        private TestThreadManager ThreadManager { get; set; }
+
+        public ConcurrentLinkedQueueTest() : base(
+            CollectionContractOptions.Fifo |
+            CollectionContractOptions.ToStringPrintItems |
+            CollectionContractOptions.WeaklyConsistentEnumerator)
+        {
+        }
+
+        protected override IQueue<T> NewQueue()
+        {
+            return new ConcurrentLinkedQueue<T>();
+        }
+
+        protected override IQueue<T> NewQueueFilledWithSample()
+        {
+            return new ConcurrentLinkedQueue<T>(TestData<T>.MakeTestArray(SampleSize));
+        }
+
+        [SetUp] public void SetUpThreadManager()
+        {
+            ThreadManager = new TestThreadManager();
+        }
+
+        [TearDown] public void TearDownThreadManager()
+        {
+            ThreadManager.TearDown(true);
+        }
+
+        [Test] public void ConstructorCreatesQueueWithUnlimitedCapacity()
+        {
+            var queue = new ConcurrentLinkedQueue<T>();
+            Assert.AreEqual(int.MaxValue, queue.RemainingCapacity);
+            Assert.AreEqual(int.MaxValue, queue.Capacity);
+            Assert.IsTrue(queue.IsEmpty);
+            Assert.AreEqual(0, queue.Count);
+        }
+
+        [Test] public void ConstructorChokesOnNullCollectionArgument()
+        {
+            var e = Assert.Throws<ArgumentNullException>(
+                () => { new ConcurrentLinkedQueue<T>(null); });
+            Assert.That(e.ParamName, Is.EqualTo("collection"));
+        }
+
+        [Test] public void ConstructorCreatesQueueConstainsAllElementsInCollection()
+        {
+            var q = new ConcurrentLinkedQueue<T>(Samples);
+            foreach (T sample in Samples)
+            {
+                T value;
+                Assert.IsTrue(q.Poll(out value));
+                Assert.That(value, Is.EqualTo(sample));
+            }
+            Assert.IsTrue(q.IsEmpty);
+        }
+
+        [Test] public void OfferAndPollWelcomeDefaultValue()
+        {
+            var q = new ConcurrentLinkedQueue<T>();
+            Assert.IsTrue(q.Offer(default(T)));
+            Assert.IsFalse(q.IsEmpty);
+            Assert.IsTrue(q.Contains(default(T)));
+            T value;
+            Assert.IsTrue(q.Peek(out value));
+            Assert.That(value, Is.EqualTo(default(T)));
+            Assert.IsTrue(q.Poll(out value));
+            Assert.That(value, Is.EqualTo(default(T)));
+            Assert.IsTrue(q.IsEmpty);
+        }
+
+        [Test] public void RemoveByElementUnlinksInteriorElement()
+        {
+            var q = new ConcurrentLinkedQueue<T>(Samples);
+            int index = Samples.Length / 2;
+            Assert.IsTrue(q.Remove(Samples[index]));
+            Assert.IsFalse(q.Contains(Samples[index]));
+            Assert.AreEqual(Samples.Length - 1, q.Count);
+            CollectionAssert.AreEqual(Samples.Where((e, i) => i != index).ToList(), q.ToList());
+            Assert.IsFalse(q.Remove(Samples[index]));
+        }
+
+        [Test] public void RemoveByElementOfLastElementKeepsQueueUsable()
+        {
+            var q = new ConcurrentLinkedQueue<T>(Samples);
+            Assert.IsTrue(q.Remove(Samples[Samples.Length - 1]));
+            q.Offer(Samples[Samples.Length - 1]);
+            CollectionAssert.AreEqual(Samples, q.ToList());
+        }
+
+        [Test] public void EnumeratorSkipsElementsPolledDuringEnumeration()
+        {
+            var q = new ConcurrentLinkedQueue<T>(Samples);
+            var e = q.GetEnumerator();
+            Assert.IsTrue(e.MoveNext());
+            Assert.That(e.Current, Is.EqualTo(Samples[0]));
+            T value;
+            q.Poll(out value);
+            q.Poll(out value);
+            q.Poll(out value);
+            var rest = new List<T>();
+            while (e.MoveNext()) rest.Add(e.Current);
+            CollectionAssert.AreEqual(Samples.Skip(3).ToList(), rest);
+        }
+
+        [Test] public void DrainWithCriteriaRemovesOnlyMatchingElements()
+        {
+            var q = new ConcurrentLinkedQueue<T>(Samples);
+            var drained = new List<T>();
+            int n = q.Drain(drained.Add, e => !Equals(e, Samples[1]));
+            Assert.AreEqual(Samples.Length - 1, n);
+            CollectionAssert.AreEqual(Samples.Where((e, i) => i != 1).ToList(), drained);
+            Assert.AreEqual(1, q.Count);
+            Assert.IsTrue(q.Contains(Samples[1]));
+        }
+
+        [Test] public void ConcurrentProducersAndConsumersTransferEveryElementOnce()
+        {
+            const int producers = 4;
+            const int perProducer = 10000;
+            var q = new ConcurrentLinkedQueue<int>();
+            var taken = new int[producers * perProducer];
+            int remaining = taken.Length;
+            var actions = new List<Action>();
+            for (int i = 0; i < producers; i++)
+            {
+                int first = i * perProducer;
+                actions.Add(() => { for (int k = 0; k < perProducer; k++) q.Offer(first + k); });
+                actions.Add(delegate
+                                {
+                                    int x;
+                                    while (Thread.VolatileRead(ref remaining) > 0)
+                                    {
+                                        if (!q.Poll(out x)) continue;
+                                        Interlocked.Increment(ref taken[x]);
+                                        Interlocked.Decrement(ref remaining);
+                                    }
+                                });
+            }
+            ThreadManager.StartAndAssertRegistered("T", actions.ToArray());
+            ThreadManager.JoinAndVerify(Delays.Long);
+            Assert.IsTrue(q.IsEmpty);
+            Assert.That(taken, Has.All.EqualTo(1));
+        }
+    }
+}
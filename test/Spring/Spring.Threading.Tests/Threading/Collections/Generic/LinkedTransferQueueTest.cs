@@ -0,0 +1,203 @@
+﻿using System;
+using System.Collections.Generic;
+using System.Threading;
+using NUnit.CommonFixtures;
+using NUnit.CommonFixtures.Collections;
+using NUnit.Framework;
+using Spring.Threading.AtomicTypes;
+using Spring.Threading.Execution;
+using Spring.TestFixtures.Threading.Collections.Generic;
+
+namespace Spring.Threading.Collections.Generic
+{
+    /// <summary>
+    /// Test cases for <see cref="LinkedTransferQueue{T}"/>
+    /// </summary>
+    /// <typeparam name="T"></typeparam>
+    /// <author>Doug Lea</author>
+    [TestFixture(typeof(string))]
+    [TestFixture(typeof(int))]
+    public class LinkedTransferQueueTest<T> : BlockingQueueContract<T>
+    {
+        public LinkedTransferQueueTest() : base(
+            CollectionContractOptions.Fifo |
+            CollectionContractOptions.ToStringPrintItems |
+            CollectionContractOptions.WeaklyConsistentEnumerator)
+        {
+        }
+
+        protected override IBlockingQueue<T> NewBlockingQueue()
+        {
+            return new LinkedTransferQueue<T>();
+        }
+
+        [Test] public void ConstructorCreatesQueueWithUnlimitedCapacity()
+        {
+            var queue = new LinkedTransferQueue<T>();
+            Assert.AreEqual(int.MaxValue, queue.RemainingCapacity);
+            Assert.AreEqual(int.MaxValue, queue.Capacity);
+            Assert.IsTrue(queue.IsEmpty);
+            Assert.IsFalse(queue.HasWaitingConsumer);
+        }
+
+        [Test] public void ConstructorChokesOnNullCollectionArgument()
+        {
+            var e = Assert.Throws<ArgumentNullException>(
+                () => { new LinkedTransferQueue<T>(null); });
+            Assert.That(e.ParamName, Is.EqualTo("collection"));
+        }
+
+        [Test] public void ConstructorCreatesQueueConstainsAllElementsInCollection()
+        {
+            var q = new LinkedTransferQueue<T>(Samples);
+            foreach (T sample in Samples)
+            {
+                T value;
+                Assert.IsTrue(q.Poll(out value));
+                Assert.That(value, Is.EqualTo(sample));
+            }
+        }
+
+        [Test] public void TryTransferFailsWithoutWaitingConsumerAndLeavesQueueEmpty()
+        {
+            var q = new LinkedTransferQueue<T>();
+            Assert.IsFalse(q.TryTransfer(TestData<T>.One));
+            Assert.IsFalse(q.HasWaitingConsumer);
+            Assert.IsTrue(q.IsEmpty);
+            Assert.AreEqual(0, q.Count);
+        }
+
+        [Test] public void TryTransferHandsElementToWaitingConsumer()
+        {
+            var q = new LinkedTransferQueue<T>();
+            ThreadManager.StartAndAssertRegistered(
+                "T1", () => Assert.That(q.Take(), Is.EqualTo(TestData<T>.One)));
+            Thread.Sleep(Delays.Short);
+            Assert.IsTrue(q.HasWaitingConsumer);
+            Assert.AreEqual(1, q.WaitingConsumerCount);
+            Assert.AreEqual(0, q.Count);
+            Assert.IsTrue(q.TryTransfer(TestData<T>.One));
+            ThreadManager.JoinAndVerify();
+            Assert.IsFalse(q.HasWaitingConsumer);
+            Assert.IsTrue(q.IsEmpty);
+        }
+
+        [Test] public void TransferWaitsUntilElementIsTaken()
+        {
+            var q = new LinkedTransferQueue<T>();
+            var transferred = new AtomicBoolean();
+            ThreadManager.StartAndAssertRegistered(
+                "T1", () =>
+                          {
+                              q.Transfer(TestData<T>.Two);
+                              transferred.Value = true;
+                          });
+            Thread.Sleep(Delays.Short);
+            Assert.IsFalse(transferred.Value);
+            Assert.AreEqual(1, q.Count);
+            T value;
+            Assert.IsTrue(q.Peek(out value));
+            Assert.That(value, Is.EqualTo(TestData<T>.Two));
+            Assert.That(q.Take(), Is.EqualTo(TestData<T>.Two));
+            ThreadManager.JoinAndVerify();
+            Assert.IsTrue(transferred.Value);
+            Assert.IsTrue(q.IsEmpty);
+        }
+
+        [Test] public void TransferIsInterruptibleAndLeavesNothingBehind()
+        {
+            var q = new LinkedTransferQueue<T>();
+            Thread t = ThreadManager.StartAndAssertRegistered(
+                "T1", () => Assert.Throws<ThreadInterruptedException>(() => q.Transfer(TestData<T>.One)));
+            Thread.Sleep(Delays.Short);
+            t.Interrupt();
+            ThreadManager.JoinAndVerify();
+            Assert.IsTrue(q.IsEmpty);
+            Assert.AreEqual(0, q.Count);
+        }
+
+        [Test] public void TimedTryTransferTimesOutAndLeavesNothingBehind()
+        {
+            var q = new LinkedTransferQueue<T>();
+            Assert.IsFalse(q.TryTransfer(TestData<T>.One, Delays.Short));
+            Assert.IsTrue(q.IsEmpty);
+            q.Put(TestData<T>.Two);
+            Assert.That(q.Take(), Is.EqualTo(TestData<T>.Two));
+        }
+
+        [Test] public void TimedTryTransferSucceedsWhenTakenInTime()
+        {
+            var q = new LinkedTransferQueue<T>();
+            ThreadManager.StartAndAssertRegistered(
+                "T1", () => Assert.IsTrue(q.TryTransfer(TestData<T>.Three, Delays.Long)));
+            Assert.That(q.Take(), Is.EqualTo(TestData<T>.Three));
+            ThreadManager.JoinAndVerify();
+        }
+
+        [Test] public void TimedTryTransferAllowsLongWait()
+        {
+            var q = new LinkedTransferQueue<T>();
+            ThreadManager.StartAndAssertRegistered(
+                "T1", () => Assert.IsTrue(q.TryTransfer(TestData<T>.Three, TimeSpan.MaxValue)));
+            Thread.Sleep(Delays.Short);
+            Assert.That(q.Take(), Is.EqualTo(TestData<T>.Three));
+            ThreadManager.JoinAndVerify();
+        }
+
+        [Test] public void RemoveReleasesWaitingTransfer()
+        {
+            var q = new LinkedTransferQueue<T>();
+            ThreadManager.StartAndAssertRegistered("T1", () => q.Transfer(TestData<T>.MakeData(4)));
+            Thread.Sleep(Delays.Short);
+            Assert.IsTrue(q.Remove(TestData<T>.MakeData(4)));
+            ThreadManager.JoinAndVerify();
+            Assert.IsTrue(q.IsEmpty);
+        }
+
+        [Test] public void ManyProducersAndConsumersTransferEveryElementOnce()
+        {
+            const int pairs = 4;
+            const int perProducer = 5000;
+            var q = new LinkedTransferQueue<int>();
+            var taken = new int[pairs * perProducer];
+            var actions = new List<Action>();
+            for (int i = 0; i < pairs; i++)
+            {
+                int first = i * perProducer;
+                bool sync = (i & 1) == 0;
+                actions.Add(delegate
+                                {
+                                    for (int k = 0; k < perProducer; k++)
+                                    {
+                                        if (sync) q.Transfer(first + k);
+                                        else q.Put(first + k);
+                                    }
+                                });
+                actions.Add(delegate
+                                {
+                                    for (int k = 0; k < perProducer; k++) Interlocked.Increment(ref taken[q.Take()]);
+                                });
+            }
+            ThreadManager.StartAndAssertRegistered("T", actions.ToArray());
+            ThreadManager.JoinAndVerify(Delays.Long);
+            Assert.IsTrue(q.IsEmpty);
+            Assert.That(taken, Has.All.EqualTo(1));
+        }
+
+        [Test] public void WorksAsThreadPoolExecutorWorkQueue()
+        {
+            var executor = new ThreadPoolExecutor(2, 2, Delays.Long, new LinkedTransferQueue<IRunnable>());
+            try
+            {
+                const int tasks = 100;
+                var done = new CountDownLatch(tasks);
+                for (int i = 0; i < tasks; i++) executor.Execute(done.CountDown);
+                Assert.IsTrue(done.Await(Delays.Long));
+            }
+            finally
+            {
+                executor.ShutdownNow();
+            }
+        }
+    }
+}
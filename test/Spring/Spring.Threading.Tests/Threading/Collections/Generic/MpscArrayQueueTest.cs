@@ -0,0 +1,48 @@
+﻿using NUnit.CommonFixtures.Collections;
+using NUnit.Framework;
+using Spring.TestFixtures.Threading.Collections.Generic;
+
+namespace Spring.Threading.Collections.Generic
+{
+    /// <summary>
+    /// Test cases for <see cref="MpscArrayQueue{T}"/>
+    /// </summary>
+    /// <typeparam name="T"></typeparam>
+    [TestFixture(typeof(string))]
+    [TestFixture(typeof(int))]
+    public class MpscArrayQueueTest<T> : AbstractArrayQueueTest<T>
+    {
+        protected override AbstractArrayQueue<TE> NewQueue<TE>(int capacity, IWaitStrategy waitStrategy)
+        {
+            return new MpscArrayQueue<TE>(capacity, waitStrategy);
+        }
+
+        protected override int MaxProducers
+        {
+            get { return 4; }
+        }
+
+        protected override int MaxConsumers
+        {
+            get { return 1; }
+        }
+
+        [Test] public void DefaultConstructorWaitsBySleeping()
+        {
+            Assert.That(new MpscArrayQueue<T>(1).WaitStrategy, Is.InstanceOf<SleepingWaitStrategy>());
+        }
+
+        [TestFixture(typeof(string))]
+        [TestFixture(typeof(int))]
+        public class AsGeneric : ArrayQueueContract
+        {
+            public AsGeneric() : this(0) {}
+            public AsGeneric(CollectionContractOptions options) : base(options) { }
+
+            protected override IBlockingQueue<T> NewBlockingQueue()
+            {
+                return new MpscArrayQueue<T>(SampleSize);
+            }
+        }
+    }
+}
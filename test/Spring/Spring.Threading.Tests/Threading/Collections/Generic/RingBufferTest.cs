@@ -0,0 +1,222 @@
+﻿using System;
+using System.Threading;
+using NUnit.CommonFixtures;
+using NUnit.Framework;
+
+namespace Spring.Threading.Collections.Generic
+{
+    /// <summary>
+    /// Test cases for <see cref="RingBuffer{T}"/>.
+    /// </summary>
+    [TestFixture] public class RingBufferTest : ThreadingTestFixture
+    {
+        private class ValueEvent
+        {
+            public long Value;
+        }
+
+        private static RingBuffer<ValueEvent> NewRingBuffer(int bufferSize, bool isMultiProducer)
+        {
+            return new RingBuffer<ValueEvent>(() => new ValueEvent(), bufferSize,
+                new SleepingWaitStrategy(), isMultiProducer);
+        }
+
+        [Test] public void ConstructorChokesOnNullEventFactory()
+        {
+            var e = Assert.Throws<ArgumentNullException>(() => new RingBuffer<ValueEvent>(null, 4));
+            Assert.That(e.ParamName, Is.EqualTo("eventFactory"));
+        }
+
+        [Test] public void ConstructorChokesOnNullWaitStrategy()
+        {
+            var e = Assert.Throws<ArgumentNullException>(
+                () => new RingBuffer<ValueEvent>(() => new ValueEvent(), 4, null, true));
+            Assert.That(e.ParamName, Is.EqualTo("waitStrategy"));
+        }
+
+        [Test] public void ConstructorChokesOnBufferSizeNotPowerOfTwo([Values(0, -1, 3, 6)] int bufferSize)
+        {
+            var e = Assert.Throws<ArgumentOutOfRangeException>(
+                () => new RingBuffer<ValueEvent>(() => new ValueEvent(), bufferSize));
+            Assert.That(e.ParamName, Is.EqualTo("bufferSize"));
+        }
+
+        [Test] public void ConstructorPreallocatesEvents()
+        {
+            int created = 0;
+            var rb = new RingBuffer<ValueEvent>(() => { created++; return new ValueEvent(); }, 8);
+            Assert.That(created, Is.EqualTo(8));
+            Assert.That(rb.BufferSize, Is.EqualTo(8));
+            Assert.That(rb.Cursor, Is.EqualTo(Sequence.InitialValue));
+            Assert.That(rb[8], Is.SameAs(rb[0]));
+        }
+
+        [Test] public void NextChokesOnBadBatchSize([Values(0, 5)] int n)
+        {
+            var rb = NewRingBuffer(4, true);
+            long sequence;
+            Assert.Throws<ArgumentOutOfRangeException>(() => rb.Next(n));
+            Assert.Throws<ArgumentOutOfRangeException>(() => rb.TryNext(n, out sequence));
+        }
+
+        [Test] public void ClaimedEventIsPublishedOnlyWhenPublished([Values(true, false)] bool isMultiProducer)
+        {
+            var rb = NewRingBuffer(4, isMultiProducer);
+            long sequence = rb.Next();
+            Assert.That(sequence, Is.EqualTo(0));
+            Assert.IsFalse(rb.IsPublished(sequence));
+            rb[sequence].Value = 42;
+            rb.Publish(sequence);
+            Assert.IsTrue(rb.IsPublished(sequence));
+            Assert.That(rb.Cursor, Is.EqualTo(0));
+            Assert.That(rb[0].Value, Is.EqualTo(42));
+        }
+
+        [Test] public void BatchClaimReturnsHighestSequence([Values(true, false)] bool isMultiProducer)
+        {
+            var rb = NewRingBuffer(8, isMultiProducer);
+            long hi = rb.Next(3);
+            Assert.That(hi, Is.EqualTo(2));
+            rb.Publish(0, hi);
+            for (long i = 0; i <= hi; i++) Assert.IsTrue(rb.IsPublished(i));
+            Assert.That(rb.Next(), Is.EqualTo(3));
+        }
+
+        [Test] public void TryNextFailsWhenGatingSequenceIsBehind([Values(true, false)] bool isMultiProducer)
+        {
+            var rb = NewRingBuffer(4, isMultiProducer);
+            var consumer = new Sequence();
+            rb.AddGatingSequences(consumer);
+            long sequence;
+            for (int i = 0; i < 4; i++)
+            {
+                Assert.That(rb.RemainingCapacity, Is.EqualTo(4 - i));
+                Assert.IsTrue(rb.TryNext(out sequence));
+                rb.Publish(sequence);
+            }
+            Assert.That(rb.RemainingCapacity, Is.EqualTo(0));
+            Assert.IsFalse(rb.TryNext(out sequence));
+            consumer.Value = 1;
+            Assert.That(rb.RemainingCapacity, Is.EqualTo(2));
+            Assert.IsTrue(rb.TryNext(2, out sequence));
+            Assert.That(sequence, Is.EqualTo(5));
+            Assert.IsFalse(rb.TryNext(out sequence));
+        }
+
+        [Test] public void RemovedGatingSequenceNoLongerGates()
+        {
+            var rb = NewRingBuffer(4, true);
+            var consumer = new Sequence();
+            rb.AddGatingSequences(consumer);
+            for (int i = 0; i < 4; i++) rb.Publish(rb.Next());
+            long sequence;
+            Assert.IsFalse(rb.TryNext(out sequence));
+            Assert.IsTrue(rb.RemoveGatingSequence(consumer));
+            Assert.IsFalse(rb.RemoveGatingSequence(consumer));
+            Assert.IsTrue(rb.TryNext(out sequence));
+        }
+
+        [Test] public void AddedGatingSequenceStartsAtCursor()
+        {
+            var rb = NewRingBuffer(4, false);
+            rb.Publish(0, rb.Next(3));
+            var consumer = new Sequence();
+            rb.AddGatingSequences(consumer);
+            Assert.That(consumer.Value, Is.EqualTo(2));
+        }
+
+        [Test] public void AddGatingSequencesChokesOnNull()
+        {
+            var rb = NewRingBuffer(4, true);
+            Assert.Throws<ArgumentNullException>(() => rb.AddGatingSequences(null));
+            Assert.Throws<ArgumentNullException>(() => rb.AddGatingSequences(new Sequence(), null));
+            Assert.Throws<ArgumentNullException>(() => rb.NewBarrier(null));
+        }
+
+        [Test] public void NextBlocksUntilGatingSequenceAdvances([Values(true, false)] bool isMultiProducer)
+        {
+            var rb = NewRingBuffer(2, isMultiProducer);
+            var consumer = new Sequence();
+            rb.AddGatingSequences(consumer);
+            rb.Publish(0, rb.Next(2));
+            long claimed = -1;
+            ThreadManager.StartAndAssertRegistered(
+                "T1", () => Interlocked.Exchange(ref claimed, rb.Next()));
+            Thread.Sleep(Delays.Short);
+            Assert.That(Interlocked.Read(ref claimed), Is.EqualTo(-1));
+            consumer.Value = 0;
+            ThreadManager.JoinAndVerify();
+            Assert.That(claimed, Is.EqualTo(2));
+        }
+
+        [Test] public void ConcurrentProducersClaimDistinctSequences()
+        {
+            const int perProducer = 10000;
+            var rb = new RingBuffer<ValueEvent>(() => new ValueEvent(), 1 << 16);
+            Action producer = delegate
+            {
+                for (int i = 0; i < perProducer; i++)
+                {
+                    long sequence = rb.Next();
+                    rb[sequence].Value++;
+                    rb.Publish(sequence);
+                }
+            };
+            ThreadManager.StartAndAssertRegistered("T", producer, producer, producer, producer);
+            ThreadManager.JoinAndVerify(Delays.Long);
+            Assert.That(rb.Cursor, Is.EqualTo(4 * perProducer - 1));
+            for (long i = 0; i < 4 * perProducer; i++)
+            {
+                Assert.IsTrue(rb.IsPublished(i), "sequence " + i);
+                Assert.That(rb[i].Value, Is.EqualTo(1), "sequence " + i);
+            }
+        }
+
+        [Test] public void BarrierReturnsHighestPublishedSequence([Values(true, false)] bool isMultiProducer)
+        {
+            var rb = NewRingBuffer(8, isMultiProducer);
+            var barrier = rb.NewBarrier();
+            rb.Publish(0, rb.Next(3));
+            long available;
+            Assert.IsTrue(barrier.WaitFor(0, out available));
+            Assert.That(available, Is.EqualTo(2));
+            Assert.That(barrier.Cursor, Is.EqualTo(2));
+        }
+
+        [Test] public void BarrierWaitsForTrackedSequences()
+        {
+            var rb = NewRingBuffer(8, true);
+            var upstream = new Sequence();
+            var barrier = rb.NewBarrier(upstream);
+            rb.Publish(0, rb.Next(4));
+            long available = -1;
+            ThreadManager.StartAndAssertRegistered(
+                "T1", () => Assert.IsTrue(barrier.WaitFor(0, out available)));
+            Thread.Sleep(Delays.Short);
+            upstream.Value = 1;
+            ThreadManager.JoinAndVerify();
+            Assert.That(available, Is.EqualTo(1));
+        }
+
+        [Test] public void AlertEndsWaitOnBarrier(
+            [Values(typeof(YieldingWaitStrategy), typeof(SleepingWaitStrategy), typeof(BlockingWaitStrategy),
+                    typeof(BusySpinWaitStrategy))] Type waitStrategy)
+        {
+            var rb = new RingBuffer<ValueEvent>(() => new ValueEvent(), 4,
+                (IWaitStrategy) Activator.CreateInstance(waitStrategy), true);
+            var barrier = rb.NewBarrier();
+            ThreadManager.StartAndAssertRegistered(
+                "T1", () =>
+                {
+                    long available;
+                    Assert.IsFalse(barrier.WaitFor(0, out available));
+                });
+            Thread.Sleep(Delays.Short);
+            barrier.Alert();
+            ThreadManager.JoinAndVerify();
+            Assert.IsTrue(barrier.IsAlerted);
+            barrier.ClearAlert();
+            Assert.IsFalse(barrier.IsAlerted);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+﻿using NUnit.CommonFixtures.Collections;
+using NUnit.Framework;
+using Spring.TestFixtures.Threading.Collections.Generic;
+
+namespace Spring.Threading.Collections.Generic
+{
+    /// <summary>
+    /// Test cases for <see cref="SpscArrayQueue{T}"/>
+    /// </summary>
+    /// <typeparam name="T"></typeparam>
+    [TestFixture(typeof(string))]
+    [TestFixture(typeof(int))]
+    public class SpscArrayQueueTest<T> : AbstractArrayQueueTest<T>
+    {
+        protected override AbstractArrayQueue<TE> NewQueue<TE>(int capacity, IWaitStrategy waitStrategy)
+        {
+            return new SpscArrayQueue<TE>(capacity, waitStrategy);
+        }
+
+        protected override int MaxProducers
+        {
+            get { return 1; }
+        }
+
+        protected override int MaxConsumers
+        {
+            get { return 1; }
+        }
+
+        [Test] public void DefaultConstructorWaitsBySleeping()
+        {
+            Assert.That(new SpscArrayQueue<T>(1).WaitStrategy, Is.InstanceOf<SleepingWaitStrategy>());
+        }
+
+        [TestFixture(typeof(string))]
+        [TestFixture(typeof(int))]
+        public class AsGeneric : ArrayQueueContract
+        {
+            public AsGeneric() : this(0) {}
+            public AsGeneric(CollectionContractOptions options) : base(options) { }
+
+            protected override IBlockingQueue<T> NewBlockingQueue()
+            {
+                return new SpscArrayQueue<T>(SampleSize);
+            }
+
+            [Test] public override void TimedOfferWaitsInterruptablyAndTimesOutIfFullAndSucceedAfterTaken()
+            {
+                // offers from several threads at once
+                SkipForCurrentQueueImplementation();
+            }
+        }
+    }
+}
@@ -1,7 +1,9 @@
 using System;
+using System.Collections.Generic;
 using System.Threading;
 using NUnit.CommonFixtures;
 using NUnit.Framework;
+using Spring.Threading.Future;
 
 namespace Spring.Threading
 {
@@ -192,6 +194,105 @@ namespace Spring.Threading
         }
 
 
+        [Test]
+        public void ConcurrentCountDownsReleaseAllWaitersOnce()
+        {
+            const int counters = 8, perCounter = 1000;
+            CountDownLatch l = new CountDownLatch(counters*perCounter);
+            ThreadStart waiter = delegate
+                {
+                    l.Await();
+                    Assert.AreEqual(0, l.Count);
+                };
+            ThreadStart counter = delegate
+                {
+                    for (int i = 0; i < perCounter; i++) l.CountDown();
+                };
+            ThreadManager.StartAndAssertRegistered("W", waiter, waiter, waiter);
+            Thread.Sleep(Delays.Short);
+            ThreadManager.StartAndAssertRegistered(
+                "C", counter, counter, counter, counter, counter, counter, counter, counter);
+            ThreadManager.JoinAndVerify(Delays.Long);
+            Assert.AreEqual(0, l.Count);
+            l.CountDown();
+            Assert.AreEqual(0, l.Count);
+        }
+
+        [Test]
+        public void AwaitAfterReleaseReturnsImmediatelyEveryTime()
+        {
+            CountDownLatch l = new CountDownLatch(1);
+            l.CountDown();
+            ThreadStart action = delegate
+                {
+                    for (int i = 0; i < 10000; i++)
+                    {
+                        l.Await();
+                        Assert.IsTrue(l.Await(TimeSpan.Zero));
+                    }
+                };
+            ThreadManager.StartAndAssertRegistered("T", action, action);
+            ThreadManager.JoinAndVerify();
+        }
+
+        [Test]
+        public void OnReleaseRunsCallbackWhenCountReachesZero()
+        {
+            CountDownLatch l = new CountDownLatch(2);
+            IFuture<long> f = l.OnRelease(new DirectExecutor(), () => l.Count);
+            Assert.IsFalse(f.IsDone);
+            l.CountDown();
+            Assert.IsFalse(f.IsDone);
+            l.CountDown();
+            Assert.IsTrue(f.IsDone);
+            Assert.AreEqual(0, f.GetResult());
+        }
+
+        [Test]
+        public void OnReleaseRunsCallbackRightAwayWhenReleased()
+        {
+            CountDownLatch l = new CountDownLatch(0);
+            bool ran = false;
+            IFuture<Void> f = l.OnRelease(new DirectExecutor(), () => { ran = true; });
+            Assert.IsTrue(f.IsDone);
+            Assert.IsTrue(ran);
+        }
+
+        [Test]
+        public void OnReleaseRunsAllCallbacksInOrder()
+        {
+            CountDownLatch l = new CountDownLatch(1);
+            List<int> order = new List<int>();
+            for (int i = 0; i < 3; i++)
+            {
+                int n = i;
+                l.OnRelease(new DirectExecutor(), () => order.Add(n));
+            }
+            Assert.AreEqual(0, order.Count);
+            l.CountDown();
+            CollectionAssert.AreEqual(new[] {0, 1, 2}, order);
+        }
+
+        [Test]
+        public void CancelledOnReleaseCallbackDoesNotRun()
+        {
+            CountDownLatch l = new CountDownLatch(1);
+            bool ran = false;
+            IFuture<Void> f = l.OnRelease(new DirectExecutor(), () => { ran = true; });
+            Assert.IsTrue(f.Cancel());
+            l.CountDown();
+            Assert.IsFalse(ran);
+            Assert.IsTrue(f.IsCancelled);
+        }
+
+        [Test]
+        public void OnReleaseChokesOnNullArguments()
+        {
+            CountDownLatch l = new CountDownLatch(1);
+            Assert.Throws<ArgumentNullException>(() => l.OnRelease(null, delegate { }));
+            Assert.Throws<ArgumentNullException>(() => l.OnRelease(new DirectExecutor(), (Action) null));
+        }
+
         [Test]
         public void ToStringIndicatesCurrentCount()
         {
@@ -320,6 +320,136 @@ namespace Spring.Threading
             }
         }
 
+        [Test, Description("Creating with fan-in of one or less than zero throws ArgumentOutOfRangeException")]
+        public void ConstructorChokesOnIllegalFanIn([Values(1, -1)] int fanIn)
+        {
+            var e = Assert.Throws<ArgumentOutOfRangeException>(
+                () => new CyclicBarrier(3, null, fanIn));
+            Assert.That(e.ParamName, Is.EqualTo("fanIn"));
+        }
+
+        [Test, Description("FanIn returns the value given in constructor, zero by default")]
+        public void FanInReturnsTheValueGivenInConstructor([Values(0, 2, 16)] int fanIn)
+        {
+            Assert.AreEqual(0, new CyclicBarrier(3).FanIn);
+            CyclicBarrier b = new CyclicBarrier(5, null, fanIn);
+            Assert.AreEqual(fanIn, b.FanIn);
+            Assert.AreEqual(5, b.Parties);
+            Assert.AreEqual(0, b.NumberOfWaitingParties);
+            Assert.IsFalse(b.IsBroken);
+        }
+
+        [Test, Description("A combining barrier trips once per generation with distinct arrival indices")]
+        public void CombiningBarrierTripsWithDistinctArrivalIndices([Values(2, 4, 64)] int fanIn)
+        {
+            const int parties = 37, rounds = 20;
+            int trips = 0;
+            int[] hits = new int[parties*rounds];
+            CyclicBarrier b = new CyclicBarrier(parties, () => trips++, fanIn);
+            ThreadStart[] actions = new ThreadStart[parties];
+            for (int i = 0; i < parties; i++)
+            {
+                actions[i] = delegate
+                    {
+                        for (int r = 0; r < rounds; r++)
+                        {
+                            int index = r%2 == 0 ? b.Await() : b.Await(Delays.Long);
+                            Interlocked.Increment(ref hits[r*parties + index]);
+                        }
+                    };
+            }
+            ThreadManager.StartAndAssertRegistered("T", actions);
+            ThreadManager.JoinAndVerify(Delays.Long);
+            Assert.AreEqual(rounds, trips);
+            Assert.That(hits, Is.All.EqualTo(1));
+            Assert.IsFalse(b.IsBroken);
+            Assert.AreEqual(0, b.NumberOfWaitingParties);
+        }
+
+        [Test, Description("An interruption in one party of a combining barrier causes others to throw BrokenBarrierException")]
+        public void InterruptedAwaitBreaksCombiningBarrier([Values(true, false)] bool isTimed)
+        {
+            CyclicBarrier c = new CyclicBarrier(5, null, 2);
+            Thread t1 = ThreadManager.StartAndAssertRegistered(
+                "T1", () => Assert.Throws<ThreadInterruptedException>(() => AwaitOrTimedAwait(isTimed, c)));
+            ThreadStart action = () => Assert.Throws<BrokenBarrierException>(() => AwaitOrTimedAwait(isTimed, c));
+            ThreadManager.StartAndAssertRegistered("T", action, action, action);
+            Thread.Sleep(Delays.Short);
+            Assert.AreEqual(4, c.NumberOfWaitingParties);
+            t1.Interrupt();
+            ThreadManager.JoinAndVerify();
+            Assert.IsTrue(c.IsBroken);
+            Assert.AreEqual(0, c.NumberOfWaitingParties);
+        }
+
+        [Test, Description("A timeout in one party of a combining barrier breaks it until reset")]
+        public void TimeoutAwaitBreaksCombiningBarrierUntilReset([Values(true, false)] bool isTimed)
+        {
+            CyclicBarrier c = new CyclicBarrier(4, null, 2);
+            ThreadManager.StartAndAssertRegistered(
+                "T1", () => Assert.Throws<TimeoutException>(() => c.Await(Delays.Short)));
+            ThreadManager.StartAndAssertRegistered(
+                "T2", () => Assert.Throws<BrokenBarrierException>(() => AwaitOrTimedAwait(isTimed, c)));
+            ThreadManager.JoinAndVerify();
+            Assert.IsTrue(c.IsBroken);
+            Assert.Throws<BrokenBarrierException>(() => AwaitOrTimedAwait(isTimed, c));
+            c.Reset();
+            Assert.IsFalse(c.IsBroken);
+            ThreadStart action = () => AwaitOrTimedAwait(isTimed, c);
+            ThreadManager.StartAndAssertRegistered("T", action, action, action, action);
+            ThreadManager.JoinAndVerify();
+        }
+
+        [Test, Description("A reset of an active combining barrier causes waiting threads to throw BrokenBarrierException")]
+        public void ResetBreaksCombiningBarrierWhenTheadWaiting([Values(true, false)] bool isTimed)
+        {
+            CyclicBarrier c = new CyclicBarrier(3, null, 2);
+            ThreadStart action = () => Assert.Throws<BrokenBarrierException>(() => AwaitOrTimedAwait(isTimed, c));
+            ThreadManager.StartAndAssertRegistered("T", action, action);
+            Thread.Sleep(Delays.Short);
+            c.Reset();
+            ThreadManager.JoinAndVerify();
+            Assert.IsFalse(c.IsBroken);
+        }
+
+        [Test, Description("A failed command breaks a combining barrier and propagates to the last party")]
+        public void ExceptionInBarrierActionBreaksCombiningBarrier()
+        {
+            var e = new NullReferenceException();
+            CyclicBarrier barrier = new CyclicBarrier(3, () => { throw e; }, 2);
+            ThreadStart action = () => Assert.Catch<BrokenBarrierException>(() => barrier.Await());
+            ThreadManager.StartAndAssertRegistered("T", action, action);
+            while (barrier.NumberOfWaitingParties < 2) { Thread.Sleep(1); }
+            Assert.That(Assert.Catch(() => barrier.Await()), Is.SameAs(e));
+            ThreadManager.JoinAndVerify();
+            Assert.IsTrue(barrier.IsBroken);
+            barrier.Reset();
+            Assert.IsFalse(barrier.IsBroken);
+        }
+
+        [Test, Description("A party arriving while the barrier action runs blocks until the next generation")]
+        public void EarlyArrivalBlocksWhileCombiningBarrierTrips([Values(true, false)] bool isTimed)
+        {
+            ManualResetEvent actionStarted = new ManualResetEvent(false);
+            int trips = 0;
+            CyclicBarrier c = new CyclicBarrier(2, delegate
+                {
+                    if (trips++ > 0) return;
+                    actionStarted.Set();
+                    Thread.Sleep(Delays.Short);
+                }, 2);
+            ThreadStart action = () => AwaitOrTimedAwait(isTimed, c);
+            ThreadManager.StartAndAssertRegistered("T", action, action);
+            Assert.IsTrue(actionStarted.WaitOne(Delays.Long, false));
+            Thread early = ThreadManager.StartAndAssertRegistered("T3", action);
+            Thread.Sleep(new TimeSpan(Delays.Short.Ticks/2));
+            Assert.AreEqual(ThreadState.WaitSleepJoin, early.ThreadState & ThreadState.WaitSleepJoin);
+            ThreadManager.StartAndAssertRegistered("T4", action);
+            ThreadManager.JoinAndVerify();
+            Assert.AreEqual(2, trips);
+            Assert.IsFalse(c.IsBroken);
+        }
+
         private static void AwaitOrTimedAwait(bool isTimed, CyclicBarrier c)
         {
             if (isTimed) c.Await(Delays.Long);
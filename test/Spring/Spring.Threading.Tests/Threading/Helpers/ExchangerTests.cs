@@ -287,5 +287,85 @@ namespace Spring.Threading.Helpers
             t2.Join();
             t3.Join();
         }
+
+
+        [Test]
+        public void ExchangeOfNull()
+        {
+            Exchanger e = new Exchanger();
+            object received = null;
+            Thread t = new Thread(delegate() { received = e.Exchange(null, Delays.Medium); });
+            t.Start();
+            Assert.IsNull(e.Exchange(two, Delays.Medium));
+            t.Join();
+            Assert.AreEqual(two, received);
+        }
+
+
+        [Test]
+        public void ManyPairsExchangeConcurrently()
+        {
+            const int pairs = 16;
+            Exchanger e = new Exchanger();
+            Thread[] threads = new Thread[pairs*2];
+            bool done = false;
+            int exchanges = 0, failures = 0;
+            for (int i = 0; i < threads.Length; i++)
+            {
+                object mine = i;
+                threads[i] = new Thread(delegate()
+                    {
+                        object m = mine;
+                        try
+                        {
+                            while (!done)
+                            {
+                                object other = e.Exchange(m);
+                                if (other == null || other == m)
+                                    Interlocked.Increment(ref failures);
+                                Interlocked.Increment(ref exchanges);
+                                m = other;
+                            }
+                        }
+                        catch (ThreadInterruptedException)
+                        {
+                        }
+                    });
+            }
+            foreach (Thread t in threads) t.Start();
+            Thread.Sleep(Delays.Short);
+            done = true;
+            // Release the threads left waiting for a partner that has quit.
+            foreach (Thread t in threads) t.Interrupt();
+            foreach (Thread t in threads) Assert.IsTrue(t.Join(Delays.Long));
+            Assert.AreEqual(0, failures);
+            Assert.Greater(exchanges, 0);
+        }
+
+        [Test]
+        public void UntimedExchangesNeverMissAWakeUp()
+        {
+            const int rounds = 10000;
+            Exchanger e = new Exchanger();
+            int failures = 0;
+            Thread[] threads = new Thread[2];
+            for (int i = 0; i < threads.Length; i++)
+            {
+                object mine = i;
+                threads[i] = new Thread(delegate()
+                    {
+                        for (int k = 0; k < rounds; k++)
+                        {
+                            if (e.Exchange(mine) == mine)
+                                Interlocked.Increment(ref failures);
+                        }
+                    });
+                threads[i].IsBackground = true;
+            }
+            foreach (Thread t in threads) t.Start();
+            // A lost wake up leaves one thread parked forever.
+            foreach (Thread t in threads) Assert.IsTrue(t.Join(Delays.Long), "exchange hung");
+            Assert.AreEqual(0, failures);
+        }
     }
 }
\ No newline at end of file
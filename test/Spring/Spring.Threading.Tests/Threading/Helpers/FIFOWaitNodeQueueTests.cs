@@ -39,6 +39,38 @@ namespace Spring.Threading.Helpers
 			Assert.AreEqual(1, queue.WaitingThreads.Count);
 			Assert.IsTrue(queue.IsWaiting(Thread.CurrentThread));
 		}
+		[Test]
+			public void UnlinkCancelledKeepsWaitingNodesInOrder()
+		{
+			WaitNode node1 = new WaitNode();
+			WaitNode node2 = new WaitNode();
+			WaitNode node3 = new WaitNode();
+			WaitNode node4 = new WaitNode();
+			FIFOWaitQueue queue = new FIFOWaitQueue();
+			queue.Enqueue(node1);
+			queue.Enqueue(node2);
+			queue.Enqueue(node3);
+			queue.Enqueue(node4);
+			IQueuedSync sync = new NoOpSync();
+			Assert.IsFalse(node1.DoTimedWait(sync, TimeSpan.Zero));
+			Assert.IsFalse(node3.DoTimedWait(sync, TimeSpan.Zero));
+			queue.UnlinkCancelled();
+			Assert.AreEqual(node2, queue.Dequeue());
+			Assert.AreEqual(node4, queue.Dequeue());
+			Assert.IsNull(queue.Dequeue());
+			Assert.IsFalse(queue.HasNodes);
+			queue.Enqueue(node2);
+			Assert.IsFalse(node2.DoTimedWait(sync, TimeSpan.Zero));
+			queue.UnlinkCancelled();
+			Assert.IsFalse(queue.HasNodes);
+			queue.Enqueue(node4);
+			Assert.AreEqual(node4, queue.Dequeue());
+		}
+		private class NoOpSync : IQueuedSync
+		{
+			public bool Recheck(WaitNode node) { return false; }
+			public void TakeOver(WaitNode node) {}
+		}
 		[Test]
 		[ExpectedException(typeof(ArgumentNullException))]
 		public void IsWaitingWithNullThread()
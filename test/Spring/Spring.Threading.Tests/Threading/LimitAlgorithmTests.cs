@@ -0,0 +1,130 @@
+using System;
+using NUnit.Framework;
+
+namespace Spring.Threading
+{
+    /// <summary>
+    /// Test cases for <see cref="AimdLimit"/>, <see cref="VegasLimit"/> and
+    /// <see cref="GradientLimit"/>.
+    /// </summary>
+    [TestFixture]
+    public class LimitAlgorithmTests
+    {
+        private static readonly TimeSpan _fast = TimeSpan.FromMilliseconds(10);
+        private static readonly TimeSpan _slow = TimeSpan.FromMilliseconds(100);
+
+        [Test] public void ConstructorChokesOnBadLimits()
+        {
+            Assert.Throws<ArgumentOutOfRangeException>(() => new AimdLimit(1, 0, 10, 0.9, _slow));
+            Assert.Throws<ArgumentOutOfRangeException>(() => new AimdLimit(5, 6, 10, 0.9, _slow));
+            Assert.Throws<ArgumentOutOfRangeException>(() => new AimdLimit(11, 1, 10, 0.9, _slow));
+            Assert.Throws<ArgumentOutOfRangeException>(() => new AimdLimit(5, 1, 10, 1.0, _slow));
+            Assert.Throws<ArgumentOutOfRangeException>(() => new AimdLimit(5, 1, 10, 0.9, TimeSpan.Zero));
+            Assert.Throws<ArgumentOutOfRangeException>(() => new VegasLimit(5, 1, 10, 0, 30));
+            Assert.Throws<ArgumentOutOfRangeException>(() => new VegasLimit(5, 1, 10, 1, 0));
+            Assert.Throws<ArgumentOutOfRangeException>(() => new GradientLimit(5, 1, 10, 0.2, 0.5, 10));
+            Assert.Throws<ArgumentOutOfRangeException>(() => new GradientLimit(5, 1, 10, 0.2, 1.5, 0));
+        }
+
+        [Test] public void DefaultsStartAtTwenty()
+        {
+            Assert.AreEqual(20, new AimdLimit().Limit);
+            Assert.AreEqual(20, new VegasLimit().Limit);
+            Assert.AreEqual(20, new GradientLimit().Limit);
+        }
+
+        [Test] public void AimdIncreasesByOneWhileInUse()
+        {
+            AimdLimit aimd = new AimdLimit(10, 1, 100, 0.5, _slow);
+            Assert.AreEqual(11, aimd.Update(_fast, 10, false));
+            Assert.AreEqual(11, aimd.Update(_fast, 2, false));
+        }
+
+        [Test] public void AimdBacksOffOnDropAndTimeout()
+        {
+            AimdLimit aimd = new AimdLimit(40, 1, 100, 0.5, _fast);
+            Assert.AreEqual(20, aimd.Update(_fast, 40, true));
+            Assert.AreEqual(10, aimd.Update(_slow, 20, false));
+        }
+
+        [Test] public void AimdStaysWithinBounds()
+        {
+            AimdLimit aimd = new AimdLimit(3, 2, 4, 0.1, _slow);
+            Assert.AreEqual(2, aimd.Update(_fast, 3, true));
+            Assert.AreEqual(3, aimd.Update(_fast, 3, false));
+            Assert.AreEqual(4, aimd.Update(_fast, 3, false));
+            Assert.AreEqual(4, aimd.Update(_fast, 4, false));
+        }
+
+        [Test] public void VegasLearnsNoLoadLatencyFromFirstSample()
+        {
+            VegasLimit vegas = new VegasLimit(20, 1, 1000, 1.0, 30);
+            Assert.AreEqual(TimeSpan.Zero, vegas.NoLoadLatency);
+            Assert.AreEqual(20, vegas.Update(_slow, 20, false));
+            Assert.AreEqual(_slow, vegas.NoLoadLatency);
+            Assert.AreEqual(20, vegas.Update(_fast, 20, false));
+            Assert.AreEqual(_fast, vegas.NoLoadLatency);
+        }
+
+        [Test] public void VegasGrowsWithoutQueueAndShrinksWithQueue()
+        {
+            VegasLimit vegas = new VegasLimit(20, 1, 1000, 1.0, 30);
+            vegas.Update(_fast, 20, false);
+            int grown = vegas.Update(_fast, 20, false);
+            Assert.Greater(grown, 20);
+            int shrunk = vegas.Update(_slow, grown, false);
+            Assert.Less(shrunk, grown);
+            Assert.Less(vegas.Update(_fast, shrunk, true), shrunk);
+        }
+
+        [Test] public void VegasIgnoresAppLimitedSamples()
+        {
+            VegasLimit vegas = new VegasLimit(20, 1, 1000, 1.0, 30);
+            vegas.Update(_fast, 20, false);
+            Assert.AreEqual(20, vegas.Update(_fast, 5, false));
+        }
+
+        [Test] public void VegasShrinksOnDropWithoutLatency()
+        {
+            VegasLimit vegas = new VegasLimit(20, 1, 1000, 1.0, 30);
+            Assert.Less(vegas.Update(TimeSpan.Zero, 20, true), 20);
+            Assert.AreEqual(TimeSpan.Zero, vegas.NoLoadLatency);
+        }
+
+        [Test] public void GradientGrowsWhileLatencyIsSteady()
+        {
+            GradientLimit gradient = new GradientLimit(20, 1, 1000, 1.0, 1.5, 10);
+            int limit = 20;
+            for (int i = 0; i < 10; i++)
+            {
+                int next = gradient.Update(_fast, 1000, false);
+                Assert.Greater(next, limit);
+                limit = next;
+            }
+            Assert.AreEqual(_fast, gradient.LongTermLatency);
+        }
+
+        [Test] public void GradientShrinksOnLatencySpikeAndDrop()
+        {
+            GradientLimit gradient = new GradientLimit(100, 1, 1000, 1.0, 1.5, 10);
+            for (int i = 0; i < 10; i++) gradient.Update(_fast, 1000, false);
+            int limit = gradient.Limit;
+            int spiked = gradient.Update(_slow, 1000, false);
+            Assert.Less(spiked, limit);
+            Assert.Less(gradient.Update(_fast, 1, true), spiked);
+        }
+
+        [Test] public void GradientIgnoresAppLimitedSamples()
+        {
+            GradientLimit gradient = new GradientLimit(20, 1, 1000, 1.0, 1.5, 10);
+            Assert.AreEqual(20, gradient.Update(_fast, 5, false));
+        }
+
+        [Test] public void GradientShrinksOnDropWithoutLatency()
+        {
+            GradientLimit gradient = new GradientLimit(100, 1, 1000, 1.0, 1.5, 10);
+            Assert.Less(gradient.Update(TimeSpan.Zero, 100, true), 100);
+            Assert.AreEqual(TimeSpan.Zero, gradient.LongTermLatency);
+        }
+    }
+}
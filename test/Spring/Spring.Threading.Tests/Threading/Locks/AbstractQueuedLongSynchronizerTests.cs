@@ -0,0 +1,169 @@
+using System;
+using System.Threading;
+using NUnit.CommonFixtures;
+using NUnit.CommonFixtures.Threading;
+using NUnit.Framework;
+
+namespace Spring.Threading.Locks
+{
+    /// <summary>
+    /// Test cases for <see cref="AbstractQueuedLongSynchronizer"/>.
+    /// </summary>
+    /// <author>Doug Lea</author>
+    [TestFixture]
+    public class AbstractQueuedLongSynchronizerTests : ThreadingTestFixture
+    {
+        /// <summary>
+        /// A simple mutex class whose locked state does not fit in an
+        /// <see cref="int"/>.
+        /// </summary>
+        private class Mutex : AbstractQueuedLongSynchronizer
+        {
+            internal const long LOCKED = 1L << 40;
+
+            public bool IsLocked
+            {
+                get { return State == LOCKED; }
+            }
+
+            protected internal override bool IsHeldExclusively()
+            {
+                return State == LOCKED && ExclusiveOwnerThread == Thread.CurrentThread;
+            }
+
+            protected override bool TryAcquire(long acquires)
+            {
+                Assert.AreEqual(LOCKED, acquires);
+                if (!CompareAndSetState(0, LOCKED)) return false;
+                ExclusiveOwnerThread = Thread.CurrentThread;
+                return true;
+            }
+
+            protected override bool TryRelease(long releases)
+            {
+                Assert.AreEqual(LOCKED, releases);
+                if (State == 0) throw new SynchronizationLockException();
+                ExclusiveOwnerThread = null;
+                State = 0;
+                return true;
+            }
+
+            public ConditionObject NewCondition()
+            {
+                return new ConditionObject(this);
+            }
+        }
+
+        /// <summary>
+        /// A simple latch class, to test shared mode.
+        /// </summary>
+        private class BooleanLatch : AbstractQueuedLongSynchronizer
+        {
+            public bool IsSignalled
+            {
+                get { return State != 0; }
+            }
+
+            public void Signal()
+            {
+                ReleaseShared(1);
+            }
+
+            protected override int TryAcquireShared(long ignore)
+            {
+                return IsSignalled ? 1 : -1;
+            }
+
+            protected override bool TryReleaseShared(long ignore)
+            {
+                State = 1;
+                return true;
+            }
+        }
+
+        private Mutex _sync;
+
+        [SetUp] public void SetUp()
+        {
+            _sync = new Mutex();
+        }
+
+        [Test] public void AcquireAndReleaseChangeState()
+        {
+            _sync.Acquire(Mutex.LOCKED);
+            Assert.IsTrue(_sync.IsLocked);
+            Assert.IsTrue(_sync.IsHeldExclusively());
+            _sync.Release(Mutex.LOCKED);
+            Assert.IsFalse(_sync.IsLocked);
+        }
+
+        [Test] public void TimedTryAcquireTimesOutWhenHeld()
+        {
+            _sync.Acquire(Mutex.LOCKED);
+            ThreadManager.StartAndAssertRegistered(
+                "T1", () => Assert.IsFalse(_sync.TryAcquire(Mutex.LOCKED, Delays.Short)));
+            ThreadManager.JoinAndVerify();
+            _sync.Release(Mutex.LOCKED);
+        }
+
+        [Test] public void ReleaseWakesQueuedThread()
+        {
+            _sync.Acquire(Mutex.LOCKED);
+            Thread t1 = ThreadManager.StartAndAssertRegistered(
+                "T1", () => { _sync.Acquire(Mutex.LOCKED); _sync.Release(Mutex.LOCKED); });
+            Thread.Sleep(Delays.Short);
+            Assert.IsTrue(_sync.IsQueued(t1));
+            Assert.AreEqual(t1, _sync.FirstQueuedThread);
+            _sync.Release(Mutex.LOCKED);
+            ThreadManager.JoinAndVerify();
+            Assert.IsFalse(_sync.HasQueuedThreads);
+        }
+
+        [Test] public void AcquireInterruptiblyIsInterruptible()
+        {
+            _sync.Acquire(Mutex.LOCKED);
+            Thread t1 = ThreadManager.StartAndAssertRegistered(
+                "T1", () => Assert.Throws<ThreadInterruptedException>(() => _sync.AcquireInterruptibly(Mutex.LOCKED)));
+            Thread.Sleep(Delays.Short);
+            t1.Interrupt();
+            ThreadManager.JoinAndVerify();
+            _sync.Release(Mutex.LOCKED);
+        }
+
+        [Test] public void AwaitReturnsAfterSignalWithSavedState()
+        {
+            AbstractQueuedLongSynchronizer.ConditionObject c = _sync.NewCondition();
+            ThreadManager.StartAndAssertRegistered(
+                "T1", () =>
+                          {
+                              _sync.Acquire(Mutex.LOCKED);
+                              c.Await();
+                              Assert.IsTrue(_sync.IsHeldExclusively());
+                              _sync.Release(Mutex.LOCKED);
+                          });
+            Thread.Sleep(Delays.Short);
+            _sync.Acquire(Mutex.LOCKED);
+            Assert.AreEqual(1, _sync.GetWaitQueueLength(c));
+            c.Signal();
+            _sync.Release(Mutex.LOCKED);
+            ThreadManager.JoinAndVerify();
+        }
+
+        [Test] public void SignalChokesWhenNotHeld()
+        {
+            AbstractQueuedLongSynchronizer.ConditionObject c = _sync.NewCondition();
+            Assert.Throws<SynchronizationLockException>(c.Signal);
+        }
+
+        [Test] public void AcquireSharedWaitsForLatch()
+        {
+            BooleanLatch latch = new BooleanLatch();
+            Action action = delegate { latch.AcquireShared(0); };
+            ThreadManager.StartAndAssertRegistered("T", action, action);
+            Thread.Sleep(Delays.Short);
+            Assert.AreEqual(2, latch.QueueLength);
+            latch.Signal();
+            ThreadManager.JoinAndVerify();
+        }
+    }
+}
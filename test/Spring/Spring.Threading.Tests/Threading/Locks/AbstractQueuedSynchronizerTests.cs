@@ -0,0 +1,356 @@
+using System;
+using System.Threading;
+using NUnit.CommonFixtures;
+using NUnit.CommonFixtures.Threading;
+using NUnit.Framework;
+
+namespace Spring.Threading.Locks
+{
+    /// <summary>
+    /// Test cases for <see cref="AbstractQueuedSynchronizer"/>.
+    /// </summary>
+    /// <author>Doug Lea</author>
+    [TestFixture]
+    public class AbstractQueuedSynchronizerTests : ThreadingTestFixture
+    {
+        /// <summary>
+        /// A simple mutex class, adapted from the class javadoc. Exclusive
+        /// acquire tests exercise this as a sample user extension.
+        /// </summary>
+        [Serializable]
+        private class Mutex : AbstractQueuedSynchronizer
+        {
+            public bool IsLocked
+            {
+                get { return State == 1; }
+            }
+
+            protected internal override bool IsHeldExclusively()
+            {
+                return State == 1 && ExclusiveOwnerThread == Thread.CurrentThread;
+            }
+
+            protected override bool TryAcquire(int acquires)
+            {
+                Assert.AreEqual(1, acquires);
+                if (!CompareAndSetState(0, 1)) return false;
+                ExclusiveOwnerThread = Thread.CurrentThread;
+                return true;
+            }
+
+            protected override bool TryRelease(int releases)
+            {
+                Assert.AreEqual(1, releases);
+                if (State == 0) throw new SynchronizationLockException();
+                ExclusiveOwnerThread = null;
+                State = 0;
+                return true;
+            }
+
+            public ConditionObject NewCondition()
+            {
+                return new ConditionObject(this);
+            }
+        }
+
+        /// <summary>
+        /// A simple latch class, to test shared mode.
+        /// </summary>
+        private class BooleanLatch : AbstractQueuedSynchronizer
+        {
+            public bool IsSignalled
+            {
+                get { return State != 0; }
+            }
+
+            public void Signal()
+            {
+                ReleaseShared(1);
+            }
+
+            protected override int TryAcquireShared(int ignore)
+            {
+                return IsSignalled ? 1 : -1;
+            }
+
+            protected override bool TryReleaseShared(int ignore)
+            {
+                State = 1;
+                return true;
+            }
+        }
+
+        private Mutex _sync;
+
+        [SetUp] public void SetUp()
+        {
+            _sync = new Mutex();
+        }
+
+        [Test] public void NewSynchronizerIsUnlockedAndUncontended()
+        {
+            Assert.IsFalse(_sync.IsLocked);
+            Assert.IsFalse(_sync.HasQueuedThreads);
+            Assert.IsFalse(_sync.HasContended);
+            Assert.IsNull(_sync.FirstQueuedThread);
+            Assert.AreEqual(0, _sync.QueueLength);
+        }
+
+        [Test] public void AcquireAndReleaseChangeState()
+        {
+            _sync.Acquire(1);
+            Assert.IsTrue(_sync.IsLocked);
+            Assert.IsTrue(_sync.IsHeldExclusively());
+            _sync.Release(1);
+            Assert.IsFalse(_sync.IsLocked);
+            Assert.IsFalse(_sync.IsHeldExclusively());
+        }
+
+        [Test] public void ReleaseChokesWhenNotHeld()
+        {
+            Assert.Throws<SynchronizationLockException>(() => _sync.Release(1));
+        }
+
+        [Test] public void TimedTryAcquireSucceedsOnFreeSynchronizer()
+        {
+            Assert.IsTrue(_sync.TryAcquire(1, Delays.Short));
+            Assert.IsTrue(_sync.IsLocked);
+            _sync.Release(1);
+        }
+
+        [Test] public void TimedTryAcquireTimesOutWhenHeld()
+        {
+            _sync.Acquire(1);
+            ThreadManager.StartAndAssertRegistered(
+                "T1", () => Assert.IsFalse(_sync.TryAcquire(1, Delays.Short)));
+            ThreadManager.JoinAndVerify();
+            Assert.IsFalse(_sync.HasQueuedThreads);
+            _sync.Release(1);
+        }
+
+        [Test] public void TimedTryAcquireAllowsLongWait()
+        {
+            _sync.Acquire(1);
+            ThreadManager.StartAndAssertRegistered("T1", delegate
+                {
+                    Assert.IsTrue(_sync.TryAcquire(1, TimeSpan.MaxValue));
+                    _sync.Release(1);
+                });
+            Thread.Sleep(Delays.Short);
+            _sync.Release(1);
+            ThreadManager.JoinAndVerify();
+        }
+
+        [Test] public void QueueInspectionReportsWaitingThreads()
+        {
+            _sync.Acquire(1);
+            Thread t1 = ThreadManager.StartAndAssertRegistered(
+                "T1", () => { _sync.Acquire(1); _sync.Release(1); });
+            Thread.Sleep(Delays.Short);
+            Thread t2 = ThreadManager.StartAndAssertRegistered(
+                "T2", () => { _sync.Acquire(1); _sync.Release(1); });
+            Thread.Sleep(Delays.Short);
+            Assert.IsTrue(_sync.HasQueuedThreads);
+            Assert.IsTrue(_sync.HasContended);
+            Assert.AreEqual(t1, _sync.FirstQueuedThread);
+            Assert.IsTrue(_sync.IsQueued(t1));
+            Assert.IsTrue(_sync.IsQueued(t2));
+            Assert.AreEqual(2, _sync.QueueLength);
+            CollectionAssert.AreEquivalent(new[] {t1, t2}, _sync.QueuedThreads);
+            CollectionAssert.AreEquivalent(new[] {t1, t2}, _sync.ExclusiveQueuedThreads);
+            Assert.AreEqual(0, _sync.SharedQueuedThreads.Count);
+            _sync.Release(1);
+            ThreadManager.JoinAndVerify();
+            Assert.IsFalse(_sync.HasQueuedThreads);
+            Assert.IsFalse(_sync.IsQueued(t1));
+        }
+
+        [Test] public void IsQueuedChokesOnNullThread()
+        {
+            Assert.Throws<ArgumentNullException>(() => _sync.IsQueued(null));
+        }
+
+        [Test] public void HasQueuedPredecessorsIsFalseForFirstInLine()
+        {
+            Assert.IsFalse(_sync.HasQueuedPredecessors);
+            _sync.Acquire(1);
+            ThreadManager.StartAndAssertRegistered(
+                "T1", () => { _sync.Acquire(1); _sync.Release(1); });
+            Thread.Sleep(Delays.Short);
+            Assert.IsTrue(_sync.HasQueuedPredecessors);
+            _sync.Release(1);
+            ThreadManager.JoinAndVerify();
+            Assert.IsFalse(_sync.HasQueuedPredecessors);
+        }
+
+        [Test] public void AcquireInterruptiblyIsInterruptible()
+        {
+            _sync.Acquire(1);
+            Thread t1 = ThreadManager.StartAndAssertRegistered(
+                "T1", () => Assert.Throws<ThreadInterruptedException>(() => _sync.AcquireInterruptibly(1)));
+            Thread.Sleep(Delays.Short);
+            t1.Interrupt();
+            ThreadManager.JoinAndVerify();
+            Assert.IsFalse(_sync.IsQueued(t1));
+            Assert.IsTrue(_sync.IsHeldExclusively());
+            _sync.Release(1);
+        }
+
+        [Test] public void AcquireIsNotInterruptible()
+        {
+            _sync.Acquire(1);
+            Thread t1 = ThreadManager.StartAndAssertRegistered(
+                "T1", () =>
+                          {
+                              _sync.Acquire(1);
+                              Assert.IsTrue(TestThreadManager.IsCurrentThreadInterrupted());
+                              _sync.Release(1);
+                          });
+            Thread.Sleep(Delays.Short);
+            t1.Interrupt();
+            Thread.Sleep(Delays.Short);
+            Assert.IsTrue(t1.IsAlive);
+            _sync.Release(1);
+            ThreadManager.JoinAndVerify();
+        }
+
+        [Test] public void ManyThreadsAcquireInTurn()
+        {
+            int counter = 0;
+            Action action = delegate
+                                {
+                                    for (int i = 0; i < 1000; i++)
+                                    {
+                                        _sync.Acquire(1);
+                                        try { counter++; }
+                                        finally { _sync.Release(1); }
+                                    }
+                                };
+            ThreadManager.StartAndAssertRegistered("T", action, action, action, action);
+            ThreadManager.JoinAndVerify(Delays.Long);
+            Assert.AreEqual(4000, counter);
+        }
+
+        [Test] public void AwaitReturnsAfterSignal()
+        {
+            AbstractQueuedSynchronizer.ConditionObject c = _sync.NewCondition();
+            ThreadManager.StartAndAssertRegistered(
+                "T1", () =>
+                          {
+                              _sync.Acquire(1);
+                              c.Await();
+                              Assert.IsTrue(_sync.IsHeldExclusively());
+                              _sync.Release(1);
+                          });
+            Thread.Sleep(Delays.Short);
+            _sync.Acquire(1);
+            Assert.IsTrue(_sync.HasWaiters(c));
+            Assert.AreEqual(1, _sync.GetWaitQueueLength(c));
+            c.Signal();
+            Assert.IsFalse(_sync.HasWaiters(c));
+            _sync.Release(1);
+            ThreadManager.JoinAndVerify();
+        }
+
+        [Test] public void SignalAllWakesAllWaiters()
+        {
+            AbstractQueuedSynchronizer.ConditionObject c = _sync.NewCondition();
+            Action cAwait = delegate
+                                {
+                                    _sync.Acquire(1);
+                                    c.Await();
+                                    _sync.Release(1);
+                                };
+            ThreadManager.StartAndAssertRegistered("T", cAwait, cAwait);
+            Thread.Sleep(Delays.Short);
+            _sync.Acquire(1);
+            Assert.AreEqual(2, _sync.GetWaitingThreads(c).Count);
+            c.SignalAll();
+            Assert.AreEqual(0, _sync.GetWaitQueueLength(c));
+            _sync.Release(1);
+            ThreadManager.JoinAndVerify();
+        }
+
+        [Test] public void TimedAwaitTimesOut()
+        {
+            AbstractQueuedSynchronizer.ConditionObject c = _sync.NewCondition();
+            _sync.Acquire(1);
+            Assert.IsFalse(c.Await(Delays.Short));
+            Assert.IsTrue(_sync.IsHeldExclusively());
+            _sync.Release(1);
+        }
+
+        [Test] public void AwaitIsInterruptible()
+        {
+            AbstractQueuedSynchronizer.ConditionObject c = _sync.NewCondition();
+            Thread t1 = ThreadManager.StartAndAssertRegistered(
+                "T1", () =>
+                          {
+                              _sync.Acquire(1);
+                              Assert.Throws<ThreadInterruptedException>(c.Await);
+                              Assert.IsTrue(_sync.IsHeldExclusively());
+                              _sync.Release(1);
+                          });
+            Thread.Sleep(Delays.Short);
+            t1.Interrupt();
+            ThreadManager.JoinAndVerify();
+        }
+
+        [Test] public void SignalChokesWhenNotHeld()
+        {
+            AbstractQueuedSynchronizer.ConditionObject c = _sync.NewCondition();
+            Assert.Throws<SynchronizationLockException>(c.Signal);
+            Assert.Throws<SynchronizationLockException>(c.SignalAll);
+        }
+
+        [Test] public void AwaitChokesWhenNotHeld()
+        {
+            AbstractQueuedSynchronizer.ConditionObject c = _sync.NewCondition();
+            Assert.Throws<SynchronizationLockException>(c.Await);
+        }
+
+        [Test] public void ConditionInstrumentationChokesOnForeignCondition()
+        {
+            AbstractQueuedSynchronizer.ConditionObject c = new Mutex().NewCondition();
+            Assert.Throws<ArgumentNullException>(() => _sync.HasWaiters(null));
+            Assert.Throws<ArgumentException>(() => _sync.HasWaiters(c));
+            Assert.Throws<ArgumentException>(() => _sync.GetWaitQueueLength(c));
+            Assert.Throws<ArgumentException>(() => _sync.GetWaitingThreads(c));
+            Assert.IsFalse(_sync.Owns(c));
+        }
+
+        [Test] public void AcquireSharedWaitsForLatch()
+        {
+            BooleanLatch latch = new BooleanLatch();
+            Action action = delegate
+                                {
+                                    latch.AcquireSharedInterruptibly(0);
+                                    Assert.IsTrue(latch.IsSignalled);
+                                };
+            ThreadManager.StartAndAssertRegistered("T", action, action, action);
+            Thread.Sleep(Delays.Short);
+            Assert.AreEqual(3, latch.SharedQueuedThreads.Count);
+            Assert.AreEqual(0, latch.ExclusiveQueuedThreads.Count);
+            latch.Signal();
+            ThreadManager.JoinAndVerify();
+            Assert.IsFalse(latch.HasQueuedThreads);
+        }
+
+        [Test] public void TimedAcquireSharedTimesOut()
+        {
+            BooleanLatch latch = new BooleanLatch();
+            Assert.IsFalse(latch.TryAcquireShared(0, Delays.Short));
+            latch.Signal();
+            Assert.IsTrue(latch.TryAcquireShared(0, Delays.Short));
+        }
+
+        [Test] public void ToStringReportsStateAndQueue()
+        {
+            StringAssert.Contains("State = 0", _sync.ToString());
+            StringAssert.Contains("empty queue", _sync.ToString());
+            _sync.Acquire(1);
+            StringAssert.Contains("State = 1", _sync.ToString());
+            _sync.Release(1);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+using System;
+using System.Threading;
+using NUnit.CommonFixtures;
+using NUnit.CommonFixtures.Threading;
+using NUnit.Framework;
+using Spring.Threading.Future;
+
+namespace Spring.Threading.Locks
+{
+    /// <summary>
+    /// Test cases for <see cref="LockStatistics"/>.
+    /// </summary>
+    [TestFixture]
+    public class LockStatisticsTests : ThreadingTestFixture
+    {
+        private LockStatistics _stats;
+
+        [SetUp] public void SetUp()
+        {
+            _stats = new LockStatistics(Guid.NewGuid().ToString());
+        }
+
+        [Test] public void LocksRecordNothingByDefault()
+        {
+            Assert.IsNull(new ReentrantLock().Statistics);
+            Assert.IsNull(new ReentrantReadWriteLock().Statistics);
+        }
+
+        [Test] public void EnabledForNewLocksTagsWithLockType()
+        {
+            LockStatistics.EnabledForNewLocks = true;
+            try
+            {
+                ReentrantLock rl = new ReentrantLock();
+                Assert.IsNotNull(rl.Statistics);
+                Assert.AreEqual(typeof(ReentrantLock).Name, rl.Statistics.Tag);
+                Assert.IsNotNull(new ReentrantReadWriteLock(true).Statistics);
+            }
+            finally
+            {
+                LockStatistics.EnabledForNewLocks = false;
+            }
+            Assert.IsNull(new ReentrantLock().Statistics);
+        }
+
+        [Test] public void RegistryDropsCollectedStatisticsWithoutBeingRead()
+        {
+            for (int i = 0; i < 10000; i++) new LockStatistics();
+            GC.Collect();
+            GC.WaitForPendingFinalizers();
+            for (int i = 0; i < 10000; i++) new LockStatistics();
+            Assert.That(LockStatistics.RegistrySize, Is.LessThan(15000));
+        }
+
+        [Test] public void UncontendedAcquisitionsAreCounted([Values(true, false)] bool isFair)
+        {
+            ReentrantLock rl = new ReentrantLock(isFair);
+            rl.Statistics = _stats;
+            rl.Lock();
+            Assert.IsTrue(rl.TryLock());
+            rl.Unlock();
+            rl.Unlock();
+            Assert.AreEqual(2, _stats.Acquisitions);
+            Assert.AreEqual(0, _stats.ContendedAcquisitions);
+            Assert.AreEqual(TimeSpan.Zero, _stats.TotalWaitTime);
+            Assert.AreEqual(1, _stats.TimedHolds);
+            Assert.That(_stats.MaxHoldTime, Is.LessThanOrEqualTo(_stats.TotalHoldTime));
+        }
+
+        [Test] public void ContendedAcquisitionRecordsWaitAndHold([Values(true, false)] bool isFair)
+        {
+            ReentrantLock rl = new ReentrantLock(isFair);
+            rl.Statistics = _stats;
+            rl.Lock();
+            ThreadManager.StartAndAssertRegistered("T1", () => { rl.Lock(); rl.Unlock(); });
+            Thread.Sleep(Delays.Short);
+            rl.Unlock();
+            ThreadManager.JoinAndVerify();
+            Assert.AreEqual(2, _stats.Acquisitions);
+            Assert.AreEqual(1, _stats.ContendedAcquisitions);
+            Assert.That(_stats.MaxWaitTime, Is.GreaterThan(TimeSpan.Zero));
+            Assert.AreEqual(_stats.MaxWaitTime, _stats.TotalWaitTime);
+            Assert.AreEqual(2, _stats.TimedHolds);
+            Assert.That(_stats.MaxHoldTime, Is.GreaterThanOrEqualTo(_stats.MaxWaitTime));
+        }
+
+        [Test] public void ReentryOnFairLockWithQueuedThreadIsUncontended()
+        {
+            ReentrantLock rl = new ReentrantLock(true);
+            rl.Statistics = _stats;
+            rl.Lock();
+            ThreadManager.StartAndAssertRegistered("T1", () => { rl.Lock(); rl.Unlock(); });
+            Thread.Sleep(Delays.Short);
+            Assert.IsTrue(rl.HasQueuedThreads);
+            rl.Lock();
+            rl.Unlock();
+            Assert.AreEqual(2, _stats.Acquisitions);
+            Assert.AreEqual(0, _stats.ContendedAcquisitions);
+            rl.Unlock();
+            ThreadManager.JoinAndVerify();
+            Assert.AreEqual(3, _stats.Acquisitions);
+            Assert.AreEqual(1, _stats.ContendedAcquisitions);
+        }
+
+        [Test] public void AsyncAcquisitionsAreCounted([Values(true, false)] bool isFair)
+        {
+            ReentrantLock rl = new ReentrantLock(isFair);
+            rl.Statistics = _stats;
+            rl.LockAsync(new DirectExecutor(), delegate { });
+            rl.Lock();
+            IFuture<Void> f = rl.LockAsync(new DirectExecutor(), () => Thread.Sleep(1));
+            Thread.Sleep(1);
+            rl.Unlock();
+            Assert.IsTrue(f.IsDone);
+            Assert.AreEqual(3, _stats.Acquisitions);
+            Assert.AreEqual(1, _stats.ContendedAcquisitions);
+            Assert.That(_stats.TotalWaitTime, Is.GreaterThan(TimeSpan.Zero));
+            Assert.AreEqual(3, _stats.TimedHolds);
+        }
+
+        [Test] public void FailedTimedTryLockIsNotRecorded()
+        {
+            ReentrantLock rl = new ReentrantLock();
+            rl.Lock();
+            rl.Statistics = _stats;
+            ThreadManager.StartAndAssertRegistered("T1", () => Assert.IsFalse(rl.TryLock(Delays.Short)));
+            ThreadManager.JoinAndVerify();
+            rl.Unlock();
+            Assert.AreEqual(0, _stats.Acquisitions);
+            Assert.AreEqual(0, _stats.TimedHolds);
+        }
+
+        [Test] public void ReadWriteLockRecordsBothViews([Values(true, false)] bool isFair)
+        {
+            ReentrantReadWriteLock rwl = new ReentrantReadWriteLock(isFair);
+            rwl.Statistics = _stats;
+            rwl.WriterLock.Lock();
+            ThreadManager.StartAndAssertRegistered("T1", () => { rwl.ReaderLock.Lock(); rwl.ReaderLock.Unlock(); });
+            Thread.Sleep(Delays.Short);
+            rwl.WriterLock.Unlock();
+            ThreadManager.JoinAndVerify();
+            Assert.IsTrue(rwl.ReaderLock.TryLock());
+            rwl.ReaderLock.Unlock();
+            Assert.AreEqual(3, _stats.Acquisitions);
+            Assert.AreEqual(1, _stats.ContendedAcquisitions);
+            Assert.AreEqual(1, _stats.TimedHolds);
+        }
+
+        [Test] public void SharedStatisticsCombineLocks()
+        {
+            ReentrantLock rl1 = new ReentrantLock();
+            ReentrantLock rl2 = new ReentrantLock(true);
+            rl1.Statistics = rl2.Statistics = _stats;
+            using (rl1.Lock()) using (rl2.Lock()) {}
+            Assert.AreEqual(2, _stats.Acquisitions);
+            Assert.AreEqual(2, _stats.TimedHolds);
+        }
+
+        [Test] public void RollUpByTagSumsRegisteredStatistics()
+        {
+            LockStatistics other = new LockStatistics(_stats.Tag);
+            ReentrantLock rl1 = new ReentrantLock();
+            ReentrantLock rl2 = new ReentrantLock();
+            rl1.Statistics = _stats;
+            rl2.Statistics = other;
+            using (rl1.Lock()) {}
+            using (rl2.Lock()) using (rl2.Lock()) {}
+            CollectionAssert.Contains(LockStatistics.Registered, _stats);
+            CollectionAssert.Contains(LockStatistics.Registered, other);
+            LockStatistics sum = LockStatistics.RollUpByTag()[_stats.Tag];
+            Assert.AreEqual(3, sum.Acquisitions);
+            Assert.AreEqual(2, sum.TimedHolds);
+            CollectionAssert.DoesNotContain(LockStatistics.Registered, sum);
+        }
+
+        [Test] public void ResetClearsCounters()
+        {
+            ReentrantLock rl = new ReentrantLock();
+            rl.Statistics = _stats;
+            using (rl.Lock()) {}
+            _stats.Reset();
+            Assert.AreEqual(0, _stats.Acquisitions);
+            Assert.AreEqual(0, _stats.TimedHolds);
+            Assert.AreEqual(TimeSpan.Zero, _stats.TotalHoldTime);
+            StringAssert.Contains(_stats.Tag, _stats.ToString());
+        }
+    }
+}
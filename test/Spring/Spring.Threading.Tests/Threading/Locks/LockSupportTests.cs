@@ -0,0 +1,96 @@
+using System;
+using System.Diagnostics;
+using System.Threading;
+using NUnit.CommonFixtures;
+using NUnit.CommonFixtures.Threading;
+using NUnit.Framework;
+
+namespace Spring.Threading.Locks
+{
+    /// <summary>
+    /// Test cases for <see cref="LockSupport"/>.
+    /// </summary>
+    /// <author>Doug Lea</author>
+    [TestFixture]
+    public class LockSupportTests : ThreadingTestFixture
+    {
+        private volatile bool _done;
+
+        [Test] public void ParkIsReleasedByUnpark()
+        {
+            Thread t = ThreadManager.StartAndAssertRegistered(
+                "T1", () =>
+                          {
+                              while (!_done) LockSupport.Park();
+                          });
+            Thread.Sleep(Delays.Short);
+            Assert.IsTrue(t.IsAlive);
+            _done = true;
+            LockSupport.Unpark(t);
+            ThreadManager.JoinAndVerify();
+        }
+
+        [Test] public void ParkReturnsAtOnceWhenUnparkedBefore()
+        {
+            LockSupport.Unpark(Thread.CurrentThread);
+            Stopwatch watch = Stopwatch.StartNew();
+            LockSupport.Park(Delays.Long);
+            Assert.Less(watch.Elapsed, Delays.Long);
+        }
+
+        [Test] public void PermitsDoNotAccumulate()
+        {
+            LockSupport.Unpark(Thread.CurrentThread);
+            LockSupport.Unpark(Thread.CurrentThread);
+            LockSupport.Park();
+            Stopwatch watch = Stopwatch.StartNew();
+            LockSupport.Park(Delays.Short);
+            Assert.GreaterOrEqual(watch.Elapsed.Ticks, Delays.Short.Ticks/2);
+        }
+
+        [Test] public void TimedParkReturnsAfterTimeout()
+        {
+            Stopwatch watch = Stopwatch.StartNew();
+            LockSupport.Park(Delays.Short);
+            Assert.GreaterOrEqual(watch.Elapsed.Ticks, Delays.Short.Ticks/2);
+        }
+
+        [Test] public void ParkUntilReturnsAfterDeadline()
+        {
+            DateTime deadline = DateTime.UtcNow.Add(Delays.Short);
+            LockSupport.ParkUntil(deadline);
+            Assert.GreaterOrEqual(DateTime.UtcNow.AddMilliseconds(20), deadline); // clock resolution
+        }
+
+        [Test] public void ParkIsInterruptible()
+        {
+            Thread t = ThreadManager.StartAndAssertRegistered(
+                "T1", () => Assert.Throws<ThreadInterruptedException>(LockSupport.Park));
+            Thread.Sleep(Delays.Short);
+            t.Interrupt();
+            ThreadManager.JoinAndVerify();
+        }
+
+        [Test] public void GetBlockerReportsObjectWhileParked()
+        {
+            object blocker = new object();
+            Thread t = ThreadManager.StartAndAssertRegistered(
+                "T1", () => LockSupport.Park(blocker, Delays.Long));
+            Thread.Sleep(Delays.Short);
+            Assert.AreSame(blocker, LockSupport.GetBlocker(t));
+            LockSupport.Unpark(t);
+            ThreadManager.JoinAndVerify();
+            Assert.IsNull(LockSupport.GetBlocker(t));
+        }
+
+        [Test] public void UnparkNullThreadIsNoOp()
+        {
+            LockSupport.Unpark(null);
+        }
+
+        [Test] public void GetBlockerChokesOnNullThread()
+        {
+            Assert.Throws<ArgumentNullException>(() => LockSupport.GetBlocker(null));
+        }
+    }
+}
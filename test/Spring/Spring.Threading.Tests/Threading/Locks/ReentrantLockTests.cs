@@ -7,6 +7,8 @@ using System.Threading;
 using NUnit.CommonFixtures;
 using NUnit.CommonFixtures.Threading;
 using NUnit.Framework;
+using Spring.Threading.Execution;
+using Spring.Threading.Future;
 
 namespace Spring.Threading.Locks
 {
@@ -77,6 +79,62 @@ namespace Spring.Threading.Locks
             Assert.IsFalse(new ReentrantLock(false).IsFair);
         }
 
+        [Test] public void DefaultSpinLimitAppliesToNonfairLocksOnly()
+        {
+            Assert.AreEqual(ReentrantLock.DefaultSpinLimit, new ReentrantLock().SpinLimit);
+            Assert.AreEqual(0, new ReentrantLock(true).SpinLimit);
+            Assert.AreEqual(0, new ReentrantLock(true, 100).SpinLimit);
+        }
+
+        [Test] public void ConstructorSetsGivenSpinLimit()
+        {
+            Assert.AreEqual(100, new ReentrantLock(false, 100).SpinLimit);
+            Assert.AreEqual(0, new ReentrantLock(false, 0).SpinLimit);
+        }
+
+        [Test] public void ConstructorChokesOnNegativeSpinLimit()
+        {
+            Assert.Throws<ArgumentOutOfRangeException>(() => new ReentrantLock(false, -1));
+        }
+
+        [Test] public void SpinningWaiterBlocksUntilLongHolderReleases([Values(0, 16, 100000)] int spinLimit)
+        {
+            _lock = new ReentrantLock(false, spinLimit);
+            _lock.Lock();
+            ThreadManager.StartAndAssertRegistered(
+                "T1",
+                delegate
+                    {
+                        _lock.Lock();
+                        Assert.IsTrue(_lock.IsHeldByCurrentThread);
+                        _lock.Unlock();
+                    });
+            Thread.Sleep(Delays.Short);
+            Assert.IsTrue(_lock.IsHeldByCurrentThread);
+            _lock.Unlock();
+            ThreadManager.JoinAndVerify();
+            Assert.IsFalse(_lock.IsLocked);
+        }
+
+        [Test] public void SpinningLockIsMutuallyExclusive([Values(0, 16, 100000)] int spinLimit)
+        {
+            _lock = new ReentrantLock(false, spinLimit);
+            int counter = 0;
+            Action action = delegate
+                                {
+                                    for (int i = 0; i < 10000; i++)
+                                    {
+                                        _lock.Lock();
+                                        try { counter++; }
+                                        finally { _lock.Unlock(); }
+                                    }
+                                };
+            ThreadManager.StartAndAssertRegistered("T", action, action, action, action);
+            ThreadManager.JoinAndVerify(Delays.Long);
+            Assert.AreEqual(40000, counter);
+            Assert.IsFalse(_lock.IsLocked);
+        }
+
         [Test] public void LockIsNotInterruptibe([Values(true, false)] bool isFair)
         {
             _lock = new ReentrantLock(isFair);
@@ -810,6 +868,245 @@ namespace Spring.Threading.Locks
             StringAssert.Contains("Unlocked", _lock.ToString());
         }
 
+        [Test] public void SignalWakesExactlyOneWaiterInArrivalOrder([Values(true, false)] bool isFair)
+        {
+            _lock = new ReentrantLock(isFair);
+            ICondition c = _lock.NewCondition();
+            int[] woken = new int[1];
+            Thread[] waiters = new Thread[3];
+            for (int i = 0; i < waiters.Length; i++)
+            {
+                waiters[i] = ThreadManager.StartAndAssertRegistered(
+                    "T" + i,
+                    delegate
+                        {
+                            using (_lock.Lock())
+                            {
+                                c.Await();
+                                woken[0]++;
+                            }
+                        });
+                Thread.Sleep(Delays.Short);
+            }
+            using (_lock.Lock()) c.Signal();
+            waiters[0].Join(Delays.Medium);
+            Assert.IsFalse(waiters[0].IsAlive);
+            Thread.Sleep(Delays.Short);
+            using (_lock.Lock()) Assert.AreEqual(1, woken[0]);
+            Assert.IsTrue(waiters[1].IsAlive);
+            Assert.IsTrue(waiters[2].IsAlive);
+
+            using (_lock.Lock()) c.SignalAll();
+            ThreadManager.JoinAndVerify();
+            Assert.AreEqual(3, woken[0]);
+        }
+
+        [Test] public void SignalSkipsWaitersThatTimedOut([Values(true, false)] bool isFair)
+        {
+            _lock = new ReentrantLock(isFair);
+            ICondition c = _lock.NewCondition();
+            ThreadManager.StartAndAssertRegistered(
+                "T1",
+                delegate
+                    {
+                        using (_lock.Lock()) Assert.IsFalse(c.Await(Delays.Short));
+                    });
+            Thread.Sleep(Delays.Short);
+            ThreadManager.StartAndAssertRegistered(
+                "T2",
+                delegate
+                    {
+                        using (_lock.Lock()) c.Await();
+                    });
+            Thread.Sleep(Delays.Medium);
+            using (_lock.Lock()) c.Signal();
+            ThreadManager.JoinAndVerify();
+        }
+
+        [Test] public void TimedOutWaitersAreUnlinked()
+        {
+            _lock = new ReentrantLock(true);
+            ICondition c = _lock.NewCondition();
+            using (_lock.Lock())
+            {
+                for (int i = 0; i < 3; i++) Assert.IsFalse(c.Await(TimeSpan.FromMilliseconds(1)));
+                Assert.IsFalse(_lock.HasWaiters(c));
+                Assert.AreEqual(0, _lock.GetWaitQueueLength(c));
+            }
+        }
+
+        [Test] public void InterruptedWaiterIsUnlinked()
+        {
+            _lock = new ReentrantLock(true);
+            ICondition c = _lock.NewCondition();
+            Thread t1 = ThreadManager.StartAndAssertRegistered(
+                "T1",
+                delegate
+                    {
+                        using (_lock.Lock())
+                        {
+                            Assert.Throws<ThreadInterruptedException>(c.Await);
+                            Assert.IsFalse(_lock.HasWaiters(c));
+                        }
+                    });
+            Thread.Sleep(Delays.Short);
+            t1.Interrupt();
+            ThreadManager.JoinAndVerify();
+        }
+
+        [Test] public void LockAsyncRunsWhileHoldingTheLock([Values(true, false)] bool isFair)
+        {
+            _lock = new ReentrantLock(isFair);
+            IFuture<bool> f = _lock.LockAsync(new DirectExecutor(), () => _lock.IsHeldByCurrentThread);
+            Assert.IsTrue(f.IsDone);
+            Assert.IsTrue(f.GetResult());
+            Assert.IsFalse(_lock.IsLocked);
+        }
+
+        [Test] public void LockAsyncWaitsForUnlock([Values(true, false)] bool isFair)
+        {
+            _lock = new ReentrantLock(isFair);
+            _lock.Lock();
+            _lock.Lock();
+            IFuture<int> f = _lock.LockAsync(new DirectExecutor(), () => _lock.HoldCount);
+            _lock.Unlock();
+            Assert.IsFalse(f.IsDone);
+            _lock.Unlock();
+            Assert.IsTrue(f.IsDone);
+            Assert.AreEqual(1, f.GetResult());
+            Assert.IsFalse(_lock.IsLocked);
+        }
+
+        [Test] public void LockAsyncRunsWhenUsingBlockExits([Values(true, false)] bool isFair)
+        {
+            _lock = new ReentrantLock(isFair);
+            IFuture<int> f;
+            using (_lock.Lock())
+            {
+                f = _lock.LockAsync(new DirectExecutor(), () => _lock.HoldCount);
+                Assert.IsFalse(f.IsDone);
+            }
+            Assert.IsTrue(f.IsDone);
+            Assert.AreEqual(1, f.GetResult());
+            Assert.IsFalse(_lock.IsLocked);
+        }
+
+        [Test] public void LockAsyncChainOnDirectExecutorDoesNotNest([Values(true, false)] bool isFair)
+        {
+            const int requests = 100000;
+            _lock = new ReentrantLock(isFair);
+            int count = 0;
+            List<IFuture<Void>> futures = new List<IFuture<Void>>();
+            _lock.Lock();
+            for (int i = 0; i < requests; i++)
+            {
+                futures.Add(_lock.LockAsync(new DirectExecutor(), () => { count++; }));
+            }
+            _lock.Unlock();
+            Assert.AreEqual(requests, count);
+            foreach (IFuture<Void> f in futures) Assert.IsTrue(f.IsDone);
+            Assert.IsFalse(_lock.IsLocked);
+        }
+
+        [Test] public void CancelledLockAsyncDoesNotRun([Values(true, false)] bool isFair)
+        {
+            _lock = new ReentrantLock(isFair);
+            _lock.Lock();
+            bool ran = false;
+            IFuture<Void> f1 = _lock.LockAsync(new DirectExecutor(), () => { ran = true; });
+            IFuture<Void> f2 = _lock.LockAsync(new DirectExecutor(), delegate { });
+            Assert.IsTrue(f1.Cancel());
+            _lock.Unlock();
+            Assert.IsFalse(ran);
+            Assert.IsTrue(f2.IsDone);
+            Assert.IsFalse(_lock.IsLocked);
+        }
+
+        [Test] public void LockAsyncIsMutuallyExclusiveWithLock([Values(true, false)] bool isFair)
+        {
+            const int requests = 500;
+            _lock = new ReentrantLock(isFair);
+            IExecutorService executor = Executors.NewFixedThreadPool(4);
+            int count = 0;
+            ThreadStart locker = delegate
+                {
+                    for (int i = 0; i < requests; i++)
+                    {
+                        _lock.Lock();
+                        try { count++; }
+                        finally { _lock.Unlock(); }
+                    }
+                };
+            try
+            {
+                ThreadManager.StartAndAssertRegistered("T", locker, locker);
+                List<IFuture<Void>> futures = new List<IFuture<Void>>();
+                for (int i = 0; i < requests; i++)
+                {
+                    futures.Add(_lock.LockAsync(executor, () => { count++; }));
+                }
+                foreach (IFuture<Void> f in futures) f.GetResult(Delays.Long);
+                ThreadManager.JoinAndVerify(Delays.Long);
+            }
+            finally
+            {
+                executor.ShutdownNow();
+            }
+            Assert.AreEqual(3 * requests, count);
+            Assert.IsFalse(_lock.IsLocked);
+        }
+
+        [Test] public void GrantedLockAsyncHoldsTheLockUntilItRuns([Values(true, false)] bool isFair)
+        {
+            _lock = new ReentrantLock(isFair);
+            DeferredExecutor executor = new DeferredExecutor();
+            _lock.Lock();
+            IFuture<int> f = _lock.LockAsync(executor, () => _lock.HoldCount);
+            _lock.Unlock();
+            Assert.AreEqual(1, executor.Actions.Count);
+            Assert.IsTrue(_lock.IsLocked);
+            StringAssert.Contains("Locked by asynchronous request", _lock.ToString());
+            ThreadManager.StartAndAssertRegistered("T1", () => Assert.IsFalse(_lock.TryLock()));
+            ThreadManager.JoinAndVerify();
+            Assert.IsFalse(_lock.TryLock());
+            executor.Actions.Dequeue()();
+            Assert.AreEqual(1, f.GetResult());
+            Assert.IsFalse(_lock.IsLocked);
+        }
+
+        [Test] public void CancelledGrantedLockAsyncReleasesTheLock([Values(true, false)] bool isFair)
+        {
+            _lock = new ReentrantLock(isFair);
+            DeferredExecutor executor = new DeferredExecutor();
+            _lock.Lock();
+            IFuture<Void> f1 = _lock.LockAsync(executor, delegate { Assert.Fail("cancelled request ran"); });
+            IFuture<Void> f2 = _lock.LockAsync(executor, delegate { });
+            _lock.Unlock();
+            Assert.IsTrue(f1.Cancel());
+            Assert.AreEqual(2, executor.Actions.Count);
+            while (executor.Actions.Count > 0) executor.Actions.Dequeue()();
+            Assert.IsTrue(f2.IsDone);
+            Assert.IsFalse(_lock.IsLocked);
+        }
+
+        /// <summary>
+        /// Keeps the actions until the test runs them.
+        /// </summary>
+        private class DeferredExecutor : IExecutor
+        {
+            public readonly Queue<Action> Actions = new Queue<Action>();
+
+            public void Execute(IRunnable runnable)
+            {
+                Actions.Enqueue(runnable.Run);
+            }
+
+            public void Execute(Action action)
+            {
+                Actions.Enqueue(action);
+            }
+        }
+
         #region Private Methods
 
         private void InterruptedLock()
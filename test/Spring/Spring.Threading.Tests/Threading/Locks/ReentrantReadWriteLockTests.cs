@@ -1303,5 +1303,246 @@ namespace Spring.Threading.Locks
             t.Join();
             myLock.ReaderLock.Unlock();
         }
+
+        [Test]
+        public void ReadHoldCountTracksReentrantReads()
+        {
+            ReentrantReadWriteLock myLock = new ReentrantReadWriteLock();
+            for (int i = 1; i <= DEFAULT_COLLECTION_SIZE; i++)
+            {
+                myLock.ReaderLock.Lock();
+                Assert.AreEqual(i, myLock.ReadHoldCount);
+            }
+            for (int i = DEFAULT_COLLECTION_SIZE; i > 0; i--)
+            {
+                myLock.ReaderLock.Unlock();
+                Assert.AreEqual(i - 1, myLock.ReadHoldCount);
+            }
+        }
+
+        [Test]
+        public void ReadUnlockChokesWhenNotHeld()
+        {
+            ReentrantReadWriteLock myLock = new ReentrantReadWriteLock();
+            Assert.Throws<SynchronizationLockException>(myLock.ReaderLock.Unlock);
+            myLock.ReaderLock.Lock();
+            Thread t = new Thread(delegate()
+                                      {
+                                          Assert.AreEqual(0, myLock.ReadHoldCount);
+                                          Assert.Throws<SynchronizationLockException>(myLock.ReaderLock.Unlock);
+                                      });
+            t.Start();
+            t.Join();
+            Assert.AreEqual(1, myLock.ReadLockCount);
+            myLock.ReaderLock.Unlock();
+            Assert.AreEqual(0, myLock.ReadLockCount);
+        }
+
+        [Test]
+        public void ManyReadersKeepSeparateHoldCounts()
+        {
+            ReentrantReadWriteLock myLock = new ReentrantReadWriteLock();
+            const int readers = 4;
+            Thread[] threads = new Thread[readers];
+            for (int i = 0; i < readers; i++)
+            {
+                int holds = i + 1;
+                threads[i] = new Thread(delegate()
+                                            {
+                                                for (int k = 0; k < 1000; k++)
+                                                {
+                                                    for (int j = 0; j < holds; j++) myLock.ReaderLock.Lock();
+                                                    Assert.AreEqual(holds, myLock.ReadHoldCount);
+                                                    for (int j = 0; j < holds; j++) myLock.ReaderLock.Unlock();
+                                                    Assert.AreEqual(0, myLock.ReadHoldCount);
+                                                }
+                                            });
+                threads[i].Start();
+            }
+            foreach (Thread t in threads) t.Join();
+            Assert.AreEqual(0, myLock.ReadLockCount);
+            Assert.IsTrue(myLock.WriterLock.TryLock());
+            myLock.WriterLock.Unlock();
+        }
+
+        [Test]
+        public void WriteUnlockWakesQueuedWriters([Values(true, false)] bool isFair)
+        {
+            ReentrantReadWriteLock myLock = new ReentrantReadWriteLock(isFair);
+            const int writers = 4;
+            const int iterations = 20000;
+            int count = 0;
+            Thread[] threads = new Thread[writers];
+            for (int i = 0; i < writers; i++)
+            {
+                threads[i] = new Thread(delegate()
+                                            {
+                                                for (int k = 0; k < iterations; k++)
+                                                {
+                                                    myLock.WriterLock.Lock();
+                                                    count++;
+                                                    myLock.WriterLock.Unlock();
+                                                }
+                                            });
+                threads[i].Start();
+            }
+            foreach (Thread t in threads)
+            {
+                t.Join(Delays.Long);
+                Assert.IsFalse(t.IsAlive, "writer missed a release");
+            }
+            Assert.AreEqual(writers * iterations, count);
+            Assert.IsFalse(myLock.IsWriteLockHeld);
+            Assert.IsFalse(myLock.HasQueuedThreads);
+        }
+
+        [Test]
+        public void ReadLockCanBeHeldWhileWriting()
+        {
+            ReentrantReadWriteLock myLock = new ReentrantReadWriteLock();
+            myLock.WriterLock.Lock();
+            myLock.ReaderLock.Lock();
+            Assert.AreEqual(1, myLock.ReadHoldCount);
+            myLock.WriterLock.Unlock();
+            Assert.IsFalse(myLock.IsWriteLockHeld);
+            Assert.AreEqual(1, myLock.ReadLockCount);
+            Assert.IsFalse(myLock.WriterLock.TryLock());
+            myLock.ReaderLock.Unlock();
+        }
+
+        [Test]
+        public void FairConstructor()
+        {
+            ReentrantReadWriteLock rl = new ReentrantReadWriteLock(true);
+            Assert.IsTrue(rl.IsFair);
+            Assert.IsFalse(rl.IsWriteLockHeld);
+            Assert.AreEqual(0, rl.ReadLockCount);
+            Assert.IsFalse(new ReentrantReadWriteLock(false).IsFair);
+        }
+
+        [Test]
+        public void FairSerializationKeepsFairness()
+        {
+            ReentrantReadWriteLock l = new ReentrantReadWriteLock(true);
+            l.ReaderLock.Lock();
+            l.ReaderLock.Unlock();
+
+            MemoryStream bout = new MemoryStream(10000);
+            BinaryFormatter formatter = new BinaryFormatter();
+            formatter.Serialize(bout, l);
+            bout.Position = 0;
+            ReentrantReadWriteLock r = (ReentrantReadWriteLock) formatter.Deserialize(bout);
+            Assert.IsTrue(r.IsFair);
+            r.ReaderLock.Lock();
+            r.ReaderLock.Unlock();
+        }
+
+        [Test]
+        public void FairReaderQueuesBehindWaitingWriter()
+        {
+            ReentrantReadWriteLock myLock = new ReentrantReadWriteLock(true);
+            myLock.ReaderLock.Lock();
+            Thread writer = new Thread(delegate()
+                                           {
+                                               myLock.WriterLock.Lock();
+                                               myLock.WriterLock.Unlock();
+                                           });
+            writer.Start();
+            Thread.Sleep(Delays.Short);
+            Assert.IsTrue(myLock.HasQueuedThreads);
+            Assert.IsTrue(myLock.IsQueuedThread(writer));
+
+            bool[] acquired = new bool[1];
+            Thread reader = new Thread(delegate()
+                                           {
+                                               acquired[0] = myLock.ReaderLock.TryLock(Delays.Short);
+                                               if (acquired[0]) myLock.ReaderLock.Unlock();
+                                           });
+            reader.Start();
+            reader.Join();
+            Assert.IsFalse(acquired[0]);
+
+            myLock.ReaderLock.Unlock();
+            writer.Join(Delays.Medium);
+            Assert.IsFalse(writer.IsAlive);
+            Assert.IsFalse(myLock.HasQueuedThreads);
+        }
+
+        [Test]
+        public void FairReentrantReadIsGrantedWithWaitingWriter()
+        {
+            ReentrantReadWriteLock myLock = new ReentrantReadWriteLock(true);
+            myLock.ReaderLock.Lock();
+            Thread writer = new Thread(delegate()
+                                           {
+                                               myLock.WriterLock.Lock();
+                                               myLock.WriterLock.Unlock();
+                                           });
+            writer.Start();
+            Thread.Sleep(Delays.Short);
+            Assert.IsTrue(myLock.ReaderLock.TryLock(Delays.Short));
+            Assert.AreEqual(2, myLock.ReadHoldCount);
+            myLock.ReaderLock.Unlock();
+            myLock.ReaderLock.Unlock();
+            writer.Join(Delays.Medium);
+            Assert.IsFalse(writer.IsAlive);
+        }
+
+        [Test]
+        public void QueuedReaderAndWriterThreads()
+        {
+            ReentrantReadWriteLock myLock = new ReentrantReadWriteLock(true);
+            myLock.WriterLock.Lock();
+            Thread writer = new Thread(delegate()
+                                           {
+                                               myLock.WriterLock.Lock();
+                                               myLock.WriterLock.Unlock();
+                                           });
+            Thread reader = new Thread(delegate()
+                                           {
+                                               myLock.ReaderLock.Lock();
+                                               myLock.ReaderLock.Unlock();
+                                           });
+            writer.Start();
+            Thread.Sleep(Delays.Short);
+            reader.Start();
+            Thread.Sleep(Delays.Short);
+            Assert.AreEqual(2, myLock.QueueLength);
+            CollectionAssert.AreEquivalent(new[] {writer, reader}, myLock.QueuedThreads);
+            CollectionAssert.AreEquivalent(new[] {writer}, myLock.QueuedWriterThreads);
+            CollectionAssert.AreEquivalent(new[] {reader}, myLock.QueuedReaderThreads);
+            myLock.WriterLock.Unlock();
+            writer.Join(Delays.Medium);
+            reader.Join(Delays.Medium);
+            Assert.AreEqual(0, myLock.QueueLength);
+            Assert.AreEqual(0, myLock.QueuedReaderThreads.Count);
+        }
+
+        [Test]
+        public void ConditionInstrumentation()
+        {
+            ReentrantReadWriteLock myLock = new ReentrantReadWriteLock(true);
+            ICondition c = myLock.WriterLock.NewCondition();
+            Thread t = new Thread(delegate()
+                                      {
+                                          myLock.WriterLock.Lock();
+                                          c.Await();
+                                          myLock.WriterLock.Unlock();
+                                      });
+            t.Start();
+            Thread.Sleep(Delays.Short);
+            myLock.WriterLock.Lock();
+            Assert.IsTrue(myLock.HasWaiters(c));
+            Assert.AreEqual(1, myLock.GetWaitQueueLength(c));
+            c.Signal();
+            Assert.IsFalse(myLock.HasWaiters(c));
+            myLock.WriterLock.Unlock();
+            t.Join(Delays.Medium);
+            Assert.IsFalse(t.IsAlive);
+
+            Assert.Throws<ArgumentNullException>(() => myLock.HasWaiters(null));
+            ICondition foreign = new ReentrantReadWriteLock().WriterLock.NewCondition();
+            Assert.Throws<ArgumentException>(() => myLock.GetWaitQueueLength(foreign));
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,272 @@
+using System;
+using System.IO;
+using System.Runtime.Serialization.Formatters.Binary;
+using System.Threading;
+using NUnit.CommonFixtures;
+using NUnit.CommonFixtures.Threading;
+using NUnit.Framework;
+
+namespace Spring.Threading.Locks
+{
+    /// <summary>
+    /// Test cases for <see cref="StampedLock"/>.
+    /// </summary>
+    /// <author>Doug Lea</author>
+    [TestFixture]
+    public class StampedLockTests : ThreadingTestFixture
+    {
+        private StampedLock _lock;
+
+        [SetUp] public void SetUp()
+        {
+            _lock = new StampedLock();
+        }
+
+        [Test] public void NewLockIsUnlocked()
+        {
+            Assert.IsFalse(_lock.IsWriteLocked);
+            Assert.IsFalse(_lock.IsReadLocked);
+            Assert.AreEqual(0, _lock.ReadLockCount);
+            StringAssert.Contains("Unlocked", _lock.ToString());
+        }
+
+        [Test] public void WriteLockAndUnlockWrite()
+        {
+            long s = _lock.WriteLock();
+            Assert.IsTrue(_lock.IsWriteLocked);
+            Assert.IsFalse(_lock.IsReadLocked);
+            Assert.IsTrue(StampedLock.IsWriteLockStamp(s));
+            Assert.IsTrue(StampedLock.IsLockStamp(s));
+            StringAssert.Contains("Write-locked", _lock.ToString());
+            _lock.UnlockWrite(s);
+            Assert.IsFalse(_lock.IsWriteLocked);
+        }
+
+        [Test] public void ReadLocksAreShared()
+        {
+            long s1 = _lock.ReadLock();
+            long s2 = _lock.TryReadLock();
+            Assert.AreNotEqual(0L, s2);
+            Assert.IsTrue(StampedLock.IsReadLockStamp(s1));
+            Assert.AreEqual(2, _lock.ReadLockCount);
+            StringAssert.Contains("Read-locks:2", _lock.ToString());
+            Assert.AreEqual(0L, _lock.TryWriteLock());
+            _lock.UnlockRead(s2);
+            _lock.Unlock(s1);
+            Assert.IsFalse(_lock.IsReadLocked);
+            Assert.AreNotEqual(0L, _lock.TryWriteLock());
+        }
+
+        [Test] public void ManyReadersOverflowTheStateBits()
+        {
+            const int readers = 500;
+            long[] stamps = new long[readers];
+            for (int i = 0; i < readers; i++) stamps[i] = _lock.ReadLock();
+            Assert.AreEqual(readers, _lock.ReadLockCount);
+            for (int i = 0; i < readers; i++) _lock.UnlockRead(stamps[i]);
+            Assert.AreEqual(0, _lock.ReadLockCount);
+            Assert.IsFalse(_lock.IsReadLocked);
+        }
+
+        [Test] public void UnlockChokesOnBadStamps()
+        {
+            Assert.Throws<SynchronizationLockException>(() => _lock.UnlockWrite(0L));
+            Assert.Throws<SynchronizationLockException>(() => _lock.UnlockRead(0L));
+            long s = _lock.WriteLock();
+            Assert.Throws<SynchronizationLockException>(() => _lock.UnlockRead(s));
+            _lock.UnlockWrite(s);
+            Assert.Throws<SynchronizationLockException>(() => _lock.UnlockWrite(s));
+            long r = _lock.ReadLock();
+            _lock.UnlockRead(r);
+            Assert.Throws<SynchronizationLockException>(() => _lock.UnlockRead(r));
+        }
+
+        [Test] public void OptimisticReadValidatesUntilWrite()
+        {
+            long p = _lock.TryOptimisticRead();
+            Assert.IsTrue(StampedLock.IsOptimisticReadStamp(p));
+            Assert.IsTrue(_lock.Validate(p));
+            long r = _lock.ReadLock();
+            Assert.IsTrue(_lock.Validate(p));
+            _lock.UnlockRead(r);
+            Assert.IsTrue(_lock.Validate(p));
+            long w = _lock.WriteLock();
+            Assert.IsFalse(_lock.Validate(p));
+            Assert.AreEqual(0L, _lock.TryOptimisticRead());
+            _lock.UnlockWrite(w);
+            Assert.IsFalse(_lock.Validate(p));
+            Assert.IsTrue(_lock.Validate(_lock.TryOptimisticRead()));
+            Assert.IsFalse(_lock.Validate(0L));
+        }
+
+        [Test] public void ConvertOptimisticToWriteAndBack()
+        {
+            long p = _lock.TryOptimisticRead();
+            long w = _lock.TryConvertToWriteLock(p);
+            Assert.IsTrue(StampedLock.IsWriteLockStamp(w));
+            Assert.AreEqual(w, _lock.TryConvertToWriteLock(w));
+            long q = _lock.TryConvertToOptimisticRead(w);
+            Assert.IsTrue(StampedLock.IsOptimisticReadStamp(q));
+            Assert.IsFalse(_lock.IsWriteLocked);
+            Assert.IsTrue(_lock.Validate(q));
+            Assert.AreEqual(0L, _lock.TryConvertToWriteLock(p));
+        }
+
+        [Test] public void ConvertReadToWriteOnlyWhenSoleReader()
+        {
+            long r1 = _lock.ReadLock();
+            long r2 = _lock.ReadLock();
+            Assert.AreEqual(0L, _lock.TryConvertToWriteLock(r1));
+            _lock.UnlockRead(r2);
+            long w = _lock.TryConvertToWriteLock(r1);
+            Assert.AreNotEqual(0L, w);
+            Assert.IsTrue(_lock.IsWriteLocked);
+            Assert.IsFalse(_lock.IsReadLocked);
+            _lock.UnlockWrite(w);
+        }
+
+        [Test] public void ConvertWriteToReadAdmitsWaitingReaders()
+        {
+            long w = _lock.WriteLock();
+            Thread t1 = ThreadManager.StartAndAssertRegistered(
+                "T1", () => _lock.UnlockRead(_lock.ReadLock()));
+            Thread.Sleep(Delays.Short);
+            Assert.IsTrue(t1.IsAlive);
+            long r = _lock.TryConvertToReadLock(w);
+            Assert.IsTrue(StampedLock.IsReadLockStamp(r));
+            Assert.IsFalse(_lock.IsWriteLocked);
+            ThreadManager.JoinAndVerify();
+            Assert.AreEqual(1, _lock.ReadLockCount);
+            long q = _lock.TryConvertToOptimisticRead(r);
+            Assert.AreNotEqual(0L, q);
+            Assert.IsFalse(_lock.IsReadLocked);
+        }
+
+        [Test] public void WriterWaitsForReaders()
+        {
+            long r = _lock.ReadLock();
+            ThreadManager.StartAndAssertRegistered(
+                "T1", () => _lock.UnlockWrite(_lock.WriteLock()));
+            Thread.Sleep(Delays.Short);
+            Assert.IsFalse(_lock.IsWriteLocked);
+            _lock.UnlockRead(r);
+            ThreadManager.JoinAndVerify();
+            Assert.IsFalse(_lock.IsWriteLocked);
+        }
+
+        [Test] public void ReaderQueuesBehindWaitingWriter()
+        {
+            long r = _lock.ReadLock();
+            ThreadManager.StartAndAssertRegistered(
+                "T1", () => _lock.UnlockWrite(_lock.WriteLock()));
+            Thread.Sleep(Delays.Short);
+            ThreadManager.StartAndAssertRegistered(
+                "T2", () => Assert.AreEqual(0L, _lock.TryReadLock(Delays.Short)));
+            Thread.Sleep(Delays.Medium);
+            _lock.UnlockRead(r);
+            ThreadManager.JoinAndVerify();
+        }
+
+        [Test] public void TimedTryLocksTimeOut()
+        {
+            long w = _lock.WriteLock();
+            ThreadManager.StartAndAssertRegistered(
+                "T1", () =>
+                          {
+                              Assert.AreEqual(0L, _lock.TryWriteLock(Delays.Short));
+                              Assert.AreEqual(0L, _lock.TryReadLock(Delays.Short));
+                          });
+            ThreadManager.JoinAndVerify();
+            _lock.UnlockWrite(w);
+            Assert.AreNotEqual(0L, _lock.TryReadLock(Delays.Short));
+        }
+
+        [Test] public void InterruptibleLocksAreInterruptible()
+        {
+            long w = _lock.WriteLock();
+            Thread t1 = ThreadManager.StartAndAssertRegistered(
+                "T1", () => Assert.Throws<ThreadInterruptedException>(() => _lock.WriteLockInterruptibly()));
+            Thread t2 = ThreadManager.StartAndAssertRegistered(
+                "T2", () => Assert.Throws<ThreadInterruptedException>(() => _lock.ReadLockInterruptibly()));
+            Thread.Sleep(Delays.Short);
+            t1.Interrupt();
+            t2.Interrupt();
+            ThreadManager.JoinAndVerify();
+            Assert.IsTrue(_lock.IsWriteLocked);
+            _lock.UnlockWrite(w);
+        }
+
+        [Test] public void TryUnlockWithoutStamp()
+        {
+            Assert.IsFalse(_lock.TryUnlockWrite());
+            Assert.IsFalse(_lock.TryUnlockRead());
+            _lock.WriteLock();
+            Assert.IsFalse(_lock.TryUnlockRead());
+            Assert.IsTrue(_lock.TryUnlockWrite());
+            _lock.ReadLock();
+            Assert.IsTrue(_lock.TryUnlockRead());
+            Assert.IsFalse(_lock.IsReadLocked);
+        }
+
+        [Test] public void LockViews()
+        {
+            IReadWriteLock rwl = _lock.AsReadWriteLock();
+            using (rwl.ReaderLock.Lock())
+            {
+                Assert.IsTrue(_lock.IsReadLocked);
+                Assert.IsFalse(rwl.WriterLock.TryLock());
+            }
+            using (_lock.AsWriteLock().Lock())
+            {
+                Assert.IsTrue(_lock.IsWriteLocked);
+            }
+            Assert.Throws<SynchronizationLockException>(_lock.AsWriteLock().Unlock);
+            Assert.Throws<SynchronizationLockException>(_lock.AsReadLock().Unlock);
+            Assert.Throws<NotSupportedException>(() => _lock.AsReadLock().NewCondition());
+        }
+
+        [Test] public void ReadersAndWritersKeepFieldsConsistent()
+        {
+            int[] pair = new int[2];
+            Action writer = delegate
+                                {
+                                    for (int i = 0; i < 10000; i++)
+                                    {
+                                        long s = _lock.WriteLock();
+                                        try { pair[0]++; pair[1]--; }
+                                        finally { _lock.UnlockWrite(s); }
+                                    }
+                                };
+            Action reader = delegate
+                                {
+                                    for (int i = 0; i < 10000; i++)
+                                    {
+                                        long s = _lock.TryOptimisticRead();
+                                        int a = pair[0], b = pair[1];
+                                        if (!_lock.Validate(s))
+                                        {
+                                            s = _lock.ReadLock();
+                                            try { a = pair[0]; b = pair[1]; }
+                                            finally { _lock.UnlockRead(s); }
+                                        }
+                                        Assert.AreEqual(0, a + b);
+                                    }
+                                };
+            ThreadManager.StartAndAssertRegistered("T", writer, reader, writer, reader);
+            ThreadManager.JoinAndVerify(Delays.Long);
+            Assert.AreEqual(20000, pair[0]);
+        }
+
+        [Test] public void DeserializedLockIsUnlocked()
+        {
+            _lock.WriteLock();
+            MemoryStream bout = new MemoryStream(10000);
+            BinaryFormatter formatter = new BinaryFormatter();
+            formatter.Serialize(bout, _lock);
+            bout.Position = 0;
+            StampedLock r = (StampedLock) formatter.Deserialize(bout);
+            Assert.IsFalse(r.IsWriteLocked);
+            r.UnlockRead(r.ReadLock());
+        }
+    }
+}
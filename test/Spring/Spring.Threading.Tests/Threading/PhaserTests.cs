@@ -0,0 +1,297 @@
+using System;
+using System.Threading;
+using NUnit.CommonFixtures;
+using NUnit.CommonFixtures.Threading;
+using NUnit.Framework;
+
+namespace Spring.Threading
+{
+    /// <summary>
+    /// Test cases for <see cref="Phaser"/>.
+    /// </summary>
+    /// <author>Doug Lea</author>
+    [TestFixture]
+    public class PhaserTests : ThreadingTestFixture
+    {
+        private class CountingPhaser : Phaser
+        {
+            public int Advances;
+            private readonly int _lastPhase;
+
+            public CountingPhaser(int parties, int lastPhase) : base(parties)
+            {
+                _lastPhase = lastPhase;
+            }
+
+            protected override bool OnAdvance(int phase, int registeredParties)
+            {
+                Advances++;
+                return phase >= _lastPhase || registeredParties == 0;
+            }
+        }
+
+        [Test] public void ConstructorSetsPartiesAndParent()
+        {
+            Phaser root = new Phaser(3);
+            Assert.AreEqual(0, root.Phase);
+            Assert.AreEqual(3, root.RegisteredParties);
+            Assert.AreEqual(3, root.UnarrivedParties);
+            Assert.AreEqual(0, root.ArrivedParties);
+            Assert.IsNull(root.Parent);
+            Assert.AreSame(root, root.Root);
+            Phaser child = new Phaser(root, 2);
+            Assert.AreSame(root, child.Parent);
+            Assert.AreSame(root, child.Root);
+            Assert.AreEqual(4, root.RegisteredParties);
+            Assert.AreSame(root, new Phaser(child).Root);
+        }
+
+        [Test] public void ConstructorChokesOnIllegalParties()
+        {
+            Assert.Throws<ArgumentOutOfRangeException>(() => new Phaser(-1));
+            Assert.Throws<ArgumentOutOfRangeException>(() => new Phaser(1 << 16));
+        }
+
+        [Test] public void RegisterAddsUnarrivedParty()
+        {
+            Phaser p = new Phaser();
+            Assert.AreEqual(0, p.Register());
+            Assert.AreEqual(1, p.RegisteredParties);
+            Assert.AreEqual(0, p.BulkRegister(5));
+            Assert.AreEqual(6, p.UnarrivedParties);
+            Assert.AreEqual(0, p.BulkRegister(0));
+            Assert.Throws<ArgumentOutOfRangeException>(() => p.BulkRegister(-1));
+        }
+
+        [Test] public void RegisterChokesBeyondMaximumParties()
+        {
+            Phaser p = new Phaser(0xffff);
+            Assert.Throws<InvalidOperationException>(() => p.Register());
+            Assert.AreEqual(0xffff, p.RegisteredParties);
+        }
+
+        [Test] public void ArriveAdvancesPhaseWhenAllPartiesArrive()
+        {
+            Phaser p = new Phaser(2);
+            Assert.AreEqual(0, p.Arrive());
+            Assert.AreEqual(1, p.ArrivedParties);
+            Assert.AreEqual(0, p.Phase);
+            Assert.AreEqual(0, p.Arrive());
+            Assert.AreEqual(1, p.Phase);
+            Assert.AreEqual(2, p.UnarrivedParties);
+            Assert.IsFalse(p.IsTerminated);
+        }
+
+        [Test] public void ArriveChokesOnUnregisteredParty()
+        {
+            Phaser p = new Phaser();
+            Assert.Throws<InvalidOperationException>(() => p.Arrive());
+            Assert.Throws<InvalidOperationException>(() => p.ArriveAndDeregister());
+        }
+
+        [Test] public void DeregisteringLastPartyTerminates()
+        {
+            Phaser p = new Phaser(2);
+            Assert.AreEqual(0, p.ArriveAndDeregister());
+            Assert.AreEqual(1, p.RegisteredParties);
+            Assert.AreEqual(0, p.ArriveAndDeregister());
+            Assert.IsTrue(p.IsTerminated);
+            Assert.Less(p.Phase, 0);
+            Assert.Less(p.Register(), 0);
+            Assert.Less(p.Arrive(), 0);
+        }
+
+        [Test] public void AwaitAdvanceReturnsImmediatelyForOtherPhase()
+        {
+            Phaser p = new Phaser(1);
+            Assert.AreEqual(0, p.Arrive());
+            Assert.AreEqual(1, p.AwaitAdvance(0));
+            Assert.AreEqual(1, p.AwaitAdvanceInterruptibly(0));
+            Assert.AreEqual(1, p.AwaitAdvanceInterruptibly(0, Delays.Short));
+            Assert.AreEqual(-1, p.AwaitAdvance(-1));
+        }
+
+        [Test] public void ArriveAndAwaitAdvanceWaitsForAllParties()
+        {
+            Phaser p = new Phaser(3);
+            int arrived = 0;
+            ThreadStart action = delegate
+                                     {
+                                         Interlocked.Increment(ref arrived);
+                                         Assert.AreEqual(1, p.ArriveAndAwaitAdvance());
+                                         Assert.AreEqual(3, arrived);
+                                     };
+            ThreadManager.StartAndAssertRegistered("T", action, action);
+            Thread.Sleep(Delays.Short);
+            Assert.AreEqual(2, p.ArrivedParties);
+            Interlocked.Increment(ref arrived);
+            Assert.AreEqual(1, p.ArriveAndAwaitAdvance());
+            ThreadManager.JoinAndVerify();
+        }
+
+        [Test] public void PhaserIsReusableAcrossManyPhases()
+        {
+            const int phases = 100;
+            Phaser p = new Phaser(4);
+            ThreadStart action = delegate
+                                     {
+                                         for (int i = 0; i < phases; i++)
+                                             Assert.AreEqual(i + 1, p.ArriveAndAwaitAdvance());
+                                     };
+            ThreadManager.StartAndAssertRegistered("T", action, action, action, action);
+            ThreadManager.JoinAndVerify(Delays.Long);
+            Assert.AreEqual(phases, p.Phase);
+        }
+
+        [Test] public void AwaitAdvanceInterruptiblyIsInterruptible()
+        {
+            Phaser p = new Phaser(2);
+            Thread t1 = ThreadManager.StartAndAssertRegistered(
+                "T1", () => Assert.Throws<ThreadInterruptedException>(
+                                () => p.AwaitAdvanceInterruptibly(p.Arrive())));
+            Thread.Sleep(Delays.Short);
+            t1.Interrupt();
+            ThreadManager.JoinAndVerify();
+            Assert.AreEqual(0, p.Phase);
+        }
+
+        [Test] public void AwaitAdvanceIsNotInterruptible()
+        {
+            Phaser p = new Phaser(2);
+            Thread t1 = ThreadManager.StartAndAssertRegistered(
+                "T1", () =>
+                          {
+                              Assert.AreEqual(1, p.AwaitAdvance(p.Arrive()));
+                              Assert.IsTrue(TestThreadManager.IsCurrentThreadInterrupted());
+                          });
+            Thread.Sleep(Delays.Short);
+            t1.Interrupt();
+            Thread.Sleep(Delays.Short);
+            Assert.IsTrue(t1.IsAlive);
+            p.Arrive();
+            ThreadManager.JoinAndVerify();
+        }
+
+        [Test] public void TimedAwaitAdvanceTimesOut()
+        {
+            Phaser p = new Phaser(2);
+            int phase = p.Arrive();
+            Assert.Throws<TimeoutException>(() => p.AwaitAdvanceInterruptibly(phase, Delays.Short));
+            Assert.AreEqual(0, p.Phase);
+            Assert.AreEqual(1, p.UnarrivedParties);
+        }
+
+        [Test] public void TimedAwaitAdvanceAllowsLongWait()
+        {
+            Phaser p = new Phaser(2);
+            int phase = p.Arrive();
+            ThreadManager.StartAndAssertRegistered(
+                "T1", () => Assert.AreEqual(1, p.AwaitAdvanceInterruptibly(phase, TimeSpan.MaxValue)));
+            Thread.Sleep(Delays.Short);
+            p.Arrive();
+            ThreadManager.JoinAndVerify();
+        }
+
+        [Test] public void ForceTerminationReleasesWaiters()
+        {
+            Phaser p = new Phaser(3);
+            ThreadStart action = () => Assert.Less(p.ArriveAndAwaitAdvance(), 0);
+            ThreadManager.StartAndAssertRegistered("T", action, action);
+            Thread.Sleep(Delays.Short);
+            p.ForceTermination();
+            ThreadManager.JoinAndVerify();
+            Assert.IsTrue(p.IsTerminated);
+            Assert.AreEqual(0, p.Phase + int.MinValue);
+            Assert.AreEqual(3, p.RegisteredParties);
+        }
+
+        [Test] public void OnAdvanceIsInvokedOncePerPhaseAndCanTerminate()
+        {
+            CountingPhaser p = new CountingPhaser(1, 2);
+            Assert.AreEqual(0, p.Arrive());
+            Assert.AreEqual(1, p.Arrive());
+            Assert.IsFalse(p.IsTerminated);
+            Assert.AreEqual(2, p.Arrive());
+            Assert.IsTrue(p.IsTerminated);
+            Assert.AreEqual(3, p.Advances);
+        }
+
+        [Test] public void ChildRegistersWithParentAsSingleParty()
+        {
+            Phaser root = new Phaser(1);
+            Phaser child = new Phaser(root);
+            Assert.AreEqual(1, root.RegisteredParties);
+            child.BulkRegister(3);
+            Assert.AreEqual(2, root.RegisteredParties);
+            Assert.AreEqual(3, child.RegisteredParties);
+        }
+
+        [Test] public void ChildAdvancesOnlyWhenWholeTreeArrives()
+        {
+            Phaser root = new Phaser(1);
+            Phaser child = new Phaser(root, 2);
+            child.Arrive();
+            child.Arrive();
+            Assert.AreEqual(0, root.Phase);
+            Assert.AreEqual(1, root.ArrivedParties);
+            root.Arrive();
+            Assert.AreEqual(1, root.Phase);
+            Assert.AreEqual(1, child.Phase);
+            Assert.AreEqual(2, child.UnarrivedParties);
+        }
+
+        [Test] public void DeregisteringChildDeregistersFromParent()
+        {
+            Phaser root = new Phaser(1);
+            Phaser child = new Phaser(root, 1);
+            Assert.AreEqual(2, root.RegisteredParties);
+            child.ArriveAndDeregister();
+            Assert.AreEqual(1, root.RegisteredParties);
+            Assert.AreEqual(0, child.RegisteredParties);
+            Assert.IsFalse(root.IsTerminated);
+        }
+
+        [Test] public void TieredPhasersSynchronizeManyParties()
+        {
+            const int groups = 4, perGroup = 25, phases = 10;
+            Phaser root = new Phaser();
+            ThreadStart[] actions = new ThreadStart[groups * perGroup];
+            for (int g = 0; g < groups; g++)
+            {
+                Phaser child = new Phaser(root, perGroup);
+                for (int i = 0; i < perGroup; i++)
+                {
+                    actions[g * perGroup + i] = delegate
+                        {
+                            for (int k = 0; k < phases; k++)
+                                Assert.AreEqual(k + 1, child.ArriveAndAwaitAdvance());
+                            child.ArriveAndDeregister();
+                        };
+                }
+            }
+            Assert.AreEqual(groups, root.RegisteredParties);
+            ThreadManager.StartAndAssertRegistered("T", actions);
+            ThreadManager.JoinAndVerify(Delays.Long);
+            Assert.IsTrue(root.IsTerminated);
+        }
+
+        [Test] public void ForceTerminationOfChildTerminatesTree()
+        {
+            Phaser root = new Phaser(1);
+            Phaser child = new Phaser(root, 1);
+            child.ForceTermination();
+            Assert.IsTrue(root.IsTerminated);
+            Assert.IsTrue(child.IsTerminated);
+            Assert.Less(child.Arrive(), 0);
+        }
+
+        [Test] public void ToStringReportsState()
+        {
+            Phaser p = new Phaser(3);
+            p.Arrive();
+            StringAssert.Contains("phase = 0", p.ToString());
+            StringAssert.Contains("parties = 3", p.ToString());
+            StringAssert.Contains("arrived = 1", p.ToString());
+        }
+    }
+}
@@ -0,0 +1,378 @@
+using System;
+using System.Collections.Generic;
+using System.IO;
+using System.Runtime.Serialization.Formatters.Binary;
+using System.Threading;
+using NUnit.CommonFixtures;
+using NUnit.CommonFixtures.Threading;
+using NUnit.Framework;
+using Spring.Threading.Execution;
+using Spring.Threading.Future;
+using Spring.Threading.Locks;
+
+namespace Spring.Threading
+{
+    /// <summary>
+    /// Test cases for <see cref="Semaphore"/>.
+    /// </summary>
+    /// <author>Doug Lea</author>
+    [TestFixture]
+    public class SemaphoreTests : ThreadingTestFixture
+    {
+        private class PublicSemaphore : Semaphore
+        {
+            public PublicSemaphore(int permits, bool fair) : base(permits, fair)
+            {
+            }
+
+            public void Reduce(int reduction)
+            {
+                ReducePermits(reduction);
+            }
+        }
+
+        [Test] public void ConstructorSetsPermitsAndFairness()
+        {
+            Semaphore s0 = new Semaphore(0);
+            Assert.AreEqual(0, s0.AvailablePermits);
+            Assert.IsFalse(s0.IsFair);
+            Semaphore s1 = new Semaphore(-1, true);
+            Assert.AreEqual(-1, s1.AvailablePermits);
+            Assert.IsTrue(s1.IsFair);
+        }
+
+        [Test] public void TryAcquireSucceedsWhileAvailable([Values(true, false)] bool isFair)
+        {
+            Semaphore s = new Semaphore(2, isFair);
+            Assert.IsTrue(s.TryAcquire());
+            Assert.IsTrue(s.TryAcquire());
+            Assert.AreEqual(0, s.AvailablePermits);
+            Assert.IsFalse(s.TryAcquire());
+            s.Release(2);
+            Assert.IsTrue(s.TryAcquire(2));
+            Assert.IsFalse(s.TryAcquire(1));
+        }
+
+        [Test] public void ManyPermitsAreTakenWithoutQueueing([Values(true, false)] bool isFair)
+        {
+            Semaphore s = new Semaphore(512, isFair);
+            for (int i = 0; i < 512; i++) s.Acquire();
+            Assert.AreEqual(0, s.AvailablePermits);
+            Assert.IsFalse(s.HasQueuedThreads);
+            s.Release(512);
+            Assert.AreEqual(512, s.AvailablePermits);
+        }
+
+        [Test] public void AcquireWaitsForRelease([Values(true, false)] bool isFair)
+        {
+            Semaphore s = new Semaphore(0, isFair);
+            ThreadManager.StartAndAssertRegistered(
+                "T1", () => { s.Acquire(); s.AcquireUninterruptibly(2); });
+            Thread.Sleep(Delays.Short);
+            Assert.IsTrue(s.HasQueuedThreads);
+            Assert.AreEqual(1, s.QueueLength);
+            s.Release(3);
+            ThreadManager.JoinAndVerify();
+            Assert.AreEqual(0, s.AvailablePermits);
+            Assert.IsFalse(s.HasQueuedThreads);
+        }
+
+        [Test] public void TimedTryAcquireTimesOut([Values(true, false)] bool isFair)
+        {
+            Semaphore s = new Semaphore(1, isFair);
+            Assert.IsFalse(s.TryAcquire(2, Delays.Short));
+            Assert.IsTrue(s.TryAcquire(Delays.Short));
+            Assert.IsFalse(s.TryAcquire(Delays.Short));
+        }
+
+        [Test] public void AcquireIsInterruptible([Values(true, false)] bool isFair)
+        {
+            Semaphore s = new Semaphore(0, isFair);
+            Thread t = ThreadManager.StartAndAssertRegistered(
+                "T1", () => Assert.Throws<ThreadInterruptedException>(s.Acquire));
+            Thread.Sleep(Delays.Short);
+            t.Interrupt();
+            ThreadManager.JoinAndVerify();
+            Assert.IsFalse(s.HasQueuedThreads);
+        }
+
+        [Test] public void AcquireUninterruptiblyIsNotInterruptible([Values(true, false)] bool isFair)
+        {
+            Semaphore s = new Semaphore(0, isFair);
+            Thread t = ThreadManager.StartAndAssertRegistered(
+                "T1", () =>
+                          {
+                              s.AcquireUninterruptibly();
+                              Assert.IsTrue(TestThreadManager.IsCurrentThreadInterrupted());
+                          });
+            Thread.Sleep(Delays.Short);
+            t.Interrupt();
+            Thread.Sleep(Delays.Short);
+            Assert.IsTrue(t.IsAlive);
+            s.Release();
+            ThreadManager.JoinAndVerify();
+        }
+
+        [Test] public void FairSemaphoreGrantsInArrivalOrder()
+        {
+            Semaphore s = new Semaphore(0, true);
+            ThreadManager.StartAndAssertRegistered("T1", () => s.Acquire(3));
+            Thread.Sleep(Delays.Short);
+            Thread t2 = ThreadManager.StartAndAssertRegistered("T2", () => s.Acquire(1));
+            Thread.Sleep(Delays.Short);
+            s.Release(1);
+            Thread.Sleep(Delays.Short);
+            // T2 could proceed but must not overtake T1
+            Assert.IsTrue(t2.IsAlive);
+            Assert.AreEqual(1, s.AvailablePermits);
+            s.Release(3);
+            ThreadManager.JoinAndVerify();
+            Assert.AreEqual(0, s.AvailablePermits);
+        }
+
+        [Test] public void NonfairSemaphoreLetsSmallRequestsBarge()
+        {
+            Semaphore s = new Semaphore(0, false);
+            ThreadManager.StartAndAssertRegistered("T1", () => s.Acquire(3));
+            Thread.Sleep(Delays.Short);
+            s.Release(1);
+            Assert.IsTrue(s.TryAcquire(Delays.Short));
+            s.Release(3);
+            ThreadManager.JoinAndVerify();
+        }
+
+        [Test] public void ManyThreadsShareHighPermitCount([Values(true, false)] bool isFair)
+        {
+            const int permits = 64;
+            Semaphore s = new Semaphore(permits, isFair);
+            int inside = 0;
+            Action action = delegate
+                                {
+                                    for (int i = 0; i < 10000; i++)
+                                    {
+                                        s.Acquire(2);
+                                        Assert.That(Interlocked.Add(ref inside, 2), Is.LessThanOrEqualTo(permits));
+                                        Interlocked.Add(ref inside, -2);
+                                        s.Release(2);
+                                    }
+                                };
+            ThreadManager.StartAndAssertRegistered("T", action, action, action, action);
+            ThreadManager.JoinAndVerify(Delays.Long);
+            Assert.AreEqual(permits, s.AvailablePermits);
+        }
+
+        [Test] public void DrainAndReducePermits([Values(true, false)] bool isFair)
+        {
+            PublicSemaphore s = new PublicSemaphore(5, isFair);
+            s.Reduce(2);
+            Assert.AreEqual(3, s.AvailablePermits);
+            Assert.AreEqual(3, s.DrainPermits());
+            Assert.AreEqual(0, s.DrainPermits());
+            s.Reduce(1);
+            Assert.AreEqual(-1, s.AvailablePermits);
+            Assert.Throws<ArgumentOutOfRangeException>(() => s.Reduce(-1));
+        }
+
+        [Test] public void NegativeArgumentsAreRejected()
+        {
+            Semaphore s = new Semaphore(1);
+            Assert.Throws<ArgumentOutOfRangeException>(() => s.Acquire(-1));
+            Assert.Throws<ArgumentOutOfRangeException>(() => s.AcquireUninterruptibly(-1));
+            Assert.Throws<ArgumentOutOfRangeException>(() => s.TryAcquire(-1));
+            Assert.Throws<ArgumentOutOfRangeException>(() => s.TryAcquire(-1, Delays.Short));
+            Assert.Throws<ArgumentOutOfRangeException>(() => s.Release(-1));
+        }
+
+        [Test] public void ReleaseChokesOnPermitOverflow()
+        {
+            Semaphore s = new Semaphore(int.MaxValue);
+            Assert.Throws<SystemException>(s.Release);
+        }
+
+        [Test] public void SerializationKeepsPermitsAndFairness([Values(true, false)] bool isFair)
+        {
+            Semaphore s = new Semaphore(3, isFair);
+            s.Acquire();
+            MemoryStream bout = new MemoryStream(10000);
+            BinaryFormatter formatter = new BinaryFormatter();
+            formatter.Serialize(bout, s);
+            MemoryStream bin = new MemoryStream(bout.ToArray());
+            Semaphore r = (Semaphore) formatter.Deserialize(bin);
+            Assert.AreEqual(2, r.AvailablePermits);
+            Assert.AreEqual(isFair, r.IsFair);
+            r.Acquire(2);
+            Assert.IsFalse(r.TryAcquire());
+        }
+
+        [Test] public void StatisticsRecordContendedAcquisitions([Values(true, false)] bool isFair)
+        {
+            Semaphore s = new Semaphore(1, isFair);
+            LockStatistics stats = new LockStatistics(Guid.NewGuid().ToString());
+            s.Statistics = stats;
+            s.Acquire();
+            ThreadManager.StartAndAssertRegistered("T1", () => s.Acquire());
+            Thread.Sleep(Delays.Short);
+            s.Release();
+            ThreadManager.JoinAndVerify();
+            Assert.AreEqual(2, stats.Acquisitions);
+            Assert.AreEqual(1, stats.ContendedAcquisitions);
+            Assert.AreEqual(0, stats.TimedHolds);
+        }
+
+        [Test] public void AcquireAsyncRunsRightAwayWhenPermitsAreAvailable([Values(true, false)] bool isFair)
+        {
+            Semaphore s = new Semaphore(3, isFair);
+            IFuture<int> f = s.AcquireAsync(2, new DirectExecutor(), () => s.AvailablePermits);
+            Assert.IsTrue(f.IsDone);
+            Assert.AreEqual(1, f.GetResult());
+            Assert.AreEqual(1, s.AvailablePermits);
+        }
+
+        [Test] public void AcquireAsyncWaitsForRelease([Values(true, false)] bool isFair)
+        {
+            Semaphore s = new Semaphore(0, isFair);
+            bool ran = false;
+            IFuture<Void> f = s.AcquireAsync(new DirectExecutor(), () => { ran = true; });
+            Assert.IsFalse(f.IsDone);
+            Assert.IsFalse(ran);
+            Assert.IsFalse(s.HasQueuedThreads);
+            s.Release();
+            Assert.IsTrue(f.IsDone);
+            Assert.IsTrue(ran);
+            Assert.AreEqual(0, s.AvailablePermits);
+        }
+
+        [Test] public void FairAsyncRequestGetsPermitsLeftByQueuedThread()
+        {
+            Semaphore s = new Semaphore(0, true);
+            ThreadManager.StartAndAssertRegistered("T1", () => s.Acquire());
+            for (int i = 0; !s.HasQueuedThreads; i++)
+            {
+                Assert.That(i, Is.LessThan(Delays.Long.TotalMilliseconds), "thread not queued");
+                Thread.Sleep(1);
+            }
+            IFuture<Void> f = s.AcquireAsync(new DirectExecutor(), delegate { });
+            s.Release(5);
+            ThreadManager.JoinAndVerify();
+            Assert.IsTrue(f.IsDone);
+            Assert.AreEqual(3, s.AvailablePermits);
+        }
+
+        [Test] public void FairAsyncRequestGetsPermitsWhenQueuedThreadTimesOut()
+        {
+            Semaphore s = new Semaphore(1, true);
+            s.Acquire();
+            ThreadManager.StartAndAssertRegistered("T1", () => Assert.IsFalse(s.TryAcquire(2, Delays.Short)));
+            for (int i = 0; !s.HasQueuedThreads; i++)
+            {
+                Assert.That(i, Is.LessThan(Delays.Long.TotalMilliseconds), "thread not queued");
+                Thread.Sleep(1);
+            }
+            s.Release();
+            IFuture<Void> f = s.AcquireAsync(new DirectExecutor(), delegate { });
+            Assert.IsFalse(f.IsDone);
+            ThreadManager.JoinAndVerify();
+            Assert.IsTrue(f.IsDone);
+            Assert.AreEqual(0, s.AvailablePermits);
+        }
+
+        [Test] public void AsyncRequestsAreGrantedInOrder()
+        {
+            Semaphore s = new Semaphore(0);
+            IFuture<Void> f1 = s.AcquireAsync(2, new DirectExecutor(), delegate { });
+            IFuture<Void> f2 = s.AcquireAsync(1, new DirectExecutor(), delegate { });
+            s.Release();
+            Assert.IsFalse(f1.IsDone);
+            Assert.IsFalse(f2.IsDone);
+            Assert.AreEqual(1, s.AvailablePermits);
+            s.Release();
+            Assert.IsTrue(f1.IsDone);
+            Assert.IsFalse(f2.IsDone);
+            s.Release();
+            Assert.IsTrue(f2.IsDone);
+            Assert.AreEqual(0, s.AvailablePermits);
+        }
+
+        [Test] public void CancelledAsyncRequestDoesNotTakePermits()
+        {
+            Semaphore s = new Semaphore(1);
+            bool ran = false;
+            IFuture<Void> f1 = s.AcquireAsync(2, new DirectExecutor(), () => { ran = true; });
+            IFuture<Void> f2 = s.AcquireAsync(1, new DirectExecutor(), delegate { });
+            Assert.IsFalse(f2.IsDone);
+            Assert.IsTrue(f1.Cancel());
+            Assert.IsTrue(f2.IsDone);
+            s.Release(2);
+            Assert.IsFalse(ran);
+            Assert.IsTrue(f1.IsCancelled);
+            Assert.AreEqual(2, s.AvailablePermits);
+        }
+
+        [Test] public void RejectedAsyncRequestReturnsPermits()
+        {
+            Semaphore s = new Semaphore(1);
+            IFuture<Void> f = s.AcquireAsync(new RejectingExecutor(), delegate { });
+            Assert.IsTrue(f.IsDone);
+            Assert.Throws<ExecutionException>(() => f.GetResult());
+            Assert.AreEqual(1, s.AvailablePermits);
+        }
+
+        [Test] public void AcquireAsyncChokesOnBadArguments()
+        {
+            Semaphore s = new Semaphore(1);
+            Assert.Throws<ArgumentOutOfRangeException>(() => s.AcquireAsync(-1, new DirectExecutor(), delegate { }));
+            Assert.Throws<ArgumentNullException>(() => s.AcquireAsync(null, delegate { }));
+            Assert.Throws<ArgumentNullException>(() => s.AcquireAsync(new DirectExecutor(), (Action) null));
+            Assert.AreEqual(1, s.AvailablePermits);
+        }
+
+        [Test] public void ManyAsyncRequestsShareOnePermit([Values(true, false)] bool isFair)
+        {
+            const int requests = 500;
+            Semaphore s = new Semaphore(1, isFair);
+            IExecutorService executor = Executors.NewFixedThreadPool(4);
+            int holders = 0, maxHolders = 0, count = 0;
+            try
+            {
+                List<IFuture<Void>> futures = new List<IFuture<Void>>();
+                for (int i = 0; i < requests; i++)
+                {
+                    futures.Add(s.AcquireAsync(executor, delegate
+                        {
+                            int h = Interlocked.Increment(ref holders);
+                            if (h > maxHolders) maxHolders = h;
+                            count++;
+                            Interlocked.Decrement(ref holders);
+                            s.Release();
+                        }));
+                }
+                foreach (IFuture<Void> f in futures) f.GetResult(Delays.Long);
+            }
+            finally
+            {
+                executor.ShutdownNow();
+            }
+            Assert.AreEqual(requests, count);
+            Assert.AreEqual(1, maxHolders);
+            Assert.AreEqual(1, s.AvailablePermits);
+        }
+
+        [Test] public void ToStringReportsPermits()
+        {
+            StringAssert.Contains("Permits = 7", new Semaphore(7).ToString());
+        }
+
+        private class RejectingExecutor : IExecutor
+        {
+            public void Execute(IRunnable runnable)
+            {
+                throw new RejectedExecutionException();
+            }
+
+            public void Execute(Action action)
+            {
+                throw new RejectedExecutionException();
+            }
+        }
+    }
+}